@@ -0,0 +1,129 @@
+package mil.nga.geopackage.db;
+
+/**
+ * Row count estimate with an error bound. The count is expected within the
+ * error bound of the estimate, guaranteed for exact and tile count estimates
+ * and to three standard errors for sampled estimates.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class CountEstimate {
+
+	/**
+	 * Estimated count
+	 */
+	private final long count;
+
+	/**
+	 * Absolute error bound
+	 */
+	private final long errorBound;
+
+	/**
+	 * Estimate source
+	 */
+	private final CountEstimateSource source;
+
+	/**
+	 * Constructor
+	 *
+	 * @param count
+	 *            estimated count
+	 * @param errorBound
+	 *            absolute error bound
+	 * @param source
+	 *            estimate source
+	 */
+	public CountEstimate(long count, long errorBound,
+			CountEstimateSource source) {
+		this.count = count;
+		this.errorBound = errorBound;
+		this.source = source;
+	}
+
+	/**
+	 * Create an exact count estimate
+	 *
+	 * @param count
+	 *            exact count
+	 * @return count estimate
+	 */
+	public static CountEstimate exact(long count) {
+		return new CountEstimate(count, 0, CountEstimateSource.EXACT);
+	}
+
+	/**
+	 * Get the estimated count
+	 *
+	 * @return count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Get the absolute error bound
+	 *
+	 * @return error bound
+	 */
+	public long getErrorBound() {
+		return errorBound;
+	}
+
+	/**
+	 * Get the estimate source
+	 *
+	 * @return source
+	 */
+	public CountEstimateSource getSource() {
+		return source;
+	}
+
+	/**
+	 * Is the estimate an exact count
+	 *
+	 * @return true if exact
+	 */
+	public boolean isExact() {
+		return errorBound == 0;
+	}
+
+	/**
+	 * Get the minimum count within the error bound
+	 *
+	 * @return min count
+	 */
+	public long getMin() {
+		return Math.max(0, count - errorBound);
+	}
+
+	/**
+	 * Get the maximum count within the error bound
+	 *
+	 * @return max count
+	 */
+	public long getMax() {
+		return count + errorBound;
+	}
+
+	/**
+	 * Determine if the count is within the error bound of the estimate
+	 *
+	 * @param count
+	 *            count
+	 * @return true if within the bound
+	 */
+	public boolean contains(long count) {
+		return count >= getMin() && count <= getMax();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return count + " +/- " + errorBound + " (" + source + ")";
+	}
+
+}
@@ -0,0 +1,37 @@
+package mil.nga.geopackage.db;
+
+/**
+ * Source of a row count estimate
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public enum CountEstimateSource {
+
+	/**
+	 * Exact count query, used when the counted key range is small
+	 */
+	EXACT,
+
+	/**
+	 * sqlite_stat1 table statistics gathered by ANALYZE, used when consistent
+	 * with a key sample
+	 */
+	STATISTICS,
+
+	/**
+	 * Random sample of the key range
+	 */
+	SAMPLE,
+
+	/**
+	 * RTree node cell counts of a node sample
+	 */
+	RTREE_NODES,
+
+	/**
+	 * Stored feature tile count pyramid
+	 */
+	TILE_COUNTS;
+
+}
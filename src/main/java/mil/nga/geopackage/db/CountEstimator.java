@@ -0,0 +1,417 @@
+package mil.nga.geopackage.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+import mil.nga.geopackage.GeoPackageException;
+
+/**
+ * Estimates table row counts without a full count scan. Integer key ranges
+ * are read from the key index and a fixed size random sample of keys is
+ * probed by key, estimating the occupied fraction of the key range with an
+ * error bound of three standard errors. sqlite_stat1 statistics are preferred
+ * when consistent with the sample. RTree counts are estimated from the cell
+ * counts of sampled RTree nodes. Small key ranges are counted exactly.
+ * Samples are seeded by table and key range so repeated estimates of an
+ * unchanged table are stable.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class CountEstimator {
+
+	/**
+	 * Number of sampled keys
+	 */
+	public static final int SAMPLE_SIZE = 1000;
+
+	/**
+	 * Key ranges up to this size are counted exactly
+	 */
+	public static final long EXACT_THRESHOLD = 10000;
+
+	/**
+	 * Standard errors of the sampled error bound
+	 */
+	public static final double STANDARD_ERRORS = 3.0;
+
+	/**
+	 * Estimate the row count of a table with an integer key column
+	 *
+	 * @param connection
+	 *            connection
+	 * @param table
+	 *            table name
+	 * @param keyColumn
+	 *            integer key column, such as the primary key
+	 * @return count estimate
+	 */
+	public static CountEstimate estimateCount(Connection connection,
+			String table, String keyColumn) {
+		return estimateCount(connection, table, keyColumn, null, null);
+	}
+
+	/**
+	 * Estimate the count of table rows matching the where clause, sampling
+	 * the integer key column range
+	 *
+	 * @param connection
+	 *            connection
+	 * @param table
+	 *            table name
+	 * @param keyColumn
+	 *            integer key column, such as the primary key or rowid
+	 * @param where
+	 *            where clause, null for all rows
+	 * @param whereArgs
+	 *            where arguments
+	 * @return count estimate
+	 */
+	public static CountEstimate estimateCount(Connection connection,
+			String table, String keyColumn, String where, String[] whereArgs) {
+
+		long[] range = keyRange(connection, table, keyColumn);
+		if (range == null) {
+			return CountEstimate.exact(0);
+		}
+		long domain = range[1] - range[0] + 1;
+		if (domain <= EXACT_THRESHOLD) {
+			return CountEstimate.exact(
+					SQLUtils.count(connection, table, where, whereArgs));
+		}
+
+		long[] offsets = sampleOffsets(table, domain);
+		StringBuilder sampleWhere = new StringBuilder();
+		sampleWhere.append(CoreSQLUtils.quoteWrap(keyColumn)).append(" IN (");
+		for (int i = 0; i < offsets.length; i++) {
+			if (i > 0) {
+				sampleWhere.append(", ");
+			}
+			sampleWhere.append(range[0] + offsets[i]);
+		}
+		sampleWhere.append(")");
+		if (where != null) {
+			sampleWhere.append(" AND (").append(where).append(")");
+		}
+		int hits = SQLUtils.count(connection, table, sampleWhere.toString(),
+				whereArgs);
+
+		CountEstimate estimate = fromSample(domain, offsets.length, hits);
+
+		// Statistics consistent with the sample are the better estimate
+		if (where == null) {
+			Long statistics = statisticsCount(connection, table);
+			if (statistics != null && estimate.contains(statistics)) {
+				estimate = new CountEstimate(
+						Math.min(statistics.longValue(), domain),
+						estimate.getErrorBound(),
+						CountEstimateSource.STATISTICS);
+			}
+		}
+
+		return estimate;
+	}
+
+	/**
+	 * Estimate the number of entries of an RTree virtual table from the cell
+	 * counts of sampled nodes. Every node other than the root is a cell of its
+	 * parent, so the leaf entries are the total node cells less the non root
+	 * nodes.
+	 *
+	 * @param connection
+	 *            connection
+	 * @param rTreeTable
+	 *            RTree virtual table name
+	 * @return count estimate
+	 */
+	public static CountEstimate estimateRTreeCount(Connection connection,
+			String rTreeTable) {
+
+		String nodeTable = rTreeTable + "_node";
+		long[] range = keyRange(connection, nodeTable, "nodeno");
+		if (range == null) {
+			return CountEstimate.exact(0);
+		}
+
+		// Node numbers start at the root node 1
+		long domain = range[1];
+		boolean exact = domain <= SAMPLE_SIZE;
+
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT data FROM ")
+				.append(CoreSQLUtils.quoteWrap(nodeTable));
+		long[] offsets = null;
+		if (!exact) {
+			offsets = sampleOffsets(rTreeTable, domain);
+			sql.append(" WHERE nodeno IN (");
+			for (int i = 0; i < offsets.length; i++) {
+				if (i > 0) {
+					sql.append(", ");
+				}
+				sql.append(1 + offsets[i]);
+			}
+			sql.append(")");
+		}
+
+		// Sum and sum of squares of the node cells less one
+		double sum = 0;
+		double sumSquares = 0;
+		ResultSet resultSet = SQLUtils.query(connection, sql.toString(),
+				null);
+		try {
+			while (resultSet.next()) {
+				byte[] data = resultSet.getBytes(1);
+				int cells = 0;
+				if (data != null && data.length >= 4) {
+					cells = ((data[2] & 0xff) << 8) | (data[3] & 0xff);
+				}
+				sum += cells - 1;
+				sumSquares += (cells - 1) * (cells - 1);
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to read RTree node statistics. Table: "
+							+ rTreeTable,
+					e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql.toString());
+		}
+
+		CountEstimate estimate;
+		if (exact) {
+			estimate = CountEstimate.exact(Math.round(sum) + 1);
+		} else {
+			int samples = offsets.length;
+			double mean = sum / samples;
+			double variance = Math.max(0,
+					(sumSquares - samples * mean * mean) / (samples - 1));
+			double standardError = domain * Math.sqrt(variance / samples
+					* correction(domain, samples));
+			estimate = new CountEstimate(
+					Math.max(0, Math.round(domain * mean) + 1),
+					(long) Math.ceil(STANDARD_ERRORS * standardError),
+					CountEstimateSource.RTREE_NODES);
+		}
+
+		return estimate;
+	}
+
+	/**
+	 * Estimate the number of tiles at a zoom level, sampling the smaller of
+	 * the tile matrix cells and the tile table key range
+	 *
+	 * @param connection
+	 *            connection
+	 * @param table
+	 *            tile table name
+	 * @param keyColumn
+	 *            tile table primary key column
+	 * @param zoomLevel
+	 *            zoom level
+	 * @param matrixWidth
+	 *            tile matrix width
+	 * @param matrixHeight
+	 *            tile matrix height
+	 * @return count estimate
+	 */
+	public static CountEstimate estimateTileCount(Connection connection,
+			String table, String keyColumn, long zoomLevel, long matrixWidth,
+			long matrixHeight) {
+
+		String where = CoreSQLUtils.quoteWrap("zoom_level") + " = ?";
+		String[] whereArgs = new String[] { String.valueOf(zoomLevel) };
+
+		long cells = matrixWidth * matrixHeight;
+		if (cells <= EXACT_THRESHOLD) {
+			return CountEstimate.exact(
+					SQLUtils.count(connection, table, where, whereArgs));
+		}
+
+		long[] range = keyRange(connection, table, keyColumn);
+		if (range == null) {
+			return CountEstimate.exact(0);
+		}
+		if (range[1] - range[0] + 1 < cells) {
+			return estimateCount(connection, table, keyColumn, where,
+					whereArgs);
+		}
+
+		// Probe sampled tile matrix cells by the unique tile index
+		long[] offsets = sampleOffsets(table + zoomLevel, cells);
+		String sql = "SELECT 1 FROM " + CoreSQLUtils.quoteWrap(table)
+				+ " WHERE " + where + " AND "
+				+ CoreSQLUtils.quoteWrap("tile_column") + " = ? AND "
+				+ CoreSQLUtils.quoteWrap("tile_row") + " = ?";
+		int hits = 0;
+		PreparedStatement statement = null;
+		try {
+			statement = connection.prepareStatement(sql);
+			statement.setLong(1, zoomLevel);
+			for (long offset : offsets) {
+				statement.setLong(2, offset % matrixWidth);
+				statement.setLong(3, offset / matrixWidth);
+				ResultSet resultSet = statement.executeQuery();
+				try {
+					if (resultSet.next()) {
+						hits++;
+					}
+				} finally {
+					resultSet.close();
+				}
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to sample tiles. Table: " + table + ", Zoom: "
+							+ zoomLevel,
+					e);
+		} finally {
+			SQLUtils.closeStatement(statement, sql);
+		}
+
+		return fromSample(cells, offsets.length, hits);
+	}
+
+	/**
+	 * Get the row count of the table from the sqlite_stat1 statistics
+	 *
+	 * @param connection
+	 *            connection
+	 * @param table
+	 *            table name
+	 * @return statistics row count, null when not analyzed
+	 */
+	public static Long statisticsCount(Connection connection, String table) {
+
+		Long count = null;
+
+		if (SQLUtils.count(connection, "sqlite_master",
+				"type = 'table' AND name = 'sqlite_stat1'", null) > 0) {
+			String sql = "SELECT stat FROM sqlite_stat1 WHERE tbl = ?";
+			ResultSet resultSet = SQLUtils.query(connection, sql,
+					new String[] { table });
+			try {
+				while (resultSet.next()) {
+					// The first statistic is the table or index row count
+					String stat = resultSet.getString(1);
+					if (stat != null) {
+						String rows = stat.trim().split("\\s+")[0];
+						try {
+							long value = Long.parseLong(rows);
+							if (count == null || value > count) {
+								count = value;
+							}
+						} catch (NumberFormatException e) {
+							// ignore unexpected statistics
+						}
+					}
+				}
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to query table statistics. Table: " + table,
+						e);
+			} finally {
+				SQLUtils.closeResultSetStatement(resultSet, sql);
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Get the min and max values of an integer key column, read from the key
+	 * index
+	 *
+	 * @param connection
+	 *            connection
+	 * @param table
+	 *            table name
+	 * @param keyColumn
+	 *            key column
+	 * @return min and max, null when the table is empty
+	 */
+	private static long[] keyRange(Connection connection, String table,
+			String keyColumn) {
+		long[] range = null;
+		Object min = SQLUtils.querySingleResult(connection,
+				"SELECT MIN(" + CoreSQLUtils.quoteWrap(keyColumn) + ") FROM "
+						+ CoreSQLUtils.quoteWrap(table),
+				null, 0, GeoPackageDataType.INTEGER);
+		if (min != null) {
+			Object max = SQLUtils.querySingleResult(connection,
+					"SELECT MAX(" + CoreSQLUtils.quoteWrap(keyColumn)
+							+ ") FROM " + CoreSQLUtils.quoteWrap(table),
+					null, 0, GeoPackageDataType.INTEGER);
+			range = new long[] { ((Number) min).longValue(),
+					((Number) max).longValue() };
+		}
+		return range;
+	}
+
+	/**
+	 * Draw distinct sample offsets within the domain, seeded by the name and
+	 * domain for stable estimates
+	 *
+	 * @param name
+	 *            seed name
+	 * @param domain
+	 *            domain size, larger than the sample size
+	 * @return sample offsets
+	 */
+	private static long[] sampleOffsets(String name, long domain) {
+		Random random = new Random(31L * name.hashCode() + domain);
+		Set<Long> offsets = new LinkedHashSet<>();
+		while (offsets.size() < SAMPLE_SIZE) {
+			offsets.add((long) (random.nextDouble() * domain));
+		}
+		long[] values = new long[offsets.size()];
+		int i = 0;
+		for (long offset : offsets) {
+			values[i++] = offset;
+		}
+		return values;
+	}
+
+	/**
+	 * Build an estimate from the sampled fraction of the domain. The
+	 * proportion variance is smoothed so that samples with all or no hits
+	 * still report an error bound.
+	 *
+	 * @param domain
+	 *            domain size
+	 * @param samples
+	 *            number of samples
+	 * @param hits
+	 *            number of sampled hits
+	 * @return count estimate
+	 */
+	private static CountEstimate fromSample(long domain, int samples,
+			int hits) {
+		long count = Math.round(domain * ((double) hits / samples));
+		double proportion = (hits + 1.0) / (samples + 2.0);
+		double standardError = domain
+				* Math.sqrt(proportion * (1.0 - proportion) / samples
+						* correction(domain, samples));
+		long errorBound = (long) Math.ceil(STANDARD_ERRORS * standardError);
+		return new CountEstimate(Math.min(count, domain), errorBound,
+				CountEstimateSource.SAMPLE);
+	}
+
+	/**
+	 * Finite population correction of a sample without replacement
+	 *
+	 * @param domain
+	 *            domain size
+	 * @param samples
+	 *            number of samples
+	 * @return correction factor
+	 */
+	private static double correction(long domain, int samples) {
+		return (domain - samples) / (double) (domain - 1);
+	}
+
+}
@@ -0,0 +1,113 @@
+package mil.nga.geopackage.db;
+
+import java.util.List;
+
+/**
+ * Secondary index recommendation for the columns of a query where clause
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class QueryIndexRecommendation {
+
+	/**
+	 * Table name
+	 */
+	private final String table;
+
+	/**
+	 * Index columns in order
+	 */
+	private final List<String> columns;
+
+	/**
+	 * Recommendation reason
+	 */
+	private final String reason;
+
+	/**
+	 * Constructor
+	 *
+	 * @param table
+	 *            table name
+	 * @param columns
+	 *            index columns in order
+	 * @param reason
+	 *            recommendation reason
+	 */
+	public QueryIndexRecommendation(String table, List<String> columns,
+			String reason) {
+		this.table = table;
+		this.columns = columns;
+		this.reason = reason;
+	}
+
+	/**
+	 * Get the table name
+	 *
+	 * @return table name
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * Get the index columns
+	 *
+	 * @return columns
+	 */
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Get the recommendation reason
+	 *
+	 * @return reason
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+	/**
+	 * Get the recommended index name
+	 *
+	 * @return index name
+	 */
+	public String getIndexName() {
+		StringBuilder name = new StringBuilder("idx_");
+		name.append(table);
+		for (String column : columns) {
+			name.append("_").append(column);
+		}
+		return name.toString();
+	}
+
+	/**
+	 * Get the create index SQL statement
+	 *
+	 * @return SQL
+	 */
+	public String getSQL() {
+		StringBuilder sql = new StringBuilder("CREATE INDEX IF NOT EXISTS ");
+		sql.append(CoreSQLUtils.quoteWrap(getIndexName()));
+		sql.append(" ON ").append(CoreSQLUtils.quoteWrap(table)).append(" (");
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(CoreSQLUtils.quoteWrap(columns.get(i)));
+		}
+		sql.append(")");
+		return sql.toString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return getSQL() + " -- " + reason;
+	}
+
+}
@@ -0,0 +1,227 @@
+package mil.nga.geopackage.db;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * EXPLAIN QUERY PLAN results of a query, reporting full table scans,
+ * temporary B-trees and secondary index recommendations
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class QueryPlan {
+
+	/**
+	 * Explained SQL statement
+	 */
+	private final String sql;
+
+	/**
+	 * Plan steps in order
+	 */
+	private final List<QueryPlanStep> steps;
+
+	/**
+	 * Index recommendations
+	 */
+	private final List<QueryIndexRecommendation> recommendations = new ArrayList<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param sql
+	 *            explained SQL statement
+	 * @param steps
+	 *            plan steps in order
+	 */
+	public QueryPlan(String sql, List<QueryPlanStep> steps) {
+		this.sql = sql;
+		this.steps = steps;
+	}
+
+	/**
+	 * Get the explained SQL statement
+	 *
+	 * @return SQL
+	 */
+	public String getSQL() {
+		return sql;
+	}
+
+	/**
+	 * Get the plan steps
+	 *
+	 * @return steps
+	 */
+	public List<QueryPlanStep> getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Get the full table scan steps
+	 *
+	 * @return scan steps
+	 */
+	public List<QueryPlanStep> getScans() {
+		List<QueryPlanStep> scans = new ArrayList<>();
+		for (QueryPlanStep step : steps) {
+			if (step.isScan()) {
+				scans.add(step);
+			}
+		}
+		return scans;
+	}
+
+	/**
+	 * Get the names of the fully scanned tables
+	 *
+	 * @return table names
+	 */
+	public Set<String> getScannedTables() {
+		Set<String> tables = new LinkedHashSet<>();
+		for (QueryPlanStep step : getScans()) {
+			tables.add(step.getTable());
+		}
+		return tables;
+	}
+
+	/**
+	 * Determine if the plan includes a full table scan
+	 *
+	 * @return true if a table is scanned
+	 */
+	public boolean hasScans() {
+		return !getScans().isEmpty();
+	}
+
+	/**
+	 * Determine if the plan fully scans the table
+	 *
+	 * @param table
+	 *            table name
+	 * @return true if scanned
+	 */
+	public boolean isScanned(String table) {
+		for (QueryPlanStep step : getScans()) {
+			if (step.getTable().equalsIgnoreCase(table)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the temporary B-tree steps
+	 *
+	 * @return temp B-tree steps
+	 */
+	public List<QueryPlanStep> getTempBTrees() {
+		List<QueryPlanStep> tempBTrees = new ArrayList<>();
+		for (QueryPlanStep step : steps) {
+			if (step.isTempBTree()) {
+				tempBTrees.add(step);
+			}
+		}
+		return tempBTrees;
+	}
+
+	/**
+	 * Determine if the plan uses a temporary B-tree
+	 *
+	 * @return true if a temp B-tree is used
+	 */
+	public boolean hasTempBTrees() {
+		return !getTempBTrees().isEmpty();
+	}
+
+	/**
+	 * Get the names of the indexes used by the plan
+	 *
+	 * @return index names
+	 */
+	public Set<String> getIndexes() {
+		Set<String> indexes = new LinkedHashSet<>();
+		for (QueryPlanStep step : steps) {
+			if (step.getIndex() != null) {
+				indexes.add(step.getIndex());
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Get the index recommendations
+	 *
+	 * @return recommendations
+	 */
+	public List<QueryIndexRecommendation> getRecommendations() {
+		return recommendations;
+	}
+
+	/**
+	 * Determine if the plan has index recommendations
+	 *
+	 * @return true if recommendations exist
+	 */
+	public boolean hasRecommendations() {
+		return !recommendations.isEmpty();
+	}
+
+	/**
+	 * Add an index recommendation
+	 *
+	 * @param recommendation
+	 *            index recommendation
+	 */
+	public void addRecommendation(QueryIndexRecommendation recommendation) {
+		recommendations.add(recommendation);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		StringBuilder plan = new StringBuilder("QUERY PLAN");
+		for (QueryPlanStep step : steps) {
+			plan.append("\n");
+			int depth = getDepth(step);
+			for (int i = 0; i < depth; i++) {
+				plan.append("   ");
+			}
+			plan.append("|--").append(step.getDetail());
+		}
+		return plan.toString();
+	}
+
+	/**
+	 * Get the nesting depth of a step
+	 *
+	 * @param step
+	 *            plan step
+	 * @return depth
+	 */
+	private int getDepth(QueryPlanStep step) {
+		int depth = 0;
+		int parent = step.getParent();
+		while (parent != 0 && depth < steps.size()) {
+			QueryPlanStep parentStep = null;
+			for (QueryPlanStep planStep : steps) {
+				if (planStep.getId() == parent) {
+					parentStep = planStep;
+					break;
+				}
+			}
+			if (parentStep == null) {
+				break;
+			}
+			depth++;
+			parent = parentStep.getParent();
+		}
+		return depth;
+	}
+
+}
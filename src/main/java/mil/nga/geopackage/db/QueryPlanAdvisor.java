@@ -0,0 +1,433 @@
+package mil.nga.geopackage.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mil.nga.geopackage.GeoPackageException;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on queries and recommends secondary indexes for the
+ * user columns referenced by the where clause of fully scanned tables.
+ * Equality constrained columns lead the recommended index followed by at most
+ * one range constrained column. Columns already leading an existing index and
+ * primary key columns are not recommended.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class QueryPlanAdvisor {
+
+	/**
+	 * Explain the query plan of a SQL statement
+	 *
+	 * @param connection
+	 *            connection
+	 * @param sql
+	 *            SQL statement
+	 * @param args
+	 *            SQL arguments
+	 * @return query plan
+	 */
+	public static QueryPlan explain(Connection connection, String sql,
+			String[] args) {
+
+		List<QueryPlanStep> steps = new ArrayList<>();
+
+		String explainSQL = "EXPLAIN QUERY PLAN " + sql;
+		ResultSet resultSet = SQLUtils.query(connection, explainSQL, args);
+		try {
+			while (resultSet.next()) {
+				steps.add(new QueryPlanStep(resultSet.getInt(1),
+						resultSet.getInt(2), resultSet.getString(4)));
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to explain query plan: " + sql, e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, explainSQL);
+		}
+
+		return new QueryPlan(sql, steps);
+	}
+
+	/**
+	 * Explain the query plan of a table query and recommend indexes when the
+	 * table is fully scanned
+	 *
+	 * @param connection
+	 *            connection
+	 * @param table
+	 *            table name
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return query plan
+	 */
+	public static QueryPlan explainQuery(Connection connection, String table,
+			String where, String[] whereArgs) {
+
+		StringBuilder sql = new StringBuilder("SELECT * FROM ");
+		sql.append(CoreSQLUtils.quoteWrap(table));
+		if (where != null) {
+			sql.append(" WHERE ").append(where);
+		}
+
+		QueryPlan plan = explain(connection, sql.toString(), whereArgs);
+		recommend(connection, plan, table, where);
+
+		return plan;
+	}
+
+	/**
+	 * Explain the query plan of a table query with ids within a nested SQL
+	 * query, such as an index table ids query, and recommend indexes when the
+	 * table is fully scanned
+	 *
+	 * @param connection
+	 *            connection
+	 * @param table
+	 *            table name
+	 * @param idColumn
+	 *            id column name
+	 * @param nestedSQL
+	 *            nested SQL query selecting ids
+	 * @param nestedArgs
+	 *            nested SQL arguments
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return query plan
+	 */
+	public static QueryPlan explainQueryIn(Connection connection, String table,
+			String idColumn, String nestedSQL, String[] nestedArgs,
+			String where, String[] whereArgs) {
+
+		String idWhere = CoreSQLUtils.quoteWrap(idColumn) + " IN ("
+				+ nestedSQL + ")";
+
+		StringBuilder sql = new StringBuilder("SELECT * FROM ");
+		sql.append(CoreSQLUtils.quoteWrap(table));
+		sql.append(" WHERE ").append(idWhere);
+		if (where != null) {
+			sql.append(" AND (").append(where).append(")");
+		}
+
+		QueryPlan plan = explain(connection, sql.toString(),
+				combineArgs(nestedArgs, whereArgs));
+		recommend(connection, plan, table,
+				where != null ? idWhere + " AND (" + where + ")" : idWhere);
+
+		return plan;
+	}
+
+	/**
+	 * Add index recommendations to the query plan for the where clause columns
+	 * of the table when the plan fully scans the table
+	 *
+	 * @param connection
+	 *            connection
+	 * @param plan
+	 *            query plan
+	 * @param table
+	 *            table name
+	 * @param where
+	 *            where clause
+	 */
+	public static void recommend(Connection connection, QueryPlan plan,
+			String table, String where) {
+		if (plan.isScanned(table)) {
+			QueryIndexRecommendation recommendation = recommend(connection,
+					table, where);
+			if (recommendation != null) {
+				plan.addRecommendation(recommendation);
+			}
+		}
+	}
+
+	/**
+	 * Recommend a secondary index for the where clause columns of the table
+	 *
+	 * @param connection
+	 *            connection
+	 * @param table
+	 *            table name
+	 * @param where
+	 *            where clause
+	 * @return index recommendation, null if no recommended index
+	 */
+	public static QueryIndexRecommendation recommend(Connection connection,
+			String table, String where) {
+
+		if (where == null) {
+			return null;
+		}
+
+		Map<String, String> columns = new LinkedHashMap<>();
+		List<String> primaryKeys = new ArrayList<>();
+		String tableInfoSQL = "PRAGMA table_info("
+				+ CoreSQLUtils.quoteWrap(table) + ")";
+		ResultSet resultSet = SQLUtils.query(connection, tableInfoSQL, null);
+		try {
+			while (resultSet.next()) {
+				String column = resultSet.getString("name");
+				columns.put(column.toLowerCase(), column);
+				if (resultSet.getInt("pk") > 0) {
+					primaryKeys.add(column.toLowerCase());
+				}
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to read table info. Table: " + table, e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, tableInfoSQL);
+		}
+
+		List<String> equalityColumns = new ArrayList<>();
+		String rangeColumn = null;
+
+		List<String> tokens = tokenize(where);
+		for (int i = 0; i < tokens.size(); i++) {
+			String column = columns.get(tokens.get(i).toLowerCase());
+			if (column == null || primaryKeys.contains(column.toLowerCase())
+					|| (i + 1 < tokens.size()
+							&& tokens.get(i + 1).equals("."))) {
+				continue;
+			}
+			String operator = i + 1 < tokens.size()
+					? tokens.get(i + 1).toUpperCase()
+					: "";
+			if (operator.equals("=") || operator.equals("==")
+					|| operator.equals("IN") || (operator.equals("IS")
+							&& (i + 2 >= tokens.size() || !tokens.get(i + 2)
+									.equalsIgnoreCase("NOT")))) {
+				if (!equalityColumns.contains(column)) {
+					equalityColumns.add(column);
+				}
+			} else if (rangeColumn == null && (operator.equals("<")
+					|| operator.equals("<=") || operator.equals(">")
+					|| operator.equals(">=") || operator.equals("BETWEEN"))) {
+				rangeColumn = column;
+			}
+		}
+
+		List<String> indexColumns = new ArrayList<>(equalityColumns);
+		if (rangeColumn != null && !indexColumns.contains(rangeColumn)) {
+			indexColumns.add(rangeColumn);
+		}
+
+		QueryIndexRecommendation recommendation = null;
+		if (!indexColumns.isEmpty()) {
+			String leading = indexColumns.get(0);
+			boolean indexed = false;
+			for (List<String> existing : getIndexColumns(connection, table)) {
+				if (!existing.isEmpty()
+						&& existing.get(0).equalsIgnoreCase(leading)) {
+					indexed = true;
+					break;
+				}
+			}
+			if (!indexed) {
+				StringBuilder reason = new StringBuilder("Full scan of ");
+				reason.append(table).append(" filtered on ");
+				if (!equalityColumns.isEmpty()) {
+					reason.append("equality ").append(equalityColumns);
+					if (rangeColumn != null) {
+						reason.append(" and ");
+					}
+				}
+				if (rangeColumn != null) {
+					reason.append("range [").append(rangeColumn).append("]");
+				}
+				recommendation = new QueryIndexRecommendation(table,
+						indexColumns, reason.toString());
+			}
+		}
+
+		return recommendation;
+	}
+
+	/**
+	 * Create the recommended indexes of a query plan
+	 *
+	 * @param connection
+	 *            connection
+	 * @param plan
+	 *            query plan
+	 * @return number of index statements executed
+	 */
+	public static int createIndexes(Connection connection, QueryPlan plan) {
+		return createIndexes(connection, plan.getRecommendations());
+	}
+
+	/**
+	 * Create the recommended indexes
+	 *
+	 * @param connection
+	 *            connection
+	 * @param recommendations
+	 *            index recommendations
+	 * @return number of index statements executed
+	 */
+	public static int createIndexes(Connection connection,
+			List<QueryIndexRecommendation> recommendations) {
+		int count = 0;
+		for (QueryIndexRecommendation recommendation : recommendations) {
+			SQLUtils.execSQL(connection, recommendation.getSQL());
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Get the ordered columns of each existing index on the table
+	 *
+	 * @param connection
+	 *            connection
+	 * @param table
+	 *            table name
+	 * @return index columns
+	 */
+	public static List<List<String>> getIndexColumns(Connection connection,
+			String table) {
+
+		List<String> indexes = new ArrayList<>();
+		String indexListSQL = "PRAGMA index_list("
+				+ CoreSQLUtils.quoteWrap(table) + ")";
+		ResultSet resultSet = SQLUtils.query(connection, indexListSQL, null);
+		try {
+			while (resultSet.next()) {
+				indexes.add(resultSet.getString("name"));
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to read index list. Table: " + table, e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, indexListSQL);
+		}
+
+		List<List<String>> indexColumns = new ArrayList<>();
+		for (String index : indexes) {
+			List<String> columns = new ArrayList<>();
+			String indexInfoSQL = "PRAGMA index_info("
+					+ CoreSQLUtils.quoteWrap(index) + ")";
+			resultSet = SQLUtils.query(connection, indexInfoSQL, null);
+			try {
+				while (resultSet.next()) {
+					columns.add(resultSet.getString("name"));
+				}
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to read index info. Index: " + index, e);
+			} finally {
+				SQLUtils.closeResultSetStatement(resultSet, indexInfoSQL);
+			}
+			indexColumns.add(columns);
+		}
+
+		return indexColumns;
+	}
+
+	/**
+	 * Tokenize a where clause into unquoted identifiers, keywords and
+	 * operators, skipping string literals and numbers
+	 *
+	 * @param where
+	 *            where clause
+	 * @return tokens
+	 */
+	private static List<String> tokenize(String where) {
+		List<String> tokens = new ArrayList<>();
+		int length = where.length();
+		int i = 0;
+		while (i < length) {
+			char c = where.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '\'') {
+				int end = i + 1;
+				while (end < length) {
+					if (where.charAt(end) == '\'') {
+						if (end + 1 < length && where.charAt(end + 1) == '\'') {
+							end += 2;
+							continue;
+						}
+						break;
+					}
+					end++;
+				}
+				tokens.add("?");
+				i = end + 1;
+			} else if (c == '"' || c == '`' || c == '[') {
+				char close = c == '[' ? ']' : c;
+				int end = where.indexOf(close, i + 1);
+				if (end < 0) {
+					end = length;
+				}
+				tokens.add(where.substring(i + 1, end));
+				i = end + 1;
+			} else if (Character.isLetter(c) || c == '_') {
+				int end = i + 1;
+				while (end < length
+						&& (Character.isLetterOrDigit(where.charAt(end))
+								|| where.charAt(end) == '_')) {
+					end++;
+				}
+				tokens.add(where.substring(i, end));
+				i = end;
+			} else if (Character.isDigit(c)) {
+				int end = i + 1;
+				while (end < length && (Character.isLetterOrDigit(
+						where.charAt(end)) || where.charAt(end) == '.')) {
+					end++;
+				}
+				tokens.add("?");
+				i = end;
+			} else if (c == '=' || c == '<' || c == '>' || c == '!') {
+				int end = i + 1;
+				if (end < length && (where.charAt(end) == '='
+						|| (c == '<' && where.charAt(end) == '>'))) {
+					end++;
+				}
+				tokens.add(where.substring(i, end));
+				i = end;
+			} else {
+				tokens.add(String.valueOf(c));
+				i++;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Combine the nested and where arguments
+	 *
+	 * @param nestedArgs
+	 *            nested arguments
+	 * @param whereArgs
+	 *            where arguments
+	 * @return combined arguments
+	 */
+	private static String[] combineArgs(String[] nestedArgs,
+			String[] whereArgs) {
+		String[] args = null;
+		if (nestedArgs == null) {
+			args = whereArgs;
+		} else if (whereArgs == null) {
+			args = nestedArgs;
+		} else {
+			args = new String[nestedArgs.length + whereArgs.length];
+			System.arraycopy(nestedArgs, 0, args, 0, nestedArgs.length);
+			System.arraycopy(whereArgs, 0, args, nestedArgs.length,
+					whereArgs.length);
+		}
+		return args;
+	}
+
+}
@@ -0,0 +1,163 @@
+package mil.nga.geopackage.db;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Single step of an EXPLAIN QUERY PLAN result
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class QueryPlanStep {
+
+	/**
+	 * Table scan or search detail pattern, matching both the "SCAN TABLE name"
+	 * and newer "SCAN name" forms
+	 */
+	private static final Pattern TABLE_PATTERN = Pattern.compile(
+			"^(SCAN|SEARCH) (?:TABLE )?(\\S+)(?: AS \\S+)?(.*)$",
+			Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Index used detail pattern
+	 */
+	private static final Pattern INDEX_PATTERN = Pattern.compile(
+			"USING (?:COVERING )?INDEX (\\S+)", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Step id
+	 */
+	private final int id;
+
+	/**
+	 * Parent step id
+	 */
+	private final int parent;
+
+	/**
+	 * Step detail
+	 */
+	private final String detail;
+
+	/**
+	 * Scanned or searched table name
+	 */
+	private String table;
+
+	/**
+	 * Full table scan flag
+	 */
+	private boolean scan = false;
+
+	/**
+	 * Index name
+	 */
+	private String index;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id
+	 *            step id
+	 * @param parent
+	 *            parent step id
+	 * @param detail
+	 *            step detail
+	 */
+	public QueryPlanStep(int id, int parent, String detail) {
+		this.id = id;
+		this.parent = parent;
+		this.detail = detail;
+
+		Matcher matcher = TABLE_PATTERN.matcher(detail);
+		if (matcher.matches()) {
+			String name = matcher.group(2);
+			if (!name.equalsIgnoreCase("SUBQUERY")
+					&& !name.equalsIgnoreCase("CONSTANT")) {
+				table = name;
+				String remaining = matcher.group(3).toUpperCase();
+				scan = matcher.group(1).equalsIgnoreCase("SCAN")
+						&& !remaining.contains("USING")
+						&& !remaining.contains("VIRTUAL TABLE");
+			}
+		}
+
+		Matcher indexMatcher = INDEX_PATTERN.matcher(detail);
+		if (indexMatcher.find()) {
+			index = indexMatcher.group(1);
+		}
+	}
+
+	/**
+	 * Get the step id
+	 *
+	 * @return id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Get the parent step id
+	 *
+	 * @return parent id
+	 */
+	public int getParent() {
+		return parent;
+	}
+
+	/**
+	 * Get the step detail
+	 *
+	 * @return detail
+	 */
+	public String getDetail() {
+		return detail;
+	}
+
+	/**
+	 * Get the scanned or searched table name
+	 *
+	 * @return table name or null
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * Is the step a full table scan
+	 *
+	 * @return true if a full table scan
+	 */
+	public boolean isScan() {
+		return scan;
+	}
+
+	/**
+	 * Is the step a temporary B-tree for sorting, grouping or distinct values
+	 *
+	 * @return true if a temp B-tree
+	 */
+	public boolean isTempBTree() {
+		return detail.toUpperCase().contains("USE TEMP B-TREE");
+	}
+
+	/**
+	 * Get the index name used by the step
+	 *
+	 * @return index name or null
+	 */
+	public String getIndex() {
+		return index;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return detail;
+	}
+
+}
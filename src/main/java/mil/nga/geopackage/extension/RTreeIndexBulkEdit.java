@@ -0,0 +1,321 @@
+package mil.nga.geopackage.extension;
+
+import java.io.Closeable;
+import java.sql.Connection;
+
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureTable;
+
+/**
+ * RTree Index bulk edit session. The RTree triggers of the feature table are
+ * dropped for the session, replaced by temporary triggers recording the ids of
+ * inserted, updated and deleted rows without reading geometries. When the
+ * session ends the RTree is rebuilt with a Hilbert ordered bulk load when the
+ * changed ids exceed the rebuild ratio of the table, otherwise the changed ids
+ * are deleted from and reloaded into the RTree. The RTree triggers are always
+ * restored, including when applying the changes fails. A session begun within
+ * an active transaction of the connection applies its changes within that
+ * transaction, leaving the commit or roll back to the caller.
+ *
+ * Usage:
+ *
+ * <pre>
+ * RTreeIndexBulkEdit bulkEdit = rTreeIndexTableDao.beginBulkEdit();
+ * try {
+ * 	// feature table inserts, updates and deletes
+ * } finally {
+ * 	bulkEdit.end();
+ * }
+ * </pre>
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class RTreeIndexBulkEdit implements Closeable {
+
+	/**
+	 * Default ratio of changed ids to table rows at which the RTree is rebuilt
+	 * instead of updated with the changed ids
+	 */
+	public static final double DEFAULT_REBUILD_RATIO = 0.2;
+
+	/**
+	 * Temporary changed ids table and trigger name prefix
+	 */
+	private static final String TEMP_PREFIX = "rtree_edit_";
+
+	/**
+	 * Temporary changed ids table id column
+	 */
+	private static final String COLUMN_ID = "id";
+
+	/**
+	 * RTree Index Table DAO
+	 */
+	private final RTreeIndexTableDao tableDao;
+
+	/**
+	 * Feature table
+	 */
+	private final FeatureTable featureTable;
+
+	/**
+	 * Connection
+	 */
+	private final Connection connection;
+
+	/**
+	 * Temporary changed ids table name
+	 */
+	private final String changesTable;
+
+	/**
+	 * Ratio of changed ids to table rows at which the RTree is rebuilt
+	 */
+	private double rebuildRatio = DEFAULT_REBUILD_RATIO;
+
+	/**
+	 * Number of changed ids applied when ended
+	 */
+	private int changeCount = -1;
+
+	/**
+	 * True if the RTree was rebuilt when ended
+	 */
+	private boolean rebuilt = false;
+
+	/**
+	 * True once ended
+	 */
+	private boolean ended = false;
+
+	/**
+	 * Constructor, begins the bulk edit session
+	 *
+	 * @param tableDao
+	 *            RTree index table DAO
+	 */
+	RTreeIndexBulkEdit(RTreeIndexTableDao tableDao) {
+		this.tableDao = tableDao;
+		FeatureDao featureDao = tableDao.getFeatureDao();
+		featureTable = featureDao.getTable();
+		connection = featureDao.getConnection();
+		changesTable = TEMP_PREFIX + featureTable.getTableName() + "_"
+				+ featureTable.getGeometryColumn().getName();
+
+		if (!tableDao.has()) {
+			throw new GeoPackageException(
+					"Bulk edit requires an RTree index. Table: "
+							+ featureTable.getTableName());
+		}
+
+		RTreeIndexExtension rTree = tableDao.getRTreeIndexExtension();
+		createTracking();
+		try {
+			rTree.dropTriggers(featureTable);
+		} catch (RuntimeException e) {
+			dropTracking();
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the RTree index table DAO
+	 *
+	 * @return RTree index table DAO
+	 */
+	public RTreeIndexTableDao getTableDao() {
+		return tableDao;
+	}
+
+	/**
+	 * Get the ratio of changed ids to table rows at which the RTree is rebuilt
+	 * instead of updated with the changed ids
+	 *
+	 * @return rebuild ratio
+	 */
+	public double getRebuildRatio() {
+		return rebuildRatio;
+	}
+
+	/**
+	 * Set the ratio of changed ids to table rows at which the RTree is rebuilt
+	 * instead of updated with the changed ids
+	 *
+	 * @param rebuildRatio
+	 *            rebuild ratio, 0 to always rebuild
+	 */
+	public void setRebuildRatio(double rebuildRatio) {
+		this.rebuildRatio = rebuildRatio;
+	}
+
+	/**
+	 * Is the session active
+	 *
+	 * @return true if not ended
+	 */
+	public boolean isActive() {
+		return !ended;
+	}
+
+	/**
+	 * Get the number of changed ids recorded so far in the session, or applied
+	 * when ended
+	 *
+	 * @return changed id count
+	 */
+	public int getChangeCount() {
+		return ended ? changeCount : countChanges();
+	}
+
+	/**
+	 * Was the RTree rebuilt when the session ended
+	 *
+	 * @return true if rebuilt, false if updated with the changed ids or not
+	 *         ended
+	 */
+	public boolean isRebuilt() {
+		return rebuilt;
+	}
+
+	/**
+	 * End the session, applying the recorded changes to the RTree and
+	 * restoring the RTree triggers
+	 */
+	public void end() {
+		if (ended) {
+			return;
+		}
+		ended = true;
+		try {
+			apply();
+		} finally {
+			try {
+				dropTracking();
+			} finally {
+				tableDao.getRTreeIndexExtension()
+						.createAllTriggers(featureTable);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Ends the session
+	 */
+	@Override
+	public void close() {
+		end();
+	}
+
+	/**
+	 * Apply the recorded changes to the RTree
+	 */
+	private void apply() {
+
+		changeCount = countChanges();
+		if (changeCount == 0) {
+			return;
+		}
+
+		String tableName = featureTable.getTableName();
+		String geometryColumnName = featureTable.getGeometryColumn().getName();
+		String idColumnName = featureTable.getPkColumn().getName();
+		String rTreeTable = CoreSQLUtils.quoteWrap(tableDao.getTableName());
+
+		int count = tableDao.getFeatureDao().count();
+		rebuilt = changeCount >= rebuildRatio * count;
+
+		String deleteSql = "DELETE FROM " + rTreeTable;
+		String where = null;
+		if (!rebuilt) {
+			String changedIds = "SELECT " + COLUMN_ID + " FROM temp."
+					+ CoreSQLUtils.quoteWrap(changesTable);
+			deleteSql += " WHERE " + RTreeIndexExtension.COLUMN_ID + " IN ("
+					+ changedIds + ")";
+			where = CoreSQLUtils.quoteWrap(idColumnName) + " IN ("
+					+ changedIds + ")";
+		}
+
+		// Delete and reload within one transaction, joining an active one
+		boolean successful = false;
+		boolean autoCommit = SQLUtils.beginTransaction(connection);
+		try {
+			SQLUtils.execSQL(connection, deleteSql);
+			tableDao.getRTreeIndexExtension().bulkLoadRTreeIndex(tableName,
+					geometryColumnName, idColumnName, where, null, false);
+			successful = true;
+		} finally {
+			if (autoCommit) {
+				SQLUtils.endTransaction(connection, successful, autoCommit);
+			}
+		}
+	}
+
+	/**
+	 * Count the recorded changed ids
+	 *
+	 * @return changed id count
+	 */
+	private int countChanges() {
+		return SQLUtils.count(connection, "SELECT COUNT(*) FROM temp."
+				+ CoreSQLUtils.quoteWrap(changesTable), null);
+	}
+
+	/**
+	 * Create the temporary changed ids table and tracking triggers
+	 */
+	private void createTracking() {
+
+		String tableName = CoreSQLUtils.quoteWrap(featureTable.getTableName());
+		String geometryColumnName = CoreSQLUtils
+				.quoteWrap(featureTable.getGeometryColumn().getName());
+		String idColumnName = CoreSQLUtils
+				.quoteWrap(featureTable.getPkColumn().getName());
+		String changes = "temp." + CoreSQLUtils.quoteWrap(changesTable);
+
+		dropTracking();
+
+		SQLUtils.execSQL(connection, "CREATE TEMP TABLE "
+				+ CoreSQLUtils.quoteWrap(changesTable) + " (" + COLUMN_ID
+				+ " INTEGER PRIMARY KEY)");
+
+		SQLUtils.execSQL(connection, "CREATE TEMP TRIGGER "
+				+ CoreSQLUtils.quoteWrap(changesTable + "_insert")
+				+ " AFTER INSERT ON " + tableName
+				+ " BEGIN INSERT OR IGNORE INTO " + changes + " VALUES (NEW."
+				+ idColumnName + "); END");
+
+		SQLUtils.execSQL(connection, "CREATE TEMP TRIGGER "
+				+ CoreSQLUtils.quoteWrap(changesTable + "_update")
+				+ " AFTER UPDATE OF " + geometryColumnName + ", "
+				+ idColumnName + " ON " + tableName
+				+ " BEGIN INSERT OR IGNORE INTO " + changes + " VALUES (OLD."
+				+ idColumnName + "); INSERT OR IGNORE INTO " + changes
+				+ " VALUES (NEW." + idColumnName + "); END");
+
+		SQLUtils.execSQL(connection, "CREATE TEMP TRIGGER "
+				+ CoreSQLUtils.quoteWrap(changesTable + "_delete")
+				+ " AFTER DELETE ON " + tableName
+				+ " BEGIN INSERT OR IGNORE INTO " + changes + " VALUES (OLD."
+				+ idColumnName + "); END");
+	}
+
+	/**
+	 * Drop the temporary changed ids table and tracking triggers
+	 */
+	private void dropTracking() {
+		for (String trigger : new String[] { "_insert", "_update",
+				"_delete" }) {
+			SQLUtils.execSQL(connection, "DROP TRIGGER IF EXISTS temp."
+					+ CoreSQLUtils.quoteWrap(changesTable + trigger));
+		}
+		SQLUtils.execSQL(connection, "DROP TABLE IF EXISTS temp."
+				+ CoreSQLUtils.quoteWrap(changesTable));
+	}
+
+}
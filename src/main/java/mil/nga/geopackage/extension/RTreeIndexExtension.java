@@ -1,15 +1,25 @@
 package mil.nga.geopackage.extension;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.sqlite.Function;
 
 import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
 import mil.nga.geopackage.db.GeoPackageConnection;
+import mil.nga.geopackage.db.SQLUtils;
 import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureTable;
 import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeoPackageGeometryHeader;
+import mil.nga.geopackage.io.GeoPackageProgress;
 import mil.nga.geopackage.user.custom.UserCustomDao;
 import mil.nga.geopackage.user.custom.UserCustomTable;
 import mil.nga.sf.GeometryEnvelope;
@@ -28,6 +38,16 @@ public class RTreeIndexExtension extends RTreeIndexCoreExtension {
 	private static final Logger log = Logger
 			.getLogger(RTreeIndexExtension.class.getName());
 
+	/**
+	 * Hilbert curve order used to sort envelope centers for bulk loading
+	 */
+	private static final int HILBERT_ORDER = 16;
+
+	/**
+	 * Number of rows per bulk load insert batch
+	 */
+	private static final int BULK_BATCH_SIZE = 1000;
+
 	/**
 	 * Constructor
 	 * 
@@ -162,6 +182,396 @@ public class RTreeIndexExtension extends RTreeIndexCoreExtension {
 		});
 	}
 
+	/**
+	 * Create the RTree extension for the feature table, bulk loading the RTree
+	 * in Hilbert curve order of the feature envelope centers. Triggers are
+	 * created after the load completes.
+	 * 
+	 * @param featureTable
+	 *            feature table
+	 * @param progress
+	 *            progress, may be null
+	 * @return extension
+	 * @since 3.5.1
+	 */
+	public Extensions createBulk(FeatureTable featureTable,
+			GeoPackageProgress progress) {
+		return createBulk(featureTable.getTableName(),
+				featureTable.getGeometryColumnName(),
+				featureTable.getPkColumnName(), progress);
+	}
+
+	/**
+	 * Create the RTree extension for the table columns, bulk loading the RTree
+	 * before creating the triggers
+	 * 
+	 * @param tableName
+	 *            table name
+	 * @param geometryColumnName
+	 *            geometry column name
+	 * @param idColumnName
+	 *            id column name
+	 * @param progress
+	 *            progress, may be null
+	 * @return extension
+	 */
+	private Extensions createBulk(String tableName, String geometryColumnName,
+			String idColumnName, GeoPackageProgress progress) {
+
+		Extensions extension = getOrCreate(EXTENSION_NAME, tableName,
+				geometryColumnName, DEFINITION, ExtensionScopeType.WRITE_ONLY);
+
+		createAllFunctions();
+		createRTreeIndex(tableName, geometryColumnName);
+		bulkLoadRTreeIndex(tableName, geometryColumnName, idColumnName,
+				progress);
+		createAllTriggers(tableName, geometryColumnName, idColumnName);
+
+		return extension;
+	}
+
+	/**
+	 * Bulk load the RTree Spatial Index Values. Envelopes are read in a single
+	 * pass (from the geometry header when available), sorted on a Hilbert
+	 * curve, and inserted in that order within a single transaction. The
+	 * RTree triggers should not exist or be dropped during the load.
+	 * 
+	 * @param tableName
+	 *            table name
+	 * @param geometryColumnName
+	 *            geometry column name
+	 * @param idColumnName
+	 *            id column name
+	 * @param progress
+	 *            progress, may be null
+	 * @return loaded count
+	 * @since 3.5.1
+	 */
+	public int bulkLoadRTreeIndex(String tableName, String geometryColumnName,
+			String idColumnName, GeoPackageProgress progress) {
+		return bulkLoadRTreeIndex(tableName, geometryColumnName, idColumnName,
+				null, progress);
+	}
+
+	/**
+	 * Bulk load the RTree Spatial Index Values of the feature rows matching
+	 * the where clause, replacing existing values of the same ids. Envelopes
+	 * are inserted in Hilbert curve order within a single transaction. The
+	 * RTree triggers should not exist or be dropped during the load.
+	 * 
+	 * @param tableName
+	 *            table name
+	 * @param geometryColumnName
+	 *            geometry column name
+	 * @param idColumnName
+	 *            id column name
+	 * @param where
+	 *            feature table where clause, null for all rows
+	 * @param progress
+	 *            progress, may be null
+	 * @return loaded count
+	 * @since 3.5.1
+	 */
+	public int bulkLoadRTreeIndex(String tableName, String geometryColumnName,
+			String idColumnName, String where, GeoPackageProgress progress) {
+		return bulkLoadRTreeIndex(tableName, geometryColumnName, idColumnName,
+				where, progress, true);
+	}
+
+	/**
+	 * Bulk load the RTree Spatial Index Values of the feature rows matching
+	 * the where clause, replacing existing values of the same ids. Envelopes
+	 * are inserted in Hilbert curve order. Without a transaction, the inserts
+	 * join the active transaction of the connection, which is left to the
+	 * caller to commit or roll back, including partial loads of a cancelled
+	 * progress. The RTree triggers should not exist or be dropped during the
+	 * load.
+	 * 
+	 * @param tableName
+	 *            table name
+	 * @param geometryColumnName
+	 *            geometry column name
+	 * @param idColumnName
+	 *            id column name
+	 * @param where
+	 *            feature table where clause, null for all rows
+	 * @param progress
+	 *            progress, may be null
+	 * @param transaction
+	 *            true to load within a single committed transaction, false to
+	 *            join the active transaction
+	 * @return loaded count
+	 * @since 3.5.1
+	 */
+	public int bulkLoadRTreeIndex(String tableName, String geometryColumnName,
+			String idColumnName, String where, GeoPackageProgress progress,
+			boolean transaction) {
+
+		Connection connection = getGeoPackage().getConnection()
+				.getConnection();
+
+		// Read the envelopes in a single pass
+		BulkEnvelopes envelopes = new BulkEnvelopes();
+		String readSql = "SELECT " + CoreSQLUtils.quoteWrap(idColumnName)
+				+ ", " + CoreSQLUtils.quoteWrap(geometryColumnName) + " FROM "
+				+ CoreSQLUtils.quoteWrap(tableName);
+		if (where != null) {
+			readSql += " WHERE " + where;
+		}
+		ResultSet resultSet = SQLUtils.query(connection, readSql, null);
+		try {
+			while ((progress == null || progress.isActive())
+					&& resultSet.next()) {
+				long id = resultSet.getLong(1);
+				try {
+					GeometryEnvelope envelope = GeoPackageGeometryHeader
+							.getEnvelope(resultSet.getBytes(2));
+					if (envelope != null) {
+						envelopes.add(id, envelope);
+					}
+				} catch (Exception e) {
+					log.log(Level.SEVERE,
+							"Failed to read feature envelope. Table: "
+									+ tableName + ", Id: " + id,
+							e);
+				}
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to read envelopes for RTree bulk load. Table: "
+							+ tableName,
+					e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, readSql);
+		}
+
+		if (progress != null && !progress.isActive()) {
+			return 0;
+		}
+
+		long[] order = envelopes.hilbertOrder();
+
+		// Insert in Hilbert order
+		String rTreeTable = RTREE_PREFIX + tableName + "_"
+				+ geometryColumnName;
+		String insertSql = "INSERT OR REPLACE INTO "
+				+ CoreSQLUtils.quoteWrap(rTreeTable) + " (" + COLUMN_ID + ", "
+				+ COLUMN_MIN_X + ", " + COLUMN_MAX_X + ", " + COLUMN_MIN_Y
+				+ ", " + COLUMN_MAX_Y + ") VALUES (?, ?, ?, ?, ?)";
+
+		int count = 0;
+		boolean successful = false;
+		PreparedStatement statement = null;
+		boolean autoCommit = false;
+		if (transaction) {
+			autoCommit = SQLUtils.beginTransaction(connection);
+		}
+		try {
+			statement = connection.prepareStatement(insertSql);
+			int batchCount = 0;
+			for (int i = 0; i < order.length; i++) {
+				if (batchCount == 0 && progress != null
+						&& !progress.isActive()) {
+					break;
+				}
+				int index = (int) (order[i] & Integer.MAX_VALUE);
+				envelopes.bind(statement, index);
+				statement.addBatch();
+				batchCount++;
+				if (batchCount == BULK_BATCH_SIZE || i == order.length - 1) {
+					statement.executeBatch();
+					count += batchCount;
+					if (progress != null) {
+						progress.addProgress(batchCount);
+					}
+					batchCount = 0;
+				}
+			}
+			successful = progress == null || progress.isActive();
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to bulk load RTree. Table: " + tableName, e);
+		} finally {
+			SQLUtils.closeStatement(statement, insertSql);
+			if (transaction) {
+				SQLUtils.endTransaction(connection, successful, autoCommit);
+			}
+		}
+
+		if (!successful) {
+			count = 0;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Calculate the Hilbert curve distance of the cell coordinates
+	 * 
+	 * @param n
+	 *            number of cells per side, a power of 2
+	 * @param x
+	 *            x cell
+	 * @param y
+	 *            y cell
+	 * @return Hilbert distance
+	 */
+	static long hilbertDistance(int n, int x, int y) {
+		long d = 0;
+		for (int s = n / 2; s > 0; s /= 2) {
+			int rx = (x & s) > 0 ? 1 : 0;
+			int ry = (y & s) > 0 ? 1 : 0;
+			d += (long) s * s * ((3 * rx) ^ ry);
+			if (ry == 0) {
+				if (rx == 1) {
+					x = n - 1 - x;
+					y = n - 1 - y;
+				}
+				int temp = x;
+				x = y;
+				y = temp;
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * Growable primitive storage of ids and envelopes for bulk loading
+	 */
+	private static class BulkEnvelopes {
+
+		/**
+		 * Feature ids
+		 */
+		private long[] ids = new long[1024];
+
+		/**
+		 * Envelope values as min x, max x, min y, max y
+		 */
+		private double[] values = new double[1024 * 4];
+
+		/**
+		 * Number of envelopes
+		 */
+		private int size = 0;
+
+		/**
+		 * Add an envelope
+		 * 
+		 * @param id
+		 *            feature id
+		 * @param envelope
+		 *            envelope
+		 */
+		public void add(long id, GeometryEnvelope envelope) {
+			if (size == ids.length) {
+				if (size == Integer.MAX_VALUE / 4) {
+					throw new GeoPackageException(
+							"Too many features for an RTree bulk load: "
+									+ size);
+				}
+				int capacity = (int) Math.min((long) size * 2,
+						Integer.MAX_VALUE / 4);
+				ids = Arrays.copyOf(ids, capacity);
+				values = Arrays.copyOf(values, capacity * 4);
+			}
+			ids[size] = id;
+			int offset = size * 4;
+			values[offset] = envelope.getMinX();
+			values[offset + 1] = envelope.getMaxX();
+			values[offset + 2] = envelope.getMinY();
+			values[offset + 3] = envelope.getMaxY();
+			size++;
+		}
+
+		/**
+		 * Get the envelope indices sorted by the Hilbert distance of their
+		 * centers. Each value holds the Hilbert distance in the high bits and
+		 * the envelope index in the low 31 bits.
+		 * 
+		 * @return sorted Hilbert distance and index values
+		 */
+		public long[] hilbertOrder() {
+
+			double minX = Double.MAX_VALUE;
+			double minY = Double.MAX_VALUE;
+			double maxX = -Double.MAX_VALUE;
+			double maxY = -Double.MAX_VALUE;
+			for (int i = 0; i < size; i++) {
+				int offset = i * 4;
+				double x = (values[offset] + values[offset + 1]) / 2.0;
+				double y = (values[offset + 2] + values[offset + 3]) / 2.0;
+				minX = Math.min(minX, x);
+				maxX = Math.max(maxX, x);
+				minY = Math.min(minY, y);
+				maxY = Math.max(maxY, y);
+			}
+
+			int n = 1 << HILBERT_ORDER;
+			double xRange = maxX - minX;
+			double yRange = maxY - minY;
+
+			long[] order = new long[size];
+			for (int i = 0; i < size; i++) {
+				int offset = i * 4;
+				double x = (values[offset] + values[offset + 1]) / 2.0;
+				double y = (values[offset + 2] + values[offset + 3]) / 2.0;
+				int cellX = cell(x, minX, xRange, n);
+				int cellY = cell(y, minY, yRange, n);
+				long distance = hilbertDistance(n, cellX, cellY);
+				order[i] = (distance << 31) | i;
+			}
+			Arrays.sort(order);
+
+			return order;
+		}
+
+		/**
+		 * Get the Hilbert grid cell of the value
+		 * 
+		 * @param value
+		 *            value
+		 * @param min
+		 *            minimum value
+		 * @param range
+		 *            value range
+		 * @param n
+		 *            number of cells
+		 * @return cell
+		 */
+		private static int cell(double value, double min, double range,
+				int n) {
+			int cell = 0;
+			if (range > 0 && !Double.isNaN(value)
+					&& !Double.isInfinite(value)) {
+				cell = (int) ((value - min) / range * (n - 1));
+				cell = Math.max(0, Math.min(n - 1, cell));
+			}
+			return cell;
+		}
+
+		/**
+		 * Bind the envelope to the insert statement
+		 * 
+		 * @param statement
+		 *            insert statement
+		 * @param index
+		 *            envelope index
+		 * @throws SQLException
+		 *             upon failure
+		 */
+		public void bind(PreparedStatement statement, int index)
+				throws SQLException {
+			int offset = index * 4;
+			statement.setLong(1, ids[index]);
+			statement.setDouble(2, values[offset]);
+			statement.setDouble(3, values[offset + 1]);
+			statement.setDouble(4, values[offset + 2]);
+			statement.setDouble(5, values[offset + 3]);
+		}
+
+	}
+
 	/**
 	 * Create the function for the connection
 	 * 
@@ -1,18 +1,33 @@
 package mil.nga.geopackage.extension;
 
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackageException;
 import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.CountEstimate;
+import mil.nga.geopackage.db.CountEstimator;
+import mil.nga.geopackage.db.QueryPlan;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.features.index.FeatureDistance;
 import mil.nga.geopackage.features.user.FeatureDao;
 import mil.nga.geopackage.features.user.FeatureResultSet;
 import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeometryPredicates;
 import mil.nga.geopackage.io.GeoPackageProgress;
+import mil.nga.geopackage.user.CompiledFilter;
 import mil.nga.geopackage.user.custom.UserCustomDao;
 import mil.nga.geopackage.user.custom.UserCustomResultSet;
 import mil.nga.geopackage.user.custom.UserCustomRow;
+import mil.nga.sf.Geometry;
 import mil.nga.sf.GeometryEnvelope;
 import mil.nga.sf.proj.Projection;
 import mil.nga.sf.proj.ProjectionTransform;
@@ -25,6 +40,22 @@ import mil.nga.sf.proj.ProjectionTransform;
  */
 public class RTreeIndexTableDao extends UserCustomDao {
 
+	/**
+	 * RTree root node number
+	 */
+	private static final long ROOT_NODE = 1;
+
+	/**
+	 * RTree node header size in bytes: depth and cell count
+	 */
+	private static final int NODE_HEADER_SIZE = 4;
+
+	/**
+	 * RTree two dimensional node cell size in bytes: id and four 32 bit
+	 * floating point bounds
+	 */
+	private static final int NODE_CELL_SIZE = 24;
+
 	/**
 	 * RTree index extension
 	 */
@@ -117,6 +148,40 @@ public class RTreeIndexTableDao extends UserCustomDao {
 		return extension;
 	}
 
+	/**
+	 * Create the RTree extension for the feature table using a bulk load of
+	 * the feature envelopes sorted on a Hilbert curve, using the set progress
+	 * 
+	 * @return extension
+	 * @since 3.5.1
+	 */
+	public Extensions createBulk() {
+		return createBulk(progress);
+	}
+
+	/**
+	 * Create the RTree extension for the feature table using a bulk load of
+	 * the feature envelopes sorted on a Hilbert curve. Produces a better packed
+	 * RTree and loads faster than a row by row load in table order.
+	 * 
+	 * @param progress
+	 *            progress, may be null
+	 * @return extension
+	 * @since 3.5.1
+	 */
+	public Extensions createBulk(GeoPackageProgress progress) {
+		Extensions extension = null;
+		if (!has()) {
+			extension = rTree.createBulk(featureDao.getTable(), progress);
+			if (progress != null && !progress.isActive()
+					&& progress.cleanupOnCancel()) {
+				delete();
+				extension = null;
+			}
+		}
+		return extension;
+	}
+
 	/**
 	 * Delete the RTree extension for the feature table
 	 */
@@ -124,6 +189,19 @@ public class RTreeIndexTableDao extends UserCustomDao {
 		rTree.delete(featureDao.getTable());
 	}
 
+	/**
+	 * Begin a bulk edit session, suspending the per row RTree triggers until
+	 * the session is ended. Changed feature ids are recorded and applied to
+	 * the RTree when the session ends, by a rebuild or an update of the
+	 * changed ids depending on the change ratio.
+	 * 
+	 * @return bulk edit session, must be ended
+	 * @since 3.5.1
+	 */
+	public RTreeIndexBulkEdit beginBulkEdit() {
+		return new RTreeIndexBulkEdit(this);
+	}
+
 	/**
 	 * Get the RTree index extension
 	 * 
@@ -244,6 +322,21 @@ public class RTreeIndexTableDao extends UserCustomDao {
 		return super.count(where, args);
 	}
 
+	/**
+	 * Estimate the number of RTree entries from the cell counts of sampled
+	 * RTree nodes, without scanning the virtual table. Small RTrees are
+	 * counted exactly from all nodes.
+	 * 
+	 * @return count estimate
+	 * @since 3.5.1
+	 */
+	@Override
+	public CountEstimate estimateCount() {
+		validateRTree();
+		return CountEstimator.estimateRTreeCount(getConnection(),
+				getTableName());
+	}
+
 	/**
 	 * Query for all features
 	 * 
@@ -411,15 +504,45 @@ public class RTreeIndexTableDao extends UserCustomDao {
 	 */
 	@Override
 	public BoundingBox getBoundingBox() {
-		List<Double> values = querySingleRowTypedResults(
-				"SELECT MIN(" + RTreeIndexExtension.COLUMN_MIN_X + "), MIN("
-						+ RTreeIndexExtension.COLUMN_MIN_Y + "), MAX("
-						+ RTreeIndexExtension.COLUMN_MAX_X + "), MAX("
-						+ RTreeIndexExtension.COLUMN_MAX_Y + ") FROM "
-						+ CoreSQLUtils.quoteWrap(getTableName()),
-				null);
-		BoundingBox boundingBox = new BoundingBox(values.get(0), values.get(1),
-				values.get(2), values.get(3));
+		return getBoundingBox(null, null);
+	}
+
+	/**
+	 * Get the bounds of the features matching the where clause from the RTree
+	 * aggregates, joining the RTree ids to the feature table ids without
+	 * decoding geometries
+	 * 
+	 * @param where
+	 *            where clause, null for all features
+	 * @param whereArgs
+	 *            where arguments
+	 * @return bounding box, null when no features match
+	 * @since 3.5.1
+	 */
+	public BoundingBox getBoundingBox(String where, String[] whereArgs) {
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT MIN(").append(RTreeIndexExtension.COLUMN_MIN_X)
+				.append("), MIN(").append(RTreeIndexExtension.COLUMN_MIN_Y)
+				.append("), MAX(").append(RTreeIndexExtension.COLUMN_MAX_X)
+				.append("), MAX(").append(RTreeIndexExtension.COLUMN_MAX_Y)
+				.append(") FROM ")
+				.append(CoreSQLUtils.quoteWrap(getTableName()));
+		if (where != null) {
+			sql.append(" WHERE ").append(RTreeIndexExtension.COLUMN_ID)
+					.append(" IN (SELECT ")
+					.append(CoreSQLUtils
+							.quoteWrap(featureDao.getIdColumnName()))
+					.append(" FROM ")
+					.append(CoreSQLUtils.quoteWrap(featureDao.getTableName()))
+					.append(" WHERE ").append(where).append(")");
+		}
+		List<Double> values = querySingleRowTypedResults(sql.toString(),
+				whereArgs);
+		BoundingBox boundingBox = null;
+		if (values != null && values.get(0) != null) {
+			boundingBox = new BoundingBox(values.get(0), values.get(1),
+					values.get(2), values.get(3));
+		}
 		return boundingBox;
 	}
 
@@ -1175,6 +1298,85 @@ public class RTreeIndexTableDao extends UserCustomDao {
 				envelope.getMaxX(), envelope.getMaxY(), where, whereArgs);
 	}
 
+	/**
+	 * Query for features within the geometry envelope matching the compiled
+	 * filter field values, bound as string where arguments which do not
+	 * support byte array values
+	 * 
+	 * @param envelope
+	 *            geometry envelope
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return feature results
+	 * @since 3.5.1
+	 */
+	public FeatureResultSet queryFeatures(GeometryEnvelope envelope,
+			CompiledFilter filter, Object... values) {
+		return queryFeatures(envelope, filter.getWhere(values),
+				filter.getWhereArgs(values));
+	}
+
+	/**
+	 * Count the features within the geometry envelope matching the compiled
+	 * filter field values, binding the typed values on a reusable statement
+	 * 
+	 * @param envelope
+	 *            geometry envelope
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public int countFeatures(GeometryEnvelope envelope, CompiledFilter filter,
+			Object... values) {
+		validateRTree();
+		String where = buildWhere(envelope.getMinX(), envelope.getMinY(),
+				envelope.getMaxX(), envelope.getMaxY());
+		String[] whereArgs = buildWhereArgs(envelope.getMinX(),
+				envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY());
+		return filter.countIn(queryIdsSQL(where), whereArgs, values);
+	}
+
+	/**
+	 * Query for features within the bounding box matching the compiled filter
+	 * field values
+	 * 
+	 * @param boundingBox
+	 *            bounding box
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return feature results
+	 * @since 3.5.1
+	 */
+	public FeatureResultSet queryFeatures(BoundingBox boundingBox,
+			CompiledFilter filter, Object... values) {
+		return queryFeatures(boundingBox.buildEnvelope(), filter, values);
+	}
+
+	/**
+	 * Count the features within the bounding box matching the compiled filter
+	 * field values
+	 * 
+	 * @param boundingBox
+	 *            bounding box
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public int countFeatures(BoundingBox boundingBox, CompiledFilter filter,
+			Object... values) {
+		return countFeatures(boundingBox.buildEnvelope(), filter, values);
+	}
+
 	/**
 	 * Query for rows within the bounds
 	 * 
@@ -1476,6 +1678,53 @@ public class RTreeIndexTableDao extends UserCustomDao {
 				where, whereArgs);
 	}
 
+	/**
+	 * Explain the query plan of a feature query joined with the RTree index
+	 * ids, reporting scans and temp B-trees with secondary index
+	 * recommendations for the feature where clause columns
+	 * 
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return query plan
+	 * @since 3.5.1
+	 */
+	public QueryPlan explainQueryFeatures(String where, String[] whereArgs) {
+		validateRTree();
+		return featureDao.explainQueryIn(queryIdsSQL(), null, where,
+				whereArgs);
+	}
+
+	/**
+	 * Explain the query plan of a feature query joined with the RTree index
+	 * ids within the bounds, reporting scans and temp B-trees with secondary
+	 * index recommendations for the feature where clause columns
+	 * 
+	 * @param minX
+	 *            min x
+	 * @param minY
+	 *            min y
+	 * @param maxX
+	 *            max x
+	 * @param maxY
+	 *            max y
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return query plan
+	 * @since 3.5.1
+	 */
+	public QueryPlan explainQueryFeatures(double minX, double minY,
+			double maxX, double maxY, String where, String[] whereArgs) {
+		validateRTree();
+		String whereBounds = buildWhere(minX, minY, maxX, maxY);
+		String[] whereBoundsArgs = buildWhereArgs(minX, minY, maxX, maxY);
+		return featureDao.explainQueryIn(queryIdsSQL(whereBounds),
+				whereBoundsArgs, where, whereArgs);
+	}
+
 	/**
 	 * Query for features within the bounds
 	 * 
@@ -1533,6 +1782,233 @@ public class RTreeIndexTableDao extends UserCustomDao {
 				where, whereArgs);
 	}
 
+	/**
+	 * Query for the nearest features to the location using a best first
+	 * traversal of the RTree nodes. Nodes and feature envelopes are visited in
+	 * order of their minimum distance to the location, and feature geometries
+	 * are only read when their envelope could be closer than the current
+	 * nearest features.
+	 * 
+	 * @param x
+	 *            x coordinate in the feature projection
+	 * @param y
+	 *            y coordinate in the feature projection
+	 * @param k
+	 *            maximum number of features
+	 * @param maxDistance
+	 *            maximum planar distance in the feature projection units
+	 * @return up to k nearest features ordered by distance
+	 * @since 3.5.1
+	 */
+	public List<FeatureDistance> queryNearest(double x, double y, int k,
+			double maxDistance) {
+		validateRTree();
+
+		List<FeatureDistance> nearest = new ArrayList<>();
+		if (k <= 0) {
+			return nearest;
+		}
+
+		String nodeSql = "SELECT data FROM "
+				+ CoreSQLUtils.quoteWrap(getTableName() + "_node")
+				+ " WHERE nodeno = ?";
+		String geometrySql = "SELECT "
+				+ CoreSQLUtils.quoteWrap(featureDao.getGeometryColumnName())
+				+ " FROM " + CoreSQLUtils.quoteWrap(featureDao.getTableName())
+				+ " WHERE "
+				+ CoreSQLUtils.quoteWrap(featureDao.getIdColumnName())
+				+ " = ?";
+
+		PreparedStatement nodeStatement = null;
+		PreparedStatement geometryStatement = null;
+		try {
+			nodeStatement = getConnection().prepareStatement(nodeSql);
+			geometryStatement = getConnection().prepareStatement(geometrySql);
+
+			PriorityQueue<NearestEntry> queue = new PriorityQueue<>();
+			queue.add(new NearestEntry(NearestEntry.NODE, ROOT_NODE, -1, 0));
+
+			while (!queue.isEmpty() && nearest.size() < k) {
+
+				NearestEntry entry = queue.poll();
+				if (entry.distance > maxDistance) {
+					break;
+				}
+
+				switch (entry.type) {
+
+				case NearestEntry.FEATURE:
+					nearest.add(new FeatureDistance(entry.id, entry.distance));
+					break;
+
+				case NearestEntry.ENVELOPE:
+					byte[] geometryBytes = readBlob(geometryStatement,
+							entry.id);
+					if (geometryBytes != null) {
+						Geometry geometry = new GeoPackageGeometryData(
+								geometryBytes).getGeometry();
+						if (geometry != null) {
+							double distance = GeometryPredicates
+									.distance(geometry, x, y);
+							if (distance <= maxDistance) {
+								queue.add(new NearestEntry(
+										NearestEntry.FEATURE, entry.id, -1,
+										distance));
+							}
+						}
+					}
+					break;
+
+				case NearestEntry.NODE:
+					byte[] node = readBlob(nodeStatement, entry.id);
+					if (node == null) {
+						break;
+					}
+					ByteBuffer buffer = ByteBuffer.wrap(node);
+					int level = entry.level;
+					if (entry.id == ROOT_NODE) {
+						level = buffer.getShort(0) & 0xFFFF;
+					}
+					int cells = buffer.getShort(2) & 0xFFFF;
+					int childType = level == 0 ? NearestEntry.ENVELOPE
+							: NearestEntry.NODE;
+					for (int cell = 0; cell < cells; cell++) {
+						int offset = NODE_HEADER_SIZE + cell * NODE_CELL_SIZE;
+						long id = buffer.getLong(offset);
+						double minX = buffer.getFloat(offset + 8);
+						double maxX = buffer.getFloat(offset + 12);
+						double minY = buffer.getFloat(offset + 16);
+						double maxY = buffer.getFloat(offset + 20);
+						double distance = GeometryPredicates.envelopeDistance(
+								minX, minY, maxX, maxY, x, y);
+						if (distance <= maxDistance) {
+							queue.add(new NearestEntry(childType, id,
+									level - 1, distance));
+						}
+					}
+					break;
+
+				default:
+					throw new GeoPackageException(
+							"Unsupported nearest entry type: " + entry.type);
+				}
+			}
+
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to query nearest features. RTree Table: "
+							+ getTableName(),
+					e);
+		} finally {
+			SQLUtils.closeStatement(nodeStatement, nodeSql);
+			SQLUtils.closeStatement(geometryStatement, geometrySql);
+		}
+
+		return nearest;
+	}
+
+	/**
+	 * Read a single blob value for the id
+	 * 
+	 * @param statement
+	 *            prepared statement with a single id argument
+	 * @param id
+	 *            id
+	 * @return blob or null
+	 * @throws SQLException
+	 *             upon failure
+	 */
+	private byte[] readBlob(PreparedStatement statement, long id)
+			throws SQLException {
+		byte[] blob = null;
+		statement.setLong(1, id);
+		ResultSet resultSet = statement.executeQuery();
+		try {
+			if (resultSet.next()) {
+				blob = resultSet.getBytes(1);
+			}
+		} finally {
+			resultSet.close();
+		}
+		return blob;
+	}
+
+	/**
+	 * Best first nearest neighbor queue entry
+	 */
+	private static class NearestEntry implements Comparable<NearestEntry> {
+
+		/**
+		 * Feature with exact distance
+		 */
+		static final int FEATURE = 0;
+
+		/**
+		 * Feature envelope with minimum distance
+		 */
+		static final int ENVELOPE = 1;
+
+		/**
+		 * RTree node with minimum distance
+		 */
+		static final int NODE = 2;
+
+		/**
+		 * Entry type
+		 */
+		final int type;
+
+		/**
+		 * Feature id or node number
+		 */
+		final long id;
+
+		/**
+		 * Node level, 0 for leaf nodes
+		 */
+		final int level;
+
+		/**
+		 * Distance, exact for features and minimum otherwise
+		 */
+		final double distance;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param type
+		 *            entry type
+		 * @param id
+		 *            feature id or node number
+		 * @param level
+		 *            node level
+		 * @param distance
+		 *            distance
+		 */
+		NearestEntry(int type, long id, int level, double distance) {
+			this.type = type;
+			this.id = id;
+			this.level = level;
+			this.distance = distance;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int compareTo(NearestEntry other) {
+			int compare = Double.compare(distance, other.distance);
+			if (compare == 0) {
+				compare = Integer.compare(type, other.type);
+				if (compare == 0) {
+					compare = Long.compare(id, other.id);
+				}
+			}
+			return compare;
+		}
+
+	}
+
 	/**
 	 * Validate that the RTree extension exists for the table and column
 	 */
@@ -0,0 +1,106 @@
+package mil.nga.geopackage.extension.changes;
+
+import java.util.Map;
+
+/**
+ * Tracked table row change, the latest change of the row as of the version
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class Change {
+
+	/**
+	 * Change log version
+	 */
+	private final long version;
+
+	/**
+	 * Table name
+	 */
+	private final String tableName;
+
+	/**
+	 * Row id
+	 */
+	private final long id;
+
+	/**
+	 * Operation
+	 */
+	private final ChangeOperation operation;
+
+	/**
+	 * Row values by column name for inserts and updates, null for deletes
+	 */
+	private final Map<String, Object> values;
+
+	/**
+	 * Constructor
+	 *
+	 * @param version
+	 *            change log version
+	 * @param tableName
+	 *            table name
+	 * @param id
+	 *            row id
+	 * @param operation
+	 *            operation
+	 * @param values
+	 *            row values by column name, null for deletes
+	 */
+	public Change(long version, String tableName, long id,
+			ChangeOperation operation, Map<String, Object> values) {
+		this.version = version;
+		this.tableName = tableName;
+		this.id = id;
+		this.operation = operation;
+		this.values = values;
+	}
+
+	/**
+	 * Get the change log version
+	 *
+	 * @return version
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get the table name
+	 *
+	 * @return table name
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Get the row id
+	 *
+	 * @return row id
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Get the operation
+	 *
+	 * @return operation
+	 */
+	public ChangeOperation getOperation() {
+		return operation;
+	}
+
+	/**
+	 * Get the row values by column name
+	 *
+	 * @return row values, null for deletes
+	 */
+	public Map<String, Object> getValues() {
+		return values;
+	}
+
+}
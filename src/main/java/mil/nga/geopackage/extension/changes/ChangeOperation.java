@@ -0,0 +1,76 @@
+package mil.nga.geopackage.extension.changes;
+
+/**
+ * Change log row operation
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public enum ChangeOperation {
+
+	/**
+	 * Row inserted
+	 */
+	INSERT("I"),
+
+	/**
+	 * Row updated
+	 */
+	UPDATE("U"),
+
+	/**
+	 * Row deleted
+	 */
+	DELETE("D");
+
+	/**
+	 * Change log code
+	 */
+	private final String code;
+
+	/**
+	 * Constructor
+	 *
+	 * @param code
+	 *            change log code
+	 */
+	private ChangeOperation(String code) {
+		this.code = code;
+	}
+
+	/**
+	 * Get the change log code
+	 *
+	 * @return code
+	 */
+	public String getCode() {
+		return code;
+	}
+
+	/**
+	 * Is the operation an insert or update of the row values
+	 *
+	 * @return true if an upsert
+	 */
+	public boolean isUpsert() {
+		return this != DELETE;
+	}
+
+	/**
+	 * Get the operation from the change log code
+	 *
+	 * @param code
+	 *            change log code
+	 * @return operation
+	 */
+	public static ChangeOperation fromCode(String code) {
+		for (ChangeOperation operation : values()) {
+			if (operation.code.equals(code)) {
+				return operation;
+			}
+		}
+		throw new IllegalArgumentException(
+				"Unsupported change operation code: " + code);
+	}
+
+}
@@ -0,0 +1,245 @@
+package mil.nga.geopackage.extension.changes;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.SQLUtils;
+
+/**
+ * Change Reader, streams the change log after a version in version order.
+ * The log is read in pages, and the current values of the inserted and
+ * updated rows of each page are queried per table by id, so reading costs
+ * scale with the number of changed rows rather than the table sizes. No
+ * result sets remain open between pages.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class ChangeReader implements Iterator<Change>, Closeable {
+
+	/**
+	 * Change tracking extension
+	 */
+	private final ChangeTrackingExtension extension;
+
+	/**
+	 * Connection
+	 */
+	private final Connection connection;
+
+	/**
+	 * Number of change log rows read per page
+	 */
+	private final int pageSize;
+
+	/**
+	 * Highest change log version read
+	 */
+	private long version;
+
+	/**
+	 * Changes of the current page
+	 */
+	private final Deque<Change> changes = new ArrayDeque<>();
+
+	/**
+	 * True once the change log has been read
+	 */
+	private boolean done = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param extension
+	 *            change tracking extension
+	 * @param version
+	 *            read changes after this version
+	 * @param pageSize
+	 *            number of change log rows read per page
+	 */
+	ChangeReader(ChangeTrackingExtension extension, long version,
+			int pageSize) {
+		this.extension = extension;
+		this.connection = extension.getConnection();
+		this.version = version;
+		this.pageSize = Math.max(1, pageSize);
+	}
+
+	/**
+	 * Get the highest change log version read, the version to read after on
+	 * the next sync once all changes have been consumed
+	 *
+	 * @return version
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean hasNext() {
+		while (changes.isEmpty() && !done) {
+			readPage();
+		}
+		return !changes.isEmpty();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Change next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return changes.poll();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		changes.clear();
+		done = true;
+	}
+
+	/**
+	 * Read the next page of the change log and the changed row values
+	 */
+	private void readPage() {
+
+		List<Object[]> logRows = new ArrayList<>(pageSize);
+		Map<String, List<Long>> upsertIds = new LinkedHashMap<>();
+
+		String sql = "SELECT " + ChangeTrackingExtension.COLUMN_VERSION + ", "
+				+ ChangeTrackingExtension.COLUMN_TABLE_NAME + ", "
+				+ ChangeTrackingExtension.COLUMN_ROW_ID + ", "
+				+ ChangeTrackingExtension.COLUMN_OPERATION + " FROM "
+				+ CoreSQLUtils.quoteWrap(ChangeTrackingExtension.TABLE_NAME)
+				+ " WHERE " + ChangeTrackingExtension.COLUMN_VERSION
+				+ " > ? ORDER BY " + ChangeTrackingExtension.COLUMN_VERSION
+				+ " LIMIT " + pageSize;
+		ResultSet resultSet = SQLUtils.query(connection, sql,
+				new String[] { String.valueOf(version) });
+		try {
+			while (resultSet.next()) {
+				long rowVersion = resultSet.getLong(1);
+				String tableName = resultSet.getString(2);
+				long id = resultSet.getLong(3);
+				ChangeOperation operation = ChangeOperation
+						.fromCode(resultSet.getString(4));
+				logRows.add(new Object[] { rowVersion, tableName, id,
+						operation });
+				if (operation.isUpsert()) {
+					List<Long> ids = upsertIds.get(tableName);
+					if (ids == null) {
+						ids = new ArrayList<>();
+						upsertIds.put(tableName, ids);
+					}
+					ids.add(id);
+				}
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException("Failed to read the change log", e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql);
+		}
+
+		if (logRows.size() < pageSize) {
+			done = true;
+		}
+
+		Map<String, Map<Long, Map<String, Object>>> rowValues = new HashMap<>();
+		for (Map.Entry<String, List<Long>> tableIds : upsertIds.entrySet()) {
+			rowValues.put(tableIds.getKey(),
+					queryRows(tableIds.getKey(), tableIds.getValue()));
+		}
+
+		for (Object[] logRow : logRows) {
+			long rowVersion = (Long) logRow[0];
+			String tableName = (String) logRow[1];
+			long id = (Long) logRow[2];
+			ChangeOperation operation = (ChangeOperation) logRow[3];
+			version = rowVersion;
+			Map<String, Object> values = null;
+			if (operation.isUpsert()) {
+				values = rowValues.get(tableName).get(id);
+				if (values == null) {
+					// Deleted after the page was read, a later delete follows
+					continue;
+				}
+			}
+			changes.add(new Change(rowVersion, tableName, id, operation,
+					values));
+		}
+	}
+
+	/**
+	 * Query the current row values by id
+	 *
+	 * @param tableName
+	 *            table name
+	 * @param ids
+	 *            row ids
+	 * @return row values by id
+	 */
+	private Map<Long, Map<String, Object>> queryRows(String tableName,
+			List<Long> ids) {
+
+		Map<Long, Map<String, Object>> rows = new HashMap<>();
+
+		String idColumn = extension.getIdColumn(tableName);
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT * FROM ").append(CoreSQLUtils.quoteWrap(tableName))
+				.append(" WHERE ").append(CoreSQLUtils.quoteWrap(idColumn))
+				.append(" IN (");
+		for (int i = 0; i < ids.size(); i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(ids.get(i));
+		}
+		sql.append(")");
+
+		ResultSet resultSet = SQLUtils.query(connection, sql.toString(),
+				null);
+		try {
+			ResultSetMetaData metadata = resultSet.getMetaData();
+			int columns = metadata.getColumnCount();
+			int idIndex = resultSet.findColumn(idColumn);
+			while (resultSet.next()) {
+				Map<String, Object> values = new LinkedHashMap<>();
+				for (int i = 1; i <= columns; i++) {
+					values.put(metadata.getColumnName(i),
+							resultSet.getObject(i));
+				}
+				rows.put(resultSet.getLong(idIndex), values);
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to read changed rows. Table: " + tableName, e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql.toString());
+		}
+
+		return rows;
+	}
+
+}
@@ -0,0 +1,577 @@
+package mil.nga.geopackage.extension.changes;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.extension.BaseExtension;
+import mil.nga.geopackage.extension.ExtensionScopeType;
+import mil.nga.geopackage.extension.Extensions;
+
+/**
+ * Change Tracking NGA extension, recording inserts, updates and deletes of
+ * tracked user tables (features, attributes or other tables with an integer
+ * primary key) into a change log with a monotonically increasing version.
+ * Changes are recorded by triggers, capturing edits from any writer. The log
+ * is compact, keeping only the latest change of each row, so streaming the
+ * changes after a synced version and applying them to another GeoPackage
+ * scales with the number of changed rows rather than the table sizes.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class ChangeTrackingExtension extends BaseExtension {
+
+	/**
+	 * Extension author
+	 */
+	public static final String EXTENSION_AUTHOR = "nga";
+
+	/**
+	 * Extension name without the author
+	 */
+	public static final String EXTENSION_NAME_NO_AUTHOR = "change_tracking";
+
+	/**
+	 * Extension, with author and name
+	 */
+	public static final String EXTENSION_NAME = EXTENSION_AUTHOR + "_"
+			+ EXTENSION_NAME_NO_AUTHOR;
+
+	/**
+	 * Extension definition
+	 */
+	public static final String DEFINITION = "Versioned change log of user table row inserts, updates and deletes";
+
+	/**
+	 * Change log table name
+	 */
+	public static final String TABLE_NAME = "nga_change_log";
+
+	/**
+	 * Version column
+	 */
+	public static final String COLUMN_VERSION = "version";
+
+	/**
+	 * Table name column
+	 */
+	public static final String COLUMN_TABLE_NAME = "table_name";
+
+	/**
+	 * Row id column
+	 */
+	public static final String COLUMN_ROW_ID = "row_id";
+
+	/**
+	 * Operation column
+	 */
+	public static final String COLUMN_OPERATION = "operation";
+
+	/**
+	 * Change tracking trigger name prefix
+	 */
+	public static final String TRIGGER_PREFIX = "nga_change_";
+
+	/**
+	 * Default number of change log rows read per page and changes applied per
+	 * transaction
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/**
+	 * Connection
+	 */
+	private final Connection connection;
+
+	/**
+	 * Number of change log rows read per page and changes applied per
+	 * transaction
+	 */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Integer primary key column names by table name
+	 */
+	private final Map<String, String> idColumns = new HashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 */
+	public ChangeTrackingExtension(GeoPackage geoPackage) {
+		super(geoPackage);
+		this.connection = geoPackage.getConnection().getConnection();
+	}
+
+	/**
+	 * Get the connection
+	 *
+	 * @return connection
+	 */
+	Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Get the number of change log rows read per page and changes applied per
+	 * transaction
+	 *
+	 * @return batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set the number of change log rows read per page and changes applied per
+	 * transaction
+	 *
+	 * @param batchSize
+	 *            batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Track the changes of the user table. Existing rows are not logged.
+	 *
+	 * @param tableName
+	 *            user table name
+	 */
+	public void track(String tableName) {
+
+		if (!geoPackage.isTable(tableName)) {
+			throw new GeoPackageException(
+					"Change tracking table does not exist: " + tableName);
+		}
+
+		createTable();
+
+		String idColumn = CoreSQLUtils.quoteWrap(getIdColumn(tableName));
+		String table = CoreSQLUtils.quoteWrap(tableName);
+		String log = CoreSQLUtils.quoteWrap(TABLE_NAME);
+		String name = literal(tableName);
+		String insert = "INSERT INTO " + log + " (" + COLUMN_TABLE_NAME + ", "
+				+ COLUMN_ROW_ID + ", " + COLUMN_OPERATION + ")";
+		String delete = "DELETE FROM " + log + " WHERE " + COLUMN_TABLE_NAME
+				+ " = " + name + " AND " + COLUMN_ROW_ID;
+
+		dropTriggers(tableName);
+
+		SQLUtils.execSQL(connection, "CREATE TRIGGER "
+				+ CoreSQLUtils.quoteWrap(triggerName(tableName, "insert"))
+				+ " AFTER INSERT ON " + table + " BEGIN " + delete + " = NEW."
+				+ idColumn + "; " + insert + " VALUES (" + name + ", NEW."
+				+ idColumn + ", '" + ChangeOperation.INSERT.getCode()
+				+ "'); END");
+
+		SQLUtils.execSQL(connection, "CREATE TRIGGER "
+				+ CoreSQLUtils.quoteWrap(triggerName(tableName, "update"))
+				+ " AFTER UPDATE ON " + table + " BEGIN " + delete
+				+ " IN (OLD." + idColumn + ", NEW." + idColumn + "); "
+				+ insert + " SELECT " + name + ", OLD." + idColumn + ", '"
+				+ ChangeOperation.DELETE.getCode() + "' WHERE OLD." + idColumn
+				+ " <> NEW." + idColumn + "; " + insert + " VALUES (" + name
+				+ ", NEW." + idColumn + ", '"
+				+ ChangeOperation.UPDATE.getCode() + "'); END");
+
+		SQLUtils.execSQL(connection, "CREATE TRIGGER "
+				+ CoreSQLUtils.quoteWrap(triggerName(tableName, "delete"))
+				+ " AFTER DELETE ON " + table + " BEGIN " + delete + " = OLD."
+				+ idColumn + "; " + insert + " VALUES (" + name + ", OLD."
+				+ idColumn + ", '" + ChangeOperation.DELETE.getCode()
+				+ "'); END");
+
+		getOrCreate(EXTENSION_NAME, tableName, null, DEFINITION,
+				ExtensionScopeType.READ_WRITE);
+	}
+
+	/**
+	 * Determine if the table changes are tracked
+	 *
+	 * @param tableName
+	 *            table name
+	 * @return true if tracked
+	 */
+	public boolean isTracked(String tableName) {
+		return has(EXTENSION_NAME, tableName, null);
+	}
+
+	/**
+	 * Get the tracked table names
+	 *
+	 * @return table names
+	 */
+	public List<String> getTrackedTables() {
+		List<String> tables = new ArrayList<>();
+		try {
+			if (extensionsDao.isTableExists()) {
+				for (Extensions extension : extensionsDao
+						.queryByExtension(EXTENSION_NAME)) {
+					tables.add(extension.getTableName());
+				}
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to query change tracked tables", e);
+		}
+		return tables;
+	}
+
+	/**
+	 * Stop tracking the table changes, deleting its change log rows
+	 *
+	 * @param tableName
+	 *            table name
+	 */
+	public void untrack(String tableName) {
+		dropTriggers(tableName);
+		if (geoPackage.isTable(TABLE_NAME)) {
+			SQLUtils.delete(connection, TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?", new String[] { tableName });
+		}
+		try {
+			if (extensionsDao.isTableExists()) {
+				extensionsDao.deleteByExtension(EXTENSION_NAME, tableName);
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to delete change tracking extension. Table: "
+							+ tableName,
+					e);
+		}
+	}
+
+	/**
+	 * Stop tracking all tables and delete the change log
+	 */
+	public void delete() {
+		for (String tableName : getTrackedTables()) {
+			untrack(tableName);
+		}
+		if (geoPackage.isTable(TABLE_NAME)) {
+			SQLUtils.execSQL(connection,
+					"DROP TABLE " + CoreSQLUtils.quoteWrap(TABLE_NAME));
+		}
+	}
+
+	/**
+	 * Get the current change log version
+	 *
+	 * @return version, 0 when no changes have been logged
+	 */
+	public long getVersion() {
+		long version = 0;
+		if (geoPackage.isTable(TABLE_NAME)) {
+			String sql = "SELECT MAX(" + COLUMN_VERSION + ") FROM "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME);
+			ResultSet resultSet = SQLUtils.query(connection, sql, null);
+			try {
+				if (resultSet.next()) {
+					version = resultSet.getLong(1);
+				}
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to query the change log version", e);
+			} finally {
+				SQLUtils.closeResultSetStatement(resultSet, sql);
+			}
+		}
+		return version;
+	}
+
+	/**
+	 * Count the changed rows after the version
+	 *
+	 * @param version
+	 *            version
+	 * @return changed row count
+	 */
+	public int countChanges(long version) {
+		int count = 0;
+		if (geoPackage.isTable(TABLE_NAME)) {
+			count = SQLUtils.count(connection, TABLE_NAME,
+					COLUMN_VERSION + " > ?",
+					new String[] { String.valueOf(version) });
+		}
+		return count;
+	}
+
+	/**
+	 * Read the changes after the version in version order
+	 *
+	 * @param version
+	 *            version, 0 for all logged changes
+	 * @return change reader
+	 */
+	public ChangeReader readChanges(long version) {
+		createTable();
+		return new ChangeReader(this, version, batchSize);
+	}
+
+	/**
+	 * Apply the changes to the tables of this GeoPackage. Inserts and updates
+	 * insert the row, or update the existing row with the same id, and deletes
+	 * remove it, committing every batch size changes. An active transaction
+	 * of the connection is joined instead and left for the caller to end.
+	 * Existing rows are updated in place so update triggers (such as RTree
+	 * index and change tracking triggers) fire. Tables must exist with the
+	 * changed columns.
+	 *
+	 * @param changes
+	 *            changes, typically read from another GeoPackage
+	 * @return number of applied changes
+	 */
+	public long applyChanges(Iterator<Change> changes) {
+
+		Map<String, PreparedStatement> statements = new HashMap<>();
+
+		long count = 0;
+		boolean successful = false;
+		boolean autoCommit = SQLUtils.beginTransaction(connection);
+		try {
+			int uncommitted = 0;
+			while (changes.hasNext()) {
+				Change change = changes.next();
+				PreparedStatement statement;
+				if (change.getOperation().isUpsert()) {
+					Map<String, Object> values = change.getValues();
+					statement = statement(statements,
+							upsertSql(change.getTableName(),
+									getIdColumn(change.getTableName()),
+									values.keySet()));
+					SQLUtils.setArguments(statement, values.values().toArray());
+				} else {
+					statement = statement(statements,
+							"DELETE FROM "
+									+ CoreSQLUtils
+											.quoteWrap(change.getTableName())
+									+ " WHERE "
+									+ CoreSQLUtils.quoteWrap(
+											getIdColumn(change.getTableName()))
+									+ " = ?");
+					statement.setLong(1, change.getId());
+				}
+				statement.executeUpdate();
+				count++;
+				if (autoCommit && ++uncommitted >= batchSize) {
+					connection.commit();
+					uncommitted = 0;
+				}
+			}
+			successful = true;
+		} catch (SQLException e) {
+			throw new GeoPackageException("Failed to apply changes", e);
+		} finally {
+			for (Map.Entry<String, PreparedStatement> statement : statements
+					.entrySet()) {
+				SQLUtils.closeStatement(statement.getValue(),
+						statement.getKey());
+			}
+			if (autoCommit) {
+				SQLUtils.endTransaction(connection, successful, autoCommit);
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Delete the logged row deletes at or before the version, once all
+	 * consumers have synced past it
+	 *
+	 * @param version
+	 *            version
+	 * @return number of removed deletes
+	 */
+	public int compact(long version) {
+		int count = 0;
+		if (geoPackage.isTable(TABLE_NAME)) {
+			count = SQLUtils.delete(connection, TABLE_NAME,
+					COLUMN_VERSION + " <= ? AND " + COLUMN_OPERATION + " = ?",
+					new String[] { String.valueOf(version),
+							ChangeOperation.DELETE.getCode() });
+		}
+		return count;
+	}
+
+	/**
+	 * Get the integer primary key column of the table
+	 *
+	 * @param tableName
+	 *            table name
+	 * @return id column name
+	 */
+	String getIdColumn(String tableName) {
+		String idColumn = idColumns.get(tableName);
+		if (idColumn == null) {
+			String sql = "PRAGMA table_info("
+					+ CoreSQLUtils.quoteWrap(tableName) + ")";
+			ResultSet resultSet = SQLUtils.query(connection, sql, null);
+			try {
+				while (resultSet.next()) {
+					if (resultSet.getInt("pk") > 0) {
+						if (idColumn != null) {
+							idColumn = null;
+							break;
+						}
+						idColumn = resultSet.getString("name");
+					}
+				}
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to read table columns. Table: " + tableName,
+						e);
+			} finally {
+				SQLUtils.closeResultSetStatement(resultSet, sql);
+			}
+			if (idColumn == null) {
+				throw new GeoPackageException(
+						"Change tracking requires a single column integer primary key. Table: "
+								+ tableName);
+			}
+			idColumns.put(tableName, idColumn);
+		}
+		return idColumn;
+	}
+
+	/**
+	 * Create the change log table if needed
+	 */
+	private void createTable() {
+		if (!geoPackage.isTable(TABLE_NAME)) {
+			SQLUtils.execSQL(connection, "CREATE TABLE "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+					+ COLUMN_VERSION + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+					+ COLUMN_TABLE_NAME + " TEXT NOT NULL, " + COLUMN_ROW_ID
+					+ " INTEGER NOT NULL, " + COLUMN_OPERATION
+					+ " TEXT NOT NULL)");
+			SQLUtils.execSQL(connection, "CREATE UNIQUE INDEX "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME + "_row") + " ON "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+					+ COLUMN_TABLE_NAME + ", " + COLUMN_ROW_ID + ")");
+		}
+	}
+
+	/**
+	 * Drop the change tracking triggers of the table
+	 *
+	 * @param tableName
+	 *            table name
+	 */
+	private void dropTriggers(String tableName) {
+		for (String operation : new String[] { "insert", "update",
+				"delete" }) {
+			SQLUtils.execSQL(connection, "DROP TRIGGER IF EXISTS "
+					+ CoreSQLUtils.quoteWrap(triggerName(tableName, operation)));
+		}
+	}
+
+	/**
+	 * Get the change tracking trigger name
+	 *
+	 * @param tableName
+	 *            table name
+	 * @param operation
+	 *            trigger operation
+	 * @return trigger name
+	 */
+	private static String triggerName(String tableName, String operation) {
+		return TRIGGER_PREFIX + operation + "_" + tableName;
+	}
+
+	/**
+	 * Get the SQL string literal of the value
+	 *
+	 * @param value
+	 *            value
+	 * @return string literal
+	 */
+	private static String literal(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+	/**
+	 * Build the upsert SQL for the columns, inserting the row or updating the
+	 * non id columns of the existing row with the same id. Unlike insert or
+	 * replace, an existing row is not deleted and reinserted, so update
+	 * triggers fire and delete triggers are not bypassed.
+	 *
+	 * @param tableName
+	 *            table name
+	 * @param idColumn
+	 *            id column name
+	 * @param columns
+	 *            column names
+	 * @return SQL
+	 */
+	private static String upsertSql(String tableName, String idColumn,
+			Iterable<String> columns) {
+		StringBuilder names = new StringBuilder();
+		StringBuilder values = new StringBuilder();
+		StringBuilder updates = new StringBuilder();
+		for (String column : columns) {
+			String name = CoreSQLUtils.quoteWrap(column);
+			if (names.length() > 0) {
+				names.append(", ");
+				values.append(", ");
+			}
+			names.append(name);
+			values.append("?");
+			if (!column.equalsIgnoreCase(idColumn)) {
+				if (updates.length() > 0) {
+					updates.append(", ");
+				}
+				updates.append(name).append(" = excluded.").append(name);
+			}
+		}
+		StringBuilder sql = new StringBuilder("INSERT INTO ");
+		sql.append(CoreSQLUtils.quoteWrap(tableName)).append(" (")
+				.append(names).append(") VALUES (").append(values)
+				.append(") ON CONFLICT(")
+				.append(CoreSQLUtils.quoteWrap(idColumn)).append(") DO ");
+		if (updates.length() > 0) {
+			sql.append("UPDATE SET ").append(updates);
+		} else {
+			sql.append("NOTHING");
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * Get or prepare the statement for the SQL
+	 *
+	 * @param statements
+	 *            prepared statements by SQL
+	 * @param sql
+	 *            SQL
+	 * @return prepared statement
+	 * @throws SQLException
+	 *             upon failure
+	 */
+	private PreparedStatement statement(
+			Map<String, PreparedStatement> statements, String sql)
+			throws SQLException {
+		PreparedStatement statement = statements.get(sql);
+		if (statement == null) {
+			statement = connection.prepareStatement(sql);
+			statements.put(sql, statement);
+		}
+		return statement;
+	}
+
+}
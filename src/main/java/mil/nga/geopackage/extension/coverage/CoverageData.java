@@ -8,6 +8,7 @@ import java.util.TreeMap;
 import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackage;
 import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.geom.ProjectionTransforms;
 import mil.nga.geopackage.tiles.ImageRectangle;
 import mil.nga.geopackage.tiles.ImageRectangleF;
 import mil.nga.geopackage.tiles.TileBoundingBoxJavaUtils;
@@ -303,8 +304,8 @@ public abstract class CoverageData<TImage extends CoverageDataImage> extends
 		ProjectionTransform transformRequestToCoverage = null;
 		BoundingBox requestProjectedBoundingBox = request.getBoundingBox();
 		if (!sameProjection) {
-			transformRequestToCoverage = requestProjection
-					.getTransformation(coverageProjection);
+			transformRequestToCoverage = ProjectionTransforms
+					.get(requestProjection, coverageProjection);
 			requestProjectedBoundingBox = requestProjectedBoundingBox
 					.transform(transformRequestToCoverage);
 		}
@@ -400,8 +401,8 @@ public abstract class CoverageData<TImage extends CoverageDataImage> extends
 		ProjectionTransform transformRequestToCoverage = null;
 		BoundingBox requestProjectedBoundingBox = request.getBoundingBox();
 		if (!sameProjection) {
-			transformRequestToCoverage = requestProjection
-					.getTransformation(coverageProjection);
+			transformRequestToCoverage = ProjectionTransforms
+					.get(requestProjection, coverageProjection);
 			requestProjectedBoundingBox = requestProjectedBoundingBox
 					.transform(transformRequestToCoverage);
 		}
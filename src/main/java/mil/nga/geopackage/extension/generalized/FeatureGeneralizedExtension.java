@@ -0,0 +1,738 @@
+package mil.nga.geopackage.extension.generalized;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.locationtech.proj4j.units.Units;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.extension.BaseExtension;
+import mil.nga.geopackage.extension.ExtensionScopeType;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
+import mil.nga.geopackage.tiles.TileUtils;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryCollection;
+import mil.nga.sf.GeometryType;
+import mil.nga.sf.LineString;
+import mil.nga.sf.MultiLineString;
+import mil.nga.sf.MultiPolygon;
+import mil.nga.sf.Point;
+import mil.nga.sf.Polygon;
+import mil.nga.sf.proj.Projection;
+import mil.nga.sf.proj.ProjectionConstants;
+import mil.nga.sf.proj.ProjectionFactory;
+import mil.nga.sf.proj.ProjectionTransform;
+import mil.nga.sf.util.GeometryEnvelopeBuilder;
+import mil.nga.sf.util.GeometryUtils;
+
+/**
+ * Feature Generalized Geometry NGA extension, storing simplified copies of
+ * feature geometries for zoom bands of a feature table. A zoom band is
+ * identified by its max zoom level and covers the zoom levels above the next
+ * lower band. Geometries are simplified with the tolerance of a high density
+ * tile at the band max zoom level so feature tiles drawn within the band read
+ * a generalized geometry instead of simplifying the full resolution geometry
+ * for every tile. Geometries that are not reduced, or collapse, by the band tolerance
+ * are not stored and are drawn from the feature table. Generalized geometries
+ * are stored with a header envelope so they can be filtered without decoding.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureGeneralizedExtension extends BaseExtension {
+
+	/**
+	 * Extension author
+	 */
+	public static final String EXTENSION_AUTHOR = "nga";
+
+	/**
+	 * Extension name without the author
+	 */
+	public static final String EXTENSION_NAME_NO_AUTHOR = "feature_generalized";
+
+	/**
+	 * Extension, with author and name
+	 */
+	public static final String EXTENSION_NAME = EXTENSION_AUTHOR + "_"
+			+ EXTENSION_NAME_NO_AUTHOR;
+
+	/**
+	 * Extension definition
+	 */
+	public static final String DEFINITION = "Generalized feature geometries per zoom band for feature tables";
+
+	/**
+	 * Generalized geometry table name
+	 */
+	public static final String TABLE_NAME = "nga_feature_generalized";
+
+	/**
+	 * Table name column
+	 */
+	public static final String COLUMN_TABLE_NAME = "table_name";
+
+	/**
+	 * Geometry id column
+	 */
+	public static final String COLUMN_GEOM_ID = "geom_id";
+
+	/**
+	 * Zoom band column, the band max zoom level
+	 */
+	public static final String COLUMN_ZOOM_BAND = "zoom_band";
+
+	/**
+	 * Generalized geometry column
+	 */
+	public static final String COLUMN_GEOMETRY = "geom";
+
+	/**
+	 * Max number of geometry ids per generalized geometry batch query
+	 */
+	private static final int BATCH_SIZE = 500;
+
+	/**
+	 * Feature DAO
+	 */
+	private final FeatureDao featureDao;
+
+	/**
+	 * Connection
+	 */
+	private final Connection connection;
+
+	/**
+	 * Zoom bands, null when not loaded
+	 */
+	private List<Integer> zoomBands;
+
+	/**
+	 * Constructor
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @param featureDao
+	 *            feature DAO
+	 */
+	public FeatureGeneralizedExtension(GeoPackage geoPackage,
+			FeatureDao featureDao) {
+		super(geoPackage);
+		this.featureDao = featureDao;
+		this.connection = featureDao.getConnection();
+	}
+
+	/**
+	 * Get the feature DAO
+	 *
+	 * @return feature DAO
+	 */
+	public FeatureDao getFeatureDao() {
+		return featureDao;
+	}
+
+	/**
+	 * Get the table name
+	 *
+	 * @return table name
+	 */
+	public String getTableName() {
+		return featureDao.getTableName();
+	}
+
+	/**
+	 * Determine if generalized geometries exist for the feature table
+	 *
+	 * @return true if has generalized geometries
+	 */
+	public boolean has() {
+		return !getZoomBands().isEmpty();
+	}
+
+	/**
+	 * Get the zoom bands, identified by their max zoom levels
+	 *
+	 * @return ascending zoom bands
+	 */
+	public List<Integer> getZoomBands() {
+		if (zoomBands == null) {
+			List<Integer> bands = new ArrayList<>();
+			if (geoPackage.isTable(TABLE_NAME)) {
+				String sql = "SELECT DISTINCT " + COLUMN_ZOOM_BAND + " FROM "
+						+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " WHERE "
+						+ COLUMN_TABLE_NAME + " = ? ORDER BY "
+						+ COLUMN_ZOOM_BAND;
+				ResultSet resultSet = SQLUtils.query(connection, sql,
+						new String[] { getTableName() });
+				try {
+					while (resultSet.next()) {
+						bands.add(resultSet.getInt(1));
+					}
+				} catch (SQLException e) {
+					throw new GeoPackageException(
+							"Failed to query generalized zoom bands. Table: "
+									+ getTableName(),
+							e);
+				} finally {
+					SQLUtils.closeResultSetStatement(resultSet, sql);
+				}
+			}
+			zoomBands = Collections.unmodifiableList(bands);
+		}
+		return zoomBands;
+	}
+
+	/**
+	 * Get the zoom band that fits the zoom level, the lowest band max zoom
+	 * level at or above the zoom level
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @return zoom band, null when above all bands
+	 */
+	public Integer getZoomBand(int zoom) {
+		Integer zoomBand = null;
+		for (int band : getZoomBands()) {
+			if (band >= zoom) {
+				zoomBand = band;
+				break;
+			}
+		}
+		return zoomBand;
+	}
+
+	/**
+	 * Build the generalized geometries for the zoom bands in a single pass
+	 * over the feature table, replacing any existing generalized geometries
+	 *
+	 * @param zoomBands
+	 *            zoom bands, identified by their max zoom levels
+	 * @return number of stored generalized geometries
+	 */
+	public long build(int... zoomBands) {
+
+		TreeSet<Integer> bands = new TreeSet<>();
+		for (int zoomBand : zoomBands) {
+			if (zoomBand < 0) {
+				throw new GeoPackageException(
+						"Invalid zoom band: " + zoomBand);
+			}
+			bands.add(zoomBand);
+		}
+		if (bands.isEmpty()) {
+			throw new GeoPackageException("At least one zoom band is required");
+		}
+
+		createTable();
+
+		long count = 0;
+		boolean autoCommit = SQLUtils.beginTransaction(connection);
+		boolean successful = false;
+		String insertSql = insertSql();
+		PreparedStatement statement = null;
+		FeatureResultSet resultSet = null;
+		try {
+
+			SQLUtils.delete(connection, TABLE_NAME, COLUMN_TABLE_NAME + " = ?",
+					new String[] { getTableName() });
+
+			statement = connection.prepareStatement(insertSql);
+			resultSet = featureDao.query();
+			int batched = 0;
+			while (resultSet.moveToNext()) {
+				batched += insert(statement, resultSet.getRow(), bands);
+				if (batched >= 1000) {
+					statement.executeBatch();
+					count += batched;
+					batched = 0;
+				}
+			}
+			count += batched;
+			statement.executeBatch();
+
+			successful = true;
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to build generalized geometries. Table: "
+							+ getTableName(),
+					e);
+		} finally {
+			if (resultSet != null) {
+				resultSet.close();
+			}
+			SQLUtils.closeStatement(statement, insertSql);
+			SQLUtils.endTransaction(connection, successful, autoCommit);
+			this.zoomBands = null;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Regenerate the generalized geometries of a feature row for the existing
+	 * zoom bands
+	 *
+	 * @param row
+	 *            feature row
+	 * @return number of stored generalized geometries
+	 */
+	public int generalize(FeatureRow row) {
+		int count = 0;
+		if (has()) {
+			boolean autoCommit = SQLUtils.beginTransaction(connection);
+			boolean successful = false;
+			String insertSql = insertSql();
+			PreparedStatement statement = null;
+			try {
+				delete(row.getId());
+				statement = connection.prepareStatement(insertSql);
+				count = insert(statement, row, getZoomBands());
+				statement.executeBatch();
+				successful = true;
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to generalize geometry. Table: "
+								+ getTableName() + ", Id: " + row.getId(),
+						e);
+			} finally {
+				SQLUtils.closeStatement(statement, insertSql);
+				SQLUtils.endTransaction(connection, successful, autoCommit);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get the generalized geometry of a feature for the zoom band
+	 *
+	 * @param geomId
+	 *            geometry id
+	 * @param zoomBand
+	 *            zoom band
+	 * @return generalized geometry data, null when not stored
+	 */
+	public GeoPackageGeometryData getGeometryData(long geomId, int zoomBand) {
+		GeoPackageGeometryData geometryData = null;
+		String sql = "SELECT " + COLUMN_GEOMETRY + " FROM "
+				+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " WHERE "
+				+ COLUMN_TABLE_NAME + " = ? AND " + COLUMN_ZOOM_BAND
+				+ " = ? AND " + COLUMN_GEOM_ID + " = ?";
+		ResultSet resultSet = SQLUtils.query(connection, sql,
+				new String[] { getTableName(), String.valueOf(zoomBand),
+						String.valueOf(geomId) });
+		try {
+			if (resultSet.next()) {
+				geometryData = new GeoPackageGeometryData(
+						resultSet.getBytes(1));
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to query generalized geometry. Table: "
+							+ getTableName() + ", Id: " + geomId
+							+ ", Zoom Band: " + zoomBand,
+					e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql);
+		}
+		return geometryData;
+	}
+
+	/**
+	 * Get the generalized geometry bytes of features for the zoom band,
+	 * queried in batches of geometry ids
+	 *
+	 * @param geomIds
+	 *            geometry ids
+	 * @param zoomBand
+	 *            zoom band
+	 * @return generalized geometry bytes by geometry id, only containing
+	 *         stored generalized geometries
+	 */
+	public Map<Long, byte[]> getGeometryBytes(Collection<Long> geomIds,
+			int zoomBand) {
+		Map<Long, byte[]> geometries = new HashMap<>();
+		Iterator<Long> ids = geomIds.iterator();
+		while (ids.hasNext()) {
+			StringBuilder sql = new StringBuilder("SELECT ");
+			sql.append(COLUMN_GEOM_ID).append(", ").append(COLUMN_GEOMETRY)
+					.append(" FROM ")
+					.append(CoreSQLUtils.quoteWrap(TABLE_NAME))
+					.append(" WHERE ").append(COLUMN_TABLE_NAME)
+					.append(" = ? AND ").append(COLUMN_ZOOM_BAND)
+					.append(" = ? AND ").append(COLUMN_GEOM_ID)
+					.append(" IN (");
+			for (int count = 0; count < BATCH_SIZE && ids.hasNext(); count++) {
+				if (count > 0) {
+					sql.append(",");
+				}
+				sql.append(ids.next().longValue());
+			}
+			sql.append(")");
+			queryGeometryBytes(sql.toString(), zoomBand, geometries);
+		}
+		return geometries;
+	}
+
+	/**
+	 * Get the generalized geometry of a feature for the zoom band that fits
+	 * the zoom level
+	 *
+	 * @param geomId
+	 *            geometry id
+	 * @param zoom
+	 *            zoom level
+	 * @return generalized geometry, null when not stored
+	 */
+	public Geometry getGeometry(long geomId, int zoom) {
+		Geometry geometry = null;
+		Integer zoomBand = getZoomBand(zoom);
+		if (zoomBand != null) {
+			GeoPackageGeometryData geometryData = getGeometryData(geomId,
+					zoomBand);
+			if (geometryData != null) {
+				geometry = geometryData.getGeometry();
+			}
+		}
+		return geometry;
+	}
+
+	/**
+	 * Query generalized geometry id and bytes results into the map
+	 *
+	 * @param sql
+	 *            query SQL
+	 * @param zoomBand
+	 *            zoom band
+	 * @param geometries
+	 *            generalized geometry bytes by geometry id
+	 */
+	private void queryGeometryBytes(String sql, int zoomBand,
+			Map<Long, byte[]> geometries) {
+		ResultSet resultSet = SQLUtils.query(connection, sql,
+				new String[] { getTableName(), String.valueOf(zoomBand) });
+		try {
+			while (resultSet.next()) {
+				geometries.put(resultSet.getLong(1), resultSet.getBytes(2));
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to query generalized geometries. Table: "
+							+ getTableName() + ", Zoom Band: " + zoomBand,
+					e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql);
+		}
+	}
+
+	/**
+	 * Delete the generalized geometries of a feature
+	 *
+	 * @param geomId
+	 *            geometry id
+	 * @return deleted count
+	 */
+	public int delete(long geomId) {
+		int deleted = 0;
+		if (has()) {
+			deleted = SQLUtils.delete(connection, TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ? AND " + COLUMN_GEOM_ID + " = ?",
+					new String[] { getTableName(), String.valueOf(geomId) });
+		}
+		return deleted;
+	}
+
+	/**
+	 * Delete the generalized geometries and extension for the feature table
+	 */
+	public void delete() {
+		if (geoPackage.isTable(TABLE_NAME)) {
+			SQLUtils.delete(connection, TABLE_NAME, COLUMN_TABLE_NAME + " = ?",
+					new String[] { getTableName() });
+		}
+		try {
+			if (extensionsDao.isTableExists()) {
+				extensionsDao.deleteByExtension(EXTENSION_NAME, getTableName());
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to delete feature generalized extension. Table: "
+							+ getTableName(),
+					e);
+		}
+		zoomBands = null;
+	}
+
+	/**
+	 * Create the table and extension if needed
+	 */
+	private void createTable() {
+
+		if (!geoPackage.isTable(TABLE_NAME)) {
+			SQLUtils.execSQL(connection, "CREATE TABLE "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+					+ COLUMN_TABLE_NAME + " TEXT NOT NULL, " + COLUMN_ZOOM_BAND
+					+ " INTEGER NOT NULL, " + COLUMN_GEOM_ID
+					+ " INTEGER NOT NULL, " + COLUMN_GEOMETRY
+					+ " BLOB NOT NULL, CONSTRAINT pk_nfg PRIMARY KEY ("
+					+ COLUMN_TABLE_NAME + ", " + COLUMN_ZOOM_BAND + ", "
+					+ COLUMN_GEOM_ID + "))");
+		}
+
+		getOrCreate(EXTENSION_NAME, getTableName(),
+				featureDao.getGeometryColumnName(), DEFINITION,
+				ExtensionScopeType.READ_WRITE);
+	}
+
+	/**
+	 * Get the insert SQL
+	 *
+	 * @return insert SQL
+	 */
+	private static String insertSql() {
+		return "INSERT INTO " + CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+				+ COLUMN_TABLE_NAME + ", " + COLUMN_ZOOM_BAND + ", "
+				+ COLUMN_GEOM_ID + ", " + COLUMN_GEOMETRY
+				+ ") VALUES (?, ?, ?, ?)";
+	}
+
+	/**
+	 * Add the generalized geometries of a feature row to the insert batch
+	 *
+	 * @param statement
+	 *            insert statement
+	 * @param row
+	 *            feature row
+	 * @param zoomBands
+	 *            zoom bands
+	 * @return number of batched generalized geometries
+	 * @throws SQLException
+	 *             upon failure
+	 */
+	private int insert(PreparedStatement statement, FeatureRow row,
+			Iterable<Integer> zoomBands) throws SQLException {
+
+		int count = 0;
+
+		GeoPackageGeometryData geometryData = row.getGeometry();
+		if (geometryData == null || geometryData.getGeometry() == null
+				|| geometryData.getGeometry().isEmpty()) {
+			return count;
+		}
+
+		Geometry geometry = geometryData.getGeometry();
+		if (geometry.getGeometryType() == GeometryType.POINT
+				|| geometry.getGeometryType() == GeometryType.MULTIPOINT) {
+			return count;
+		}
+
+		// Generalize in meters, reprojecting to web mercator when needed
+		Projection projection = featureDao.getProjection();
+		ProjectionTransform toMeters = null;
+		ProjectionTransform fromMeters = null;
+		if (!projection.isUnit(Units.METRES)) {
+			Projection webMercator = ProjectionFactory
+					.getProjection(ProjectionConstants.EPSG_WEB_MERCATOR);
+			toMeters = projection.getTransformation(webMercator);
+			fromMeters = webMercator.getTransformation(projection);
+		}
+		Geometry metersGeometry = geometry;
+		if (toMeters != null) {
+			metersGeometry = toMeters.transform(geometry);
+		}
+		int points = countPoints(metersGeometry);
+
+		for (int zoomBand : zoomBands) {
+
+			double tolerance = TileBoundingBoxUtils.toleranceDistance(zoomBand,
+					TileUtils.TILE_PIXELS_HIGH, TileUtils.TILE_PIXELS_HIGH);
+			Geometry generalized = generalize(metersGeometry, tolerance);
+
+			// Store only reduced geometries that did not collapse
+			if (generalized != null && !generalized.isEmpty()
+					&& countPoints(generalized) < points) {
+				if (fromMeters != null) {
+					generalized = fromMeters.transform(generalized);
+				}
+				GeoPackageGeometryData generalizedData = new GeoPackageGeometryData(
+						geometryData.getSrsId());
+				generalizedData.setGeometry(generalized);
+				generalizedData.setEnvelope(
+						GeometryEnvelopeBuilder.buildEnvelope(generalized));
+				byte[] bytes;
+				try {
+					bytes = generalizedData.toBytes();
+				} catch (IOException e) {
+					throw new GeoPackageException(
+							"Failed to write generalized geometry bytes. Table: "
+									+ getTableName() + ", Id: " + row.getId(),
+							e);
+				}
+				statement.setString(1, getTableName());
+				statement.setInt(2, zoomBand);
+				statement.setLong(3, row.getId());
+				statement.setBytes(4, bytes);
+				statement.addBatch();
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Generalize the geometry by simplifying its line strings and rings
+	 *
+	 * @param geometry
+	 *            geometry in meters
+	 * @param tolerance
+	 *            simplify tolerance in meters
+	 * @return generalized geometry, null when not supported or collapsed
+	 */
+	private static Geometry generalize(Geometry geometry, double tolerance) {
+
+		Geometry generalized = null;
+
+		switch (geometry.getGeometryType()) {
+		case LINESTRING:
+			LineString lineString = (LineString) geometry;
+			List<Point> linePoints = GeometryUtils
+					.simplifyPoints(lineString.getPoints(), tolerance);
+			if (linePoints.size() >= 2) {
+				LineString generalizedLine = new LineString(lineString.hasZ(),
+						lineString.hasM());
+				generalizedLine.setPoints(linePoints);
+				generalized = generalizedLine;
+			}
+			break;
+		case POLYGON:
+			Polygon polygon = (Polygon) geometry;
+			Polygon generalizedPolygon = new Polygon(polygon.hasZ(),
+					polygon.hasM());
+			for (LineString ring : polygon.getRings()) {
+				List<Point> ringPoints = GeometryUtils
+						.simplifyPoints(ring.getPoints(), tolerance);
+				if (ringPoints.size() >= 4) {
+					LineString generalizedRing = new LineString(ring.hasZ(),
+							ring.hasM());
+					generalizedRing.setPoints(ringPoints);
+					generalizedPolygon.addRing(generalizedRing);
+				} else if (generalizedPolygon.isEmpty()) {
+					// Exterior ring collapsed
+					break;
+				}
+			}
+			if (!generalizedPolygon.isEmpty()) {
+				generalized = generalizedPolygon;
+			}
+			break;
+		case MULTILINESTRING:
+			MultiLineString multiLineString = (MultiLineString) geometry;
+			MultiLineString generalizedMultiLine = new MultiLineString(
+					multiLineString.hasZ(), multiLineString.hasM());
+			for (LineString line : multiLineString.getLineStrings()) {
+				LineString generalizedLine = (LineString) generalize(line,
+						tolerance);
+				if (generalizedLine != null) {
+					generalizedMultiLine.addLineString(generalizedLine);
+				}
+			}
+			if (!generalizedMultiLine.isEmpty()) {
+				generalized = generalizedMultiLine;
+			}
+			break;
+		case MULTIPOLYGON:
+			MultiPolygon multiPolygon = (MultiPolygon) geometry;
+			MultiPolygon generalizedMultiPolygon = new MultiPolygon(
+					multiPolygon.hasZ(), multiPolygon.hasM());
+			for (Polygon part : multiPolygon.getPolygons()) {
+				Polygon generalizedPart = (Polygon) generalize(part,
+						tolerance);
+				if (generalizedPart != null) {
+					generalizedMultiPolygon.addPolygon(generalizedPart);
+				}
+			}
+			if (!generalizedMultiPolygon.isEmpty()) {
+				generalized = generalizedMultiPolygon;
+			}
+			break;
+		case GEOMETRYCOLLECTION:
+			@SuppressWarnings("unchecked")
+			GeometryCollection<Geometry> collection = (GeometryCollection<Geometry>) geometry;
+			GeometryCollection<Geometry> generalizedCollection = new GeometryCollection<>(
+					collection.hasZ(), collection.hasM());
+			for (Geometry part : collection.getGeometries()) {
+				Geometry generalizedPart = generalize(part, tolerance);
+				if (generalizedPart == null) {
+					generalizedPart = part;
+				}
+				generalizedCollection.addGeometry(generalizedPart);
+			}
+			generalized = generalizedCollection;
+			break;
+		default:
+		}
+
+		return generalized;
+	}
+
+	/**
+	 * Count the points of the line strings and rings of a geometry
+	 *
+	 * @param geometry
+	 *            geometry
+	 * @return point count
+	 */
+	private static int countPoints(Geometry geometry) {
+		int count = 0;
+		switch (geometry.getGeometryType()) {
+		case LINESTRING:
+			count = ((LineString) geometry).numPoints();
+			break;
+		case POLYGON:
+			for (LineString ring : ((Polygon) geometry).getRings()) {
+				count += ring.numPoints();
+			}
+			break;
+		case MULTILINESTRING:
+			for (LineString line : ((MultiLineString) geometry)
+					.getLineStrings()) {
+				count += line.numPoints();
+			}
+			break;
+		case MULTIPOLYGON:
+			for (Polygon polygon : ((MultiPolygon) geometry).getPolygons()) {
+				count += countPoints(polygon);
+			}
+			break;
+		case GEOMETRYCOLLECTION:
+			@SuppressWarnings("unchecked")
+			GeometryCollection<Geometry> collection = (GeometryCollection<Geometry>) geometry;
+			for (Geometry part : collection.getGeometries()) {
+				count += countPoints(part);
+			}
+			break;
+		default:
+			count = 1;
+		}
+		return count;
+	}
+
+}
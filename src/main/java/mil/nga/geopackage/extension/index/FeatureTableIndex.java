@@ -1,8 +1,24 @@
 package mil.nga.geopackage.extension.index;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -12,10 +28,20 @@ import com.j256.ormlite.support.ConnectionSource;
 import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackage;
 import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.CountEstimate;
+import mil.nga.geopackage.db.QueryPlan;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.features.index.FeatureDistance;
 import mil.nga.geopackage.features.user.FeatureDao;
 import mil.nga.geopackage.features.user.FeatureResultSet;
 import mil.nga.geopackage.features.user.FeatureRow;
 import mil.nga.geopackage.features.user.FeatureRowSync;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeoPackageGeometryHeader;
+import mil.nga.geopackage.geom.GeometryPredicates;
+import mil.nga.geopackage.user.CompiledFilter;
+import mil.nga.sf.Geometry;
 import mil.nga.sf.GeometryEnvelope;
 import mil.nga.sf.proj.Projection;
 
@@ -47,6 +73,36 @@ public class FeatureTableIndex extends FeatureTableCoreIndex {
 	 */
 	private final FeatureRowSync featureRowSync = new FeatureRowSync();
 
+	/**
+	 * Default number of rows per parallel envelope batch
+	 * 
+	 * @since 3.5.1
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/**
+	 * Default number of index rows written per parallel build transaction
+	 * 
+	 * @since 3.5.1
+	 */
+	public static final int DEFAULT_TRANSACTION_LIMIT = 100000;
+
+	/**
+	 * Number of envelope worker threads used when indexing the table, values
+	 * less than 2 index on the calling thread
+	 */
+	private int indexThreads = 0;
+
+	/**
+	 * Number of rows per parallel envelope batch
+	 */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Number of index rows written per parallel build transaction
+	 */
+	private int transactionLimit = DEFAULT_TRANSACTION_LIMIT;
+
 	/**
 	 * Constructor
 	 * 
@@ -69,6 +125,82 @@ public class FeatureTableIndex extends FeatureTableCoreIndex {
 		return featureDao.getProjection();
 	}
 
+	/**
+	 * Get the number of envelope worker threads used when indexing the table
+	 * 
+	 * @return index threads, less than 2 when indexing on the calling thread
+	 * @since 3.5.1
+	 */
+	public int getIndexThreads() {
+		return indexThreads;
+	}
+
+	/**
+	 * Set the number of envelope worker threads used when indexing the table.
+	 * When set to 2 or more, the table is indexed by a single reader streaming
+	 * feature ids and geometry bytes, a pool of workers building envelopes
+	 * (from the geometry header when available), and a single writer batch
+	 * inserting the geometry index rows.
+	 * 
+	 * @param indexThreads
+	 *            index threads, less than 2 to index on the calling thread
+	 * @since 3.5.1
+	 */
+	public void setIndexThreads(int indexThreads) {
+		this.indexThreads = indexThreads;
+	}
+
+	/**
+	 * Get the number of rows per parallel envelope batch
+	 * 
+	 * @return batch size
+	 * @since 3.5.1
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set the number of rows per parallel envelope batch
+	 * 
+	 * @param batchSize
+	 *            batch size
+	 * @since 3.5.1
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new GeoPackageException(
+					"Batch size must be greater than 0: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Get the number of index rows written per parallel build transaction
+	 * 
+	 * @return transaction limit
+	 * @since 3.5.1
+	 */
+	public int getTransactionLimit() {
+		return transactionLimit;
+	}
+
+	/**
+	 * Set the number of index rows written per parallel build transaction
+	 * 
+	 * @param transactionLimit
+	 *            transaction limit
+	 * @since 3.5.1
+	 */
+	public void setTransactionLimit(int transactionLimit) {
+		if (transactionLimit < 1) {
+			throw new GeoPackageException(
+					"Transaction limit must be greater than 0: "
+							+ transactionLimit);
+		}
+		this.transactionLimit = transactionLimit;
+	}
+
 	/**
 	 * Close the table index
 	 */
@@ -106,6 +238,10 @@ public class FeatureTableIndex extends FeatureTableCoreIndex {
 	@Override
 	protected int indexTable(final TableIndex tableIndex) {
 
+		if (indexThreads > 1) {
+			return indexTableParallel(tableIndex);
+		}
+
 		int count = 0;
 
 		long offset = 0;
@@ -155,6 +291,295 @@ public class FeatureTableIndex extends FeatureTableCoreIndex {
 		return count;
 	}
 
+	/**
+	 * Index the table using a single reader thread, a pool of envelope worker
+	 * threads, and the calling thread as the single batch writer
+	 * 
+	 * @param tableIndex
+	 *            table index
+	 * @return indexed count
+	 */
+	private int indexTableParallel(final TableIndex tableIndex) {
+
+		final Connection connection = featureDao.getConnection();
+
+		final String readSql = "SELECT "
+				+ CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()) + ", "
+				+ CoreSQLUtils.quoteWrap(featureDao.getGeometryColumnName())
+				+ " FROM " + CoreSQLUtils.quoteWrap(getTableName());
+
+		final String writeSql = "INSERT OR REPLACE INTO "
+				+ CoreSQLUtils.quoteWrap(GeometryIndex.TABLE_NAME) + " ("
+				+ GeometryIndex.COLUMN_TABLE_NAME + ", "
+				+ GeometryIndex.COLUMN_GEOM_ID + ", "
+				+ GeometryIndex.COLUMN_MIN_X + ", " + GeometryIndex.COLUMN_MAX_X
+				+ ", " + GeometryIndex.COLUMN_MIN_Y + ", "
+				+ GeometryIndex.COLUMN_MAX_Y + ", " + GeometryIndex.COLUMN_MIN_Z
+				+ ", " + GeometryIndex.COLUMN_MAX_Z + ", "
+				+ GeometryIndex.COLUMN_MIN_M + ", " + GeometryIndex.COLUMN_MAX_M
+				+ ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+		final ExecutorService workers = Executors
+				.newFixedThreadPool(indexThreads);
+		final BlockingQueue<Future<EnvelopeBatch>> queue = new ArrayBlockingQueue<>(
+				indexThreads * 2);
+		final Future<EnvelopeBatch> end = new FutureTask<>(
+				new Callable<EnvelopeBatch>() {
+					@Override
+					public EnvelopeBatch call() throws Exception {
+						return null;
+					}
+				});
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<Exception> readError = new AtomicReference<>();
+
+		// Reader streaming ids and geometry bytes into envelope batches
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ResultSet resultSet = null;
+				try {
+					resultSet = SQLUtils.query(connection, readSql, null);
+					EnvelopeBatch batch = new EnvelopeBatch(batchSize);
+					while (!stop.get() && isActive() && resultSet.next()) {
+						batch.add(resultSet.getLong(1), resultSet.getBytes(2));
+						if (batch.size() >= batchSize) {
+							queue.put(workers.submit(batch));
+							batch = new EnvelopeBatch(batchSize);
+						}
+					}
+					if (batch.size() > 0 && !stop.get()) {
+						queue.put(workers.submit(batch));
+					}
+				} catch (Exception e) {
+					readError.set(e);
+				} finally {
+					SQLUtils.closeResultSetStatement(resultSet, readSql);
+					try {
+						queue.put(end);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}, "FeatureTableIndex-" + getTableName() + "-reader");
+
+		int count = 0;
+		boolean successful = false;
+		PreparedStatement statement = null;
+		boolean autoCommit = SQLUtils.beginTransaction(connection);
+		try {
+
+			statement = connection.prepareStatement(writeSql);
+			reader.start();
+
+			int uncommitted = 0;
+			Future<EnvelopeBatch> future;
+			while ((future = queue.take()) != end) {
+
+				if (stop.get()) {
+					continue;
+				}
+				if (!isActive()) {
+					stop.set(true);
+					continue;
+				}
+
+				EnvelopeBatch batch = future.get();
+				int batchCount = batch.write(statement, getTableName());
+				count += batchCount;
+				uncommitted += batchCount;
+				if (progress != null) {
+					progress.addProgress(batch.size());
+				}
+
+				if (uncommitted >= transactionLimit) {
+					connection.commit();
+					uncommitted = 0;
+				}
+			}
+
+			if (readError.get() != null) {
+				throw readError.get();
+			}
+
+			successful = true;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GeoPackageException(
+					"Interrupted while indexing table. GeoPackage: "
+							+ getGeoPackage().getName() + ", Table: "
+							+ getTableName(),
+					e);
+		} catch (ExecutionException e) {
+			throw new GeoPackageException("Failed to Index Table. GeoPackage: "
+					+ getGeoPackage().getName() + ", Table: " + getTableName(),
+					e.getCause());
+		} catch (Exception e) {
+			throw new GeoPackageException("Failed to Index Table. GeoPackage: "
+					+ getGeoPackage().getName() + ", Table: " + getTableName(),
+					e);
+		} finally {
+			stop.set(true);
+			queue.clear();
+			try {
+				reader.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			workers.shutdownNow();
+			SQLUtils.closeStatement(statement, writeSql);
+			// Keep the index rows written before a cancel or failure
+			SQLUtils.endTransaction(connection, true, autoCommit);
+		}
+
+		// Update the last indexed time
+		if (successful && isActive()) {
+			updateLastIndexed();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Check if the index progress is active
+	 * 
+	 * @return true if no progress or progress is active
+	 */
+	private boolean isActive() {
+		return progress == null || progress.isActive();
+	}
+
+	/**
+	 * Batch of feature ids and geometry bytes, building envelopes as a worker
+	 * task and writing them as a prepared statement batch
+	 */
+	private static class EnvelopeBatch implements Callable<EnvelopeBatch> {
+
+		/**
+		 * Feature ids
+		 */
+		private final long[] ids;
+
+		/**
+		 * Geometry bytes, released after the envelopes are built
+		 */
+		private byte[][] geometries;
+
+		/**
+		 * Built envelopes
+		 */
+		private final GeometryEnvelope[] envelopes;
+
+		/**
+		 * Number of rows in the batch
+		 */
+		private int size = 0;
+
+		/**
+		 * Constructor
+		 * 
+		 * @param capacity
+		 *            batch capacity
+		 */
+		public EnvelopeBatch(int capacity) {
+			ids = new long[capacity];
+			geometries = new byte[capacity][];
+			envelopes = new GeometryEnvelope[capacity];
+		}
+
+		/**
+		 * Add a feature row
+		 * 
+		 * @param id
+		 *            feature id
+		 * @param geometry
+		 *            geometry bytes
+		 */
+		public void add(long id, byte[] geometry) {
+			ids[size] = id;
+			geometries[size] = geometry;
+			size++;
+		}
+
+		/**
+		 * Get the number of rows in the batch
+		 * 
+		 * @return size
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public EnvelopeBatch call() throws Exception {
+			for (int i = 0; i < size; i++) {
+				try {
+					envelopes[i] = GeoPackageGeometryHeader
+							.getEnvelope(geometries[i]);
+				} catch (Exception e) {
+					log.log(Level.SEVERE,
+							"Failed to build feature envelope. Id: " + ids[i],
+							e);
+				}
+			}
+			geometries = null;
+			return this;
+		}
+
+		/**
+		 * Write the built envelopes as a prepared statement batch
+		 * 
+		 * @param statement
+		 *            geometry index insert statement
+		 * @param tableName
+		 *            table name
+		 * @return number of index rows written
+		 * @throws SQLException
+		 *             upon failure
+		 */
+		public int write(PreparedStatement statement, String tableName)
+				throws SQLException {
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				GeometryEnvelope envelope = envelopes[i];
+				if (envelope != null) {
+					statement.setString(1, tableName);
+					statement.setLong(2, ids[i]);
+					statement.setDouble(3, envelope.getMinX());
+					statement.setDouble(4, envelope.getMaxX());
+					statement.setDouble(5, envelope.getMinY());
+					statement.setDouble(6, envelope.getMaxY());
+					if (envelope.isHasZ()) {
+						statement.setDouble(7, envelope.getMinZ());
+						statement.setDouble(8, envelope.getMaxZ());
+					} else {
+						statement.setNull(7, Types.DOUBLE);
+						statement.setNull(8, Types.DOUBLE);
+					}
+					if (envelope.isHasM()) {
+						statement.setDouble(9, envelope.getMinM());
+						statement.setDouble(10, envelope.getMaxM());
+					} else {
+						statement.setNull(9, Types.DOUBLE);
+						statement.setNull(10, Types.DOUBLE);
+					}
+					statement.addBatch();
+					count++;
+				}
+			}
+			if (count > 0) {
+				statement.executeBatch();
+			}
+			return count;
+		}
+
+	}
+
 	/**
 	 * Index the feature rows in the cursor
 	 * 
@@ -955,6 +1380,42 @@ public class FeatureTableIndex extends FeatureTableCoreIndex {
 		return featureDao.queryIn(queryIdsSQL(envelope), where, whereArgs);
 	}
 
+	/**
+	 * Explain the query plan of a feature query joined with the geometry index
+	 * ids, reporting scans and temp B-trees with secondary index
+	 * recommendations for the feature where clause columns
+	 * 
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return query plan
+	 * @since 3.5.1
+	 */
+	public QueryPlan explainQueryFeatures(String where, String[] whereArgs) {
+		return featureDao.explainQueryIn(queryIdsSQL(), null, where,
+				whereArgs);
+	}
+
+	/**
+	 * Explain the query plan of a feature query joined with the geometry index
+	 * ids within the Geometry Envelope
+	 * 
+	 * @param envelope
+	 *            geometry envelope
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return query plan
+	 * @since 3.5.1
+	 */
+	public QueryPlan explainQueryFeatures(GeometryEnvelope envelope,
+			String where, String[] whereArgs) {
+		return featureDao.explainQueryIn(queryIdsSQL(envelope), null, where,
+				whereArgs);
+	}
+
 	/**
 	 * Query for Features within the Geometry Envelope
 	 * 
@@ -992,4 +1453,267 @@ public class FeatureTableIndex extends FeatureTableCoreIndex {
 		return featureDao.countIn(queryIdsSQL(envelope), where, whereArgs);
 	}
 
+	/**
+	 * Query for features within the geometry envelope matching the compiled
+	 * filter field values, bound as string where arguments which do not
+	 * support byte array values
+	 * 
+	 * @param envelope
+	 *            geometry envelope
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return feature results
+	 * @since 3.5.1
+	 */
+	public FeatureResultSet queryFeatures(GeometryEnvelope envelope,
+			CompiledFilter filter, Object... values) {
+		return queryFeatures(envelope, filter.getWhere(values),
+				filter.getWhereArgs(values));
+	}
+
+	/**
+	 * Count the features within the geometry envelope matching the compiled
+	 * filter field values, binding the typed values on a reusable statement
+	 * 
+	 * @param envelope
+	 *            geometry envelope
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public int countFeatures(GeometryEnvelope envelope, CompiledFilter filter,
+			Object... values) {
+		return filter.countIn(queryIdsSQL(envelope), null, values);
+	}
+
+	/**
+	 * Query for features within the bounding box matching the compiled filter
+	 * field values, projected correctly
+	 * 
+	 * @param boundingBox
+	 *            bounding box
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return feature results
+	 * @since 3.5.1
+	 */
+	public FeatureResultSet queryFeatures(BoundingBox boundingBox,
+			CompiledFilter filter, Object... values) {
+		return queryFeatures(boundingBox.buildEnvelope(), filter, values);
+	}
+
+	/**
+	 * Count the features within the bounding box matching the compiled filter
+	 * field values, projected correctly
+	 * 
+	 * @param boundingBox
+	 *            bounding box
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public int countFeatures(BoundingBox boundingBox, CompiledFilter filter,
+			Object... values) {
+		return countFeatures(boundingBox.buildEnvelope(), filter, values);
+	}
+
+	/**
+	 * Estimate the number of indexed features by sampling the feature ids and
+	 * probing the geometry index primary key, without counting the index
+	 * 
+	 * @return count estimate
+	 * @since 3.5.1
+	 */
+	public CountEstimate estimateCount() {
+		String where = "EXISTS (SELECT 1 FROM "
+				+ CoreSQLUtils.quoteWrap(GeometryIndex.TABLE_NAME) + " WHERE "
+				+ GeometryIndex.COLUMN_TABLE_NAME + " = ? AND "
+				+ GeometryIndex.COLUMN_GEOM_ID + " = "
+				+ CoreSQLUtils.quoteWrap(getTableName()) + "."
+				+ CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()) + ")";
+		return featureDao.estimateCount(where,
+				new String[] { getTableName() });
+	}
+
+	/**
+	 * Get the bounds of the indexed features matching the where clause from
+	 * the geometry index aggregates, joining the geometry index ids to the
+	 * feature table ids without decoding geometries
+	 * 
+	 * @param where
+	 *            where clause, null for all features
+	 * @param whereArgs
+	 *            where arguments
+	 * @return bounding box, null when no indexed features match
+	 * @since 3.5.1
+	 */
+	public BoundingBox getBoundingBox(String where, String[] whereArgs) {
+
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT MIN(").append(GeometryIndex.COLUMN_MIN_X)
+				.append("), MIN(").append(GeometryIndex.COLUMN_MIN_Y)
+				.append("), MAX(").append(GeometryIndex.COLUMN_MAX_X)
+				.append("), MAX(").append(GeometryIndex.COLUMN_MAX_Y)
+				.append(") FROM ")
+				.append(CoreSQLUtils.quoteWrap(GeometryIndex.TABLE_NAME))
+				.append(" WHERE ").append(GeometryIndex.COLUMN_TABLE_NAME)
+				.append(" = ?");
+		if (where != null) {
+			sql.append(" AND ").append(GeometryIndex.COLUMN_GEOM_ID)
+					.append(" IN (SELECT ")
+					.append(CoreSQLUtils
+							.quoteWrap(featureDao.getIdColumnName()))
+					.append(" FROM ")
+					.append(CoreSQLUtils.quoteWrap(getTableName()))
+					.append(" WHERE ").append(where).append(")");
+		}
+
+		int argCount = whereArgs != null ? whereArgs.length : 0;
+		String[] args = new String[argCount + 1];
+		args[0] = getTableName();
+		if (argCount > 0) {
+			System.arraycopy(whereArgs, 0, args, 1, argCount);
+		}
+
+		List<List<Object>> results = SQLUtils.queryResults(
+				featureDao.getConnection(), sql.toString(), args, null, 1);
+
+		BoundingBox boundingBox = null;
+		if (!results.isEmpty()) {
+			List<Object> values = results.get(0);
+			if (values.get(0) != null) {
+				boundingBox = new BoundingBox(
+						((Number) values.get(0)).doubleValue(),
+						((Number) values.get(1)).doubleValue(),
+						((Number) values.get(2)).doubleValue(),
+						((Number) values.get(3)).doubleValue());
+			}
+		}
+
+		return boundingBox;
+	}
+
+
+	/**
+	 * Query for the nearest features to the location using a best first
+	 * search over the geometry index envelopes. Envelopes are read in order of
+	 * their minimum distance to the location, and feature geometries are only
+	 * read while their envelope could be closer than the current nearest
+	 * features.
+	 * 
+	 * @param x
+	 *            x coordinate in the feature projection
+	 * @param y
+	 *            y coordinate in the feature projection
+	 * @param k
+	 *            maximum number of features
+	 * @param maxDistance
+	 *            maximum planar distance in the feature projection units
+	 * @return up to k nearest features ordered by distance
+	 * @since 3.5.1
+	 */
+	public List<FeatureDistance> queryNearest(double x, double y, int k,
+			double maxDistance) {
+
+		List<FeatureDistance> nearest = new ArrayList<>();
+		if (k <= 0) {
+			return nearest;
+		}
+
+		String envelopeSql = "SELECT " + GeometryIndex.COLUMN_GEOM_ID
+				+ ", dx * dx + dy * dy FROM (SELECT "
+				+ GeometryIndex.COLUMN_GEOM_ID + ", MAX(0, "
+				+ GeometryIndex.COLUMN_MIN_X + " - ?, ? - "
+				+ GeometryIndex.COLUMN_MAX_X + ") AS dx, MAX(0, "
+				+ GeometryIndex.COLUMN_MIN_Y + " - ?, ? - "
+				+ GeometryIndex.COLUMN_MAX_Y + ") AS dy FROM "
+				+ CoreSQLUtils.quoteWrap(GeometryIndex.TABLE_NAME) + " WHERE "
+				+ GeometryIndex.COLUMN_TABLE_NAME + " = ?) ORDER BY 2";
+		String geometrySql = "SELECT "
+				+ CoreSQLUtils.quoteWrap(featureDao.getGeometryColumnName())
+				+ " FROM " + CoreSQLUtils.quoteWrap(getTableName())
+				+ " WHERE "
+				+ CoreSQLUtils.quoteWrap(featureDao.getIdColumnName())
+				+ " = ?";
+		String[] envelopeArgs = new String[] { String.valueOf(x),
+				String.valueOf(x), String.valueOf(y), String.valueOf(y),
+				getTableName() };
+
+		Connection connection = featureDao.getConnection();
+		ResultSet envelopes = SQLUtils.query(connection, envelopeSql,
+				envelopeArgs);
+		PreparedStatement geometryStatement = null;
+		try {
+			geometryStatement = connection.prepareStatement(geometrySql);
+
+			// Features with exact distances, nearest first
+			PriorityQueue<FeatureDistance> features = new PriorityQueue<>();
+
+			boolean more = envelopes.next();
+			while (nearest.size() < k) {
+
+				double envelopeDistance = more
+						? Math.sqrt(envelopes.getDouble(2))
+						: Double.POSITIVE_INFINITY;
+
+				// Features no farther than the remaining envelopes are nearest
+				while (nearest.size() < k && !features.isEmpty()
+						&& features.peek().getDistance() <= envelopeDistance) {
+					nearest.add(features.poll());
+				}
+
+				if (!more || nearest.size() >= k
+						|| envelopeDistance > maxDistance) {
+					break;
+				}
+
+				long geomId = envelopes.getLong(1);
+				geometryStatement.setLong(1, geomId);
+				ResultSet geometryResult = geometryStatement.executeQuery();
+				try {
+					if (geometryResult.next()) {
+						byte[] geometryBytes = geometryResult.getBytes(1);
+						if (geometryBytes != null) {
+							Geometry geometry = new GeoPackageGeometryData(
+									geometryBytes).getGeometry();
+							if (geometry != null) {
+								double distance = GeometryPredicates
+										.distance(geometry, x, y);
+								if (distance <= maxDistance) {
+									features.add(new FeatureDistance(geomId,
+											distance));
+								}
+							}
+						}
+					}
+				} finally {
+					geometryResult.close();
+				}
+
+				more = envelopes.next();
+			}
+
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to query nearest features. Table: "
+							+ getTableName(),
+					e);
+		} finally {
+			SQLUtils.closeResultSetStatement(envelopes, envelopeSql);
+			SQLUtils.closeStatement(geometryStatement, geometrySql);
+		}
+
+		return nearest;
+	}
+
 }
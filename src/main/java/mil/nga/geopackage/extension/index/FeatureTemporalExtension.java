@@ -0,0 +1,720 @@
+package mil.nga.geopackage.extension.index;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.GeoPackageDataType;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.extension.BaseExtension;
+import mil.nga.geopackage.extension.ExtensionScopeType;
+import mil.nga.geopackage.features.user.FeatureColumn;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+
+/**
+ * Feature Temporal NGA extension, indexing a date or datetime column, or a
+ * start and end column pair, of a feature table as epoch millisecond
+ * intervals in a B-tree indexed table. The interval index is maintained by
+ * triggers on the feature table. Time window queries range scan the interval
+ * starts, widened by the longest indexed interval, instead of scanning and
+ * parsing the date column of every feature, and combine with spatial index
+ * queries as a feature id restriction.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureTemporalExtension extends BaseExtension {
+
+	/**
+	 * Extension author
+	 */
+	public static final String EXTENSION_AUTHOR = "nga";
+
+	/**
+	 * Extension name without the author
+	 */
+	public static final String EXTENSION_NAME_NO_AUTHOR = "feature_temporal";
+
+	/**
+	 * Extension, with author and name
+	 */
+	public static final String EXTENSION_NAME = EXTENSION_AUTHOR + "_"
+			+ EXTENSION_NAME_NO_AUTHOR;
+
+	/**
+	 * Extension definition
+	 */
+	public static final String DEFINITION = "Epoch time interval index of feature table date and datetime columns";
+
+	/**
+	 * Temporal index registry table name, also the prefix of the feature
+	 * table interval index tables
+	 */
+	public static final String TABLE_NAME = "nga_feature_temporal";
+
+	/**
+	 * Table name column
+	 */
+	public static final String COLUMN_TABLE_NAME = "table_name";
+
+	/**
+	 * Start column name column
+	 */
+	public static final String COLUMN_START_COLUMN = "start_column";
+
+	/**
+	 * End column name column
+	 */
+	public static final String COLUMN_END_COLUMN = "end_column";
+
+	/**
+	 * Longest indexed interval column, in milliseconds
+	 */
+	public static final String COLUMN_MAX_DURATION = "max_duration";
+
+	/**
+	 * Interval index feature id column
+	 */
+	public static final String COLUMN_ID = "id";
+
+	/**
+	 * Interval index start epoch millisecond column
+	 */
+	public static final String COLUMN_START_TIME = "start_time";
+
+	/**
+	 * Interval index end epoch millisecond column
+	 */
+	public static final String COLUMN_END_TIME = "end_time";
+
+	/**
+	 * Julian day of the unix epoch
+	 */
+	private static final String JULIAN_DAY_EPOCH = "2440587.5";
+
+	/**
+	 * Milliseconds per day
+	 */
+	private static final String MILLISECONDS_PER_DAY = "86400000";
+
+	/**
+	 * Feature DAO
+	 */
+	private final FeatureDao featureDao;
+
+	/**
+	 * Connection
+	 */
+	private final Connection connection;
+
+	/**
+	 * Indexed start and end column names, null when not loaded
+	 */
+	private String[] columns;
+
+	/**
+	 * Constructor
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @param featureDao
+	 *            feature DAO
+	 */
+	public FeatureTemporalExtension(GeoPackage geoPackage,
+			FeatureDao featureDao) {
+		super(geoPackage);
+		this.featureDao = featureDao;
+		this.connection = featureDao.getConnection();
+	}
+
+	/**
+	 * Get the feature DAO
+	 *
+	 * @return feature DAO
+	 */
+	public FeatureDao getFeatureDao() {
+		return featureDao;
+	}
+
+	/**
+	 * Get the table name
+	 *
+	 * @return table name
+	 */
+	public String getTableName() {
+		return featureDao.getTableName();
+	}
+
+	/**
+	 * Get the interval index table name of the feature table
+	 *
+	 * @return index table name
+	 */
+	public String getIndexTableName() {
+		return TABLE_NAME + "_" + getTableName();
+	}
+
+	/**
+	 * Determine if the feature table has a temporal index
+	 *
+	 * @return true if indexed
+	 */
+	public boolean has() {
+		return getStartColumn() != null;
+	}
+
+	/**
+	 * Get the indexed start, or instant, column
+	 *
+	 * @return start column name, null when not indexed
+	 */
+	public String getStartColumn() {
+		return getColumns()[0];
+	}
+
+	/**
+	 * Get the indexed end column
+	 *
+	 * @return end column name, null for instants or when not indexed
+	 */
+	public String getEndColumn() {
+		return getColumns()[1];
+	}
+
+	/**
+	 * Get the longest indexed interval, used to widen the start range scan of
+	 * time window queries
+	 *
+	 * @return max duration in milliseconds
+	 */
+	public long getMaxDuration() {
+		long maxDuration = 0;
+		if (geoPackage.isTable(TABLE_NAME)) {
+			String sql = "SELECT " + COLUMN_MAX_DURATION + " FROM "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " WHERE "
+					+ COLUMN_TABLE_NAME + " = ?";
+			ResultSet resultSet = SQLUtils.query(connection, sql,
+					new String[] { getTableName() });
+			try {
+				if (resultSet.next()) {
+					maxDuration = resultSet.getLong(1);
+				}
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to query temporal index max duration. Table: "
+								+ getTableName(),
+						e);
+			} finally {
+				SQLUtils.closeResultSetStatement(resultSet, sql);
+			}
+		}
+		return maxDuration;
+	}
+
+	/**
+	 * Index the date, datetime, or epoch millisecond integer column as time
+	 * instants, replacing an existing temporal index of the feature table
+	 *
+	 * @param column
+	 *            column name
+	 * @return number of indexed features
+	 */
+	public long index(String column) {
+		return index(column, null);
+	}
+
+	/**
+	 * Index the start and end date, datetime, or epoch millisecond integer
+	 * columns as time intervals, replacing an existing temporal index of the
+	 * feature table. Features with a null end are indexed as instants and
+	 * features with a null or unparsable start are not indexed.
+	 *
+	 * @param startColumn
+	 *            start column name
+	 * @param endColumn
+	 *            end column name, null for instants
+	 * @return number of indexed features
+	 */
+	public long index(String startColumn, String endColumn) {
+
+		FeatureColumn start = getColumn(startColumn);
+		FeatureColumn end = endColumn != null ? getColumn(endColumn) : null;
+
+		delete();
+		createTables();
+
+		String indexTable = CoreSQLUtils.quoteWrap(getIndexTableName());
+		String table = CoreSQLUtils.quoteWrap(getTableName());
+		String idColumn = CoreSQLUtils.quoteWrap(featureDao.getIdColumnName());
+
+		SQLUtils.execSQL(connection, "CREATE TABLE " + indexTable + " ("
+				+ COLUMN_ID + " INTEGER PRIMARY KEY, " + COLUMN_START_TIME
+				+ " INTEGER NOT NULL, " + COLUMN_END_TIME
+				+ " INTEGER NOT NULL)");
+		SQLUtils.execSQL(connection,
+				"CREATE INDEX "
+						+ CoreSQLUtils.quoteWrap(
+								getIndexTableName() + "_" + COLUMN_START_TIME)
+						+ " ON " + indexTable + " (" + COLUMN_START_TIME
+						+ ")");
+
+		SQLUtils.execSQL(connection, "INSERT INTO "
+				+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+				+ COLUMN_TABLE_NAME + ", " + COLUMN_START_COLUMN + ", "
+				+ COLUMN_END_COLUMN + ", " + COLUMN_MAX_DURATION
+				+ ") VALUES (" + literal(getTableName()) + ", "
+				+ literal(start.getName()) + ", "
+				+ (end != null ? literal(end.getName()) : "NULL") + ", 0)");
+
+		String maxDuration = "UPDATE " + CoreSQLUtils.quoteWrap(TABLE_NAME)
+				+ " SET " + COLUMN_MAX_DURATION + " = ";
+		String registry = " WHERE " + COLUMN_TABLE_NAME + " = "
+				+ literal(getTableName());
+
+		// Index the existing features
+		SQLUtils.execSQL(connection, insertSql(start, end, "") + " FROM "
+				+ table + ") WHERE s IS NOT NULL");
+		SQLUtils.execSQL(connection,
+				maxDuration + "COALESCE((SELECT MAX(" + COLUMN_END_TIME
+						+ " - " + COLUMN_START_TIME + ") FROM " + indexTable
+						+ "), 0)" + registry);
+
+		// Maintain the interval index with triggers
+		String insert = insertSql(start, end, "NEW.")
+				+ ") WHERE s IS NOT NULL;";
+		if (end != null) {
+			String duration = "(SELECT " + COLUMN_END_TIME + " - "
+					+ COLUMN_START_TIME + " FROM " + indexTable + " WHERE "
+					+ COLUMN_ID + " = NEW." + idColumn + ")";
+			insert += " " + maxDuration + duration + registry + " AND "
+					+ duration + " > " + COLUMN_MAX_DURATION + ";";
+		}
+		String delete = "DELETE FROM " + indexTable + " WHERE " + COLUMN_ID
+				+ " = OLD." + idColumn + ";";
+
+		String updateColumns = idColumn + ", "
+				+ CoreSQLUtils.quoteWrap(start.getName());
+		if (end != null && !end.getName().equals(start.getName())) {
+			updateColumns += ", " + CoreSQLUtils.quoteWrap(end.getName());
+		}
+
+		SQLUtils.execSQL(connection,
+				"CREATE TRIGGER "
+						+ CoreSQLUtils.quoteWrap(triggerName("insert"))
+						+ " AFTER INSERT ON " + table + " BEGIN " + insert
+						+ " END");
+		SQLUtils.execSQL(connection,
+				"CREATE TRIGGER "
+						+ CoreSQLUtils.quoteWrap(triggerName("update"))
+						+ " AFTER UPDATE OF " + updateColumns + " ON " + table
+						+ " BEGIN " + delete + " " + insert + " END");
+		SQLUtils.execSQL(connection,
+				"CREATE TRIGGER "
+						+ CoreSQLUtils.quoteWrap(triggerName("delete"))
+						+ " AFTER DELETE ON " + table + " BEGIN " + delete
+						+ " END");
+
+		getOrCreate(EXTENSION_NAME, getTableName(), start.getName(),
+				DEFINITION, ExtensionScopeType.READ_WRITE);
+
+		columns = new String[] { start.getName(),
+				end != null ? end.getName() : null };
+
+		return count();
+	}
+
+	/**
+	 * Count the indexed features
+	 *
+	 * @return indexed feature count
+	 */
+	public long count() {
+		long count = 0;
+		if (has()) {
+			count = SQLUtils.count(connection, getIndexTableName(), null,
+					null);
+		}
+		return count;
+	}
+
+	/**
+	 * Build the where clause restricting features to those with an indexed
+	 * time interval intersecting the inclusive time window
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @return where clause
+	 */
+	public String buildWhere(Date from, Date to) {
+		return buildWhere(from, to, null);
+	}
+
+	/**
+	 * Build the where clause restricting features matching the where clause
+	 * to those with an indexed time interval intersecting the inclusive time
+	 * window
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @param where
+	 *            where clause, may be null
+	 * @return where clause
+	 */
+	public String buildWhere(Date from, Date to, String where) {
+
+		validateIndex();
+
+		StringBuilder sql = new StringBuilder();
+		sql.append(CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()))
+				.append(" IN (SELECT ").append(COLUMN_ID).append(" FROM ")
+				.append(CoreSQLUtils.quoteWrap(getIndexTableName()));
+		List<String> conditions = new ArrayList<>();
+		if (from != null) {
+			conditions.add(COLUMN_START_TIME + " >= ?");
+		}
+		if (to != null) {
+			conditions.add(COLUMN_START_TIME + " <= ?");
+		}
+		if (from != null) {
+			conditions.add(COLUMN_END_TIME + " >= ?");
+		}
+		for (int i = 0; i < conditions.size(); i++) {
+			sql.append(i == 0 ? " WHERE " : " AND ")
+					.append(conditions.get(i));
+		}
+		sql.append(")");
+
+		if (where != null) {
+			sql.append(" AND (").append(where).append(")");
+		}
+
+		return sql.toString();
+	}
+
+	/**
+	 * Build the where arguments of a time window where clause
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @return where arguments
+	 */
+	public String[] buildWhereArgs(Date from, Date to) {
+		return buildWhereArgs(from, to, null);
+	}
+
+	/**
+	 * Build the where arguments of a time window where clause, followed by
+	 * the where arguments
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @param whereArgs
+	 *            where arguments, may be null
+	 * @return where arguments
+	 */
+	public String[] buildWhereArgs(Date from, Date to, String[] whereArgs) {
+
+		List<String> args = new ArrayList<>();
+		if (from != null) {
+			// Widen the start range by the longest interval so the start
+			// index range scan covers intervals beginning before the window
+			long fromTime = from.getTime();
+			long maxDuration = getEndColumn() != null ? getMaxDuration() : 0;
+			long minStart = fromTime - maxDuration;
+			if (minStart > fromTime) {
+				minStart = Long.MIN_VALUE;
+			}
+			args.add(String.valueOf(minStart));
+		}
+		if (to != null) {
+			args.add(String.valueOf(to.getTime()));
+		}
+		if (from != null) {
+			args.add(String.valueOf(from.getTime()));
+		}
+		if (whereArgs != null) {
+			args.addAll(Arrays.asList(whereArgs));
+		}
+
+		return args.toArray(new String[args.size()]);
+	}
+
+	/**
+	 * Query for features with a time interval intersecting the inclusive time
+	 * window
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @return feature results
+	 */
+	public FeatureResultSet queryFeatures(Date from, Date to) {
+		return queryFeatures(from, to, null, null);
+	}
+
+	/**
+	 * Query for features matching the where clause with a time interval
+	 * intersecting the inclusive time window
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return feature results
+	 */
+	public FeatureResultSet queryFeatures(Date from, Date to, String where,
+			String[] whereArgs) {
+		return featureDao.query(buildWhere(from, to, where),
+				buildWhereArgs(from, to, whereArgs));
+	}
+
+	/**
+	 * Count the features with a time interval intersecting the inclusive time
+	 * window
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @return count
+	 */
+	public int countFeatures(Date from, Date to) {
+		return countFeatures(from, to, null, null);
+	}
+
+	/**
+	 * Count the features matching the where clause with a time interval
+	 * intersecting the inclusive time window
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return count
+	 */
+	public int countFeatures(Date from, Date to, String where,
+			String[] whereArgs) {
+		return featureDao.count(buildWhere(from, to, where),
+				buildWhereArgs(from, to, whereArgs));
+	}
+
+	/**
+	 * Delete the temporal index of the feature table
+	 */
+	public void delete() {
+		for (String operation : new String[] { "insert", "update",
+				"delete" }) {
+			SQLUtils.execSQL(connection, "DROP TRIGGER IF EXISTS "
+					+ CoreSQLUtils.quoteWrap(triggerName(operation)));
+		}
+		SQLUtils.execSQL(connection, "DROP TABLE IF EXISTS "
+				+ CoreSQLUtils.quoteWrap(getIndexTableName()));
+		if (geoPackage.isTable(TABLE_NAME)) {
+			SQLUtils.delete(connection, TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?",
+					new String[] { getTableName() });
+		}
+		try {
+			if (extensionsDao.isTableExists()) {
+				extensionsDao.deleteByExtension(EXTENSION_NAME,
+						getTableName());
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to delete feature temporal extension. Table: "
+							+ getTableName(),
+					e);
+		}
+		columns = null;
+	}
+
+	/**
+	 * Get the indexed start and end columns, loading them when needed
+	 *
+	 * @return start and end column names
+	 */
+	private String[] getColumns() {
+		if (columns == null) {
+			String[] indexed = new String[2];
+			if (geoPackage.isTable(TABLE_NAME)) {
+				String sql = "SELECT " + COLUMN_START_COLUMN + ", "
+						+ COLUMN_END_COLUMN + " FROM "
+						+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " WHERE "
+						+ COLUMN_TABLE_NAME + " = ?";
+				ResultSet resultSet = SQLUtils.query(connection, sql,
+						new String[] { getTableName() });
+				try {
+					if (resultSet.next()) {
+						indexed[0] = resultSet.getString(1);
+						indexed[1] = resultSet.getString(2);
+					}
+				} catch (SQLException e) {
+					throw new GeoPackageException(
+							"Failed to query temporal index columns. Table: "
+									+ getTableName(),
+							e);
+				} finally {
+					SQLUtils.closeResultSetStatement(resultSet, sql);
+				}
+			}
+			columns = indexed;
+		}
+		return columns;
+	}
+
+	/**
+	 * Validate the feature table has a temporal index
+	 */
+	private void validateIndex() {
+		if (!has()) {
+			throw new GeoPackageException(
+					"Feature table does not have a temporal index: "
+							+ getTableName());
+		}
+	}
+
+	/**
+	 * Get the temporal column, validating the data type
+	 *
+	 * @param name
+	 *            column name
+	 * @return feature column
+	 */
+	private FeatureColumn getColumn(String name) {
+		FeatureColumn column = null;
+		for (FeatureColumn featureColumn : featureDao.getTable()
+				.getColumns()) {
+			if (featureColumn.getName().equalsIgnoreCase(name)) {
+				column = featureColumn;
+				break;
+			}
+		}
+		if (column == null) {
+			throw new GeoPackageException("Temporal column '" + name
+					+ "' does not exist in table: " + getTableName());
+		}
+		GeoPackageDataType dataType = column.getDataType();
+		if (dataType == null || dataType == GeoPackageDataType.BLOB
+				|| dataType == GeoPackageDataType.BOOLEAN
+				|| column.isGeometry() || column.isPrimaryKey()) {
+			throw new GeoPackageException("Temporal column '"
+					+ column.getName()
+					+ "' must be a date, datetime, text or epoch millisecond integer column. Table: "
+					+ getTableName());
+		}
+		return column;
+	}
+
+	/**
+	 * Build the interval index insert select SQL of the feature id, start and
+	 * end epoch milliseconds, open for the feature table source and where
+	 * clause
+	 *
+	 * @param start
+	 *            start column
+	 * @param end
+	 *            end column, null for instants
+	 * @param prefix
+	 *            column prefix, "NEW." within triggers
+	 * @return SQL
+	 */
+	private String insertSql(FeatureColumn start, FeatureColumn end,
+			String prefix) {
+		return "INSERT INTO " + CoreSQLUtils.quoteWrap(getIndexTableName())
+				+ " (" + COLUMN_ID + ", " + COLUMN_START_TIME + ", "
+				+ COLUMN_END_TIME + ") SELECT i, s, MAX(s, COALESCE(e, s))"
+				+ " FROM (SELECT " + prefix
+				+ CoreSQLUtils.quoteWrap(featureDao.getIdColumnName())
+				+ " AS i, " + epoch(start, prefix) + " AS s, "
+				+ (end != null ? epoch(end, prefix) : "NULL") + " AS e";
+	}
+
+	/**
+	 * Build the epoch millisecond SQL expression of the column. Text dates and
+	 * datetimes are parsed as UTC and numeric values are epoch milliseconds.
+	 *
+	 * @param column
+	 *            column
+	 * @param prefix
+	 *            column prefix
+	 * @return SQL expression
+	 */
+	private static String epoch(FeatureColumn column, String prefix) {
+		String name = prefix + CoreSQLUtils.quoteWrap(column.getName());
+		String expression;
+		switch (column.getDataType()) {
+		case DATE:
+		case DATETIME:
+		case TEXT:
+			expression = "CAST(ROUND((julianday(" + name + ") - "
+					+ JULIAN_DAY_EPOCH + ") * " + MILLISECONDS_PER_DAY
+					+ ") AS INTEGER)";
+			break;
+		default:
+			expression = "CAST(" + name + " AS INTEGER)";
+		}
+		return expression;
+	}
+
+	/**
+	 * Create the registry table if needed
+	 */
+	private void createTables() {
+		if (!geoPackage.isTable(TABLE_NAME)) {
+			SQLUtils.execSQL(connection, "CREATE TABLE "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+					+ COLUMN_TABLE_NAME + " TEXT NOT NULL PRIMARY KEY, "
+					+ COLUMN_START_COLUMN + " TEXT NOT NULL, "
+					+ COLUMN_END_COLUMN + " TEXT, " + COLUMN_MAX_DURATION
+					+ " INTEGER NOT NULL)");
+		}
+	}
+
+	/**
+	 * Get the temporal index trigger name
+	 *
+	 * @param operation
+	 *            trigger operation
+	 * @return trigger name
+	 */
+	private String triggerName(String operation) {
+		return TABLE_NAME + "_" + operation + "_" + getTableName();
+	}
+
+	/**
+	 * Get the SQL string literal of the value
+	 *
+	 * @param value
+	 *            value
+	 * @return string literal
+	 */
+	private static String literal(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+}
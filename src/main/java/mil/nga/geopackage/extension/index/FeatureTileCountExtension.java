@@ -0,0 +1,983 @@
+package mil.nga.geopackage.extension.index;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.CountEstimate;
+import mil.nga.geopackage.db.CountEstimateSource;
+import mil.nga.geopackage.db.DateConverter;
+import mil.nga.geopackage.db.GeoPackageDataType;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.extension.BaseExtension;
+import mil.nga.geopackage.extension.ExtensionScopeType;
+import mil.nga.geopackage.features.index.FeatureDensityGrid;
+import mil.nga.geopackage.features.index.FeatureDensityMode;
+import mil.nga.geopackage.features.index.FeatureIndexManager;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.GeoPackageGeometryHeader;
+import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
+import mil.nga.geopackage.tiles.TileGrid;
+import mil.nga.geopackage.user.ContentValues;
+import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.proj.ProjectionConstants;
+import mil.nga.sf.proj.ProjectionFactory;
+import mil.nga.sf.proj.ProjectionTransform;
+
+/**
+ * Feature Tile Count NGA extension, persisting the number of features
+ * overlapping each XYZ tile of a feature table for a range of zoom levels.
+ * Counts are built in a single pass over the feature index. Feature table
+ * triggers log the ids and previous geometries of inserted, updated and
+ * deleted features, and the logged changes are applied to the counts before
+ * each use, keeping them current for edits from any connection.
+ * Feature tile rendering uses the counts to skip empty tiles and to choose the
+ * max features drawing without per tile count queries.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureTileCountExtension extends BaseExtension {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(FeatureTileCountExtension.class.getName());
+
+	/**
+	 * Extension author
+	 */
+	public static final String EXTENSION_AUTHOR = "nga";
+
+	/**
+	 * Extension name without the author
+	 */
+	public static final String EXTENSION_NAME_NO_AUTHOR = "feature_tile_count";
+
+	/**
+	 * Extension, with author and name
+	 */
+	public static final String EXTENSION_NAME = EXTENSION_AUTHOR + "_"
+			+ EXTENSION_NAME_NO_AUTHOR;
+
+	/**
+	 * Extension definition
+	 */
+	public static final String DEFINITION = "Feature counts per XYZ tile for feature tables";
+
+	/**
+	 * Tile count table name
+	 */
+	public static final String TABLE_NAME = "nga_feature_tile_count";
+
+	/**
+	 * Counted feature tables table name
+	 */
+	public static final String TABLES_TABLE_NAME = "nga_feature_tile_count_table";
+
+	/**
+	 * Changed features log table name
+	 */
+	public static final String CHANGES_TABLE_NAME = "nga_feature_tile_count_change";
+
+	/**
+	 * Feature table trigger name prefix
+	 */
+	public static final String TRIGGER_PREFIX = "nga_feature_tile_count_";
+
+	/**
+	 * Max covering tiles of a count estimate
+	 */
+	public static final int MAX_ESTIMATE_TILES = 64;
+
+	/**
+	 * Table name column
+	 */
+	public static final String COLUMN_TABLE_NAME = "table_name";
+
+	/**
+	 * Zoom level column
+	 */
+	public static final String COLUMN_ZOOM_LEVEL = "zoom_level";
+
+	/**
+	 * Tile column column
+	 */
+	public static final String COLUMN_TILE_COLUMN = "tile_column";
+
+	/**
+	 * Tile row column
+	 */
+	public static final String COLUMN_TILE_ROW = "tile_row";
+
+	/**
+	 * Feature count column
+	 */
+	public static final String COLUMN_FEATURE_COUNT = "feature_count";
+
+	/**
+	 * Min zoom level column
+	 */
+	public static final String COLUMN_MIN_ZOOM = "min_zoom";
+
+	/**
+	 * Max zoom level column
+	 */
+	public static final String COLUMN_MAX_ZOOM = "max_zoom";
+
+	/**
+	 * Stale flag column, set when the counts could not be maintained
+	 */
+	public static final String COLUMN_STALE = "stale";
+
+	/**
+	 * Last built date column
+	 */
+	public static final String COLUMN_LAST_BUILT = "last_built";
+
+	/**
+	 * Changed geometry id column
+	 */
+	public static final String COLUMN_GEOM_ID = "geom_id";
+
+	/**
+	 * Changed feature previous geometry column, null when inserted
+	 */
+	public static final String COLUMN_PREVIOUS = "previous";
+
+	/**
+	 * Max number of changed features applied per batch
+	 */
+	private static final int CHANGE_BATCH_SIZE = 500;
+
+	/**
+	 * Default max zoom level of built counts
+	 */
+	public static final int DEFAULT_MAX_ZOOM = 10;
+
+	/**
+	 * Feature DAO
+	 */
+	private final FeatureDao featureDao;
+
+	/**
+	 * Connection
+	 */
+	private final Connection connection;
+
+	/**
+	 * Feature projection to WGS84 transform
+	 */
+	private ProjectionTransform toWgs84;
+
+	/**
+	 * Built min zoom level, null when not built or stale
+	 */
+	private Integer minZoom;
+
+	/**
+	 * Built max zoom level, null when not built or stale
+	 */
+	private Integer maxZoom;
+
+	/**
+	 * Constructor
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @param featureDao
+	 *            feature DAO
+	 */
+	public FeatureTileCountExtension(GeoPackage geoPackage,
+			FeatureDao featureDao) {
+		super(geoPackage);
+		this.featureDao = featureDao;
+		this.connection = featureDao.getConnection();
+	}
+
+	/**
+	 * Get the feature DAO
+	 *
+	 * @return feature DAO
+	 */
+	public FeatureDao getFeatureDao() {
+		return featureDao;
+	}
+
+	/**
+	 * Get the table name
+	 *
+	 * @return table name
+	 */
+	public String getTableName() {
+		return featureDao.getTableName();
+	}
+
+	/**
+	 * Determine if current tile counts exist for the feature table, applying
+	 * logged feature changes. Checked on each use, so counts marked stale
+	 * through another instance are not used.
+	 *
+	 * @return true if has current tile counts
+	 */
+	public boolean has() {
+		load();
+		return minZoom != null;
+	}
+
+	/**
+	 * Get the min zoom level of the tile counts
+	 *
+	 * @return min zoom level, null when not built
+	 */
+	public Integer getMinZoom() {
+		load();
+		return minZoom;
+	}
+
+	/**
+	 * Get the max zoom level of the tile counts
+	 *
+	 * @return max zoom level, null when not built
+	 */
+	public Integer getMaxZoom() {
+		load();
+		return maxZoom;
+	}
+
+	/**
+	 * Build the tile counts from zoom level 0 to {@link #DEFAULT_MAX_ZOOM}
+	 *
+	 * @param featureIndex
+	 *            feature index manager of the feature table
+	 * @return number of non empty tiles
+	 */
+	public long build(FeatureIndexManager featureIndex) {
+		return build(featureIndex, 0, DEFAULT_MAX_ZOOM);
+	}
+
+	/**
+	 * Build the tile counts for the zoom level range in a single pass over the
+	 * feature index, replacing any existing counts for the feature table
+	 *
+	 * @param featureIndex
+	 *            feature index manager of the feature table
+	 * @param minZoom
+	 *            min zoom level
+	 * @param maxZoom
+	 *            max zoom level
+	 * @return number of non empty tiles
+	 */
+	public long build(FeatureIndexManager featureIndex, int minZoom,
+			int maxZoom) {
+
+		if (minZoom < 0 || maxZoom < minZoom) {
+			throw new GeoPackageException("Invalid zoom range. Min: "
+					+ minZoom + ", Max: " + maxZoom);
+		}
+
+		List<FeatureDensityGrid> grids = featureIndex
+				.queryTileDensity(minZoom, maxZoom, FeatureDensityMode.OVERLAP);
+
+		createTables();
+
+		String insertSql = "INSERT INTO "
+				+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+				+ COLUMN_TABLE_NAME + ", " + COLUMN_ZOOM_LEVEL + ", "
+				+ COLUMN_TILE_COLUMN + ", " + COLUMN_TILE_ROW + ", "
+				+ COLUMN_FEATURE_COUNT + ") VALUES (?, ?, ?, ?, ?)";
+
+		String tableSql = "INSERT OR REPLACE INTO "
+				+ CoreSQLUtils.quoteWrap(TABLES_TABLE_NAME) + " ("
+				+ COLUMN_TABLE_NAME + ", " + COLUMN_MIN_ZOOM + ", "
+				+ COLUMN_MAX_ZOOM + ", " + COLUMN_STALE + ", "
+				+ COLUMN_LAST_BUILT + ") VALUES (?, ?, ?, 0, ?)";
+
+		long tiles = 0;
+		boolean autoCommit = SQLUtils.beginTransaction(connection);
+		boolean successful = false;
+		PreparedStatement statement = null;
+		PreparedStatement tableStatement = null;
+		try {
+
+			deleteCounts();
+			SQLUtils.delete(connection, CHANGES_TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?",
+					new String[] { getTableName() });
+			createTriggers();
+
+			statement = connection.prepareStatement(insertSql);
+			for (FeatureDensityGrid grid : grids) {
+				TileGrid tileGrid = grid.getTileGrid();
+				for (int row = 0; row < grid.getHeight(); row++) {
+					for (int column = 0; column < grid.getWidth(); column++) {
+						long count = grid.getCount(column, row);
+						if (count > 0) {
+							statement.setString(1, getTableName());
+							statement.setInt(2, grid.getZoom());
+							statement.setLong(3, tileGrid.getMinX() + column);
+							statement.setLong(4, tileGrid.getMinY() + row);
+							statement.setLong(5, count);
+							statement.addBatch();
+							if (++tiles % 1000 == 0) {
+								statement.executeBatch();
+							}
+						}
+					}
+				}
+			}
+			statement.executeBatch();
+
+			tableStatement = connection.prepareStatement(tableSql);
+			tableStatement.setString(1, getTableName());
+			tableStatement.setInt(2, minZoom);
+			tableStatement.setInt(3, maxZoom);
+			tableStatement.setString(4, DateConverter.dateTimeConverter()
+					.stringValue(new Date()));
+			tableStatement.executeUpdate();
+
+			successful = true;
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to build feature tile counts. Table: "
+							+ getTableName(),
+					e);
+		} finally {
+			SQLUtils.closeStatement(statement, insertSql);
+			SQLUtils.closeStatement(tableStatement, tableSql);
+			SQLUtils.endTransaction(connection, successful, autoCommit);
+		}
+
+		return tiles;
+	}
+
+	/**
+	 * Get the number of features overlapping the tile
+	 *
+	 * @param x
+	 *            tile x
+	 * @param y
+	 *            tile y
+	 * @param zoom
+	 *            zoom level
+	 * @return feature count, null when the zoom level is not counted
+	 */
+	public Long getCount(long x, long y, int zoom) {
+		Long count = null;
+		if (isCounted(zoom)) {
+			count = sumCounts(zoom, x, x, y, y);
+		}
+		return count;
+	}
+
+	/**
+	 * Get an upper bound of the number of features overlapping the tile and
+	 * its eight neighbors, which bounds the features of any tile query
+	 * expanded by less than a tile. Zoom levels above the max counted zoom
+	 * level use the counts of the ancestor tiles.
+	 *
+	 * @param x
+	 *            tile x
+	 * @param y
+	 *            tile y
+	 * @param zoom
+	 *            zoom level
+	 * @return feature count upper bound, null when not available
+	 */
+	public Long getNeighborhoodCount(long x, long y, int zoom) {
+		Long count = null;
+		if (has() && zoom >= minZoom) {
+			if (zoom > maxZoom) {
+				int shift = zoom - maxZoom;
+				x >>= shift;
+				y >>= shift;
+				zoom = maxZoom;
+			}
+			count = sumCounts(zoom, x - 1, x + 1, y - 1, y + 1);
+		}
+		return count;
+	}
+
+	/**
+	 * Estimate the number of features overlapping the web mercator bounding
+	 * box from the deepest counted zoom level covering it with at most
+	 * {@link #MAX_ESTIMATE_TILES} tiles. The sum of the covering tile counts
+	 * bounds the count from above and the largest count of a tile within the
+	 * bounding box from below. The estimate scales the sum by the covered
+	 * area fraction within those bounds.
+	 *
+	 * @param webMercatorBoundingBox
+	 *            web mercator bounding box
+	 * @return count estimate, null when not counted
+	 */
+	public CountEstimate estimateCount(BoundingBox webMercatorBoundingBox) {
+
+		if (!has()) {
+			return null;
+		}
+
+		int zoom = maxZoom;
+		TileGrid tileGrid = TileBoundingBoxUtils
+				.getTileGrid(webMercatorBoundingBox, zoom);
+		while (zoom > minZoom
+				&& (tileGrid.getMaxX() - tileGrid.getMinX() + 1)
+						* (tileGrid.getMaxY() - tileGrid.getMinY()
+								+ 1) > MAX_ESTIMATE_TILES) {
+			zoom--;
+			tileGrid = TileBoundingBoxUtils.getTileGrid(webMercatorBoundingBox,
+					zoom);
+		}
+
+		long upper = sumCounts(zoom, tileGrid.getMinX(), tileGrid.getMaxX(),
+				tileGrid.getMinY(), tileGrid.getMaxY());
+
+		// Tiles within the bounding box
+		long minX = tileGrid.getMinX();
+		long maxX = tileGrid.getMaxX();
+		long minY = tileGrid.getMinY();
+		long maxY = tileGrid.getMaxY();
+		BoundingBox gridBoundingBox = TileBoundingBoxUtils
+				.getWebMercatorBoundingBox(tileGrid, zoom);
+		if (gridBoundingBox.getMinLongitude() < webMercatorBoundingBox
+				.getMinLongitude()) {
+			minX++;
+		}
+		if (gridBoundingBox.getMaxLongitude() > webMercatorBoundingBox
+				.getMaxLongitude()) {
+			maxX--;
+		}
+		if (gridBoundingBox.getMaxLatitude() > webMercatorBoundingBox
+				.getMaxLatitude()) {
+			minY++;
+		}
+		if (gridBoundingBox.getMinLatitude() < webMercatorBoundingBox
+				.getMinLatitude()) {
+			maxY--;
+		}
+		long lower = 0;
+		if (minX <= maxX && minY <= maxY) {
+			lower = maxCount(zoom, minX, maxX, minY, maxY);
+		}
+
+		// Scale the covering sum by the covered area fraction
+		long count = upper;
+		double gridArea = area(gridBoundingBox);
+		BoundingBox overlap = gridBoundingBox.overlap(webMercatorBoundingBox);
+		if (gridArea > 0 && overlap != null) {
+			count = Math.round(upper * (area(overlap) / gridArea));
+		}
+		count = Math.max(lower, Math.min(upper, count));
+
+		return new CountEstimate(count,
+				Math.max(count - lower, upper - count),
+				CountEstimateSource.TILE_COUNTS);
+	}
+
+	/**
+	 * Apply the logged feature changes to the tile counts in batches, removing
+	 * the previous envelopes and adding the current envelopes of the changed
+	 * features, and clear the log. Applied within one transaction, joining an
+	 * active transaction of the connection.
+	 */
+	private void applyChanges() {
+
+		if (!geoPackage.isTable(CHANGES_TABLE_NAME)) {
+			return;
+		}
+
+		String[] args = new String[] { getTableName() };
+		if (SQLUtils.count(connection, CHANGES_TABLE_NAME,
+				COLUMN_TABLE_NAME + " = ?", args) == 0) {
+			return;
+		}
+
+		String sql = "SELECT " + COLUMN_GEOM_ID + ", " + COLUMN_PREVIOUS
+				+ " FROM " + CoreSQLUtils.quoteWrap(CHANGES_TABLE_NAME)
+				+ " WHERE " + COLUMN_TABLE_NAME + " = ?";
+
+		boolean autoCommit = SQLUtils.beginTransaction(connection);
+		boolean successful = false;
+		try {
+			ResultSet resultSet = SQLUtils.query(connection, sql, args);
+			try {
+				Map<Long, GeometryEnvelope> previous = new HashMap<>();
+				while (resultSet.next()) {
+					previous.put(resultSet.getLong(1), GeoPackageGeometryHeader
+							.getEnvelope(resultSet.getBytes(2)));
+					if (previous.size() == CHANGE_BATCH_SIZE) {
+						applyChanges(previous);
+						previous.clear();
+					}
+				}
+				applyChanges(previous);
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to apply feature tile count changes. Table: "
+								+ getTableName(),
+						e);
+			} finally {
+				SQLUtils.closeResultSetStatement(resultSet, sql);
+			}
+			SQLUtils.delete(connection, CHANGES_TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?", args);
+			successful = true;
+		} finally {
+			if (autoCommit) {
+				SQLUtils.endTransaction(connection, successful, autoCommit);
+			}
+		}
+	}
+
+	/**
+	 * Apply a batch of logged feature changes to the tile counts
+	 *
+	 * @param previous
+	 *            previous envelopes by changed geometry id, null values for
+	 *            inserted features
+	 */
+	private void applyChanges(Map<Long, GeometryEnvelope> previous) {
+		if (previous.isEmpty()) {
+			return;
+		}
+
+		StringBuilder where = new StringBuilder(
+				CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()));
+		where.append(" IN (");
+		boolean first = true;
+		for (long geomId : previous.keySet()) {
+			if (!first) {
+				where.append(",");
+			}
+			where.append(geomId);
+			first = false;
+		}
+		where.append(")");
+
+		Map<Long, GeometryEnvelope> current = new HashMap<>();
+		FeatureResultSet resultSet = featureDao.query(
+				new String[] { featureDao.getIdColumnName(),
+						featureDao.getGeometryColumnName() },
+				where.toString(), null);
+		try {
+			while (resultSet.moveToNext()) {
+				FeatureRow row = resultSet.getRow();
+				current.put(row.getId(), row.getGeometryEnvelope());
+			}
+		} finally {
+			resultSet.close();
+		}
+
+		for (Map.Entry<Long, GeometryEnvelope> change : previous
+				.entrySet()) {
+			update(change.getValue(), -1);
+			update(current.get(change.getKey()), 1);
+		}
+	}
+
+	/**
+	 * Mark the tile counts as stale, ignored until rebuilt
+	 */
+	public void invalidate() {
+		if (has()) {
+			ContentValues values = new ContentValues();
+			values.put(COLUMN_STALE, 1);
+			SQLUtils.update(connection, TABLES_TABLE_NAME, values,
+					COLUMN_TABLE_NAME + " = ?",
+					new String[] { getTableName() });
+			LOGGER.log(Level.WARNING,
+					"Feature tile counts are stale and require a rebuild. Table: "
+							+ getTableName());
+		}
+	}
+
+	/**
+	 * Delete the tile counts and extension for the feature table
+	 */
+	public void delete() {
+		dropTriggers();
+		if (geoPackage.isTable(TABLES_TABLE_NAME)) {
+			deleteCounts();
+		}
+		if (geoPackage.isTable(CHANGES_TABLE_NAME)) {
+			SQLUtils.delete(connection, CHANGES_TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?",
+					new String[] { getTableName() });
+		}
+		try {
+			if (extensionsDao.isTableExists()) {
+				extensionsDao.deleteByExtension(EXTENSION_NAME, getTableName());
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to delete feature tile count extension. Table: "
+							+ getTableName(),
+					e);
+		}
+	}
+
+	/**
+	 * Create the tables and extension if needed
+	 */
+	private void createTables() {
+
+		if (!geoPackage.isTable(TABLE_NAME)) {
+			SQLUtils.execSQL(connection, "CREATE TABLE "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+					+ COLUMN_TABLE_NAME + " TEXT NOT NULL, "
+					+ COLUMN_ZOOM_LEVEL + " INTEGER NOT NULL, "
+					+ COLUMN_TILE_COLUMN + " INTEGER NOT NULL, "
+					+ COLUMN_TILE_ROW + " INTEGER NOT NULL, "
+					+ COLUMN_FEATURE_COUNT + " INTEGER NOT NULL, "
+					+ "CONSTRAINT pk_nftc PRIMARY KEY (" + COLUMN_TABLE_NAME
+					+ ", " + COLUMN_ZOOM_LEVEL + ", " + COLUMN_TILE_COLUMN
+					+ ", " + COLUMN_TILE_ROW + "))");
+		}
+		if (!geoPackage.isTable(TABLES_TABLE_NAME)) {
+			SQLUtils.execSQL(connection, "CREATE TABLE "
+					+ CoreSQLUtils.quoteWrap(TABLES_TABLE_NAME) + " ("
+					+ COLUMN_TABLE_NAME + " TEXT NOT NULL PRIMARY KEY, "
+					+ COLUMN_MIN_ZOOM + " INTEGER NOT NULL, "
+					+ COLUMN_MAX_ZOOM + " INTEGER NOT NULL, " + COLUMN_STALE
+					+ " INTEGER NOT NULL DEFAULT 0, " + COLUMN_LAST_BUILT
+					+ " DATETIME)");
+		}
+		if (!geoPackage.isTable(CHANGES_TABLE_NAME)) {
+			SQLUtils.execSQL(connection, "CREATE TABLE "
+					+ CoreSQLUtils.quoteWrap(CHANGES_TABLE_NAME) + " ("
+					+ COLUMN_TABLE_NAME + " TEXT NOT NULL, " + COLUMN_GEOM_ID
+					+ " INTEGER NOT NULL, " + COLUMN_PREVIOUS + " BLOB, "
+					+ "CONSTRAINT pk_nftcc PRIMARY KEY (" + COLUMN_TABLE_NAME
+					+ ", " + COLUMN_GEOM_ID + "))");
+		}
+
+		getOrCreate(EXTENSION_NAME, getTableName(),
+				featureDao.getGeometryColumnName(), DEFINITION,
+				ExtensionScopeType.READ_WRITE);
+	}
+
+	/**
+	 * Delete the counts and counted table row for the feature table
+	 */
+	private void deleteCounts() {
+		String[] args = new String[] { getTableName() };
+		if (geoPackage.isTable(TABLE_NAME)) {
+			SQLUtils.delete(connection, TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?", args);
+		}
+		if (geoPackage.isTable(TABLES_TABLE_NAME)) {
+			SQLUtils.delete(connection, TABLES_TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?", args);
+		}
+	}
+
+	/**
+	 * Load the counted zoom levels when not stale and apply the logged feature
+	 * changes
+	 */
+	private void load() {
+		minZoom = null;
+		maxZoom = null;
+		if (geoPackage.isTable(TABLES_TABLE_NAME)) {
+			String sql = "SELECT " + COLUMN_MIN_ZOOM + ", " + COLUMN_MAX_ZOOM
+					+ " FROM " + CoreSQLUtils.quoteWrap(TABLES_TABLE_NAME)
+					+ " WHERE " + COLUMN_TABLE_NAME + " = ? AND "
+					+ COLUMN_STALE + " = 0";
+			ResultSet resultSet = SQLUtils.query(connection, sql,
+					new String[] { getTableName() });
+			try {
+				if (resultSet.next()) {
+					minZoom = resultSet.getInt(1);
+					maxZoom = resultSet.getInt(2);
+				}
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to query feature tile count zoom levels. Table: "
+								+ getTableName(),
+						e);
+			} finally {
+				SQLUtils.closeResultSetStatement(resultSet, sql);
+			}
+		}
+		if (minZoom != null) {
+			applyChanges();
+		}
+	}
+
+	/**
+	 * Create the feature table triggers logging the changed features. The
+	 * first logged change of a feature keeps its previous geometry until the
+	 * changes are applied.
+	 */
+	private void createTriggers() {
+
+		dropTriggers();
+
+		String tableName = CoreSQLUtils.quoteWrap(getTableName());
+		String idColumn = CoreSQLUtils
+				.quoteWrap(featureDao.getIdColumnName());
+		String geometryColumn = CoreSQLUtils
+				.quoteWrap(featureDao.getGeometryColumnName());
+		String insert = "INSERT OR IGNORE INTO "
+				+ CoreSQLUtils.quoteWrap(CHANGES_TABLE_NAME) + " ("
+				+ COLUMN_TABLE_NAME + ", " + COLUMN_GEOM_ID + ", "
+				+ COLUMN_PREVIOUS + ") VALUES ('"
+				+ getTableName().replace("'", "''") + "', ";
+
+		SQLUtils.execSQL(connection, "CREATE TRIGGER "
+				+ CoreSQLUtils.quoteWrap(triggerName("insert"))
+				+ " AFTER INSERT ON " + tableName + " BEGIN " + insert
+				+ "NEW." + idColumn + ", NULL); END");
+
+		SQLUtils.execSQL(connection, "CREATE TRIGGER "
+				+ CoreSQLUtils.quoteWrap(triggerName("update"))
+				+ " AFTER UPDATE OF " + geometryColumn + ", " + idColumn
+				+ " ON " + tableName + " BEGIN " + insert + "OLD." + idColumn
+				+ ", OLD." + geometryColumn + "); " + insert + "NEW."
+				+ idColumn + ", NULL); END");
+
+		SQLUtils.execSQL(connection, "CREATE TRIGGER "
+				+ CoreSQLUtils.quoteWrap(triggerName("delete"))
+				+ " AFTER DELETE ON " + tableName + " BEGIN " + insert
+				+ "OLD." + idColumn + ", OLD." + geometryColumn + "); END");
+	}
+
+	/**
+	 * Drop the feature table triggers logging the changed features
+	 */
+	private void dropTriggers() {
+		for (String type : new String[] { "insert", "update", "delete" }) {
+			SQLUtils.execSQL(connection, "DROP TRIGGER IF EXISTS "
+					+ CoreSQLUtils.quoteWrap(triggerName(type)));
+		}
+	}
+
+	/**
+	 * Get the feature table trigger name
+	 *
+	 * @param type
+	 *            trigger type
+	 * @return trigger name
+	 */
+	private String triggerName(String type) {
+		return TRIGGER_PREFIX + getTableName() + "_"
+				+ featureDao.getGeometryColumnName() + "_" + type;
+	}
+
+	/**
+	 * Determine if the zoom level is counted
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @return true if counted
+	 */
+	private boolean isCounted(int zoom) {
+		return has() && zoom >= minZoom && zoom <= maxZoom;
+	}
+
+	/**
+	 * Sum the tile counts within the tile range
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param minX
+	 *            min tile x
+	 * @param maxX
+	 *            max tile x
+	 * @param minY
+	 *            min tile y
+	 * @param maxY
+	 *            max tile y
+	 * @return count
+	 */
+	private long sumCounts(int zoom, long minX, long maxX, long minY,
+			long maxY) {
+		String sql = "SELECT SUM(" + COLUMN_FEATURE_COUNT + ") FROM "
+				+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " WHERE "
+				+ COLUMN_TABLE_NAME + " = ? AND " + COLUMN_ZOOM_LEVEL
+				+ " = ? AND " + COLUMN_TILE_COLUMN + " BETWEEN ? AND ? AND "
+				+ COLUMN_TILE_ROW + " BETWEEN ? AND ?";
+		Object result = SQLUtils.querySingleResult(connection, sql,
+				new String[] { getTableName(), String.valueOf(zoom),
+						String.valueOf(minX), String.valueOf(maxX),
+						String.valueOf(minY), String.valueOf(maxY) },
+				0, GeoPackageDataType.INTEGER);
+		long count = 0;
+		if (result != null) {
+			count = ((Number) result).longValue();
+		}
+		return count;
+	}
+
+	/**
+	 * Get the max tile count within the tile range
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param minX
+	 *            min tile x
+	 * @param maxX
+	 *            max tile x
+	 * @param minY
+	 *            min tile y
+	 * @param maxY
+	 *            max tile y
+	 * @return max count
+	 */
+	private long maxCount(int zoom, long minX, long maxX, long minY,
+			long maxY) {
+		String sql = "SELECT MAX(" + COLUMN_FEATURE_COUNT + ") FROM "
+				+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " WHERE "
+				+ COLUMN_TABLE_NAME + " = ? AND " + COLUMN_ZOOM_LEVEL
+				+ " = ? AND " + COLUMN_TILE_COLUMN + " BETWEEN ? AND ? AND "
+				+ COLUMN_TILE_ROW + " BETWEEN ? AND ?";
+		Object result = SQLUtils.querySingleResult(connection, sql,
+				new String[] { getTableName(), String.valueOf(zoom),
+						String.valueOf(minX), String.valueOf(maxX),
+						String.valueOf(minY), String.valueOf(maxY) },
+				0, GeoPackageDataType.INTEGER);
+		long count = 0;
+		if (result != null) {
+			count = ((Number) result).longValue();
+		}
+		return count;
+	}
+
+	/**
+	 * Get the area of a bounding box
+	 *
+	 * @param boundingBox
+	 *            bounding box
+	 * @return area
+	 */
+	private static double area(BoundingBox boundingBox) {
+		return (boundingBox.getMaxLongitude() - boundingBox.getMinLongitude())
+				* (boundingBox.getMaxLatitude()
+						- boundingBox.getMinLatitude());
+	}
+
+	/**
+	 * Update the tile counts of the tiles overlapping the envelope
+	 *
+	 * @param envelope
+	 *            feature envelope in the feature projection, may be null
+	 * @param delta
+	 *            count change
+	 */
+	private void update(GeometryEnvelope envelope, int delta) {
+		if (envelope == null || minZoom == null) {
+			return;
+		}
+
+		BoundingBox webMercatorBoundingBox = toWebMercator(envelope);
+
+		String upsertSql = "INSERT INTO " + CoreSQLUtils.quoteWrap(TABLE_NAME)
+				+ " (" + COLUMN_TABLE_NAME + ", " + COLUMN_ZOOM_LEVEL + ", "
+				+ COLUMN_TILE_COLUMN + ", " + COLUMN_TILE_ROW + ", "
+				+ COLUMN_FEATURE_COUNT + ") VALUES (?, ?, ?, ?, ?) ON CONFLICT("
+				+ COLUMN_TABLE_NAME + ", " + COLUMN_ZOOM_LEVEL + ", "
+				+ COLUMN_TILE_COLUMN + ", " + COLUMN_TILE_ROW
+				+ ") DO UPDATE SET " + COLUMN_FEATURE_COUNT + " = "
+				+ COLUMN_FEATURE_COUNT + " + excluded." + COLUMN_FEATURE_COUNT;
+
+		PreparedStatement statement = null;
+		try {
+			statement = connection.prepareStatement(upsertSql);
+			for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+				FeatureDensityGrid grid = tileGrid(webMercatorBoundingBox,
+						zoom);
+				grid.add(webMercatorBoundingBox.getMinLongitude(),
+						webMercatorBoundingBox.getMinLatitude(),
+						webMercatorBoundingBox.getMaxLongitude(),
+						webMercatorBoundingBox.getMaxLatitude());
+				TileGrid tileGrid = grid.getTileGrid();
+				for (int row = 0; row < grid.getHeight(); row++) {
+					for (int column = 0; column < grid.getWidth(); column++) {
+						if (grid.getCount(column, row) > 0) {
+							statement.setString(1, getTableName());
+							statement.setInt(2, zoom);
+							statement.setLong(3, tileGrid.getMinX() + column);
+							statement.setLong(4, tileGrid.getMinY() + row);
+							statement.setInt(5, delta);
+							statement.addBatch();
+						}
+					}
+				}
+			}
+			statement.executeBatch();
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to update feature tile counts. Table: "
+							+ getTableName(),
+					e);
+		} finally {
+			SQLUtils.closeStatement(statement, upsertSql);
+		}
+
+		if (delta < 0) {
+			SQLUtils.delete(connection, TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ? AND " + COLUMN_FEATURE_COUNT
+							+ " <= 0",
+					new String[] { getTableName() });
+		}
+	}
+
+	/**
+	 * Create an empty overlap tile grid at the zoom level covering the web
+	 * mercator bounding box, matching the tile grids of a full build
+	 *
+	 * @param webMercatorBoundingBox
+	 *            web mercator bounding box
+	 * @param zoom
+	 *            zoom level
+	 * @return tile density grid
+	 */
+	private FeatureDensityGrid tileGrid(BoundingBox webMercatorBoundingBox,
+			int zoom) {
+		TileGrid tileGrid = TileBoundingBoxUtils
+				.getTileGrid(webMercatorBoundingBox, zoom);
+		BoundingBox tileGridBoundingBox = TileBoundingBoxUtils
+				.getWebMercatorBoundingBox(tileGrid, zoom);
+		return new FeatureDensityGrid(tileGridBoundingBox,
+				ProjectionFactory
+						.getProjection(ProjectionConstants.EPSG_WEB_MERCATOR),
+				tileGrid, zoom, FeatureDensityMode.OVERLAP);
+	}
+
+	/**
+	 * Transform a feature envelope to a web mercator bounding box within the
+	 * web mercator limits
+	 *
+	 * @param envelope
+	 *            feature envelope
+	 * @return web mercator bounding box
+	 */
+	private BoundingBox toWebMercator(GeometryEnvelope envelope) {
+		if (toWgs84 == null) {
+			toWgs84 = featureDao.getProjection().getTransformation(
+					ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM);
+		}
+		BoundingBox wgs84BoundingBox = new BoundingBox(envelope.getMinX(),
+				envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY())
+						.transform(toWgs84);
+		wgs84BoundingBox = TileBoundingBoxUtils
+				.boundWgs84BoundingBoxWithWebMercatorLimits(wgs84BoundingBox);
+		return wgs84BoundingBox.transform(ProjectionFactory
+				.getProjection(ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM)
+				.getTransformation(ProjectionConstants.EPSG_WEB_MERCATOR));
+	}
+
+}
@@ -0,0 +1,1009 @@
+package mil.nga.geopackage.extension.index;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.extension.BaseExtension;
+import mil.nga.geopackage.extension.ExtensionScopeType;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
+import mil.nga.geopackage.tiles.TileGrid;
+import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.proj.ProjectionConstants;
+import mil.nga.sf.proj.ProjectionFactory;
+import mil.nga.sf.proj.ProjectionTransform;
+
+/**
+ * Feature Tile Key NGA extension, storing the XYZ quadkey cells covering each
+ * feature of a feature table at a base zoom level. Tile keys are quadkeys as
+ * integers, interleaving the base zoom tile column and row bits, so every tile
+ * at or above the base zoom covers a contiguous tile key range and tile key
+ * order is quadkey tile order. Each feature is covered by at most four cells
+ * at the deepest level where its envelope spans no more than two tiles in
+ * each direction. The features of a tile, or of a tile grid in tile order, are
+ * then read with an indexed range scan instead of a transformed bounding box
+ * query per tile. Feature table triggers log the ids of inserted, updated,
+ * and deleted features, which are re-keyed when the tile keys are next read,
+ * as the web mercator transform of a feature envelope can not run in SQLite.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureTileKeyExtension extends BaseExtension {
+
+	/**
+	 * Extension author
+	 */
+	public static final String EXTENSION_AUTHOR = "nga";
+
+	/**
+	 * Extension name without the author
+	 */
+	public static final String EXTENSION_NAME_NO_AUTHOR = "feature_tile_key";
+
+	/**
+	 * Extension, with author and name
+	 */
+	public static final String EXTENSION_NAME = EXTENSION_AUTHOR + "_"
+			+ EXTENSION_NAME_NO_AUTHOR;
+
+	/**
+	 * Extension definition
+	 */
+	public static final String DEFINITION = "Covering XYZ quadkey tile key ranges of feature table geometries";
+
+	/**
+	 * Tile key table name
+	 */
+	public static final String TABLE_NAME = "nga_feature_tile_key";
+
+	/**
+	 * Keyed feature tables table name
+	 */
+	public static final String TABLES_TABLE_NAME = "nga_feature_tile_key_table";
+
+	/**
+	 * Changed features table name
+	 */
+	public static final String CHANGES_TABLE_NAME = "nga_feature_tile_key_change";
+
+	/**
+	 * Feature table trigger name prefix
+	 */
+	public static final String TRIGGER_PREFIX = "nga_feature_tile_key_";
+
+	/**
+	 * Table name column
+	 */
+	public static final String COLUMN_TABLE_NAME = "table_name";
+
+	/**
+	 * Covering cell min tile key column
+	 */
+	public static final String COLUMN_TILE_MIN = "tile_min";
+
+	/**
+	 * Covering cell max tile key column
+	 */
+	public static final String COLUMN_TILE_MAX = "tile_max";
+
+	/**
+	 * Geometry id column
+	 */
+	public static final String COLUMN_GEOM_ID = "geom_id";
+
+	/**
+	 * Base zoom level column
+	 */
+	public static final String COLUMN_BASE_ZOOM = "base_zoom";
+
+	/**
+	 * Default base zoom level
+	 */
+	public static final int DEFAULT_BASE_ZOOM = 16;
+
+	/**
+	 * Max base zoom level, keeping tile keys within a long
+	 */
+	public static final int MAX_BASE_ZOOM = 30;
+
+	/**
+	 * Max tile key ranges per range scan query
+	 */
+	private static final int MAX_QUERY_RANGES = 100;
+
+	/**
+	 * Number of logged feature changes applied per batch
+	 */
+	private static final int CHANGE_BATCH_SIZE = 500;
+
+	/**
+	 * Feature DAO
+	 */
+	private final FeatureDao featureDao;
+
+	/**
+	 * Connection
+	 */
+	private final Connection connection;
+
+	/**
+	 * Feature projection to WGS84 transform
+	 */
+	private ProjectionTransform toWgs84;
+
+	/**
+	 * Constructor
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @param featureDao
+	 *            feature DAO
+	 */
+	public FeatureTileKeyExtension(GeoPackage geoPackage,
+			FeatureDao featureDao) {
+		super(geoPackage);
+		this.featureDao = featureDao;
+		this.connection = featureDao.getConnection();
+	}
+
+	/**
+	 * Get the feature DAO
+	 *
+	 * @return feature DAO
+	 */
+	public FeatureDao getFeatureDao() {
+		return featureDao;
+	}
+
+	/**
+	 * Get the table name
+	 *
+	 * @return table name
+	 */
+	public String getTableName() {
+		return featureDao.getTableName();
+	}
+
+	/**
+	 * Determine if tile keys exist for the feature table, re-keying logged
+	 * feature changes. Checked on each use, so tile keys built or deleted
+	 * through another instance are seen.
+	 *
+	 * @return true if has tile keys
+	 */
+	public boolean has() {
+		return getBaseZoom() != null;
+	}
+
+	/**
+	 * Get the base zoom level of the tile keys, re-keying logged feature
+	 * changes
+	 *
+	 * @return base zoom level, null when not built
+	 */
+	public Integer getBaseZoom() {
+		Integer baseZoom = null;
+		if (geoPackage.isTable(TABLES_TABLE_NAME)) {
+			String sql = "SELECT " + COLUMN_BASE_ZOOM + " FROM "
+					+ CoreSQLUtils.quoteWrap(TABLES_TABLE_NAME) + " WHERE "
+					+ COLUMN_TABLE_NAME + " = ?";
+			ResultSet resultSet = SQLUtils.query(connection, sql,
+					new String[] { getTableName() });
+			try {
+				if (resultSet.next()) {
+					baseZoom = resultSet.getInt(1);
+				}
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to query tile key base zoom. Table: "
+								+ getTableName(),
+						e);
+			} finally {
+				SQLUtils.closeResultSetStatement(resultSet, sql);
+			}
+		}
+		if (baseZoom != null) {
+			applyChanges(baseZoom);
+		}
+		return baseZoom;
+	}
+
+	/**
+	 * Build the tile keys at the {@link #DEFAULT_BASE_ZOOM}
+	 *
+	 * @return number of keyed features
+	 */
+	public long build() {
+		return build(DEFAULT_BASE_ZOOM);
+	}
+
+	/**
+	 * Build the tile keys at the base zoom level in a single pass over the
+	 * feature table, replacing any existing tile keys for the feature table
+	 *
+	 * @param baseZoom
+	 *            base zoom level
+	 * @return number of keyed features
+	 */
+	public long build(int baseZoom) {
+
+		if (baseZoom < 0 || baseZoom > MAX_BASE_ZOOM) {
+			throw new GeoPackageException("Invalid tile key base zoom: "
+					+ baseZoom + ", Max: " + MAX_BASE_ZOOM);
+		}
+
+		createTables();
+
+		long count = 0;
+		boolean autoCommit = SQLUtils.beginTransaction(connection);
+		boolean successful = false;
+		String insertSql = insertSql();
+		String tableSql = "INSERT OR REPLACE INTO "
+				+ CoreSQLUtils.quoteWrap(TABLES_TABLE_NAME) + " ("
+				+ COLUMN_TABLE_NAME + ", " + COLUMN_BASE_ZOOM
+				+ ") VALUES (?, ?)";
+		PreparedStatement statement = null;
+		PreparedStatement tableStatement = null;
+		FeatureResultSet resultSet = null;
+		try {
+
+			deleteKeys();
+			SQLUtils.delete(connection, CHANGES_TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?",
+					new String[] { getTableName() });
+			createTriggers();
+
+			statement = connection.prepareStatement(insertSql);
+			resultSet = featureDao.query();
+			int batched = 0;
+			while (resultSet.moveToNext()) {
+				FeatureRow row = resultSet.getRow();
+				int cells = insert(statement, row.getId(),
+						row.getGeometryEnvelope(), baseZoom);
+				if (cells > 0) {
+					count++;
+					batched += cells;
+				}
+				if (batched >= 1000) {
+					statement.executeBatch();
+					batched = 0;
+				}
+			}
+			statement.executeBatch();
+
+			tableStatement = connection.prepareStatement(tableSql);
+			tableStatement.setString(1, getTableName());
+			tableStatement.setInt(2, baseZoom);
+			tableStatement.executeUpdate();
+
+			successful = true;
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to build feature tile keys. Table: "
+							+ getTableName(),
+					e);
+		} finally {
+			if (resultSet != null) {
+				resultSet.close();
+			}
+			SQLUtils.closeStatement(statement, insertSql);
+			SQLUtils.closeStatement(tableStatement, tableSql);
+			SQLUtils.endTransaction(connection, successful, autoCommit);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Re-key the logged changed features in batches, replacing their tile keys
+	 * with the covering cells of their current envelopes, and clear the log.
+	 * Applied within one transaction, joining an active transaction of the
+	 * connection.
+	 *
+	 * @param baseZoom
+	 *            base zoom level
+	 */
+	private void applyChanges(int baseZoom) {
+
+		if (!geoPackage.isTable(CHANGES_TABLE_NAME)) {
+			return;
+		}
+
+		String[] args = new String[] { getTableName() };
+		if (SQLUtils.count(connection, CHANGES_TABLE_NAME,
+				COLUMN_TABLE_NAME + " = ?", args) == 0) {
+			return;
+		}
+
+		String sql = "SELECT " + COLUMN_GEOM_ID + " FROM "
+				+ CoreSQLUtils.quoteWrap(CHANGES_TABLE_NAME) + " WHERE "
+				+ COLUMN_TABLE_NAME + " = ?";
+
+		boolean autoCommit = SQLUtils.beginTransaction(connection);
+		boolean successful = false;
+		try {
+			ResultSet resultSet = SQLUtils.query(connection, sql, args);
+			try {
+				List<Long> geomIds = new ArrayList<>();
+				while (resultSet.next()) {
+					geomIds.add(resultSet.getLong(1));
+					if (geomIds.size() == CHANGE_BATCH_SIZE) {
+						applyChanges(geomIds, baseZoom);
+						geomIds.clear();
+					}
+				}
+				applyChanges(geomIds, baseZoom);
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to apply feature tile key changes. Table: "
+								+ getTableName(),
+						e);
+			} finally {
+				SQLUtils.closeResultSetStatement(resultSet, sql);
+			}
+			SQLUtils.delete(connection, CHANGES_TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?", args);
+			successful = true;
+		} finally {
+			if (autoCommit) {
+				SQLUtils.endTransaction(connection, successful, autoCommit);
+			}
+		}
+	}
+
+	/**
+	 * Re-key a batch of logged changed features
+	 *
+	 * @param geomIds
+	 *            changed geometry ids
+	 * @param baseZoom
+	 *            base zoom level
+	 * @throws SQLException
+	 *             upon failure
+	 */
+	private void applyChanges(List<Long> geomIds, int baseZoom)
+			throws SQLException {
+		if (geomIds.isEmpty()) {
+			return;
+		}
+
+		StringBuilder ids = new StringBuilder();
+		for (long geomId : geomIds) {
+			if (ids.length() > 0) {
+				ids.append(",");
+			}
+			ids.append(geomId);
+		}
+
+		SQLUtils.delete(connection, TABLE_NAME,
+				COLUMN_TABLE_NAME + " = ? AND " + COLUMN_GEOM_ID + " IN ("
+						+ ids + ")",
+				new String[] { getTableName() });
+
+		String insertSql = insertSql();
+		PreparedStatement statement = null;
+		FeatureResultSet resultSet = featureDao.query(
+				new String[] { featureDao.getIdColumnName(),
+						featureDao.getGeometryColumnName() },
+				CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()) + " IN ("
+						+ ids + ")",
+				null);
+		try {
+			statement = connection.prepareStatement(insertSql);
+			while (resultSet.moveToNext()) {
+				FeatureRow row = resultSet.getRow();
+				insert(statement, row.getId(), row.getGeometryEnvelope(),
+						baseZoom);
+			}
+			statement.executeBatch();
+		} finally {
+			resultSet.close();
+			SQLUtils.closeStatement(statement, insertSql);
+		}
+	}
+
+	/**
+	 * Delete the tile keys and extension for the feature table
+	 */
+	public void delete() {
+		dropTriggers();
+		deleteKeys();
+		if (geoPackage.isTable(CHANGES_TABLE_NAME)) {
+			SQLUtils.delete(connection, CHANGES_TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?",
+					new String[] { getTableName() });
+		}
+		try {
+			if (extensionsDao.isTableExists()) {
+				extensionsDao.deleteByExtension(EXTENSION_NAME, getTableName());
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to delete feature tile key extension. Table: "
+							+ getTableName(),
+					e);
+		}
+	}
+
+	/**
+	 * Build the nested SQL query selecting the ids of the features with a
+	 * covering cell intersecting the tile. Tiles above the base zoom match the
+	 * features of the containing base zoom tile. The table name is bound as
+	 * arguments, see {@link #queryIdsArgs(long, long, int)}.
+	 *
+	 * @param x
+	 *            tile x
+	 * @param y
+	 *            tile y
+	 * @param zoom
+	 *            zoom level
+	 * @return ids SQL
+	 */
+	public String queryIdsSQL(long x, long y, int zoom) {
+		return queryIdsSQL(new TileGrid(x, y, x, y), zoom);
+	}
+
+	/**
+	 * Build the nested SQL query selecting the ids of the features with a
+	 * covering cell intersecting the tile grid. The table name is bound as
+	 * arguments, see {@link #queryIdsArgs(TileGrid, int)}.
+	 *
+	 * @param tileGrid
+	 *            tile grid
+	 * @param zoom
+	 *            zoom level
+	 * @return ids SQL
+	 */
+	public String queryIdsSQL(TileGrid tileGrid, int zoom) {
+		return queryIdsSQL(queryRangesSQL(tileGrid, zoom,
+				"DISTINCT " + COLUMN_GEOM_ID));
+	}
+
+	/**
+	 * Get the arguments of the nested SQL query selecting the ids of the
+	 * features with a covering cell intersecting the tile
+	 *
+	 * @param x
+	 *            tile x
+	 * @param y
+	 *            tile y
+	 * @param zoom
+	 *            zoom level
+	 * @return ids SQL arguments
+	 */
+	public String[] queryIdsArgs(long x, long y, int zoom) {
+		return queryIdsArgs(new TileGrid(x, y, x, y), zoom);
+	}
+
+	/**
+	 * Get the arguments of the nested SQL query selecting the ids of the
+	 * features with a covering cell intersecting the tile grid
+	 *
+	 * @param tileGrid
+	 *            tile grid
+	 * @param zoom
+	 *            zoom level
+	 * @return ids SQL arguments
+	 */
+	public String[] queryIdsArgs(TileGrid tileGrid, int zoom) {
+		return queryArgs(
+				queryRangesSQL(tileGrid, zoom, "DISTINCT " + COLUMN_GEOM_ID));
+	}
+
+	/**
+	 * Query for the features of the tile
+	 *
+	 * @param x
+	 *            tile x
+	 * @param y
+	 *            tile y
+	 * @param zoom
+	 *            zoom level
+	 * @return feature results
+	 */
+	public FeatureResultSet queryFeatures(long x, long y, int zoom) {
+		return queryFeatures(new TileGrid(x, y, x, y), zoom);
+	}
+
+	/**
+	 * Query for the features of the tile grid
+	 *
+	 * @param tileGrid
+	 *            tile grid
+	 * @param zoom
+	 *            zoom level
+	 * @return feature results
+	 */
+	public FeatureResultSet queryFeatures(TileGrid tileGrid, int zoom) {
+		List<String> queries = queryRangesSQL(tileGrid, zoom,
+				"DISTINCT " + COLUMN_GEOM_ID);
+		return featureDao.queryIn(queryIdsSQL(queries), queryArgs(queries));
+	}
+
+	/**
+	 * Count the features of the tile
+	 *
+	 * @param x
+	 *            tile x
+	 * @param y
+	 *            tile y
+	 * @param zoom
+	 *            zoom level
+	 * @return count
+	 */
+	public int countFeatures(long x, long y, int zoom) {
+		return countFeatures(new TileGrid(x, y, x, y), zoom);
+	}
+
+	/**
+	 * Count the features of the tile grid
+	 *
+	 * @param tileGrid
+	 *            tile grid
+	 * @param zoom
+	 *            zoom level
+	 * @return count
+	 */
+	public int countFeatures(TileGrid tileGrid, int zoom) {
+		int count = 0;
+		List<String> queries = queryRangesSQL(tileGrid, zoom,
+				"DISTINCT " + COLUMN_GEOM_ID);
+		String sql = "SELECT COUNT(*) FROM (" + queryIdsSQL(queries) + ")";
+		ResultSet resultSet = SQLUtils.query(connection, sql,
+				queryArgs(queries));
+		try {
+			if (resultSet.next()) {
+				count = resultSet.getInt(1);
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to count tile key features. Table: "
+							+ getTableName(),
+					e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql);
+		}
+		return count;
+	}
+
+	/**
+	 * Query for the ids of the features of the tile grid in tile order, the
+	 * order of their first covering cell tile key within the grid
+	 *
+	 * @param tileGrid
+	 *            tile grid
+	 * @param zoom
+	 *            zoom level
+	 * @return feature ids
+	 */
+	public List<Long> queryIds(TileGrid tileGrid, int zoom) {
+		List<String> queries = queryRangesSQL(tileGrid, zoom,
+				COLUMN_GEOM_ID + ", " + COLUMN_TILE_MIN);
+		StringBuilder cells = new StringBuilder();
+		for (String query : queries) {
+			if (cells.length() > 0) {
+				cells.append(" UNION ALL ");
+			}
+			cells.append(query);
+		}
+		String sql = "SELECT " + COLUMN_GEOM_ID + " FROM (" + cells
+				+ ") GROUP BY " + COLUMN_GEOM_ID + " ORDER BY MIN("
+				+ COLUMN_TILE_MIN + "), " + COLUMN_GEOM_ID;
+		List<Long> ids = new ArrayList<>();
+		ResultSet resultSet = SQLUtils.query(connection, sql,
+				queryArgs(queries));
+		try {
+			while (resultSet.next()) {
+				ids.add(resultSet.getLong(1));
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to query tile key feature ids. Table: "
+							+ getTableName(),
+					e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql);
+		}
+		return ids;
+	}
+
+	/**
+	 * Get the tile key of the tile at the zoom level, interleaving the tile
+	 * column and row bits into the integer value of the quadkey
+	 *
+	 * @param x
+	 *            tile x
+	 * @param y
+	 *            tile y
+	 * @return tile key
+	 */
+	public static long tileKey(long x, long y) {
+		long key = 0;
+		for (int bit = 0; bit < MAX_BASE_ZOOM + 1; bit++) {
+			key |= ((x >> bit) & 1L) << (2 * bit);
+			key |= ((y >> bit) & 1L) << (2 * bit + 1);
+		}
+		return key;
+	}
+
+	/**
+	 * Build the range scan queries of the features with a covering cell
+	 * intersecting the tile grid, split to bound the query expression size.
+	 * Each query binds the table name as its single argument.
+	 *
+	 * @param tileGrid
+	 *            tile grid
+	 * @param zoom
+	 *            zoom level
+	 * @param columns
+	 *            selected columns
+	 * @return queries
+	 */
+	private List<String> queryRangesSQL(TileGrid tileGrid, int zoom,
+			String columns) {
+
+		Integer base = getBaseZoom();
+		if (base == null) {
+			throw new GeoPackageException(
+					"Feature table does not have tile keys: "
+							+ getTableName());
+		}
+
+		// Tiles above the base zoom match the containing base zoom tiles
+		int gridZoom = zoom;
+		if (zoom > base) {
+			int shift = zoom - base;
+			tileGrid = new TileGrid(tileGrid.getMinX() >> shift,
+					tileGrid.getMinY() >> shift, tileGrid.getMaxX() >> shift,
+					tileGrid.getMaxY() >> shift);
+			gridZoom = base;
+		}
+
+		List<long[]> ranges = new ArrayList<>();
+		addRanges(ranges, tileGrid, gridZoom, base, 0, 0, 0);
+
+		List<String> queries = new ArrayList<>();
+		String select = "SELECT " + columns + " FROM "
+				+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " WHERE "
+				+ COLUMN_TABLE_NAME + " = ? AND (";
+		for (int index = 0; index < ranges.size(); index += MAX_QUERY_RANGES) {
+			List<long[]> chunk = ranges.subList(index,
+					Math.min(ranges.size(), index + MAX_QUERY_RANGES));
+			StringBuilder where = new StringBuilder();
+			for (long[] range : chunk) {
+				if (where.length() > 0) {
+					where.append(" OR ");
+				}
+				where.append(COLUMN_TILE_MIN).append(" BETWEEN ")
+						.append(range[0]).append(" AND ").append(range[1]);
+			}
+			// Covering cells starting before a range intersect it when
+			// containing its first tile, matched by the ancestor cell min keys
+			for (long[] range : chunk) {
+				long start = range[0];
+				where.append(" OR (").append(COLUMN_TILE_MIN).append(" IN (");
+				for (int level = 0; level < base; level++) {
+					int shift = 2 * (base - level);
+					if (level > 0) {
+						where.append(", ");
+					}
+					where.append((start >> shift) << shift);
+				}
+				if (base == 0) {
+					where.append(start);
+				}
+				where.append(") AND ").append(COLUMN_TILE_MAX)
+						.append(" >= ").append(start).append(")");
+			}
+			queries.add(select + where + ")");
+		}
+		if (queries.isEmpty()) {
+			queries.add(select + "0)");
+		}
+
+		return queries;
+	}
+
+	/**
+	 * Combine the range scan queries into the distinct ids query
+	 *
+	 * @param queries
+	 *            range scan queries
+	 * @return ids SQL
+	 */
+	private static String queryIdsSQL(List<String> queries) {
+		StringBuilder sql = new StringBuilder();
+		for (String query : queries) {
+			if (sql.length() > 0) {
+				sql.append(" UNION ");
+			}
+			sql.append(query);
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * Get the arguments of the range scan queries, the table name of each
+	 *
+	 * @param queries
+	 *            range scan queries
+	 * @return arguments
+	 */
+	private String[] queryArgs(List<String> queries) {
+		String[] args = new String[queries.size()];
+		Arrays.fill(args, getTableName());
+		return args;
+	}
+
+	/**
+	 * Decompose the tile grid into aligned quadkey cells, adding their
+	 * ascending base zoom tile key ranges and merging adjacent ranges
+	 *
+	 * @param ranges
+	 *            tile key ranges
+	 * @param tileGrid
+	 *            tile grid
+	 * @param zoom
+	 *            tile grid zoom level, at or below the base zoom
+	 * @param base
+	 *            base zoom level
+	 * @param level
+	 *            cell level
+	 * @param x
+	 *            cell x
+	 * @param y
+	 *            cell y
+	 */
+	private static void addRanges(List<long[]> ranges, TileGrid tileGrid,
+			int zoom, int base, int level, long x, long y) {
+
+		int shift = zoom - level;
+		long minX = x << shift;
+		long maxX = ((x + 1) << shift) - 1;
+		long minY = y << shift;
+		long maxY = ((y + 1) << shift) - 1;
+
+		if (maxX < tileGrid.getMinX() || minX > tileGrid.getMaxX()
+				|| maxY < tileGrid.getMinY() || minY > tileGrid.getMaxY()) {
+			return;
+		}
+
+		if (minX >= tileGrid.getMinX() && maxX <= tileGrid.getMaxX()
+				&& minY >= tileGrid.getMinY() && maxY <= tileGrid.getMaxY()) {
+			int keyShift = 2 * (base - level);
+			long min = tileKey(x, y) << keyShift;
+			long max = min + (1L << keyShift) - 1;
+			long[] last = ranges.isEmpty() ? null
+					: ranges.get(ranges.size() - 1);
+			if (last != null && last[1] + 1 == min) {
+				last[1] = max;
+			} else {
+				ranges.add(new long[] { min, max });
+			}
+			return;
+		}
+
+		// Children in quadkey order
+		addRanges(ranges, tileGrid, zoom, base, level + 1, 2 * x, 2 * y);
+		addRanges(ranges, tileGrid, zoom, base, level + 1, 2 * x + 1, 2 * y);
+		addRanges(ranges, tileGrid, zoom, base, level + 1, 2 * x, 2 * y + 1);
+		addRanges(ranges, tileGrid, zoom, base, level + 1, 2 * x + 1,
+				2 * y + 1);
+	}
+
+	/**
+	 * Add the covering cells of the feature envelope to the insert batch
+	 *
+	 * @param statement
+	 *            insert statement
+	 * @param geomId
+	 *            geometry id
+	 * @param envelope
+	 *            feature envelope, may be null
+	 * @param baseZoom
+	 *            base zoom level
+	 * @return number of batched cells
+	 * @throws SQLException
+	 *             upon failure
+	 */
+	private int insert(PreparedStatement statement, long geomId,
+			GeometryEnvelope envelope, int baseZoom) throws SQLException {
+
+		if (envelope == null) {
+			return 0;
+		}
+
+		TileGrid tileGrid = TileBoundingBoxUtils
+				.getTileGrid(toWebMercator(envelope), baseZoom);
+
+		// Deepest level where the envelope spans at most 2 x 2 cells
+		int shift = 0;
+		while ((tileGrid.getMaxX() >> shift)
+				- (tileGrid.getMinX() >> shift) > 1
+				|| (tileGrid.getMaxY() >> shift)
+						- (tileGrid.getMinY() >> shift) > 1) {
+			shift++;
+		}
+
+		int cells = 0;
+		for (long x = tileGrid.getMinX() >> shift; x <= tileGrid
+				.getMaxX() >> shift; x++) {
+			for (long y = tileGrid.getMinY() >> shift; y <= tileGrid
+					.getMaxY() >> shift; y++) {
+				long min = tileKey(x, y) << (2 * shift);
+				statement.setString(1, getTableName());
+				statement.setLong(2, min);
+				statement.setLong(3, min + (1L << (2 * shift)) - 1);
+				statement.setLong(4, geomId);
+				statement.addBatch();
+				cells++;
+			}
+		}
+
+		return cells;
+	}
+
+	/**
+	 * Get the tile key insert SQL
+	 *
+	 * @return insert SQL
+	 */
+	private static String insertSql() {
+		return "INSERT INTO " + CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+				+ COLUMN_TABLE_NAME + ", " + COLUMN_TILE_MIN + ", "
+				+ COLUMN_TILE_MAX + ", " + COLUMN_GEOM_ID
+				+ ") VALUES (?, ?, ?, ?)";
+	}
+
+	/**
+	 * Create the tables and extension if needed
+	 */
+	private void createTables() {
+
+		if (!geoPackage.isTable(TABLE_NAME)) {
+			SQLUtils.execSQL(connection, "CREATE TABLE "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+					+ COLUMN_TABLE_NAME + " TEXT NOT NULL, " + COLUMN_TILE_MIN
+					+ " INTEGER NOT NULL, " + COLUMN_TILE_MAX
+					+ " INTEGER NOT NULL, " + COLUMN_GEOM_ID
+					+ " INTEGER NOT NULL)");
+			// Covering index of the tile key range scans
+			SQLUtils.execSQL(connection, "CREATE INDEX "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME + "_tile") + " ON "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+					+ COLUMN_TABLE_NAME + ", " + COLUMN_TILE_MIN + ", "
+					+ COLUMN_TILE_MAX + ", " + COLUMN_GEOM_ID + ")");
+			SQLUtils.execSQL(connection, "CREATE INDEX "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME + "_geom") + " ON "
+					+ CoreSQLUtils.quoteWrap(TABLE_NAME) + " ("
+					+ COLUMN_TABLE_NAME + ", " + COLUMN_GEOM_ID + ")");
+		}
+		if (!geoPackage.isTable(TABLES_TABLE_NAME)) {
+			SQLUtils.execSQL(connection, "CREATE TABLE "
+					+ CoreSQLUtils.quoteWrap(TABLES_TABLE_NAME) + " ("
+					+ COLUMN_TABLE_NAME + " TEXT NOT NULL PRIMARY KEY, "
+					+ COLUMN_BASE_ZOOM + " INTEGER NOT NULL)");
+		}
+		if (!geoPackage.isTable(CHANGES_TABLE_NAME)) {
+			SQLUtils.execSQL(connection, "CREATE TABLE "
+					+ CoreSQLUtils.quoteWrap(CHANGES_TABLE_NAME) + " ("
+					+ COLUMN_TABLE_NAME + " TEXT NOT NULL, " + COLUMN_GEOM_ID
+					+ " INTEGER NOT NULL, "
+					+ "CONSTRAINT pk_nftkc PRIMARY KEY (" + COLUMN_TABLE_NAME
+					+ ", " + COLUMN_GEOM_ID + "))");
+		}
+
+		getOrCreate(EXTENSION_NAME, getTableName(),
+				featureDao.getGeometryColumnName(), DEFINITION,
+				ExtensionScopeType.READ_WRITE);
+	}
+
+	/**
+	 * Delete the tile keys and keyed table row for the feature table
+	 */
+	private void deleteKeys() {
+		String[] args = new String[] { getTableName() };
+		if (geoPackage.isTable(TABLE_NAME)) {
+			SQLUtils.delete(connection, TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?", args);
+		}
+		if (geoPackage.isTable(TABLES_TABLE_NAME)) {
+			SQLUtils.delete(connection, TABLES_TABLE_NAME,
+					COLUMN_TABLE_NAME + " = ?", args);
+		}
+	}
+
+	/**
+	 * Create the feature table triggers logging the ids of the changed
+	 * features
+	 */
+	private void createTriggers() {
+
+		dropTriggers();
+
+		String tableName = CoreSQLUtils.quoteWrap(getTableName());
+		String idColumn = CoreSQLUtils
+				.quoteWrap(featureDao.getIdColumnName());
+		String geometryColumn = CoreSQLUtils
+				.quoteWrap(featureDao.getGeometryColumnName());
+		String insert = "INSERT OR IGNORE INTO "
+				+ CoreSQLUtils.quoteWrap(CHANGES_TABLE_NAME) + " ("
+				+ COLUMN_TABLE_NAME + ", " + COLUMN_GEOM_ID + ") VALUES ('"
+				+ getTableName().replace("'", "''") + "', ";
+
+		SQLUtils.execSQL(connection, "CREATE TRIGGER "
+				+ CoreSQLUtils.quoteWrap(triggerName("insert"))
+				+ " AFTER INSERT ON " + tableName + " BEGIN " + insert
+				+ "NEW." + idColumn + "); END");
+
+		SQLUtils.execSQL(connection, "CREATE TRIGGER "
+				+ CoreSQLUtils.quoteWrap(triggerName("update"))
+				+ " AFTER UPDATE OF " + geometryColumn + ", " + idColumn
+				+ " ON " + tableName + " BEGIN " + insert + "OLD." + idColumn
+				+ "); " + insert + "NEW." + idColumn + "); END");
+
+		SQLUtils.execSQL(connection, "CREATE TRIGGER "
+				+ CoreSQLUtils.quoteWrap(triggerName("delete"))
+				+ " AFTER DELETE ON " + tableName + " BEGIN " + insert
+				+ "OLD." + idColumn + "); END");
+	}
+
+	/**
+	 * Drop the feature table triggers logging the changed features
+	 */
+	private void dropTriggers() {
+		for (String type : new String[] { "insert", "update", "delete" }) {
+			SQLUtils.execSQL(connection, "DROP TRIGGER IF EXISTS "
+					+ CoreSQLUtils.quoteWrap(triggerName(type)));
+		}
+	}
+
+	/**
+	 * Get the feature table trigger name
+	 *
+	 * @param type
+	 *            trigger type
+	 * @return trigger name
+	 */
+	private String triggerName(String type) {
+		return TRIGGER_PREFIX + getTableName() + "_"
+				+ featureDao.getGeometryColumnName() + "_" + type;
+	}
+
+	/**
+	 * Transform a feature envelope to a web mercator bounding box within the
+	 * web mercator limits
+	 *
+	 * @param envelope
+	 *            feature envelope
+	 * @return web mercator bounding box
+	 */
+	private BoundingBox toWebMercator(GeometryEnvelope envelope) {
+		if (toWgs84 == null) {
+			toWgs84 = featureDao.getProjection().getTransformation(
+					ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM);
+		}
+		BoundingBox wgs84BoundingBox = new BoundingBox(envelope.getMinX(),
+				envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY())
+						.transform(toWgs84);
+		wgs84BoundingBox = TileBoundingBoxUtils
+				.boundWgs84BoundingBoxWithWebMercatorLimits(wgs84BoundingBox);
+		return wgs84BoundingBox.transform(ProjectionFactory
+				.getProjection(ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM)
+				.getTransformation(ProjectionConstants.EPSG_WEB_MERCATOR));
+	}
+
+}
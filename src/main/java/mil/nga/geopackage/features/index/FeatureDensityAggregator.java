@@ -0,0 +1,308 @@
+package mil.nga.geopackage.features.index;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.geom.GeoPackageGeometryHeader;
+import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.Point;
+import mil.nga.sf.proj.Projection;
+import mil.nga.sf.proj.ProjectionTransform;
+
+/**
+ * Aggregates feature index envelopes into one or more density grids in a
+ * single pass over an index table, without reading feature rows or
+ * geometries. When a single grid is in the feature projection, centroid
+ * counts are grouped by cell in the database.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+class FeatureDensityAggregator {
+
+	/**
+	 * Feature DAO
+	 */
+	private final FeatureDao featureDao;
+
+	/**
+	 * Density grids, sharing a projection and mode
+	 */
+	private final List<FeatureDensityGrid> grids;
+
+	/**
+	 * First density grid
+	 */
+	private final FeatureDensityGrid grid;
+
+	/**
+	 * Feature to grid projection transform, null when the same projection
+	 */
+	private final ProjectionTransform transform;
+
+	/**
+	 * Grid bounding box in the feature projection
+	 */
+	private final BoundingBox featureBoundingBox;
+
+	/**
+	 * Constructor
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param grid
+	 *            density grid
+	 */
+	FeatureDensityAggregator(FeatureDao featureDao, FeatureDensityGrid grid) {
+		this(featureDao, Arrays.asList(grid));
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param grids
+	 *            density grids, sharing a projection and mode
+	 */
+	FeatureDensityAggregator(FeatureDao featureDao,
+			List<FeatureDensityGrid> grids) {
+		this.featureDao = featureDao;
+		this.grids = grids;
+		this.grid = grids.get(0);
+		BoundingBox boundingBox = grid.getBoundingBox();
+		for (FeatureDensityGrid other : grids) {
+			if (other.getMode() != grid.getMode()
+					|| (other.getProjection() == null
+							? grid.getProjection() != null
+							: !other.getProjection()
+									.equals(grid.getProjection()))) {
+				throw new GeoPackageException(
+						"Density grids aggregated together must share a projection and mode");
+			}
+			boundingBox = boundingBox.union(other.getBoundingBox());
+		}
+		Projection featureProjection = featureDao.getProjection();
+		Projection gridProjection = grid.getProjection();
+		if (gridProjection != null
+				&& !gridProjection.equals(featureProjection)) {
+			transform = featureProjection.getTransformation(gridProjection);
+			featureBoundingBox = featureDao.projectBoundingBox(boundingBox,
+					gridProjection);
+		} else {
+			transform = null;
+			featureBoundingBox = boundingBox;
+		}
+	}
+
+	/**
+	 * Aggregate the envelopes of an index table
+	 *
+	 * @param table
+	 *            index table name
+	 * @param minX
+	 *            min x column
+	 * @param maxX
+	 *            max x column
+	 * @param minY
+	 *            min y column
+	 * @param maxY
+	 *            max y column
+	 * @param where
+	 *            index table where clause, null for all rows
+	 * @param whereArgs
+	 *            where arguments
+	 */
+	void aggregate(String table, String minX, String maxX, String minY,
+			String maxY, String where, Object[] whereArgs) {
+		if (transform == null && grids.size() == 1
+				&& grid.getMode() == FeatureDensityMode.CENTROID) {
+			aggregateCentroids(table, minX, maxX, minY, maxY, where,
+					whereArgs);
+		} else {
+			aggregateEnvelopes(table, minX, maxX, minY, maxY, where,
+					whereArgs);
+		}
+	}
+
+	/**
+	 * Aggregate the envelopes read from the feature geometry headers, used
+	 * when the feature table is not indexed
+	 */
+	void aggregateGeometries() {
+		String sql = "SELECT "
+				+ CoreSQLUtils.quoteWrap(featureDao.getGeometryColumnName())
+				+ " FROM " + CoreSQLUtils.quoteWrap(featureDao.getTableName());
+		ResultSet resultSet = SQLUtils.query(featureDao.getConnection(), sql,
+				null);
+		try {
+			while (resultSet.next()) {
+				GeometryEnvelope envelope = GeoPackageGeometryHeader
+						.getEnvelope(resultSet.getBytes(1));
+				if (envelope != null) {
+					add(envelope.getMinX(), envelope.getMinY(),
+							envelope.getMaxX(), envelope.getMaxY());
+				}
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to aggregate feature density. Table: "
+							+ featureDao.getTableName(),
+					e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql);
+		}
+	}
+
+	/**
+	 * Aggregate envelope centroids grouped by cell in the database
+	 */
+	private void aggregateCentroids(String table, String minX, String maxX,
+			String minY, String maxY, String where, Object[] whereArgs) {
+
+		BoundingBox boundingBox = grid.getBoundingBox();
+		String centerX = "((" + minX + " + " + maxX + ") / 2.0)";
+		String centerY = "((" + minY + " + " + maxY + ") / 2.0)";
+
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT CAST((").append(centerX)
+				.append(" - ?) / ? AS INTEGER) AS c, CAST((? - ")
+				.append(centerY).append(") / ? AS INTEGER) AS r, COUNT(*)");
+		sql.append(" FROM ").append(CoreSQLUtils.quoteWrap(table));
+		sql.append(" WHERE ");
+		if (where != null) {
+			sql.append(where).append(" AND ");
+		}
+		sql.append(centerX).append(" BETWEEN ? AND ? AND ").append(centerY)
+				.append(" BETWEEN ? AND ?");
+		sql.append(" GROUP BY c, r");
+
+		List<Object> args = new ArrayList<>();
+		args.add(boundingBox.getMinLongitude());
+		args.add(grid.getCellWidth());
+		args.add(boundingBox.getMaxLatitude());
+		args.add(grid.getCellHeight());
+		if (whereArgs != null) {
+			args.addAll(Arrays.asList(whereArgs));
+		}
+		args.add(boundingBox.getMinLongitude());
+		args.add(boundingBox.getMaxLongitude());
+		args.add(boundingBox.getMinLatitude());
+		args.add(boundingBox.getMaxLatitude());
+
+		String query = sql.toString();
+		PreparedStatement statement = null;
+		try {
+			statement = featureDao.getConnection().prepareStatement(query);
+			SQLUtils.setArguments(statement, args.toArray());
+			ResultSet resultSet = statement.executeQuery();
+			try {
+				while (resultSet.next()) {
+					grid.add(resultSet.getInt(1), resultSet.getInt(2),
+							resultSet.getLong(3));
+				}
+			} finally {
+				resultSet.close();
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to aggregate feature density. Table: " + table,
+					e);
+		} finally {
+			SQLUtils.closeStatement(statement, query);
+		}
+	}
+
+	/**
+	 * Aggregate envelopes overlapping the grid one row at a time
+	 */
+	private void aggregateEnvelopes(String table, String minX, String maxX,
+			String minY, String maxY, String where, Object[] whereArgs) {
+
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT ").append(minX).append(", ").append(minY)
+				.append(", ").append(maxX).append(", ").append(maxY);
+		sql.append(" FROM ").append(CoreSQLUtils.quoteWrap(table));
+		sql.append(" WHERE ");
+		if (where != null) {
+			sql.append(where).append(" AND ");
+		}
+		sql.append(minX).append(" <= ? AND ").append(maxX)
+				.append(" >= ? AND ").append(minY).append(" <= ? AND ")
+				.append(maxY).append(" >= ?");
+
+		List<Object> args = new ArrayList<>();
+		if (whereArgs != null) {
+			args.addAll(Arrays.asList(whereArgs));
+		}
+		args.add(featureBoundingBox.getMaxLongitude());
+		args.add(featureBoundingBox.getMinLongitude());
+		args.add(featureBoundingBox.getMaxLatitude());
+		args.add(featureBoundingBox.getMinLatitude());
+
+		String query = sql.toString();
+		PreparedStatement statement = null;
+		try {
+			statement = featureDao.getConnection().prepareStatement(query);
+			SQLUtils.setArguments(statement, args.toArray());
+			ResultSet resultSet = statement.executeQuery();
+			try {
+				while (resultSet.next()) {
+					add(resultSet.getDouble(1), resultSet.getDouble(2),
+							resultSet.getDouble(3), resultSet.getDouble(4));
+				}
+			} finally {
+				resultSet.close();
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to aggregate feature density. Table: " + table,
+					e);
+		} finally {
+			SQLUtils.closeStatement(statement, query);
+		}
+	}
+
+	/**
+	 * Add a feature projection envelope to the grid
+	 *
+	 * @param minX
+	 *            min x
+	 * @param minY
+	 *            min y
+	 * @param maxX
+	 *            max x
+	 * @param maxY
+	 *            max y
+	 */
+	private void add(double minX, double minY, double maxX, double maxY) {
+		if (transform != null) {
+			if (grid.getMode() == FeatureDensityMode.CENTROID) {
+				Point center = transform.transform(new Point(
+						(minX + maxX) / 2.0, (minY + maxY) / 2.0));
+				minX = maxX = center.getX();
+				minY = maxY = center.getY();
+			} else {
+				BoundingBox envelope = new BoundingBox(minX, minY, maxX, maxY)
+						.transform(transform);
+				minX = envelope.getMinLongitude();
+				minY = envelope.getMinLatitude();
+				maxX = envelope.getMaxLongitude();
+				maxY = envelope.getMaxLatitude();
+			}
+		}
+		for (FeatureDensityGrid densityGrid : grids) {
+			densityGrid.add(minX, minY, maxX, maxY);
+		}
+	}
+
+}
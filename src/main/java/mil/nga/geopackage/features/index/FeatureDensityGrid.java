@@ -0,0 +1,434 @@
+package mil.nga.geopackage.features.index;
+
+import java.util.Arrays;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.tiles.TileGrid;
+import mil.nga.sf.proj.Projection;
+
+/**
+ * Feature density grid of feature counts per cell, aggregated from a feature
+ * index. Counts are stored row major in a primitive array with row 0 at the
+ * top (max y) of the bounding box, matching XYZ tile row order.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureDensityGrid {
+
+	/**
+	 * Grid bounding box
+	 */
+	private final BoundingBox boundingBox;
+
+	/**
+	 * Grid bounding box projection
+	 */
+	private final Projection projection;
+
+	/**
+	 * Number of columns
+	 */
+	private final int width;
+
+	/**
+	 * Number of rows
+	 */
+	private final int height;
+
+	/**
+	 * Binning mode
+	 */
+	private final FeatureDensityMode mode;
+
+	/**
+	 * Row major cell counts
+	 */
+	private final long[] counts;
+
+	/**
+	 * Tile grid when the cells are XYZ tiles
+	 */
+	private final TileGrid tileGrid;
+
+	/**
+	 * Zoom level when the cells are XYZ tiles
+	 */
+	private final int zoom;
+
+	/**
+	 * Cell width
+	 */
+	private final double cellWidth;
+
+	/**
+	 * Cell height
+	 */
+	private final double cellHeight;
+
+	/**
+	 * Constructor
+	 *
+	 * @param boundingBox
+	 *            grid bounding box
+	 * @param projection
+	 *            grid bounding box projection
+	 * @param width
+	 *            number of columns
+	 * @param height
+	 *            number of rows
+	 * @param mode
+	 *            binning mode
+	 */
+	public FeatureDensityGrid(BoundingBox boundingBox, Projection projection,
+			int width, int height, FeatureDensityMode mode) {
+		this(boundingBox, projection, width, height, mode, null, -1);
+	}
+
+	/**
+	 * Constructor for a grid of XYZ tiles
+	 *
+	 * @param boundingBox
+	 *            web mercator bounding box of the tile grid
+	 * @param projection
+	 *            web mercator projection
+	 * @param tileGrid
+	 *            tile grid
+	 * @param zoom
+	 *            zoom level
+	 * @param mode
+	 *            binning mode
+	 */
+	public FeatureDensityGrid(BoundingBox boundingBox, Projection projection,
+			TileGrid tileGrid, int zoom, FeatureDensityMode mode) {
+		this(boundingBox, projection,
+				size(tileGrid.getMaxX() - tileGrid.getMinX() + 1),
+				size(tileGrid.getMaxY() - tileGrid.getMinY() + 1), mode,
+				tileGrid, zoom);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param boundingBox
+	 *            grid bounding box
+	 * @param projection
+	 *            grid bounding box projection
+	 * @param width
+	 *            number of columns
+	 * @param height
+	 *            number of rows
+	 * @param mode
+	 *            binning mode
+	 * @param tileGrid
+	 *            tile grid or null
+	 * @param zoom
+	 *            zoom level or -1
+	 */
+	private FeatureDensityGrid(BoundingBox boundingBox, Projection projection,
+			int width, int height, FeatureDensityMode mode,
+			TileGrid tileGrid, int zoom) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException(
+					"Density grid width and height must be positive. Width: "
+							+ width + ", Height: " + height);
+		}
+		size((long) width * height);
+		this.boundingBox = boundingBox;
+		this.projection = projection;
+		this.width = width;
+		this.height = height;
+		this.mode = mode;
+		this.tileGrid = tileGrid;
+		this.zoom = zoom;
+		this.counts = new long[width * height];
+		this.cellWidth = (boundingBox.getMaxLongitude()
+				- boundingBox.getMinLongitude()) / width;
+		this.cellHeight = (boundingBox.getMaxLatitude()
+				- boundingBox.getMinLatitude()) / height;
+	}
+
+	/**
+	 * Validate a grid size
+	 *
+	 * @param size
+	 *            size
+	 * @return int size
+	 */
+	private static int size(long size) {
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException(
+					"Density grid is too large: " + size);
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Get the grid bounding box
+	 *
+	 * @return bounding box
+	 */
+	public BoundingBox getBoundingBox() {
+		return boundingBox;
+	}
+
+	/**
+	 * Get the grid bounding box projection
+	 *
+	 * @return projection
+	 */
+	public Projection getProjection() {
+		return projection;
+	}
+
+	/**
+	 * Get the number of columns
+	 *
+	 * @return width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Get the number of rows
+	 *
+	 * @return height
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Get the binning mode
+	 *
+	 * @return mode
+	 */
+	public FeatureDensityMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Get the tile grid when the cells are XYZ tiles
+	 *
+	 * @return tile grid or null
+	 */
+	public TileGrid getTileGrid() {
+		return tileGrid;
+	}
+
+	/**
+	 * Get the zoom level when the cells are XYZ tiles
+	 *
+	 * @return zoom level or -1
+	 */
+	public int getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * Get the row major cell counts, row 0 at the top of the grid
+	 *
+	 * @return counts
+	 */
+	public long[] getCounts() {
+		return counts;
+	}
+
+	/**
+	 * Get the row major cell counts as ints, saturating at
+	 * {@link Integer#MAX_VALUE}
+	 *
+	 * @return counts
+	 */
+	public int[] getIntCounts() {
+		int[] intCounts = new int[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			intCounts[i] = (int) Math.min(counts[i], Integer.MAX_VALUE);
+		}
+		return intCounts;
+	}
+
+	/**
+	 * Get the count of the cell
+	 *
+	 * @param column
+	 *            column
+	 * @param row
+	 *            row, 0 at the top of the grid
+	 * @return count
+	 */
+	public long getCount(int column, int row) {
+		return counts[row * width + column];
+	}
+
+	/**
+	 * Get the count of the XYZ tile
+	 *
+	 * @param x
+	 *            tile x
+	 * @param y
+	 *            tile y
+	 * @return count, 0 when outside the tile grid
+	 */
+	public long getTileCount(long x, long y) {
+		if (tileGrid == null) {
+			throw new IllegalStateException(
+					"Density grid is not a tile grid");
+		}
+		long count = 0;
+		if (x >= tileGrid.getMinX() && x <= tileGrid.getMaxX()
+				&& y >= tileGrid.getMinY() && y <= tileGrid.getMaxY()) {
+			count = getCount((int) (x - tileGrid.getMinX()),
+					(int) (y - tileGrid.getMinY()));
+		}
+		return count;
+	}
+
+	/**
+	 * Get the max cell count
+	 *
+	 * @return max count
+	 */
+	public long getMaxCount() {
+		long max = 0;
+		for (long count : counts) {
+			max = Math.max(max, count);
+		}
+		return max;
+	}
+
+	/**
+	 * Get the total of the cell counts. In {@link FeatureDensityMode#OVERLAP}
+	 * mode features spanning cells are counted in each cell.
+	 *
+	 * @return total count
+	 */
+	public long getTotalCount() {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * Get the column containing the x coordinate, clamped to the grid
+	 *
+	 * @param x
+	 *            x coordinate
+	 * @return column
+	 */
+	public int getColumn(double x) {
+		int column = (int) Math
+				.floor((x - boundingBox.getMinLongitude()) / cellWidth);
+		return Math.max(0, Math.min(width - 1, column));
+	}
+
+	/**
+	 * Get the row containing the y coordinate, clamped to the grid
+	 *
+	 * @param y
+	 *            y coordinate
+	 * @return row
+	 */
+	public int getRow(double y) {
+		int row = (int) Math
+				.floor((boundingBox.getMaxLatitude() - y) / cellHeight);
+		return Math.max(0, Math.min(height - 1, row));
+	}
+
+	/**
+	 * Get the cell width in the grid projection units
+	 *
+	 * @return cell width
+	 */
+	public double getCellWidth() {
+		return cellWidth;
+	}
+
+	/**
+	 * Get the cell height in the grid projection units
+	 *
+	 * @return cell height
+	 */
+	public double getCellHeight() {
+		return cellHeight;
+	}
+
+	/**
+	 * Add a feature envelope to the grid, ignored when outside the grid
+	 *
+	 * @param minX
+	 *            min x
+	 * @param minY
+	 *            min y
+	 * @param maxX
+	 *            max x
+	 * @param maxY
+	 *            max y
+	 */
+	public void add(double minX, double minY, double maxX, double maxY) {
+		if (mode == FeatureDensityMode.CENTROID) {
+			double x = (minX + maxX) / 2.0;
+			double y = (minY + maxY) / 2.0;
+			if (contains(x, y)) {
+				counts[getRow(y) * width + getColumn(x)]++;
+			}
+		} else if (maxX >= boundingBox.getMinLongitude()
+				&& minX <= boundingBox.getMaxLongitude()
+				&& maxY >= boundingBox.getMinLatitude()
+				&& minY <= boundingBox.getMaxLatitude()) {
+			int minColumn = getColumn(minX);
+			int maxColumn = getColumn(maxX);
+			int minRow = getRow(maxY);
+			int maxRow = getRow(minY);
+			for (int row = minRow; row <= maxRow; row++) {
+				int offset = row * width;
+				for (int column = minColumn; column <= maxColumn; column++) {
+					counts[offset + column]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add a count to a cell
+	 *
+	 * @param column
+	 *            column
+	 * @param row
+	 *            row
+	 * @param count
+	 *            count
+	 */
+	void add(int column, int row, long count) {
+		column = Math.max(0, Math.min(width - 1, column));
+		row = Math.max(0, Math.min(height - 1, row));
+		counts[row * width + column] += count;
+	}
+
+	/**
+	 * Clear the cell counts
+	 */
+	void clear() {
+		Arrays.fill(counts, 0);
+	}
+
+	/**
+	 * Check if the grid bounding box contains the coordinate
+	 *
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return true if contains
+	 */
+	private boolean contains(double x, double y) {
+		return x >= boundingBox.getMinLongitude()
+				&& x <= boundingBox.getMaxLongitude()
+				&& y >= boundingBox.getMinLatitude()
+				&& y <= boundingBox.getMaxLatitude();
+	}
+
+}
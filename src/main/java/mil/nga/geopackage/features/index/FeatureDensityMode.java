@@ -0,0 +1,21 @@
+package mil.nga.geopackage.features.index;
+
+/**
+ * Feature density grid binning mode for feature index envelopes
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public enum FeatureDensityMode {
+
+	/**
+	 * Count each feature once in the cell containing its envelope center
+	 */
+	CENTROID,
+
+	/**
+	 * Count each feature in every cell its envelope overlaps
+	 */
+	OVERLAP;
+
+}
@@ -0,0 +1,72 @@
+package mil.nga.geopackage.features.index;
+
+/**
+ * Feature id and planar distance from a nearest neighbor query location
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureDistance implements Comparable<FeatureDistance> {
+
+	/**
+	 * Feature id
+	 */
+	private final long id;
+
+	/**
+	 * Distance in the feature projection units
+	 */
+	private final double distance;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id
+	 *            feature id
+	 * @param distance
+	 *            distance in the feature projection units
+	 */
+	public FeatureDistance(long id, double distance) {
+		this.id = id;
+		this.distance = distance;
+	}
+
+	/**
+	 * Get the feature id
+	 *
+	 * @return feature id
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Get the distance in the feature projection units
+	 *
+	 * @return distance
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int compareTo(FeatureDistance other) {
+		int compare = Double.compare(distance, other.distance);
+		if (compare == 0) {
+			compare = Long.compare(id, other.id);
+		}
+		return compare;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return id + ": " + distance;
+	}
+
+}
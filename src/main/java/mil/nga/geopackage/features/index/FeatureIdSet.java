@@ -0,0 +1,396 @@
+package mil.nga.geopackage.features.index;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Immutable set of feature ids stored as a sorted primitive long array without
+ * duplicates. Set operations merge the sorted arrays in linear time and
+ * iteration is in increasing id order, allowing feature rows to be fetched in
+ * bulk and in id order with {@link FeatureIndexIdResults}.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureIdSet implements Iterable<Long> {
+
+	/**
+	 * Empty ids
+	 */
+	private static final long[] EMPTY = new long[0];
+
+	/**
+	 * Sorted unique ids
+	 */
+	private final long[] ids;
+
+	/**
+	 * Constructor for an empty set
+	 */
+	public FeatureIdSet() {
+		this.ids = EMPTY;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param ids
+	 *            feature ids in any order, duplicates allowed
+	 */
+	public FeatureIdSet(long... ids) {
+		long[] sorted = Arrays.copyOf(ids, ids.length);
+		Arrays.sort(sorted);
+		this.ids = distinct(sorted, sorted.length);
+	}
+
+	/**
+	 * Constructor from already sorted unique ids
+	 *
+	 * @param ids
+	 *            sorted unique ids
+	 * @param size
+	 *            number of ids
+	 */
+	private FeatureIdSet(long[] ids, int size) {
+		this.ids = size == ids.length ? ids : Arrays.copyOf(ids, size);
+	}
+
+	/**
+	 * Create a feature id set from ids
+	 *
+	 * @param ids
+	 *            feature ids in any order, duplicates and nulls allowed
+	 * @return feature id set
+	 */
+	public static FeatureIdSet create(Iterable<Long> ids) {
+		if (ids instanceof FeatureIdSet) {
+			return (FeatureIdSet) ids;
+		}
+		long[] values = new long[ids instanceof Collection
+				? ((Collection<?>) ids).size()
+				: 16];
+		int size = 0;
+		for (Long id : ids) {
+			if (id != null) {
+				if (size == values.length) {
+					values = Arrays.copyOf(values,
+							Math.max(16, values.length * 2));
+				}
+				values[size++] = id;
+			}
+		}
+		Arrays.sort(values, 0, size);
+		long[] unique = distinct(values, size);
+		return new FeatureIdSet(unique, unique.length);
+	}
+
+	/**
+	 * Create a feature id set from the ids of feature index results. The
+	 * results are not closed.
+	 *
+	 * @param results
+	 *            feature index results
+	 * @return feature id set
+	 */
+	public static FeatureIdSet create(FeatureIndexResults results) {
+		FeatureIdSet idSet = null;
+		if (results instanceof FeatureIndexIdResults) {
+			idSet = ((FeatureIndexIdResults) results).getIdSet();
+		} else {
+			idSet = create(results.ids());
+		}
+		return idSet;
+	}
+
+	/**
+	 * Create the union of multiple feature id sets
+	 *
+	 * @param idSets
+	 *            feature id sets
+	 * @return union
+	 */
+	public static FeatureIdSet union(Collection<FeatureIdSet> idSets) {
+		FeatureIdSet union = new FeatureIdSet();
+		for (FeatureIdSet idSet : idSets) {
+			union = union.union(idSet);
+		}
+		return union;
+	}
+
+	/**
+	 * Get the number of ids
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * Determine if the set is empty
+	 *
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return ids.length == 0;
+	}
+
+	/**
+	 * Determine if the set contains the id
+	 *
+	 * @param id
+	 *            feature id
+	 * @return true if contained
+	 */
+	public boolean contains(long id) {
+		return Arrays.binarySearch(ids, id) >= 0;
+	}
+
+	/**
+	 * Get the id at the sorted index
+	 *
+	 * @param index
+	 *            index
+	 * @return feature id
+	 */
+	public long get(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * Get the sorted index of the id
+	 *
+	 * @param id
+	 *            feature id
+	 * @return index, negative when not contained
+	 */
+	public int indexOf(long id) {
+		int index = Arrays.binarySearch(ids, id);
+		return index >= 0 ? index : -1;
+	}
+
+	/**
+	 * Get the min id
+	 *
+	 * @return min id
+	 */
+	public long getMin() {
+		if (ids.length == 0) {
+			throw new NoSuchElementException("Empty feature id set");
+		}
+		return ids[0];
+	}
+
+	/**
+	 * Get the max id
+	 *
+	 * @return max id
+	 */
+	public long getMax() {
+		if (ids.length == 0) {
+			throw new NoSuchElementException("Empty feature id set");
+		}
+		return ids[ids.length - 1];
+	}
+
+	/**
+	 * Get a copy of the sorted ids
+	 *
+	 * @return ids
+	 */
+	public long[] toArray() {
+		return Arrays.copyOf(ids, ids.length);
+	}
+
+	/**
+	 * Get the union of this set and the other set
+	 *
+	 * @param other
+	 *            feature id set
+	 * @return union
+	 */
+	public FeatureIdSet union(FeatureIdSet other) {
+		if (other.isEmpty()) {
+			return this;
+		}
+		if (isEmpty()) {
+			return other;
+		}
+		long[] result = new long[ids.length + other.ids.length];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < ids.length && j < other.ids.length) {
+			long id = ids[i];
+			long otherId = other.ids[j];
+			if (id < otherId) {
+				result[size++] = id;
+				i++;
+			} else if (id > otherId) {
+				result[size++] = otherId;
+				j++;
+			} else {
+				result[size++] = id;
+				i++;
+				j++;
+			}
+		}
+		while (i < ids.length) {
+			result[size++] = ids[i++];
+		}
+		while (j < other.ids.length) {
+			result[size++] = other.ids[j++];
+		}
+		return new FeatureIdSet(result, size);
+	}
+
+	/**
+	 * Get the intersection of this set and the other set
+	 *
+	 * @param other
+	 *            feature id set
+	 * @return intersection
+	 */
+	public FeatureIdSet intersection(FeatureIdSet other) {
+		long[] result = new long[Math.min(ids.length, other.ids.length)];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < ids.length && j < other.ids.length) {
+			long id = ids[i];
+			long otherId = other.ids[j];
+			if (id < otherId) {
+				i++;
+			} else if (id > otherId) {
+				j++;
+			} else {
+				result[size++] = id;
+				i++;
+				j++;
+			}
+		}
+		return new FeatureIdSet(result, size);
+	}
+
+	/**
+	 * Get the difference of this set minus the other set
+	 *
+	 * @param other
+	 *            feature id set
+	 * @return difference
+	 */
+	public FeatureIdSet difference(FeatureIdSet other) {
+		if (isEmpty() || other.isEmpty()) {
+			return this;
+		}
+		long[] result = new long[ids.length];
+		int i = 0;
+		int j = 0;
+		int size = 0;
+		while (i < ids.length) {
+			long id = ids[i];
+			while (j < other.ids.length && other.ids[j] < id) {
+				j++;
+			}
+			if (j >= other.ids.length || other.ids[j] != id) {
+				result[size++] = id;
+			}
+			i++;
+		}
+		return new FeatureIdSet(result, size);
+	}
+
+	/**
+	 * Get a primitive iterator over the ids in increasing order
+	 *
+	 * @return primitive long iterator
+	 */
+	public PrimitiveIterator.OfLong longIterator() {
+		return new PrimitiveIterator.OfLong() {
+
+			private int index = 0;
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public boolean hasNext() {
+				return index < ids.length;
+			}
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public long nextLong() {
+				if (index >= ids.length) {
+					throw new NoSuchElementException();
+				}
+				return ids[index++];
+			}
+
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<Long> iterator() {
+		return longIterator();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(ids);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		return Arrays.equals(ids, ((FeatureIdSet) obj).ids);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return Arrays.toString(ids);
+	}
+
+	/**
+	 * Remove duplicates from sorted ids in place
+	 *
+	 * @param sorted
+	 *            sorted ids
+	 * @param size
+	 *            number of sorted ids
+	 * @return sorted unique ids
+	 */
+	private static long[] distinct(long[] sorted, int size) {
+		int unique = 0;
+		for (int i = 0; i < size; i++) {
+			if (unique == 0 || sorted[i] != sorted[unique - 1]) {
+				sorted[unique++] = sorted[i];
+			}
+		}
+		return unique == sorted.length ? sorted
+				: Arrays.copyOf(sorted, unique);
+	}
+
+}
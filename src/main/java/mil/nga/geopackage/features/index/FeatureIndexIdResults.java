@@ -0,0 +1,249 @@
+package mil.nga.geopackage.features.index;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+import mil.nga.geopackage.features.user.FeatureRow;
+
+/**
+ * Feature Index Results for a feature id set. Feature rows are fetched in
+ * bulk chunks in increasing id order, each chunk with a single query by id
+ * range when the ids are dense or by id list when sparse. Ids of rows no
+ * longer existing are skipped.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureIndexIdResults implements FeatureIndexResults {
+
+	/**
+	 * Default number of ids fetched per query
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+
+	/**
+	 * Feature DAO
+	 */
+	private final FeatureDao featureDao;
+
+	/**
+	 * Columns, null for all
+	 */
+	private final String[] columns;
+
+	/**
+	 * Feature id set
+	 */
+	private final FeatureIdSet idSet;
+
+	/**
+	 * Number of ids fetched per query
+	 */
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	/**
+	 * Constructor
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param idSet
+	 *            feature id set
+	 */
+	public FeatureIndexIdResults(FeatureDao featureDao, FeatureIdSet idSet) {
+		this(featureDao, null, idSet);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param columns
+	 *            columns, null for all, the id column is added when missing
+	 * @param idSet
+	 *            feature id set
+	 */
+	public FeatureIndexIdResults(FeatureDao featureDao, String[] columns,
+			FeatureIdSet idSet) {
+		this.featureDao = featureDao;
+		if (columns != null && !Arrays.asList(columns)
+				.contains(featureDao.getIdColumnName())) {
+			String[] idColumns = new String[columns.length + 1];
+			idColumns[0] = featureDao.getIdColumnName();
+			System.arraycopy(columns, 0, idColumns, 1, columns.length);
+			columns = idColumns;
+		}
+		this.columns = columns;
+		this.idSet = idSet;
+	}
+
+	/**
+	 * Get the feature id set
+	 *
+	 * @return feature id set
+	 */
+	public FeatureIdSet getIdSet() {
+		return idSet;
+	}
+
+	/**
+	 * Get the number of ids fetched per query
+	 *
+	 * @return chunk size
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Set the number of ids fetched per query
+	 *
+	 * @param chunkSize
+	 *            chunk size
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<FeatureRow> iterator() {
+		return new Iterator<FeatureRow>() {
+
+			/**
+			 * Index of the next chunk start
+			 */
+			private int chunkStart = 0;
+
+			/**
+			 * Current chunk rows in id order
+			 */
+			private FeatureRow[] rows = new FeatureRow[0];
+
+			/**
+			 * Index of the next current chunk row
+			 */
+			private int index = 0;
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public boolean hasNext() {
+				while (true) {
+					while (index < rows.length) {
+						if (rows[index] != null) {
+							return true;
+						}
+						index++;
+					}
+					if (chunkStart >= idSet.size()) {
+						return false;
+					}
+					int chunkEnd = Math.min(idSet.size(),
+							chunkStart + chunkSize);
+					rows = queryChunk(chunkStart, chunkEnd);
+					chunkStart = chunkEnd;
+					index = 0;
+				}
+			}
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public FeatureRow next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return rows[index++];
+			}
+
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long count() {
+		return idSet.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterable<Long> ids() {
+		return idSet;
+	}
+
+	/**
+	 * Query the feature rows of a chunk of the id set
+	 *
+	 * @param start
+	 *            start id set index, inclusive
+	 * @param end
+	 *            end id set index, exclusive
+	 * @return rows ordered as the chunk ids, null for missing rows
+	 */
+	private FeatureRow[] queryChunk(int start, int end) {
+
+		int size = end - start;
+		long minId = idSet.get(start);
+		long maxId = idSet.get(end - 1);
+
+		String idColumn = CoreSQLUtils.quoteWrap(featureDao.getIdColumnName());
+		StringBuilder where = new StringBuilder(idColumn);
+		boolean range = maxId - minId < 2L * size;
+		if (range) {
+			where.append(" BETWEEN ").append(minId).append(" AND ")
+					.append(maxId);
+		} else {
+			where.append(" IN (");
+			for (int i = start; i < end; i++) {
+				if (i > start) {
+					where.append(",");
+				}
+				where.append(idSet.get(i));
+			}
+			where.append(")");
+		}
+
+		FeatureRow[] rows = new FeatureRow[size];
+
+		FeatureResultSet resultSet;
+		if (columns != null) {
+			resultSet = featureDao.query(columns, where.toString(), null);
+		} else {
+			resultSet = featureDao.query(where.toString(), null);
+		}
+		try {
+			while (resultSet.moveToNext()) {
+				FeatureRow row = resultSet.getRow();
+				int index = idSet.indexOf(row.getId());
+				if (index >= start && index < end) {
+					rows[index - start] = row;
+				}
+			}
+		} finally {
+			resultSet.close();
+		}
+
+		return rows;
+	}
+
+}
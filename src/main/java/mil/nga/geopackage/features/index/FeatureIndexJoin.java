@@ -0,0 +1,201 @@
+package mil.nga.geopackage.features.index;
+
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.geom.SpatialPredicate;
+
+/**
+ * Index driven spatial join between two feature tables in the same
+ * GeoPackage. Left features are scanned in batches (in RTree order when the
+ * left table is RTree indexed so that nearby features are joined together),
+ * each left feature envelope probes the right table index for candidates, and
+ * candidates are refined with exact geometry tests across threads. Memory use
+ * is bounded by the batch size, the number of batches in flight, and the
+ * prepared right geometry cache size.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureIndexJoin {
+
+	/**
+	 * Default number of left features per join batch
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	/**
+	 * Default number of prepared right geometries to cache
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 1000;
+
+	/**
+	 * Left feature index manager
+	 */
+	private final FeatureIndexManager left;
+
+	/**
+	 * Right feature index manager
+	 */
+	private final FeatureIndexManager right;
+
+	/**
+	 * Number of refine threads
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Number of left features per join batch
+	 */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Number of prepared right geometries to cache
+	 */
+	private int cacheSize = DEFAULT_CACHE_SIZE;
+
+	/**
+	 * Constructor
+	 *
+	 * @param left
+	 *            left feature index manager
+	 * @param right
+	 *            right feature index manager, probed for each left feature
+	 */
+	public FeatureIndexJoin(FeatureIndexManager left,
+			FeatureIndexManager right) {
+		if (left.getFeatureDao().getConnection() != right.getFeatureDao()
+				.getConnection()) {
+			throw new GeoPackageException(
+					"Spatial join feature tables must be in the same GeoPackage. Left: "
+							+ left.getFeatureDao().getTableName() + ", Right: "
+							+ right.getFeatureDao().getTableName());
+		}
+		this.left = left;
+		this.right = right;
+	}
+
+	/**
+	 * Get the left feature index manager
+	 *
+	 * @return left feature index manager
+	 */
+	public FeatureIndexManager getLeft() {
+		return left;
+	}
+
+	/**
+	 * Get the right feature index manager
+	 *
+	 * @return right feature index manager
+	 */
+	public FeatureIndexManager getRight() {
+		return right;
+	}
+
+	/**
+	 * Get the number of refine threads
+	 *
+	 * @return threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the number of refine threads, less than 2 to refine on the calling
+	 * thread
+	 *
+	 * @param threads
+	 *            threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Get the number of left features per join batch
+	 *
+	 * @return batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set the number of left features per join batch
+	 *
+	 * @param batchSize
+	 *            batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Get the number of prepared right geometries to cache
+	 *
+	 * @return cache size
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * Set the number of prepared right geometries to cache
+	 *
+	 * @param cacheSize
+	 *            cache size
+	 */
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * Join the left features to the right features satisfying the spatial
+	 * predicate
+	 *
+	 * @param predicate
+	 *            spatial predicate, applied as left geometry predicate right
+	 *            geometry
+	 * @return join results, close when done
+	 */
+	public FeatureIndexJoinResults join(SpatialPredicate predicate) {
+		return join(predicate, null, null);
+	}
+
+	/**
+	 * Join the left features matching the where clause to the right features
+	 * satisfying the spatial predicate
+	 *
+	 * @param predicate
+	 *            spatial predicate, applied as left geometry predicate right
+	 *            geometry
+	 * @param leftWhere
+	 *            left feature where clause, null for all
+	 * @param leftWhereArgs
+	 *            left feature where arguments
+	 * @return join results, close when done
+	 */
+	public FeatureIndexJoinResults join(SpatialPredicate predicate,
+			String leftWhere, String[] leftWhereArgs) {
+		return new FeatureIndexJoinResults(left, right, predicate, leftWhere,
+				leftWhereArgs, threads, batchSize, cacheSize);
+	}
+
+	/**
+	 * Count the joined feature pairs satisfying the spatial predicate
+	 *
+	 * @param predicate
+	 *            spatial predicate, applied as left geometry predicate right
+	 *            geometry
+	 * @return count
+	 */
+	public long count(SpatialPredicate predicate) {
+		FeatureIndexJoinResults results = join(predicate);
+		try {
+			return results.count();
+		} finally {
+			results.close();
+		}
+	}
+
+}
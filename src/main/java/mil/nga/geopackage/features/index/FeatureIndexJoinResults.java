@@ -0,0 +1,798 @@
+package mil.nga.geopackage.features.index;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.extension.RTreeIndexExtension;
+import mil.nga.geopackage.extension.RTreeIndexTableDao;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeoPackageGeometryHeader;
+import mil.nga.geopackage.geom.GeometryPredicates;
+import mil.nga.geopackage.geom.SpatialPredicate;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.proj.Projection;
+import mil.nga.sf.proj.ProjectionTransform;
+
+/**
+ * Spatial join results streaming joined (left id, right id) pairs. Pairs are
+ * produced in left scan order, and the results can be iterated once.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureIndexJoinResults implements Iterable<FeatureJoinPair> {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(FeatureIndexJoinResults.class.getName());
+
+	/**
+	 * Left feature DAO
+	 */
+	private final FeatureDao leftDao;
+
+	/**
+	 * Right feature index manager
+	 */
+	private final FeatureIndexManager right;
+
+	/**
+	 * Right feature DAO
+	 */
+	private final FeatureDao rightDao;
+
+	/**
+	 * Spatial predicate
+	 */
+	private final SpatialPredicate predicate;
+
+	/**
+	 * Left to right projection transform required
+	 */
+	private final boolean transform;
+
+	/**
+	 * Refine executor, null when refining on the calling thread
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Number of join batches to keep in flight
+	 */
+	private final int window;
+
+	/**
+	 * Number of left features per join batch
+	 */
+	private final int batchSize;
+
+	/**
+	 * Left feature scan SQL
+	 */
+	private final String leftSql;
+
+	/**
+	 * Left feature scan arguments
+	 */
+	private final String[] leftArgs;
+
+	/**
+	 * Right RTree probe SQL, null when the right table is not RTree indexed
+	 */
+	private final String probeSql;
+
+	/**
+	 * Right RTree query tolerance
+	 */
+	private final double tolerance;
+
+	/**
+	 * Least recently used prepared right geometries
+	 */
+	private final Map<Long, GeometryPredicates> cache;
+
+	/**
+	 * Left feature scan results
+	 */
+	private ResultSet leftResults;
+
+	/**
+	 * Right RTree probe statement
+	 */
+	private PreparedStatement probeStatement;
+
+	/**
+	 * Left to right projection transform for probe envelopes
+	 */
+	private ProjectionTransform probeTransform;
+
+	/**
+	 * Iterated flag
+	 */
+	private boolean iterated = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param left
+	 *            left feature index manager
+	 * @param right
+	 *            right feature index manager
+	 * @param predicate
+	 *            spatial predicate, applied as left geometry predicate right
+	 *            geometry
+	 * @param leftWhere
+	 *            left feature where clause, null for all
+	 * @param leftWhereArgs
+	 *            left feature where arguments
+	 * @param threads
+	 *            refine threads, less than 2 to refine on the calling thread
+	 * @param batchSize
+	 *            number of left features per join batch
+	 * @param cacheSize
+	 *            number of prepared right geometries to cache
+	 */
+	public FeatureIndexJoinResults(FeatureIndexManager left,
+			FeatureIndexManager right, SpatialPredicate predicate,
+			String leftWhere, String[] leftWhereArgs, int threads,
+			int batchSize, final int cacheSize) {
+		this.leftDao = left.getFeatureDao();
+		this.right = right;
+		this.rightDao = right.getFeatureDao();
+		this.predicate = predicate;
+		this.batchSize = Math.max(1, batchSize);
+		this.leftArgs = leftWhereArgs;
+
+		Projection leftProjection = leftDao.getProjection();
+		Projection rightProjection = rightDao.getProjection();
+		transform = leftProjection != null && rightProjection != null
+				&& !leftProjection.equals(rightProjection);
+		if (transform) {
+			probeTransform = leftProjection.getTransformation(rightProjection);
+		}
+
+		leftSql = buildLeftSql(left, leftWhere);
+
+		if (right.isIndexed(FeatureIndexType.RTREE)) {
+			RTreeIndexTableDao rTreeDao = right.getRTreeIndexTableDao();
+			probeSql = "SELECT " + RTreeIndexExtension.COLUMN_ID + " FROM "
+					+ CoreSQLUtils.quoteWrap(rTreeDao.getTableName())
+					+ " WHERE " + RTreeIndexExtension.COLUMN_MIN_X
+					+ " <= ? AND " + RTreeIndexExtension.COLUMN_MAX_X
+					+ " >= ? AND " + RTreeIndexExtension.COLUMN_MIN_Y
+					+ " <= ? AND " + RTreeIndexExtension.COLUMN_MAX_Y
+					+ " >= ?";
+			tolerance = rTreeDao.getTolerance();
+		} else {
+			probeSql = null;
+			tolerance = 0;
+		}
+
+		cache = new LinkedHashMap<Long, GeometryPredicates>(16, 0.75f,
+				true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<Long, GeometryPredicates> eldest) {
+				return size() > cacheSize;
+			}
+
+		};
+
+		if (threads > 1) {
+			executor = Executors.newFixedThreadPool(threads,
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable,
+									"FeatureIndexJoinResults");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			window = threads * 2;
+		} else {
+			executor = null;
+			window = 1;
+		}
+	}
+
+	/**
+	 * Get the left feature DAO
+	 *
+	 * @return left feature DAO
+	 */
+	public FeatureDao getLeftDao() {
+		return leftDao;
+	}
+
+	/**
+	 * Get the right feature DAO
+	 *
+	 * @return right feature DAO
+	 */
+	public FeatureDao getRightDao() {
+		return rightDao;
+	}
+
+	/**
+	 * Get the spatial predicate
+	 *
+	 * @return spatial predicate
+	 */
+	public SpatialPredicate getPredicate() {
+		return predicate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<FeatureJoinPair> iterator() {
+		if (iterated) {
+			throw new GeoPackageException(
+					"Spatial join results can only be iterated once");
+		}
+		iterated = true;
+		final Iterator<List<FeatureJoinPair>> batches = new JoinIterator();
+		return new Iterator<FeatureJoinPair>() {
+
+			private Iterator<FeatureJoinPair> batch = Collections
+					.<FeatureJoinPair> emptyList().iterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!batch.hasNext() && batches.hasNext()) {
+					batch = batches.next().iterator();
+				}
+				return batch.hasNext();
+			}
+
+			@Override
+			public FeatureJoinPair next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return batch.next();
+			}
+
+		};
+	}
+
+	/**
+	 * Get an iterable of the joined feature rows, as left and right feature
+	 * row arrays
+	 *
+	 * @return joined feature rows
+	 */
+	public Iterable<FeatureRow[]> rows() {
+		final Iterator<FeatureJoinPair> pairs = iterator();
+		return new Iterable<FeatureRow[]>() {
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public Iterator<FeatureRow[]> iterator() {
+				return new Iterator<FeatureRow[]>() {
+
+					/**
+					 * Last left feature row, pairs are grouped by left
+					 * feature
+					 */
+					private FeatureRow leftRow = null;
+
+					@Override
+					public boolean hasNext() {
+						return pairs.hasNext();
+					}
+
+					@Override
+					public FeatureRow[] next() {
+						FeatureJoinPair pair = pairs.next();
+						if (leftRow == null
+								|| leftRow.getId() != pair.getLeftId()) {
+							leftRow = leftDao.queryForIdRow(pair.getLeftId());
+						}
+						FeatureRow rightRow = rightDao
+								.queryForIdRow(pair.getRightId());
+						return new FeatureRow[] { leftRow, rightRow };
+					}
+
+				};
+			}
+		};
+	}
+
+	/**
+	 * Count the joined pairs by iterating the results
+	 *
+	 * @return count
+	 */
+	public long count() {
+		long count = 0;
+		for (Iterator<FeatureJoinPair> pairs = iterator(); pairs
+				.hasNext(); pairs.next()) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Close the results
+	 */
+	public void close() {
+		if (leftResults != null) {
+			SQLUtils.closeResultSetStatement(leftResults, leftSql);
+			leftResults = null;
+		}
+		if (probeStatement != null) {
+			SQLUtils.closeStatement(probeStatement, probeSql);
+			probeStatement = null;
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Build the left feature scan SQL, scanning in RTree order when indexed
+	 *
+	 * @param left
+	 *            left feature index manager
+	 * @param leftWhere
+	 *            left where clause
+	 * @return SQL
+	 */
+	private String buildLeftSql(FeatureIndexManager left, String leftWhere) {
+		String table = CoreSQLUtils.quoteWrap(leftDao.getTableName());
+		String id = CoreSQLUtils.quoteWrap(leftDao.getIdColumnName());
+		String geometry = CoreSQLUtils
+				.quoteWrap(leftDao.getGeometryColumnName());
+		StringBuilder sql = new StringBuilder();
+		if (left.isIndexed(FeatureIndexType.RTREE)) {
+			sql.append("SELECT f.").append(id).append(", f.").append(geometry);
+			sql.append(" FROM ").append(CoreSQLUtils
+					.quoteWrap(left.getRTreeIndexTableDao().getTableName()));
+			sql.append(" AS r CROSS JOIN ").append(table);
+			sql.append(" AS f ON f.").append(id).append(" = r.")
+					.append(RTreeIndexExtension.COLUMN_ID);
+			if (leftWhere != null) {
+				sql.append(" WHERE f.").append(id).append(" IN (SELECT ")
+						.append(id).append(" FROM ").append(table)
+						.append(" WHERE ").append(leftWhere).append(")");
+			}
+		} else {
+			sql.append("SELECT ").append(id).append(", ").append(geometry);
+			sql.append(" FROM ").append(table);
+			if (leftWhere != null) {
+				sql.append(" WHERE ").append(leftWhere);
+			}
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * Join iterator reading left batches, probing the right index, and keeping
+	 * a window of refine tasks in flight
+	 */
+	private class JoinIterator implements Iterator<List<FeatureJoinPair>> {
+
+		/**
+		 * Join tasks in flight
+		 */
+		private final Deque<Future<List<FeatureJoinPair>>> pending = new ArrayDeque<>();
+
+		/**
+		 * Left scan complete
+		 */
+		private boolean done = false;
+
+		/**
+		 * Next non empty joined batch
+		 */
+		private List<FeatureJoinPair> next = null;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean hasNext() {
+			while (next == null) {
+				fill();
+				Future<List<FeatureJoinPair>> future = pending.poll();
+				if (future == null) {
+					break;
+				}
+				List<FeatureJoinPair> batch = get(future);
+				if (!batch.isEmpty()) {
+					next = batch;
+				}
+			}
+			return next != null;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public List<FeatureJoinPair> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			List<FeatureJoinPair> batch = next;
+			next = null;
+			return batch;
+		}
+
+		/**
+		 * Read left batches and submit join tasks up to the window
+		 */
+		private void fill() {
+			try {
+				while (!done && pending.size() < window) {
+					JoinTask task = readBatch();
+					if (task == null) {
+						done = true;
+						break;
+					}
+					if (executor != null) {
+						pending.add(executor.submit(task));
+					} else {
+						FutureTask<List<FeatureJoinPair>> futureTask = new FutureTask<>(
+								task);
+						futureTask.run();
+						pending.add(futureTask);
+					}
+				}
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to spatial join feature tables. Left: "
+								+ leftDao.getTableName() + ", Right: "
+								+ rightDao.getTableName(),
+						e);
+			}
+		}
+
+		/**
+		 * Get the join task result
+		 *
+		 * @param future
+		 *            join task future
+		 * @return joined pairs
+		 */
+		private List<FeatureJoinPair> get(
+				Future<List<FeatureJoinPair>> future) {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new GeoPackageException(
+						"Interrupted while refining spatial join results", e);
+			} catch (ExecutionException e) {
+				throw new GeoPackageException(
+						"Failed to refine spatial join results", e.getCause());
+			}
+		}
+
+	}
+
+	/**
+	 * Read the next batch of left features, probe the right index for
+	 * candidates, and prepare the candidate right geometries
+	 *
+	 * @return join task or null when the left scan is complete
+	 * @throws SQLException
+	 *             upon failure
+	 */
+	private JoinTask readBatch() throws SQLException {
+
+		if (leftResults == null) {
+			leftResults = SQLUtils.query(leftDao.getConnection(), leftSql,
+					leftArgs);
+		}
+
+		List<Long> leftIds = new ArrayList<>(batchSize);
+		List<byte[]> leftGeometries = new ArrayList<>(batchSize);
+		List<long[]> candidates = new ArrayList<>(batchSize);
+		Map<Long, GeometryPredicates> prepared = new HashMap<>();
+		Set<Long> missing = new LinkedHashSet<>();
+
+		boolean read = false;
+		while (leftIds.size() < batchSize && leftResults.next()) {
+			read = true;
+			long id = leftResults.getLong(1);
+			byte[] bytes = leftResults.getBytes(2);
+			GeometryEnvelope envelope = GeoPackageGeometryHeader
+					.getEnvelope(bytes);
+			if (envelope == null) {
+				continue;
+			}
+			long[] rightIds = probe(envelope);
+			if (rightIds.length == 0) {
+				continue;
+			}
+			for (long rightId : rightIds) {
+				if (!prepared.containsKey(rightId)) {
+					GeometryPredicates predicates = cache.get(rightId);
+					if (predicates != null) {
+						prepared.put(rightId, predicates);
+					} else {
+						missing.add(rightId);
+					}
+				}
+			}
+			leftIds.add(id);
+			leftGeometries.add(bytes);
+			candidates.add(rightIds);
+		}
+
+		if (!read) {
+			return null;
+		}
+
+		List<Long> missingIds = new ArrayList<>(missing);
+		for (int start = 0; start < missingIds.size(); start += 999) {
+			readRight(missingIds.subList(start,
+					Math.min(start + 999, missingIds.size())), prepared);
+		}
+
+		return new JoinTask(leftIds, leftGeometries, candidates, prepared);
+	}
+
+	/**
+	 * Probe the right index for features overlapping the left envelope
+	 *
+	 * @param envelope
+	 *            left envelope in the left projection
+	 * @return right candidate ids
+	 * @throws SQLException
+	 *             upon failure
+	 */
+	private long[] probe(GeometryEnvelope envelope) throws SQLException {
+
+		if (transform) {
+			BoundingBox boundingBox = new BoundingBox(envelope.getMinX(),
+					envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY());
+			envelope = boundingBox.transform(probeTransform).buildEnvelope();
+		}
+
+		long[] ids = new long[16];
+		int count = 0;
+		if (probeSql != null) {
+			if (probeStatement == null) {
+				Connection connection = rightDao.getConnection();
+				probeStatement = connection.prepareStatement(probeSql);
+			}
+			probeStatement.setDouble(1, envelope.getMaxX() + tolerance);
+			probeStatement.setDouble(2, envelope.getMinX() - tolerance);
+			probeStatement.setDouble(3, envelope.getMaxY() + tolerance);
+			probeStatement.setDouble(4, envelope.getMinY() - tolerance);
+			ResultSet resultSet = probeStatement.executeQuery();
+			try {
+				while (resultSet.next()) {
+					if (count == ids.length) {
+						ids = Arrays.copyOf(ids, count * 2);
+					}
+					ids[count++] = resultSet.getLong(1);
+				}
+			} finally {
+				resultSet.close();
+			}
+		} else {
+			FeatureIndexResults results = right.query(
+					new String[] { rightDao.getIdColumnName() }, envelope);
+			try {
+				for (long id : results.ids()) {
+					if (count == ids.length) {
+						ids = Arrays.copyOf(ids, count * 2);
+					}
+					ids[count++] = id;
+				}
+			} finally {
+				results.close();
+			}
+		}
+		return Arrays.copyOf(ids, count);
+	}
+
+	/**
+	 * Read and prepare the right geometries, adding them to the batch and the
+	 * cache
+	 *
+	 * @param ids
+	 *            right feature ids
+	 * @param prepared
+	 *            batch prepared right geometries
+	 * @throws SQLException
+	 *             upon failure
+	 */
+	private void readRight(List<Long> ids,
+			Map<Long, GeometryPredicates> prepared) throws SQLException {
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT ")
+				.append(CoreSQLUtils.quoteWrap(rightDao.getIdColumnName()))
+				.append(", ")
+				.append(CoreSQLUtils
+						.quoteWrap(rightDao.getGeometryColumnName()))
+				.append(" FROM ")
+				.append(CoreSQLUtils.quoteWrap(rightDao.getTableName()))
+				.append(" WHERE ")
+				.append(CoreSQLUtils.quoteWrap(rightDao.getIdColumnName()))
+				.append(" IN (");
+		for (int i = 0; i < ids.size(); i++) {
+			if (i > 0) {
+				sql.append(",");
+			}
+			sql.append(ids.get(i));
+		}
+		sql.append(")");
+		String query = sql.toString();
+		ResultSet resultSet = SQLUtils.query(rightDao.getConnection(), query,
+				null);
+		try {
+			while (resultSet.next()) {
+				long id = resultSet.getLong(1);
+				byte[] bytes = resultSet.getBytes(2);
+				if (bytes == null) {
+					continue;
+				}
+				Geometry geometry = new GeoPackageGeometryData(bytes)
+						.getGeometry();
+				if (geometry != null && !geometry.isEmpty()) {
+					GeometryPredicates predicates = new GeometryPredicates(
+							geometry);
+					prepared.put(id, predicates);
+					cache.put(id, predicates);
+				}
+			}
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, query);
+		}
+	}
+
+	/**
+	 * Join task refining left features against prepared right candidates
+	 */
+	private class JoinTask implements Callable<List<FeatureJoinPair>> {
+
+		/**
+		 * Left feature ids
+		 */
+		private final List<Long> leftIds;
+
+		/**
+		 * Left geometry bytes
+		 */
+		private final List<byte[]> leftGeometries;
+
+		/**
+		 * Right candidate ids per left feature
+		 */
+		private final List<long[]> candidates;
+
+		/**
+		 * Prepared right geometries
+		 */
+		private final Map<Long, GeometryPredicates> prepared;
+
+		/**
+		 * Constructor
+		 *
+		 * @param leftIds
+		 *            left feature ids
+		 * @param leftGeometries
+		 *            left geometry bytes
+		 * @param candidates
+		 *            right candidate ids per left feature
+		 * @param prepared
+		 *            prepared right geometries
+		 */
+		JoinTask(List<Long> leftIds, List<byte[]> leftGeometries,
+				List<long[]> candidates,
+				Map<Long, GeometryPredicates> prepared) {
+			this.leftIds = leftIds;
+			this.leftGeometries = leftGeometries;
+			this.candidates = candidates;
+			this.prepared = prepared;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public List<FeatureJoinPair> call() throws Exception {
+			List<FeatureJoinPair> pairs = new ArrayList<>();
+			ProjectionTransform projectionTransform = null;
+			if (transform) {
+				projectionTransform = leftDao.getProjection()
+						.getTransformation(rightDao.getProjection());
+			}
+			for (int i = 0; i < leftIds.size(); i++) {
+				long leftId = leftIds.get(i);
+				try {
+					byte[] bytes = leftGeometries.get(i);
+
+					// Header envelope accepting candidates without decoding
+					GeometryEnvelope envelope = null;
+					if (projectionTransform == null) {
+						envelope = GeoPackageGeometryHeader
+								.readEnvelope(bytes);
+					}
+
+					Geometry geometry = null;
+					boolean decoded = false;
+					for (long rightId : candidates.get(i)) {
+						GeometryPredicates predicates = prepared.get(rightId);
+						if (predicates == null) {
+							continue;
+						}
+						if (envelope != null
+								&& predicates.satisfiedBy(predicate, envelope)) {
+							pairs.add(new FeatureJoinPair(leftId, rightId));
+							continue;
+						}
+						if (!decoded) {
+							decoded = true;
+							geometry = new GeoPackageGeometryData(bytes)
+									.getGeometry();
+							if (geometry != null
+									&& projectionTransform != null) {
+								geometry = projectionTransform
+										.transform(geometry);
+							}
+						}
+						if (geometry != null
+								&& predicates.test(predicate, geometry)) {
+							pairs.add(new FeatureJoinPair(leftId, rightId));
+						}
+					}
+				} catch (Exception e) {
+					LOGGER.log(Level.WARNING,
+							"Failed to join feature. Table: "
+									+ leftDao.getTableName() + ", Id: "
+									+ leftId,
+							e);
+				}
+			}
+			return pairs;
+		}
+
+	}
+
+}
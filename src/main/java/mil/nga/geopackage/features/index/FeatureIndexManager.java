@@ -1,6 +1,8 @@
 package mil.nga.geopackage.features.index;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -8,23 +10,50 @@ import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackage;
 import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.core.contents.Contents;
+import mil.nga.geopackage.core.contents.ContentsDao;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.CountEstimate;
+import mil.nga.geopackage.db.QueryPlan;
+import mil.nga.geopackage.extension.RTreeIndexBulkEdit;
 import mil.nga.geopackage.extension.RTreeIndexExtension;
 import mil.nga.geopackage.extension.RTreeIndexTableDao;
+import mil.nga.geopackage.extension.generalized.FeatureGeneralizedExtension;
 import mil.nga.geopackage.extension.index.FeatureTableIndex;
+import mil.nga.geopackage.extension.index.FeatureTemporalExtension;
+import mil.nga.geopackage.extension.index.FeatureTileCountExtension;
+import mil.nga.geopackage.extension.index.FeatureTileKeyExtension;
+import mil.nga.geopackage.extension.index.GeometryIndex;
+import mil.nga.geopackage.features.user.FeatureCoordinateStore;
 import mil.nga.geopackage.features.user.FeatureDao;
 import mil.nga.geopackage.features.user.FeatureResultSet;
 import mil.nga.geopackage.features.user.FeatureRow;
 import mil.nga.geopackage.features.user.ManualFeatureQuery;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeometryPredicates;
+import mil.nga.geopackage.geom.SpatialPredicate;
 import mil.nga.geopackage.io.GeoPackageProgress;
+import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
+import mil.nga.geopackage.tiles.TileGrid;
+import mil.nga.geopackage.user.CompiledFilter;
+import mil.nga.sf.Geometry;
 import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.GeometryType;
+import mil.nga.sf.Point;
 import mil.nga.sf.proj.Projection;
+import mil.nga.sf.proj.ProjectionConstants;
+import mil.nga.sf.proj.ProjectionFactory;
+import mil.nga.sf.proj.ProjectionTransform;
+import mil.nga.sf.util.GeometryEnvelopeBuilder;
 
 /**
  * Feature Index Manager to manage indexing of feature geometries within a
@@ -42,6 +71,13 @@ public class FeatureIndexManager {
 	private static final Logger LOGGER = Logger
 			.getLogger(FeatureIndexManager.class.getName());
 
+	/**
+	 * Default feature count at which RTree indices are bulk loaded
+	 * 
+	 * @since 3.5.1
+	 */
+	public static final long DEFAULT_RTREE_BULK_THRESHOLD = 10000;
+
 	/**
 	 * Feature DAO
 	 */
@@ -62,6 +98,33 @@ public class FeatureIndexManager {
 	 */
 	private final ManualFeatureQuery manualFeatureQuery;
 
+	/**
+	 * Feature tile counts, maintained by feature table triggers
+	 */
+	private final FeatureTileCountExtension tileCounts;
+
+	/**
+	 * Generalized geometries, maintained as feature rows are indexed and
+	 * deleted
+	 */
+	private final FeatureGeneralizedExtension generalized;
+
+	/**
+	 * Generalized geometries presence, checked once per manager and refreshed
+	 * when built or accessed through the manager, null when not checked
+	 */
+	private Boolean generalizedPresent;
+
+	/**
+	 * Feature tile keys, maintained by feature table triggers
+	 */
+	private final FeatureTileKeyExtension tileKeys;
+
+	/**
+	 * Temporal index, maintained by feature table triggers
+	 */
+	private final FeatureTemporalExtension temporal;
+
 	/**
 	 * Ordered set of index locations to check in order when checking if
 	 * features are indexed and when querying for features
@@ -80,6 +143,33 @@ public class FeatureIndexManager {
 	 */
 	private boolean continueOnError = true;
 
+	/**
+	 * Feature count at which RTree indices are created with a Hilbert sorted
+	 * bulk load
+	 */
+	private long rTreeBulkThreshold = DEFAULT_RTREE_BULK_THRESHOLD;
+
+	/**
+	 * Number of threads used to refine spatial predicate queries
+	 */
+	private int predicateThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Executor shared by the spatial predicate queries, created on first use
+	 * or supplied by the caller, and retired once replaced or closed
+	 */
+	private FeatureIndexPredicateExecutor predicateExecutor;
+
+	/**
+	 * Caller owned predicate executor, null to create one
+	 */
+	private ExecutorService callerPredicateExecutor;
+
+	/**
+	 * Packed coordinate store used to refine spatial predicate queries
+	 */
+	private FeatureCoordinateStore coordinateStore;
+
 	/**
 	 * Constructor
 	 *
@@ -107,6 +197,10 @@ public class FeatureIndexManager {
 				geoPackage);
 		rTreeIndexTableDao = rTreeExtension.getTableDao(featureDao);
 		manualFeatureQuery = new ManualFeatureQuery(featureDao);
+		tileCounts = new FeatureTileCountExtension(geoPackage, featureDao);
+		generalized = new FeatureGeneralizedExtension(geoPackage, featureDao);
+		tileKeys = new FeatureTileKeyExtension(geoPackage, featureDao);
+		temporal = new FeatureTemporalExtension(geoPackage, featureDao);
 
 		// Set the default indexed check and query order
 		indexLocationQueryOrder.add(FeatureIndexType.RTREE);
@@ -119,6 +213,7 @@ public class FeatureIndexManager {
 	public void close() {
 		featureTableIndex.close();
 		// rTreeIndexTableDao.close();
+		shutdownPredicateExecutor();
 	}
 
 	/**
@@ -149,6 +244,124 @@ public class FeatureIndexManager {
 		return rTreeIndexTableDao;
 	}
 
+	/**
+	 * Get the feature tile counts extension
+	 *
+	 * @return feature tile counts
+	 * @since 3.5.1
+	 */
+	public FeatureTileCountExtension getTileCounts() {
+		return tileCounts;
+	}
+
+	/**
+	 * Build the persisted feature tile counts for the zoom level range in a
+	 * single pass over the feature index. The counts are then maintained from
+	 * the feature changes logged by feature table triggers.
+	 *
+	 * @param minZoom
+	 *            min zoom level
+	 * @param maxZoom
+	 *            max zoom level
+	 * @return number of non empty tiles
+	 * @since 3.5.1
+	 */
+	public long buildTileCounts(int minZoom, int maxZoom) {
+		return tileCounts.build(this, minZoom, maxZoom);
+	}
+
+	/**
+	 * Get the generalized geometries extension, the presence of generalized
+	 * geometries is checked again on the next indexed or deleted row
+	 *
+	 * @return generalized geometries
+	 * @since 3.5.1
+	 */
+	public FeatureGeneralizedExtension getGeneralizedGeometries() {
+		generalizedPresent = null;
+		return generalized;
+	}
+
+	/**
+	 * Build the generalized geometries for the zoom bands in a single pass
+	 * over the feature table. The generalized geometries are then maintained
+	 * as feature rows are indexed and deleted through this manager.
+	 *
+	 * @param zoomBands
+	 *            zoom bands, identified by their max zoom levels
+	 * @return number of stored generalized geometries
+	 * @since 3.5.1
+	 */
+	public long buildGeneralizedGeometries(int... zoomBands) {
+		generalizedPresent = null;
+		return generalized.build(zoomBands);
+	}
+
+	/**
+	 * Get the feature tile keys extension
+	 *
+	 * @return feature tile keys
+	 * @since 3.5.1
+	 */
+	public FeatureTileKeyExtension getTileKeys() {
+		return tileKeys;
+	}
+
+	/**
+	 * Build the feature tile keys at the base zoom level in a single pass over
+	 * the feature table. The tile keys are then maintained from feature table
+	 * triggers as features are inserted, updated, and deleted.
+	 *
+	 * @param baseZoom
+	 *            base zoom level
+	 * @return number of keyed features
+	 * @since 3.5.1
+	 */
+	public long buildTileKeys(int baseZoom) {
+		return tileKeys.build(baseZoom);
+	}
+
+	/**
+	 * Get the temporal index extension
+	 *
+	 * @return temporal index
+	 * @since 3.5.1
+	 */
+	public FeatureTemporalExtension getTemporalIndex() {
+		return temporal;
+	}
+
+	/**
+	 * Index the date, datetime, or epoch millisecond integer column as time
+	 * instants for time window queries. The temporal index is then maintained
+	 * by triggers as feature rows are inserted, updated, and deleted.
+	 *
+	 * @param column
+	 *            column name
+	 * @return number of indexed features
+	 * @since 3.5.1
+	 */
+	public long indexTemporal(String column) {
+		return temporal.index(column);
+	}
+
+	/**
+	 * Index the start and end date, datetime, or epoch millisecond integer
+	 * columns as time intervals for time window queries. The temporal index is
+	 * then maintained by triggers as feature rows are inserted, updated, and
+	 * deleted.
+	 *
+	 * @param startColumn
+	 *            start column name
+	 * @param endColumn
+	 *            end column name
+	 * @return number of indexed features
+	 * @since 3.5.1
+	 */
+	public long indexTemporal(String startColumn, String endColumn) {
+		return temporal.index(startColumn, endColumn);
+	}
+
 	/**
 	 * Get the ordered set of ordered index query locations
 	 *
@@ -188,6 +401,153 @@ public class FeatureIndexManager {
 		this.continueOnError = continueOnError;
 	}
 
+	/**
+	 * Get the feature count at which RTree indices are created with a bulk load
+	 * 
+	 * @return RTree bulk load threshold
+	 * @since 3.5.1
+	 */
+	public long getRTreeBulkThreshold() {
+		return rTreeBulkThreshold;
+	}
+
+	/**
+	 * Set the feature count at which RTree indices are created with a Hilbert
+	 * sorted bulk load. Use 0 to always bulk load and {@link Long#MAX_VALUE}
+	 * to never bulk load.
+	 * 
+	 * @param rTreeBulkThreshold
+	 *            RTree bulk load threshold
+	 * @since 3.5.1
+	 */
+	public void setRTreeBulkThreshold(long rTreeBulkThreshold) {
+		this.rTreeBulkThreshold = rTreeBulkThreshold;
+	}
+
+	/**
+	 * Begin an RTree bulk edit session for feature table edits made outside
+	 * of this manager, suspending the per row RTree triggers until the
+	 * session is ended. Other index types are not maintained by triggers and
+	 * must be updated through this manager.
+	 * 
+	 * @return bulk edit session, null if the feature table is not RTree
+	 *         indexed
+	 * @since 3.5.1
+	 */
+	public RTreeIndexBulkEdit beginRTreeBulkEdit() {
+		RTreeIndexBulkEdit bulkEdit = null;
+		if (rTreeIndexTableDao.has()) {
+			bulkEdit = rTreeIndexTableDao.beginBulkEdit();
+		}
+		return bulkEdit;
+	}
+
+	/**
+	 * Get the number of threads used to refine spatial predicate queries
+	 * 
+	 * @return predicate threads
+	 * @since 3.5.1
+	 */
+	public int getPredicateThreads() {
+		return predicateThreads;
+	}
+
+	/**
+	 * Set the number of threads used to refine spatial predicate queries
+	 * 
+	 * @param predicateThreads
+	 *            predicate threads, less than 2 to refine on the calling
+	 *            thread
+	 * @since 3.5.1
+	 */
+	public synchronized void setPredicateThreads(int predicateThreads) {
+		if (callerPredicateExecutor == null
+				&& this.predicateThreads != predicateThreads) {
+			shutdownPredicateExecutor();
+		}
+		this.predicateThreads = predicateThreads;
+	}
+
+	/**
+	 * Set a caller owned executor shared by the spatial predicate queries,
+	 * sized by the predicate threads. The executor is not shut down when this
+	 * manager is closed. An executor created by this manager and replaced is
+	 * shut down once the open predicate results using it are closed.
+	 * 
+	 * @param predicateExecutor
+	 *            predicate executor, null to use an executor created and shut
+	 *            down by this manager
+	 * @since 3.5.1
+	 */
+	public synchronized void setPredicateExecutor(
+			ExecutorService predicateExecutor) {
+		shutdownPredicateExecutor();
+		this.callerPredicateExecutor = predicateExecutor;
+	}
+
+	/**
+	 * Acquire the executor shared by the spatial predicate queries, creating
+	 * one of the predicate threads on first use. The acquired executor is
+	 * released when the predicate results are closed.
+	 * 
+	 * @return acquired predicate executor, null when refining on the calling
+	 *         thread
+	 */
+	private synchronized FeatureIndexPredicateExecutor acquirePredicateExecutor() {
+		if (predicateExecutor == null) {
+			if (callerPredicateExecutor != null) {
+				predicateExecutor = new FeatureIndexPredicateExecutor(
+						callerPredicateExecutor, false);
+			} else if (predicateThreads > 1) {
+				predicateExecutor = new FeatureIndexPredicateExecutor(
+						FeatureIndexPredicateResults
+								.createExecutor(predicateThreads),
+						true);
+			}
+		}
+		if (predicateExecutor != null) {
+			predicateExecutor.acquire();
+		}
+		return predicateExecutor;
+	}
+
+	/**
+	 * Retire the predicate executor from new queries. An executor created by
+	 * this manager is shut down once the open predicate results using it are
+	 * closed, a caller owned executor is released.
+	 */
+	private synchronized void shutdownPredicateExecutor() {
+		if (predicateExecutor != null) {
+			predicateExecutor.retire();
+			predicateExecutor = null;
+		}
+	}
+
+	/**
+	 * Get the packed coordinate store used to refine spatial predicate
+	 * queries
+	 * 
+	 * @return coordinate store, null when decoding feature geometries
+	 * @since 3.5.1
+	 */
+	public FeatureCoordinateStore getCoordinateStore() {
+		return coordinateStore;
+	}
+
+	/**
+	 * Set the packed coordinate store used to refine spatial predicate
+	 * queries. Table changes made through the feature DAO connection are
+	 * synchronized into the store before each query.
+	 * 
+	 * @param coordinateStore
+	 *            coordinate store of the feature table, null to decode
+	 *            feature geometries
+	 * @since 3.5.1
+	 */
+	public void setCoordinateStore(FeatureCoordinateStore coordinateStore) {
+		this.coordinateStore = coordinateStore;
+	}
+
 	/**
 	 * Prioritize the query location order. All types are placed at the front of
 	 * the query order in the order they are given. Omitting a location leaves
@@ -273,6 +633,33 @@ public class FeatureIndexManager {
 		rTreeIndexTableDao.setProgress(progress);
 	}
 
+	/**
+	 * Set the number of envelope worker threads used when building the
+	 * GeoPackage feature table index
+	 *
+	 * @param indexThreads
+	 *            index threads, less than 2 to index on the calling thread
+	 * @see FeatureTableIndex#setIndexThreads(int)
+	 * @since 3.5.1
+	 */
+	public void setIndexThreads(int indexThreads) {
+		featureTableIndex.setIndexThreads(indexThreads);
+	}
+
+	/**
+	 * Set the number of envelope worker threads used by manual bounding box
+	 * queries and bounds building when no index exists
+	 *
+	 * @param manualQueryThreads
+	 *            manual query threads, less than 2 to scan on the calling
+	 *            thread
+	 * @see ManualFeatureQuery#setThreads(int)
+	 * @since 3.5.1
+	 */
+	public void setManualQueryThreads(int manualQueryThreads) {
+		manualFeatureQuery.setThreads(manualQueryThreads);
+	}
+
 	/**
 	 * Index the feature table if needed, using the set index location
 	 *
@@ -363,7 +750,11 @@ public class FeatureIndexManager {
 				if (rTreeIndexed) {
 					rTreeIndexTableDao.delete();
 				}
-				rTreeIndexTableDao.create();
+				if (featureDao.count() >= rTreeBulkThreshold) {
+					rTreeIndexTableDao.createBulk();
+				} else {
+					rTreeIndexTableDao.create();
+				}
 				count = rTreeIndexTableDao.count();
 			}
 			break;
@@ -384,7 +775,10 @@ public class FeatureIndexManager {
 	 * @return true if indexed
 	 */
 	public boolean index(FeatureRow row) {
-		return index(verifyIndexLocation(), row);
+		FeatureIndexType type = verifyIndexLocation();
+		boolean indexed = indexRow(type, row);
+		updateGeneralized(row);
+		return indexed;
 	}
 
 	/**
@@ -401,10 +795,11 @@ public class FeatureIndexManager {
 	public boolean index(FeatureRow row, List<FeatureIndexType> types) {
 		boolean indexed = false;
 		for (FeatureIndexType type : types) {
-			if (index(type, row)) {
+			if (indexRow(type, row)) {
 				indexed = true;
 			}
 		}
+		updateGeneralized(row);
 		return indexed;
 	}
 
@@ -419,6 +814,21 @@ public class FeatureIndexManager {
 	 * @return true if indexed
 	 */
 	public boolean index(FeatureIndexType type, FeatureRow row) {
+		boolean indexed = indexRow(type, row);
+		updateGeneralized(row);
+		return indexed;
+	}
+
+	/**
+	 * Index the feature row without updating the generalized geometries
+	 *
+	 * @param type
+	 *            index location type
+	 * @param row
+	 *            feature row to index
+	 * @return true if indexed
+	 */
+	private boolean indexRow(FeatureIndexType type, FeatureRow row) {
 		boolean indexed = false;
 		if (type == null) {
 			throw new GeoPackageException(
@@ -510,7 +920,7 @@ public class FeatureIndexManager {
 	 * @return true if deleted
 	 */
 	public boolean deleteIndex(FeatureRow row) {
-		return deleteIndex(verifyIndexLocation(), row);
+		return deleteIndex(row, Arrays.asList(verifyIndexLocation()));
 	}
 
 	/**
@@ -523,9 +933,10 @@ public class FeatureIndexManager {
 	 * @return true if deleted from any type
 	 */
 	public boolean deleteIndex(FeatureRow row, List<FeatureIndexType> types) {
+		deleteGeneralized(row.getId());
 		boolean deleted = false;
 		for (FeatureIndexType type : types) {
-			if (deleteIndex(type, row)) {
+			if (deleteRowIndex(type, row.getId())) {
 				deleted = true;
 			}
 		}
@@ -542,7 +953,7 @@ public class FeatureIndexManager {
 	 * @return true if deleted
 	 */
 	public boolean deleteIndex(FeatureIndexType type, FeatureRow row) {
-		return deleteIndex(type, row.getId());
+		return deleteIndex(row, Arrays.asList(type));
 	}
 
 	/**
@@ -553,7 +964,7 @@ public class FeatureIndexManager {
 	 * @return true if deleted
 	 */
 	public boolean deleteIndex(long geomId) {
-		return deleteIndex(verifyIndexLocation(), geomId);
+		return deleteIndex(geomId, Arrays.asList(verifyIndexLocation()));
 	}
 
 	/**
@@ -566,9 +977,10 @@ public class FeatureIndexManager {
 	 * @return true if deleted from any type
 	 */
 	public boolean deleteIndex(long geomId, List<FeatureIndexType> types) {
+		deleteGeneralized(geomId);
 		boolean deleted = false;
 		for (FeatureIndexType type : types) {
-			if (deleteIndex(type, geomId)) {
+			if (deleteRowIndex(type, geomId)) {
 				deleted = true;
 			}
 		}
@@ -585,6 +997,20 @@ public class FeatureIndexManager {
 	 * @return true if deleted
 	 */
 	public boolean deleteIndex(FeatureIndexType type, long geomId) {
+		return deleteIndex(geomId, Arrays.asList(type));
+	}
+
+	/**
+	 * Delete the feature index for the geometry id without updating the
+	 * generalized geometries
+	 *
+	 * @param type
+	 *            feature index type
+	 * @param geomId
+	 *            geometry id
+	 * @return true if deleted
+	 */
+	private boolean deleteRowIndex(FeatureIndexType type, long geomId) {
 		if (type == null) {
 			throw new GeoPackageException(
 					"FeatureIndexType is required to delete index");
@@ -827,6 +1253,99 @@ public class FeatureIndexManager {
 		return count;
 	}
 
+	/**
+	 * Estimate the feature index count without a full count, from RTree node
+	 * statistics or a sample of the feature ids probing the index. Without an
+	 * index, the features with geometries are estimated by sampling.
+	 * 
+	 * @return count estimate
+	 * @since 3.5.1
+	 */
+	public CountEstimate estimateCount() {
+		CountEstimate estimate = null;
+		for (FeatureIndexType type : getLocation()) {
+			try {
+				switch (type) {
+				case GEOPACKAGE:
+					estimate = featureTableIndex.estimateCount();
+					break;
+				case RTREE:
+					estimate = rTreeIndexTableDao.estimateCount();
+					break;
+				default:
+					throw new GeoPackageException(
+							"Unsupported feature index type: " + type);
+				}
+				break;
+			} catch (Exception e) {
+				if (continueOnError) {
+					LOGGER.log(Level.SEVERE,
+							"Failed to estimate count from feature index: "
+									+ type,
+							e);
+				} else {
+					throw e;
+				}
+			}
+		}
+		if (estimate == null) {
+			estimate = featureDao.estimateCount(
+					CoreSQLUtils.quoteWrap(featureDao.getGeometryColumnName())
+							+ " IS NOT NULL",
+					null);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Estimate the feature index count within the bounding box from the
+	 * feature tile counts, counting exactly when not tile counted
+	 * 
+	 * @param boundingBox
+	 *            bounding box in the feature projection
+	 * @return count estimate
+	 * @since 3.5.1
+	 */
+	public CountEstimate estimateCount(BoundingBox boundingBox) {
+		return estimateCount(boundingBox, featureDao.getProjection());
+	}
+
+	/**
+	 * Estimate the feature index count within the bounding box in the
+	 * provided projection from the feature tile counts, counting exactly when
+	 * not tile counted
+	 * 
+	 * @param boundingBox
+	 *            bounding box
+	 * @param projection
+	 *            projection
+	 * @return count estimate
+	 * @since 3.5.1
+	 */
+	public CountEstimate estimateCount(BoundingBox boundingBox,
+			Projection projection) {
+		CountEstimate estimate = null;
+		if (tileCounts.has()) {
+			BoundingBox wgs84BoundingBox = boundingBox
+					.transform(projection.getTransformation(
+							ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM));
+			wgs84BoundingBox = TileBoundingBoxUtils
+					.boundWgs84BoundingBoxWithWebMercatorLimits(
+							wgs84BoundingBox);
+			BoundingBox webMercatorBoundingBox = wgs84BoundingBox
+					.transform(ProjectionFactory
+							.getProjection(
+									ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM)
+							.getTransformation(
+									ProjectionConstants.EPSG_WEB_MERCATOR));
+			estimate = tileCounts.estimateCount(webMercatorBoundingBox);
+		}
+		if (estimate == null) {
+			estimate = CountEstimate.exact(count(boundingBox, projection));
+		}
+		return estimate;
+	}
+
 	/**
 	 * Query for feature index results
 	 * 
@@ -983,6 +1502,56 @@ public class FeatureIndexManager {
 		return results;
 	}
 
+	/**
+	 * Explain the query plan of a feature index query, reporting full table
+	 * scans and temp B-trees with secondary index recommendations for the
+	 * where clause columns. The plan is of the first index location query,
+	 * joining the feature table with the index table ids, or of the feature
+	 * table query when not indexed.
+	 * 
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 *
+	 * @return query plan
+	 * @since 3.5.1
+	 */
+	public QueryPlan explainQuery(String where, String[] whereArgs) {
+		QueryPlan plan = null;
+		for (FeatureIndexType type : getLocation()) {
+			try {
+				switch (type) {
+				case GEOPACKAGE:
+					plan = featureTableIndex.explainQueryFeatures(where,
+							whereArgs);
+					break;
+				case RTREE:
+					plan = rTreeIndexTableDao.explainQueryFeatures(where,
+							whereArgs);
+					break;
+				default:
+					throw new GeoPackageException(
+							"Unsupported feature index type: " + type);
+				}
+				break;
+			} catch (Exception e) {
+				if (continueOnError) {
+					LOGGER.log(Level.SEVERE,
+							"Failed to explain query from feature index: "
+									+ type,
+							e);
+				} else {
+					throw e;
+				}
+			}
+		}
+		if (plan == null) {
+			plan = featureDao.explainQuery(where, whereArgs);
+		}
+		return plan;
+	}
+
 	/**
 	 * Query for feature index count
 	 * 
@@ -1110,12 +1679,126 @@ public class FeatureIndexManager {
 	}
 
 	/**
-	 * Query for feature index results within the bounding box, projected
-	 * correctly
-	 *
-	 * @param boundingBox
-	 *            bounding box
-	 * @return feature index results, close when done
+	 * Query for the bounds of the features matching the where clause using
+	 * the feature index aggregates joined to the feature table, without
+	 * decoding geometries
+	 * 
+	 * @param where
+	 *            where clause, null for all features
+	 * @param whereArgs
+	 *            where arguments
+	 * @return bounding box, null when no features match
+	 * @since 3.5.1
+	 */
+	public BoundingBox getBoundingBox(String where, String[] whereArgs) {
+		BoundingBox bounds = null;
+		boolean success = false;
+		for (FeatureIndexType type : getLocation()) {
+			try {
+				switch (type) {
+				case GEOPACKAGE:
+					bounds = featureTableIndex.getBoundingBox(where,
+							whereArgs);
+					break;
+				case RTREE:
+					bounds = rTreeIndexTableDao.getBoundingBox(where,
+							whereArgs);
+					break;
+				default:
+					throw new GeoPackageException(
+							"Unsupported feature index type: " + type);
+				}
+				success = true;
+				break;
+			} catch (Exception e) {
+				if (continueOnError) {
+					LOGGER.log(Level.SEVERE,
+							"Failed to get bounding box from feature index: "
+									+ type,
+							e);
+				} else {
+					throw e;
+				}
+			}
+		}
+		if (!success) {
+			bounds = manualFeatureQuery.getBoundingBox(where, whereArgs);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Query for the bounds of the features matching the where clause and
+	 * return in the provided projection
+	 * 
+	 * @param projection
+	 *            desired projection
+	 * @param where
+	 *            where clause, null for all features
+	 * @param whereArgs
+	 *            where arguments
+	 * @return bounding box, null when no features match
+	 * @since 3.5.1
+	 */
+	public BoundingBox getBoundingBox(Projection projection, String where,
+			String[] whereArgs) {
+		BoundingBox bounds = getBoundingBox(where, whereArgs);
+		if (bounds != null && projection != null) {
+			ProjectionTransform projectionTransform = featureDao
+					.getProjection().getTransformation(projection);
+			bounds = bounds.transform(projectionTransform);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Query for the feature index bounds and write them to the feature table
+	 * contents bounds. The contents last change is left unchanged as the
+	 * features are not modified, keeping the feature indexes current.
+	 * 
+	 * @return bounding box, null when the table has no features
+	 * @since 3.5.1
+	 */
+	public BoundingBox updateContentsBoundingBox() {
+		BoundingBox bounds = getBoundingBox(null, null);
+		try {
+			ContentsDao contentsDao = featureTableIndex.getGeoPackage()
+					.getContentsDao();
+			Contents contents = contentsDao
+					.queryForId(featureDao.getTableName());
+			if (contents == null) {
+				throw new GeoPackageException(
+						"No contents for feature table: "
+								+ featureDao.getTableName());
+			}
+			if (bounds != null) {
+				contents.setMinX(bounds.getMinLongitude());
+				contents.setMinY(bounds.getMinLatitude());
+				contents.setMaxX(bounds.getMaxLongitude());
+				contents.setMaxY(bounds.getMaxLatitude());
+			} else {
+				contents.setMinX(null);
+				contents.setMinY(null);
+				contents.setMaxX(null);
+				contents.setMaxY(null);
+			}
+			contentsDao.update(contents);
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to update contents bounds. Table: "
+							+ featureDao.getTableName(),
+					e);
+		}
+		return bounds;
+	}
+
+	/**
+	 * Query for feature index results within the bounding box, projected
+	 * correctly
+	 *
+	 * @param boundingBox
+	 *            bounding box
+	 * @return feature index results, close when done
 	 */
 	public FeatureIndexResults query(BoundingBox boundingBox) {
 		return query(boundingBox.buildEnvelope());
@@ -1580,6 +2263,357 @@ public class FeatureIndexManager {
 		return count;
 	}
 
+	/**
+	 * Query for feature index results matching the compiled filter field
+	 * values, bound as string where arguments which do not support byte array
+	 * values
+	 *
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults query(CompiledFilter filter, Object... values) {
+		return query(filter.getWhere(values), filter.getWhereArgs(values));
+	}
+
+	/**
+	 * Query for feature index count matching the compiled filter field values,
+	 * bound as string where arguments which do not support byte array values
+	 *
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public long count(CompiledFilter filter, Object... values) {
+		return count(filter.getWhere(values), filter.getWhereArgs(values));
+	}
+
+	/**
+	 * Query for feature index results within the bounding box matching the
+	 * compiled filter field values, projected correctly
+	 *
+	 * @param boundingBox
+	 *            bounding box
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults query(BoundingBox boundingBox,
+			CompiledFilter filter, Object... values) {
+		return query(boundingBox.buildEnvelope(), filter, values);
+	}
+
+	/**
+	 * Query for feature index count within the bounding box matching the
+	 * compiled filter field values, projected correctly
+	 *
+	 * @param boundingBox
+	 *            bounding box
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public long count(BoundingBox boundingBox, CompiledFilter filter,
+			Object... values) {
+		return count(boundingBox.buildEnvelope(), filter, values);
+	}
+
+	/**
+	 * Query for feature index results within the Geometry Envelope matching
+	 * the compiled filter field values
+	 *
+	 * @param envelope
+	 *            geometry envelope
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults query(GeometryEnvelope envelope,
+			CompiledFilter filter, Object... values) {
+		return query(featureDao.getColumnNames(), envelope, filter, values);
+	}
+
+	/**
+	 * Query for feature index results within the Geometry Envelope matching
+	 * the compiled filter field values, bound as string where arguments which
+	 * do not support byte array values
+	 *
+	 * @param columns
+	 *            columns
+	 * @param envelope
+	 *            geometry envelope
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults query(String[] columns,
+			GeometryEnvelope envelope, CompiledFilter filter,
+			Object... values) {
+		return query(columns, envelope, filter.getWhere(values),
+				filter.getWhereArgs(values));
+	}
+
+	/**
+	 * Query for feature index count within the Geometry Envelope matching the
+	 * compiled filter field values, binding the typed values on a reusable
+	 * statement of the compiled filter. The manual query fallback binds string
+	 * where arguments which do not support byte array values.
+	 *
+	 * @param envelope
+	 *            geometry envelope
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public long count(GeometryEnvelope envelope, CompiledFilter filter,
+			Object... values) {
+		Long count = null;
+		for (FeatureIndexType type : getLocation()) {
+			try {
+				switch (type) {
+				case GEOPACKAGE:
+					count = (long) featureTableIndex.countFeatures(envelope,
+							filter, values);
+					break;
+				case RTREE:
+					count = (long) rTreeIndexTableDao.countFeatures(envelope,
+							filter, values);
+					break;
+				default:
+					throw new GeoPackageException(
+							"Unsupported feature index type: " + type);
+				}
+				break;
+			} catch (Exception e) {
+				if (continueOnError) {
+					LOGGER.log(Level.SEVERE,
+							"Failed to count from feature index: " + type, e);
+				} else {
+					throw e;
+				}
+			}
+		}
+		if (count == null) {
+			count = manualFeatureQuery.count(envelope,
+					filter.getWhere(values), filter.getWhereArgs(values));
+		}
+		return count;
+	}
+
+	/**
+	 * Query for feature index results with a time interval intersecting the
+	 * inclusive time window of the temporal index
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults queryTimeWindow(Date from, Date to) {
+		return queryTimeWindow(from, to, null, null);
+	}
+
+	/**
+	 * Query for feature index results matching the where clause with a time
+	 * interval intersecting the inclusive time window of the temporal index
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults queryTimeWindow(Date from, Date to,
+			String where, String[] whereArgs) {
+		return query(temporal.buildWhere(from, to, where),
+				temporal.buildWhereArgs(from, to, whereArgs));
+	}
+
+	/**
+	 * Query for feature index count with a time interval intersecting the
+	 * inclusive time window of the temporal index
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public long countTimeWindow(Date from, Date to) {
+		return countTimeWindow(from, to, null, null);
+	}
+
+	/**
+	 * Query for feature index count matching the where clause with a time
+	 * interval intersecting the inclusive time window of the temporal index
+	 *
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public long countTimeWindow(Date from, Date to, String where,
+			String[] whereArgs) {
+		return count(temporal.buildWhere(from, to, where),
+				temporal.buildWhereArgs(from, to, whereArgs));
+	}
+
+	/**
+	 * Query for feature index results within the bounding box with a time
+	 * interval intersecting the inclusive time window, projected correctly
+	 *
+	 * @param boundingBox
+	 *            bounding box
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults queryTimeWindow(BoundingBox boundingBox,
+			Date from, Date to) {
+		return queryTimeWindow(boundingBox.buildEnvelope(), from, to, null,
+				null);
+	}
+
+	/**
+	 * Query for feature index count within the bounding box with a time
+	 * interval intersecting the inclusive time window, projected correctly
+	 *
+	 * @param boundingBox
+	 *            bounding box
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public long countTimeWindow(BoundingBox boundingBox, Date from, Date to) {
+		return countTimeWindow(boundingBox.buildEnvelope(), from, to, null,
+				null);
+	}
+
+	/**
+	 * Query for feature index results within the Geometry Envelope with a time
+	 * interval intersecting the inclusive time window
+	 *
+	 * @param envelope
+	 *            geometry envelope
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults queryTimeWindow(GeometryEnvelope envelope,
+			Date from, Date to) {
+		return queryTimeWindow(envelope, from, to, null, null);
+	}
+
+	/**
+	 * Query for feature index results within the Geometry Envelope matching
+	 * the where clause with a time interval intersecting the inclusive time
+	 * window. The spatial index candidate ids are intersected with the
+	 * temporal index range scan ids in a single feature query.
+	 *
+	 * @param envelope
+	 *            geometry envelope
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults queryTimeWindow(GeometryEnvelope envelope,
+			Date from, Date to, String where, String[] whereArgs) {
+		return query(envelope, temporal.buildWhere(from, to, where),
+				temporal.buildWhereArgs(from, to, whereArgs));
+	}
+
+	/**
+	 * Query for feature index count within the Geometry Envelope with a time
+	 * interval intersecting the inclusive time window
+	 *
+	 * @param envelope
+	 *            geometry envelope
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public long countTimeWindow(GeometryEnvelope envelope, Date from,
+			Date to) {
+		return countTimeWindow(envelope, from, to, null, null);
+	}
+
+	/**
+	 * Query for feature index count within the Geometry Envelope matching the
+	 * where clause with a time interval intersecting the inclusive time window
+	 *
+	 * @param envelope
+	 *            geometry envelope
+	 * @param from
+	 *            window start, null for unbounded
+	 * @param to
+	 *            window end, null for unbounded
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public long countTimeWindow(GeometryEnvelope envelope, Date from, Date to,
+			String where, String[] whereArgs) {
+		return count(envelope, temporal.buildWhere(from, to, where),
+				temporal.buildWhereArgs(from, to, whereArgs));
+	}
+
 	/**
 	 * Query for feature index results within the bounding box in the provided
 	 * projection
@@ -1617,6 +2651,104 @@ public class FeatureIndexManager {
 		return query(columns, featureBoundingBox);
 	}
 
+	/**
+	 * Query for the distinct feature ids within the Geometry Envelope
+	 *
+	 * @param envelope
+	 *            geometry envelope
+	 * @return feature id set
+	 * @since 3.5.1
+	 */
+	public FeatureIdSet queryIdSet(GeometryEnvelope envelope) {
+		FeatureIndexResults results = query(
+				new String[] { featureDao.getIdColumnName() }, envelope);
+		try {
+			return FeatureIdSet.create(results);
+		} finally {
+			results.close();
+		}
+	}
+
+	/**
+	 * Query for the distinct feature ids within the bounding box, projected
+	 * correctly
+	 *
+	 * @param boundingBox
+	 *            bounding box
+	 * @return feature id set
+	 * @since 3.5.1
+	 */
+	public FeatureIdSet queryIdSet(BoundingBox boundingBox) {
+		return queryIdSet(boundingBox.buildEnvelope());
+	}
+
+	/**
+	 * Query for the distinct feature ids within the bounding box in the
+	 * provided projection
+	 *
+	 * @param boundingBox
+	 *            bounding box
+	 * @param projection
+	 *            projection
+	 * @return feature id set
+	 * @since 3.5.1
+	 */
+	public FeatureIdSet queryIdSet(BoundingBox boundingBox,
+			Projection projection) {
+		BoundingBox featureBoundingBox = featureDao
+				.projectBoundingBox(boundingBox, projection);
+		return queryIdSet(featureBoundingBox);
+	}
+
+	/**
+	 * Query for the union of the distinct feature ids within the bounding
+	 * boxes in the provided projection, such as buffered tiles or the parts of
+	 * a multipart query shape
+	 *
+	 * @param boundingBoxes
+	 *            bounding boxes
+	 * @param projection
+	 *            projection
+	 * @return feature id set
+	 * @since 3.5.1
+	 */
+	public FeatureIdSet queryIdSet(Collection<BoundingBox> boundingBoxes,
+			Projection projection) {
+		FeatureIdSet idSet = new FeatureIdSet();
+		for (BoundingBox boundingBox : boundingBoxes) {
+			idSet = idSet.union(queryIdSet(boundingBox, projection));
+		}
+		return idSet;
+	}
+
+	/**
+	 * Query for the feature rows of the feature id set, fetched in bulk and in
+	 * id order
+	 *
+	 * @param idSet
+	 *            feature id set
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexIdResults query(FeatureIdSet idSet) {
+		return new FeatureIndexIdResults(featureDao, idSet);
+	}
+
+	/**
+	 * Query for the feature rows of the feature id set, fetched in bulk and in
+	 * id order
+	 *
+	 * @param columns
+	 *            columns
+	 * @param idSet
+	 *            feature id set
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexIdResults query(String[] columns, FeatureIdSet idSet) {
+		return new FeatureIndexIdResults(featureDao, columns, idSet);
+	}
+
 	/**
 	 * Query for feature index count within the bounding box in the provided
 	 * projection
@@ -1819,6 +2951,690 @@ public class FeatureIndexManager {
 		return count(featureBoundingBox, where, whereArgs);
 	}
 
+	/**
+	 * Query for features satisfying the spatial predicate against the
+	 * geometry. Index candidates within the geometry envelope are refined with
+	 * exact geometry tests in parallel.
+	 *
+	 * @param geometry
+	 *            query geometry in the feature projection
+	 * @param predicate
+	 *            spatial predicate, applied as feature geometry predicate
+	 *            query geometry
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults query(Geometry geometry,
+			SpatialPredicate predicate) {
+		return query(null, geometry, predicate);
+	}
+
+	/**
+	 * Query for features satisfying the spatial predicate against the
+	 * geometry. Index candidates within the geometry envelope are refined with
+	 * exact geometry tests in parallel.
+	 *
+	 * @param columns
+	 *            columns, null for all
+	 * @param geometry
+	 *            query geometry in the feature projection
+	 * @param predicate
+	 *            spatial predicate, applied as feature geometry predicate
+	 *            query geometry
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults query(String[] columns, Geometry geometry,
+			SpatialPredicate predicate) {
+		FeatureIndexResults results;
+		GeometryEnvelope envelope = geometry == null || geometry.isEmpty()
+				? null
+				: GeometryEnvelopeBuilder.buildEnvelope(geometry);
+		if (envelope == null) {
+			results = new FeatureIndexListResults();
+		} else {
+			if (coordinateStore != null) {
+				coordinateStore.synchronize();
+			}
+			FeatureIndexResults candidates = query(
+					new String[] { featureDao.getIdColumnName() }, envelope);
+			results = new FeatureIndexPredicateResults(featureDao, columns,
+					candidates, geometry, predicate, acquirePredicateExecutor(),
+					predicateThreads,
+					FeatureIndexPredicateResults.DEFAULT_BATCH_SIZE,
+					coordinateStore);
+		}
+		return results;
+	}
+
+	/**
+	 * Query for features satisfying the spatial predicate against the
+	 * geometry in the provided projection
+	 *
+	 * @param geometry
+	 *            query geometry
+	 * @param projection
+	 *            projection of the query geometry
+	 * @param predicate
+	 *            spatial predicate, applied as feature geometry predicate
+	 *            query geometry
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults query(Geometry geometry, Projection projection,
+			SpatialPredicate predicate) {
+		return query(null, geometry, projection, predicate);
+	}
+
+	/**
+	 * Query for features satisfying the spatial predicate against the
+	 * geometry in the provided projection
+	 *
+	 * @param columns
+	 *            columns, null for all
+	 * @param geometry
+	 *            query geometry
+	 * @param projection
+	 *            projection of the query geometry
+	 * @param predicate
+	 *            spatial predicate, applied as feature geometry predicate
+	 *            query geometry
+	 * @return feature index results, close when done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexResults query(String[] columns, Geometry geometry,
+			Projection projection, SpatialPredicate predicate) {
+		Geometry featureGeometry = geometry;
+		Projection featureProjection = featureDao.getProjection();
+		if (geometry != null && projection != null
+				&& !projection.equals(featureProjection)) {
+			ProjectionTransform transform = projection
+					.getTransformation(featureProjection);
+			featureGeometry = transform.transform(geometry);
+		}
+		return query(columns, featureGeometry, predicate);
+	}
+
+	/**
+	 * Count the features satisfying the spatial predicate against the
+	 * geometry
+	 *
+	 * @param geometry
+	 *            query geometry in the feature projection
+	 * @param predicate
+	 *            spatial predicate, applied as feature geometry predicate
+	 *            query geometry
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public long count(Geometry geometry, SpatialPredicate predicate) {
+		FeatureIndexResults results = query(
+				new String[] { featureDao.getIdColumnName() }, geometry,
+				predicate);
+		try {
+			return results.count();
+		} finally {
+			results.close();
+		}
+	}
+
+	/**
+	 * Query for the nearest features to the point, ordered by distance
+	 *
+	 * @param point
+	 *            point in the feature projection
+	 * @param k
+	 *            maximum number of features
+	 * @return nearest feature index results ordered by distance, close when
+	 *         done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexNearestResults queryNearest(Point point, int k) {
+		return queryNearest(null, point, k, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Query for the nearest features to the point within the maximum distance,
+	 * ordered by distance
+	 *
+	 * @param point
+	 *            point in the feature projection
+	 * @param k
+	 *            maximum number of features
+	 * @param maxDistance
+	 *            maximum planar distance in the feature projection units
+	 * @return nearest feature index results ordered by distance, close when
+	 *         done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexNearestResults queryNearest(Point point, int k,
+			double maxDistance) {
+		return queryNearest(null, point, k, maxDistance);
+	}
+
+	/**
+	 * Query for the nearest features to the point within the maximum distance,
+	 * ordered by distance. RTree indexed tables are searched best first over
+	 * the RTree nodes and GeoPackage indexed tables best first over the
+	 * geometry index envelopes. Unindexed tables are scanned once. Distances
+	 * are exact planar distances to the feature geometries.
+	 *
+	 * @param columns
+	 *            columns, null for all
+	 * @param point
+	 *            point in the feature projection
+	 * @param k
+	 *            maximum number of features
+	 * @param maxDistance
+	 *            maximum planar distance in the feature projection units
+	 * @return nearest feature index results ordered by distance, close when
+	 *         done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexNearestResults queryNearest(String[] columns,
+			Point point, int k, double maxDistance) {
+		double x = point.getX();
+		double y = point.getY();
+		List<FeatureDistance> nearest = null;
+		for (FeatureIndexType type : getLocation()) {
+			try {
+				switch (type) {
+				case GEOPACKAGE:
+					nearest = featureTableIndex.queryNearest(x, y, k,
+							maxDistance);
+					break;
+				case RTREE:
+					nearest = rTreeIndexTableDao.queryNearest(x, y, k,
+							maxDistance);
+					break;
+				default:
+					throw new GeoPackageException(
+							"Unsupported feature index type: " + type);
+				}
+				break;
+			} catch (Exception e) {
+				if (continueOnError) {
+					LOGGER.log(Level.SEVERE,
+							"Failed to query nearest from feature index: "
+									+ type,
+							e);
+				} else {
+					throw e;
+				}
+			}
+		}
+		if (nearest == null) {
+			nearest = queryNearestScan(x, y, k, maxDistance);
+		}
+		return new FeatureIndexNearestResults(featureDao, columns, nearest);
+	}
+
+	/**
+	 * Query for the nearest features to the point in the provided projection
+	 * within the maximum distance, ordered by distance
+	 *
+	 * @param columns
+	 *            columns, null for all
+	 * @param point
+	 *            point
+	 * @param projection
+	 *            projection of the point
+	 * @param k
+	 *            maximum number of features
+	 * @param maxDistance
+	 *            maximum planar distance in the feature projection units
+	 * @return nearest feature index results ordered by distance, close when
+	 *         done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexNearestResults queryNearest(String[] columns,
+			Point point, Projection projection, int k, double maxDistance) {
+		Point featurePoint = point;
+		Projection featureProjection = featureDao.getProjection();
+		if (projection != null && !projection.equals(featureProjection)) {
+			ProjectionTransform transform = projection
+					.getTransformation(featureProjection);
+			featurePoint = transform.transform(point);
+		}
+		return queryNearest(columns, featurePoint, k, maxDistance);
+	}
+
+	/**
+	 * Aggregate the feature counts per cell of a grid over the bounding box in
+	 * a single pass over the feature index, without reading feature rows or
+	 * geometries
+	 *
+	 * @param boundingBox
+	 *            grid bounding box in the feature projection
+	 * @param width
+	 *            number of grid columns
+	 * @param height
+	 *            number of grid rows
+	 * @param mode
+	 *            binning mode
+	 * @return density grid
+	 * @since 3.5.1
+	 */
+	public FeatureDensityGrid queryDensity(BoundingBox boundingBox, int width,
+			int height, FeatureDensityMode mode) {
+		return queryDensity(boundingBox, featureDao.getProjection(), width,
+				height, mode);
+	}
+
+	/**
+	 * Aggregate the feature counts per cell of a grid over the bounding box in
+	 * the provided projection in a single pass over the feature index, without
+	 * reading feature rows or geometries
+	 *
+	 * @param boundingBox
+	 *            grid bounding box
+	 * @param projection
+	 *            projection of the grid bounding box
+	 * @param width
+	 *            number of grid columns
+	 * @param height
+	 *            number of grid rows
+	 * @param mode
+	 *            binning mode
+	 * @return density grid
+	 * @since 3.5.1
+	 */
+	public FeatureDensityGrid queryDensity(BoundingBox boundingBox,
+			Projection projection, int width, int height,
+			FeatureDensityMode mode) {
+		FeatureDensityGrid grid = new FeatureDensityGrid(boundingBox,
+				projection, width, height, mode);
+		aggregateDensity(grid);
+		return grid;
+	}
+
+	/**
+	 * Aggregate the feature counts per XYZ tile at the zoom level, covering
+	 * the feature index bounds
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param mode
+	 *            binning mode
+	 * @return tile density grid, null when there are no indexed features
+	 * @since 3.5.1
+	 */
+	public FeatureDensityGrid queryTileDensity(int zoom,
+			FeatureDensityMode mode) {
+		FeatureDensityGrid grid = null;
+		if (count() > 0) {
+			grid = queryTileDensity(zoom, getBoundingBox(),
+					featureDao.getProjection(), mode);
+		}
+		return grid;
+	}
+
+	/**
+	 * Aggregate the feature counts per XYZ tile at the zoom level, covering
+	 * the bounding box
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param boundingBox
+	 *            bounding box
+	 * @param projection
+	 *            projection of the bounding box
+	 * @param mode
+	 *            binning mode
+	 * @return tile density grid
+	 * @since 3.5.1
+	 */
+	public FeatureDensityGrid queryTileDensity(int zoom,
+			BoundingBox boundingBox, Projection projection,
+			FeatureDensityMode mode) {
+		FeatureDensityGrid grid = createTileDensityGrid(zoom, boundingBox,
+				projection, mode);
+		aggregateDensity(grid);
+		return grid;
+	}
+
+	/**
+	 * Aggregate the feature counts per XYZ tile for each zoom level in the
+	 * range, covering the feature index bounds, in a single pass over the
+	 * feature index
+	 *
+	 * @param minZoom
+	 *            min zoom level
+	 * @param maxZoom
+	 *            max zoom level
+	 * @param mode
+	 *            binning mode
+	 * @return tile density grids ordered by zoom level, empty when there are
+	 *         no indexed features
+	 * @since 3.5.1
+	 */
+	public List<FeatureDensityGrid> queryTileDensity(int minZoom, int maxZoom,
+			FeatureDensityMode mode) {
+		List<FeatureDensityGrid> grids = new ArrayList<>();
+		if (count() > 0) {
+			BoundingBox boundingBox = getBoundingBox();
+			for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+				grids.add(createTileDensityGrid(zoom, boundingBox,
+						featureDao.getProjection(), mode));
+			}
+			if (!grids.isEmpty()) {
+				aggregateDensity(grids);
+			}
+		}
+		return grids;
+	}
+
+	/**
+	 * Create an empty XYZ tile density grid at the zoom level covering the
+	 * bounding box
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param boundingBox
+	 *            bounding box
+	 * @param projection
+	 *            projection of the bounding box
+	 * @param mode
+	 *            binning mode
+	 * @return tile density grid
+	 */
+	private FeatureDensityGrid createTileDensityGrid(int zoom,
+			BoundingBox boundingBox, Projection projection,
+			FeatureDensityMode mode) {
+		Projection webMercator = ProjectionFactory
+				.getProjection(ProjectionConstants.EPSG_WEB_MERCATOR);
+		BoundingBox wgs84BoundingBox = boundingBox.transform(projection
+				.getTransformation(ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM));
+		wgs84BoundingBox = TileBoundingBoxUtils
+				.boundWgs84BoundingBoxWithWebMercatorLimits(wgs84BoundingBox);
+		BoundingBox webMercatorBoundingBox = wgs84BoundingBox
+				.transform(ProjectionFactory
+						.getProjection(
+								ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM)
+						.getTransformation(webMercator));
+		TileGrid tileGrid = TileBoundingBoxUtils
+				.getTileGrid(webMercatorBoundingBox, zoom);
+		BoundingBox tileGridBoundingBox = TileBoundingBoxUtils
+				.getWebMercatorBoundingBox(tileGrid, zoom);
+		return new FeatureDensityGrid(tileGridBoundingBox, webMercator,
+				tileGrid, zoom, mode);
+	}
+
+	/**
+	 * Aggregate the feature index envelopes into the density grid
+	 *
+	 * @param grid
+	 *            density grid
+	 */
+	private void aggregateDensity(FeatureDensityGrid grid) {
+		List<FeatureDensityGrid> grids = new ArrayList<>();
+		grids.add(grid);
+		aggregateDensity(grids);
+	}
+
+	/**
+	 * Aggregate the feature index envelopes into the density grids in a
+	 * single pass
+	 *
+	 * @param grids
+	 *            density grids sharing a projection and mode
+	 */
+	private void aggregateDensity(List<FeatureDensityGrid> grids) {
+		FeatureDensityAggregator aggregator = new FeatureDensityAggregator(
+				featureDao, grids);
+		boolean success = false;
+		for (FeatureIndexType type : getLocation()) {
+			try {
+				switch (type) {
+				case GEOPACKAGE:
+					aggregator.aggregate(GeometryIndex.TABLE_NAME,
+							GeometryIndex.COLUMN_MIN_X,
+							GeometryIndex.COLUMN_MAX_X,
+							GeometryIndex.COLUMN_MIN_Y,
+							GeometryIndex.COLUMN_MAX_Y,
+							GeometryIndex.COLUMN_TABLE_NAME + " = ?",
+							new Object[] { featureDao.getTableName() });
+					break;
+				case RTREE:
+					aggregator.aggregate(rTreeIndexTableDao.getTableName(),
+							RTreeIndexExtension.COLUMN_MIN_X,
+							RTreeIndexExtension.COLUMN_MAX_X,
+							RTreeIndexExtension.COLUMN_MIN_Y,
+							RTreeIndexExtension.COLUMN_MAX_Y, null, null);
+					break;
+				default:
+					throw new GeoPackageException(
+							"Unsupported feature index type: " + type);
+				}
+				success = true;
+				break;
+			} catch (Exception e) {
+				for (FeatureDensityGrid grid : grids) {
+					grid.clear();
+				}
+				if (continueOnError) {
+					LOGGER.log(Level.SEVERE,
+							"Failed to aggregate density from feature index: "
+									+ type,
+							e);
+				} else {
+					throw e;
+				}
+			}
+		}
+		if (!success) {
+			aggregator.aggregateGeometries();
+		}
+	}
+
+	/**
+	 * Build an in memory point cluster hierarchy for the zoom level range
+	 * with {@link FeaturePointClusters#DEFAULT_CELLS_PER_TILE} cells per tile
+	 * side
+	 *
+	 * @param minZoom
+	 *            min zoom level
+	 * @param maxZoom
+	 *            max zoom level
+	 * @return point clusters
+	 * @since 3.5.1
+	 */
+	public FeaturePointClusters queryPointClusters(int minZoom, int maxZoom) {
+		return queryPointClusters(minZoom, maxZoom,
+				FeaturePointClusters.DEFAULT_CELLS_PER_TILE);
+	}
+
+	/**
+	 * Build an in memory point cluster hierarchy for the zoom level range in
+	 * a single pass over the feature index, clustering the point envelope
+	 * centers without reading feature rows or geometries. The feature table
+	 * geometry type must be a point.
+	 *
+	 * @param minZoom
+	 *            min zoom level
+	 * @param maxZoom
+	 *            max zoom level
+	 * @param cellsPerTile
+	 *            number of cluster cells per tile side, a power of two
+	 * @return point clusters
+	 * @since 3.5.1
+	 */
+	public FeaturePointClusters queryPointClusters(int minZoom, int maxZoom,
+			int cellsPerTile) {
+		if (featureDao.getGeometryType() != GeometryType.POINT) {
+			throw new GeoPackageException(
+					"Point clusters require a point geometry type. Table: "
+							+ featureDao.getTableName() + ", Type: "
+							+ featureDao.getGeometryType());
+		}
+		FeaturePointClusters clusters = new FeaturePointClusters(minZoom,
+				maxZoom, cellsPerTile);
+		FeaturePointClusterBuilder builder = new FeaturePointClusterBuilder(
+				featureDao, clusters);
+		boolean success = false;
+		for (FeatureIndexType type : getLocation()) {
+			try {
+				switch (type) {
+				case GEOPACKAGE:
+					builder.build(GeometryIndex.TABLE_NAME,
+							GeometryIndex.COLUMN_GEOM_ID,
+							GeometryIndex.COLUMN_MIN_X,
+							GeometryIndex.COLUMN_MAX_X,
+							GeometryIndex.COLUMN_MIN_Y,
+							GeometryIndex.COLUMN_MAX_Y,
+							GeometryIndex.COLUMN_TABLE_NAME + " = ?",
+							new Object[] { featureDao.getTableName() });
+					break;
+				case RTREE:
+					builder.build(rTreeIndexTableDao.getTableName(),
+							RTreeIndexExtension.COLUMN_ID,
+							RTreeIndexExtension.COLUMN_MIN_X,
+							RTreeIndexExtension.COLUMN_MAX_X,
+							RTreeIndexExtension.COLUMN_MIN_Y,
+							RTreeIndexExtension.COLUMN_MAX_Y, null, null);
+					break;
+				default:
+					throw new GeoPackageException(
+							"Unsupported feature index type: " + type);
+				}
+				success = true;
+				break;
+			} catch (Exception e) {
+				clusters.clear();
+				if (continueOnError) {
+					LOGGER.log(Level.SEVERE,
+							"Failed to build point clusters from feature index: "
+									+ type,
+							e);
+				} else {
+					throw e;
+				}
+			}
+		}
+		if (!success) {
+			builder.buildGeometries();
+		}
+		return clusters;
+	}
+
+	/**
+	 * Spatial join the features of this table (left) to the features of
+	 * another feature table in the same GeoPackage (right), probing the right
+	 * table index for each left feature
+	 *
+	 * @param right
+	 *            right feature index manager
+	 * @param predicate
+	 *            spatial predicate, applied as left geometry predicate right
+	 *            geometry
+	 * @return join results streaming (left id, right id) pairs, close when
+	 *         done
+	 * @since 3.5.1
+	 */
+	public FeatureIndexJoinResults join(FeatureIndexManager right,
+			SpatialPredicate predicate) {
+		FeatureIndexJoin join = new FeatureIndexJoin(this, right);
+		join.setThreads(predicateThreads);
+		return join.join(predicate);
+	}
+
+	/**
+	 * Regenerate the generalized geometries of an indexed feature row
+	 *
+	 * @param row
+	 *            indexed feature row
+	 */
+	private void updateGeneralized(FeatureRow row) {
+		if (hasGeneralized()) {
+			generalized.generalize(row);
+		}
+	}
+
+	/**
+	 * Delete the generalized geometries of a deleted feature
+	 *
+	 * @param geomId
+	 *            geometry id
+	 */
+	private void deleteGeneralized(long geomId) {
+		if (hasGeneralized()) {
+			generalized.delete(geomId);
+		}
+	}
+
+	/**
+	 * Determine if the feature table has generalized geometries, checked once
+	 * until built or accessed through the manager
+	 *
+	 * @return true if has generalized geometries
+	 */
+	private boolean hasGeneralized() {
+		if (generalizedPresent == null) {
+			generalizedPresent = generalized.has();
+		}
+		return generalizedPresent;
+	}
+
+	/**
+	 * Query for the nearest features of an unindexed table in a single scan,
+	 * keeping the k nearest features
+	 *
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @param k
+	 *            maximum number of features
+	 * @param maxDistance
+	 *            maximum distance
+	 * @return nearest features ordered by distance
+	 */
+	private List<FeatureDistance> queryNearestScan(double x, double y, int k,
+			double maxDistance) {
+
+		List<FeatureDistance> nearest = new ArrayList<>();
+		if (k <= 0) {
+			return nearest;
+		}
+
+		// Farthest of the kept features first
+		PriorityQueue<FeatureDistance> kept = new PriorityQueue<>(k,
+				Collections.<FeatureDistance> reverseOrder());
+
+		FeatureResultSet resultSet = featureDao.query(
+				new String[] { featureDao.getIdColumnName(),
+						featureDao.getGeometryColumnName() },
+				null, null);
+		try {
+			while (resultSet.moveToNext()) {
+				FeatureRow row = resultSet.getRow();
+				GeoPackageGeometryData geometryData = row.getGeometry();
+				if (geometryData == null) {
+					continue;
+				}
+				Geometry geometry = geometryData.getGeometry();
+				if (geometry == null) {
+					continue;
+				}
+				double distance = GeometryPredicates.distance(geometry, x, y);
+				if (distance <= maxDistance && (kept.size() < k
+						|| distance < kept.peek().getDistance())) {
+					kept.add(new FeatureDistance(row.getId(), distance));
+					if (kept.size() > k) {
+						kept.poll();
+					}
+				}
+			}
+		} finally {
+			resultSet.close();
+		}
+
+		nearest.addAll(kept);
+		Collections.sort(nearest);
+
+		return nearest;
+	}
+
 	/**
 	 * Get a feature index location to iterate over indexed types
 	 *
@@ -0,0 +1,161 @@
+package mil.nga.geopackage.features.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+import mil.nga.geopackage.features.user.FeatureRow;
+
+/**
+ * Feature Index Results for a nearest neighbor query. Feature rows are
+ * streamed in order of increasing distance from the query location.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureIndexNearestResults implements FeatureIndexResults {
+
+	/**
+	 * Feature DAO
+	 */
+	private final FeatureDao featureDao;
+
+	/**
+	 * Columns, null for all
+	 */
+	private final String[] columns;
+
+	/**
+	 * Nearest features ordered by distance
+	 */
+	private final List<FeatureDistance> nearest;
+
+	/**
+	 * Constructor
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param columns
+	 *            columns, null for all
+	 * @param nearest
+	 *            nearest features ordered by distance
+	 */
+	public FeatureIndexNearestResults(FeatureDao featureDao, String[] columns,
+			List<FeatureDistance> nearest) {
+		this.featureDao = featureDao;
+		this.columns = columns;
+		this.nearest = Collections.unmodifiableList(nearest);
+	}
+
+	/**
+	 * Get the nearest feature ids and distances ordered by distance
+	 *
+	 * @return nearest features
+	 */
+	public List<FeatureDistance> getNearest() {
+		return nearest;
+	}
+
+	/**
+	 * Get the distance of the nearest feature at the index, matching the
+	 * iteration order
+	 *
+	 * @param index
+	 *            index
+	 * @return distance in the feature projection units
+	 */
+	public double getDistance(int index) {
+		return nearest.get(index).getDistance();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<FeatureRow> iterator() {
+		final Iterator<FeatureDistance> distances = nearest.iterator();
+		return new Iterator<FeatureRow>() {
+
+			private FeatureRow row = null;
+
+			@Override
+			public boolean hasNext() {
+				while (row == null && distances.hasNext()) {
+					row = queryRow(distances.next().getId());
+				}
+				return row != null;
+			}
+
+			@Override
+			public FeatureRow next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				FeatureRow next = row;
+				row = null;
+				return next;
+			}
+
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long count() {
+		return nearest.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterable<Long> ids() {
+		List<Long> ids = new ArrayList<>(nearest.size());
+		for (FeatureDistance featureDistance : nearest) {
+			ids.add(featureDistance.getId());
+		}
+		return ids;
+	}
+
+	/**
+	 * Query for the feature row by id
+	 *
+	 * @param id
+	 *            feature id
+	 * @return feature row or null when no longer exists
+	 */
+	private FeatureRow queryRow(long id) {
+		FeatureRow row = null;
+		String where = CoreSQLUtils.quoteWrap(featureDao.getIdColumnName())
+				+ " = " + id;
+		FeatureResultSet resultSet;
+		if (columns != null) {
+			resultSet = featureDao.query(columns, where, null);
+		} else {
+			resultSet = featureDao.query(where, null);
+		}
+		try {
+			if (resultSet.moveToNext()) {
+				row = resultSet.getRow();
+			}
+		} finally {
+			resultSet.close();
+		}
+		return row;
+	}
+
+}
@@ -0,0 +1,89 @@
+package mil.nga.geopackage.features.index;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Refine executor shared by the spatial predicate results of a feature index
+ * manager, counting the open results using it. A retired executor created by
+ * the manager is shut down once the last open results using it are closed.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+class FeatureIndexPredicateExecutor {
+
+	/**
+	 * Refine executor
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * True when created by the manager and shut down when retired
+	 */
+	private final boolean owned;
+
+	/**
+	 * Number of open results using the executor
+	 */
+	private int open = 0;
+
+	/**
+	 * True once retired by the manager
+	 */
+	private boolean retired = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param executor
+	 *            refine executor
+	 * @param owned
+	 *            true to shut down the executor once retired and unused
+	 */
+	FeatureIndexPredicateExecutor(ExecutorService executor, boolean owned) {
+		this.executor = executor;
+		this.owned = owned;
+	}
+
+	/**
+	 * Get the refine executor
+	 *
+	 * @return refine executor
+	 */
+	ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Acquire the executor for opened results, released when closed
+	 */
+	synchronized void acquire() {
+		open++;
+	}
+
+	/**
+	 * Release the executor of closed results
+	 */
+	synchronized void release() {
+		open--;
+		shutdownIfUnused();
+	}
+
+	/**
+	 * Retire the executor from new results, shutting it down once unused
+	 */
+	synchronized void retire() {
+		retired = true;
+		shutdownIfUnused();
+	}
+
+	/**
+	 * Shut down a retired owned executor without open results
+	 */
+	private void shutdownIfUnused() {
+		if (retired && open <= 0 && owned) {
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,828 @@
+package mil.nga.geopackage.features.index;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.features.user.FeatureCoordinateStore;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeoPackageGeometryHeader;
+import mil.nga.geopackage.geom.GeometryPredicates;
+import mil.nga.geopackage.geom.PackedGeometry;
+import mil.nga.geopackage.geom.SpatialPredicate;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryEnvelope;
+
+/**
+ * Feature Index Results refined by an exact spatial predicate. Candidate
+ * feature ids from an index query are read in batches, the candidate geometry
+ * bytes are tested in a parallel refine stage (rejecting by the geometry
+ * header envelope before decoding, and accepting without decoding when the
+ * envelope lies inside the prepared polygon interior), and only matching feature rows are
+ * queried. When a {@link FeatureCoordinateStore} is provided, candidates are
+ * tested against the stored packed coordinates instead of decoding the
+ * geometry bytes. Results are streamed in batch order.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureIndexPredicateResults implements FeatureIndexResults {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(FeatureIndexPredicateResults.class.getName());
+
+	/**
+	 * Default number of candidate features per refine batch
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	/**
+	 * Feature DAO
+	 */
+	private final FeatureDao featureDao;
+
+	/**
+	 * Columns of the returned feature rows
+	 */
+	private final String[] columns;
+
+	/**
+	 * Candidate index results
+	 */
+	private final FeatureIndexResults candidates;
+
+	/**
+	 * Prepared query geometry
+	 */
+	private final GeometryPredicates prepared;
+
+	/**
+	 * Spatial predicate
+	 */
+	private final SpatialPredicate predicate;
+
+	/**
+	 * Packed coordinate store, null when decoding the geometry bytes
+	 */
+	private final FeatureCoordinateStore coordinateStore;
+
+	/**
+	 * Refine executor, null when refining on the calling thread
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * True when the refine executor was created for these results and is shut
+	 * down when closed
+	 */
+	private final boolean ownsExecutor;
+
+	/**
+	 * Shared manager executor released when closed, null when not shared
+	 */
+	private final FeatureIndexPredicateExecutor sharedExecutor;
+
+	/**
+	 * True once closed
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Unfinished refine iterators with tasks in flight, cancelled when closed
+	 */
+	private final Set<RefineIterator> refiners = Collections
+			.newSetFromMap(new ConcurrentHashMap<RefineIterator, Boolean>());
+
+	/**
+	 * Number of refine batches to keep in flight
+	 */
+	private final int window;
+
+	/**
+	 * Number of candidate features per refine batch
+	 */
+	private final int batchSize;
+
+	/**
+	 * Matching feature ids, buffered when counted before iterating
+	 */
+	private List<Long> bufferedIds;
+
+	/**
+	 * Constructor
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param columns
+	 *            columns of the returned feature rows, null for all
+	 * @param candidates
+	 *            candidate index results, only ids are read
+	 * @param geometry
+	 *            query geometry in the feature projection
+	 * @param predicate
+	 *            spatial predicate
+	 * @param threads
+	 *            refine threads, less than 2 to refine on the calling thread
+	 * @param batchSize
+	 *            number of candidate features per refine batch
+	 */
+	public FeatureIndexPredicateResults(FeatureDao featureDao,
+			String[] columns, FeatureIndexResults candidates,
+			Geometry geometry, SpatialPredicate predicate, int threads,
+			int batchSize) {
+		this(featureDao, columns, candidates, geometry, predicate, threads,
+				batchSize, null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param columns
+	 *            columns of the returned feature rows, null for all
+	 * @param candidates
+	 *            candidate index results, only ids are read
+	 * @param geometry
+	 *            query geometry in the feature projection
+	 * @param predicate
+	 *            spatial predicate
+	 * @param threads
+	 *            refine threads, less than 2 to refine on the calling thread
+	 * @param batchSize
+	 *            number of candidate features per refine batch
+	 * @param coordinateStore
+	 *            packed coordinate store of the feature table, null to
+	 *            decode the candidate geometry bytes
+	 * @since 3.5.1
+	 */
+	public FeatureIndexPredicateResults(FeatureDao featureDao,
+			String[] columns, FeatureIndexResults candidates,
+			Geometry geometry, SpatialPredicate predicate, int threads,
+			int batchSize, FeatureCoordinateStore coordinateStore) {
+		this(featureDao, columns, candidates, geometry, predicate,
+				threads > 1 ? createExecutor(threads) : null, threads,
+				batchSize, coordinateStore, true, null);
+	}
+
+	/**
+	 * Constructor refining on a caller supplied executor, which is not shut
+	 * down when the results are closed
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param columns
+	 *            columns of the returned feature rows, null for all
+	 * @param candidates
+	 *            candidate index results, only ids are read
+	 * @param geometry
+	 *            query geometry in the feature projection
+	 * @param predicate
+	 *            spatial predicate
+	 * @param executor
+	 *            refine executor, null to refine on the calling thread
+	 * @param threads
+	 *            refine threads of the executor, sizing the refine batches
+	 *            kept in flight
+	 * @param batchSize
+	 *            number of candidate features per refine batch
+	 * @param coordinateStore
+	 *            packed coordinate store of the feature table, null to
+	 *            decode the candidate geometry bytes
+	 * @since 3.5.1
+	 */
+	public FeatureIndexPredicateResults(FeatureDao featureDao,
+			String[] columns, FeatureIndexResults candidates,
+			Geometry geometry, SpatialPredicate predicate,
+			ExecutorService executor, int threads, int batchSize,
+			FeatureCoordinateStore coordinateStore) {
+		this(featureDao, columns, candidates, geometry, predicate, executor,
+				threads, batchSize, coordinateStore, false, null);
+	}
+
+	/**
+	 * Constructor refining on the acquired shared executor of a feature index
+	 * manager, released when the results are closed
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param columns
+	 *            columns of the returned feature rows, null for all
+	 * @param candidates
+	 *            candidate index results, only ids are read
+	 * @param geometry
+	 *            query geometry in the feature projection
+	 * @param predicate
+	 *            spatial predicate
+	 * @param sharedExecutor
+	 *            acquired shared manager executor, null to refine on the
+	 *            calling thread
+	 * @param threads
+	 *            refine threads of the executor
+	 * @param batchSize
+	 *            number of candidate features per refine batch
+	 * @param coordinateStore
+	 *            packed coordinate store of the feature table, null to
+	 *            decode the candidate geometry bytes
+	 */
+	FeatureIndexPredicateResults(FeatureDao featureDao, String[] columns,
+			FeatureIndexResults candidates, Geometry geometry,
+			SpatialPredicate predicate,
+			FeatureIndexPredicateExecutor sharedExecutor, int threads,
+			int batchSize, FeatureCoordinateStore coordinateStore) {
+		this(featureDao, columns, candidates, geometry, predicate,
+				sharedExecutor != null ? sharedExecutor.getExecutor() : null,
+				threads, batchSize, coordinateStore, false, sharedExecutor);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param columns
+	 *            columns of the returned feature rows, null for all
+	 * @param candidates
+	 *            candidate index results, only ids are read
+	 * @param geometry
+	 *            query geometry in the feature projection
+	 * @param predicate
+	 *            spatial predicate
+	 * @param executor
+	 *            refine executor, null to refine on the calling thread
+	 * @param threads
+	 *            refine threads of the executor
+	 * @param batchSize
+	 *            number of candidate features per refine batch
+	 * @param coordinateStore
+	 *            packed coordinate store of the feature table, null to
+	 *            decode the candidate geometry bytes
+	 * @param ownsExecutor
+	 *            true to shut down the executor when closed
+	 * @param sharedExecutor
+	 *            acquired shared manager executor to release when closed
+	 */
+	private FeatureIndexPredicateResults(FeatureDao featureDao,
+			String[] columns, FeatureIndexResults candidates,
+			Geometry geometry, SpatialPredicate predicate,
+			ExecutorService executor, int threads, int batchSize,
+			FeatureCoordinateStore coordinateStore, boolean ownsExecutor,
+			FeatureIndexPredicateExecutor sharedExecutor) {
+		this.featureDao = featureDao;
+		this.columns = columns;
+		this.candidates = candidates;
+		this.prepared = new GeometryPredicates(geometry);
+		this.predicate = predicate;
+		this.coordinateStore = coordinateStore;
+		this.batchSize = Math.max(1, Math.min(batchSize, 999));
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor && executor != null;
+		this.sharedExecutor = sharedExecutor;
+		if (executor != null) {
+			window = Math.max(1, threads) * 2;
+		} else {
+			window = 1;
+		}
+	}
+
+	/**
+	 * Create a refine executor of daemon threads, shareable across predicate
+	 * results
+	 *
+	 * @param threads
+	 *            refine threads
+	 * @return refine executor
+	 * @since 3.5.1
+	 */
+	public static ExecutorService createExecutor(int threads) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable,
+						"FeatureIndexPredicateResults");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Get the spatial predicate
+	 *
+	 * @return spatial predicate
+	 */
+	public SpatialPredicate getPredicate() {
+		return predicate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<FeatureRow> iterator() {
+		final Iterator<List<Long>> batches = idBatches();
+		return new Iterator<FeatureRow>() {
+
+			private FeatureResultSet resultSet = null;
+
+			private boolean hasRow = false;
+
+			@Override
+			public boolean hasNext() {
+				while (!hasRow) {
+					if (resultSet != null && resultSet.moveToNext()) {
+						hasRow = true;
+					} else {
+						if (resultSet != null) {
+							resultSet.close();
+							resultSet = null;
+						}
+						if (!batches.hasNext()) {
+							break;
+						}
+						resultSet = queryRows(batches.next());
+					}
+				}
+				return hasRow;
+			}
+
+			@Override
+			public FeatureRow next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				hasRow = false;
+				return resultSet.getRow();
+			}
+
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Counting before iterating refines all candidates and buffers the
+	 * matching feature ids
+	 */
+	@Override
+	public long count() {
+		if (bufferedIds == null) {
+			List<Long> ids = new ArrayList<>();
+			Iterator<List<Long>> batches = idBatches();
+			while (batches.hasNext()) {
+				ids.addAll(batches.next());
+			}
+			bufferedIds = ids;
+		}
+		return bufferedIds.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() {
+		candidates.close();
+		if (ownsExecutor) {
+			executor.shutdownNow();
+		} else {
+			for (RefineIterator refiner : refiners) {
+				refiner.cancel();
+			}
+		}
+		refiners.clear();
+		synchronized (this) {
+			if (!closed) {
+				closed = true;
+				if (sharedExecutor != null) {
+					sharedExecutor.release();
+				}
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterable<Long> ids() {
+		return new Iterable<Long>() {
+
+			@Override
+			public Iterator<Long> iterator() {
+				final Iterator<List<Long>> batches = idBatches();
+				return new Iterator<Long>() {
+
+					private Iterator<Long> batch = Collections
+							.<Long> emptyList().iterator();
+
+					@Override
+					public boolean hasNext() {
+						while (!batch.hasNext() && batches.hasNext()) {
+							batch = batches.next().iterator();
+						}
+						return batch.hasNext();
+					}
+
+					@Override
+					public Long next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						return batch.next();
+					}
+
+				};
+			}
+		};
+	}
+
+	/**
+	 * Get an iterator of matching feature id batches
+	 *
+	 * @return matching id batches
+	 */
+	private Iterator<List<Long>> idBatches() {
+		Iterator<List<Long>> batches;
+		if (bufferedIds != null) {
+			List<List<Long>> buffered = new ArrayList<>();
+			for (int i = 0; i < bufferedIds.size(); i += batchSize) {
+				buffered.add(bufferedIds.subList(i,
+						Math.min(bufferedIds.size(), i + batchSize)));
+			}
+			batches = buffered.iterator();
+		} else {
+			RefineIterator refiner = new RefineIterator();
+			if (executor != null && !ownsExecutor) {
+				refiners.add(refiner);
+			}
+			batches = refiner;
+		}
+		return batches;
+	}
+
+	/**
+	 * Query the feature rows for the ids
+	 *
+	 * @param ids
+	 *            feature ids
+	 * @return feature result set
+	 */
+	private FeatureResultSet queryRows(List<Long> ids) {
+		String where = buildIdsWhere(ids);
+		FeatureResultSet resultSet;
+		if (columns != null) {
+			resultSet = featureDao.query(columns, where, null);
+		} else {
+			resultSet = featureDao.query(where, null);
+		}
+		return resultSet;
+	}
+
+	/**
+	 * Build an id in where clause
+	 *
+	 * @param ids
+	 *            feature ids
+	 * @return where clause
+	 */
+	private String buildIdsWhere(List<Long> ids) {
+		StringBuilder where = new StringBuilder();
+		where.append(CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()));
+		where.append(" IN (");
+		for (int i = 0; i < ids.size(); i++) {
+			if (i > 0) {
+				where.append(",");
+			}
+			where.append(ids.get(i));
+		}
+		where.append(")");
+		return where.toString();
+	}
+
+	/**
+	 * Iterator over refined batches of matching feature ids, reading candidate
+	 * batches and keeping a window of refine tasks in flight
+	 */
+	private class RefineIterator implements Iterator<List<Long>> {
+
+		/**
+		 * Candidate ids
+		 */
+		private final Iterator<Long> candidateIds = candidates.ids()
+				.iterator();
+
+		/**
+		 * Refine tasks in flight
+		 */
+		private final Deque<Future<List<Long>>> pending = new ArrayDeque<>();
+
+		/**
+		 * Next non empty matching batch
+		 */
+		private List<Long> next = null;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean hasNext() {
+			while (next == null) {
+				fill();
+				Future<List<Long>> future = pending.poll();
+				if (future == null) {
+					break;
+				}
+				List<Long> batch = get(future);
+				if (!batch.isEmpty()) {
+					next = batch;
+				}
+			}
+			if (next == null) {
+				refiners.remove(this);
+			}
+			return next != null;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public List<Long> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			List<Long> batch = next;
+			next = null;
+			return batch;
+		}
+
+		/**
+		 * Read candidate batches and submit refine tasks up to the window
+		 */
+		private void fill() {
+			while (pending.size() < window && candidateIds.hasNext()) {
+				List<Long> ids = new ArrayList<>(batchSize);
+				while (ids.size() < batchSize && candidateIds.hasNext()) {
+					ids.add(candidateIds.next());
+				}
+				RefineTask task;
+				if (coordinateStore != null) {
+					task = new RefineTask(ids, null,
+							coordinateStore.get(ids));
+				} else {
+					task = new RefineTask(ids, readGeometries(ids), null);
+				}
+				if (executor != null) {
+					pending.add(executor.submit(task));
+				} else {
+					FutureTask<List<Long>> futureTask = new FutureTask<>(
+							task);
+					futureTask.run();
+					pending.add(futureTask);
+				}
+			}
+		}
+
+		/**
+		 * Cancel the refine tasks in flight
+		 */
+		private void cancel() {
+			for (Future<List<Long>> future : pending) {
+				future.cancel(true);
+			}
+			pending.clear();
+			refiners.remove(this);
+		}
+
+		/**
+		 * Get the refine task result
+		 *
+		 * @param future
+		 *            refine task future
+		 * @return matching ids
+		 */
+		private List<Long> get(Future<List<Long>> future) {
+			try {
+				return future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new GeoPackageException(
+						"Interrupted while refining feature predicate results",
+						e);
+			} catch (ExecutionException e) {
+				throw new GeoPackageException(
+						"Failed to refine feature predicate results",
+						e.getCause());
+			}
+		}
+
+	}
+
+	/**
+	 * Read the geometry bytes for the candidate ids
+	 *
+	 * @param ids
+	 *            candidate ids
+	 * @return geometry bytes in id order
+	 */
+	private byte[][] readGeometries(List<Long> ids) {
+		byte[][] geometries = new byte[ids.size()][];
+		Map<Long, Integer> positions = new HashMap<>();
+		for (int i = 0; i < ids.size(); i++) {
+			positions.put(ids.get(i), i);
+		}
+		String sql = "SELECT "
+				+ CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()) + ", "
+				+ CoreSQLUtils.quoteWrap(featureDao.getGeometryColumnName())
+				+ " FROM " + CoreSQLUtils.quoteWrap(featureDao.getTableName())
+				+ " WHERE " + buildIdsWhere(ids);
+		ResultSet resultSet = SQLUtils.query(featureDao.getConnection(), sql,
+				null);
+		try {
+			while (resultSet.next()) {
+				Integer position = positions.get(resultSet.getLong(1));
+				if (position != null) {
+					geometries[position] = resultSet.getBytes(2);
+				}
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to read candidate feature geometries. Table: "
+							+ featureDao.getTableName(),
+					e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql);
+		}
+		return geometries;
+	}
+
+	/**
+	 * Refine task testing candidate geometries against the predicate
+	 */
+	private class RefineTask implements Callable<List<Long>> {
+
+		/**
+		 * Candidate ids
+		 */
+		private final List<Long> ids;
+
+		/**
+		 * Candidate geometry bytes, null when packed
+		 */
+		private final byte[][] geometries;
+
+		/**
+		 * Candidate packed geometries, null when bytes
+		 */
+		private final PackedGeometry[] packed;
+
+		/**
+		 * Constructor
+		 *
+		 * @param ids
+		 *            candidate ids
+		 * @param geometries
+		 *            candidate geometry bytes
+		 * @param packed
+		 *            candidate packed geometries
+		 */
+		RefineTask(List<Long> ids, byte[][] geometries,
+				PackedGeometry[] packed) {
+			this.ids = ids;
+			this.geometries = geometries;
+			this.packed = packed;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public List<Long> call() throws Exception {
+			List<Long> matches = new ArrayList<>();
+			GeometryEnvelope queryEnvelope = prepared.getEnvelope();
+			if (packed != null) {
+				if (queryEnvelope != null) {
+					for (int i = 0; i < ids.size(); i++) {
+						PackedGeometry geometry = packed[i];
+						if (geometry == null || geometry.isEmpty()) {
+							continue;
+						}
+						GeometryEnvelope envelope = geometry.getEnvelope();
+						if (envelopeAccepts(envelope, queryEnvelope)
+								&& (prepared.satisfiedBy(predicate, envelope)
+										|| prepared.test(predicate,
+												geometry))) {
+							matches.add(ids.get(i));
+						}
+					}
+				}
+				return matches;
+			}
+			for (int i = 0; i < ids.size(); i++) {
+				byte[] bytes = geometries[i];
+				if (bytes == null || queryEnvelope == null) {
+					continue;
+				}
+				try {
+					GeometryEnvelope envelope = GeoPackageGeometryHeader
+							.readEnvelope(bytes);
+					if (envelope != null) {
+						if (!envelopeAccepts(envelope, queryEnvelope)) {
+							continue;
+						}
+						if (prepared.satisfiedBy(predicate, envelope)) {
+							matches.add(ids.get(i));
+							continue;
+						}
+					}
+					Geometry geometry = new GeoPackageGeometryData(bytes)
+							.getGeometry();
+					if (geometry != null
+							&& prepared.test(predicate, geometry)) {
+						matches.add(ids.get(i));
+					}
+				} catch (Exception e) {
+					LOGGER.log(Level.WARNING,
+							"Failed to refine feature. Table: "
+									+ featureDao.getTableName() + ", Id: "
+									+ ids.get(i),
+							e);
+				}
+			}
+			return matches;
+		}
+
+	}
+
+	/**
+	 * Check if the feature envelope could satisfy the predicate
+	 *
+	 * @param envelope
+	 *            feature envelope
+	 * @param queryEnvelope
+	 *            query envelope
+	 * @return false if the predicate can not be satisfied
+	 */
+	private boolean envelopeAccepts(GeometryEnvelope envelope,
+			GeometryEnvelope queryEnvelope) {
+		boolean accepts;
+		switch (predicate) {
+		case WITHIN:
+			accepts = contains(queryEnvelope, envelope);
+			break;
+		case CONTAINS:
+			accepts = contains(envelope, queryEnvelope);
+			break;
+		default:
+			accepts = envelope.getMinX() <= queryEnvelope.getMaxX()
+					&& envelope.getMaxX() >= queryEnvelope.getMinX()
+					&& envelope.getMinY() <= queryEnvelope.getMaxY()
+					&& envelope.getMaxY() >= queryEnvelope.getMinY();
+		}
+		return accepts;
+	}
+
+	/**
+	 * Check if envelope a contains envelope b
+	 *
+	 * @param a
+	 *            envelope a
+	 * @param b
+	 *            envelope b
+	 * @return true if contains
+	 */
+	private static boolean contains(GeometryEnvelope a, GeometryEnvelope b) {
+		return a.getMinX() <= b.getMinX() && a.getMaxX() >= b.getMaxX()
+				&& a.getMinY() <= b.getMinY() && a.getMaxY() >= b.getMaxY();
+	}
+
+}
@@ -0,0 +1,83 @@
+package mil.nga.geopackage.features.index;
+
+/**
+ * Pair of joined left and right feature ids from a spatial join
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureJoinPair {
+
+	/**
+	 * Left feature id
+	 */
+	private final long leftId;
+
+	/**
+	 * Right feature id
+	 */
+	private final long rightId;
+
+	/**
+	 * Constructor
+	 *
+	 * @param leftId
+	 *            left feature id
+	 * @param rightId
+	 *            right feature id
+	 */
+	public FeatureJoinPair(long leftId, long rightId) {
+		this.leftId = leftId;
+		this.rightId = rightId;
+	}
+
+	/**
+	 * Get the left feature id
+	 *
+	 * @return left feature id
+	 */
+	public long getLeftId() {
+		return leftId;
+	}
+
+	/**
+	 * Get the right feature id
+	 *
+	 * @return right feature id
+	 */
+	public long getRightId() {
+		return rightId;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return Long.hashCode(leftId) * 31 + Long.hashCode(rightId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof FeatureJoinPair)) {
+			return false;
+		}
+		FeatureJoinPair other = (FeatureJoinPair) obj;
+		return leftId == other.leftId && rightId == other.rightId;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return leftId + ", " + rightId;
+	}
+
+}
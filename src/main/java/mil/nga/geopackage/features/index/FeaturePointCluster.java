@@ -0,0 +1,122 @@
+package mil.nga.geopackage.features.index;
+
+/**
+ * Cluster of feature points within a cell of a zoom level, located at the
+ * mean web mercator position of the clustered points
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeaturePointCluster {
+
+	/**
+	 * Feature id of the first clustered point
+	 */
+	private final long id;
+
+	/**
+	 * Sum of the web mercator x coordinates
+	 */
+	private double sumX;
+
+	/**
+	 * Sum of the web mercator y coordinates
+	 */
+	private double sumY;
+
+	/**
+	 * Number of clustered points
+	 */
+	private long count;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id
+	 *            feature id of the first clustered point
+	 */
+	FeaturePointCluster(long id) {
+		this.id = id;
+	}
+
+	/**
+	 * Get the feature id of the first clustered point, the point feature id
+	 * when the cluster is a single point
+	 *
+	 * @return feature id
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Get the number of clustered points
+	 *
+	 * @return count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Is the cluster a single point
+	 *
+	 * @return true if a single point
+	 */
+	public boolean isSingle() {
+		return count == 1;
+	}
+
+	/**
+	 * Get the mean web mercator x coordinate
+	 *
+	 * @return x
+	 */
+	public double getX() {
+		return sumX / count;
+	}
+
+	/**
+	 * Get the mean web mercator y coordinate
+	 *
+	 * @return y
+	 */
+	public double getY() {
+		return sumY / count;
+	}
+
+	/**
+	 * Add a web mercator point
+	 *
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 */
+	void add(double x, double y) {
+		sumX += x;
+		sumY += y;
+		count++;
+	}
+
+	/**
+	 * Add the points of a child cluster
+	 *
+	 * @param cluster
+	 *            child cluster
+	 */
+	void add(FeaturePointCluster cluster) {
+		sumX += cluster.sumX;
+		sumY += cluster.sumY;
+		count += cluster.count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return id + ": " + count + " (" + getX() + ", " + getY() + ")";
+	}
+
+}
@@ -0,0 +1,162 @@
+package mil.nga.geopackage.features.index;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.geom.GeoPackageGeometryHeader;
+import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.Point;
+import mil.nga.sf.proj.ProjectionConstants;
+import mil.nga.sf.proj.ProjectionTransform;
+
+/**
+ * Builds feature point clusters in a single pass over an index table, using
+ * the point envelope centers without reading feature rows or geometries
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+class FeaturePointClusterBuilder {
+
+	/**
+	 * Feature DAO
+	 */
+	private final FeatureDao featureDao;
+
+	/**
+	 * Point clusters
+	 */
+	private final FeaturePointClusters clusters;
+
+	/**
+	 * Feature to web mercator projection transform
+	 */
+	private final ProjectionTransform transform;
+
+	/**
+	 * Constructor
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param clusters
+	 *            empty point clusters
+	 */
+	FeaturePointClusterBuilder(FeatureDao featureDao,
+			FeaturePointClusters clusters) {
+		this.featureDao = featureDao;
+		this.clusters = clusters;
+		transform = featureDao.getProjection()
+				.getTransformation(ProjectionConstants.EPSG_WEB_MERCATOR);
+	}
+
+	/**
+	 * Add the point envelopes of an index table
+	 *
+	 * @param table
+	 *            index table name
+	 * @param id
+	 *            feature id column
+	 * @param minX
+	 *            min x column
+	 * @param maxX
+	 *            max x column
+	 * @param minY
+	 *            min y column
+	 * @param maxY
+	 *            max y column
+	 * @param where
+	 *            index table where clause, null for all rows
+	 * @param whereArgs
+	 *            where arguments
+	 */
+	void build(String table, String id, String minX, String maxX, String minY,
+			String maxY, String where, Object[] whereArgs) {
+
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT ").append(id).append(", (").append(minX)
+				.append(" + ").append(maxX).append(") / 2.0, (").append(minY)
+				.append(" + ").append(maxY).append(") / 2.0");
+		sql.append(" FROM ").append(CoreSQLUtils.quoteWrap(table));
+		if (where != null) {
+			sql.append(" WHERE ").append(where);
+		}
+
+		String query = sql.toString();
+		PreparedStatement statement = null;
+		try {
+			statement = featureDao.getConnection().prepareStatement(query);
+			SQLUtils.setArguments(statement, whereArgs);
+			ResultSet resultSet = statement.executeQuery();
+			try {
+				while (resultSet.next()) {
+					add(resultSet.getLong(1), resultSet.getDouble(2),
+							resultSet.getDouble(3));
+				}
+			} finally {
+				resultSet.close();
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to build feature point clusters. Table: " + table,
+					e);
+		} finally {
+			SQLUtils.closeStatement(statement, query);
+		}
+
+		clusters.merge();
+	}
+
+	/**
+	 * Add the points read from the feature geometry headers, used when the
+	 * feature table is not indexed
+	 */
+	void buildGeometries() {
+		String sql = "SELECT "
+				+ CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()) + ", "
+				+ CoreSQLUtils.quoteWrap(featureDao.getGeometryColumnName())
+				+ " FROM " + CoreSQLUtils.quoteWrap(featureDao.getTableName());
+		ResultSet resultSet = SQLUtils.query(featureDao.getConnection(), sql,
+				null);
+		try {
+			while (resultSet.next()) {
+				GeometryEnvelope envelope = GeoPackageGeometryHeader
+						.getEnvelope(resultSet.getBytes(2));
+				if (envelope != null) {
+					add(resultSet.getLong(1),
+							(envelope.getMinX() + envelope.getMaxX()) / 2.0,
+							(envelope.getMinY() + envelope.getMaxY()) / 2.0);
+				}
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to build feature point clusters. Table: "
+							+ featureDao.getTableName(),
+					e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql);
+		}
+
+		clusters.merge();
+	}
+
+	/**
+	 * Add a feature projection point
+	 *
+	 * @param id
+	 *            feature id
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 */
+	private void add(long id, double x, double y) {
+		Point point = transform.transform(new Point(x, y));
+		clusters.add(id, point.getX(), point.getY());
+	}
+
+}
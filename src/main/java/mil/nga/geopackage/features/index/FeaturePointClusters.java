@@ -0,0 +1,336 @@
+package mil.nga.geopackage.features.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.sf.proj.ProjectionConstants;
+
+/**
+ * In memory hierarchy of feature point clusters for a range of XYZ zoom
+ * levels. Each zoom level divides every tile into a fixed number of cells per
+ * side and clusters the points within each cell, so the clusters drawn per
+ * tile are bounded regardless of the number of points. The max zoom level
+ * clusters are built from the points and each lower zoom level is merged from
+ * the level above it.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeaturePointClusters {
+
+	/**
+	 * Default number of cluster cells per tile side
+	 */
+	public static final int DEFAULT_CELLS_PER_TILE = 4;
+
+	/**
+	 * Min zoom level
+	 */
+	private final int minZoom;
+
+	/**
+	 * Max zoom level
+	 */
+	private final int maxZoom;
+
+	/**
+	 * Number of cluster cells per tile side
+	 */
+	private final int cellsPerTile;
+
+	/**
+	 * Clusters by cell key for each zoom level, indexed from the min zoom
+	 */
+	private final List<Map<Long, FeaturePointCluster>> zoomClusters;
+
+	/**
+	 * Number of clustered points
+	 */
+	private long count = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param minZoom
+	 *            min zoom level
+	 * @param maxZoom
+	 *            max zoom level
+	 * @param cellsPerTile
+	 *            number of cluster cells per tile side, a power of two
+	 */
+	public FeaturePointClusters(int minZoom, int maxZoom, int cellsPerTile) {
+		if (minZoom < 0 || maxZoom < minZoom) {
+			throw new GeoPackageException("Invalid zoom range. Min: "
+					+ minZoom + ", Max: " + maxZoom);
+		}
+		if (cellsPerTile < 1 || Integer.bitCount(cellsPerTile) != 1) {
+			throw new GeoPackageException(
+					"Cells per tile must be a power of two: " + cellsPerTile);
+		}
+		if (maxZoom + Integer.numberOfTrailingZeros(cellsPerTile) > 31) {
+			throw new GeoPackageException("Max zoom level " + maxZoom
+					+ " with " + cellsPerTile
+					+ " cells per tile exceeds the supported cells");
+		}
+		this.minZoom = minZoom;
+		this.maxZoom = maxZoom;
+		this.cellsPerTile = cellsPerTile;
+		zoomClusters = new ArrayList<>();
+		for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+			zoomClusters.add(new HashMap<Long, FeaturePointCluster>());
+		}
+	}
+
+	/**
+	 * Get the min zoom level
+	 *
+	 * @return min zoom level
+	 */
+	public int getMinZoom() {
+		return minZoom;
+	}
+
+	/**
+	 * Get the max zoom level
+	 *
+	 * @return max zoom level
+	 */
+	public int getMaxZoom() {
+		return maxZoom;
+	}
+
+	/**
+	 * Get the number of cluster cells per tile side
+	 *
+	 * @return cells per tile
+	 */
+	public int getCellsPerTile() {
+		return cellsPerTile;
+	}
+
+	/**
+	 * Get the number of clustered points
+	 *
+	 * @return count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Determine if the zoom level is clustered
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @return true if clustered
+	 */
+	public boolean isClustered(int zoom) {
+		return zoom >= minZoom && zoom <= maxZoom;
+	}
+
+	/**
+	 * Get the number of clusters at the zoom level
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @return cluster count
+	 */
+	public int getClusterCount(int zoom) {
+		return getZoomClusters(zoom).size();
+	}
+
+	/**
+	 * Get the clusters at the zoom level located within the web mercator
+	 * bounding box
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param webMercatorBoundingBox
+	 *            web mercator bounding box
+	 * @return clusters
+	 */
+	public List<FeaturePointCluster> getClusters(int zoom,
+			BoundingBox webMercatorBoundingBox) {
+
+		Map<Long, FeaturePointCluster> clusters = getZoomClusters(zoom);
+
+		long minColumn = getColumn(zoom,
+				webMercatorBoundingBox.getMinLongitude());
+		long maxColumn = getColumn(zoom,
+				webMercatorBoundingBox.getMaxLongitude());
+		long minRow = getRow(zoom, webMercatorBoundingBox.getMaxLatitude());
+		long maxRow = getRow(zoom, webMercatorBoundingBox.getMinLatitude());
+
+		List<FeaturePointCluster> results = new ArrayList<>();
+		for (long column = minColumn; column <= maxColumn; column++) {
+			for (long row = minRow; row <= maxRow; row++) {
+				FeaturePointCluster cluster = clusters.get(key(column, row));
+				if (cluster != null) {
+					double x = cluster.getX();
+					double y = cluster.getY();
+					if (x >= webMercatorBoundingBox.getMinLongitude()
+							&& x <= webMercatorBoundingBox.getMaxLongitude()
+							&& y >= webMercatorBoundingBox.getMinLatitude()
+							&& y <= webMercatorBoundingBox
+									.getMaxLatitude()) {
+						results.add(cluster);
+					}
+				}
+			}
+		}
+
+		return results;
+	}
+
+	/**
+	 * Add a web mercator point to the max zoom level clusters, bounded
+	 * within the web mercator limits. Call
+	 * {@link #merge()} after adding all points.
+	 *
+	 * @param id
+	 *            feature id
+	 * @param x
+	 *            web mercator x
+	 * @param y
+	 *            web mercator y
+	 */
+	void add(long id, double x, double y) {
+		x = bound(x);
+		y = bound(y);
+		Map<Long, FeaturePointCluster> clusters = getZoomClusters(maxZoom);
+		long key = key(getColumn(maxZoom, x), getRow(maxZoom, y));
+		FeaturePointCluster cluster = clusters.get(key);
+		if (cluster == null) {
+			cluster = new FeaturePointCluster(id);
+			clusters.put(key, cluster);
+		}
+		cluster.add(x, y);
+		count++;
+	}
+
+	/**
+	 * Clear all clusters
+	 */
+	void clear() {
+		for (Map<Long, FeaturePointCluster> clusters : zoomClusters) {
+			clusters.clear();
+		}
+		count = 0;
+	}
+
+	/**
+	 * Merge the max zoom level clusters into each lower zoom level
+	 */
+	void merge() {
+		for (int zoom = maxZoom - 1; zoom >= minZoom; zoom--) {
+			Map<Long, FeaturePointCluster> clusters = getZoomClusters(zoom);
+			clusters.clear();
+			for (Map.Entry<Long, FeaturePointCluster> child : getZoomClusters(
+					zoom + 1).entrySet()) {
+				long childKey = child.getKey();
+				long key = key((childKey >>> 32) >> 1,
+						(childKey & 0xFFFFFFFFL) >> 1);
+				FeaturePointCluster cluster = clusters.get(key);
+				if (cluster == null) {
+					cluster = new FeaturePointCluster(child.getValue().getId());
+					clusters.put(key, cluster);
+				}
+				cluster.add(child.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Get the clusters of a zoom level
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @return clusters by cell key
+	 */
+	private Map<Long, FeaturePointCluster> getZoomClusters(int zoom) {
+		if (!isClustered(zoom)) {
+			throw new GeoPackageException("Zoom level " + zoom
+					+ " is not clustered. Min: " + minZoom + ", Max: "
+					+ maxZoom);
+		}
+		return zoomClusters.get(zoom - minZoom);
+	}
+
+	/**
+	 * Get the number of cells per side at the zoom level
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @return cells
+	 */
+	private long getCells(int zoom) {
+		return (1L << zoom) * cellsPerTile;
+	}
+
+	/**
+	 * Get the cell column of the web mercator x
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param x
+	 *            web mercator x
+	 * @return column
+	 */
+	private long getColumn(int zoom, double x) {
+		long cells = getCells(zoom);
+		long column = (long) Math.floor(
+				(x + ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH)
+						/ (2 * ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH)
+						* cells);
+		return Math.max(0, Math.min(cells - 1, column));
+	}
+
+	/**
+	 * Get the cell row of the web mercator y
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param y
+	 *            web mercator y
+	 * @return row
+	 */
+	private long getRow(int zoom, double y) {
+		long cells = getCells(zoom);
+		long row = (long) Math.floor(
+				(ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH - y)
+						/ (2 * ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH)
+						* cells);
+		return Math.max(0, Math.min(cells - 1, row));
+	}
+
+	/**
+	 * Bound a web mercator coordinate within the web mercator limits
+	 *
+	 * @param value
+	 *            web mercator coordinate
+	 * @return bounded coordinate
+	 */
+	private static double bound(double value) {
+		return Math.max(-ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+				Math.min(ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+						value));
+	}
+
+	/**
+	 * Get the cell key
+	 *
+	 * @param column
+	 *            column
+	 * @param row
+	 *            row
+	 * @return key
+	 */
+	private static long key(long column, long row) {
+		return (column << 32) | row;
+	}
+
+}
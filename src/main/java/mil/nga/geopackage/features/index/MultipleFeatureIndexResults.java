@@ -60,6 +60,22 @@ public class MultipleFeatureIndexResults implements FeatureIndexResults {
 		return count;
 	}
 
+	/**
+	 * Get the distinct feature ids of the combined results, removing ids
+	 * repeated across the results. Iterates the ids of each result, use
+	 * {@link FeatureIndexIdResults} with the id set to fetch the distinct rows.
+	 *
+	 * @return feature id set
+	 * @since 3.5.1
+	 */
+	public FeatureIdSet getIdSet() {
+		List<FeatureIdSet> idSets = new ArrayList<>();
+		for (FeatureIndexResults result : results) {
+			idSets.add(FeatureIdSet.create(result));
+		}
+		return FeatureIdSet.union(idSets);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
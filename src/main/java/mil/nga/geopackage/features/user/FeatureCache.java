@@ -1,12 +1,22 @@
 package mil.nga.geopackage.features.user;
 
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
 
 /**
- * Feature Row Cache for a single feature table
+ * Feature Row Cache for a single feature table. The cache is safe for
+ * concurrent use and may be shared by multiple threads and feature DAOs of the
+ * same table. Feature rows are retained using a segmented LRU policy, bounded
+ * by both the number of feature rows and the total weight (approximate bytes)
+ * of the cached rows, where larger geometries weigh more than small ones. The
+ * size and weight limits apply to the cache as a whole, independent of how
+ * feature ids are striped across the concurrent segments.
  *
  * @author osbornb
  * @since 3.2.0
@@ -19,14 +29,108 @@ public class FeatureCache {
 	public static final int DEFAULT_CACHE_MAX_SIZE = 1000;
 
 	/**
-	 * Feature Row cache
+	 * Default max weight in bytes of feature rows to retain in cache
+	 *
+	 * @since 3.5.1
+	 */
+	public static final long DEFAULT_CACHE_MAX_WEIGHT = 64 * 1024 * 1024;
+
+	/**
+	 * Approximate fixed weight in bytes of a feature row
+	 */
+	private static final int ROW_WEIGHT = 64;
+
+	/**
+	 * Approximate weight in bytes of each non geometry column value
+	 */
+	private static final int COLUMN_WEIGHT = 16;
+
+	/**
+	 * Max number of concurrent cache segments
+	 */
+	private static final int MAX_SEGMENTS = 16;
+
+	/**
+	 * Min max size of a cache segment before the cache is split into multiple
+	 * segments
 	 */
-	private final Map<Long, FeatureRow> cache;
+	private static final int MIN_SEGMENT_SIZE = 128;
+
+	/**
+	 * Percentage of the cache reserved for protected (re-accessed) feature
+	 * rows
+	 */
+	private static final double PROTECTED_PERCENTAGE = .8;
+
+	/**
+	 * Cache segments, selected by feature id
+	 */
+	private final Segment[] segments;
 
 	/**
 	 * Max cache size
 	 */
-	private int maxSize;
+	private volatile int maxSize;
+
+	/**
+	 * Max cache weight
+	 */
+	private volatile long maxWeight;
+
+	/**
+	 * Max protected feature rows
+	 */
+	private volatile int maxProtectedSize;
+
+	/**
+	 * Max protected feature row weight
+	 */
+	private volatile long maxProtectedWeight;
+
+	/**
+	 * Current number of cached feature rows across all segments
+	 */
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * Current weight of cached feature rows across all segments
+	 */
+	private final AtomicLong weight = new AtomicLong();
+
+	/**
+	 * Current number of protected feature rows across all segments
+	 */
+	private final AtomicInteger protectedSize = new AtomicInteger();
+
+	/**
+	 * Current weight of protected feature rows across all segments
+	 */
+	private final AtomicLong protectedWeight = new AtomicLong();
+
+	/**
+	 * Access clock used to find the least recently used segment rows
+	 */
+	private final AtomicLong clock = new AtomicLong();
+
+	/**
+	 * Eviction lock, serializing evictions across segments
+	 */
+	private final Object evictLock = new Object();
+
+	/**
+	 * Cache hit count
+	 */
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Cache miss count
+	 */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Cache eviction count
+	 */
+	private final AtomicLong evictions = new AtomicLong();
 
 	/**
 	 * Constructor, created with cache max size of
@@ -37,21 +141,36 @@ public class FeatureCache {
 	}
 
 	/**
-	 * Constructor
+	 * Constructor, created with cache max weight of
+	 * {@link #DEFAULT_CACHE_MAX_WEIGHT}
 	 *
 	 * @param size
 	 *            max feature rows to retain in the cache
 	 */
 	public FeatureCache(int size) {
-		maxSize = size;
-		cache = new LinkedHashMap<Long, FeatureRow>(maxSize, .75f, true) {
-			private static final long serialVersionUID = 1L;
+		this(size, DEFAULT_CACHE_MAX_WEIGHT);
+	}
 
-			@Override
-			protected boolean removeEldestEntry(Entry<Long, FeatureRow> eldest) {
-				return size() > maxSize;
-			}
-		};
+	/**
+	 * Constructor
+	 *
+	 * @param size
+	 *            max feature rows to retain in the cache
+	 * @param weight
+	 *            max weight in bytes of feature rows to retain in the cache
+	 * @since 3.5.1
+	 */
+	public FeatureCache(int size, long weight) {
+		int segmentCount = 1;
+		while (segmentCount < MAX_SEGMENTS
+				&& size / (segmentCount * 2) >= MIN_SEGMENT_SIZE) {
+			segmentCount *= 2;
+		}
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment();
+		}
+		setLimits(size, weight);
 	}
 
 	/**
@@ -63,13 +182,86 @@ public class FeatureCache {
 		return maxSize;
 	}
 
+	/**
+	 * Get the cache max weight
+	 *
+	 * @return max weight in bytes
+	 * @since 3.5.1
+	 */
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
 	/**
 	 * Get the current cache size, number of feature rows cached
 	 *
 	 * @return cache size
 	 */
 	public int getSize() {
-		return cache.size();
+		return size.get();
+	}
+
+	/**
+	 * Get the current cache weight, approximate bytes of feature rows cached
+	 *
+	 * @return cache weight
+	 * @since 3.5.1
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
+
+	/**
+	 * Get the number of cache hits
+	 *
+	 * @return hit count
+	 * @since 3.5.1
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of cache misses
+	 *
+	 * @return miss count
+	 * @since 3.5.1
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the number of feature rows evicted to stay within the cache limits
+	 *
+	 * @return eviction count
+	 * @since 3.5.1
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * Get the cache hit rate
+	 *
+	 * @return hit rate between 0.0 and 1.0, 0.0 when no requests
+	 * @since 3.5.1
+	 */
+	public double getHitRate() {
+		long hitCount = hits.get();
+		long requests = hitCount + misses.get();
+		return requests == 0 ? 0.0 : (double) hitCount / requests;
+	}
+
+	/**
+	 * Reset the hit, miss, and eviction statistics
+	 *
+	 * @since 3.5.1
+	 */
+	public void resetStats() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
 	}
 
 	/**
@@ -80,7 +272,38 @@ public class FeatureCache {
 	 * @return feature row or null
 	 */
 	public FeatureRow get(long featureId) {
-		return cache.get(featureId);
+		FeatureRow featureRow = getSegment(featureId).get(featureId);
+		if (featureRow != null) {
+			hits.incrementAndGet();
+			if (isProtectedFull()) {
+				evict();
+			}
+		} else {
+			misses.incrementAndGet();
+		}
+		return featureRow;
+	}
+
+	/**
+	 * Get the cached feature row by feature id, or query for and cache the
+	 * feature row when not cached
+	 *
+	 * @param featureDao
+	 *            feature DAO of the cached table
+	 * @param featureId
+	 *            feature row id
+	 * @return feature row or null
+	 * @since 3.5.1
+	 */
+	public FeatureRow getOrQuery(FeatureDao featureDao, long featureId) {
+		FeatureRow featureRow = get(featureId);
+		if (featureRow == null) {
+			featureRow = featureDao.queryForIdRow(featureId);
+			if (featureRow != null) {
+				put(featureRow);
+			}
+		}
+		return featureRow;
 	}
 
 	/**
@@ -91,7 +314,17 @@ public class FeatureCache {
 	 * @return previous cached feature row or null
 	 */
 	public FeatureRow put(FeatureRow featureRow) {
-		return cache.put(featureRow.getId(), featureRow);
+		long rowWeight = weigh(featureRow);
+		long featureId = featureRow.getId();
+		Segment segment = getSegment(featureId);
+		FeatureRow previous = null;
+		if (maxSize > 0 && rowWeight <= maxWeight) {
+			previous = segment.put(featureId, featureRow, rowWeight);
+			evict();
+		} else {
+			previous = segment.remove(featureId);
+		}
+		return previous;
 	}
 
 	/**
@@ -113,14 +346,16 @@ public class FeatureCache {
 	 * @return removed feature row or null
 	 */
 	public FeatureRow remove(long featureId) {
-		return cache.remove(featureId);
+		return getSegment(featureId).remove(featureId);
 	}
 
 	/**
 	 * Clear the cache
 	 */
 	public void clear() {
-		cache.clear();
+		for (Segment segment : segments) {
+			segment.clear();
+		}
 	}
 
 	/**
@@ -130,17 +365,18 @@ public class FeatureCache {
 	 *            max size
 	 */
 	public void resize(int maxSize) {
-		this.maxSize = maxSize;
-		if (cache.size() > maxSize) {
-			int count = 0;
-			Iterator<Long> rowIds = cache.keySet().iterator();
-			while (rowIds.hasNext()) {
-				rowIds.next();
-				if (++count > maxSize) {
-					rowIds.remove();
-				}
-			}
-		}
+		setLimits(maxSize, maxWeight);
+	}
+
+	/**
+	 * Resize the cache weight
+	 *
+	 * @param maxWeight
+	 *            max weight in bytes
+	 * @since 3.5.1
+	 */
+	public void resizeWeight(long maxWeight) {
+		setLimits(maxSize, maxWeight);
 	}
 
 	/**
@@ -154,4 +390,359 @@ public class FeatureCache {
 		resize(maxSize);
 	}
 
+	/**
+	 * Get the approximate weight in bytes of a feature row, based primarily
+	 * on the geometry byte size
+	 *
+	 * @param featureRow
+	 *            feature row
+	 * @return weight in bytes
+	 * @since 3.5.1
+	 */
+	public static long weigh(FeatureRow featureRow) {
+		long weight = ROW_WEIGHT
+				+ (long) COLUMN_WEIGHT * featureRow.columnCount();
+		GeoPackageGeometryData geometryData = featureRow.getGeometry();
+		if (geometryData != null) {
+			byte[] bytes = geometryData.getBytes();
+			if (bytes == null) {
+				try {
+					bytes = geometryData.toBytes();
+				} catch (IOException e) {
+					bytes = null;
+				}
+			}
+			if (bytes != null) {
+				weight += bytes.length;
+			}
+		}
+		return weight;
+	}
+
+	/**
+	 * Set the size and weight limits and evict feature rows over the new
+	 * limits
+	 *
+	 * @param maxSize
+	 *            max size
+	 * @param maxWeight
+	 *            max weight
+	 */
+	private synchronized void setLimits(int maxSize, long maxWeight) {
+		this.maxSize = maxSize;
+		this.maxWeight = maxWeight;
+		maxProtectedSize = (int) (maxSize * PROTECTED_PERCENTAGE);
+		maxProtectedWeight = (long) (maxWeight * PROTECTED_PERCENTAGE);
+		evict();
+	}
+
+	/**
+	 * Check if the protected feature rows are over the protected size or
+	 * weight
+	 *
+	 * @return true if over the protected limits
+	 */
+	private boolean isProtectedFull() {
+		return protectedSize.get() > maxProtectedSize
+				|| protectedWeight.get() > maxProtectedWeight;
+	}
+
+	/**
+	 * Demote the least recently used protected rows across all segments while
+	 * over the protected limits, and then evict the least recently used rows
+	 * while over the cache size or weight. Probation rows are evicted before
+	 * protected rows.
+	 */
+	private void evict() {
+		synchronized (evictLock) {
+			while (isProtectedFull()) {
+				Segment coldest = coldest(true);
+				if (coldest == null) {
+					break;
+				}
+				coldest.demoteEldest();
+			}
+			while (size.get() > maxSize || weight.get() > maxWeight) {
+				boolean fromProtected = false;
+				Segment coldest = coldest(fromProtected);
+				if (coldest == null) {
+					fromProtected = true;
+					coldest = coldest(fromProtected);
+				}
+				if (coldest == null) {
+					break;
+				}
+				coldest.evictEldest(fromProtected);
+			}
+		}
+	}
+
+	/**
+	 * Get the segment with the least recently used probation or protected
+	 * feature row
+	 *
+	 * @param fromProtected
+	 *            true to check protected rows, false for probation rows
+	 * @return coldest segment or null when no rows
+	 */
+	private Segment coldest(boolean fromProtected) {
+		Segment coldest = null;
+		long coldestTick = Long.MAX_VALUE;
+		for (Segment segment : segments) {
+			long tick = segment.eldestTick(fromProtected);
+			if (tick >= 0 && tick < coldestTick) {
+				coldest = segment;
+				coldestTick = tick;
+			}
+		}
+		return coldest;
+	}
+
+	/**
+	 * Get the segment for the feature id
+	 *
+	 * @param featureId
+	 *            feature id
+	 * @return segment
+	 */
+	private Segment getSegment(long featureId) {
+		int hash = (int) (featureId ^ (featureId >>> 32));
+		hash ^= (hash >>> 16);
+		return segments[hash & (segments.length - 1)];
+	}
+
+	/**
+	 * Cached feature row and weight
+	 */
+	private class Entry {
+
+		/**
+		 * Feature row
+		 */
+		private final FeatureRow row;
+
+		/**
+		 * Weight in bytes
+		 */
+		private final long weight;
+
+		/**
+		 * Last access clock tick
+		 */
+		private long tick;
+
+		/**
+		 * Constructor
+		 *
+		 * @param row
+		 *            feature row
+		 * @param weight
+		 *            weight
+		 */
+		Entry(FeatureRow row, long weight) {
+			this.row = row;
+			this.weight = weight;
+			touch();
+		}
+
+		/**
+		 * Update the last access tick
+		 */
+		void touch() {
+			tick = clock.incrementAndGet();
+		}
+
+	}
+
+	/**
+	 * Segmented LRU cache segment. New feature rows enter a probation segment
+	 * and are promoted to a protected segment when accessed again, so one time
+	 * scans do not flush frequently used rows. Segments do not hold their own
+	 * limits, demotions and evictions are driven by the cache wide protected
+	 * and total size and weight.
+	 */
+	private class Segment {
+
+		/**
+		 * Probation feature rows in insertion order
+		 */
+		private final LinkedHashMap<Long, Entry> probation = new LinkedHashMap<>();
+
+		/**
+		 * Protected feature rows in access order
+		 */
+		private final LinkedHashMap<Long, Entry> protect = new LinkedHashMap<>(
+				16, .75f, true);
+
+		/**
+		 * Get the feature row, promoting probation rows to protected
+		 *
+		 * @param featureId
+		 *            feature id
+		 * @return feature row or null
+		 */
+		synchronized FeatureRow get(long featureId) {
+			FeatureRow row = null;
+			Entry entry = protect.get(featureId);
+			if (entry == null) {
+				entry = probation.remove(featureId);
+				if (entry != null) {
+					protect(featureId, entry);
+				}
+			}
+			if (entry != null) {
+				entry.touch();
+				row = entry.row;
+			}
+			return row;
+		}
+
+		/**
+		 * Put the feature row
+		 *
+		 * @param featureId
+		 *            feature id
+		 * @param row
+		 *            feature row
+		 * @param rowWeight
+		 *            feature row weight
+		 * @return previous feature row or null
+		 */
+		synchronized FeatureRow put(long featureId, FeatureRow row,
+				long rowWeight) {
+			FeatureRow previous = remove(featureId);
+			Entry entry = new Entry(row, rowWeight);
+			if (previous != null) {
+				protect(featureId, entry);
+			} else {
+				probation.put(featureId, entry);
+			}
+			size.incrementAndGet();
+			weight.addAndGet(rowWeight);
+			return previous;
+		}
+
+		/**
+		 * Remove the feature row
+		 *
+		 * @param featureId
+		 *            feature id
+		 * @return removed feature row or null
+		 */
+		synchronized FeatureRow remove(long featureId) {
+			FeatureRow row = null;
+			Entry entry = probation.remove(featureId);
+			if (entry != null) {
+				removed(entry, false);
+			} else {
+				entry = protect.remove(featureId);
+				if (entry != null) {
+					removed(entry, true);
+				}
+			}
+			if (entry != null) {
+				row = entry.row;
+			}
+			return row;
+		}
+
+		/**
+		 * Clear the segment
+		 */
+		synchronized void clear() {
+			for (Entry entry : probation.values()) {
+				removed(entry, false);
+			}
+			for (Entry entry : protect.values()) {
+				removed(entry, true);
+			}
+			probation.clear();
+			protect.clear();
+		}
+
+		/**
+		 * Get the last access tick of the least recently used row
+		 *
+		 * @param fromProtected
+		 *            true for protected rows, false for probation rows
+		 * @return tick or -1 when no rows
+		 */
+		synchronized long eldestTick(boolean fromProtected) {
+			long tick = -1;
+			LinkedHashMap<Long, Entry> rows = fromProtected ? protect
+					: probation;
+			if (!rows.isEmpty()) {
+				tick = rows.values().iterator().next().tick;
+			}
+			return tick;
+		}
+
+		/**
+		 * Demote the least recently used protected row to probation
+		 */
+		synchronized void demoteEldest() {
+			Iterator<Map.Entry<Long, Entry>> iterator = protect.entrySet()
+					.iterator();
+			if (iterator.hasNext()) {
+				Map.Entry<Long, Entry> eldest = iterator.next();
+				iterator.remove();
+				Entry entry = eldest.getValue();
+				protectedSize.decrementAndGet();
+				protectedWeight.addAndGet(-entry.weight);
+				entry.touch();
+				probation.put(eldest.getKey(), entry);
+			}
+		}
+
+		/**
+		 * Evict the least recently used probation or protected row
+		 *
+		 * @param fromProtected
+		 *            true to evict a protected row, false for probation
+		 */
+		synchronized void evictEldest(boolean fromProtected) {
+			LinkedHashMap<Long, Entry> from = fromProtected ? protect
+					: probation;
+			Iterator<Entry> iterator = from.values().iterator();
+			if (iterator.hasNext()) {
+				Entry eldest = iterator.next();
+				iterator.remove();
+				removed(eldest, fromProtected);
+				evictions.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Add a protected row
+		 *
+		 * @param featureId
+		 *            feature id
+		 * @param entry
+		 *            entry
+		 */
+		private void protect(long featureId, Entry entry) {
+			protect.put(featureId, entry);
+			protectedSize.incrementAndGet();
+			protectedWeight.addAndGet(entry.weight);
+		}
+
+		/**
+		 * Update the cache size and weight for a removed row
+		 *
+		 * @param entry
+		 *            removed entry
+		 * @param fromProtected
+		 *            true if removed from the protected rows
+		 */
+		private void removed(Entry entry, boolean fromProtected) {
+			size.decrementAndGet();
+			weight.addAndGet(-entry.weight);
+			if (fromProtected) {
+				protectedSize.decrementAndGet();
+				protectedWeight.addAndGet(-entry.weight);
+			}
+		}
+
+	}
+
 }
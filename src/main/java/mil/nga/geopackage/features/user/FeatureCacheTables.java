@@ -1,11 +1,13 @@
 package mil.nga.geopackage.features.user;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Feature Row Cache for multiple feature tables in a single GeoPackage
+ * Feature Row Cache for multiple feature tables in a single GeoPackage. Safe
+ * for concurrent use, a single instance may be shared across threads and
+ * across feature DAOs of the same tables.
  *
  * @author osbornb
  * @since 3.2.0
@@ -15,12 +17,17 @@ public class FeatureCacheTables {
 	/**
 	 * Mapping between feature table name and a feature row cache
 	 */
-	private Map<String, FeatureCache> tableCache = new HashMap<>();
+	private final ConcurrentMap<String, FeatureCache> tableCache = new ConcurrentHashMap<>();
 
 	/**
 	 * Cache size
 	 */
-	private int maxCacheSize;
+	private volatile int maxCacheSize;
+
+	/**
+	 * Cache weight
+	 */
+	private volatile long maxCacheWeight;
 
 	/**
 	 * Constructor, created with cache size of
@@ -37,7 +44,22 @@ public class FeatureCacheTables {
 	 *            max feature rows to retain in each feature table cache
 	 */
 	public FeatureCacheTables(int maxCacheSize) {
+		this(maxCacheSize, FeatureCache.DEFAULT_CACHE_MAX_WEIGHT);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxCacheSize
+	 *            max feature rows to retain in each feature table cache
+	 * @param maxCacheWeight
+	 *            max weight in bytes of feature rows to retain in each
+	 *            feature table cache
+	 * @since 3.5.1
+	 */
+	public FeatureCacheTables(int maxCacheSize, long maxCacheWeight) {
 		this.maxCacheSize = maxCacheSize;
+		this.maxCacheWeight = maxCacheWeight;
 	}
 
 	/**
@@ -59,6 +81,27 @@ public class FeatureCacheTables {
 		this.maxCacheSize = maxCacheSize;
 	}
 
+	/**
+	 * Get the max cache weight used when creating new feature row caches
+	 *
+	 * @return max cache weight in bytes
+	 * @since 3.5.1
+	 */
+	public long getMaxCacheWeight() {
+		return maxCacheWeight;
+	}
+
+	/**
+	 * Set the max cache weight to use when creating new feature row caches
+	 *
+	 * @param maxCacheWeight
+	 *            feature row max cache weight in bytes
+	 * @since 3.5.1
+	 */
+	public void setMaxCacheWeight(long maxCacheWeight) {
+		this.maxCacheWeight = maxCacheWeight;
+	}
+
 	/**
 	 * Get the feature table names with a feature row cache
 	 *
@@ -78,12 +121,28 @@ public class FeatureCacheTables {
 	public FeatureCache getCache(String tableName) {
 		FeatureCache cache = tableCache.get(tableName);
 		if (cache == null) {
-			cache = new FeatureCache(maxCacheSize);
-			tableCache.put(tableName, cache);
+			cache = new FeatureCache(maxCacheSize, maxCacheWeight);
+			FeatureCache existing = tableCache.putIfAbsent(tableName, cache);
+			if (existing != null) {
+				cache = existing;
+			}
 		}
 		return cache;
 	}
 
+	/**
+	 * Get or create a feature row cache for the feature DAO table, shared by
+	 * all feature DAOs of the table
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @return feature row cache
+	 * @since 3.5.1
+	 */
+	public FeatureCache getCache(FeatureDao featureDao) {
+		return getCache(featureDao.getTableName());
+	}
+
 	/**
 	 * Get or create a feature row cache for the feature row
 	 *
@@ -131,6 +190,63 @@ public class FeatureCacheTables {
 		return getCache(tableName).get(featureId);
 	}
 
+	/**
+	 * Get the cached feature row by feature id, or query for and cache the
+	 * feature row when not cached
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param featureId
+	 *            feature row id
+	 * @return feature row or null
+	 * @since 3.5.1
+	 */
+	public FeatureRow getOrQuery(FeatureDao featureDao, long featureId) {
+		return getCache(featureDao).getOrQuery(featureDao, featureId);
+	}
+
+	/**
+	 * Get the total number of cache hits across all feature table caches
+	 *
+	 * @return hit count
+	 * @since 3.5.1
+	 */
+	public long getHitCount() {
+		long count = 0;
+		for (FeatureCache cache : tableCache.values()) {
+			count += cache.getHitCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Get the total number of cache misses across all feature table caches
+	 *
+	 * @return miss count
+	 * @since 3.5.1
+	 */
+	public long getMissCount() {
+		long count = 0;
+		for (FeatureCache cache : tableCache.values()) {
+			count += cache.getMissCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Get the total number of evictions across all feature table caches
+	 *
+	 * @return eviction count
+	 * @since 3.5.1
+	 */
+	public long getEvictionCount() {
+		long count = 0;
+		for (FeatureCache cache : tableCache.values()) {
+			count += cache.getEvictionCount();
+		}
+		return count;
+	}
+
 	/**
 	 * Cache the feature row
 	 *
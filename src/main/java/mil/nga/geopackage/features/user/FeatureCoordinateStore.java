@@ -0,0 +1,671 @@
+package mil.nga.geopackage.features.user;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.PackedGeometry;
+import mil.nga.sf.CompoundCurve;
+import mil.nga.sf.Curve;
+import mil.nga.sf.CurvePolygon;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryCollection;
+import mil.nga.sf.LineString;
+import mil.nga.sf.Point;
+import mil.nga.sf.PolyhedralSurface;
+
+/**
+ * Feature Coordinate Store for read mostly feature tables. Feature geometries
+ * are decoded once into packed x, y coordinates held in off-heap blocks, with
+ * per feature part (point, line and ring) indexes and envelopes, and read as
+ * {@link PackedGeometry} views keyed by feature id. Repeated drawing and
+ * analysis passes read the packed coordinates instead of decoding geometries
+ * into point object graphs.
+ *
+ * Inserts, updates and deletes of the table made through the feature DAO
+ * connection are recorded by temporary triggers, and the changed features are
+ * invalidated by {@link #synchronize()}, then decoded again when next read.
+ * Close the store to drop the temporary triggers. The store is safe for
+ * concurrent use.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureCoordinateStore implements Closeable {
+
+	/**
+	 * Max number of coordinate values (doubles) per off-heap block, larger
+	 * geometries are stored in a block of their own
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * Number of feature ids per query when reading missing features
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+
+	/**
+	 * Min number of coordinate values (doubles) of the first block
+	 */
+	private static final int MIN_BLOCK_SIZE = 1024;
+
+	/**
+	 * Temporary changed ids table and trigger name prefix
+	 */
+	private static final String TEMP_PREFIX = "coordinate_store_";
+
+	/**
+	 * Temporary changed ids table id column
+	 */
+	private static final String COLUMN_ID = "id";
+
+	/**
+	 * Store instance counter, keeping the temporary table and trigger names
+	 * of stores on the same feature table distinct
+	 */
+	private static final AtomicLong INSTANCES = new AtomicLong();
+
+	/**
+	 * Feature DAO
+	 */
+	private final FeatureDao featureDao;
+
+	/**
+	 * Connection
+	 */
+	private final Connection connection;
+
+	/**
+	 * Temporary changed ids table name
+	 */
+	private final String changesTable;
+
+	/**
+	 * Max number of coordinate values per block
+	 */
+	private final int blockSize;
+
+	/**
+	 * Packed geometries by feature id
+	 */
+	private final Map<Long, PackedGeometry> geometries = new HashMap<>();
+
+	/**
+	 * Current coordinate block
+	 */
+	private DoubleBuffer coordinates;
+
+	/**
+	 * Current part index block
+	 */
+	private int[] parts;
+
+	/**
+	 * Number of parts written to the current part index block
+	 */
+	private int partCount;
+
+	/**
+	 * Number of coordinate values (doubles) of the stored features
+	 */
+	private long liveLength = 0;
+
+	/**
+	 * Number of coordinate values (doubles) of invalidated features
+	 */
+	private long deadLength = 0;
+
+	/**
+	 * Off-heap bytes of the allocated coordinate blocks
+	 */
+	private long allocated = 0;
+
+	/**
+	 * True once closed
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Constructor, begins recording the table changes
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 */
+	public FeatureCoordinateStore(FeatureDao featureDao) {
+		this(featureDao, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Constructor, begins recording the table changes
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param blockSize
+	 *            max number of coordinate values (doubles) per off-heap
+	 *            block
+	 */
+	public FeatureCoordinateStore(FeatureDao featureDao, int blockSize) {
+		this.featureDao = featureDao;
+		this.connection = featureDao.getConnection();
+		this.blockSize = Math.max(MIN_BLOCK_SIZE, blockSize);
+		FeatureTable table = featureDao.getTable();
+		changesTable = TEMP_PREFIX + table.getTableName() + "_"
+				+ table.getGeometryColumn().getName() + "_"
+				+ INSTANCES.incrementAndGet();
+		createTracking();
+	}
+
+	/**
+	 * Get the feature DAO
+	 *
+	 * @return feature DAO
+	 */
+	public FeatureDao getFeatureDao() {
+		return featureDao;
+	}
+
+	/**
+	 * Decode all feature geometries of the table into the store, replacing
+	 * any stored features
+	 *
+	 * @return number of stored features
+	 */
+	public synchronized int load() {
+		clear();
+		synchronize();
+		read(null);
+		return geometries.size();
+	}
+
+	/**
+	 * Get the packed geometry of the feature, decoding it when not stored
+	 *
+	 * @param id
+	 *            feature id
+	 * @return packed geometry, null when the feature does not exist
+	 */
+	public synchronized PackedGeometry get(long id) {
+		PackedGeometry geometry = geometries.get(id);
+		if (geometry == null) {
+			read(CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()) + " = "
+					+ id);
+			geometry = geometries.get(id);
+		}
+		return geometry;
+	}
+
+	/**
+	 * Get the packed geometries of the features, decoding those not stored
+	 * in chunked id queries
+	 *
+	 * @param ids
+	 *            feature ids
+	 * @return packed geometries in id order, null when a feature does not
+	 *         exist
+	 */
+	public synchronized PackedGeometry[] get(List<Long> ids) {
+		List<Long> missing = new ArrayList<>();
+		for (Long id : ids) {
+			if (!geometries.containsKey(id)) {
+				missing.add(id);
+			}
+		}
+		for (int i = 0; i < missing.size(); i += DEFAULT_CHUNK_SIZE) {
+			StringBuilder where = new StringBuilder();
+			where.append(CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()))
+					.append(" IN (");
+			int end = Math.min(missing.size(), i + DEFAULT_CHUNK_SIZE);
+			for (int j = i; j < end; j++) {
+				if (j > i) {
+					where.append(",");
+				}
+				where.append(missing.get(j));
+			}
+			where.append(")");
+			read(where.toString());
+		}
+		PackedGeometry[] packed = new PackedGeometry[ids.size()];
+		for (int i = 0; i < packed.length; i++) {
+			packed[i] = geometries.get(ids.get(i));
+		}
+		return packed;
+	}
+
+	/**
+	 * Check if the feature is stored
+	 *
+	 * @param id
+	 *            feature id
+	 * @return true if stored
+	 */
+	public synchronized boolean contains(long id) {
+		return geometries.containsKey(id);
+	}
+
+	/**
+	 * Get the number of stored features
+	 *
+	 * @return feature count
+	 */
+	public synchronized int size() {
+		return geometries.size();
+	}
+
+	/**
+	 * Get the number of stored coordinates
+	 *
+	 * @return coordinate count
+	 */
+	public synchronized long getCoordinateCount() {
+		return liveLength / 2;
+	}
+
+	/**
+	 * Get the off-heap bytes allocated for coordinates
+	 *
+	 * @return allocated bytes
+	 */
+	public synchronized long getAllocatedBytes() {
+		return allocated;
+	}
+
+	/**
+	 * Invalidate the features changed through the feature DAO connection
+	 * since the last synchronize
+	 *
+	 * @return number of invalidated features
+	 */
+	public synchronized int synchronize() {
+		int count = 0;
+		if (!closed) {
+			String changes = "temp." + CoreSQLUtils.quoteWrap(changesTable);
+			String sql = "SELECT " + COLUMN_ID + " FROM " + changes;
+			List<Long> ids = new ArrayList<>();
+			ResultSet resultSet = SQLUtils.query(connection, sql, null);
+			try {
+				while (resultSet.next()) {
+					ids.add(resultSet.getLong(1));
+				}
+			} catch (SQLException e) {
+				throw new GeoPackageException(
+						"Failed to read changed feature ids. Table: "
+								+ featureDao.getTableName(),
+						e);
+			} finally {
+				SQLUtils.closeResultSetStatement(resultSet, sql);
+			}
+			if (!ids.isEmpty()) {
+				SQLUtils.execSQL(connection, "DELETE FROM " + changes);
+				for (long id : ids) {
+					if (invalidate(id)) {
+						count++;
+					}
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Invalidate the stored feature, decoded again when next read
+	 *
+	 * @param id
+	 *            feature id
+	 * @return true if the feature was stored
+	 */
+	public synchronized boolean invalidate(long id) {
+		PackedGeometry geometry = geometries.remove(id);
+		if (geometry != null) {
+			long length = geometry.numCoordinates() * 2L;
+			liveLength -= length;
+			deadLength += length;
+			if (deadLength > liveLength && deadLength >= blockSize) {
+				compact();
+			}
+		}
+		return geometry != null;
+	}
+
+	/**
+	 * Clear all stored features and release the coordinate blocks
+	 */
+	public synchronized void clear() {
+		geometries.clear();
+		coordinates = null;
+		parts = null;
+		partCount = 0;
+		liveLength = 0;
+		deadLength = 0;
+		allocated = 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Clears the store and drops the temporary change triggers
+	 */
+	@Override
+	public synchronized void close() {
+		if (!closed) {
+			closed = true;
+			clear();
+			dropTracking();
+		}
+	}
+
+	/**
+	 * Decode and store the feature geometries matching the where clause
+	 *
+	 * @param where
+	 *            where clause, null for all features
+	 */
+	private void read(String where) {
+		String sql = "SELECT "
+				+ CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()) + ", "
+				+ CoreSQLUtils.quoteWrap(featureDao.getGeometryColumnName())
+				+ " FROM " + CoreSQLUtils.quoteWrap(featureDao.getTableName());
+		if (where != null) {
+			sql += " WHERE " + where;
+		}
+		ResultSet resultSet = SQLUtils.query(connection, sql, null);
+		try {
+			while (resultSet.next()) {
+				long id = resultSet.getLong(1);
+				byte[] bytes = resultSet.getBytes(2);
+				Geometry geometry = null;
+				if (bytes != null) {
+					geometry = new GeoPackageGeometryData(bytes).getGeometry();
+				}
+				put(id, geometry);
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to read feature geometries. Table: "
+							+ featureDao.getTableName(),
+					e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql);
+		}
+	}
+
+	/**
+	 * Pack and store the feature geometry
+	 *
+	 * @param id
+	 *            feature id
+	 * @param geometry
+	 *            geometry, may be null
+	 */
+	private void put(long id, Geometry geometry) {
+
+		PackedGeometry previous = geometries.remove(id);
+		if (previous != null) {
+			liveLength -= previous.numCoordinates() * 2L;
+			deadLength += previous.numCoordinates() * 2L;
+		}
+
+		int[] counts = new int[2];
+		if (geometry != null && !geometry.isEmpty()) {
+			count(geometry, counts);
+		}
+		reserve(counts[0] * 2, counts[1]);
+
+		int partOffset = partCount;
+		if (geometry != null && !geometry.isEmpty()) {
+			add(geometry);
+		}
+
+		geometries.put(id,
+				new PackedGeometry(id,
+						geometry != null ? geometry.getGeometryType() : null,
+						coordinates, parts, partOffset,
+						partCount - partOffset));
+		liveLength += counts[0] * 2L;
+	}
+
+	/**
+	 * Count the coordinates and parts of the geometry
+	 *
+	 * @param geometry
+	 *            geometry
+	 * @param counts
+	 *            coordinate and part counts
+	 */
+	private static void count(Geometry geometry, int[] counts) {
+		if (geometry instanceof Point) {
+			counts[0]++;
+			counts[1]++;
+		} else if (geometry instanceof Curve) {
+			counts[0] += curvePoints((Curve) geometry).size();
+			counts[1]++;
+		} else if (geometry instanceof CurvePolygon) {
+			for (Object ring : ((CurvePolygon<?>) geometry).getRings()) {
+				counts[0] += curvePoints((Curve) ring).size();
+				counts[1]++;
+			}
+		} else if (geometry instanceof PolyhedralSurface) {
+			for (Geometry polygon : ((PolyhedralSurface) geometry)
+					.getPolygons()) {
+				count(polygon, counts);
+			}
+		} else if (geometry instanceof GeometryCollection) {
+			for (Object child : ((GeometryCollection<?>) geometry)
+					.getGeometries()) {
+				count((Geometry) child, counts);
+			}
+		} else if (geometry != null) {
+			throw new GeoPackageException(
+					"Unsupported geometry type: " + geometry.getGeometryType());
+		}
+	}
+
+	/**
+	 * Add the geometry parts to the current blocks
+	 *
+	 * @param geometry
+	 *            geometry
+	 */
+	private void add(Geometry geometry) {
+		if (geometry instanceof Point) {
+			Point point = (Point) geometry;
+			int offset = coordinates.position();
+			coordinates.put(point.getX());
+			coordinates.put(point.getY());
+			addPart(offset, 1, PackedGeometry.PART_POINT);
+		} else if (geometry instanceof Curve) {
+			addPoints(curvePoints((Curve) geometry), PackedGeometry.PART_LINE);
+		} else if (geometry instanceof CurvePolygon) {
+			int type = PackedGeometry.PART_EXTERIOR_RING;
+			for (Object ring : ((CurvePolygon<?>) geometry).getRings()) {
+				addPoints(curvePoints((Curve) ring), type);
+				type = PackedGeometry.PART_INTERIOR_RING;
+			}
+		} else if (geometry instanceof PolyhedralSurface) {
+			for (Geometry polygon : ((PolyhedralSurface) geometry)
+					.getPolygons()) {
+				add(polygon);
+			}
+		} else if (geometry instanceof GeometryCollection) {
+			for (Object child : ((GeometryCollection<?>) geometry)
+					.getGeometries()) {
+				add((Geometry) child);
+			}
+		}
+	}
+
+	/**
+	 * Add the points as a part
+	 *
+	 * @param points
+	 *            points
+	 * @param type
+	 *            part type
+	 */
+	private void addPoints(List<Point> points, int type) {
+		int offset = coordinates.position();
+		for (Point point : points) {
+			coordinates.put(point.getX());
+			coordinates.put(point.getY());
+		}
+		addPart(offset, points.size(), type);
+	}
+
+	/**
+	 * Add a part index
+	 *
+	 * @param offset
+	 *            coordinate block offset
+	 * @param size
+	 *            number of coordinates
+	 * @param type
+	 *            part type
+	 */
+	private void addPart(int offset, int size, int type) {
+		int index = partCount * PackedGeometry.PART_LENGTH;
+		parts[index] = offset;
+		parts[index + 1] = size;
+		parts[index + 2] = type;
+		partCount++;
+	}
+
+	/**
+	 * Get the points of the curve, compound curves are concatenated
+	 *
+	 * @param curve
+	 *            curve
+	 * @return points
+	 */
+	private static List<Point> curvePoints(Curve curve) {
+		List<Point> points;
+		if (curve instanceof LineString) {
+			points = ((LineString) curve).getPoints();
+		} else if (curve instanceof CompoundCurve) {
+			points = new ArrayList<>();
+			for (LineString lineString : ((CompoundCurve) curve)
+					.getLineStrings()) {
+				points.addAll(lineString.getPoints());
+			}
+		} else {
+			throw new GeoPackageException(
+					"Unsupported curve type: " + curve.getGeometryType());
+		}
+		return points;
+	}
+
+	/**
+	 * Reserve space in the current blocks, starting new blocks when full.
+	 * Existing blocks are never resized so previously read views stay valid.
+	 *
+	 * @param coordinateLength
+	 *            number of coordinate values (doubles)
+	 * @param partLength
+	 *            number of parts
+	 */
+	private void reserve(int coordinateLength, int partLength) {
+		if (coordinates == null || coordinates.remaining() < coordinateLength) {
+			long target = Math.max(MIN_BLOCK_SIZE,
+					Math.min(blockSize, liveLength));
+			int capacity = (int) Math.max(coordinateLength, target);
+			coordinates = ByteBuffer.allocateDirect(capacity * 8)
+					.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+			allocated += capacity * 8L;
+		}
+		int partCapacity = parts == null ? 0
+				: parts.length / PackedGeometry.PART_LENGTH;
+		if (partCapacity - partCount < partLength) {
+			int capacity = Math.max(partLength,
+					Math.max(MIN_BLOCK_SIZE, coordinates.capacity() / 16));
+			parts = new int[capacity * PackedGeometry.PART_LENGTH];
+			partCount = 0;
+		}
+	}
+
+	/**
+	 * Repack the stored features into new blocks, releasing the space of
+	 * invalidated features
+	 */
+	private void compact() {
+		List<PackedGeometry> stored = new ArrayList<>(geometries.values());
+		clear();
+		for (PackedGeometry geometry : stored) {
+			int length = geometry.numCoordinates() * 2;
+			reserve(length, geometry.numParts());
+			int partOffset = partCount;
+			for (int part = 0; part < geometry.numParts(); part++) {
+				int offset = coordinates.position();
+				coordinates.put(geometry.getCoordinates(part));
+				addPart(offset, geometry.getPartSize(part),
+						geometry.getPartType(part));
+			}
+			geometries.put(geometry.getId(),
+					new PackedGeometry(geometry.getId(),
+							geometry.getGeometryType(), coordinates, parts,
+							partOffset, geometry.numParts()));
+			liveLength += length;
+		}
+	}
+
+	/**
+	 * Create the temporary changed ids table and tracking triggers
+	 */
+	private void createTracking() {
+
+		FeatureTable table = featureDao.getTable();
+		String tableName = CoreSQLUtils.quoteWrap(table.getTableName());
+		String idColumnName = CoreSQLUtils
+				.quoteWrap(table.getPkColumn().getName());
+		String changes = "temp." + CoreSQLUtils.quoteWrap(changesTable);
+
+		dropTracking();
+
+		SQLUtils.execSQL(connection, "CREATE TEMP TABLE "
+				+ CoreSQLUtils.quoteWrap(changesTable) + " (" + COLUMN_ID
+				+ " INTEGER PRIMARY KEY)");
+
+		SQLUtils.execSQL(connection, "CREATE TEMP TRIGGER "
+				+ CoreSQLUtils.quoteWrap(changesTable + "_insert")
+				+ " AFTER INSERT ON " + tableName
+				+ " BEGIN INSERT OR IGNORE INTO " + changes + " VALUES (NEW."
+				+ idColumnName + "); END");
+
+		SQLUtils.execSQL(connection, "CREATE TEMP TRIGGER "
+				+ CoreSQLUtils.quoteWrap(changesTable + "_update")
+				+ " AFTER UPDATE ON " + tableName
+				+ " BEGIN INSERT OR IGNORE INTO " + changes + " VALUES (OLD."
+				+ idColumnName + "); INSERT OR IGNORE INTO " + changes
+				+ " VALUES (NEW." + idColumnName + "); END");
+
+		SQLUtils.execSQL(connection, "CREATE TEMP TRIGGER "
+				+ CoreSQLUtils.quoteWrap(changesTable + "_delete")
+				+ " AFTER DELETE ON " + tableName
+				+ " BEGIN INSERT OR IGNORE INTO " + changes + " VALUES (OLD."
+				+ idColumnName + "); END");
+	}
+
+	/**
+	 * Drop the temporary changed ids table and tracking triggers
+	 */
+	private void dropTracking() {
+		for (String trigger : new String[] { "_insert", "_update",
+				"_delete" }) {
+			SQLUtils.execSQL(connection, "DROP TRIGGER IF EXISTS temp."
+					+ CoreSQLUtils.quoteWrap(changesTable + trigger));
+		}
+		SQLUtils.execSQL(connection, "DROP TABLE IF EXISTS temp."
+				+ CoreSQLUtils.quoteWrap(changesTable));
+	}
+
+}
@@ -1,12 +1,27 @@
 package mil.nga.geopackage.features.user;
 
+import java.sql.Connection;
+import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackageException;
 import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.SQLUtils;
 import mil.nga.geopackage.features.index.FeatureIndexManager;
+import mil.nga.geopackage.geom.GeoPackageGeometryHeader;
 import mil.nga.sf.GeometryEnvelope;
 import mil.nga.sf.proj.Projection;
 import mil.nga.sf.proj.ProjectionTransform;
@@ -35,6 +50,12 @@ public class ManualFeatureQuery {
 	 */
 	protected double tolerance = .00000000000001;
 
+	/**
+	 * Number of envelope worker threads, values less than 2 scan on the
+	 * calling thread
+	 */
+	protected int threads = 0;
+
 	/**
 	 * Constructor
 	 *
@@ -92,6 +113,32 @@ public class ManualFeatureQuery {
 		this.tolerance = tolerance;
 	}
 
+	/**
+	 * Get the number of envelope worker threads used by bounding box queries
+	 * and bounds building
+	 * 
+	 * @return threads, less than 2 when scanning on the calling thread
+	 * @since 3.5.1
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the number of envelope worker threads used by bounding box queries
+	 * and bounds building. When set to 2 or more, a single reader streams
+	 * feature ids and geometry bytes in chunk limit partitions of consecutive
+	 * rows, a pool of workers tests the partitions using the geometry header
+	 * envelopes, and the partition results are merged in row order.
+	 * 
+	 * @param threads
+	 *            threads, less than 2 to scan on the calling thread
+	 * @since 3.5.1
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
 	/**
 	 * Query for features
 	 * 
@@ -279,45 +326,32 @@ public class ManualFeatureQuery {
 	 * @return bounding box
 	 */
 	public BoundingBox getBoundingBox() {
+		return getBoundingBox(null, null);
+	}
 
-		GeometryEnvelope envelope = null;
-
-		long offset = 0;
-		boolean hasResults = true;
-
-		String[] columns = new String[] { featureDao.getGeometryColumnName() };
-
-		while (hasResults) {
-
-			hasResults = false;
-
-			FeatureResultSet resultSet = featureDao.queryForChunk(columns,
-					chunkLimit, offset);
-			try {
-				while (resultSet.moveToNext()) {
-					hasResults = true;
-
-					FeatureRow featureRow = resultSet.getRow();
-					GeometryEnvelope featureEnvelope = featureRow
-							.getGeometryEnvelope();
-					if (featureEnvelope != null) {
-
-						if (envelope == null) {
-							envelope = featureEnvelope;
-						} else {
-							envelope = envelope.union(featureEnvelope);
-						}
-
-					}
-				}
-			} finally {
-				resultSet.close();
-			}
+	/**
+	 * Manually build the bounds of the features matching the where clause,
+	 * reading the geometry header envelopes and only parsing geometries
+	 * without one
+	 * 
+	 * @param where
+	 *            where clause, null for all features
+	 * @param whereArgs
+	 *            where arguments
+	 * @return bounding box, null when no feature envelopes
+	 * @since 3.5.1
+	 */
+	public BoundingBox getBoundingBox(String where, String[] whereArgs) {
 
-			offset += chunkLimit;
+		ScanPartition results;
+		if (threads > 1) {
+			results = scanParallel(where, whereArgs, null);
+		} else {
+			results = scan(where, whereArgs, null);
 		}
 
 		BoundingBox boundingBox = null;
+		GeometryEnvelope envelope = results.getEnvelope();
 		if (envelope != null) {
 			boundingBox = new BoundingBox(envelope);
 		}
@@ -1199,16 +1233,23 @@ public class ManualFeatureQuery {
 			double minY, double maxX, double maxY, String where,
 			String[] whereArgs) {
 
-		List<Long> featureIds = new ArrayList<>();
-
-		long offset = 0;
-		boolean hasResults = true;
-
 		minX -= tolerance;
 		maxX += tolerance;
 		minY -= tolerance;
 		maxY += tolerance;
 
+		if (threads > 1) {
+			List<Long> featureIds = scanParallel(where, whereArgs,
+					new double[] { minX, minY, maxX, maxY }).getIds();
+			return new ManualFeatureQueryResults(featureDao, columns,
+					featureIds);
+		}
+
+		List<Long> featureIds = new ArrayList<>();
+
+		long offset = 0;
+		boolean hasResults = true;
+
 		String[] queryColumns = featureDao.getIdAndGeometryColumnNames();
 
 		while (hasResults) {
@@ -1273,4 +1314,331 @@ public class ManualFeatureQuery {
 		return query(minX, minY, maxX, maxY, where, whereArgs).count();
 	}
 
+	/**
+	 * Scan the feature geometries on the calling thread in partitions of
+	 * consecutive rows
+	 *
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where args
+	 * @param bounds
+	 *            min x, min y, max x, max y bounds to collect the ids of
+	 *            intersecting features, null to build the envelope of all
+	 *            features
+	 * @return scan partition with the merged results
+	 */
+	private ScanPartition scan(String where, String[] whereArgs,
+			double[] bounds) {
+
+		int partitionSize = Math.max(1, chunkLimit);
+		String sql = scanSQL(where);
+
+		ScanPartition results = new ScanPartition(0, bounds);
+		ResultSet resultSet = SQLUtils.query(featureDao.getConnection(), sql,
+				whereArgs);
+		try {
+			ScanPartition partition = new ScanPartition(partitionSize, bounds);
+			while (resultSet.next()) {
+				partition.add(resultSet.getLong(1), resultSet.getBytes(2));
+				if (partition.size() >= partitionSize) {
+					results.merge(partition.call());
+					partition = new ScanPartition(partitionSize, bounds);
+				}
+			}
+			results.merge(partition.call());
+		} catch (Exception e) {
+			throw new GeoPackageException("Failed to query features. Table: "
+					+ featureDao.getTableName(), e);
+		} finally {
+			SQLUtils.closeResultSetStatement(resultSet, sql);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Build the SQL selecting the feature ids and geometry bytes
+	 *
+	 * @param where
+	 *            where clause
+	 * @return SQL
+	 */
+	private String scanSQL(String where) {
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT ")
+				.append(CoreSQLUtils.quoteWrap(featureDao.getIdColumnName()))
+				.append(", ")
+				.append(CoreSQLUtils
+						.quoteWrap(featureDao.getGeometryColumnName()))
+				.append(" FROM ")
+				.append(CoreSQLUtils.quoteWrap(featureDao.getTableName()));
+		if (where != null) {
+			sql.append(" WHERE ").append(where);
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * Scan the feature geometries using a single reader thread streaming
+	 * partitions of consecutive rows and a pool of envelope worker threads,
+	 * merging the partition results in row order on the calling thread
+	 *
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where args
+	 * @param bounds
+	 *            min x, min y, max x, max y bounds to collect the ids of
+	 *            intersecting features, null to build the envelope of all
+	 *            features
+	 * @return scan partition with the merged results
+	 */
+	private ScanPartition scanParallel(String where, String[] whereArgs,
+			double[] bounds) {
+
+		final Connection connection = featureDao.getConnection();
+		final String sql = scanSQL(where);
+		final String[] args = whereArgs;
+		final int partitionSize = Math.max(1, chunkLimit);
+		final double[] partitionBounds = bounds;
+
+		final ExecutorService workers = Executors.newFixedThreadPool(threads);
+		final BlockingQueue<Future<ScanPartition>> queue = new ArrayBlockingQueue<>(
+				threads * 2);
+		final Future<ScanPartition> end = new FutureTask<>(
+				new Callable<ScanPartition>() {
+					@Override
+					public ScanPartition call() throws Exception {
+						return null;
+					}
+				});
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference<Exception> readError = new AtomicReference<>();
+
+		// Reader streaming ids and geometry bytes into partitions
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ResultSet resultSet = null;
+				try {
+					resultSet = SQLUtils.query(connection, sql, args);
+					ScanPartition partition = new ScanPartition(partitionSize,
+							partitionBounds);
+					while (!stop.get() && resultSet.next()) {
+						partition.add(resultSet.getLong(1),
+								resultSet.getBytes(2));
+						if (partition.size() >= partitionSize) {
+							queue.put(workers.submit(partition));
+							partition = new ScanPartition(partitionSize,
+									partitionBounds);
+						}
+					}
+					if (partition.size() > 0 && !stop.get()) {
+						queue.put(workers.submit(partition));
+					}
+				} catch (Exception e) {
+					readError.set(e);
+				} finally {
+					SQLUtils.closeResultSetStatement(resultSet, sql);
+					try {
+						queue.put(end);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}, "ManualFeatureQuery-" + featureDao.getTableName() + "-reader");
+
+		ScanPartition results = new ScanPartition(0, bounds);
+		try {
+
+			reader.start();
+
+			Future<ScanPartition> future;
+			while ((future = queue.take()) != end) {
+				results.merge(future.get());
+			}
+
+			if (readError.get() != null) {
+				throw readError.get();
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GeoPackageException(
+					"Interrupted while querying features. Table: "
+							+ featureDao.getTableName(),
+					e);
+		} catch (ExecutionException e) {
+			throw new GeoPackageException(
+					"Failed to query features. Table: "
+							+ featureDao.getTableName(),
+					e.getCause());
+		} catch (Exception e) {
+			throw new GeoPackageException(
+					"Failed to query features. Table: "
+							+ featureDao.getTableName(),
+					e);
+		} finally {
+			stop.set(true);
+			queue.clear();
+			try {
+				reader.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			workers.shutdownNow();
+		}
+
+		return results;
+	}
+
+	/**
+	 * Partition of consecutive feature rows, tested against the bounds or
+	 * reduced to an envelope as a worker task using the geometry header
+	 * envelopes
+	 */
+	private static class ScanPartition implements Callable<ScanPartition> {
+
+		/**
+		 * Feature ids
+		 */
+		private final long[] ids;
+
+		/**
+		 * Geometry bytes, released after the partition is scanned
+		 */
+		private byte[][] geometries;
+
+		/**
+		 * Min x, min y, max x, max y bounds, null when building the envelope
+		 */
+		private final double[] bounds;
+
+		/**
+		 * Number of rows in the partition
+		 */
+		private int size = 0;
+
+		/**
+		 * Ids of the features intersecting the bounds
+		 */
+		private final List<Long> matches = new ArrayList<>();
+
+		/**
+		 * Envelope of the partition features
+		 */
+		private GeometryEnvelope envelope;
+
+		/**
+		 * Constructor
+		 *
+		 * @param capacity
+		 *            partition capacity
+		 * @param bounds
+		 *            bounds, null to build the envelope
+		 */
+		public ScanPartition(int capacity, double[] bounds) {
+			ids = new long[capacity];
+			geometries = new byte[capacity][];
+			this.bounds = bounds;
+		}
+
+		/**
+		 * Add a feature row
+		 *
+		 * @param id
+		 *            feature id
+		 * @param geometry
+		 *            geometry bytes
+		 */
+		public void add(long id, byte[] geometry) {
+			ids[size] = id;
+			geometries[size] = geometry;
+			size++;
+		}
+
+		/**
+		 * Get the number of rows in the partition
+		 *
+		 * @return size
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Get the ids of the features intersecting the bounds
+		 *
+		 * @return feature ids
+		 */
+		public List<Long> getIds() {
+			return matches;
+		}
+
+		/**
+		 * Get the envelope of the features
+		 *
+		 * @return envelope, null when no feature envelopes
+		 */
+		public GeometryEnvelope getEnvelope() {
+			return envelope;
+		}
+
+		/**
+		 * Merge the following partition results
+		 *
+		 * @param partition
+		 *            scanned partition
+		 */
+		public void merge(ScanPartition partition) {
+			matches.addAll(partition.matches);
+			union(partition.envelope);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ScanPartition call() throws Exception {
+			for (int i = 0; i < size; i++) {
+				GeometryEnvelope featureEnvelope = GeoPackageGeometryHeader
+						.getEnvelope(geometries[i]);
+				if (featureEnvelope != null) {
+					if (bounds == null) {
+						union(featureEnvelope);
+					} else if (Math.max(bounds[0], featureEnvelope
+							.getMinX()) <= Math.min(bounds[2],
+									featureEnvelope.getMaxX())
+							&& Math.max(bounds[1],
+									featureEnvelope.getMinY()) <= Math.min(
+											bounds[3],
+											featureEnvelope.getMaxY())) {
+						matches.add(ids[i]);
+					}
+				}
+			}
+			geometries = null;
+			return this;
+		}
+
+		/**
+		 * Union the envelope into the partition envelope
+		 *
+		 * @param featureEnvelope
+		 *            feature envelope
+		 */
+		private void union(GeometryEnvelope featureEnvelope) {
+			if (featureEnvelope != null) {
+				if (envelope == null) {
+					envelope = featureEnvelope;
+				} else {
+					envelope = envelope.union(featureEnvelope);
+				}
+			}
+		}
+
+	}
+
 }
@@ -0,0 +1,178 @@
+package mil.nga.geopackage.geom;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.util.GeometryEnvelopeBuilder;
+
+/**
+ * GeoPackage Geometry Blob header reader. Reads the envelope directly from the
+ * GeoPackage Binary header bytes without decoding the Well-Known Binary
+ * geometry, falling back to a full parse only when the header does not
+ * contain an envelope.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class GeoPackageGeometryHeader {
+
+	/**
+	 * Header byte length before the envelope (magic, version, flags, srs id)
+	 */
+	private static final int HEADER_LENGTH = 8;
+
+	/**
+	 * Empty geometry flag bit
+	 */
+	private static final int EMPTY_FLAG = 0x10;
+
+	/**
+	 * Little endian byte order flag bit
+	 */
+	private static final int BYTE_ORDER_FLAG = 0x01;
+
+	/**
+	 * Check if the bytes start with the GeoPackage Binary magic number
+	 *
+	 * @param bytes
+	 *            geometry bytes
+	 * @return true if a GeoPackage Binary header
+	 */
+	public static boolean isGeoPackageBinary(byte[] bytes) {
+		return bytes != null && bytes.length >= HEADER_LENGTH
+				&& bytes[0] == 'G' && bytes[1] == 'P';
+	}
+
+	/**
+	 * Check if the GeoPackage Binary header flags the geometry as empty
+	 *
+	 * @param bytes
+	 *            geometry bytes
+	 * @return true if empty
+	 */
+	public static boolean isEmpty(byte[] bytes) {
+		return isGeoPackageBinary(bytes) && (bytes[3] & EMPTY_FLAG) != 0;
+	}
+
+	/**
+	 * Get the envelope contents indicator from the header flags
+	 *
+	 * @param bytes
+	 *            geometry bytes
+	 * @return envelope indicator (0 = none, 1 = xy, 2 = xyz, 3 = xym, 4 =
+	 *         xyzm), -1 if not a GeoPackage Binary header
+	 */
+	public static int getEnvelopeIndicator(byte[] bytes) {
+		int indicator = -1;
+		if (isGeoPackageBinary(bytes)) {
+			indicator = (bytes[3] >> 1) & 0x07;
+		}
+		return indicator;
+	}
+
+	/**
+	 * Get the header byte length including the envelope, which is the offset
+	 * of the Well-Known Binary geometry
+	 *
+	 * @param bytes
+	 *            geometry bytes
+	 * @return header length, -1 if not a valid GeoPackage Binary header
+	 */
+	public static int getHeaderLength(byte[] bytes) {
+		int length = -1;
+		int indicator = getEnvelopeIndicator(bytes);
+		if (indicator == 0) {
+			length = HEADER_LENGTH;
+		} else if (indicator == 1) {
+			length = HEADER_LENGTH + 32;
+		} else if (indicator == 2 || indicator == 3) {
+			length = HEADER_LENGTH + 48;
+		} else if (indicator == 4) {
+			length = HEADER_LENGTH + 64;
+		}
+		if (length > 0 && length > bytes.length) {
+			length = -1;
+		}
+		return length;
+	}
+
+	/**
+	 * Read the envelope from the header only
+	 *
+	 * @param bytes
+	 *            geometry bytes
+	 * @return envelope, null if the header has no envelope or is invalid
+	 */
+	public static GeometryEnvelope readEnvelope(byte[] bytes) {
+
+		GeometryEnvelope envelope = null;
+
+		int indicator = getEnvelopeIndicator(bytes);
+		if (indicator > 0 && indicator <= 4) {
+
+			boolean hasZ = indicator == 2 || indicator == 4;
+			boolean hasM = indicator == 3 || indicator == 4;
+			int length = HEADER_LENGTH + 32 + (hasZ ? 16 : 0)
+					+ (hasM ? 16 : 0);
+
+			if (bytes.length >= length) {
+
+				ByteBuffer buffer = ByteBuffer.wrap(bytes, HEADER_LENGTH,
+						length - HEADER_LENGTH);
+				buffer.order((bytes[3] & BYTE_ORDER_FLAG) != 0
+						? ByteOrder.LITTLE_ENDIAN
+						: ByteOrder.BIG_ENDIAN);
+
+				envelope = new GeometryEnvelope(hasZ, hasM);
+				envelope.setMinX(buffer.getDouble());
+				envelope.setMaxX(buffer.getDouble());
+				envelope.setMinY(buffer.getDouble());
+				envelope.setMaxY(buffer.getDouble());
+				if (hasZ) {
+					envelope.setMinZ(buffer.getDouble());
+					envelope.setMaxZ(buffer.getDouble());
+				}
+				if (hasM) {
+					envelope.setMinM(buffer.getDouble());
+					envelope.setMaxM(buffer.getDouble());
+				}
+			}
+		}
+
+		return envelope;
+	}
+
+	/**
+	 * Get the envelope of the geometry bytes, reading the header envelope
+	 * when present and otherwise parsing the geometry to build it
+	 *
+	 * @param bytes
+	 *            geometry bytes
+	 * @return envelope, null for null or empty geometries
+	 */
+	public static GeometryEnvelope getEnvelope(byte[] bytes) {
+
+		GeometryEnvelope envelope = null;
+
+		if (bytes != null && !isEmpty(bytes)) {
+			envelope = readEnvelope(bytes);
+			if (envelope == null) {
+				GeoPackageGeometryData geometryData = new GeoPackageGeometryData(
+						bytes);
+				envelope = geometryData.getEnvelope();
+				if (envelope == null) {
+					Geometry geometry = geometryData.getGeometry();
+					if (geometry != null) {
+						envelope = GeometryEnvelopeBuilder
+								.buildEnvelope(geometry);
+					}
+				}
+			}
+		}
+
+		return envelope;
+	}
+
+}
@@ -0,0 +1,1459 @@
+package mil.nga.geopackage.geom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import mil.nga.sf.CompoundCurve;
+import mil.nga.sf.Curve;
+import mil.nga.sf.CurvePolygon;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryCollection;
+import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.LineString;
+import mil.nga.sf.Point;
+import mil.nga.sf.PolyhedralSurface;
+import mil.nga.sf.util.GeometryEnvelopeBuilder;
+
+/**
+ * Planar spatial predicates (intersects, contains, within) between a prepared
+ * geometry and other geometries. The prepared geometry is flattened once into
+ * coordinate paths and polygons so it can be tested against many geometries,
+ * and instances are safe to share between threads. Polygon rings with many
+ * edges are indexed into horizontal strips of edges, so point and envelope
+ * tests only visit the edges crossing the tested y range instead of every
+ * ring.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class GeometryPredicates {
+
+	/**
+	 * Flattened prepared geometry
+	 */
+	private final Shape shape;
+
+	/**
+	 * Constructor
+	 *
+	 * @param geometry
+	 *            geometry to prepare
+	 */
+	public GeometryPredicates(Geometry geometry) {
+		this.shape = new Shape(geometry);
+		shape.prepare();
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param geometryData
+	 *            geometry data of the geometry to prepare, such as a feature
+	 *            row geometry
+	 */
+	public GeometryPredicates(GeoPackageGeometryData geometryData) {
+		this(geometryData != null ? geometryData.getGeometry() : null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param geometry
+	 *            packed geometry to prepare
+	 */
+	public GeometryPredicates(PackedGeometry geometry) {
+		this.shape = new Shape(geometry);
+		shape.prepare();
+	}
+
+	/**
+	 * Get the prepared geometry envelope
+	 *
+	 * @return envelope, null when empty
+	 */
+	public GeometryEnvelope getEnvelope() {
+		return shape.envelope;
+	}
+
+	/**
+	 * Test a geometry against the prepared geometry
+	 *
+	 * @param predicate
+	 *            spatial predicate, applied as geometry predicate prepared
+	 *            geometry
+	 * @param geometry
+	 *            geometry
+	 * @return true if the predicate is satisfied
+	 */
+	public boolean test(SpatialPredicate predicate, Geometry geometry) {
+		boolean result;
+		switch (predicate) {
+		case INTERSECTS:
+			result = intersects(geometry);
+			break;
+		case WITHIN:
+			result = within(geometry);
+			break;
+		case CONTAINS:
+			result = contains(geometry);
+			break;
+		default:
+			throw new IllegalArgumentException(
+					"Unsupported spatial predicate: " + predicate);
+		}
+		return result;
+	}
+
+	/**
+	 * Check if the geometry intersects the prepared geometry
+	 *
+	 * @param geometry
+	 *            geometry
+	 * @return true if intersects
+	 */
+	public boolean intersects(Geometry geometry) {
+		boolean intersects;
+		if (geometry instanceof Point && !geometry.isEmpty()) {
+			Point point = (Point) geometry;
+			intersects = intersects(point.getX(), point.getY());
+		} else {
+			intersects = intersects(shape, new Shape(geometry));
+		}
+		return intersects;
+	}
+
+	/**
+	 * Check if the geometry is within the prepared geometry
+	 *
+	 * @param geometry
+	 *            geometry
+	 * @return true if the prepared geometry contains the geometry
+	 */
+	public boolean within(Geometry geometry) {
+		boolean within;
+		if (geometry instanceof Point && !geometry.isEmpty()) {
+			Point point = (Point) geometry;
+			within = contains(point.getX(), point.getY());
+		} else {
+			within = contains(shape, new Shape(geometry));
+		}
+		return within;
+	}
+
+	/**
+	 * Check if the geometry contains the prepared geometry
+	 *
+	 * @param geometry
+	 *            geometry
+	 * @return true if the geometry contains the prepared geometry
+	 */
+	public boolean contains(Geometry geometry) {
+		return contains(new Shape(geometry), shape);
+	}
+
+	/**
+	 * Test a packed geometry against the prepared geometry
+	 *
+	 * @param predicate
+	 *            spatial predicate, applied as geometry predicate prepared
+	 *            geometry
+	 * @param geometry
+	 *            packed geometry
+	 * @return true if the predicate is satisfied
+	 */
+	public boolean test(SpatialPredicate predicate, PackedGeometry geometry) {
+		boolean result;
+		switch (predicate) {
+		case INTERSECTS:
+			result = intersects(geometry);
+			break;
+		case WITHIN:
+			result = within(geometry);
+			break;
+		case CONTAINS:
+			result = contains(geometry);
+			break;
+		default:
+			throw new IllegalArgumentException(
+					"Unsupported spatial predicate: " + predicate);
+		}
+		return result;
+	}
+
+	/**
+	 * Check if the packed geometry intersects the prepared geometry
+	 *
+	 * @param geometry
+	 *            packed geometry
+	 * @return true if intersects
+	 */
+	public boolean intersects(PackedGeometry geometry) {
+		boolean intersects;
+		if (isPoint(geometry)) {
+			intersects = intersects(geometry.getX(0, 0), geometry.getY(0, 0));
+		} else {
+			intersects = intersects(shape, new Shape(geometry));
+		}
+		return intersects;
+	}
+
+	/**
+	 * Check if the packed geometry is within the prepared geometry
+	 *
+	 * @param geometry
+	 *            packed geometry
+	 * @return true if the prepared geometry contains the geometry
+	 */
+	public boolean within(PackedGeometry geometry) {
+		boolean within;
+		if (isPoint(geometry)) {
+			within = contains(geometry.getX(0, 0), geometry.getY(0, 0));
+		} else {
+			within = contains(shape, new Shape(geometry));
+		}
+		return within;
+	}
+
+	/**
+	 * Check if the packed geometry contains the prepared geometry
+	 *
+	 * @param geometry
+	 *            packed geometry
+	 * @return true if the geometry contains the prepared geometry
+	 */
+	public boolean contains(PackedGeometry geometry) {
+		return contains(new Shape(geometry), shape);
+	}
+
+	/**
+	 * Check if the coordinate intersects the prepared geometry
+	 *
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return true if in the interior, on the boundary, or on the linework
+	 */
+	public boolean intersects(double x, double y) {
+		return shape.envelope != null && envelopeContains(shape.envelope, x, y)
+				&& shape.locate(x, y) >= 0;
+	}
+
+	/**
+	 * Check if the prepared geometry contains the coordinate
+	 *
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return true if in the polygon interior, or on the linework when the
+	 *         prepared geometry has no polygons
+	 */
+	public boolean contains(double x, double y) {
+		boolean contains = false;
+		if (shape.envelope != null
+				&& envelopeContains(shape.envelope, x, y)) {
+			int location = shape.locate(x, y);
+			contains = location > 0
+					|| (location == 0 && shape.polygons.isEmpty());
+		}
+		return contains;
+	}
+
+	/**
+	 * Check if the envelope intersects the prepared geometry
+	 *
+	 * @param envelope
+	 *            envelope
+	 * @return true if intersects
+	 */
+	public boolean intersects(GeometryEnvelope envelope) {
+
+		if (shape.envelope == null || envelope == null
+				|| !envelopesIntersect(shape.envelope, envelope)) {
+			return false;
+		}
+
+		double minX = envelope.getMinX();
+		double minY = envelope.getMinY();
+		double maxX = envelope.getMaxX();
+		double maxY = envelope.getMaxY();
+
+		// Points, lines, or polygon boundaries touching the envelope
+		if (shape.crossesRectangle(minX, minY, maxX, maxY)) {
+			return true;
+		}
+
+		// Envelope entirely inside a polygon
+		return shape.locatePolygons(minX, minY) >= 0;
+	}
+
+	/**
+	 * Check if the envelope lies entirely within the interior of the
+	 * prepared polygons, touching no polygon boundary
+	 *
+	 * @param envelope
+	 *            envelope
+	 * @return true if properly contained
+	 */
+	public boolean containsProperly(GeometryEnvelope envelope) {
+
+		if (shape.envelope == null || envelope == null
+				|| shape.polygons.isEmpty()
+				|| !envelopeContains(shape.envelope, envelope)) {
+			return false;
+		}
+
+		double minX = envelope.getMinX();
+		double minY = envelope.getMinY();
+		double maxX = envelope.getMaxX();
+		double maxY = envelope.getMaxY();
+
+		return !shape.crossesRings(minX, minY, maxX, maxY)
+				&& shape.locatePolygons((minX + maxX) / 2.0,
+						(minY + maxY) / 2.0) > 0;
+	}
+
+	/**
+	 * Check if every geometry with the envelope satisfies the predicate
+	 * against the prepared geometry, allowing the geometry test to be
+	 * skipped. A false result is inconclusive.
+	 *
+	 * @param predicate
+	 *            spatial predicate, applied as geometry predicate prepared
+	 *            geometry
+	 * @param envelope
+	 *            non empty geometry envelope
+	 * @return true if satisfied by the envelope alone
+	 */
+	public boolean satisfiedBy(SpatialPredicate predicate,
+			GeometryEnvelope envelope) {
+		boolean satisfied = false;
+		switch (predicate) {
+		case INTERSECTS:
+		case WITHIN:
+			satisfied = containsProperly(envelope);
+			break;
+		default:
+		}
+		return satisfied;
+	}
+
+	/**
+	 * Check if two geometries intersect
+	 *
+	 * @param geometry1
+	 *            first geometry
+	 * @param geometry2
+	 *            second geometry
+	 * @return true if intersect
+	 */
+	public static boolean intersects(Geometry geometry1, Geometry geometry2) {
+		return intersects(new Shape(geometry1), new Shape(geometry2));
+	}
+
+	/**
+	 * Check if the first geometry contains the second geometry
+	 *
+	 * @param geometry1
+	 *            first geometry
+	 * @param geometry2
+	 *            second geometry
+	 * @return true if the first contains the second
+	 */
+	public static boolean contains(Geometry geometry1, Geometry geometry2) {
+		return contains(new Shape(geometry1), new Shape(geometry2));
+	}
+
+	/**
+	 * Get the planar distance from the coordinate to the prepared geometry
+	 *
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return distance, 0 when inside a polygon or on the geometry, infinity
+	 *         when empty
+	 */
+	public double distance(double x, double y) {
+		return shape.distance(x, y);
+	}
+
+	/**
+	 * Get the planar distance from the coordinate to the geometry
+	 *
+	 * @param geometry
+	 *            geometry
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return distance, 0 when inside a polygon or on the geometry, infinity
+	 *         when empty
+	 */
+	public static double distance(Geometry geometry, double x, double y) {
+		return new Shape(geometry).distance(x, y);
+	}
+
+	/**
+	 * Get the planar distance from the coordinate to the envelope
+	 *
+	 * @param minX
+	 *            min x
+	 * @param minY
+	 *            min y
+	 * @param maxX
+	 *            max x
+	 * @param maxY
+	 *            max y
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return distance, 0 when within the envelope
+	 */
+	public static double envelopeDistance(double minX, double minY,
+			double maxX, double maxY, double x, double y) {
+		double dx = Math.max(0, Math.max(minX - x, x - maxX));
+		double dy = Math.max(0, Math.max(minY - y, y - maxY));
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Get the planar distance from the coordinate to the segment
+	 *
+	 * @return distance
+	 */
+	static double segmentDistance(double x1, double y1, double x2, double y2,
+			double x, double y) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = 0;
+		if (lengthSquared > 0) {
+			t = ((x - x1) * dx + (y - y1) * dy) / lengthSquared;
+			t = Math.max(0, Math.min(1, t));
+		}
+		double px = x1 + t * dx - x;
+		double py = y1 + t * dy - y;
+		return Math.sqrt(px * px + py * py);
+	}
+
+	/**
+	 * Check if shapes intersect
+	 *
+	 * @param a
+	 *            shape a
+	 * @param b
+	 *            shape b
+	 * @return true if intersect
+	 */
+	private static boolean intersects(Shape a, Shape b) {
+
+		if (a.envelope == null || b.envelope == null
+				|| !envelopesIntersect(a.envelope, b.envelope)) {
+			return false;
+		}
+
+		// Boundary and path intersections
+		for (double[] pathA : a.paths) {
+			for (double[] pathB : b.paths) {
+				if (pathsIntersect(pathA, pathB)) {
+					return true;
+				}
+			}
+		}
+
+		// One shape entirely inside a polygon of the other
+		for (double[] pathB : b.paths) {
+			if (a.locate(pathB[0], pathB[1]) >= 0) {
+				return true;
+			}
+		}
+		for (double[] pathA : a.paths) {
+			if (b.locate(pathA[0], pathA[1]) >= 0) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Check if shape a contains shape b
+	 *
+	 * @param a
+	 *            shape a
+	 * @param b
+	 *            shape b
+	 * @return true if a contains b
+	 */
+	private static boolean contains(Shape a, Shape b) {
+
+		if (a.envelope == null || b.envelope == null
+				|| !envelopeContains(a.envelope, b.envelope)) {
+			return false;
+		}
+
+		if (!b.polygons.isEmpty() && a.polygons.isEmpty()) {
+			return false;
+		}
+
+		boolean interior = false;
+
+		for (double[] path : b.paths) {
+			int count = path.length / 2;
+			for (int i = 0; i < count; i++) {
+				double x = path[i * 2];
+				double y = path[i * 2 + 1];
+				int location = a.locate(x, y);
+				if (location < 0) {
+					return false;
+				}
+				interior = interior || location > 0;
+				if (i + 1 < count) {
+					double x2 = path[i * 2 + 2];
+					double y2 = path[i * 2 + 3];
+					if (a.crossesBoundary(x, y, x2, y2)) {
+						return false;
+					}
+					// Locate the middle of each piece of the segment between
+					// the points where it meets the boundary of a
+					double t0 = 0;
+					for (double t1 : a.segmentSplits(x, y, x2, y2)) {
+						if (t1 > t0) {
+							double t = (t0 + t1) / 2.0;
+							int midLocation = a.locate(x + (x2 - x) * t,
+									y + (y2 - y) * t);
+							if (midLocation < 0) {
+								return false;
+							}
+							interior = interior || midLocation > 0;
+						}
+						t0 = t1;
+					}
+				}
+			}
+		}
+
+		// Holes of a inside b polygons are not covered by a
+		for (double[] hole : a.holes) {
+			int count = hole.length / 2;
+			for (int i = 0; i < count; i++) {
+				if (b.locatePolygons(hole[i * 2], hole[i * 2 + 1]) > 0) {
+					return false;
+				}
+			}
+		}
+
+		return interior || a.polygons.isEmpty();
+	}
+
+	/**
+	 * Check if envelopes intersect
+	 *
+	 * @param a
+	 *            envelope a
+	 * @param b
+	 *            envelope b
+	 * @return true if intersect
+	 */
+	private static boolean envelopesIntersect(GeometryEnvelope a,
+			GeometryEnvelope b) {
+		return a.getMinX() <= b.getMaxX() && a.getMaxX() >= b.getMinX()
+				&& a.getMinY() <= b.getMaxY() && a.getMaxY() >= b.getMinY();
+	}
+
+	/**
+	 * Check if envelope a contains envelope b
+	 *
+	 * @param a
+	 *            envelope a
+	 * @param b
+	 *            envelope b
+	 * @return true if contains
+	 */
+	private static boolean envelopeContains(GeometryEnvelope a,
+			GeometryEnvelope b) {
+		return a.getMinX() <= b.getMinX() && a.getMaxX() >= b.getMaxX()
+				&& a.getMinY() <= b.getMinY() && a.getMaxY() >= b.getMaxY();
+	}
+
+	/**
+	 * Check if the envelope contains the coordinate
+	 *
+	 * @param envelope
+	 *            envelope
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return true if contains
+	 */
+	private static boolean envelopeContains(GeometryEnvelope envelope,
+			double x, double y) {
+		return x >= envelope.getMinX() && x <= envelope.getMaxX()
+				&& y >= envelope.getMinY() && y <= envelope.getMaxY();
+	}
+
+	/**
+	 * Check if the packed geometry is a single point
+	 *
+	 * @param geometry
+	 *            packed geometry
+	 * @return true if a point
+	 */
+	private static boolean isPoint(PackedGeometry geometry) {
+		return geometry != null && geometry.numParts() == 1
+				&& geometry.getPartType(0) == PackedGeometry.PART_POINT
+				&& geometry.getPartSize(0) == 1;
+	}
+
+	/**
+	 * Check if the segment intersects the closed rectangle, clipping the
+	 * segment to the rectangle (Liang-Barsky)
+	 *
+	 * @return true if intersects
+	 */
+	static boolean segmentIntersectsRectangle(double x1, double y1,
+			double x2, double y2, double minX, double minY, double maxX,
+			double maxY) {
+		double t0 = 0;
+		double t1 = 1;
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double[] p = new double[] { -dx, dx, -dy, dy };
+		double[] q = new double[] { x1 - minX, maxX - x1, y1 - minY,
+				maxY - y1 };
+		for (int i = 0; i < 4; i++) {
+			if (p[i] == 0) {
+				if (q[i] < 0) {
+					return false;
+				}
+			} else {
+				double t = q[i] / p[i];
+				if (p[i] < 0) {
+					t0 = Math.max(t0, t);
+				} else {
+					t1 = Math.min(t1, t);
+				}
+				if (t0 > t1) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Check if two coordinate paths intersect, single coordinate paths are
+	 * treated as points
+	 *
+	 * @param a
+	 *            path a
+	 * @param b
+	 *            path b
+	 * @return true if intersect
+	 */
+	private static boolean pathsIntersect(double[] a, double[] b) {
+		int segmentsA = Math.max(1, a.length / 2 - 1);
+		int segmentsB = Math.max(1, b.length / 2 - 1);
+		for (int i = 0; i < segmentsA; i++) {
+			int ia = i * 2;
+			int ja = a.length > 2 ? ia + 2 : ia;
+			for (int j = 0; j < segmentsB; j++) {
+				int ib = j * 2;
+				int jb = b.length > 2 ? ib + 2 : ib;
+				if (segmentsIntersect(a[ia], a[ia + 1], a[ja], a[ja + 1],
+						b[ib], b[ib + 1], b[jb], b[jb + 1])) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Check if two segments intersect, including touching and collinear
+	 * overlap
+	 *
+	 * @return true if intersect
+	 */
+	static boolean segmentsIntersect(double x1, double y1, double x2,
+			double y2, double x3, double y3, double x4, double y4) {
+		double d1 = orientation(x3, y3, x4, y4, x1, y1);
+		double d2 = orientation(x3, y3, x4, y4, x2, y2);
+		double d3 = orientation(x1, y1, x2, y2, x3, y3);
+		double d4 = orientation(x1, y1, x2, y2, x4, y4);
+		if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0))
+				&& ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+			return true;
+		}
+		return (d1 == 0 && onSegment(x3, y3, x4, y4, x1, y1))
+				|| (d2 == 0 && onSegment(x3, y3, x4, y4, x2, y2))
+				|| (d3 == 0 && onSegment(x1, y1, x2, y2, x3, y3))
+				|| (d4 == 0 && onSegment(x1, y1, x2, y2, x4, y4));
+	}
+
+	/**
+	 * Check if two segments properly cross at a single interior point of both
+	 *
+	 * @return true if properly cross
+	 */
+	static boolean segmentsCross(double x1, double y1, double x2, double y2,
+			double x3, double y3, double x4, double y4) {
+		double d1 = orientation(x3, y3, x4, y4, x1, y1);
+		double d2 = orientation(x3, y3, x4, y4, x2, y2);
+		double d3 = orientation(x1, y1, x2, y2, x3, y3);
+		double d4 = orientation(x1, y1, x2, y2, x4, y4);
+		return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0))
+				&& ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+	}
+
+	/**
+	 * Orientation of point c relative to the line from a to b
+	 *
+	 * @return positive if counter clockwise, negative if clockwise, 0 if
+	 *         collinear
+	 */
+	static double orientation(double ax, double ay, double bx, double by,
+			double cx, double cy) {
+		return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+	}
+
+	/**
+	 * Check if the collinear point c lies within the bounds of segment a to b
+	 *
+	 * @return true if on segment
+	 */
+	static boolean onSegment(double ax, double ay, double bx, double by,
+			double cx, double cy) {
+		return cx >= Math.min(ax, bx) && cx <= Math.max(ax, bx)
+				&& cy >= Math.min(ay, by) && cy <= Math.max(ay, by);
+	}
+
+	/**
+	 * Locate a point relative to a polygon ring using ray casting
+	 *
+	 * @param ring
+	 *            closed or open ring coordinates
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return 1 if inside, 0 if on the ring, -1 if outside
+	 */
+	static int locateInRing(double[] ring, double x, double y) {
+		boolean inside = false;
+		int count = ring.length / 2;
+		for (int i = 0, j = count - 1; i < count; j = i++) {
+			double xi = ring[i * 2];
+			double yi = ring[i * 2 + 1];
+			double xj = ring[j * 2];
+			double yj = ring[j * 2 + 1];
+			if (orientation(xj, yj, xi, yi, x, y) == 0
+					&& onSegment(xj, yj, xi, yi, x, y)) {
+				return 0;
+			}
+			if ((yi > y) != (yj > y)
+					&& x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+				inside = !inside;
+			}
+		}
+		return inside ? 1 : -1;
+	}
+
+	/**
+	 * Flattened geometry as coordinate paths (points, lines, and rings) and
+	 * polygons of rings
+	 */
+	private static class Shape {
+
+		/**
+		 * Coordinate paths as x, y pairs, single coordinate paths are points
+		 */
+		private final List<double[]> paths = new ArrayList<>();
+
+		/**
+		 * Non polygon coordinate paths
+		 */
+		private final List<double[]> linework = new ArrayList<>();
+
+		/**
+		 * Polygons as lists of rings, exterior ring first
+		 */
+		private final List<List<double[]>> polygons = new ArrayList<>();
+
+		/**
+		 * Polygon holes
+		 */
+		private final List<double[]> holes = new ArrayList<>();
+
+		/**
+		 * Envelope
+		 */
+		private final GeometryEnvelope envelope;
+
+		/**
+		 * Polygon ring edge index, null when not prepared or few edges
+		 */
+		private EdgeIndex edgeIndex;
+
+		/**
+		 * Constructor
+		 *
+		 * @param geometry
+		 *            geometry
+		 */
+		Shape(Geometry geometry) {
+			if (geometry != null && !geometry.isEmpty()) {
+				add(geometry);
+			}
+			envelope = paths.isEmpty() ? null
+					: GeometryEnvelopeBuilder.buildEnvelope(geometry);
+		}
+
+		/**
+		 * Constructor
+		 *
+		 * @param geometry
+		 *            packed geometry
+		 */
+		Shape(PackedGeometry geometry) {
+			List<double[]> rings = null;
+			if (geometry != null) {
+				for (int part = 0; part < geometry.numParts(); part++) {
+					int type = geometry.getPartType(part);
+					if (geometry.getPartSize(part) == 0) {
+						continue;
+					}
+					if (type == PackedGeometry.PART_INTERIOR_RING
+							&& rings == null) {
+						// Skip an interior ring without an exterior ring
+						continue;
+					}
+					double[] path = geometry.getCoordinates(part);
+					paths.add(path);
+					switch (type) {
+					case PackedGeometry.PART_EXTERIOR_RING:
+						rings = new ArrayList<>();
+						rings.add(path);
+						polygons.add(rings);
+						break;
+					case PackedGeometry.PART_INTERIOR_RING:
+						holes.add(path);
+						rings.add(path);
+						break;
+					default:
+						rings = null;
+						linework.add(path);
+					}
+				}
+			}
+			envelope = paths.isEmpty() ? null : geometry.getEnvelope();
+		}
+
+		/**
+		 * Add the geometry
+		 *
+		 * @param geometry
+		 *            geometry
+		 */
+		private void add(Geometry geometry) {
+			if (geometry instanceof Point) {
+				Point point = (Point) geometry;
+				double[] path = new double[] { point.getX(), point.getY() };
+				paths.add(path);
+				linework.add(path);
+			} else if (geometry instanceof Curve) {
+				double[] path = toPath((Curve) geometry);
+				if (path.length > 0) {
+					paths.add(path);
+					linework.add(path);
+				}
+			} else if (geometry instanceof CurvePolygon) {
+				List<double[]> rings = new ArrayList<>();
+				for (Object ring : ((CurvePolygon<?>) geometry).getRings()) {
+					double[] path = toPath((Curve) ring);
+					if (path.length > 0) {
+						if (!rings.isEmpty()) {
+							holes.add(path);
+						}
+						rings.add(path);
+						paths.add(path);
+					}
+				}
+				if (!rings.isEmpty()) {
+					polygons.add(rings);
+				}
+			} else if (geometry instanceof PolyhedralSurface) {
+				for (Geometry polygon : ((PolyhedralSurface) geometry)
+						.getPolygons()) {
+					add(polygon);
+				}
+			} else if (geometry instanceof GeometryCollection) {
+				for (Object child : ((GeometryCollection<?>) geometry)
+						.getGeometries()) {
+					add((Geometry) child);
+				}
+			} else if (geometry != null) {
+				throw new IllegalArgumentException(
+						"Unsupported geometry type: "
+								+ geometry.getGeometryType());
+			}
+		}
+
+		/**
+		 * Flatten the curve into a coordinate path
+		 *
+		 * @param curve
+		 *            curve
+		 * @return coordinate path
+		 */
+		private static double[] toPath(Curve curve) {
+			List<Point> points = new ArrayList<>();
+			if (curve instanceof LineString) {
+				points.addAll(((LineString) curve).getPoints());
+			} else if (curve instanceof CompoundCurve) {
+				for (LineString lineString : ((CompoundCurve) curve)
+						.getLineStrings()) {
+					points.addAll(lineString.getPoints());
+				}
+			}
+			double[] path = new double[points.size() * 2];
+			for (int i = 0; i < points.size(); i++) {
+				Point point = points.get(i);
+				path[i * 2] = point.getX();
+				path[i * 2 + 1] = point.getY();
+			}
+			return path;
+		}
+
+		/**
+		 * Locate a point relative to the shape
+		 *
+		 * @param x
+		 *            x coordinate
+		 * @param y
+		 *            y coordinate
+		 * @return 1 if in the interior, 0 if on the boundary or linework, -1
+		 *         if outside
+		 */
+		int locate(double x, double y) {
+			int location = locatePolygons(x, y);
+			if (location < 0 && onLinework(x, y)) {
+				location = 0;
+			}
+			return location;
+		}
+
+		/**
+		 * Prepare the shape for repeated tests, indexing the polygon ring
+		 * edges when there are enough to benefit
+		 */
+		void prepare() {
+			int edges = 0;
+			for (List<double[]> polygon : polygons) {
+				for (double[] ring : polygon) {
+					edges += ring.length / 2;
+				}
+			}
+			if (edges >= EdgeIndex.MIN_EDGES) {
+				edgeIndex = new EdgeIndex(polygons, edges);
+			}
+		}
+
+		/**
+		 * Locate a point relative to the shape polygons
+		 *
+		 * @param x
+		 *            x coordinate
+		 * @param y
+		 *            y coordinate
+		 * @return 1 if inside, 0 if on a boundary, -1 if outside
+		 */
+		int locatePolygons(double x, double y) {
+			int location = -1;
+			if (envelope != null && x >= envelope.getMinX()
+					&& x <= envelope.getMaxX() && y >= envelope.getMinY()
+					&& y <= envelope.getMaxY()) {
+				if (edgeIndex != null) {
+					return edgeIndex.locate(x, y);
+				}
+				for (List<double[]> polygon : polygons) {
+					int polygonLocation = locateInRing(polygon.get(0), x, y);
+					if (polygonLocation > 0) {
+						for (int i = 1; i < polygon.size(); i++) {
+							int holeLocation = locateInRing(polygon.get(i), x,
+									y);
+							if (holeLocation >= 0) {
+								polygonLocation = holeLocation == 0 ? 0 : -1;
+								break;
+							}
+						}
+					}
+					location = Math.max(location, polygonLocation);
+					if (location > 0) {
+						break;
+					}
+				}
+			}
+			return location;
+		}
+
+		/**
+		 * Check if the point is on a point or line of the shape
+		 *
+		 * @param x
+		 *            x coordinate
+		 * @param y
+		 *            y coordinate
+		 * @return true if on linework
+		 */
+		private boolean onLinework(double x, double y) {
+			for (double[] path : linework) {
+				if (path.length == 2) {
+					if (path[0] == x && path[1] == y) {
+						return true;
+					}
+				} else {
+					for (int i = 0; i + 3 < path.length; i += 2) {
+						if (orientation(path[i], path[i + 1], path[i + 2],
+								path[i + 3], x, y) == 0
+								&& onSegment(path[i], path[i + 1], path[i + 2],
+										path[i + 3], x, y)) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Get the distance from the coordinate to the shape
+		 *
+		 * @param x
+		 *            x coordinate
+		 * @param y
+		 *            y coordinate
+		 * @return distance
+		 */
+		double distance(double x, double y) {
+			double distance = Double.POSITIVE_INFINITY;
+			if (locatePolygons(x, y) >= 0) {
+				distance = 0;
+			} else {
+				for (double[] path : paths) {
+					if (path.length == 2) {
+						distance = Math.min(distance,
+								Math.hypot(path[0] - x, path[1] - y));
+					} else {
+						for (int i = 0; i + 3 < path.length; i += 2) {
+							distance = Math.min(distance,
+									segmentDistance(path[i], path[i + 1],
+											path[i + 2], path[i + 3], x, y));
+						}
+					}
+					if (distance == 0) {
+						break;
+					}
+				}
+			}
+			return distance;
+		}
+
+		/**
+		 * Check if any point, line, or polygon ring of the shape intersects
+		 * the closed rectangle
+		 *
+		 * @return true if intersects
+		 */
+		boolean crossesRectangle(double minX, double minY, double maxX,
+				double maxY) {
+			for (double[] path : linework) {
+				if (pathIntersectsRectangle(path, false, minX, minY, maxX,
+						maxY)) {
+					return true;
+				}
+			}
+			return crossesRings(minX, minY, maxX, maxY);
+		}
+
+		/**
+		 * Check if any polygon ring edge of the shape intersects the closed
+		 * rectangle
+		 *
+		 * @return true if intersects
+		 */
+		boolean crossesRings(double minX, double minY, double maxX,
+				double maxY) {
+			if (edgeIndex != null) {
+				return edgeIndex.intersectsRectangle(minX, minY, maxX, maxY);
+			}
+			for (List<double[]> polygon : polygons) {
+				for (double[] ring : polygon) {
+					if (pathIntersectsRectangle(ring, true, minX, minY, maxX,
+							maxY)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Check if the path intersects the closed rectangle
+		 *
+		 * @param path
+		 *            coordinate path
+		 * @param ring
+		 *            true to include the closing edge of a ring
+		 * @return true if intersects
+		 */
+		private static boolean pathIntersectsRectangle(double[] path,
+				boolean ring, double minX, double minY, double maxX,
+				double maxY) {
+			int count = path.length / 2;
+			if (count == 1) {
+				return path[0] >= minX && path[0] <= maxX && path[1] >= minY
+						&& path[1] <= maxY;
+			}
+			int start = ring ? 0 : 1;
+			for (int i = start, j = ring ? count - 1 : 0; i < count; j = i++) {
+				if (segmentIntersectsRectangle(path[j * 2], path[j * 2 + 1],
+						path[i * 2], path[i * 2 + 1], minX, minY, maxX,
+						maxY)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Get the sorted segment parameters between 0 and 1 where the segment
+		 * meets a polygon ring or linework vertex, or crosses linework of the
+		 * shape, ending with 1
+		 *
+		 * @return segment parameters
+		 */
+		List<Double> segmentSplits(double x1, double y1, double x2,
+				double y2) {
+			List<Double> splits = new ArrayList<>();
+			double dx = x2 - x1;
+			double dy = y2 - y1;
+			double lengthSquared = dx * dx + dy * dy;
+			if (lengthSquared > 0) {
+				List<double[]> boundaries = new ArrayList<>();
+				for (List<double[]> polygon : polygons) {
+					boundaries.addAll(polygon);
+				}
+				boundaries.addAll(linework);
+				for (double[] path : boundaries) {
+					int count = path.length / 2;
+					for (int i = 0; i < count; i++) {
+						double px = path[i * 2];
+						double py = path[i * 2 + 1];
+						if (orientation(x1, y1, x2, y2, px, py) == 0
+								&& onSegment(x1, y1, x2, y2, px, py)) {
+							splits.add(((px - x1) * dx + (py - y1) * dy)
+									/ lengthSquared);
+						}
+					}
+				}
+				for (double[] path : linework) {
+					for (int i = 0; i + 3 < path.length; i += 2) {
+						if (segmentsCross(x1, y1, x2, y2, path[i],
+								path[i + 1], path[i + 2], path[i + 3])) {
+							double d1 = orientation(path[i], path[i + 1],
+									path[i + 2], path[i + 3], x1, y1);
+							double d2 = orientation(path[i], path[i + 1],
+									path[i + 2], path[i + 3], x2, y2);
+							splits.add(d1 / (d1 - d2));
+						}
+					}
+				}
+				Collections.sort(splits);
+			}
+			splits.add(1.0);
+			return splits;
+		}
+
+		/**
+		 * Check if the segment properly crosses a polygon boundary of the
+		 * shape
+		 *
+		 * @return true if crosses
+		 */
+		boolean crossesBoundary(double x1, double y1, double x2, double y2) {
+			for (List<double[]> polygon : polygons) {
+				for (double[] ring : polygon) {
+					int count = ring.length / 2;
+					for (int i = 0, j = count - 1; i < count; j = i++) {
+						if (segmentsCross(x1, y1, x2, y2, ring[j * 2],
+								ring[j * 2 + 1], ring[i * 2],
+								ring[i * 2 + 1])) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+	}
+
+
+	/**
+	 * Polygon ring edges indexed into horizontal strips, each strip holding
+	 * the edges whose y range overlaps it. Locating a point only tests the
+	 * edges of its strip, tracking the ray casting parity per ring.
+	 */
+	private static class EdgeIndex {
+
+		/**
+		 * Min number of ring edges to build an index
+		 */
+		static final int MIN_EDGES = 64;
+
+		/**
+		 * Max number of strips
+		 */
+		private static final int MAX_STRIPS = 4096;
+
+		/**
+		 * Edge coordinates as x1, y1, x2, y2 values per edge
+		 */
+		private final double[] edges;
+
+		/**
+		 * Ring index of each edge
+		 */
+		private final int[] edgeRings;
+
+		/**
+		 * First ring index of each polygon, followed by the total ring count
+		 */
+		private final int[] polygonRings;
+
+		/**
+		 * Strip edge indexes
+		 */
+		private final int[][] strips;
+
+		/**
+		 * Indexed min y
+		 */
+		private final double minY;
+
+		/**
+		 * Indexed max y
+		 */
+		private final double maxY;
+
+		/**
+		 * Number of strips
+		 */
+		private final int stripCount;
+
+		/**
+		 * Strip height
+		 */
+		private final double stripHeight;
+
+		/**
+		 * Constructor
+		 *
+		 * @param polygons
+		 *            polygons as lists of rings, exterior ring first
+		 * @param edgeCount
+		 *            number of ring edges
+		 */
+		EdgeIndex(List<List<double[]>> polygons, int edgeCount) {
+
+			edges = new double[edgeCount * 4];
+			edgeRings = new int[edgeCount];
+			polygonRings = new int[polygons.size() + 1];
+
+			double minY = Double.POSITIVE_INFINITY;
+			double maxY = Double.NEGATIVE_INFINITY;
+			int edge = 0;
+			int ringIndex = 0;
+			for (int p = 0; p < polygons.size(); p++) {
+				polygonRings[p] = ringIndex;
+				for (double[] ring : polygons.get(p)) {
+					int count = ring.length / 2;
+					for (int i = 0, j = count - 1; i < count; j = i++) {
+						int offset = edge * 4;
+						edges[offset] = ring[i * 2];
+						edges[offset + 1] = ring[i * 2 + 1];
+						edges[offset + 2] = ring[j * 2];
+						edges[offset + 3] = ring[j * 2 + 1];
+						edgeRings[edge++] = ringIndex;
+						minY = Math.min(minY, ring[i * 2 + 1]);
+						maxY = Math.max(maxY, ring[i * 2 + 1]);
+					}
+					ringIndex++;
+				}
+			}
+			polygonRings[polygons.size()] = ringIndex;
+			this.minY = minY;
+			this.maxY = maxY;
+
+			stripCount = Math.max(1, Math.min(MAX_STRIPS, edgeCount / 4));
+			stripHeight = maxY > minY ? (maxY - minY) / stripCount : 1;
+
+			int[] counts = new int[stripCount];
+			for (int e = 0; e < edgeCount; e++) {
+				for (int i = strip(edgeMinY(e)); i <= strip(edgeMaxY(e)); i++) {
+					counts[i]++;
+				}
+			}
+			strips = new int[stripCount][];
+			for (int i = 0; i < stripCount; i++) {
+				strips[i] = new int[counts[i]];
+				counts[i] = 0;
+			}
+			for (int e = 0; e < edgeCount; e++) {
+				for (int i = strip(edgeMinY(e)); i <= strip(edgeMaxY(e)); i++) {
+					strips[i][counts[i]++] = e;
+				}
+			}
+		}
+
+		/**
+		 * Locate a point relative to the indexed polygons, equivalent to
+		 * testing each polygon ring
+		 *
+		 * @param x
+		 *            x coordinate
+		 * @param y
+		 *            y coordinate
+		 * @return 1 if inside, 0 if on a boundary, -1 if outside
+		 */
+		int locate(double x, double y) {
+
+			if (y < minY || y > maxY) {
+				return -1;
+			}
+
+			// Per ring state: bit 1 inside parity, bit 2 on the ring
+			byte[] rings = new byte[polygonRings[polygonRings.length - 1]];
+			for (int e : strips[strip(y)]) {
+				int offset = e * 4;
+				double xi = edges[offset];
+				double yi = edges[offset + 1];
+				double xj = edges[offset + 2];
+				double yj = edges[offset + 3];
+				if (orientation(xj, yj, xi, yi, x, y) == 0
+						&& onSegment(xj, yj, xi, yi, x, y)) {
+					rings[edgeRings[e]] |= 2;
+				} else if ((yi > y) != (yj > y)
+						&& x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+					rings[edgeRings[e]] ^= 1;
+				}
+			}
+
+			int location = -1;
+			for (int p = 0; p + 1 < polygonRings.length; p++) {
+				int first = polygonRings[p];
+				int polygonLocation = ringLocation(rings[first]);
+				if (polygonLocation > 0) {
+					for (int r = first + 1; r < polygonRings[p + 1]; r++) {
+						int holeLocation = ringLocation(rings[r]);
+						if (holeLocation >= 0) {
+							polygonLocation = holeLocation == 0 ? 0 : -1;
+							break;
+						}
+					}
+				}
+				location = Math.max(location, polygonLocation);
+				if (location > 0) {
+					break;
+				}
+			}
+			return location;
+		}
+
+		/**
+		 * Check if any indexed edge intersects the closed rectangle
+		 *
+		 * @return true if intersects
+		 */
+		boolean intersectsRectangle(double rectMinX, double rectMinY,
+				double rectMaxX, double rectMaxY) {
+			if (rectMaxY < minY || rectMinY > maxY) {
+				return false;
+			}
+			int last = strip(Math.min(rectMaxY, maxY));
+			for (int i = strip(Math.max(rectMinY, minY)); i <= last; i++) {
+				for (int e : strips[i]) {
+					int offset = e * 4;
+					if (segmentIntersectsRectangle(edges[offset],
+							edges[offset + 1], edges[offset + 2],
+							edges[offset + 3], rectMinX, rectMinY, rectMaxX,
+							rectMaxY)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Get the ring location from the ring state
+		 *
+		 * @param state
+		 *            ring state
+		 * @return 1 if inside, 0 if on the ring, -1 if outside
+		 */
+		private static int ringLocation(byte state) {
+			int location;
+			if ((state & 2) != 0) {
+				location = 0;
+			} else if ((state & 1) != 0) {
+				location = 1;
+			} else {
+				location = -1;
+			}
+			return location;
+		}
+
+		/**
+		 * Get the strip of the y coordinate
+		 *
+		 * @param y
+		 *            y coordinate within the indexed range
+		 * @return strip
+		 */
+		private int strip(double y) {
+			int strip = (int) ((y - minY) / stripHeight);
+			return Math.max(0, Math.min(stripCount - 1, strip));
+		}
+
+		/**
+		 * Get the min y of the edge
+		 *
+		 * @param edge
+		 *            edge index
+		 * @return min y
+		 */
+		private double edgeMinY(int edge) {
+			return Math.min(edges[edge * 4 + 1], edges[edge * 4 + 3]);
+		}
+
+		/**
+		 * Get the max y of the edge
+		 *
+		 * @param edge
+		 *            edge index
+		 * @return max y
+		 */
+		private double edgeMaxY(int edge) {
+			return Math.max(edges[edge * 4 + 1], edges[edge * 4 + 3]);
+		}
+
+	}
+
+}
@@ -0,0 +1,1057 @@
+package mil.nga.geopackage.geom;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.sf.CircularString;
+import mil.nga.sf.CompoundCurve;
+import mil.nga.sf.Curve;
+import mil.nga.sf.CurvePolygon;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryCollection;
+import mil.nga.sf.GeometryType;
+import mil.nga.sf.LineString;
+import mil.nga.sf.MultiLineString;
+import mil.nga.sf.MultiPoint;
+import mil.nga.sf.MultiPolygon;
+import mil.nga.sf.Point;
+import mil.nga.sf.Polygon;
+import mil.nga.sf.PolyhedralSurface;
+import mil.nga.sf.TIN;
+import mil.nga.sf.Triangle;
+
+/**
+ * Decodes Well-Known Text geometries, JSON values, and GeoJSON geometry
+ * objects. The counterpart of {@link GeometryTextEncoder}, without external
+ * JSON or WKT library dependencies. Untagged WKT coordinates with three or
+ * four values are read as z or z and m values.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class GeometryTextDecoder {
+
+	/**
+	 * Decode a Well-Known Text geometry
+	 *
+	 * @param wkt
+	 *            WKT
+	 * @return geometry
+	 */
+	public static Geometry fromWKT(String wkt) {
+		WKTReader reader = new WKTReader(wkt);
+		Geometry geometry = reader.readGeometry(null, null);
+		reader.expectEnd();
+		return geometry;
+	}
+
+	/**
+	 * Parse a JSON value
+	 *
+	 * @param json
+	 *            JSON text
+	 * @return value as an ordered map, list, string, long, double, boolean, or
+	 *         null
+	 */
+	public static Object parseJSON(String json) {
+		JSONReader reader = new JSONReader(json);
+		Object value = reader.readValue();
+		reader.skipWhitespace();
+		if (reader.index < json.length()) {
+			throw reader.error("Unexpected trailing content");
+		}
+		return value;
+	}
+
+	/**
+	 * Decode a GeoJSON geometry object
+	 *
+	 * @param json
+	 *            GeoJSON geometry text
+	 * @return geometry, null for a JSON null
+	 */
+	public static Geometry fromGeoJSON(String json) {
+		return fromGeoJSON(parseJSON(json));
+	}
+
+	/**
+	 * Decode a parsed GeoJSON geometry object
+	 *
+	 * @param json
+	 *            parsed GeoJSON geometry map
+	 * @return geometry, null for a JSON null
+	 */
+	public static Geometry fromGeoJSON(Object json) {
+
+		if (json == null) {
+			return null;
+		}
+		if (!(json instanceof Map)) {
+			throw new GeoPackageException(
+					"GeoJSON geometry is not an object: " + json);
+		}
+		Map<?, ?> object = (Map<?, ?>) json;
+		Object type = object.get("type");
+
+		Geometry geometry;
+		if ("GeometryCollection".equals(type)) {
+			List<?> geometries = toList(object.get("geometries"));
+			List<Geometry> children = new ArrayList<>();
+			boolean hasZ = false;
+			for (Object child : geometries) {
+				Geometry childGeometry = fromGeoJSON(child);
+				if (childGeometry != null) {
+					children.add(childGeometry);
+					hasZ = hasZ || childGeometry.hasZ();
+				}
+			}
+			GeometryCollection<Geometry> collection = new GeometryCollection<>(
+					hasZ, false);
+			for (Geometry child : children) {
+				collection.addGeometry(child);
+			}
+			geometry = collection;
+		} else {
+			Object coordinates = object.get("coordinates");
+			boolean hasZ = hasJSONZ(coordinates);
+			if ("Point".equals(type)) {
+				List<?> position = toList(coordinates);
+				if (position.isEmpty()) {
+					geometry = new Point(hasZ, false, Double.NaN,
+							Double.NaN);
+				} else {
+					geometry = toPoint(position, hasZ);
+				}
+			} else if ("LineString".equals(type)) {
+				geometry = toLineString(new LineString(hasZ, false),
+						coordinates, hasZ);
+			} else if ("Polygon".equals(type)) {
+				geometry = toPolygon(coordinates, hasZ);
+			} else if ("MultiPoint".equals(type)) {
+				MultiPoint multiPoint = new MultiPoint(hasZ, false);
+				for (Object position : toList(coordinates)) {
+					multiPoint.addPoint(toPoint(toList(position), hasZ));
+				}
+				geometry = multiPoint;
+			} else if ("MultiLineString".equals(type)) {
+				MultiLineString multiLineString = new MultiLineString(hasZ,
+						false);
+				for (Object line : toList(coordinates)) {
+					multiLineString.addLineString(toLineString(
+							new LineString(hasZ, false), line, hasZ));
+				}
+				geometry = multiLineString;
+			} else if ("MultiPolygon".equals(type)) {
+				MultiPolygon multiPolygon = new MultiPolygon(hasZ, false);
+				for (Object polygon : toList(coordinates)) {
+					multiPolygon.addPolygon(toPolygon(polygon, hasZ));
+				}
+				geometry = multiPolygon;
+			} else {
+				throw new GeoPackageException(
+						"Unsupported GeoJSON geometry type: " + type);
+			}
+		}
+
+		return geometry;
+	}
+
+	/**
+	 * Cast a JSON value to a list
+	 *
+	 * @param value
+	 *            JSON value
+	 * @return list
+	 */
+	private static List<?> toList(Object value) {
+		if (!(value instanceof List)) {
+			throw new GeoPackageException(
+					"Expected a GeoJSON array, found: " + value);
+		}
+		return (List<?>) value;
+	}
+
+	/**
+	 * Determine if the first nested GeoJSON position has a z value
+	 *
+	 * @param coordinates
+	 *            GeoJSON coordinates
+	 * @return true if z values
+	 */
+	private static boolean hasJSONZ(Object coordinates) {
+		boolean hasZ = false;
+		if (coordinates instanceof List) {
+			List<?> list = (List<?>) coordinates;
+			if (!list.isEmpty()) {
+				if (list.get(0) instanceof List) {
+					hasZ = hasJSONZ(list.get(0));
+				} else {
+					hasZ = list.size() > 2;
+				}
+			}
+		}
+		return hasZ;
+	}
+
+	/**
+	 * Create a point from a GeoJSON position
+	 *
+	 * @param position
+	 *            position
+	 * @param hasZ
+	 *            true if z values
+	 * @return point
+	 */
+	private static Point toPoint(List<?> position, boolean hasZ) {
+		if (position.size() < 2) {
+			throw new GeoPackageException(
+					"GeoJSON position requires at least two values: "
+							+ position);
+		}
+		Point point = new Point(hasZ, false,
+				((Number) position.get(0)).doubleValue(),
+				((Number) position.get(1)).doubleValue());
+		if (hasZ) {
+			point.setZ(position.size() > 2
+					? ((Number) position.get(2)).doubleValue()
+					: 0.0);
+		}
+		return point;
+	}
+
+	/**
+	 * Add the GeoJSON positions to the line string
+	 *
+	 * @param lineString
+	 *            line string
+	 * @param positions
+	 *            positions
+	 * @param hasZ
+	 *            true if z values
+	 * @return line string
+	 */
+	private static LineString toLineString(LineString lineString,
+			Object positions, boolean hasZ) {
+		for (Object position : toList(positions)) {
+			lineString.addPoint(toPoint(toList(position), hasZ));
+		}
+		return lineString;
+	}
+
+	/**
+	 * Create a polygon from GeoJSON ring coordinates
+	 *
+	 * @param rings
+	 *            rings
+	 * @param hasZ
+	 *            true if z values
+	 * @return polygon
+	 */
+	private static Polygon toPolygon(Object rings, boolean hasZ) {
+		Polygon polygon = new Polygon(hasZ, false);
+		for (Object ring : toList(rings)) {
+			polygon.addRing(
+					toLineString(new LineString(hasZ, false), ring, hasZ));
+		}
+		return polygon;
+	}
+
+	/**
+	 * Well-Known Text reader
+	 */
+	private static class WKTReader {
+
+		/**
+		 * WKT text
+		 */
+		private final String wkt;
+
+		/**
+		 * Current index
+		 */
+		private int index = 0;
+
+		/**
+		 * Constructor
+		 *
+		 * @param wkt
+		 *            WKT text
+		 */
+		private WKTReader(String wkt) {
+			this.wkt = wkt;
+		}
+
+		/**
+		 * Read a tagged geometry
+		 *
+		 * @param hasZ
+		 *            parent z flag, null when not known
+		 * @param hasM
+		 *            parent m flag, null when not known
+		 * @return geometry
+		 */
+		private Geometry readGeometry(Boolean hasZ, Boolean hasM) {
+
+			String word = readWord().toUpperCase(Locale.US);
+
+			// Dimensions may be attached to the type, as in POINTZ
+			GeometryType geometryType = toGeometryType(word);
+			String dimensions = null;
+			if (geometryType == null) {
+				for (String suffix : new String[] { "ZM", "Z", "M" }) {
+					if (word.endsWith(suffix)) {
+						geometryType = toGeometryType(word.substring(0,
+								word.length() - suffix.length()));
+						if (geometryType != null) {
+							dimensions = suffix;
+							break;
+						}
+					}
+				}
+				if (geometryType == null) {
+					throw error("Unsupported geometry type: " + word);
+				}
+			}
+
+			if (dimensions == null) {
+				String next = peekWord();
+				if (next != null) {
+					next = next.toUpperCase(Locale.US);
+					if (next.equals("Z") || next.equals("M")
+							|| next.equals("ZM")) {
+						dimensions = readWord().toUpperCase(Locale.US);
+					}
+				}
+			}
+
+			if (dimensions != null) {
+				hasZ = dimensions.contains("Z");
+				hasM = dimensions.contains("M");
+			} else if (hasZ == null || hasM == null) {
+				int values = countFirstCoordinateValues();
+				hasZ = values >= 3;
+				hasM = values >= 4;
+			}
+
+			return readGeometryText(geometryType, hasZ, hasM);
+		}
+
+		/**
+		 * Read the parenthesized text of a geometry type
+		 *
+		 * @param geometryType
+		 *            geometry type
+		 * @param hasZ
+		 *            true if z values
+		 * @param hasM
+		 *            true if m values
+		 * @return geometry
+		 */
+		private Geometry readGeometryText(GeometryType geometryType,
+				boolean hasZ, boolean hasM) {
+
+			boolean empty = readEmpty();
+
+			Geometry geometry;
+			switch (geometryType) {
+			case POINT:
+				if (empty) {
+					geometry = new Point(hasZ, hasM, Double.NaN,
+							Double.NaN);
+				} else {
+					expect('(');
+					geometry = readPoint(hasZ, hasM);
+					expect(')');
+				}
+				break;
+			case LINESTRING:
+				geometry = readPoints(new LineString(hasZ, hasM), empty, hasZ,
+						hasM);
+				break;
+			case CIRCULARSTRING:
+				geometry = readPoints(new CircularString(hasZ, hasM), empty,
+						hasZ, hasM);
+				break;
+			case POLYGON:
+				geometry = readRings(new Polygon(hasZ, hasM), empty, hasZ,
+						hasM);
+				break;
+			case TRIANGLE:
+				geometry = readRings(new Triangle(hasZ, hasM), empty, hasZ,
+						hasM);
+				break;
+			case MULTIPOINT:
+				MultiPoint multiPoint = new MultiPoint(hasZ, hasM);
+				if (!empty) {
+					expect('(');
+					do {
+						boolean parenthesized = peek() == '(';
+						if (parenthesized) {
+							expect('(');
+						}
+						multiPoint.addPoint(readPoint(hasZ, hasM));
+						if (parenthesized) {
+							expect(')');
+						}
+					} while (readComma());
+					expect(')');
+				}
+				geometry = multiPoint;
+				break;
+			case MULTILINESTRING:
+				MultiLineString multiLineString = new MultiLineString(hasZ,
+						hasM);
+				if (!empty) {
+					expect('(');
+					do {
+						multiLineString.addLineString(readPoints(
+								new LineString(hasZ, hasM), false, hasZ,
+								hasM));
+					} while (readComma());
+					expect(')');
+				}
+				geometry = multiLineString;
+				break;
+			case MULTIPOLYGON:
+				MultiPolygon multiPolygon = new MultiPolygon(hasZ, hasM);
+				if (!empty) {
+					expect('(');
+					do {
+						multiPolygon.addPolygon(readRings(
+								new Polygon(hasZ, hasM), false, hasZ, hasM));
+					} while (readComma());
+					expect(')');
+				}
+				geometry = multiPolygon;
+				break;
+			case POLYHEDRALSURFACE:
+			case TIN:
+				PolyhedralSurface surface = geometryType == GeometryType.TIN
+						? new TIN(hasZ, hasM)
+						: new PolyhedralSurface(hasZ, hasM);
+				if (!empty) {
+					expect('(');
+					do {
+						Polygon polygon = geometryType == GeometryType.TIN
+								? new Triangle(hasZ, hasM)
+								: new Polygon(hasZ, hasM);
+						surface.addPolygon(
+								readRings(polygon, false, hasZ, hasM));
+					} while (readComma());
+					expect(')');
+				}
+				geometry = surface;
+				break;
+			case COMPOUNDCURVE:
+				CompoundCurve compoundCurve = new CompoundCurve(hasZ, hasM);
+				if (!empty) {
+					expect('(');
+					do {
+						compoundCurve.addLineString(
+								(LineString) readCurve(hasZ, hasM, false));
+					} while (readComma());
+					expect(')');
+				}
+				geometry = compoundCurve;
+				break;
+			case CURVEPOLYGON:
+				CurvePolygon<Curve> curvePolygon = new CurvePolygon<>(hasZ,
+						hasM);
+				if (!empty) {
+					expect('(');
+					do {
+						curvePolygon.addRing(readCurve(hasZ, hasM, true));
+					} while (readComma());
+					expect(')');
+				}
+				geometry = curvePolygon;
+				break;
+			default:
+				GeometryCollection<Geometry> collection = new GeometryCollection<>(
+						hasZ, hasM);
+				if (!empty) {
+					expect('(');
+					do {
+						if (peek() == '(') {
+							collection.addGeometry(
+									geometryType == GeometryType.MULTISURFACE
+											? readRings(
+													new Polygon(hasZ, hasM),
+													false, hasZ, hasM)
+											: readPoints(
+													new LineString(hasZ,
+															hasM),
+													false, hasZ, hasM));
+						} else {
+							collection.addGeometry(readGeometry(hasZ, hasM));
+						}
+					} while (readComma());
+					expect(')');
+				}
+				geometry = collection;
+			}
+
+			return geometry;
+		}
+
+		/**
+		 * Read a curve, either untagged line string text or a tagged curve
+		 *
+		 * @param hasZ
+		 *            true if z values
+		 * @param hasM
+		 *            true if m values
+		 * @param compound
+		 *            true to allow compound curves
+		 * @return curve
+		 */
+		private Curve readCurve(boolean hasZ, boolean hasM, boolean compound) {
+			Curve curve;
+			if (peek() == '(') {
+				curve = readPoints(new LineString(hasZ, hasM), false, hasZ,
+						hasM);
+			} else {
+				Geometry geometry = readGeometry(hasZ, hasM);
+				if (!(geometry instanceof LineString)
+						&& !(compound && geometry instanceof CompoundCurve)) {
+					throw error("Unexpected curve type: "
+							+ geometry.getGeometryType().getName());
+				}
+				curve = (Curve) geometry;
+			}
+			return curve;
+		}
+
+		/**
+		 * Read parenthesized points into the line string
+		 *
+		 * @param lineString
+		 *            line string
+		 * @param empty
+		 *            true if already read as empty
+		 * @param hasZ
+		 *            true if z values
+		 * @param hasM
+		 *            true if m values
+		 * @return line string
+		 */
+		private <T extends LineString> T readPoints(T lineString,
+				boolean empty, boolean hasZ, boolean hasM) {
+			if (!empty && !readEmpty()) {
+				expect('(');
+				do {
+					lineString.addPoint(readPoint(hasZ, hasM));
+				} while (readComma());
+				expect(')');
+			}
+			return lineString;
+		}
+
+		/**
+		 * Read parenthesized rings into the polygon
+		 *
+		 * @param polygon
+		 *            polygon
+		 * @param empty
+		 *            true if already read as empty
+		 * @param hasZ
+		 *            true if z values
+		 * @param hasM
+		 *            true if m values
+		 * @return polygon
+		 */
+		private Polygon readRings(Polygon polygon, boolean empty,
+				boolean hasZ, boolean hasM) {
+			if (!empty && !readEmpty()) {
+				expect('(');
+				do {
+					polygon.addRing(readPoints(new LineString(hasZ, hasM),
+							false, hasZ, hasM));
+				} while (readComma());
+				expect(')');
+			}
+			return polygon;
+		}
+
+		/**
+		 * Read a coordinate
+		 *
+		 * @param hasZ
+		 *            true if z values
+		 * @param hasM
+		 *            true if m values
+		 * @return point
+		 */
+		private Point readPoint(boolean hasZ, boolean hasM) {
+			Point point = new Point(hasZ, hasM, readNumber(), readNumber());
+			if (hasZ) {
+				point.setZ(readNumber());
+			}
+			if (hasM) {
+				point.setM(readNumber());
+			}
+			return point;
+		}
+
+		/**
+		 * Count the values of the next coordinate without consuming input
+		 *
+		 * @return number of coordinate values, 0 if none
+		 */
+		private int countFirstCoordinateValues() {
+			int start = index;
+			int values = 0;
+			while (index < wkt.length()) {
+				char c = wkt.charAt(index);
+				if (c == ',' || c == ')') {
+					if (values > 0) {
+						break;
+					}
+					index++;
+				} else if (c == '(' || Character.isWhitespace(c)) {
+					index++;
+				} else if (Character.isLetter(c) && !isNumberStart()) {
+					// Nested tagged geometry, skip the word
+					readWord();
+				} else {
+					readNumber();
+					values++;
+				}
+			}
+			index = start;
+			return values;
+		}
+
+		/**
+		 * Read an EMPTY keyword if next
+		 *
+		 * @return true if empty
+		 */
+		private boolean readEmpty() {
+			String next = peekWord();
+			boolean empty = next != null && next.equalsIgnoreCase("EMPTY");
+			if (empty) {
+				readWord();
+			}
+			return empty;
+		}
+
+		/**
+		 * Read a comma if next
+		 *
+		 * @return true if a comma was read
+		 */
+		private boolean readComma() {
+			boolean comma = peek() == ',';
+			if (comma) {
+				index++;
+			}
+			return comma;
+		}
+
+		/**
+		 * Expect and read the character
+		 *
+		 * @param expected
+		 *            expected character
+		 */
+		private void expect(char expected) {
+			if (peek() != expected) {
+				throw error("Expected '" + expected + "'");
+			}
+			index++;
+		}
+
+		/**
+		 * Expect the end of the text
+		 */
+		private void expectEnd() {
+			if (peek() != 0) {
+				throw error("Unexpected trailing content");
+			}
+		}
+
+		/**
+		 * Peek at the next non whitespace character
+		 *
+		 * @return character, 0 at the end
+		 */
+		private char peek() {
+			while (index < wkt.length()
+					&& Character.isWhitespace(wkt.charAt(index))) {
+				index++;
+			}
+			return index < wkt.length() ? wkt.charAt(index) : 0;
+		}
+
+		/**
+		 * Peek at the next word without consuming it
+		 *
+		 * @return word, null if the next token is not a word
+		 */
+		private String peekWord() {
+			int start = index;
+			String word = null;
+			if (Character.isLetter(peek())) {
+				word = readWord();
+			}
+			index = start;
+			return word;
+		}
+
+		/**
+		 * Read a word
+		 *
+		 * @return word
+		 */
+		private String readWord() {
+			peek();
+			int start = index;
+			while (index < wkt.length()
+					&& Character.isLetterOrDigit(wkt.charAt(index))) {
+				index++;
+			}
+			if (start == index) {
+				throw error("Expected a word");
+			}
+			return wkt.substring(start, index);
+		}
+
+		/**
+		 * Read a number
+		 *
+		 * @return number
+		 */
+		private double readNumber() {
+			peek();
+			int start = index;
+			while (index < wkt.length()) {
+				char c = wkt.charAt(index);
+				if (c == ',' || c == ')' || c == '('
+						|| Character.isWhitespace(c)) {
+					break;
+				}
+				index++;
+			}
+			try {
+				return Double.parseDouble(wkt.substring(start, index));
+			} catch (NumberFormatException e) {
+				index = start;
+				throw error("Expected a number");
+			}
+		}
+
+		/**
+		 * Determine if the current word is a number, as in NaN or Infinity
+		 *
+		 * @return true if a number
+		 */
+		private boolean isNumberStart() {
+			return wkt.startsWith("NaN", index)
+					|| wkt.startsWith("Infinity", index);
+		}
+
+		/**
+		 * Get the geometry type of the name
+		 *
+		 * @param name
+		 *            upper case name
+		 * @return geometry type, null if not found
+		 */
+		private static GeometryType toGeometryType(String name) {
+			GeometryType geometryType = null;
+			try {
+				geometryType = GeometryType.valueOf(name);
+			} catch (IllegalArgumentException e) {
+				// not a geometry type
+			}
+			return geometryType;
+		}
+
+		/**
+		 * Create a parse error
+		 *
+		 * @param message
+		 *            message
+		 * @return exception
+		 */
+		private GeoPackageException error(String message) {
+			return new GeoPackageException(message + " at index " + index
+					+ " of WKT: " + wkt);
+		}
+
+	}
+
+	/**
+	 * JSON value reader
+	 */
+	private static class JSONReader {
+
+		/**
+		 * JSON text
+		 */
+		private final String json;
+
+		/**
+		 * Current index
+		 */
+		private int index = 0;
+
+		/**
+		 * Constructor
+		 *
+		 * @param json
+		 *            JSON text
+		 */
+		private JSONReader(String json) {
+			this.json = json;
+		}
+
+		/**
+		 * Read a value
+		 *
+		 * @return value
+		 */
+		private Object readValue() {
+			skipWhitespace();
+			if (index >= json.length()) {
+				throw error("Unexpected end");
+			}
+			char c = json.charAt(index);
+			Object value;
+			switch (c) {
+			case '{':
+				value = readObject();
+				break;
+			case '[':
+				value = readArray();
+				break;
+			case '"':
+				value = readString();
+				break;
+			case 't':
+				readLiteral("true");
+				value = Boolean.TRUE;
+				break;
+			case 'f':
+				readLiteral("false");
+				value = Boolean.FALSE;
+				break;
+			case 'n':
+				readLiteral("null");
+				value = null;
+				break;
+			default:
+				value = readNumber();
+			}
+			return value;
+		}
+
+		/**
+		 * Read an object
+		 *
+		 * @return ordered map
+		 */
+		private Map<String, Object> readObject() {
+			Map<String, Object> object = new LinkedHashMap<>();
+			index++;
+			skipWhitespace();
+			if (peek() == '}') {
+				index++;
+				return object;
+			}
+			while (true) {
+				skipWhitespace();
+				if (peek() != '"') {
+					throw error("Expected an object key");
+				}
+				String key = readString();
+				skipWhitespace();
+				if (peek() != ':') {
+					throw error("Expected ':'");
+				}
+				index++;
+				object.put(key, readValue());
+				skipWhitespace();
+				char c = peek();
+				index++;
+				if (c == '}') {
+					break;
+				} else if (c != ',') {
+					index--;
+					throw error("Expected ',' or '}'");
+				}
+			}
+			return object;
+		}
+
+		/**
+		 * Read an array
+		 *
+		 * @return list
+		 */
+		private List<Object> readArray() {
+			List<Object> array = new ArrayList<>();
+			index++;
+			skipWhitespace();
+			if (peek() == ']') {
+				index++;
+				return array;
+			}
+			while (true) {
+				array.add(readValue());
+				skipWhitespace();
+				char c = peek();
+				index++;
+				if (c == ']') {
+					break;
+				} else if (c != ',') {
+					index--;
+					throw error("Expected ',' or ']'");
+				}
+			}
+			return array;
+		}
+
+		/**
+		 * Read a string
+		 *
+		 * @return string
+		 */
+		private String readString() {
+			index++;
+			StringBuilder value = new StringBuilder();
+			while (true) {
+				if (index >= json.length()) {
+					throw error("Unterminated string");
+				}
+				char c = json.charAt(index++);
+				if (c == '"') {
+					break;
+				} else if (c == '\\') {
+					if (index >= json.length()) {
+						throw error("Unterminated string");
+					}
+					char escaped = json.charAt(index++);
+					switch (escaped) {
+					case 'b':
+						value.append('\b');
+						break;
+					case 'f':
+						value.append('\f');
+						break;
+					case 'n':
+						value.append('\n');
+						break;
+					case 'r':
+						value.append('\r');
+						break;
+					case 't':
+						value.append('\t');
+						break;
+					case 'u':
+						if (index + 4 > json.length()) {
+							throw error("Invalid unicode escape");
+						}
+						value.append((char) Integer.parseInt(
+								json.substring(index, index + 4), 16));
+						index += 4;
+						break;
+					default:
+						value.append(escaped);
+					}
+				} else {
+					value.append(c);
+				}
+			}
+			return value.toString();
+		}
+
+		/**
+		 * Read a number
+		 *
+		 * @return long for integers within range, otherwise double
+		 */
+		private Number readNumber() {
+			int start = index;
+			boolean integer = true;
+			while (index < json.length()) {
+				char c = json.charAt(index);
+				if (c == '.' || c == 'e' || c == 'E') {
+					integer = false;
+				} else if (!(c == '-' || c == '+'
+						|| (c >= '0' && c <= '9'))) {
+					break;
+				}
+				index++;
+			}
+			String text = json.substring(start, index);
+			try {
+				Number number;
+				if (integer) {
+					try {
+						number = Long.parseLong(text);
+					} catch (NumberFormatException e) {
+						number = Double.parseDouble(text);
+					}
+				} else {
+					number = Double.parseDouble(text);
+				}
+				return number;
+			} catch (NumberFormatException e) {
+				index = start;
+				throw error("Invalid value");
+			}
+		}
+
+		/**
+		 * Read a literal
+		 *
+		 * @param literal
+		 *            expected literal
+		 */
+		private void readLiteral(String literal) {
+			if (!json.startsWith(literal, index)) {
+				throw error("Expected " + literal);
+			}
+			index += literal.length();
+		}
+
+		/**
+		 * Peek at the current character
+		 *
+		 * @return character, 0 at the end
+		 */
+		private char peek() {
+			return index < json.length() ? json.charAt(index) : 0;
+		}
+
+		/**
+		 * Skip whitespace
+		 */
+		private void skipWhitespace() {
+			while (index < json.length()
+					&& Character.isWhitespace(json.charAt(index))) {
+				index++;
+			}
+		}
+
+		/**
+		 * Create a parse error
+		 *
+		 * @param message
+		 *            message
+		 * @return exception
+		 */
+		private GeoPackageException error(String message) {
+			return new GeoPackageException(
+					message + " at index " + index + " of JSON");
+		}
+
+	}
+
+}
@@ -0,0 +1,476 @@
+package mil.nga.geopackage.geom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.sf.CompoundCurve;
+import mil.nga.sf.Curve;
+import mil.nga.sf.CurvePolygon;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryCollection;
+import mil.nga.sf.GeometryType;
+import mil.nga.sf.LineString;
+import mil.nga.sf.Point;
+import mil.nga.sf.PolyhedralSurface;
+
+/**
+ * Encodes geometries as Well-Known Text and GeoJSON geometry objects,
+ * appending directly to a string builder so large exports avoid intermediate
+ * strings. GeoJSON has no curve, surface or measure support, so curves are
+ * written as their points, polyhedral surfaces and TINs as multi polygons, and
+ * m values are dropped.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class GeometryTextEncoder {
+
+	/**
+	 * Encode the geometry as Well-Known Text
+	 *
+	 * @param geometry
+	 *            geometry
+	 * @return WKT
+	 */
+	public static String toWKT(Geometry geometry) {
+		StringBuilder wkt = new StringBuilder();
+		writeWKT(geometry, wkt);
+		return wkt.toString();
+	}
+
+	/**
+	 * Write the geometry as Well-Known Text
+	 *
+	 * @param geometry
+	 *            geometry
+	 * @param wkt
+	 *            string builder to append to
+	 */
+	public static void writeWKT(Geometry geometry, StringBuilder wkt) {
+		wkt.append(geometry.getGeometryType().getName());
+		if (geometry.hasZ() && geometry.hasM()) {
+			wkt.append(" ZM");
+		} else if (geometry.hasZ()) {
+			wkt.append(" Z");
+		} else if (geometry.hasM()) {
+			wkt.append(" M");
+		}
+		wkt.append(" ");
+		writeWKTText(geometry, wkt);
+	}
+
+	/**
+	 * Encode the geometry as a GeoJSON geometry object
+	 *
+	 * @param geometry
+	 *            geometry
+	 * @return GeoJSON
+	 */
+	public static String toGeoJSON(Geometry geometry) {
+		StringBuilder json = new StringBuilder();
+		writeGeoJSON(geometry, json);
+		return json.toString();
+	}
+
+	/**
+	 * Write the geometry as a GeoJSON geometry object
+	 *
+	 * @param geometry
+	 *            geometry
+	 * @param json
+	 *            string builder to append to
+	 */
+	public static void writeGeoJSON(Geometry geometry, StringBuilder json) {
+
+		GeometryType geometryType = geometry.getGeometryType();
+
+		switch (geometryType) {
+		case POINT:
+			json.append("{\"type\":\"Point\",\"coordinates\":");
+			if (geometry.isEmpty()) {
+				json.append("[]");
+			} else {
+				writeJSONPosition((Point) geometry, json);
+			}
+			json.append("}");
+			break;
+		case LINESTRING:
+		case CIRCULARSTRING:
+		case COMPOUNDCURVE:
+			json.append("{\"type\":\"LineString\",\"coordinates\":");
+			writeJSONPositions(getPoints((Curve) geometry), json);
+			json.append("}");
+			break;
+		case POLYGON:
+		case TRIANGLE:
+		case CURVEPOLYGON:
+			json.append("{\"type\":\"Polygon\",\"coordinates\":");
+			writeJSONRings((CurvePolygon<?>) geometry, json);
+			json.append("}");
+			break;
+		case POLYHEDRALSURFACE:
+		case TIN:
+			json.append("{\"type\":\"MultiPolygon\",\"coordinates\":[");
+			List<? extends CurvePolygon<?>> surfacePolygons = ((PolyhedralSurface) geometry)
+					.getPolygons();
+			for (int i = 0; i < surfacePolygons.size(); i++) {
+				if (i > 0) {
+					json.append(",");
+				}
+				writeJSONRings(surfacePolygons.get(i), json);
+			}
+			json.append("]}");
+			break;
+		case MULTIPOINT:
+		case MULTILINESTRING:
+		case MULTIPOLYGON:
+			writeJSONMulti((GeometryCollection<?>) geometry, json);
+			break;
+		default:
+			if (!(geometry instanceof GeometryCollection)) {
+				throw new GeoPackageException(
+						"Unsupported Geometry Type: " + geometryType.getName());
+			}
+			json.append("{\"type\":\"GeometryCollection\",\"geometries\":[");
+			List<?> geometries = ((GeometryCollection<?>) geometry)
+					.getGeometries();
+			for (int i = 0; i < geometries.size(); i++) {
+				if (i > 0) {
+					json.append(",");
+				}
+				writeGeoJSON((Geometry) geometries.get(i), json);
+			}
+			json.append("]}");
+		}
+	}
+
+	/**
+	 * Write a value as a JSON string
+	 *
+	 * @param value
+	 *            string value
+	 * @param json
+	 *            string builder to append to
+	 */
+	public static void writeJSONString(String value, StringBuilder json) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		json.append('"');
+	}
+
+	/**
+	 * Write a number, dropping the fraction of whole numbers
+	 *
+	 * @param value
+	 *            number
+	 * @param text
+	 *            string builder to append to
+	 */
+	public static void writeNumber(double value, StringBuilder text) {
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			text.append((long) value);
+		} else {
+			text.append(value);
+		}
+	}
+
+	/**
+	 * Write the parenthesized WKT text of a geometry without the type tag
+	 *
+	 * @param geometry
+	 *            geometry
+	 * @param wkt
+	 *            string builder to append to
+	 */
+	private static void writeWKTText(Geometry geometry, StringBuilder wkt) {
+
+		if (geometry.isEmpty()) {
+			wkt.append("EMPTY");
+			return;
+		}
+
+		GeometryType geometryType = geometry.getGeometryType();
+
+		switch (geometryType) {
+		case POINT:
+			wkt.append("(");
+			writeWKTPosition((Point) geometry, wkt);
+			wkt.append(")");
+			break;
+		case LINESTRING:
+		case CIRCULARSTRING:
+			List<Point> points = ((LineString) geometry).getPoints();
+			wkt.append("(");
+			for (int i = 0; i < points.size(); i++) {
+				if (i > 0) {
+					wkt.append(", ");
+				}
+				writeWKTPosition(points.get(i), wkt);
+			}
+			wkt.append(")");
+			break;
+		case COMPOUNDCURVE:
+			writeWKTCurves(((CompoundCurve) geometry).getLineStrings(), wkt);
+			break;
+		case POLYGON:
+		case TRIANGLE:
+		case CURVEPOLYGON:
+			writeWKTCurves(((CurvePolygon<?>) geometry).getRings(), wkt);
+			break;
+		case POLYHEDRALSURFACE:
+		case TIN:
+			writeWKTChildren(((PolyhedralSurface) geometry).getPolygons(),
+					false, wkt);
+			break;
+		case MULTIPOINT:
+		case MULTILINESTRING:
+		case MULTIPOLYGON:
+			writeWKTChildren(
+					((GeometryCollection<?>) geometry).getGeometries(), false,
+					wkt);
+			break;
+		default:
+			if (!(geometry instanceof GeometryCollection)) {
+				throw new GeoPackageException(
+						"Unsupported Geometry Type: " + geometryType.getName());
+			}
+			writeWKTChildren(
+					((GeometryCollection<?>) geometry).getGeometries(), true,
+					wkt);
+		}
+	}
+
+	/**
+	 * Write curves, tagging all but line strings with their type
+	 *
+	 * @param curves
+	 *            curves
+	 * @param wkt
+	 *            string builder to append to
+	 */
+	private static void writeWKTCurves(List<? extends Curve> curves,
+			StringBuilder wkt) {
+		wkt.append("(");
+		for (int i = 0; i < curves.size(); i++) {
+			if (i > 0) {
+				wkt.append(", ");
+			}
+			Curve curve = curves.get(i);
+			if (curve.getGeometryType() != GeometryType.LINESTRING) {
+				wkt.append(curve.getGeometryType().getName()).append(" ");
+			}
+			writeWKTText(curve, wkt);
+		}
+		wkt.append(")");
+	}
+
+	/**
+	 * Write child geometries
+	 *
+	 * @param geometries
+	 *            child geometries
+	 * @param tagged
+	 *            true to write full tagged child WKT
+	 * @param wkt
+	 *            string builder to append to
+	 */
+	private static void writeWKTChildren(List<?> geometries, boolean tagged,
+			StringBuilder wkt) {
+		wkt.append("(");
+		for (int i = 0; i < geometries.size(); i++) {
+			if (i > 0) {
+				wkt.append(", ");
+			}
+			Geometry child = (Geometry) geometries.get(i);
+			if (tagged) {
+				writeWKT(child, wkt);
+			} else {
+				writeWKTText(child, wkt);
+			}
+		}
+		wkt.append(")");
+	}
+
+	/**
+	 * Write a WKT point position
+	 *
+	 * @param point
+	 *            point
+	 * @param wkt
+	 *            string builder to append to
+	 */
+	private static void writeWKTPosition(Point point, StringBuilder wkt) {
+		writeNumber(point.getX(), wkt);
+		wkt.append(" ");
+		writeNumber(point.getY(), wkt);
+		if (point.hasZ()) {
+			wkt.append(" ");
+			writeNumber(point.getZ() != null ? point.getZ() : Double.NaN,
+					wkt);
+		}
+		if (point.hasM()) {
+			wkt.append(" ");
+			writeNumber(point.getM() != null ? point.getM() : Double.NaN,
+					wkt);
+		}
+	}
+
+	/**
+	 * Write the GeoJSON coordinates of a multi geometry
+	 *
+	 * @param multi
+	 *            multi point, line string or polygon
+	 * @param json
+	 *            string builder to append to
+	 */
+	private static void writeJSONMulti(GeometryCollection<?> multi,
+			StringBuilder json) {
+		GeometryType geometryType = multi.getGeometryType();
+		json.append("{\"type\":\"");
+		switch (geometryType) {
+		case MULTIPOINT:
+			json.append("MultiPoint");
+			break;
+		case MULTILINESTRING:
+			json.append("MultiLineString");
+			break;
+		default:
+			json.append("MultiPolygon");
+		}
+		json.append("\",\"coordinates\":[");
+		List<?> geometries = multi.getGeometries();
+		for (int i = 0; i < geometries.size(); i++) {
+			if (i > 0) {
+				json.append(",");
+			}
+			Geometry child = (Geometry) geometries.get(i);
+			switch (geometryType) {
+			case MULTIPOINT:
+				writeJSONPosition((Point) child, json);
+				break;
+			case MULTILINESTRING:
+				writeJSONPositions(getPoints((Curve) child), json);
+				break;
+			default:
+				writeJSONRings((CurvePolygon<?>) child, json);
+			}
+		}
+		json.append("]}");
+	}
+
+	/**
+	 * Write the GeoJSON ring coordinates of a polygon
+	 *
+	 * @param polygon
+	 *            polygon
+	 * @param json
+	 *            string builder to append to
+	 */
+	private static void writeJSONRings(CurvePolygon<?> polygon,
+			StringBuilder json) {
+		json.append("[");
+		List<? extends Curve> rings = polygon.getRings();
+		for (int i = 0; i < rings.size(); i++) {
+			if (i > 0) {
+				json.append(",");
+			}
+			writeJSONPositions(getPoints(rings.get(i)), json);
+		}
+		json.append("]");
+	}
+
+	/**
+	 * Write GeoJSON positions
+	 *
+	 * @param points
+	 *            points
+	 * @param json
+	 *            string builder to append to
+	 */
+	private static void writeJSONPositions(List<Point> points,
+			StringBuilder json) {
+		json.append("[");
+		for (int i = 0; i < points.size(); i++) {
+			if (i > 0) {
+				json.append(",");
+			}
+			writeJSONPosition(points.get(i), json);
+		}
+		json.append("]");
+	}
+
+	/**
+	 * Write a GeoJSON position
+	 *
+	 * @param point
+	 *            point
+	 * @param json
+	 *            string builder to append to
+	 */
+	private static void writeJSONPosition(Point point, StringBuilder json) {
+		json.append("[");
+		writeNumber(point.getX(), json);
+		json.append(",");
+		writeNumber(point.getY(), json);
+		if (point.hasZ() && point.getZ() != null) {
+			json.append(",");
+			writeNumber(point.getZ(), json);
+		}
+		json.append("]");
+	}
+
+	/**
+	 * Get the points of a curve, joining compound curve line strings
+	 *
+	 * @param curve
+	 *            curve
+	 * @return points
+	 */
+	private static List<Point> getPoints(Curve curve) {
+		List<Point> points;
+		if (curve instanceof LineString) {
+			points = ((LineString) curve).getPoints();
+		} else if (curve instanceof CompoundCurve) {
+			points = new ArrayList<>();
+			for (LineString lineString : ((CompoundCurve) curve)
+					.getLineStrings()) {
+				List<Point> linePoints = lineString.getPoints();
+				int start = !points.isEmpty() && !linePoints.isEmpty()
+						&& points.get(points.size() - 1)
+								.equals(linePoints.get(0)) ? 1 : 0;
+				points.addAll(linePoints.subList(start, linePoints.size()));
+			}
+		} else {
+			throw new GeoPackageException("Unsupported Curve Type: "
+					+ curve.getGeometryType().getName());
+		}
+		return points;
+	}
+
+}
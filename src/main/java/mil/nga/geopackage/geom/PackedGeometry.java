@@ -0,0 +1,325 @@
+package mil.nga.geopackage.geom;
+
+import java.nio.DoubleBuffer;
+
+import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.GeometryType;
+
+/**
+ * Packed feature geometry, a read only view of the x, y coordinates of a
+ * feature stored in a shared (typically off-heap) coordinate buffer. The
+ * geometry is flattened into parts of points, lines, and polygon rings, where
+ * each polygon starts with an exterior ring followed by its interior rings.
+ * Curves are stored as their line string coordinates and z and m values are
+ * not retained. Views are immutable and safe to share between threads.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class PackedGeometry {
+
+	/**
+	 * Point part
+	 */
+	public static final int PART_POINT = 0;
+
+	/**
+	 * Line part
+	 */
+	public static final int PART_LINE = 1;
+
+	/**
+	 * Polygon exterior ring part, starting a new polygon
+	 */
+	public static final int PART_EXTERIOR_RING = 2;
+
+	/**
+	 * Polygon interior ring part of the previous exterior ring
+	 */
+	public static final int PART_INTERIOR_RING = 3;
+
+	/**
+	 * Number of part index values per part: coordinate offset, coordinate
+	 * count, and part type
+	 */
+	public static final int PART_LENGTH = 3;
+
+	/**
+	 * Feature id
+	 */
+	private final long id;
+
+	/**
+	 * Geometry type
+	 */
+	private final GeometryType geometryType;
+
+	/**
+	 * Shared coordinate buffer of x, y pairs
+	 */
+	private final DoubleBuffer coordinates;
+
+	/**
+	 * Shared part indexes
+	 */
+	private final int[] parts;
+
+	/**
+	 * Index of the first part of the geometry in the part indexes
+	 */
+	private final int partOffset;
+
+	/**
+	 * Number of parts
+	 */
+	private final int partCount;
+
+	/**
+	 * Number of coordinates
+	 */
+	private final int coordinateCount;
+
+	/**
+	 * Envelope min x, min y, max x, max y
+	 */
+	private final double minX, minY, maxX, maxY;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id
+	 *            feature id
+	 * @param geometryType
+	 *            geometry type
+	 * @param coordinates
+	 *            shared coordinate buffer of x, y pairs
+	 * @param parts
+	 *            shared part indexes, {@link #PART_LENGTH} values per part
+	 * @param partOffset
+	 *            index of the first part of the geometry
+	 * @param partCount
+	 *            number of parts
+	 */
+	public PackedGeometry(long id, GeometryType geometryType,
+			DoubleBuffer coordinates, int[] parts, int partOffset,
+			int partCount) {
+		this.id = id;
+		this.geometryType = geometryType;
+		this.coordinates = coordinates;
+		this.parts = parts;
+		this.partOffset = partOffset;
+		this.partCount = partCount;
+
+		int count = 0;
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int part = 0; part < partCount; part++) {
+			int offset = getPartOffset(part);
+			int size = getPartSize(part);
+			for (int i = 0; i < size; i++) {
+				double x = coordinates.get(offset + i * 2);
+				double y = coordinates.get(offset + i * 2 + 1);
+				minX = Math.min(minX, x);
+				minY = Math.min(minY, y);
+				maxX = Math.max(maxX, x);
+				maxY = Math.max(maxY, y);
+			}
+			count += size;
+		}
+		this.coordinateCount = count;
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+	}
+
+	/**
+	 * Get the feature id
+	 *
+	 * @return feature id
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Get the geometry type
+	 *
+	 * @return geometry type, null for null geometries
+	 */
+	public GeometryType getGeometryType() {
+		return geometryType;
+	}
+
+	/**
+	 * Is the geometry null or empty
+	 *
+	 * @return true if no coordinates
+	 */
+	public boolean isEmpty() {
+		return coordinateCount == 0;
+	}
+
+	/**
+	 * Get the number of parts
+	 *
+	 * @return part count
+	 */
+	public int numParts() {
+		return partCount;
+	}
+
+	/**
+	 * Get the total number of coordinates
+	 *
+	 * @return coordinate count
+	 */
+	public int numCoordinates() {
+		return coordinateCount;
+	}
+
+	/**
+	 * Get the part type
+	 *
+	 * @param part
+	 *            part index
+	 * @return part type, one of the PART constants
+	 */
+	public int getPartType(int part) {
+		return parts[(partOffset + part) * PART_LENGTH + 2];
+	}
+
+	/**
+	 * Get the number of coordinates of the part
+	 *
+	 * @param part
+	 *            part index
+	 * @return coordinate count
+	 */
+	public int getPartSize(int part) {
+		return parts[(partOffset + part) * PART_LENGTH + 1];
+	}
+
+	/**
+	 * Get the x coordinate
+	 *
+	 * @param part
+	 *            part index
+	 * @param index
+	 *            coordinate index within the part
+	 * @return x
+	 */
+	public double getX(int part, int index) {
+		return coordinates.get(getPartOffset(part) + index * 2);
+	}
+
+	/**
+	 * Get the y coordinate
+	 *
+	 * @param part
+	 *            part index
+	 * @param index
+	 *            coordinate index within the part
+	 * @return y
+	 */
+	public double getY(int part, int index) {
+		return coordinates.get(getPartOffset(part) + index * 2 + 1);
+	}
+
+	/**
+	 * Copy the part coordinates into a packed x, y array
+	 *
+	 * @param part
+	 *            part index
+	 * @return packed coordinates
+	 */
+	public double[] getCoordinates(int part) {
+		double[] values = new double[getPartSize(part) * 2];
+		DoubleBuffer buffer = coordinates.duplicate();
+		buffer.position(getPartOffset(part));
+		buffer.get(values);
+		return values;
+	}
+
+	/**
+	 * Get the envelope min x
+	 *
+	 * @return min x
+	 */
+	public double getMinX() {
+		return minX;
+	}
+
+	/**
+	 * Get the envelope min y
+	 *
+	 * @return min y
+	 */
+	public double getMinY() {
+		return minY;
+	}
+
+	/**
+	 * Get the envelope max x
+	 *
+	 * @return max x
+	 */
+	public double getMaxX() {
+		return maxX;
+	}
+
+	/**
+	 * Get the envelope max y
+	 *
+	 * @return max y
+	 */
+	public double getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * Get the envelope
+	 *
+	 * @return envelope, null when empty
+	 */
+	public GeometryEnvelope getEnvelope() {
+		GeometryEnvelope envelope = null;
+		if (!isEmpty()) {
+			envelope = new GeometryEnvelope(minX, minY, maxX, maxY);
+		}
+		return envelope;
+	}
+
+	/**
+	 * Check if the envelope intersects the bounds
+	 *
+	 * @param minX
+	 *            min x
+	 * @param minY
+	 *            min y
+	 * @param maxX
+	 *            max x
+	 * @param maxY
+	 *            max y
+	 * @return true if intersects
+	 */
+	public boolean intersects(double minX, double minY, double maxX,
+			double maxY) {
+		return !isEmpty() && this.minX <= maxX && this.maxX >= minX
+				&& this.minY <= maxY && this.maxY >= minY;
+	}
+
+	/**
+	 * Get the offset of the part in the coordinate buffer
+	 *
+	 * @param part
+	 *            part index
+	 * @return coordinate buffer offset
+	 */
+	private int getPartOffset(int part) {
+		return parts[(partOffset + part) * PART_LENGTH];
+	}
+
+}
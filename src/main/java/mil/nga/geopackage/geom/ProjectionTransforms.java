@@ -0,0 +1,191 @@
+package mil.nga.geopackage.geom;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.locationtech.proj4j.CoordinateTransform;
+import org.locationtech.proj4j.ProjCoordinate;
+
+import mil.nga.sf.Point;
+import mil.nga.sf.proj.Projection;
+import mil.nga.sf.proj.ProjectionFactory;
+import mil.nga.sf.proj.ProjectionTransform;
+
+/**
+ * Cache of projection transforms keyed by source and target projection, and
+ * batched transforms of packed x and y coordinate arrays. Proj4j coordinate
+ * transforms hold intermediate coordinate state and are not safe to share
+ * between threads, so each thread caches its own transforms. Retrieving a
+ * cached transform avoids rebuilding the proj4j transform on each tile and
+ * feature, and the packed transforms reuse a single coordinate pair in place
+ * of allocating points per coordinate.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class ProjectionTransforms {
+
+	/**
+	 * Per thread transforms by source and target projection key
+	 */
+	private static final ThreadLocal<Map<String, ProjectionTransform>> transforms = new ThreadLocal<Map<String, ProjectionTransform>>() {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected Map<String, ProjectionTransform> initialValue() {
+			return new HashMap<>();
+		}
+
+	};
+
+	/**
+	 * Get the cached projection transform from the source to the target
+	 * projection for the current thread
+	 *
+	 * @param from
+	 *            source projection
+	 * @param to
+	 *            target projection
+	 * @return projection transform
+	 */
+	public static ProjectionTransform get(Projection from, Projection to) {
+		String key = from.getAuthority() + ":" + from.getCode() + ">"
+				+ to.getAuthority() + ":" + to.getCode();
+		Map<String, ProjectionTransform> threadTransforms = transforms.get();
+		ProjectionTransform transform = threadTransforms.get(key);
+		if (transform == null) {
+			transform = from.getTransformation(to);
+			threadTransforms.put(key, transform);
+		}
+		return transform;
+	}
+
+	/**
+	 * Get the cached projection transform from the source projection to the
+	 * EPSG target projection for the current thread
+	 *
+	 * @param from
+	 *            source projection
+	 * @param epsg
+	 *            target EPSG code
+	 * @return projection transform
+	 */
+	public static ProjectionTransform get(Projection from, long epsg) {
+		return get(from, ProjectionFactory.getProjection(epsg));
+	}
+
+	/**
+	 * Clear the cached transforms of the current thread
+	 */
+	public static void clear() {
+		transforms.get().clear();
+	}
+
+	/**
+	 * Transform packed x and y coordinates in place
+	 *
+	 * @param transform
+	 *            projection transform
+	 * @param coordinates
+	 *            packed coordinates as x0, y0, x1, y1, ...
+	 */
+	public static void transform(ProjectionTransform transform,
+			double[] coordinates) {
+		transform(transform, coordinates, 0, coordinates, 0,
+				coordinates.length / 2);
+	}
+
+	/**
+	 * Transform packed x and y coordinates
+	 *
+	 * @param transform
+	 *            projection transform
+	 * @param source
+	 *            source packed coordinates as x0, y0, x1, y1, ...
+	 * @param sourceOffset
+	 *            source array offset of the first x coordinate
+	 * @param target
+	 *            target packed coordinates, may be the source array
+	 * @param targetOffset
+	 *            target array offset of the first x coordinate
+	 * @param count
+	 *            number of coordinates to transform
+	 */
+	public static void transform(ProjectionTransform transform,
+			double[] source, int sourceOffset, double[] target,
+			int targetOffset, int count) {
+
+		if (transform.isSameProjection()) {
+			if (source != target || sourceOffset != targetOffset) {
+				System.arraycopy(source, sourceOffset, target, targetOffset,
+						count * 2);
+			}
+		} else {
+			CoordinateTransform coordinateTransform = transform.getTransform();
+			ProjCoordinate from = new ProjCoordinate();
+			ProjCoordinate to = new ProjCoordinate();
+			for (int i = 0; i < count; i++) {
+				int sourceIndex = sourceOffset + i * 2;
+				int targetIndex = targetOffset + i * 2;
+				from.x = source[sourceIndex];
+				from.y = source[sourceIndex + 1];
+				coordinateTransform.transform(from, to);
+				target[targetIndex] = to.x;
+				target[targetIndex + 1] = to.y;
+			}
+		}
+	}
+
+	/**
+	 * Pack the x and y coordinates of points
+	 *
+	 * @param points
+	 *            points
+	 * @return packed coordinates as x0, y0, x1, y1, ...
+	 */
+	public static double[] toCoordinates(List<Point> points) {
+		double[] coordinates = new double[points.size() * 2];
+		int index = 0;
+		for (Point point : points) {
+			coordinates[index++] = point.getX();
+			coordinates[index++] = point.getY();
+		}
+		return coordinates;
+	}
+
+	/**
+	 * Create points from packed x and y coordinates
+	 *
+	 * @param coordinates
+	 *            packed coordinates as x0, y0, x1, y1, ...
+	 * @return points
+	 */
+	public static List<Point> toPoints(double[] coordinates) {
+		List<Point> points = new ArrayList<>(coordinates.length / 2);
+		for (int i = 0; i + 1 < coordinates.length; i += 2) {
+			points.add(new Point(coordinates[i], coordinates[i + 1]));
+		}
+		return points;
+	}
+
+	/**
+	 * Transform points through packed coordinates, dropping z and m values
+	 *
+	 * @param transform
+	 *            projection transform
+	 * @param points
+	 *            points
+	 * @return transformed points
+	 */
+	public static List<Point> transform(ProjectionTransform transform,
+			List<Point> points) {
+		double[] coordinates = toCoordinates(points);
+		transform(transform, coordinates);
+		return toPoints(coordinates);
+	}
+
+}
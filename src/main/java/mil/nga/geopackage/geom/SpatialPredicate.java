@@ -0,0 +1,26 @@
+package mil.nga.geopackage.geom;
+
+/**
+ * Spatial predicate between a feature geometry and a query geometry
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public enum SpatialPredicate {
+
+	/**
+	 * Feature geometry intersects the query geometry
+	 */
+	INTERSECTS,
+
+	/**
+	 * Feature geometry is within the query geometry
+	 */
+	WITHIN,
+
+	/**
+	 * Feature geometry contains the query geometry
+	 */
+	CONTAINS;
+
+}
@@ -0,0 +1,65 @@
+package mil.nga.geopackage.io;
+
+/**
+ * Feature Export Format of features written by the {@link FeatureExporter}
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public enum FeatureExportFormat {
+
+	/**
+	 * GeoJSON feature collection
+	 */
+	GEOJSON("geojson"),
+
+	/**
+	 * Newline delimited GeoJSON features, one feature per line
+	 */
+	NDJSON("ndjson"),
+
+	/**
+	 * Comma separated values with a header row and Well-Known Text geometries
+	 */
+	CSV("csv"),
+
+	/**
+	 * Binary records of a big endian 8 byte feature id, a 4 byte Well-Known
+	 * Binary length (-1 for null geometries), and the Well-Known Binary bytes
+	 */
+	WKB("wkb");
+
+	/**
+	 * File extension
+	 */
+	private final String extension;
+
+	/**
+	 * Constructor
+	 *
+	 * @param extension
+	 *            file extension
+	 */
+	private FeatureExportFormat(String extension) {
+		this.extension = extension;
+	}
+
+	/**
+	 * Get the file extension
+	 *
+	 * @return file extension
+	 */
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Determine if the format is GeoJSON
+	 *
+	 * @return true if GeoJSON or newline delimited GeoJSON
+	 */
+	public boolean isGeoJSON() {
+		return this == GEOJSON || this == NDJSON;
+	}
+
+}
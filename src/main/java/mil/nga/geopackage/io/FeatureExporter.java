@@ -0,0 +1,1054 @@
+package mil.nga.geopackage.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.features.index.FeatureIndexResults;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeoPackageGeometryHeader;
+import mil.nga.geopackage.geom.GeometryTextEncoder;
+import mil.nga.geopackage.geom.ProjectionTransforms;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.proj.Projection;
+import mil.nga.sf.proj.ProjectionConstants;
+import mil.nga.sf.proj.ProjectionFactory;
+import mil.nga.sf.proj.ProjectionTransform;
+
+/**
+ * Feature Exporter, streams feature table rows or feature index query results
+ * as GeoJSON, newline delimited GeoJSON, CSV with Well-Known Text geometries,
+ * or Well-Known Binary records. Rows are read in order on the calling thread
+ * as raw column values and geometry bytes, decoded and encoded in parallel
+ * batches, and written in the original row order through a buffered channel.
+ * A bounded number of batches are in flight at once, keeping memory use
+ * constant regardless of the number of features.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureExporter {
+
+	/**
+	 * Default number of features encoded per batch
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	/**
+	 * Default output buffer size in bytes
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Feature DAO
+	 */
+	private final FeatureDao featureDao;
+
+	/**
+	 * Export format
+	 */
+	private final FeatureExportFormat format;
+
+	/**
+	 * Output projection, null to write geometries in the feature projection
+	 */
+	private Projection projection;
+
+	/**
+	 * Number of encoding threads
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Number of features encoded per batch
+	 */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Output buffer size in bytes
+	 */
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+	/**
+	 * Progress
+	 */
+	private GeoPackageProgress progress;
+
+	/**
+	 * Constructor, GeoJSON formats default to a WGS84 output projection
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param format
+	 *            export format
+	 */
+	public FeatureExporter(FeatureDao featureDao, FeatureExportFormat format) {
+		this.featureDao = featureDao;
+		this.format = format;
+		if (format.isGeoJSON()) {
+			projection = ProjectionFactory.getProjection(
+					ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM);
+		}
+	}
+
+	/**
+	 * Get the feature DAO
+	 *
+	 * @return feature DAO
+	 */
+	public FeatureDao getFeatureDao() {
+		return featureDao;
+	}
+
+	/**
+	 * Get the export format
+	 *
+	 * @return export format
+	 */
+	public FeatureExportFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Get the output projection
+	 *
+	 * @return output projection, null for the feature projection
+	 */
+	public Projection getProjection() {
+		return projection;
+	}
+
+	/**
+	 * Set the output projection
+	 *
+	 * @param projection
+	 *            output projection, null for the feature projection
+	 */
+	public void setProjection(Projection projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Get the number of encoding threads
+	 *
+	 * @return threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the number of encoding threads, 1 to encode on the calling thread
+	 *
+	 * @param threads
+	 *            threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Get the number of features encoded per batch
+	 *
+	 * @return batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set the number of features encoded per batch
+	 *
+	 * @param batchSize
+	 *            batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Get the output buffer size
+	 *
+	 * @return buffer size in bytes
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Set the output buffer size
+	 *
+	 * @param bufferSize
+	 *            buffer size in bytes
+	 */
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = Math.max(1024, bufferSize);
+	}
+
+	/**
+	 * Get the progress
+	 *
+	 * @return progress
+	 */
+	public GeoPackageProgress getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Set the progress, updated as feature batches are written
+	 *
+	 * @param progress
+	 *            progress
+	 */
+	public void setProgress(GeoPackageProgress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Export all features to the file
+	 *
+	 * @param file
+	 *            output file, created or replaced
+	 * @return number of exported features
+	 */
+	public long export(File file) {
+		return export(file, null, null);
+	}
+
+	/**
+	 * Export the features matching the where clause to the file
+	 *
+	 * @param file
+	 *            output file, created or replaced
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return number of exported features
+	 */
+	public long export(File file, String where, String[] whereArgs) {
+		try (FileChannel channel = openChannel(file)) {
+			return export(channel, where, whereArgs);
+		} catch (IOException e) {
+			throw new GeoPackageException("Failed to export features to file: "
+					+ file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Export the features matching the where clause to the channel
+	 *
+	 * @param channel
+	 *            output channel, not closed
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return number of exported features
+	 */
+	public long export(WritableByteChannel channel, String where,
+			String[] whereArgs) {
+		FeatureResultSet resultSet = featureDao.query(where, whereArgs);
+		try {
+			return write(channel, new ResultSetReader(resultSet));
+		} finally {
+			resultSet.close();
+		}
+	}
+
+	/**
+	 * Export the feature index query results to the file
+	 *
+	 * @param file
+	 *            output file, created or replaced
+	 * @param results
+	 *            feature index results, not closed
+	 * @return number of exported features
+	 */
+	public long export(File file, FeatureIndexResults results) {
+		try (FileChannel channel = openChannel(file)) {
+			return export(channel, results);
+		} catch (IOException e) {
+			throw new GeoPackageException("Failed to export features to file: "
+					+ file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Export the feature index query results to the channel
+	 *
+	 * @param channel
+	 *            output channel, not closed
+	 * @param results
+	 *            feature index results, not closed
+	 * @return number of exported features
+	 */
+	public long export(WritableByteChannel channel,
+			FeatureIndexResults results) {
+		return write(channel, new RowReader(results.iterator()));
+	}
+
+	/**
+	 * Open a file channel, creating or replacing the file
+	 *
+	 * @param file
+	 *            file
+	 * @return file channel
+	 * @throws IOException
+	 *             upon failure
+	 */
+	private static FileChannel openChannel(File file) throws IOException {
+		return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Read, encode and write the records
+	 *
+	 * @param channel
+	 *            output channel
+	 * @param reader
+	 *            record reader
+	 * @return number of written features
+	 */
+	private long write(WritableByteChannel channel, RecordReader reader) {
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+		ExecutorService executor = threads > 1
+				? Executors.newFixedThreadPool(threads)
+				: null;
+		int maxPending = threads * 2;
+		Deque<BatchEncoder> pending = new ArrayDeque<>();
+
+		long count = 0;
+		try {
+
+			Record record = reader.read();
+			reader.initializeColumns();
+
+			write(channel, buffer, header(reader));
+
+			boolean first = true;
+			while (record != null
+					&& (progress == null || progress.isActive())) {
+
+				List<Record> records = new ArrayList<>(batchSize);
+				while (record != null && records.size() < batchSize) {
+					records.add(record);
+					record = reader.read();
+				}
+
+				BatchEncoder batch = new BatchEncoder(reader, records, first);
+				first = false;
+
+				if (executor != null) {
+					batch.future = executor.submit(batch);
+					pending.add(batch);
+					if (pending.size() >= maxPending) {
+						count += write(channel, buffer, pending.poll());
+					}
+				} else {
+					count += write(channel, buffer, batch);
+				}
+			}
+
+			while (!pending.isEmpty()) {
+				count += write(channel, buffer, pending.poll());
+			}
+
+			write(channel, buffer, footer());
+			flush(channel, buffer);
+
+		} catch (IOException e) {
+			throw new GeoPackageException(
+					"Failed to write exported features. Table: "
+							+ featureDao.getTableName(),
+					e);
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Write an encoded batch, waiting on the batch encoding when parallel
+	 *
+	 * @param channel
+	 *            output channel
+	 * @param buffer
+	 *            output buffer
+	 * @param batch
+	 *            batch encoder
+	 * @return number of written features
+	 * @throws IOException
+	 *             upon failure
+	 */
+	private int write(WritableByteChannel channel, ByteBuffer buffer,
+			BatchEncoder batch) throws IOException {
+		byte[] bytes;
+		try {
+			bytes = batch.future != null ? batch.future.get() : batch.call();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GeoPackageException(
+					"Interrupted while encoding exported features", e);
+		} catch (ExecutionException e) {
+			throw new GeoPackageException(
+					"Failed to encode exported features. Table: "
+							+ featureDao.getTableName(),
+					e.getCause());
+		}
+		write(channel, buffer, bytes);
+		if (progress != null) {
+			progress.addProgress(batch.size);
+		}
+		return batch.size;
+	}
+
+	/**
+	 * Write bytes through the buffer, flushing to the channel when full
+	 *
+	 * @param channel
+	 *            output channel
+	 * @param buffer
+	 *            output buffer
+	 * @param bytes
+	 *            bytes
+	 * @throws IOException
+	 *             upon failure
+	 */
+	private static void write(WritableByteChannel channel, ByteBuffer buffer,
+			byte[] bytes) throws IOException {
+		int offset = 0;
+		while (offset < bytes.length) {
+			int length = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, length);
+			offset += length;
+			if (!buffer.hasRemaining()) {
+				flush(channel, buffer);
+			}
+		}
+	}
+
+	/**
+	 * Flush the buffer to the channel
+	 *
+	 * @param channel
+	 *            output channel
+	 * @param buffer
+	 *            output buffer
+	 * @throws IOException
+	 *             upon failure
+	 */
+	private static void flush(WritableByteChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Get the format header bytes
+	 *
+	 * @param reader
+	 *            record reader with initialized columns
+	 * @return header bytes
+	 */
+	private byte[] header(RecordReader reader) {
+		StringBuilder header = new StringBuilder();
+		switch (format) {
+		case GEOJSON:
+			header.append("{\"type\":\"FeatureCollection\",\"features\":[\n");
+			break;
+		case CSV:
+			for (int i = 0; i < reader.columnNames.length; i++) {
+				if (i > 0) {
+					header.append(",");
+				}
+				writeCSVString(reader.columnNames[i], header);
+			}
+			header.append("\n");
+			break;
+		default:
+		}
+		return header.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Get the format footer bytes
+	 *
+	 * @return footer bytes
+	 */
+	private byte[] footer() {
+		String footer = "";
+		if (format == FeatureExportFormat.GEOJSON) {
+			footer = "\n]}\n";
+		}
+		return footer.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write a CSV value, quoted when containing separators, quotes or line
+	 * breaks
+	 *
+	 * @param value
+	 *            value
+	 * @param csv
+	 *            string builder to append to
+	 */
+	private static void writeCSVString(String value, StringBuilder csv) {
+		if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+				|| value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+			csv.append('"').append(value.replace("\"", "\"\"")).append('"');
+		} else {
+			csv.append(value);
+		}
+	}
+
+	/**
+	 * Feature record of raw column values with geometry bytes
+	 */
+	private static class Record {
+
+		/**
+		 * Feature id, -1 when not read
+		 */
+		private final long id;
+
+		/**
+		 * Column values, geometry column value as GeoPackage geometry bytes
+		 */
+		private final Object[] values;
+
+		/**
+		 * Constructor
+		 *
+		 * @param id
+		 *            feature id
+		 * @param values
+		 *            column values
+		 */
+		private Record(long id, Object[] values) {
+			this.id = id;
+			this.values = values;
+		}
+
+	}
+
+	/**
+	 * Reader of raw feature records in row order
+	 */
+	private abstract class RecordReader {
+
+		/**
+		 * Column names
+		 */
+		protected String[] columnNames;
+
+		/**
+		 * Geometry column index, -1 when not read
+		 */
+		protected int geometryIndex = -1;
+
+		/**
+		 * Id column index, -1 when not read
+		 */
+		protected int idIndex = -1;
+
+		/**
+		 * Read the next record
+		 *
+		 * @return record, null when done
+		 */
+		protected abstract Record read();
+
+		/**
+		 * Set the columns
+		 *
+		 * @param columnNames
+		 *            column names
+		 * @param geometryIndex
+		 *            geometry column index
+		 */
+		protected void setColumns(String[] columnNames, int geometryIndex) {
+			this.columnNames = columnNames;
+			this.geometryIndex = geometryIndex;
+			idIndex = Arrays.asList(columnNames)
+					.indexOf(featureDao.getIdColumnName());
+		}
+
+		/**
+		 * Initialize the columns from the feature table when no rows were read
+		 */
+		protected void initializeColumns() {
+			if (columnNames == null) {
+				setColumns(featureDao.getTable().getColumnNames(),
+						featureDao.getTable().getGeometryColumnIndex());
+			}
+		}
+
+		/**
+		 * Create a record from the column values
+		 *
+		 * @param values
+		 *            column values
+		 * @return record
+		 */
+		protected Record createRecord(Object[] values) {
+			long id = -1;
+			if (idIndex >= 0 && values[idIndex] instanceof Number) {
+				id = ((Number) values[idIndex]).longValue();
+			}
+			return new Record(id, values);
+		}
+
+	}
+
+	/**
+	 * Record reader of a feature result set, reading geometries as raw bytes
+	 * to defer geometry decoding to the encoding threads
+	 */
+	private class ResultSetReader extends RecordReader {
+
+		/**
+		 * Feature result set
+		 */
+		private final FeatureResultSet resultSet;
+
+		/**
+		 * Constructor
+		 *
+		 * @param resultSet
+		 *            feature result set
+		 */
+		private ResultSetReader(FeatureResultSet resultSet) {
+			this.resultSet = resultSet;
+			setColumns(resultSet.getColumns().getColumnNames(),
+					resultSet.getColumns().getGeometryIndex());
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected Record read() {
+			Record record = null;
+			if (resultSet.moveToNext()) {
+				Object[] values = new Object[columnNames.length];
+				for (int i = 0; i < values.length; i++) {
+					if (i == geometryIndex) {
+						values[i] = resultSet.getBlob(i);
+					} else {
+						values[i] = resultSet.getValue(i);
+					}
+				}
+				record = createRecord(values);
+			}
+			return record;
+		}
+
+	}
+
+	/**
+	 * Record reader of feature rows
+	 */
+	private class RowReader extends RecordReader {
+
+		/**
+		 * Feature row iterator
+		 */
+		private final Iterator<FeatureRow> rows;
+
+		/**
+		 * Constructor
+		 *
+		 * @param rows
+		 *            feature row iterator
+		 */
+		private RowReader(Iterator<FeatureRow> rows) {
+			this.rows = rows;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected Record read() {
+			Record record = null;
+			if (rows.hasNext()) {
+				FeatureRow row = rows.next();
+				if (columnNames == null) {
+					setColumns(row.getColumnNames(),
+							row.getGeometryColumnIndex());
+				}
+				Object[] values = new Object[columnNames.length];
+				for (int i = 0; i < values.length; i++) {
+					if (i == geometryIndex) {
+						values[i] = getBytes(row.getGeometry(), row);
+					} else {
+						values[i] = row.getValue(i);
+					}
+				}
+				record = createRecord(values);
+			}
+			return record;
+		}
+
+		/**
+		 * Get the GeoPackage geometry bytes of the row geometry
+		 *
+		 * @param geometryData
+		 *            geometry data
+		 * @param row
+		 *            feature row
+		 * @return geometry bytes
+		 */
+		private byte[] getBytes(GeoPackageGeometryData geometryData,
+				FeatureRow row) {
+			byte[] bytes = null;
+			if (geometryData != null) {
+				bytes = geometryData.getBytes();
+				if (bytes == null) {
+					try {
+						bytes = geometryData.toBytes();
+					} catch (IOException e) {
+						throw new GeoPackageException(
+								"Failed to write geometry bytes. Table: "
+										+ featureDao.getTableName() + ", Id: "
+										+ row.getId(),
+								e);
+					}
+				}
+			}
+			return bytes;
+		}
+
+	}
+
+	/**
+	 * Encoder of a batch of records into the export format bytes
+	 */
+	private class BatchEncoder implements Callable<byte[]> {
+
+		/**
+		 * Column names
+		 */
+		private final String[] columnNames;
+
+		/**
+		 * Geometry column index
+		 */
+		private final int geometryIndex;
+
+		/**
+		 * Id column index
+		 */
+		private final int idIndex;
+
+		/**
+		 * Records, released once encoded
+		 */
+		private List<Record> records;
+
+		/**
+		 * First batch flag
+		 */
+		private final boolean first;
+
+		/**
+		 * Number of records
+		 */
+		private final int size;
+
+		/**
+		 * Encoding future when encoded in parallel
+		 */
+		private Future<byte[]> future;
+
+		/**
+		 * Constructor
+		 *
+		 * @param reader
+		 *            record reader
+		 * @param records
+		 *            records
+		 * @param first
+		 *            true if the first batch
+		 */
+		private BatchEncoder(RecordReader reader, List<Record> records,
+				boolean first) {
+			this.columnNames = reader.columnNames;
+			this.geometryIndex = reader.geometryIndex;
+			this.idIndex = reader.idIndex;
+			this.records = records;
+			this.first = first;
+			this.size = records.size();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public byte[] call() throws IOException {
+
+			ProjectionTransform transform = null;
+			if (projection != null) {
+				transform = ProjectionTransforms.get(featureDao.getProjection(),
+						projection);
+				if (transform.isSameProjection()) {
+					transform = null;
+				}
+			}
+
+			byte[] bytes;
+			if (format == FeatureExportFormat.WKB) {
+				bytes = encodeWKB(transform);
+			} else {
+				StringBuilder text = new StringBuilder();
+				for (int i = 0; i < records.size(); i++) {
+					Record record = records.get(i);
+					if (format == FeatureExportFormat.CSV) {
+						encodeCSV(record, transform, text);
+					} else {
+						if (format == FeatureExportFormat.GEOJSON
+								&& (!first || i > 0)) {
+							text.append(",\n");
+						}
+						encodeFeature(record, transform, text);
+						if (format == FeatureExportFormat.NDJSON) {
+							text.append("\n");
+						}
+					}
+				}
+				bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+			}
+
+			records = null;
+
+			return bytes;
+		}
+
+		/**
+		 * Encode the records as Well-Known Binary records
+		 *
+		 * @param transform
+		 *            projection transform, null when not transforming
+		 * @return bytes
+		 * @throws IOException
+		 *             upon failure
+		 */
+		private byte[] encodeWKB(ProjectionTransform transform)
+				throws IOException {
+			ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(byteStream);
+			for (Record record : records) {
+				byte[] wkb = null;
+				byte[] geometryBytes = geometryIndex >= 0
+						? (byte[]) record.values[geometryIndex]
+						: null;
+				if (geometryBytes != null) {
+					int headerLength = GeoPackageGeometryHeader
+							.getHeaderLength(geometryBytes);
+					if (transform == null && headerLength > 0) {
+						wkb = Arrays.copyOfRange(geometryBytes, headerLength,
+								geometryBytes.length);
+					} else {
+						Geometry geometry = readGeometry(geometryBytes,
+								transform);
+						if (geometry != null) {
+							GeoPackageGeometryData geometryData = new GeoPackageGeometryData(
+									featureDao.getGeometryColumns().getSrsId());
+							geometryData.setGeometry(geometry);
+							geometryData.toBytes();
+							wkb = geometryData.getWkbBytes();
+						}
+					}
+				}
+				output.writeLong(record.id);
+				if (wkb != null) {
+					output.writeInt(wkb.length);
+					output.write(wkb);
+				} else {
+					output.writeInt(-1);
+				}
+			}
+			output.flush();
+			return byteStream.toByteArray();
+		}
+
+		/**
+		 * Encode the record as a GeoJSON feature
+		 *
+		 * @param record
+		 *            record
+		 * @param transform
+		 *            projection transform, null when not transforming
+		 * @param json
+		 *            string builder to append to
+		 */
+		private void encodeFeature(Record record,
+				ProjectionTransform transform, StringBuilder json) {
+			json.append("{\"type\":\"Feature\"");
+			if (idIndex >= 0) {
+				json.append(",\"id\":").append(record.id);
+			}
+			json.append(",\"geometry\":");
+			Geometry geometry = geometryIndex >= 0
+					? readGeometry((byte[]) record.values[geometryIndex],
+							transform)
+					: null;
+			if (geometry != null) {
+				GeometryTextEncoder.writeGeoJSON(geometry, json);
+			} else {
+				json.append("null");
+			}
+			json.append(",\"properties\":{");
+			boolean firstProperty = true;
+			for (int i = 0; i < columnNames.length; i++) {
+				if (i == geometryIndex || i == idIndex) {
+					continue;
+				}
+				if (!firstProperty) {
+					json.append(",");
+				}
+				firstProperty = false;
+				GeometryTextEncoder.writeJSONString(columnNames[i], json);
+				json.append(":");
+				writeJSONValue(record.values[i], json);
+			}
+			json.append("}}");
+		}
+
+		/**
+		 * Encode the record as a CSV row
+		 *
+		 * @param record
+		 *            record
+		 * @param transform
+		 *            projection transform, null when not transforming
+		 * @param csv
+		 *            string builder to append to
+		 */
+		private void encodeCSV(Record record, ProjectionTransform transform,
+				StringBuilder csv) {
+			for (int i = 0; i < columnNames.length; i++) {
+				if (i > 0) {
+					csv.append(",");
+				}
+				Object value = record.values[i];
+				if (i == geometryIndex) {
+					Geometry geometry = readGeometry((byte[]) value,
+							transform);
+					if (geometry != null) {
+						StringBuilder wkt = new StringBuilder();
+						GeometryTextEncoder.writeWKT(geometry, wkt);
+						writeCSVString(wkt.toString(), csv);
+					}
+				} else if (value != null) {
+					writeCSVString(toText(value), csv);
+				}
+			}
+			csv.append("\n");
+		}
+
+		/**
+		 * Read and transform the geometry
+		 *
+		 * @param bytes
+		 *            GeoPackage geometry bytes
+		 * @param transform
+		 *            projection transform, null when not transforming
+		 * @return geometry, null for null geometries
+		 */
+		private Geometry readGeometry(byte[] bytes,
+				ProjectionTransform transform) {
+			Geometry geometry = null;
+			if (bytes != null) {
+				geometry = new GeoPackageGeometryData(bytes).getGeometry();
+				if (geometry != null && transform != null) {
+					geometry = transform.transform(geometry);
+				}
+			}
+			return geometry;
+		}
+
+		/**
+		 * Write a column value as a JSON value
+		 *
+		 * @param value
+		 *            value
+		 * @param json
+		 *            string builder to append to
+		 */
+		private void writeJSONValue(Object value, StringBuilder json) {
+			if (value == null) {
+				json.append("null");
+			} else if (value instanceof Boolean) {
+				json.append(value);
+			} else if (value instanceof Double || value instanceof Float) {
+				double number = ((Number) value).doubleValue();
+				if (Double.isNaN(number) || Double.isInfinite(number)) {
+					json.append("null");
+				} else {
+					GeometryTextEncoder.writeNumber(number, json);
+				}
+			} else if (value instanceof Number) {
+				json.append(value);
+			} else {
+				GeometryTextEncoder.writeJSONString(toText(value), json);
+			}
+		}
+
+		/**
+		 * Get the text of a non null column value, Base64 encoding blobs
+		 *
+		 * @param value
+		 *            value
+		 * @return text
+		 */
+		private String toText(Object value) {
+			String text;
+			if (value instanceof byte[]) {
+				text = Base64.getEncoder().encodeToString((byte[]) value);
+			} else if (value instanceof Double || value instanceof Float) {
+				StringBuilder number = new StringBuilder();
+				GeometryTextEncoder.writeNumber(
+						((Number) value).doubleValue(), number);
+				text = number.toString();
+			} else {
+				text = value.toString();
+			}
+			return text;
+		}
+
+	}
+
+}
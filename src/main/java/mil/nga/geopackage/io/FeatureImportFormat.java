@@ -0,0 +1,70 @@
+package mil.nga.geopackage.io;
+
+/**
+ * Feature Import Format of features read by the {@link FeatureImporter}
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public enum FeatureImportFormat {
+
+	/**
+	 * GeoJSON feature collection
+	 */
+	GEOJSON("geojson", "json"),
+
+	/**
+	 * Newline delimited GeoJSON features, one feature per line
+	 */
+	NDJSON("ndjson", "geojsonl"),
+
+	/**
+	 * Comma separated values with a header row and a Well-Known Text geometry
+	 * column
+	 */
+	CSV("csv");
+
+	/**
+	 * File extensions
+	 */
+	private final String[] extensions;
+
+	/**
+	 * Constructor
+	 *
+	 * @param extensions
+	 *            file extensions
+	 */
+	private FeatureImportFormat(String... extensions) {
+		this.extensions = extensions;
+	}
+
+	/**
+	 * Get the file extensions
+	 *
+	 * @return file extensions
+	 */
+	public String[] getExtensions() {
+		return extensions;
+	}
+
+	/**
+	 * Get the format from the file name extension
+	 *
+	 * @param fileName
+	 *            file name
+	 * @return format, null if not matched
+	 */
+	public static FeatureImportFormat fromFileName(String fileName) {
+		String name = fileName.toLowerCase();
+		for (FeatureImportFormat format : values()) {
+			for (String extension : format.extensions) {
+				if (name.endsWith("." + extension)) {
+					return format;
+				}
+			}
+		}
+		return null;
+	}
+
+}
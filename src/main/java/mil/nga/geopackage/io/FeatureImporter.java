@@ -0,0 +1,1512 @@
+package mil.nga.geopackage.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.core.contents.Contents;
+import mil.nga.geopackage.core.contents.ContentsDao;
+import mil.nga.geopackage.core.srs.SpatialReferenceSystem;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.GeoPackageDataType;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.extension.RTreeIndexBulkEdit;
+import mil.nga.geopackage.extension.RTreeIndexExtension;
+import mil.nga.geopackage.extension.RTreeIndexTableDao;
+import mil.nga.geopackage.features.columns.GeometryColumns;
+import mil.nga.geopackage.features.user.FeatureColumn;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeometryTextDecoder;
+import mil.nga.geopackage.geom.GeometryTextEncoder;
+import mil.nga.geopackage.geom.ProjectionTransforms;
+import mil.nga.geopackage.schema.TableColumnKey;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.GeometryType;
+import mil.nga.sf.proj.Projection;
+import mil.nga.sf.proj.ProjectionConstants;
+import mil.nga.sf.proj.ProjectionFactory;
+import mil.nga.sf.proj.ProjectionTransform;
+import mil.nga.sf.util.GeometryEnvelopeBuilder;
+
+/**
+ * Feature Importer, loads GeoJSON feature collections, newline delimited
+ * GeoJSON, or CSV with Well-Known Text geometries into a feature table. Input
+ * records are split on the calling thread, parsed, projected and encoded into
+ * GeoPackage geometry bytes in parallel batches, and inserted in input order
+ * through a single prepared statement in large transactions. RTree triggers
+ * are suspended by an {@link RTreeIndexBulkEdit} during the load and the
+ * RTree is updated once the rows are written. The feature table is created
+ * from the first record when it does not exist.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureImporter {
+
+	/**
+	 * Default number of features parsed and inserted per batch
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/**
+	 * Default number of features inserted per transaction
+	 */
+	public static final int DEFAULT_TRANSACTION_SIZE = 100000;
+
+	/**
+	 * Default geometry column name of created tables
+	 */
+	public static final String DEFAULT_GEOMETRY_COLUMN_NAME = "geom";
+
+	/**
+	 * Default id column name of created tables
+	 */
+	public static final String DEFAULT_ID_COLUMN_NAME = "id";
+
+	/**
+	 * CSV geometry column names, searched in order when no CSV geometry column
+	 * is set and the header does not contain the table geometry column
+	 */
+	public static final String[] CSV_GEOMETRY_COLUMN_NAMES = new String[] {
+			"wkt", "geometry", "geom", "the_geom", "shape" };
+
+	/**
+	 * GeoPackage
+	 */
+	private final GeoPackage geoPackage;
+
+	/**
+	 * Feature table name
+	 */
+	private final String tableName;
+
+	/**
+	 * Import format
+	 */
+	private final FeatureImportFormat format;
+
+	/**
+	 * Input projection
+	 */
+	private Projection projection = ProjectionFactory
+			.getProjection(ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM);
+
+	/**
+	 * Geometry column name of created tables
+	 */
+	private String geometryColumnName = DEFAULT_GEOMETRY_COLUMN_NAME;
+
+	/**
+	 * Id column name of created tables
+	 */
+	private String idColumnName = DEFAULT_ID_COLUMN_NAME;
+
+	/**
+	 * CSV header column containing the Well-Known Text geometries
+	 */
+	private String csvGeometryColumn;
+
+	/**
+	 * Number of parsing threads
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Number of features parsed and inserted per batch
+	 */
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	/**
+	 * Number of features inserted per transaction
+	 */
+	private int transactionSize = DEFAULT_TRANSACTION_SIZE;
+
+	/**
+	 * Progress
+	 */
+	private GeoPackageProgress progress;
+
+	/**
+	 * True to create the RTree index when the table is not already indexed
+	 */
+	private boolean index = true;
+
+	/**
+	 * Constructor
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @param tableName
+	 *            feature table name, created when it does not exist
+	 * @param format
+	 *            import format
+	 */
+	public FeatureImporter(GeoPackage geoPackage, String tableName,
+			FeatureImportFormat format) {
+		this.geoPackage = geoPackage;
+		this.tableName = tableName;
+		this.format = format;
+	}
+
+	/**
+	 * Get the GeoPackage
+	 *
+	 * @return GeoPackage
+	 */
+	public GeoPackage getGeoPackage() {
+		return geoPackage;
+	}
+
+	/**
+	 * Get the feature table name
+	 *
+	 * @return table name
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Get the import format
+	 *
+	 * @return import format
+	 */
+	public FeatureImportFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * Get the input projection
+	 *
+	 * @return input projection
+	 */
+	public Projection getProjection() {
+		return projection;
+	}
+
+	/**
+	 * Set the input projection, WGS84 by default. Created tables use the input
+	 * projection, existing tables are projected to.
+	 *
+	 * @param projection
+	 *            input projection
+	 */
+	public void setProjection(Projection projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Get the geometry column name of created tables
+	 *
+	 * @return geometry column name
+	 */
+	public String getGeometryColumnName() {
+		return geometryColumnName;
+	}
+
+	/**
+	 * Set the geometry column name of created tables
+	 *
+	 * @param geometryColumnName
+	 *            geometry column name
+	 */
+	public void setGeometryColumnName(String geometryColumnName) {
+		this.geometryColumnName = geometryColumnName;
+	}
+
+	/**
+	 * Get the id column name of created tables
+	 *
+	 * @return id column name
+	 */
+	public String getIdColumnName() {
+		return idColumnName;
+	}
+
+	/**
+	 * Set the id column name of created tables
+	 *
+	 * @param idColumnName
+	 *            id column name
+	 */
+	public void setIdColumnName(String idColumnName) {
+		this.idColumnName = idColumnName;
+	}
+
+	/**
+	 * Get the CSV header column containing the Well-Known Text geometries
+	 *
+	 * @return CSV geometry column, null to search the header
+	 */
+	public String getCsvGeometryColumn() {
+		return csvGeometryColumn;
+	}
+
+	/**
+	 * Set the CSV header column containing the Well-Known Text geometries.
+	 * When not set, the table geometry column and then
+	 * {@link #CSV_GEOMETRY_COLUMN_NAMES} are searched for in the header.
+	 *
+	 * @param csvGeometryColumn
+	 *            CSV geometry column
+	 */
+	public void setCsvGeometryColumn(String csvGeometryColumn) {
+		this.csvGeometryColumn = csvGeometryColumn;
+	}
+
+	/**
+	 * Get the number of parsing threads
+	 *
+	 * @return threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the number of parsing threads, 1 to parse on the calling thread
+	 *
+	 * @param threads
+	 *            threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Get the number of features parsed and inserted per batch
+	 *
+	 * @return batch size
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set the number of features parsed and inserted per batch
+	 *
+	 * @param batchSize
+	 *            batch size
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Get the number of features inserted per transaction
+	 *
+	 * @return transaction size
+	 */
+	public int getTransactionSize() {
+		return transactionSize;
+	}
+
+	/**
+	 * Set the number of features inserted per transaction
+	 *
+	 * @param transactionSize
+	 *            transaction size
+	 */
+	public void setTransactionSize(int transactionSize) {
+		this.transactionSize = Math.max(1, transactionSize);
+	}
+
+	/**
+	 * Get the progress
+	 *
+	 * @return progress
+	 */
+	public GeoPackageProgress getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Set the progress, updated as feature batches are inserted
+	 *
+	 * @param progress
+	 *            progress
+	 */
+	public void setProgress(GeoPackageProgress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Is the RTree index created when the table is not already indexed
+	 *
+	 * @return true if indexing
+	 */
+	public boolean isIndex() {
+		return index;
+	}
+
+	/**
+	 * Set if the RTree index is created when the table is not already
+	 * indexed. Existing RTree indices are always maintained.
+	 *
+	 * @param index
+	 *            true to index
+	 */
+	public void setIndex(boolean index) {
+		this.index = index;
+	}
+
+	/**
+	 * Import the features from the UTF-8 file
+	 *
+	 * @param file
+	 *            input file
+	 * @return number of imported features
+	 */
+	public long importFeatures(File file) {
+		try (BufferedReader reader = new BufferedReader(Channels.newReader(
+				FileChannel.open(file.toPath(), StandardOpenOption.READ),
+				StandardCharsets.UTF_8.newDecoder(), -1), 64 * 1024)) {
+			return importFeatures(reader);
+		} catch (IOException e) {
+			throw new GeoPackageException(
+					"Failed to import features from file: "
+							+ file.getAbsolutePath(),
+					e);
+		}
+	}
+
+	/**
+	 * Import the features from the reader
+	 *
+	 * @param reader
+	 *            input reader, not closed
+	 * @return number of imported features
+	 */
+	public long importFeatures(Reader reader) {
+
+		RecordSplitter splitter;
+		switch (format) {
+		case GEOJSON:
+			splitter = new GeoJSONSplitter(reader);
+			break;
+		case NDJSON:
+			splitter = new LineSplitter(reader);
+			break;
+		case CSV:
+			splitter = new CSVSplitter(reader);
+			break;
+		default:
+			throw new GeoPackageException(
+					"Unsupported import format: " + format);
+		}
+
+		String firstRecord;
+		try {
+			firstRecord = splitter.next();
+		} catch (IOException e) {
+			throw new GeoPackageException(
+					"Failed to read features. Table: " + tableName, e);
+		}
+
+		if (firstRecord == null && !geoPackage.isFeatureTable(tableName)) {
+			return 0;
+		}
+
+		FeatureDao featureDao;
+		if (geoPackage.isFeatureTable(tableName)) {
+			featureDao = geoPackage.getFeatureDao(tableName);
+		} else {
+			featureDao = createTable(parse(splitter, firstRecord, null));
+		}
+
+		return importFeatures(featureDao, splitter, firstRecord);
+	}
+
+	/**
+	 * Import the features into the feature table
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param splitter
+	 *            record splitter
+	 * @param record
+	 *            first record
+	 * @return number of imported features
+	 */
+	private long importFeatures(FeatureDao featureDao, RecordSplitter splitter,
+			String record) {
+
+		Inserter inserter = new Inserter(featureDao, splitter);
+
+		// Suspend the RTree triggers during the load
+		RTreeIndexTableDao rTreeDao = new RTreeIndexExtension(geoPackage)
+				.getTableDao(featureDao);
+		RTreeIndexBulkEdit bulkEdit = null;
+		if (rTreeDao.has()) {
+			bulkEdit = rTreeDao.beginBulkEdit();
+		}
+
+		Connection connection = geoPackage.getConnection().getConnection();
+		ExecutorService executor = threads > 1
+				? Executors.newFixedThreadPool(threads)
+				: null;
+		int maxPending = threads * 2;
+		Deque<BatchParser> pending = new ArrayDeque<>();
+
+		long count = 0;
+		GeometryEnvelope envelope = null;
+		boolean successful = false;
+		PreparedStatement statement = null;
+		boolean autoCommit = SQLUtils.beginTransaction(connection);
+		try {
+
+			statement = connection.prepareStatement(inserter.sql);
+
+			int uncommitted = 0;
+			while (record != null
+					&& (progress == null || progress.isActive())) {
+
+				List<String> records = new ArrayList<>(batchSize);
+				while (record != null && records.size() < batchSize) {
+					records.add(record);
+					record = splitter.next();
+				}
+
+				BatchParser batch = new BatchParser(inserter, records);
+				if (executor != null) {
+					batch.future = executor.submit(batch);
+					pending.add(batch);
+					if (pending.size() < maxPending) {
+						continue;
+					}
+					batch = pending.poll();
+				}
+
+				ParsedBatch parsed = insert(statement, batch);
+				count += parsed.rows.size();
+				uncommitted += parsed.rows.size();
+				envelope = union(envelope, parsed.envelope);
+				if (uncommitted >= transactionSize) {
+					connection.commit();
+					uncommitted = 0;
+				}
+			}
+
+			while (!pending.isEmpty()
+					&& (progress == null || progress.isActive())) {
+				ParsedBatch parsed = insert(statement, pending.poll());
+				count += parsed.rows.size();
+				envelope = union(envelope, parsed.envelope);
+			}
+
+			successful = true;
+
+		} catch (SQLException | IOException e) {
+			throw new GeoPackageException("Failed to import features. Table: "
+					+ tableName, e);
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+			SQLUtils.closeStatement(statement, inserter.sql);
+			// Previously committed transactions are kept upon failure
+			SQLUtils.endTransaction(connection, successful, autoCommit);
+			if (bulkEdit != null) {
+				bulkEdit.end();
+			}
+		}
+
+		if (envelope != null) {
+			updateContents(envelope);
+		}
+
+		if (bulkEdit == null && index) {
+			rTreeDao.createBulk(null);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Insert a parsed batch, waiting on the batch parsing when parallel
+	 *
+	 * @param statement
+	 *            insert statement
+	 * @param batch
+	 *            batch parser
+	 * @return parsed batch
+	 * @throws SQLException
+	 *             upon failure
+	 */
+	private ParsedBatch insert(PreparedStatement statement, BatchParser batch)
+			throws SQLException {
+		ParsedBatch parsed;
+		try {
+			parsed = batch.future != null ? batch.future.get() : batch.call();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GeoPackageException(
+					"Interrupted while parsing imported features", e);
+		} catch (ExecutionException e) {
+			throw new GeoPackageException(
+					"Failed to parse imported features. Table: " + tableName,
+					e.getCause());
+		}
+		for (Object[] row : parsed.rows) {
+			SQLUtils.setArguments(statement, row);
+			statement.addBatch();
+		}
+		statement.executeBatch();
+		if (progress != null) {
+			progress.addProgress(parsed.rows.size());
+		}
+		return parsed;
+	}
+
+	/**
+	 * Create the feature table from the first parsed feature
+	 *
+	 * @param feature
+	 *            first parsed feature
+	 * @return feature DAO
+	 */
+	private FeatureDao createTable(ParsedFeature feature) {
+
+		List<FeatureColumn> columns = new ArrayList<>();
+		for (Map.Entry<String, Object> property : feature.properties
+				.entrySet()) {
+			String name = property.getKey();
+			if (name.equalsIgnoreCase(idColumnName)
+					|| name.equalsIgnoreCase(geometryColumnName)) {
+				continue;
+			}
+			columns.add(FeatureColumn.createColumn(columns.size() + 2, name,
+					inferDataType(property.getValue())));
+		}
+
+		GeometryColumns geometryColumns = new GeometryColumns();
+		geometryColumns
+				.setId(new TableColumnKey(tableName, geometryColumnName));
+		geometryColumns.setGeometryType(GeometryType.GEOMETRY);
+		geometryColumns.setZ((byte) 2);
+		geometryColumns.setM((byte) 2);
+
+		try {
+			SpatialReferenceSystem srs = geoPackage
+					.getSpatialReferenceSystemDao().getOrCreateCode(
+							projection.getAuthority(),
+							Long.parseLong(projection.getCode()));
+			geoPackage.createFeatureTableWithMetadata(geometryColumns,
+					idColumnName, columns, null, srs.getId());
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to create feature table: " + tableName, e);
+		}
+
+		return geoPackage.getFeatureDao(tableName);
+	}
+
+	/**
+	 * Infer the column data type of a first record property value
+	 *
+	 * @param value
+	 *            value
+	 * @return data type
+	 */
+	private GeoPackageDataType inferDataType(Object value) {
+		GeoPackageDataType dataType = GeoPackageDataType.TEXT;
+		if (value instanceof Boolean) {
+			dataType = GeoPackageDataType.BOOLEAN;
+		} else if (value instanceof Long || value instanceof Integer) {
+			dataType = GeoPackageDataType.INTEGER;
+		} else if (value instanceof Number) {
+			dataType = GeoPackageDataType.DOUBLE;
+		} else if (value instanceof String
+				&& format == FeatureImportFormat.CSV) {
+			String text = ((String) value).trim();
+			try {
+				Long.parseLong(text);
+				dataType = GeoPackageDataType.INTEGER;
+			} catch (NumberFormatException e) {
+				try {
+					Double.parseDouble(text);
+					dataType = GeoPackageDataType.DOUBLE;
+				} catch (NumberFormatException e2) {
+					// text
+				}
+			}
+		}
+		return dataType;
+	}
+
+	/**
+	 * Expand the table contents bounds by the imported envelope
+	 *
+	 * @param envelope
+	 *            imported envelope in the table projection
+	 */
+	private void updateContents(GeometryEnvelope envelope) {
+		try {
+			ContentsDao contentsDao = geoPackage.getContentsDao();
+			Contents contents = contentsDao.queryForId(tableName);
+			if (contents.getMinX() != null) {
+				envelope = union(envelope,
+						new GeometryEnvelope(contents.getMinX(),
+								contents.getMinY(), contents.getMaxX(),
+								contents.getMaxY()));
+			}
+			contents.setMinX(envelope.getMinX());
+			contents.setMinY(envelope.getMinY());
+			contents.setMaxX(envelope.getMaxX());
+			contents.setMaxY(envelope.getMaxY());
+			contents.setLastChange(new Date());
+			contentsDao.update(contents);
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to update contents bounds. Table: " + tableName,
+					e);
+		}
+	}
+
+	/**
+	 * Union two envelopes, either of which may be null
+	 *
+	 * @param envelope1
+	 *            envelope 1
+	 * @param envelope2
+	 *            envelope 2
+	 * @return union envelope
+	 */
+	private static GeometryEnvelope union(GeometryEnvelope envelope1,
+			GeometryEnvelope envelope2) {
+		GeometryEnvelope union;
+		if (envelope1 == null) {
+			union = envelope2;
+		} else if (envelope2 == null) {
+			union = envelope1;
+		} else {
+			union = envelope1.union(envelope2);
+		}
+		return union;
+	}
+
+	/**
+	 * Parse a record into its geometry and properties
+	 *
+	 * @param splitter
+	 *            record splitter
+	 * @param record
+	 *            record
+	 * @param csvGeometryIndex
+	 *            CSV geometry field index, null to resolve from the header
+	 * @return parsed feature
+	 */
+	private ParsedFeature parse(RecordSplitter splitter, String record,
+			Integer csvGeometryIndex) {
+		ParsedFeature feature = new ParsedFeature();
+		if (format == FeatureImportFormat.CSV) {
+			String[] header = ((CSVSplitter) splitter).header;
+			int geometryIndex = csvGeometryIndex != null ? csvGeometryIndex
+					: csvGeometryIndex(header, null);
+			List<String> fields = splitCSV(record);
+			for (int i = 0; i < header.length; i++) {
+				String field = i < fields.size() ? fields.get(i) : null;
+				if (i == geometryIndex) {
+					if (field != null && !field.trim().isEmpty()) {
+						feature.geometry = GeometryTextDecoder.fromWKT(field);
+					}
+				} else {
+					feature.properties.put(header[i], field);
+				}
+			}
+		} else {
+			Object json = GeometryTextDecoder.parseJSON(record);
+			if (!(json instanceof Map)) {
+				throw new GeoPackageException(
+						"GeoJSON feature is not an object: " + record);
+			}
+			Map<?, ?> map = (Map<?, ?>) json;
+			Object geometry = map.get("geometry");
+			if (geometry != null) {
+				feature.geometry = GeometryTextDecoder.fromGeoJSON(geometry);
+			}
+			Object properties = map.get("properties");
+			if (properties instanceof Map) {
+				for (Map.Entry<?, ?> property : ((Map<?, ?>) properties)
+						.entrySet()) {
+					feature.properties.put(property.getKey().toString(),
+							property.getValue());
+				}
+			}
+		}
+		return feature;
+	}
+
+	/**
+	 * Get the CSV geometry field index from the header
+	 *
+	 * @param header
+	 *            header column names
+	 * @param tableGeometryColumn
+	 *            table geometry column name, may be null
+	 * @return geometry field index, -1 when not found
+	 */
+	private int csvGeometryIndex(String[] header, String tableGeometryColumn) {
+		List<String> names = new ArrayList<>();
+		if (csvGeometryColumn != null) {
+			names.add(csvGeometryColumn);
+		} else {
+			if (tableGeometryColumn != null) {
+				names.add(tableGeometryColumn);
+			}
+			names.add(geometryColumnName);
+			for (String name : CSV_GEOMETRY_COLUMN_NAMES) {
+				names.add(name);
+			}
+		}
+		for (String name : names) {
+			for (int i = 0; i < header.length; i++) {
+				if (header[i].equalsIgnoreCase(name)) {
+					return i;
+				}
+			}
+		}
+		if (csvGeometryColumn != null) {
+			throw new GeoPackageException(
+					"CSV geometry column not found in header: "
+							+ csvGeometryColumn);
+		}
+		return -1;
+	}
+
+	/**
+	 * Split a CSV record into fields. Unquoted empty fields are null.
+	 *
+	 * @param record
+	 *            CSV record
+	 * @return fields
+	 */
+	private static List<String> splitCSV(String record) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean wasQuoted = false;
+		for (int i = 0; i < record.length(); i++) {
+			char c = record.charAt(i);
+			if (quoted) {
+				if (c == '"') {
+					if (i + 1 < record.length()
+							&& record.charAt(i + 1) == '"') {
+						field.append('"');
+						i++;
+					} else {
+						quoted = false;
+					}
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+				wasQuoted = true;
+			} else if (c == ',') {
+				fields.add(field.length() > 0 || wasQuoted ? field.toString()
+						: null);
+				field.setLength(0);
+				wasQuoted = false;
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.length() > 0 || wasQuoted ? field.toString() : null);
+		return fields;
+	}
+
+	/**
+	 * Convert a property value to the column data type, keeping the original
+	 * value as text when it can not be converted
+	 *
+	 * @param value
+	 *            property value
+	 * @param dataType
+	 *            column data type
+	 * @return column value
+	 */
+	private static Object convert(Object value, GeoPackageDataType dataType) {
+
+		if (value == null) {
+			return null;
+		}
+
+		if (value instanceof Map || value instanceof List) {
+			StringBuilder json = new StringBuilder();
+			writeJSON(value, json);
+			value = json.toString();
+		}
+
+		Object converted = value;
+		switch (dataType) {
+		case BOOLEAN:
+			if (value instanceof Number) {
+				converted = ((Number) value).longValue() != 0;
+			} else if (value instanceof String) {
+				String text = ((String) value).trim();
+				if (text.equalsIgnoreCase("true") || text.equals("1")) {
+					converted = true;
+				} else if (text.equalsIgnoreCase("false")
+						|| text.equals("0")) {
+					converted = false;
+				}
+			}
+			break;
+		case TINYINT:
+		case SMALLINT:
+		case MEDIUMINT:
+		case INT:
+		case INTEGER:
+			if (value instanceof Number) {
+				converted = ((Number) value).longValue();
+			} else if (value instanceof Boolean) {
+				converted = ((Boolean) value) ? 1L : 0L;
+			} else {
+				try {
+					converted = Long.parseLong(value.toString().trim());
+				} catch (NumberFormatException e) {
+					// keep as text
+				}
+			}
+			break;
+		case FLOAT:
+		case DOUBLE:
+		case REAL:
+			if (value instanceof Number) {
+				converted = ((Number) value).doubleValue();
+			} else {
+				try {
+					converted = Double.parseDouble(value.toString().trim());
+				} catch (NumberFormatException e) {
+					// keep as text
+				}
+			}
+			break;
+		case BLOB:
+			try {
+				converted = Base64.getDecoder().decode(value.toString());
+			} catch (IllegalArgumentException e) {
+				converted = value.toString().getBytes(StandardCharsets.UTF_8);
+			}
+			break;
+		default:
+			converted = value.toString();
+		}
+
+		return converted;
+	}
+
+	/**
+	 * Write a parsed JSON value
+	 *
+	 * @param value
+	 *            parsed JSON value
+	 * @param json
+	 *            string builder to append to
+	 */
+	private static void writeJSON(Object value, StringBuilder json) {
+		if (value == null) {
+			json.append("null");
+		} else if (value instanceof Map) {
+			json.append("{");
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first) {
+					json.append(",");
+				}
+				first = false;
+				GeometryTextEncoder.writeJSONString(entry.getKey().toString(),
+						json);
+				json.append(":");
+				writeJSON(entry.getValue(), json);
+			}
+			json.append("}");
+		} else if (value instanceof List) {
+			json.append("[");
+			boolean first = true;
+			for (Object element : (List<?>) value) {
+				if (!first) {
+					json.append(",");
+				}
+				first = false;
+				writeJSON(element, json);
+			}
+			json.append("]");
+		} else if (value instanceof Double) {
+			GeometryTextEncoder.writeNumber((Double) value, json);
+		} else if (value instanceof Number || value instanceof Boolean) {
+			json.append(value);
+		} else {
+			GeometryTextEncoder.writeJSONString(value.toString(), json);
+		}
+	}
+
+	/**
+	 * Parsed feature geometry and properties
+	 */
+	private static class ParsedFeature {
+
+		/**
+		 * Geometry, null for null geometries
+		 */
+		private Geometry geometry;
+
+		/**
+		 * Properties in input order
+		 */
+		private final Map<String, Object> properties = new LinkedHashMap<>();
+
+	}
+
+	/**
+	 * Parsed batch of rows and their envelope
+	 */
+	private static class ParsedBatch {
+
+		/**
+		 * Insert column values per row
+		 */
+		private final List<Object[]> rows;
+
+		/**
+		 * Envelope of the row geometries, null when none
+		 */
+		private GeometryEnvelope envelope;
+
+		/**
+		 * Constructor
+		 *
+		 * @param size
+		 *            number of rows
+		 */
+		private ParsedBatch(int size) {
+			rows = new ArrayList<>(size);
+		}
+
+	}
+
+	/**
+	 * Insert statement and column mapping of the feature table
+	 */
+	private class Inserter {
+
+		/**
+		 * Insert columns, excluding the primary key
+		 */
+		private final List<FeatureColumn> columns = new ArrayList<>();
+
+		/**
+		 * Insert SQL
+		 */
+		private final String sql;
+
+		/**
+		 * Table spatial reference system id
+		 */
+		private final long srsId;
+
+		/**
+		 * Table projection
+		 */
+		private final Projection tableProjection;
+
+		/**
+		 * CSV geometry field index
+		 */
+		private final Integer csvGeometryIndex;
+
+		/**
+		 * Record splitter
+		 */
+		private final RecordSplitter splitter;
+
+		/**
+		 * Constructor
+		 *
+		 * @param featureDao
+		 *            feature DAO
+		 * @param splitter
+		 *            record splitter
+		 */
+		private Inserter(FeatureDao featureDao, RecordSplitter splitter) {
+			this.splitter = splitter;
+			srsId = featureDao.getGeometryColumns().getSrsId();
+			tableProjection = featureDao.getProjection();
+
+			StringBuilder names = new StringBuilder();
+			StringBuilder values = new StringBuilder();
+			for (FeatureColumn column : featureDao.getTable().getColumns()) {
+				if (column.isPrimaryKey()) {
+					continue;
+				}
+				if (!columns.isEmpty()) {
+					names.append(", ");
+					values.append(", ");
+				}
+				columns.add(column);
+				names.append(CoreSQLUtils.quoteWrap(column.getName()));
+				values.append("?");
+			}
+			sql = "INSERT INTO " + CoreSQLUtils.quoteWrap(tableName) + " ("
+					+ names + ") VALUES (" + values + ")";
+
+			if (splitter instanceof CSVSplitter) {
+				csvGeometryIndex = csvGeometryIndex(
+						((CSVSplitter) splitter).header,
+						featureDao.getGeometryColumnName());
+			} else {
+				csvGeometryIndex = null;
+			}
+		}
+
+	}
+
+	/**
+	 * Parser of a batch of records into insert rows
+	 */
+	private class BatchParser implements Callable<ParsedBatch> {
+
+		/**
+		 * Inserter
+		 */
+		private final Inserter inserter;
+
+		/**
+		 * Records, released once parsed
+		 */
+		private List<String> records;
+
+		/**
+		 * Parsing future when parsed in parallel
+		 */
+		private Future<ParsedBatch> future;
+
+		/**
+		 * Constructor
+		 *
+		 * @param inserter
+		 *            inserter
+		 * @param records
+		 *            records
+		 */
+		private BatchParser(Inserter inserter, List<String> records) {
+			this.inserter = inserter;
+			this.records = records;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ParsedBatch call() {
+
+			ProjectionTransform transform = null;
+			if (!projection.equals(inserter.tableProjection)) {
+				transform = ProjectionTransforms.get(projection,
+						inserter.tableProjection);
+				if (transform.isSameProjection()) {
+					transform = null;
+				}
+			}
+
+			ParsedBatch batch = new ParsedBatch(records.size());
+			for (String record : records) {
+				ParsedFeature feature = parse(inserter.splitter, record,
+						inserter.csvGeometryIndex);
+				Object[] row = new Object[inserter.columns.size()];
+				for (int i = 0; i < row.length; i++) {
+					FeatureColumn column = inserter.columns.get(i);
+					if (column.isGeometry()) {
+						row[i] = encode(feature.geometry, transform, batch);
+					} else {
+						row[i] = convert(
+								feature.properties.get(column.getName()),
+								column.getDataType());
+					}
+				}
+				batch.rows.add(row);
+			}
+
+			records = null;
+
+			return batch;
+		}
+
+		/**
+		 * Project and encode the geometry as GeoPackage geometry bytes,
+		 * expanding the batch envelope
+		 *
+		 * @param geometry
+		 *            geometry, may be null
+		 * @param transform
+		 *            projection transform, null when not transforming
+		 * @param batch
+		 *            parsed batch
+		 * @return geometry bytes, null for null geometries
+		 */
+		private byte[] encode(Geometry geometry, ProjectionTransform transform,
+				ParsedBatch batch) {
+			byte[] bytes = null;
+			if (geometry != null) {
+				if (transform != null) {
+					geometry = transform.transform(geometry);
+				}
+				GeoPackageGeometryData geometryData = new GeoPackageGeometryData(
+						inserter.srsId);
+				geometryData.setGeometry(geometry);
+				if (!geometry.isEmpty()) {
+					GeometryEnvelope envelope = GeometryEnvelopeBuilder
+							.buildEnvelope(geometry);
+					geometryData.setEnvelope(envelope);
+					batch.envelope = union(batch.envelope, envelope);
+				}
+				try {
+					bytes = geometryData.toBytes();
+				} catch (IOException e) {
+					throw new GeoPackageException(
+							"Failed to write geometry bytes. Table: "
+									+ tableName,
+							e);
+				}
+			}
+			return bytes;
+		}
+
+	}
+
+	/**
+	 * Splitter of the input into feature records, read on the calling thread
+	 */
+	private static abstract class RecordSplitter {
+
+		/**
+		 * Input reader
+		 */
+		protected final Reader reader;
+
+		/**
+		 * Constructor
+		 *
+		 * @param reader
+		 *            input reader
+		 */
+		protected RecordSplitter(Reader reader) {
+			this.reader = reader;
+		}
+
+		/**
+		 * Read the next record
+		 *
+		 * @return record, null when done
+		 * @throws IOException
+		 *             upon failure
+		 */
+		protected abstract String next() throws IOException;
+
+	}
+
+	/**
+	 * Splitter of newline delimited records, skipping blank lines
+	 */
+	private static class LineSplitter extends RecordSplitter {
+
+		/**
+		 * Buffered line reader
+		 */
+		protected final BufferedReader lines;
+
+		/**
+		 * Constructor
+		 *
+		 * @param reader
+		 *            input reader
+		 */
+		private LineSplitter(Reader reader) {
+			super(reader);
+			lines = reader instanceof BufferedReader ? (BufferedReader) reader
+					: new BufferedReader(reader);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected String next() throws IOException {
+			String line;
+			while ((line = lines.readLine()) != null
+					&& line.trim().isEmpty()) {
+			}
+			return line;
+		}
+
+	}
+
+	/**
+	 * Splitter of CSV records after the header, joining lines within quoted
+	 * fields
+	 */
+	private static class CSVSplitter extends LineSplitter {
+
+		/**
+		 * Header column names
+		 */
+		private String[] header;
+
+		/**
+		 * Constructor
+		 *
+		 * @param reader
+		 *            input reader
+		 */
+		private CSVSplitter(Reader reader) {
+			super(reader);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected String next() throws IOException {
+			if (header == null) {
+				String headerRecord = nextRecord();
+				if (headerRecord == null) {
+					return null;
+				}
+				List<String> names = splitCSV(headerRecord);
+				header = new String[names.size()];
+				for (int i = 0; i < header.length; i++) {
+					String name = names.get(i);
+					header[i] = name != null ? name.trim() : "";
+				}
+			}
+			return nextRecord();
+		}
+
+		/**
+		 * Read the next record, continuing across lines while a quoted field
+		 * is open
+		 *
+		 * @return record, null when done
+		 * @throws IOException
+		 *             upon failure
+		 */
+		private String nextRecord() throws IOException {
+			String record = super.next();
+			if (record != null && quotes(record) % 2 != 0) {
+				StringBuilder builder = new StringBuilder(record);
+				int quotes = quotes(record);
+				String line;
+				while (quotes % 2 != 0 && (line = lines.readLine()) != null) {
+					builder.append('\n').append(line);
+					quotes += quotes(line);
+				}
+				record = builder.toString();
+			}
+			return record;
+		}
+
+		/**
+		 * Count the quote characters
+		 *
+		 * @param text
+		 *            text
+		 * @return quote count
+		 */
+		private static int quotes(String text) {
+			int count = 0;
+			for (int i = 0; i < text.length(); i++) {
+				if (text.charAt(i) == '"') {
+					count++;
+				}
+			}
+			return count;
+		}
+
+	}
+
+	/**
+	 * Streaming splitter of the features array elements of a GeoJSON feature
+	 * collection, without reading the whole document into memory
+	 */
+	private static class GeoJSONSplitter extends RecordSplitter {
+
+		/**
+		 * True once positioned within the features array
+		 */
+		private boolean inFeatures = false;
+
+		/**
+		 * True once the features array has been read
+		 */
+		private boolean done = false;
+
+		/**
+		 * Constructor
+		 *
+		 * @param reader
+		 *            input reader
+		 */
+		private GeoJSONSplitter(Reader reader) {
+			super(reader);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected String next() throws IOException {
+
+			if (done) {
+				return null;
+			}
+			if (!inFeatures) {
+				inFeatures = seekFeatures();
+				if (!inFeatures) {
+					done = true;
+					return null;
+				}
+			}
+
+			int c;
+			while ((c = reader.read()) != -1 && c != '{') {
+				if (c == ']') {
+					done = true;
+					return null;
+				}
+			}
+			if (c == -1) {
+				throw new GeoPackageException(
+						"Unexpected end of GeoJSON features array");
+			}
+
+			StringBuilder feature = new StringBuilder();
+			feature.append('{');
+			int depth = 1;
+			boolean inString = false;
+			boolean escape = false;
+			while (depth > 0 && (c = reader.read()) != -1) {
+				feature.append((char) c);
+				if (inString) {
+					if (escape) {
+						escape = false;
+					} else if (c == '\\') {
+						escape = true;
+					} else if (c == '"') {
+						inString = false;
+					}
+				} else if (c == '"') {
+					inString = true;
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+				}
+			}
+			if (depth > 0) {
+				throw new GeoPackageException(
+						"Unexpected end of GeoJSON feature");
+			}
+
+			return feature.toString();
+		}
+
+		/**
+		 * Read up to and including the opening bracket of the top level
+		 * features array
+		 *
+		 * @return true if found
+		 * @throws IOException
+		 *             upon failure
+		 */
+		private boolean seekFeatures() throws IOException {
+			int depth = 0;
+			int c;
+			while ((c = reader.read()) != -1) {
+				if (c == '"') {
+					String string = readString();
+					if (depth == 1) {
+						c = nextNonWhitespace();
+						if (c == ':' && string.equals("features")) {
+							if (nextNonWhitespace() != '[') {
+								throw new GeoPackageException(
+										"GeoJSON features is not an array");
+							}
+							return true;
+						}
+					}
+				}
+				if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Read the remainder of a string after its opening quote
+		 *
+		 * @return string with escapes left as read
+		 * @throws IOException
+		 *             upon failure
+		 */
+		private String readString() throws IOException {
+			StringBuilder string = new StringBuilder();
+			int c;
+			while ((c = reader.read()) != -1 && c != '"') {
+				string.append((char) c);
+				if (c == '\\') {
+					c = reader.read();
+					if (c == -1) {
+						break;
+					}
+					string.append((char) c);
+				}
+			}
+			return string.toString();
+		}
+
+		/**
+		 * Read the next non whitespace character
+		 *
+		 * @return character, -1 at the end
+		 * @throws IOException
+		 *             upon failure
+		 */
+		private int nextNonWhitespace() throws IOException {
+			int c;
+			while ((c = reader.read()) != -1 && Character.isWhitespace(c)) {
+			}
+			return c;
+		}
+
+	}
+
+}
@@ -0,0 +1,429 @@
+package mil.nga.geopackage.io;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.manager.GeoPackageManager;
+import mil.nga.sf.proj.Projection;
+import mil.nga.sf.proj.ProjectionFactory;
+
+/**
+ * Reads the features from a GeoJSON, newline delimited GeoJSON, or CSV with
+ * Well-Known Text file into a GeoPackage feature table
+ *
+ * To run from command line, build with the standalone profile:
+ *
+ * mvn clean install -Pstandalone
+ *
+ * java -classpath geopackage-*-standalone.jar
+ * mil.nga.geopackage.io.FeatureReader +usage_arguments
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureReader {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(FeatureReader.class.getName());
+
+	/**
+	 * Log feature frequency for how often to log feature import progress
+	 */
+	private static final int LOG_FEATURE_FREQUENCY = 100000;
+
+	/**
+	 * Log feature frequency in seconds for how often to log feature import
+	 * progress
+	 */
+	private static final int LOG_FEATURE_TIME_FREQUENCY = 60;
+
+	/**
+	 * Argument prefix
+	 */
+	public static final String ARGUMENT_PREFIX = "-";
+
+	/**
+	 * Import format argument
+	 */
+	public static final String ARGUMENT_FORMAT = "f";
+
+	/**
+	 * Input projection argument
+	 */
+	public static final String ARGUMENT_PROJECTION = "proj";
+
+	/**
+	 * CSV geometry column argument
+	 */
+	public static final String ARGUMENT_CSV_GEOMETRY_COLUMN = "wkt";
+
+	/**
+	 * Parsing threads argument
+	 */
+	public static final String ARGUMENT_THREADS = "threads";
+
+	/**
+	 * Transaction size argument
+	 */
+	public static final String ARGUMENT_TRANSACTION_SIZE = "transaction";
+
+	/**
+	 * No RTree index argument
+	 */
+	public static final String ARGUMENT_NO_INDEX = "noindex";
+
+	/**
+	 * Default import format
+	 */
+	public static final FeatureImportFormat DEFAULT_FORMAT = FeatureImportFormat.GEOJSON;
+
+	/**
+	 * Main method to read features into a GeoPackage
+	 *
+	 * @param args
+	 *            arguments
+	 * @throws Exception
+	 *             upon failure
+	 */
+	public static void main(String[] args) throws Exception {
+
+		boolean valid = true;
+		boolean requiredArguments = false;
+
+		FeatureImportFormat format = null;
+		Projection projection = null;
+		String csvGeometryColumn = null;
+		Integer threads = null;
+		Integer transactionSize = null;
+		boolean index = true;
+		File inputFile = null;
+		File geoPackageFile = null;
+		String featureTable = null;
+
+		for (int i = 0; valid && i < args.length; i++) {
+
+			String arg = args[i];
+
+			// Handle optional arguments
+			if (arg.startsWith(ARGUMENT_PREFIX)) {
+
+				String argument = arg.substring(ARGUMENT_PREFIX.length());
+
+				switch (argument) {
+
+				case ARGUMENT_FORMAT:
+					if (i < args.length) {
+						String formatString = args[++i].toUpperCase();
+						try {
+							format = FeatureImportFormat.valueOf(formatString);
+						} catch (IllegalArgumentException e) {
+							valid = false;
+							System.out.println("Error: Format argument '" + arg
+									+ "' must be followed by a valid import format. Invalid: "
+									+ formatString);
+						}
+					} else {
+						valid = false;
+						System.out.println("Error: Format argument '" + arg
+								+ "' must be followed by a format (geojson, ndjson, csv)");
+					}
+					break;
+
+				case ARGUMENT_PROJECTION:
+					if (i < args.length) {
+						String[] projParts = args[++i].split(",");
+						if (projParts.length != 2) {
+							valid = false;
+							System.out.println("Error: Projection argument '"
+									+ arg
+									+ "' value must be in the format: authority,code");
+						} else {
+							projection = ProjectionFactory
+									.getProjection(projParts[0], projParts[1]);
+						}
+					} else {
+						valid = false;
+						System.out.println("Error: Projection argument '" + arg
+								+ "' must be followed by projection values: authority,code");
+					}
+					break;
+
+				case ARGUMENT_CSV_GEOMETRY_COLUMN:
+					if (i < args.length) {
+						csvGeometryColumn = args[++i];
+					} else {
+						valid = false;
+						System.out.println("Error: CSV geometry column argument '"
+								+ arg + "' must be followed by a column name");
+					}
+					break;
+
+				case ARGUMENT_THREADS:
+				case ARGUMENT_TRANSACTION_SIZE:
+					if (i < args.length) {
+						String countString = args[++i];
+						try {
+							if (argument.equals(ARGUMENT_THREADS)) {
+								threads = Integer.valueOf(countString);
+							} else {
+								transactionSize = Integer.valueOf(countString);
+							}
+						} catch (NumberFormatException e) {
+							valid = false;
+							System.out.println("Error: Argument '" + arg
+									+ "' must be followed by a valid count. Invalid: "
+									+ countString);
+						}
+					} else {
+						valid = false;
+						System.out.println("Error: Argument '" + arg
+								+ "' must be followed by a count");
+					}
+					break;
+
+				case ARGUMENT_NO_INDEX:
+					index = false;
+					break;
+
+				default:
+					valid = false;
+					System.out.println("Error: Unsupported arg: '" + arg + "'");
+				}
+
+			} else {
+				// Set required arguments in order
+				if (inputFile == null) {
+					inputFile = new File(arg);
+				} else if (geoPackageFile == null) {
+					geoPackageFile = new File(arg);
+				} else if (featureTable == null) {
+					featureTable = arg;
+					requiredArguments = true;
+				} else {
+					valid = false;
+					System.out.println(
+							"Error: Unsupported extra argument: " + arg);
+				}
+			}
+		}
+
+		if (!valid || !requiredArguments) {
+			printUsage();
+		} else {
+
+			// Default the format from the input file extension
+			if (format == null) {
+				format = FeatureImportFormat
+						.fromFileName(inputFile.getName());
+				if (format == null) {
+					format = DEFAULT_FORMAT;
+				}
+			}
+
+			// Read the features
+			try {
+				readFeatures(inputFile, geoPackageFile, featureTable, format,
+						projection, csvGeometryColumn, threads,
+						transactionSize, index);
+			} catch (Exception e) {
+				printUsage();
+				throw e;
+			}
+		}
+
+	}
+
+	/**
+	 * Read the features from the input file into the GeoPackage file feature
+	 * table, creating the GeoPackage and table as needed
+	 *
+	 * @param inputFile
+	 *            input file
+	 * @param geoPackageFile
+	 *            GeoPackage file
+	 * @param featureTable
+	 *            feature table
+	 * @param format
+	 *            import format
+	 * @param projection
+	 *            optional input projection, WGS84 by default
+	 * @param csvGeometryColumn
+	 *            optional CSV Well-Known Text geometry column
+	 * @param threads
+	 *            optional number of parsing threads
+	 * @param transactionSize
+	 *            optional number of features per transaction
+	 * @param index
+	 *            true to create the RTree index for unindexed tables
+	 * @return number of read features
+	 */
+	public static long readFeatures(File inputFile, File geoPackageFile,
+			String featureTable, FeatureImportFormat format,
+			Projection projection, String csvGeometryColumn, Integer threads,
+			Integer transactionSize, boolean index) {
+
+		// If the GeoPackage does not exist create it
+		if (!geoPackageFile.exists()) {
+			if (!GeoPackageManager.create(geoPackageFile)) {
+				throw new GeoPackageException(
+						"Failed to create GeoPackage file: "
+								+ geoPackageFile.getAbsolutePath());
+			}
+		}
+
+		GeoPackage geoPackage = GeoPackageManager.open(geoPackageFile);
+		try {
+			return readFeatures(inputFile, geoPackage, featureTable, format,
+					projection, csvGeometryColumn, threads, transactionSize,
+					index);
+		} finally {
+			geoPackage.close();
+		}
+	}
+
+	/**
+	 * Read the features from the input file into the GeoPackage feature table,
+	 * creating the table as needed
+	 *
+	 * @param inputFile
+	 *            input file
+	 * @param geoPackage
+	 *            open GeoPackage
+	 * @param featureTable
+	 *            feature table
+	 * @param format
+	 *            import format
+	 * @param projection
+	 *            optional input projection, WGS84 by default
+	 * @param csvGeometryColumn
+	 *            optional CSV Well-Known Text geometry column
+	 * @param threads
+	 *            optional number of parsing threads
+	 * @param transactionSize
+	 *            optional number of features per transaction
+	 * @param index
+	 *            true to create the RTree index for unindexed tables
+	 * @return number of read features
+	 */
+	public static long readFeatures(File inputFile, GeoPackage geoPackage,
+			String featureTable, FeatureImportFormat format,
+			Projection projection, String csvGeometryColumn, Integer threads,
+			Integer transactionSize, boolean index) {
+
+		FeatureImporter importer = new FeatureImporter(geoPackage,
+				featureTable, format);
+		if (projection != null) {
+			importer.setProjection(projection);
+		}
+		if (csvGeometryColumn != null) {
+			importer.setCsvGeometryColumn(csvGeometryColumn);
+		}
+		if (threads != null) {
+			importer.setThreads(threads);
+		}
+		if (transactionSize != null) {
+			importer.setTransactionSize(transactionSize);
+		}
+		importer.setIndex(index);
+
+		Progress progress = new Progress("Feature Import", "features",
+				LOG_FEATURE_FREQUENCY, LOG_FEATURE_TIME_FREQUENCY);
+		progress.setLogRate(true);
+		importer.setProgress(progress);
+
+		LOGGER.log(Level.INFO,
+				"Input File: " + inputFile.getAbsolutePath() + ", Format: "
+						+ format.name().toLowerCase() + ", GeoPackage: "
+						+ geoPackage.getName() + ", Feature Table: "
+						+ featureTable);
+
+		long count = importer.importFeatures(inputFile);
+
+		LOGGER.log(Level.INFO, "Read " + count + " features at "
+				+ Math.round(progress.getRate()) + " features per second");
+
+		return count;
+	}
+
+	/**
+	 * Print usage for the main method
+	 */
+	private static void printUsage() {
+		System.out.println();
+		System.out.println("USAGE");
+		System.out.println();
+		System.out.println("\t[" + ARGUMENT_PREFIX + ARGUMENT_FORMAT
+				+ " format] [" + ARGUMENT_PREFIX + ARGUMENT_PROJECTION
+				+ " authority,code] [" + ARGUMENT_PREFIX
+				+ ARGUMENT_CSV_GEOMETRY_COLUMN + " column] ["
+				+ ARGUMENT_PREFIX + ARGUMENT_THREADS + " threads] ["
+				+ ARGUMENT_PREFIX + ARGUMENT_TRANSACTION_SIZE + " size] ["
+				+ ARGUMENT_PREFIX + ARGUMENT_NO_INDEX
+				+ "] input_file geopackage_file feature_table");
+		System.out.println();
+		System.out.println("DESCRIPTION");
+		System.out.println();
+		System.out.println(
+				"\tBulk loads the features of a GeoJSON, newline delimited GeoJSON or CSV file into a GeoPackage feature table, creating the GeoPackage and table when they do not exist");
+		System.out.println();
+		System.out.println("ARGUMENTS");
+		System.out.println();
+		System.out.println(
+				"\t" + ARGUMENT_PREFIX + ARGUMENT_FORMAT + " format");
+		System.out.println(
+				"\t\tImport format (default is from the input file extension, otherwise "
+						+ DEFAULT_FORMAT.name().toLowerCase() + ")");
+		System.out.println("\t\t\t"
+				+ FeatureImportFormat.GEOJSON.name().toLowerCase()
+				+ " - GeoJSON feature collection");
+		System.out.println("\t\t\t"
+				+ FeatureImportFormat.NDJSON.name().toLowerCase()
+				+ " - newline delimited GeoJSON features");
+		System.out.println("\t\t\t"
+				+ FeatureImportFormat.CSV.name().toLowerCase()
+				+ " - comma separated values with a header and Well-Known Text geometries");
+		System.out.println();
+		System.out.println("\t" + ARGUMENT_PREFIX + ARGUMENT_PROJECTION
+				+ " authority,code");
+		System.out.println(
+				"\t\tInput projection (default is EPSG,4326), used as the projection of created tables");
+		System.out.println();
+		System.out.println("\t" + ARGUMENT_PREFIX
+				+ ARGUMENT_CSV_GEOMETRY_COLUMN + " column");
+		System.out.println(
+				"\t\tCSV header column containing the Well-Known Text geometries (default searches for the table geometry column, wkt, geometry, geom, the_geom, shape)");
+		System.out.println();
+		System.out.println(
+				"\t" + ARGUMENT_PREFIX + ARGUMENT_THREADS + " threads");
+		System.out.println(
+				"\t\tNumber of feature parsing threads (default is the number of processors)");
+		System.out.println();
+		System.out.println("\t" + ARGUMENT_PREFIX + ARGUMENT_TRANSACTION_SIZE
+				+ " size");
+		System.out.println("\t\tNumber of features inserted per transaction (default is "
+						+ FeatureImporter.DEFAULT_TRANSACTION_SIZE + ")");
+		System.out.println();
+		System.out.println("\t" + ARGUMENT_PREFIX + ARGUMENT_NO_INDEX);
+		System.out.println(
+				"\t\tDo not create an RTree index for tables without one, existing RTree indices are always maintained");
+		System.out.println();
+		System.out.println("\tinput_file");
+		System.out.println("\t\tinput file to read the features from");
+		System.out.println();
+		System.out.println("\tgeopackage_file");
+		System.out.println(
+				"\t\tpath to the GeoPackage file to create or add the features to");
+		System.out.println();
+		System.out.println("\tfeature_table");
+		System.out.println(
+				"\t\tfeature table name within the GeoPackage file, created when it does not exist");
+		System.out.println();
+	}
+
+}
@@ -0,0 +1,490 @@
+package mil.nga.geopackage.io;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.features.index.FeatureIndexManager;
+import mil.nga.geopackage.features.index.FeatureIndexResults;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.manager.GeoPackageManager;
+import mil.nga.sf.proj.Projection;
+import mil.nga.sf.proj.ProjectionConstants;
+import mil.nga.sf.proj.ProjectionFactory;
+
+/**
+ * Writes the features from a GeoPackage feature table to a GeoJSON, newline
+ * delimited GeoJSON, CSV with Well-Known Text, or Well-Known Binary file
+ *
+ * To run from command line, build with the standalone profile:
+ *
+ * mvn clean install -Pstandalone
+ *
+ * java -classpath geopackage-*-standalone.jar
+ * mil.nga.geopackage.io.FeatureWriter +usage_arguments
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class FeatureWriter {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger
+			.getLogger(FeatureWriter.class.getName());
+
+	/**
+	 * Log feature frequency for how often to log feature export progress
+	 */
+	private static final int LOG_FEATURE_FREQUENCY = 10000;
+
+	/**
+	 * Log feature frequency in seconds for how often to log feature export
+	 * progress
+	 */
+	private static final int LOG_FEATURE_TIME_FREQUENCY = 60;
+
+	/**
+	 * Argument prefix
+	 */
+	public static final String ARGUMENT_PREFIX = "-";
+
+	/**
+	 * Format argument
+	 */
+	public static final String ARGUMENT_FORMAT = "f";
+
+	/**
+	 * Projection argument
+	 */
+	public static final String ARGUMENT_PROJECTION = "proj";
+
+	/**
+	 * Bounding box argument
+	 */
+	public static final String ARGUMENT_BOUNDING_BOX = "bbox";
+
+	/**
+	 * Bounding box projection argument
+	 */
+	public static final String ARGUMENT_BOUNDING_BOX_PROJECTION = "bbox-proj";
+
+	/**
+	 * Where clause argument
+	 */
+	public static final String ARGUMENT_WHERE = "where";
+
+	/**
+	 * Threads argument
+	 */
+	public static final String ARGUMENT_THREADS = "threads";
+
+	/**
+	 * Default export format
+	 */
+	public static final FeatureExportFormat DEFAULT_FORMAT = FeatureExportFormat.GEOJSON;
+
+	/**
+	 * Main method to write features from a GeoPackage
+	 *
+	 * @param args
+	 *            arguments
+	 * @throws Exception
+	 *             upon failure
+	 */
+	public static void main(String[] args) throws Exception {
+
+		boolean valid = true;
+		boolean requiredArguments = false;
+
+		FeatureExportFormat format = null;
+		Projection projection = null;
+		BoundingBox boundingBox = null;
+		Projection boundingBoxProjection = null;
+		String where = null;
+		Integer threads = null;
+		File geoPackageFile = null;
+		String featureTable = null;
+		File outputFile = null;
+
+		for (int i = 0; valid && i < args.length; i++) {
+
+			String arg = args[i];
+
+			// Handle optional arguments
+			if (arg.startsWith(ARGUMENT_PREFIX)) {
+
+				String argument = arg.substring(ARGUMENT_PREFIX.length());
+
+				switch (argument) {
+
+				case ARGUMENT_FORMAT:
+					if (i < args.length) {
+						String formatString = args[++i].toUpperCase();
+						try {
+							format = FeatureExportFormat.valueOf(formatString);
+						} catch (IllegalArgumentException e) {
+							valid = false;
+							System.out.println("Error: Format argument '" + arg
+									+ "' must be followed by a valid export format. Invalid: "
+									+ formatString);
+						}
+					} else {
+						valid = false;
+						System.out.println("Error: Format argument '" + arg
+								+ "' must be followed by a format (geojson, ndjson, csv, wkb)");
+					}
+					break;
+
+				case ARGUMENT_PROJECTION:
+					if (i < args.length) {
+						projection = parseProjection(arg, args[++i]);
+						valid = projection != null;
+					} else {
+						valid = false;
+						System.out.println("Error: Projection argument '" + arg
+								+ "' must be followed by projection values: authority,code");
+					}
+					break;
+
+				case ARGUMENT_BOUNDING_BOX:
+					if (i < args.length) {
+						String bbox = args[++i];
+						String[] bboxParts = bbox.split(",");
+						if (bboxParts.length != 4) {
+							valid = false;
+							System.out.println("Error: Bounding Box argument '"
+									+ arg
+									+ "' value must be in the format: minLon,minLat,maxLon,maxLat");
+						} else {
+							double minLon = Double.valueOf(bboxParts[0]);
+							double minLat = Double.valueOf(bboxParts[1]);
+							double maxLon = Double.valueOf(bboxParts[2]);
+							double maxLat = Double.valueOf(bboxParts[3]);
+							boundingBox = new BoundingBox(minLon, minLat,
+									maxLon, maxLat);
+						}
+					} else {
+						valid = false;
+						System.out.println("Error: Bounding Box argument '"
+								+ arg
+								+ "' must be followed by bbox values: minLon,minLat,maxLon,maxLat");
+					}
+					break;
+
+				case ARGUMENT_BOUNDING_BOX_PROJECTION:
+					if (i < args.length) {
+						boundingBoxProjection = parseProjection(arg,
+								args[++i]);
+						valid = boundingBoxProjection != null;
+					} else {
+						valid = false;
+						System.out.println(
+								"Error: Bounding Box Projection argument '"
+										+ arg
+										+ "' must be followed by projection values: authority,code");
+					}
+					break;
+
+				case ARGUMENT_WHERE:
+					if (i < args.length) {
+						where = args[++i];
+					} else {
+						valid = false;
+						System.out.println("Error: Where argument '" + arg
+								+ "' must be followed by a where clause");
+					}
+					break;
+
+				case ARGUMENT_THREADS:
+					if (i < args.length) {
+						String threadsString = args[++i];
+						try {
+							threads = Integer.valueOf(threadsString);
+						} catch (NumberFormatException e) {
+							valid = false;
+							System.out.println("Error: Threads argument '"
+									+ arg
+									+ "' must be followed by a valid thread count. Invalid: "
+									+ threadsString);
+						}
+					} else {
+						valid = false;
+						System.out.println("Error: Threads argument '" + arg
+								+ "' must be followed by a thread count");
+					}
+					break;
+
+				default:
+					valid = false;
+					System.out.println("Error: Unsupported arg: '" + arg + "'");
+				}
+
+			} else {
+				// Set required arguments in order
+				if (geoPackageFile == null) {
+					geoPackageFile = new File(arg);
+				} else if (featureTable == null) {
+					featureTable = arg;
+				} else if (outputFile == null) {
+					outputFile = new File(arg);
+					requiredArguments = true;
+				} else {
+					valid = false;
+					System.out.println(
+							"Error: Unsupported extra argument: " + arg);
+				}
+			}
+		}
+
+		if (!valid || !requiredArguments) {
+			printUsage();
+		} else {
+
+			// Default the format from the output file extension
+			if (format == null) {
+				format = DEFAULT_FORMAT;
+				String name = outputFile.getName().toLowerCase();
+				for (FeatureExportFormat extensionFormat : FeatureExportFormat
+						.values()) {
+					if (name.endsWith("." + extensionFormat.getExtension())) {
+						format = extensionFormat;
+						break;
+					}
+				}
+			}
+
+			// Write the features
+			try {
+				writeFeatures(geoPackageFile, featureTable, outputFile, format,
+						projection, boundingBox, boundingBoxProjection, where,
+						threads);
+			} catch (Exception e) {
+				printUsage();
+				throw e;
+			}
+		}
+
+	}
+
+	/**
+	 * Write the feature table features within the GeoPackage file to the
+	 * output file
+	 *
+	 * @param geoPackageFile
+	 *            GeoPackage file
+	 * @param featureTable
+	 *            feature table
+	 * @param outputFile
+	 *            output file
+	 * @param format
+	 *            export format
+	 * @param projection
+	 *            optional output projection
+	 * @param boundingBox
+	 *            optional bounding box
+	 * @param boundingBoxProjection
+	 *            optional bounding box projection, WGS84 by default
+	 * @param where
+	 *            optional where clause
+	 * @param threads
+	 *            optional number of encoding threads
+	 * @return number of written features
+	 */
+	public static long writeFeatures(File geoPackageFile, String featureTable,
+			File outputFile, FeatureExportFormat format, Projection projection,
+			BoundingBox boundingBox, Projection boundingBoxProjection,
+			String where, Integer threads) {
+
+		GeoPackage geoPackage = GeoPackageManager.open(geoPackageFile);
+		try {
+			return writeFeatures(geoPackage, featureTable, outputFile, format,
+					projection, boundingBox, boundingBoxProjection, where,
+					threads);
+		} finally {
+			geoPackage.close();
+		}
+	}
+
+	/**
+	 * Write the feature table features within the GeoPackage to the output
+	 * file
+	 *
+	 * @param geoPackage
+	 *            open GeoPackage
+	 * @param featureTable
+	 *            feature table
+	 * @param outputFile
+	 *            output file
+	 * @param format
+	 *            export format
+	 * @param projection
+	 *            optional output projection
+	 * @param boundingBox
+	 *            optional bounding box
+	 * @param boundingBoxProjection
+	 *            optional bounding box projection, WGS84 by default
+	 * @param where
+	 *            optional where clause
+	 * @param threads
+	 *            optional number of encoding threads
+	 * @return number of written features
+	 */
+	public static long writeFeatures(GeoPackage geoPackage,
+			String featureTable, File outputFile, FeatureExportFormat format,
+			Projection projection, BoundingBox boundingBox,
+			Projection boundingBoxProjection, String where, Integer threads) {
+
+		FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+		FeatureExporter exporter = new FeatureExporter(featureDao, format);
+		if (projection != null) {
+			exporter.setProjection(projection);
+		}
+		if (threads != null) {
+			exporter.setThreads(threads);
+		}
+
+		Progress progress = new Progress("Feature Export", "features",
+				LOG_FEATURE_FREQUENCY, LOG_FEATURE_TIME_FREQUENCY);
+		exporter.setProgress(progress);
+
+		LOGGER.log(Level.INFO,
+				"GeoPackage: " + geoPackage.getName() + ", Feature Table: "
+						+ featureTable + ", Output File: "
+						+ outputFile.getAbsolutePath() + ", Format: "
+						+ format.name().toLowerCase());
+
+		long count;
+		if (boundingBox != null) {
+			if (boundingBoxProjection == null) {
+				boundingBoxProjection = ProjectionFactory.getProjection(
+						ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM);
+			}
+			FeatureIndexManager indexManager = new FeatureIndexManager(
+					geoPackage, featureDao);
+			try {
+				FeatureIndexResults results = indexManager.query(boundingBox,
+						boundingBoxProjection, where, null);
+				try {
+					progress.setMax((int) results.count());
+					count = exporter.export(outputFile, results);
+				} finally {
+					results.close();
+				}
+			} finally {
+				indexManager.close();
+			}
+		} else {
+			progress.setMax(featureDao.count(where, null));
+			count = exporter.export(outputFile, where, null);
+		}
+
+		LOGGER.log(Level.INFO, "Wrote " + count + " features to "
+				+ outputFile.getAbsolutePath());
+
+		return count;
+	}
+
+	/**
+	 * Parse a projection argument value
+	 *
+	 * @param arg
+	 *            argument
+	 * @param value
+	 *            value in the format authority,code
+	 * @return projection, null if invalid
+	 */
+	private static Projection parseProjection(String arg, String value) {
+		Projection projection = null;
+		String[] projParts = value.split(",");
+		if (projParts.length != 2) {
+			System.out.println("Error: Projection argument '" + arg
+					+ "' value must be in the format: authority,code");
+		} else {
+			projection = ProjectionFactory.getProjection(projParts[0],
+					projParts[1]);
+		}
+		return projection;
+	}
+
+	/**
+	 * Print usage for the main method
+	 */
+	private static void printUsage() {
+		System.out.println();
+		System.out.println("USAGE");
+		System.out.println();
+		System.out.println("\t[" + ARGUMENT_PREFIX + ARGUMENT_FORMAT
+				+ " format] [" + ARGUMENT_PREFIX + ARGUMENT_PROJECTION
+				+ " authority,code] [" + ARGUMENT_PREFIX
+				+ ARGUMENT_BOUNDING_BOX + " minLon,minLat,maxLon,maxLat] ["
+				+ ARGUMENT_PREFIX + ARGUMENT_BOUNDING_BOX_PROJECTION
+				+ " authority,code] [" + ARGUMENT_PREFIX + ARGUMENT_WHERE
+				+ " where] [" + ARGUMENT_PREFIX + ARGUMENT_THREADS
+				+ " threads] geopackage_file feature_table output_file");
+		System.out.println();
+		System.out.println("DESCRIPTION");
+		System.out.println();
+		System.out.println(
+				"\tStreams the features of a GeoPackage feature table to a GeoJSON, newline delimited GeoJSON, CSV or Well-Known Binary file");
+		System.out.println();
+		System.out.println("ARGUMENTS");
+		System.out.println();
+		System.out.println(
+				"\t" + ARGUMENT_PREFIX + ARGUMENT_FORMAT + " format");
+		System.out.println("\t\tExport format (default is from the output file extension, otherwise "
+						+ DEFAULT_FORMAT.name().toLowerCase() + ")");
+		System.out.println("\t\t\t"
+				+ FeatureExportFormat.GEOJSON.name().toLowerCase()
+				+ " - GeoJSON feature collection");
+		System.out.println("\t\t\t"
+				+ FeatureExportFormat.NDJSON.name().toLowerCase()
+				+ " - newline delimited GeoJSON features");
+		System.out.println("\t\t\t"
+				+ FeatureExportFormat.CSV.name().toLowerCase()
+				+ " - comma separated values with Well-Known Text geometries");
+		System.out.println("\t\t\t"
+				+ FeatureExportFormat.WKB.name().toLowerCase()
+				+ " - feature id, length and Well-Known Binary geometry records");
+		System.out.println();
+		System.out.println("\t" + ARGUMENT_PREFIX + ARGUMENT_PROJECTION
+				+ " authority,code");
+		System.out.println(
+				"\t\tOutput projection (default is EPSG,4326 for GeoJSON, otherwise the feature table projection)");
+		System.out.println();
+		System.out.println("\t" + ARGUMENT_PREFIX + ARGUMENT_BOUNDING_BOX
+				+ " minLon,minLat,maxLon,maxLat");
+		System.out.println(
+				"\t\tOnly write features with geometries intersecting the bounding box, queried through the feature index");
+		System.out.println();
+		System.out.println("\t" + ARGUMENT_PREFIX
+				+ ARGUMENT_BOUNDING_BOX_PROJECTION + " authority,code");
+		System.out.println(
+				"\t\tProjection of the bounding box (default is EPSG,4326)");
+		System.out.println();
+		System.out
+				.println("\t" + ARGUMENT_PREFIX + ARGUMENT_WHERE + " where");
+		System.out.println("\t\tSQL where clause to filter features");
+		System.out.println();
+		System.out.println(
+				"\t" + ARGUMENT_PREFIX + ARGUMENT_THREADS + " threads");
+		System.out.println(
+				"\t\tNumber of feature encoding threads (default is the number of processors)");
+		System.out.println();
+		System.out.println("\tgeopackage_file");
+		System.out.println(
+				"\t\tpath to the GeoPackage file containing the features");
+		System.out.println();
+		System.out.println("\tfeature_table");
+		System.out.println("\t\tfeature table name within the GeoPackage file");
+		System.out.println();
+		System.out.println("\toutput_file");
+		System.out.println("\t\toutput file to write the features to");
+		System.out.println();
+	}
+
+}
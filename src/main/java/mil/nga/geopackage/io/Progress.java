@@ -69,6 +69,16 @@ public class Progress implements GeoPackageProgress {
 	 */
 	protected Date localTime = new Date();
 
+	/**
+	 * Start time, used for the progress rate
+	 */
+	protected Date startTime = new Date();
+
+	/**
+	 * Log the progress rate flag
+	 */
+	protected boolean logRate = false;
+
 	/**
 	 * Constructor
 	 * 
@@ -136,7 +146,9 @@ public class Progress implements GeoPackageProgress {
 				title + " - " + this.progress
 						+ (max != null ? " of " + max + unit + " ("
 								+ getPercentage(this.progress, max) + ")"
-								: unit));
+								: unit)
+						+ (logRate ? " - " + decimalFormat.format(getRate())
+								+ unit + " per second" : ""));
 	}
 
 	/**
@@ -222,6 +234,47 @@ public class Progress implements GeoPackageProgress {
 		return progress;
 	}
 
+	/**
+	 * Is the progress rate logged
+	 * 
+	 * @return true if the rate is logged
+	 * @since 3.5.1
+	 */
+	public boolean isLogRate() {
+		return logRate;
+	}
+
+	/**
+	 * Set if the progress rate is logged
+	 * 
+	 * @param logRate
+	 *            true to log the rate
+	 * @since 3.5.1
+	 */
+	public void setLogRate(boolean logRate) {
+		this.logRate = logRate;
+	}
+
+	/**
+	 * Reset the start time used for the progress rate
+	 * 
+	 * @since 3.5.1
+	 */
+	public void resetStartTime() {
+		startTime = new Date();
+	}
+
+	/**
+	 * Get the progress rate per second since the start time
+	 * 
+	 * @return progress per second
+	 * @since 3.5.1
+	 */
+	public double getRate() {
+		long millis = Math.max(1, new Date().getTime() - startTime.getTime());
+		return progress * 1000.0 / millis;
+	}
+
 	/**
 	 * Get the string percentage of the count and total
 	 * 
@@ -21,6 +21,10 @@ import java.util.regex.Pattern;
 import mil.nga.geopackage.GeoPackage;
 import mil.nga.geopackage.core.contents.ContentsDataType;
 import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.QueryIndexRecommendation;
+import mil.nga.geopackage.db.QueryPlan;
+import mil.nga.geopackage.db.QueryPlanAdvisor;
+import mil.nga.geopackage.db.QueryPlanStep;
 import mil.nga.geopackage.db.SQLUtils;
 import mil.nga.geopackage.db.master.SQLiteMaster;
 import mil.nga.geopackage.db.master.SQLiteMasterColumn;
@@ -29,6 +33,7 @@ import mil.nga.geopackage.db.master.SQLiteMasterType;
 import mil.nga.geopackage.db.table.TableColumn;
 import mil.nga.geopackage.db.table.TableInfo;
 import mil.nga.geopackage.extension.RTreeIndexExtension;
+import mil.nga.geopackage.extension.RTreeIndexTableDao;
 import mil.nga.geopackage.manager.GeoPackageManager;
 import mil.nga.geopackage.validate.GeoPackageValidate;
 
@@ -148,6 +153,20 @@ public class SQLExec {
 	 */
 	public static final String COMMAND_EXTENSIONS = "extensions";
 
+	/**
+	 * Query plan and index recommendations command
+	 * 
+	 * @since 3.5.1
+	 */
+	public static final String COMMAND_PLAN = "plan";
+
+	/**
+	 * Query plan and create recommended indexes command
+	 * 
+	 * @since 3.5.1
+	 */
+	public static final String COMMAND_PLAN_INDEX = "planindex";
+
 	/**
 	 * Blob display value
 	 */
@@ -455,6 +474,21 @@ public class SQLExec {
 								resetCommandPrompt(sqlBuilder);
 							}
 
+						} else if (sqlLine.toLowerCase()
+								.startsWith(COMMAND_PLAN_INDEX + " ")
+								|| sqlLine.toLowerCase()
+										.startsWith(COMMAND_PLAN + " ")) {
+
+							boolean createIndexes = sqlLine.toLowerCase()
+									.startsWith(COMMAND_PLAN_INDEX);
+							String planArgs = sqlLine.substring(
+									createIndexes ? COMMAND_PLAN_INDEX.length()
+											: COMMAND_PLAN.length())
+									.trim();
+							explainQueryPlan(database, planArgs,
+									createIndexes);
+							resetCommandPrompt(sqlBuilder);
+
 						} else if (sqlLine
 								.equalsIgnoreCase(COMMAND_SQLITE_MASTER)
 								|| SQLiteMaster.count(database.getDatabase(),
@@ -641,6 +675,77 @@ public class SQLExec {
 
 	}
 
+	/**
+	 * Explain the query plan of a table query, including the RTree index joined
+	 * query of indexed feature tables, and print the scans, temp B-trees and
+	 * index recommendations
+	 * 
+	 * @param database
+	 *            open database
+	 * @param planArgs
+	 *            table name and optional where clause
+	 * @param createIndexes
+	 *            true to create the recommended indexes
+	 */
+	private static void explainQueryPlan(GeoPackage database, String planArgs,
+			boolean createIndexes) {
+
+		String tableName = planArgs;
+		String where = null;
+		String[] parts = planArgs.split("\\s+", 2);
+		if (parts.length > 1) {
+			tableName = parts[0];
+			where = parts[1].trim();
+			if (where.toLowerCase().startsWith("where ")) {
+				where = where.substring("where ".length()).trim();
+			}
+			if (where.isEmpty()) {
+				where = null;
+			}
+		}
+
+		List<QueryPlan> plans = new ArrayList<>();
+		plans.add(QueryPlanAdvisor.explainQuery(
+				database.getConnection().getConnection(), tableName, where,
+				null));
+
+		if (isGeoPackage(database) && database.isFeatureTable(tableName)) {
+			RTreeIndexExtension rTree = new RTreeIndexExtension(database);
+			RTreeIndexTableDao rTreeDao = rTree.getTableDao(tableName);
+			if (rTreeDao.has()) {
+				plans.add(rTreeDao.explainQueryFeatures(where, null));
+			}
+		}
+
+		Set<String> created = new LinkedHashSet<>();
+		for (QueryPlan plan : plans) {
+			System.out.println();
+			System.out.println(plan.getSQL());
+			System.out.println(plan);
+			for (QueryPlanStep scan : plan.getScans()) {
+				System.out.println("Full Scan: " + scan.getTable());
+			}
+			for (QueryPlanStep tempBTree : plan.getTempBTrees()) {
+				System.out.println("Temp B-Tree: " + tempBTree.getDetail());
+			}
+			for (QueryIndexRecommendation recommendation : plan
+					.getRecommendations()) {
+				System.out.println("Recommended: " + recommendation);
+				if (createIndexes
+						&& created.add(recommendation.getIndexName())) {
+					SQLUtils.execSQL(database.getConnection().getConnection(),
+							recommendation.getSQL());
+					System.out.println(
+							"Created Index: " + recommendation.getIndexName());
+				}
+			}
+			if (!plan.hasRecommendations()) {
+				System.out.println("No index recommendations");
+			}
+		}
+
+	}
+
 	/**
 	 * Build a SQLite Master table query
 	 * 
@@ -749,6 +854,11 @@ public class SQLExec {
 		System.out.println("\t" + COMMAND_TABLE_INFO
 				+ " <name>       - PRAGMA table_info(<name>);");
 		System.out.println("\t<name>            - SELECT * FROM <name>;");
+		System.out.println("\t" + COMMAND_PLAN
+				+ " <name> [where] - EXPLAIN QUERY PLAN of the table query with index recommendations");
+		System.out.println("\t" + COMMAND_PLAN_INDEX
+				+ " <name> [where] - " + COMMAND_PLAN
+				+ " and create the recommended indexes");
 		if (isGeoPackage) {
 			System.out.println("\t" + COMMAND_CONTENTS
 					+ " [name]   - List GeoPackage contents (all or LIKE table name)");
@@ -67,12 +67,22 @@ public class JavaPropertyConstants {
 	public static final String FEATURE_TILES_POLYGON_FILL = FEATURE_TILES
 			+ PROPERTY_DIVIDER + "polygon_fill";
 
+	public static final String FEATURE_TILES_CLUSTER = FEATURE_TILES
+			+ PROPERTY_DIVIDER + "cluster";
+
+	public static final String FEATURE_TILES_CLUSTER_TEXT = FEATURE_TILES_CLUSTER
+			+ PROPERTY_DIVIDER + "text";
+
 	public static final String FEATURE_TILES_RADIUS = "radius";
 
 	public static final String FEATURE_TILES_COLOR = "color";
 
 	public static final String FEATURE_TILES_STROKE_WIDTH = "stroke_width";
 
+	public static final String FEATURE_TILES_TEXT_SIZE = "size";
+
+	public static final String FEATURE_TILES_TEXT_FONT = "font";
+
 	public static final String NUMBER_FEATURES_TILE = GEO_PACKAGE
 			+ PROPERTY_DIVIDER + "number_features_tile";
 
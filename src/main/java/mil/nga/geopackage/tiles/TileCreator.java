@@ -10,6 +10,7 @@ import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackageException;
 import mil.nga.geopackage.extension.scale.TileScaling;
 import mil.nga.geopackage.extension.scale.TileScalingType;
+import mil.nga.geopackage.geom.ProjectionTransforms;
 import mil.nga.geopackage.tiles.matrix.TileMatrix;
 import mil.nga.geopackage.tiles.matrixset.TileMatrixSet;
 import mil.nga.geopackage.tiles.user.TileDao;
@@ -18,7 +19,6 @@ import mil.nga.geopackage.tiles.user.TileRow;
 import mil.nga.sf.proj.Projection;
 import mil.nga.sf.proj.ProjectionTransform;
 
-import org.locationtech.proj4j.ProjCoordinate;
 
 /**
  * Tile Creator, creates a tile from a tile matrix to the desired projection
@@ -272,8 +272,8 @@ public class TileCreator {
 		boolean hasTile = false;
 
 		// Transform to the projection of the tiles
-		ProjectionTransform transformRequestToTiles = requestProjection
-				.getTransformation(tilesProjection);
+		ProjectionTransform transformRequestToTiles = ProjectionTransforms
+				.get(requestProjection, tilesProjection);
 		BoundingBox tilesBoundingBox = requestBoundingBox
 				.transform(transformRequestToTiles);
 
@@ -310,8 +310,8 @@ public class TileCreator {
 		GeoPackageTile tile = null;
 
 		// Transform to the projection of the tiles
-		ProjectionTransform transformRequestToTiles = requestProjection
-				.getTransformation(tilesProjection);
+		ProjectionTransform transformRequestToTiles = ProjectionTransforms
+				.get(requestProjection, tilesProjection);
 		BoundingBox tilesBoundingBox = requestBoundingBox
 				.transform(transformRequestToTiles);
 
@@ -534,20 +534,27 @@ public class TileCreator {
 		int[] projectedPixels = new int[requestedTileWidth
 				* requestedTileHeight];
 
+		// Packed coordinates of a row of requested pixels
+		double[] coordinates = new double[requestedTileWidth * 2];
+
 		// Retrieve each pixel in the new tile from the unprojected tile
 		for (int y = 0; y < requestedTileHeight; y++) {
-			for (int x = 0; x < requestedTileWidth; x++) {
 
-				double longitude = requestBoundingBox.getMinLongitude()
+			// Project the row of pixel coordinates in a single batch
+			double latitude = requestBoundingBox.getMaxLatitude()
+					- (y * requestedHeightUnitsPerPixel);
+			for (int x = 0; x < requestedTileWidth; x++) {
+				coordinates[x * 2] = requestBoundingBox.getMinLongitude()
 						+ (x * requestedWidthUnitsPerPixel);
-				double latitude = requestBoundingBox.getMaxLatitude()
-						- (y * requestedHeightUnitsPerPixel);
-				ProjCoordinate fromCoord = new ProjCoordinate(longitude,
-						latitude);
-				ProjCoordinate toCoord = transformRequestToTiles
-						.transform(fromCoord);
-				double projectedLongitude = toCoord.x;
-				double projectedLatitude = toCoord.y;
+				coordinates[x * 2 + 1] = latitude;
+			}
+			ProjectionTransforms.transform(transformRequestToTiles,
+					coordinates);
+
+			for (int x = 0; x < requestedTileWidth; x++) {
+
+				double projectedLongitude = coordinates[x * 2];
+				double projectedLatitude = coordinates[x * 2 + 1];
 
 				int xPixel = (int) Math
 						.round(((projectedLongitude - tilesBoundingBox
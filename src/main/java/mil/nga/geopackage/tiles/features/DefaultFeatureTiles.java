@@ -5,6 +5,9 @@ import java.awt.geom.Area;
 import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -26,6 +29,9 @@ import mil.nga.geopackage.features.user.FeatureDao;
 import mil.nga.geopackage.features.user.FeatureResultSet;
 import mil.nga.geopackage.features.user.FeatureRow;
 import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeoPackageGeometryHeader;
+import mil.nga.geopackage.geom.PackedGeometry;
+import mil.nga.geopackage.geom.ProjectionTransforms;
 import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
 import mil.nga.sf.CircularString;
 import mil.nga.sf.CompoundCurve;
@@ -272,14 +278,29 @@ public class DefaultFeatureTiles extends FeatureTiles {
 		ProjectionTransform webMercatorTransform = getWebMercatorTransform();
 		BoundingBox expandedBoundingBox = expandBoundingBox(boundingBox);
 
+		if (coordinateStore != null) {
+			coordinateStore.synchronize();
+		}
+
 		boolean drawn = false;
-		while (results.hasNext()) {
-			GeometryIndex geometryIndex = results.next();
-			FeatureRow featureRow = getFeatureIndex()
-					.getFeatureRow(geometryIndex);
-			if (drawFeature(zoom, boundingBox, expandedBoundingBox,
-					webMercatorTransform, graphics, featureRow)) {
-				drawn = true;
+		Integer zoomBand = getGeneralizedZoomBand(zoom);
+		if (zoomBand != null) {
+			List<GeometryIndex> geometryIndices = new ArrayList<>();
+			while (results.hasNext()) {
+				geometryIndices.add(results.next());
+			}
+			drawn = drawGeneralizedIndices(zoom, zoomBand, boundingBox,
+					expandedBoundingBox, webMercatorTransform, graphics,
+					geometryIndices);
+		} else {
+			while (results.hasNext()) {
+				GeometryIndex geometryIndex = results.next();
+				FeatureRow featureRow = getFeatureIndex()
+						.getFeatureRow(geometryIndex);
+				if (drawFeature(zoom, boundingBox, expandedBoundingBox,
+						webMercatorTransform, graphics, featureRow)) {
+					drawn = true;
+				}
 			}
 		}
 		try {
@@ -312,12 +333,26 @@ public class DefaultFeatureTiles extends FeatureTiles {
 		ProjectionTransform webMercatorTransform = getWebMercatorTransform();
 		BoundingBox expandedBoundingBox = expandBoundingBox(boundingBox);
 
+		if (coordinateStore != null) {
+			coordinateStore.synchronize();
+		}
+
 		boolean drawn = false;
-		while (resultSet.moveToNext()) {
-			FeatureRow row = resultSet.getRow();
-			if (drawFeature(zoom, boundingBox, expandedBoundingBox,
-					webMercatorTransform, graphics, row)) {
-				drawn = true;
+		Integer zoomBand = getGeneralizedZoomBand(zoom);
+		if (zoomBand != null) {
+			List<FeatureRow> rows = new ArrayList<>();
+			while (resultSet.moveToNext()) {
+				rows.add(resultSet.getRow());
+			}
+			drawn = drawGeneralizedRows(zoom, zoomBand, boundingBox,
+					expandedBoundingBox, webMercatorTransform, graphics, rows);
+		} else {
+			while (resultSet.moveToNext()) {
+				FeatureRow row = resultSet.getRow();
+				if (drawFeature(zoom, boundingBox, expandedBoundingBox,
+						webMercatorTransform, graphics, row)) {
+					drawn = true;
+				}
 			}
 		}
 		resultSet.close();
@@ -346,11 +381,22 @@ public class DefaultFeatureTiles extends FeatureTiles {
 		ProjectionTransform webMercatorTransform = getWebMercatorTransform();
 		BoundingBox expandedBoundingBox = expandBoundingBox(boundingBox);
 
+		if (coordinateStore != null) {
+			coordinateStore.synchronize();
+		}
+
 		boolean drawn = false;
-		for (FeatureRow row : featureRow) {
-			if (drawFeature(zoom, boundingBox, expandedBoundingBox,
-					webMercatorTransform, graphics, row)) {
-				drawn = true;
+		Integer zoomBand = getGeneralizedZoomBand(zoom);
+		if (zoomBand != null) {
+			drawn = drawGeneralizedRows(zoom, zoomBand, boundingBox,
+					expandedBoundingBox, webMercatorTransform, graphics,
+					featureRow);
+		} else {
+			for (FeatureRow row : featureRow) {
+				if (drawFeature(zoom, boundingBox, expandedBoundingBox,
+						webMercatorTransform, graphics, row)) {
+					drawn = true;
+				}
 			}
 		}
 
@@ -390,6 +436,11 @@ public class DefaultFeatureTiles extends FeatureTiles {
 
 		try {
 
+			if (coordinateStore != null) {
+				return drawPackedFeature(zoom, boundingBox,
+						expandedBoundingBox, transform, graphics, row);
+			}
+
 			GeoPackageGeometryData geomData = null;
 			BoundingBox transformedBoundingBox = null;
 			long rowId = -1;
@@ -453,6 +504,354 @@ public class DefaultFeatureTiles extends FeatureTiles {
 		return drawn;
 	}
 
+	/**
+	 * Draw the indexed features of a tile within a generalized zoom band. The
+	 * generalized geometries of the tile are read in a single batch along with
+	 * the feature rows without their full resolution geometries. Features
+	 * without a generalized geometry are drawn full resolution.
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param zoomBand
+	 *            generalized zoom band
+	 * @param boundingBox
+	 *            bounding box
+	 * @param expandedBoundingBox
+	 *            expanded bounding box
+	 * @param transform
+	 *            projection transform
+	 * @param graphics
+	 *            graphics to draw on
+	 * @param geometryIndices
+	 *            geometry indices
+	 * @return true if at least one feature was drawn
+	 */
+	private boolean drawGeneralizedIndices(int zoom, int zoomBand,
+			BoundingBox boundingBox, BoundingBox expandedBoundingBox,
+			ProjectionTransform transform, FeatureTileGraphics graphics,
+			List<GeometryIndex> geometryIndices) {
+
+		boolean drawn = false;
+
+		List<Long> ids = new ArrayList<>();
+		for (GeometryIndex geometryIndex : geometryIndices) {
+			ids.add(geometryIndex.getGeomId());
+		}
+		Map<Long, byte[]> generalized = getGeneralizedGeometries(ids,
+				zoomBand);
+		Map<Long, FeatureRow> generalizedRows = queryRowsWithoutGeometry(
+				generalized.keySet());
+
+		for (GeometryIndex geometryIndex : geometryIndices) {
+			long id = geometryIndex.getGeomId();
+			byte[] bytes = generalized.get(id);
+			if (bytes != null) {
+				FeatureRow row = generalizedRows.get(id);
+				if (row != null) {
+					BoundingBox envelope = new BoundingBox(
+							geometryIndex.getMinX(), geometryIndex.getMinY(),
+							geometryIndex.getMaxX(), geometryIndex.getMaxY());
+					drawn = drawGeneralizedFeature(zoom, boundingBox,
+							expandedBoundingBox, transform, graphics, row,
+							bytes, envelope) || drawn;
+				}
+			} else {
+				FeatureRow row = getFeatureIndex().getFeatureRow(geometryIndex);
+				drawn = drawFeature(zoom, boundingBox, expandedBoundingBox,
+						transform, graphics, row) || drawn;
+			}
+		}
+
+		return drawn;
+	}
+
+	/**
+	 * Draw the feature rows of a tile within a generalized zoom band, reading
+	 * the generalized geometries of the tile in a single batch
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param zoomBand
+	 *            generalized zoom band
+	 * @param boundingBox
+	 *            bounding box
+	 * @param expandedBoundingBox
+	 *            expanded bounding box
+	 * @param transform
+	 *            projection transform
+	 * @param graphics
+	 *            graphics to draw on
+	 * @param rows
+	 *            feature rows
+	 * @return true if at least one feature was drawn
+	 */
+	private boolean drawGeneralizedRows(int zoom, int zoomBand,
+			BoundingBox boundingBox, BoundingBox expandedBoundingBox,
+			ProjectionTransform transform, FeatureTileGraphics graphics,
+			List<FeatureRow> rows) {
+
+		boolean drawn = false;
+
+		List<Long> ids = new ArrayList<>();
+		for (FeatureRow row : rows) {
+			ids.add(row.getId());
+		}
+		Map<Long, byte[]> generalized = getGeneralizedGeometries(ids,
+				zoomBand);
+
+		for (FeatureRow row : rows) {
+			byte[] bytes = generalized.get(row.getId());
+			if (bytes != null) {
+				drawn = drawGeneralizedFeature(zoom, boundingBox,
+						expandedBoundingBox, transform, graphics, row, bytes,
+						null) || drawn;
+			} else {
+				drawn = drawFeature(zoom, boundingBox, expandedBoundingBox,
+						transform, graphics, row) || drawn;
+			}
+		}
+
+		return drawn;
+	}
+
+	/**
+	 * Draw the generalized geometry of a feature, filtering by the header
+	 * envelope before decoding the geometry
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param boundingBox
+	 *            bounding box
+	 * @param expandedBoundingBox
+	 *            expanded bounding box
+	 * @param transform
+	 *            projection transform
+	 * @param graphics
+	 *            graphics to draw on
+	 * @param row
+	 *            feature row
+	 * @param bytes
+	 *            generalized geometry bytes
+	 * @param indexEnvelope
+	 *            indexed feature envelope used when the header has no
+	 *            envelope, null if not indexed
+	 * @return true if drawn
+	 */
+	private boolean drawGeneralizedFeature(int zoom, BoundingBox boundingBox,
+			BoundingBox expandedBoundingBox, ProjectionTransform transform,
+			FeatureTileGraphics graphics, FeatureRow row, byte[] bytes,
+			BoundingBox indexEnvelope) {
+
+		boolean drawn = false;
+
+		try {
+
+			BoundingBox envelope = indexEnvelope;
+			GeometryEnvelope headerEnvelope = GeoPackageGeometryHeader
+					.readEnvelope(bytes);
+			if (headerEnvelope != null) {
+				envelope = new BoundingBox(headerEnvelope);
+			}
+
+			if (envelope == null || expandedBoundingBox
+					.intersects(envelope.transform(transform), true)) {
+
+				Geometry geometry = new GeoPackageGeometryData(bytes)
+						.getGeometry();
+				if (geometry != null) {
+					double simplifyTolerance = TileBoundingBoxUtils
+							.toleranceDistance(zoom, tileWidth, tileHeight);
+					drawn = drawGeometry(simplifyTolerance, boundingBox,
+							transform, graphics, row, geometry);
+				}
+			}
+		} catch (Exception e) {
+			log.log(Level.SEVERE,
+					"Failed to draw generalized feature in tile. Table: "
+							+ featureDao.getTableName(),
+					e);
+		}
+
+		return drawn;
+	}
+
+	/**
+	 * Query the feature rows by id without the geometry column, in batches of
+	 * ids
+	 *
+	 * @param ids
+	 *            feature ids
+	 * @return feature rows by id
+	 */
+	private Map<Long, FeatureRow> queryRowsWithoutGeometry(
+			Collection<Long> ids) {
+
+		Map<Long, FeatureRow> rows;
+
+		if (!ids.isEmpty()) {
+			String geometryColumn = featureDao.getGeometryColumnName();
+			List<String> columns = new ArrayList<>();
+			for (String column : featureDao.getColumnNames()) {
+				if (!column.equals(geometryColumn)) {
+					columns.add(column);
+				}
+			}
+			rows = queryRows(ids, columns.toArray(new String[0]));
+		} else {
+			rows = new HashMap<>();
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Draw the feature from the packed coordinates of the coordinate store
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param boundingBox
+	 *            bounding box
+	 * @param expandedBoundingBox
+	 *            expanded bounding box
+	 * @param transform
+	 *            projection transform
+	 * @param graphics
+	 *            graphics to draw on
+	 * @param row
+	 *            feature row
+	 * @return true if drawn
+	 */
+	private boolean drawPackedFeature(int zoom, BoundingBox boundingBox,
+			BoundingBox expandedBoundingBox, ProjectionTransform transform,
+			FeatureTileGraphics graphics, FeatureRow row) {
+
+		boolean drawn = false;
+
+		PackedGeometry geometry = coordinateStore.get(row.getId());
+		if (geometry != null && !geometry.isEmpty()) {
+
+			BoundingBox transformedBoundingBox = new BoundingBox(
+					geometry.getMinX(), geometry.getMinY(), geometry.getMaxX(),
+					geometry.getMaxY()).transform(transform);
+
+			if (expandedBoundingBox.intersects(transformedBoundingBox, true)) {
+				double simplifyTolerance = TileBoundingBoxUtils
+						.toleranceDistance(zoom, tileWidth, tileHeight);
+				drawn = drawGeometry(simplifyTolerance, boundingBox, transform,
+						graphics, row, geometry);
+			}
+		}
+
+		return drawn;
+	}
+
+	/**
+	 * Draw the packed geometry, projecting each part in a single batch
+	 *
+	 * @param simplifyTolerance
+	 *            simplify tolerance in meters
+	 * @param boundingBox
+	 *            bounding box
+	 * @param transform
+	 *            projection transform
+	 * @param graphics
+	 *            feature tile graphics
+	 * @param featureRow
+	 *            feature row
+	 * @param geometry
+	 *            packed geometry
+	 * @return true if drawn
+	 */
+	private boolean drawGeometry(double simplifyTolerance,
+			BoundingBox boundingBox, ProjectionTransform transform,
+			FeatureTileGraphics graphics, FeatureRow featureRow,
+			PackedGeometry geometry) {
+
+		boolean drawn = false;
+
+		// Collections are styled by the type of each part
+		boolean collection = geometry
+				.getGeometryType() == GeometryType.GEOMETRYCOLLECTION;
+		FeatureStyle featureStyle = collection ? null
+				: getFeatureStyle(featureRow, geometry.getGeometryType());
+
+		Area polygonArea = null;
+		for (int part = 0; part < geometry.numParts(); part++) {
+
+			int partType = geometry.getPartType(part);
+			if (partType != PackedGeometry.PART_INTERIOR_RING
+					&& polygonArea != null) {
+				drawn = drawPolygon(graphics, polygonArea, featureStyle)
+						|| drawn;
+				polygonArea = null;
+			}
+
+			if (collection) {
+				featureStyle = getFeatureStyle(featureRow,
+						partGeometryType(partType));
+			}
+
+			double[] coordinates = geometry.getCoordinates(part);
+			if (coordinates.length == 0) {
+				continue;
+			}
+			ProjectionTransforms.transform(transform, coordinates);
+
+			switch (partType) {
+			case PackedGeometry.PART_POINT:
+				drawn = drawPoint(boundingBox, graphics, coordinates[0],
+						coordinates[1], featureStyle) || drawn;
+				break;
+			case PackedGeometry.PART_LINE:
+				drawn = drawLine(graphics,
+						getPath(simplifyTolerance, boundingBox, coordinates),
+						featureStyle) || drawn;
+				break;
+			case PackedGeometry.PART_EXTERIOR_RING:
+				polygonArea = new Area(
+						getPath(simplifyTolerance, boundingBox, coordinates));
+				break;
+			case PackedGeometry.PART_INTERIOR_RING:
+				if (polygonArea != null) {
+					polygonArea.subtract(new Area(getPath(simplifyTolerance,
+							boundingBox, coordinates)));
+				}
+				break;
+			default:
+				throw new GeoPackageException(
+						"Unsupported packed part type: " + partType);
+			}
+		}
+
+		if (polygonArea != null) {
+			drawn = drawPolygon(graphics, polygonArea, featureStyle) || drawn;
+		}
+
+		return drawn;
+	}
+
+	/**
+	 * Get the geometry type drawn for a packed geometry part type
+	 *
+	 * @param partType
+	 *            packed part type
+	 * @return geometry type
+	 */
+	private static GeometryType partGeometryType(int partType) {
+		GeometryType geometryType;
+		switch (partType) {
+		case PackedGeometry.PART_POINT:
+			geometryType = GeometryType.POINT;
+			break;
+		case PackedGeometry.PART_LINE:
+			geometryType = GeometryType.LINESTRING;
+			break;
+		default:
+			geometryType = GeometryType.POLYGON;
+		}
+		return geometryType;
+	}
+
 	/**
 	 * Draw the geometry
 	 *
@@ -635,14 +1034,17 @@ public class DefaultFeatureTiles extends FeatureTiles {
 		List<Point> lineStringPoints = simplifyPoints(simplifyTolerance,
 				lineString.getPoints());
 
-		for (Point point : lineStringPoints) {
+		// Project the packed coordinates in a single batch
+		double[] coordinates = ProjectionTransforms
+				.toCoordinates(lineStringPoints);
+		ProjectionTransforms.transform(transform, coordinates);
 
-			Point projectedPoint = transform.transform(point);
+		for (int i = 0; i < coordinates.length; i += 2) {
 
 			float x = TileBoundingBoxUtils.getXPixel(tileWidth, boundingBox,
-					projectedPoint.getX());
+					coordinates[i]);
 			float y = TileBoundingBoxUtils.getYPixel(tileHeight, boundingBox,
-					projectedPoint.getY());
+					coordinates[i + 1]);
 
 			if (path == null) {
 				path = new Path2D.Double();
@@ -656,6 +1058,39 @@ public class DefaultFeatureTiles extends FeatureTiles {
 		return path;
 	}
 
+	/**
+	 * Get the path of the packed web mercator coordinates
+	 *
+	 * @param simplifyTolerance
+	 *            simplify tolerance in meters
+	 * @param boundingBox
+	 *            bounding box
+	 * @param coordinates
+	 *            packed web mercator x, y coordinates
+	 * @return path
+	 */
+	private Path2D getPath(double simplifyTolerance, BoundingBox boundingBox,
+			double[] coordinates) {
+
+		double[] simplified = simplifyCoordinates(simplifyTolerance,
+				coordinates);
+
+		Path2D path = new Path2D.Double();
+		for (int i = 0; i < simplified.length; i += 2) {
+			float x = TileBoundingBoxUtils.getXPixel(tileWidth, boundingBox,
+					simplified[i]);
+			float y = TileBoundingBoxUtils.getYPixel(tileHeight, boundingBox,
+					simplified[i + 1]);
+			if (i == 0) {
+				path.moveTo(x, y);
+			} else {
+				path.lineTo(x, y);
+			}
+		}
+
+		return path;
+	}
+
 	/**
 	 * Draw the line
 	 * 
@@ -772,14 +1207,37 @@ public class DefaultFeatureTiles extends FeatureTiles {
 			ProjectionTransform transform, FeatureTileGraphics graphics,
 			Point point, FeatureStyle featureStyle) {
 
-		boolean drawn = false;
-
 		Point projectedPoint = transform.transform(point);
 
+		return drawPoint(boundingBox, graphics, projectedPoint.getX(),
+				projectedPoint.getY(), featureStyle);
+	}
+
+	/**
+	 * Draw the projected point
+	 *
+	 * @param boundingBox
+	 *            bounding box
+	 * @param graphics
+	 *            feature tile graphics
+	 * @param projectedX
+	 *            web mercator x
+	 * @param projectedY
+	 *            web mercator y
+	 * @param featureStyle
+	 *            feature style
+	 * @return true if drawn
+	 */
+	private boolean drawPoint(BoundingBox boundingBox,
+			FeatureTileGraphics graphics, double projectedX, double projectedY,
+			FeatureStyle featureStyle) {
+
+		boolean drawn = false;
+
 		float x = TileBoundingBoxUtils.getXPixel(tileWidth, boundingBox,
-				projectedPoint.getX());
+				projectedX);
 		float y = TileBoundingBoxUtils.getYPixel(tileHeight, boundingBox,
-				projectedPoint.getY());
+				projectedY);
 
 		if (featureStyle != null && featureStyle.useIcon()) {
 
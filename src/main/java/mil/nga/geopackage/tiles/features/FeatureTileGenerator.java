@@ -2,6 +2,7 @@ package mil.nga.geopackage.tiles.features;
 
 import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.extension.index.FeatureTileCountExtension;
 import mil.nga.geopackage.extension.link.FeatureTileTableLinker;
 import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
 import mil.nga.geopackage.tiles.TileGenerator;
@@ -246,6 +247,15 @@ public class FeatureTileGenerator extends TileGenerator {
 	@Override
 	protected byte[] createTile(int z, long x, long y) {
 
+		// Skip tiles with no counted features in the tile neighborhood
+		FeatureTileCountExtension tileCounts = featureTiles.getTileCounts();
+		if (tileCounts != null) {
+			Long count = tileCounts.getNeighborhoodCount(x, y, z);
+			if (count != null && count.longValue() == 0) {
+				return null;
+			}
+		}
+
 		byte[] tileData = featureTiles.drawTileBytes((int) x, (int) y, z);
 
 		return tileData;
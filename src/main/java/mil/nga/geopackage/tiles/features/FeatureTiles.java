@@ -1,13 +1,21 @@
 package mil.nga.geopackage.tiles.features;
 
 import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -19,7 +27,12 @@ import com.j256.ormlite.dao.CloseableIterator;
 import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackage;
 import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.CountEstimate;
+import mil.nga.geopackage.extension.generalized.FeatureGeneralizedExtension;
 import mil.nga.geopackage.extension.index.FeatureTableIndex;
+import mil.nga.geopackage.extension.index.FeatureTileCountExtension;
+import mil.nga.geopackage.extension.index.FeatureTileKeyExtension;
 import mil.nga.geopackage.extension.index.GeometryIndex;
 import mil.nga.geopackage.extension.style.FeatureStyle;
 import mil.nga.geopackage.extension.style.FeatureTableStyles;
@@ -28,14 +41,21 @@ import mil.nga.geopackage.extension.style.IconDao;
 import mil.nga.geopackage.extension.style.IconRow;
 import mil.nga.geopackage.extension.style.StyleDao;
 import mil.nga.geopackage.extension.style.StyleRow;
+import mil.nga.geopackage.features.index.FeaturePointCluster;
+import mil.nga.geopackage.features.index.FeaturePointClusters;
+import mil.nga.geopackage.features.user.FeatureCoordinateStore;
 import mil.nga.geopackage.features.user.FeatureDao;
 import mil.nga.geopackage.features.user.FeatureResultSet;
 import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.ProjectionTransforms;
 import mil.nga.geopackage.property.GeoPackageJavaProperties;
 import mil.nga.geopackage.property.JavaPropertyConstants;
 import mil.nga.geopackage.tiles.ImageUtils;
 import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
+import mil.nga.geopackage.tiles.TileGrid;
 import mil.nga.geopackage.tiles.TileUtils;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryEnvelope;
 import mil.nga.sf.GeometryType;
 import mil.nga.sf.Point;
 import mil.nga.sf.proj.Projection;
@@ -70,6 +90,13 @@ public abstract class FeatureTiles {
 	protected static final Projection WEB_MERCATOR_PROJECTION = ProjectionFactory
 			.getProjection(ProjectionConstants.EPSG_WEB_MERCATOR);
 
+	/**
+	 * Max number of feature ids per batch feature row query
+	 *
+	 * @since 3.5.1
+	 */
+	protected static final int ROW_BATCH_SIZE = 500;
+
 	/**
 	 * Tile data access object
 	 */
@@ -85,6 +112,30 @@ public abstract class FeatureTiles {
 	 */
 	protected FeatureTableIndex featureIndex;
 
+	/**
+	 * When not null, persisted feature tile counts are used to skip empty
+	 * tiles and avoid per tile count queries
+	 */
+	protected FeatureTileCountExtension tileCounts;
+
+	/**
+	 * When not null, tile features are read by feature tile key range scans
+	 * instead of transformed bounding box index queries
+	 */
+	protected FeatureTileKeyExtension tileKeys;
+
+	/**
+	 * When true, an estimate of the indexed feature count decides the max
+	 * features per tile check when every tile is within the max, avoiding
+	 * per tile count queries
+	 */
+	protected boolean estimateCounts = false;
+
+	/**
+	 * Indexed feature count estimate, estimated once when first needed
+	 */
+	private CountEstimate countEstimate;
+
 	/**
 	 * Feature Style extension
 	 */
@@ -150,6 +201,50 @@ public abstract class FeatureTiles {
 	 */
 	protected Paint polygonFillPaint = new Paint();
 
+	/**
+	 * When not null, generalized geometries of the zoom band are drawn in
+	 * place of the full resolution geometries
+	 */
+	protected FeatureGeneralizedExtension generalizedGeometries;
+
+	/**
+	 * When not null, features are drawn from the packed coordinates of the
+	 * store in place of decoding the feature geometries, except at zoom
+	 * levels drawn from generalized geometries
+	 */
+	protected FeatureCoordinateStore coordinateStore;
+
+	/**
+	 * When not null, points are drawn as clusters with counts at the
+	 * clustered zoom levels
+	 */
+	protected FeaturePointClusters pointClusters;
+
+	/**
+	 * Point cluster marker radius for a cluster of two points
+	 */
+	protected float clusterRadius;
+
+	/**
+	 * Point cluster marker paint
+	 */
+	protected Paint clusterPaint = new Paint();
+
+	/**
+	 * Point cluster count text paint
+	 */
+	protected Paint clusterTextPaint = new Paint();
+
+	/**
+	 * Point cluster count text size
+	 */
+	protected int clusterTextSize;
+
+	/**
+	 * Point cluster count text font
+	 */
+	protected String clusterTextFont;
+
 	/**
 	 * Feature paint cache
 	 */
@@ -350,6 +445,22 @@ public abstract class FeatureTiles {
 				JavaPropertyConstants.FEATURE_TILES_POLYGON_FILL,
 				JavaPropertyConstants.FEATURE_TILES_COLOR));
 
+		clusterRadius = GeoPackageJavaProperties.getFloatProperty(
+				JavaPropertyConstants.FEATURE_TILES_CLUSTER,
+				JavaPropertyConstants.FEATURE_TILES_RADIUS);
+		clusterPaint.setColor(GeoPackageJavaProperties.getColorProperty(
+				JavaPropertyConstants.FEATURE_TILES_CLUSTER,
+				JavaPropertyConstants.FEATURE_TILES_COLOR));
+		clusterTextSize = GeoPackageJavaProperties.getIntegerProperty(
+				JavaPropertyConstants.FEATURE_TILES_CLUSTER_TEXT,
+				JavaPropertyConstants.FEATURE_TILES_TEXT_SIZE);
+		clusterTextFont = GeoPackageJavaProperties.getProperty(
+				JavaPropertyConstants.FEATURE_TILES_CLUSTER_TEXT,
+				JavaPropertyConstants.FEATURE_TILES_TEXT_FONT);
+		clusterTextPaint.setColor(GeoPackageJavaProperties.getColorProperty(
+				JavaPropertyConstants.FEATURE_TILES_CLUSTER_TEXT,
+				JavaPropertyConstants.FEATURE_TILES_COLOR));
+
 		if (geoPackage != null) {
 
 			featureIndex = new FeatureTableIndex(geoPackage, featureDao);
@@ -358,6 +469,22 @@ public abstract class FeatureTiles {
 				featureIndex = null;
 			}
 
+			tileCounts = new FeatureTileCountExtension(geoPackage, featureDao);
+			if (!tileCounts.has()) {
+				tileCounts = null;
+			}
+
+			tileKeys = new FeatureTileKeyExtension(geoPackage, featureDao);
+			if (!tileKeys.has()) {
+				tileKeys = null;
+			}
+
+			generalizedGeometries = new FeatureGeneralizedExtension(
+					geoPackage, featureDao);
+			if (!generalizedGeometries.has()) {
+				generalizedGeometries = null;
+			}
+
 			featureTableStyles = new FeatureTableStyles(geoPackage,
 					featureDao.getTable());
 			if (!featureTableStyles.has()) {
@@ -552,6 +679,73 @@ public abstract class FeatureTiles {
 		this.featureIndex = featureIndex;
 	}
 
+	/**
+	 * Get the feature tile counts
+	 *
+	 * @return feature tile counts or null
+	 * @since 3.5.1
+	 */
+	public FeatureTileCountExtension getTileCounts() {
+		return tileCounts;
+	}
+
+	/**
+	 * Set the feature tile counts
+	 *
+	 * @param tileCounts
+	 *            feature tile counts, null to always query counts
+	 * @since 3.5.1
+	 */
+	public void setTileCounts(FeatureTileCountExtension tileCounts) {
+		this.tileCounts = tileCounts;
+	}
+
+	/**
+	 * Get the feature tile keys
+	 *
+	 * @return feature tile keys or null
+	 * @since 3.5.1
+	 */
+	public FeatureTileKeyExtension getTileKeys() {
+		return tileKeys;
+	}
+
+	/**
+	 * Set the feature tile keys
+	 *
+	 * @param tileKeys
+	 *            feature tile keys, null to query by bounding box
+	 * @since 3.5.1
+	 */
+	public void setTileKeys(FeatureTileKeyExtension tileKeys) {
+		this.tileKeys = tileKeys;
+	}
+
+	/**
+	 * Are count estimates used for the max features per tile check
+	 *
+	 * @return true if estimating counts
+	 * @since 3.5.1
+	 */
+	public boolean isEstimateCounts() {
+		return estimateCounts;
+	}
+
+	/**
+	 * Set whether count estimates are used for the max features per tile
+	 * check. When the estimated indexed feature count, within its error
+	 * bound, is at most the max features per tile, tiles are drawn without
+	 * counting their features. Setting the flag discards a previous estimate.
+	 *
+	 * @param estimateCounts
+	 *            true to estimate counts
+	 * @since 3.5.1
+	 */
+	public void setEstimateCounts(boolean estimateCounts) {
+		this.estimateCounts = estimateCounts;
+		countEstimate = null;
+	}
+
 	/**
 	 * Get the feature table styles
 	 *
@@ -863,6 +1057,159 @@ public abstract class FeatureTiles {
 		polygonFillPaint.setColor(polygonFillColor);
 	}
 
+	/**
+	 * Get the generalized geometries
+	 *
+	 * @return generalized geometries or null
+	 * @since 3.5.1
+	 */
+	public FeatureGeneralizedExtension getGeneralizedGeometries() {
+		return generalizedGeometries;
+	}
+
+	/**
+	 * Set the generalized geometries
+	 *
+	 * @param generalizedGeometries
+	 *            generalized geometries, null to always draw full resolution
+	 *            geometries
+	 * @since 3.5.1
+	 */
+	public void setGeneralizedGeometries(
+			FeatureGeneralizedExtension generalizedGeometries) {
+		this.generalizedGeometries = generalizedGeometries;
+	}
+
+	/**
+	 * Get the packed coordinate store
+	 *
+	 * @return coordinate store or null
+	 * @since 3.5.1
+	 */
+	public FeatureCoordinateStore getCoordinateStore() {
+		return coordinateStore;
+	}
+
+	/**
+	 * Set the packed coordinate store of the feature table, table changes
+	 * made through the feature DAO connection are synchronized into the store
+	 * before each tile is drawn
+	 *
+	 * @param coordinateStore
+	 *            coordinate store, null to draw decoded feature geometries
+	 * @since 3.5.1
+	 */
+	public void setCoordinateStore(FeatureCoordinateStore coordinateStore) {
+		this.coordinateStore = coordinateStore;
+	}
+
+	/**
+	 * Get the point clusters
+	 *
+	 * @return point clusters or null
+	 * @since 3.5.1
+	 */
+	public FeaturePointClusters getPointClusters() {
+		return pointClusters;
+	}
+
+	/**
+	 * Set the point clusters, drawn in place of the points at the clustered
+	 * zoom levels
+	 *
+	 * @param pointClusters
+	 *            point clusters, null to draw all points
+	 * @since 3.5.1
+	 */
+	public void setPointClusters(FeaturePointClusters pointClusters) {
+		this.pointClusters = pointClusters;
+	}
+
+	/**
+	 * Get the point cluster marker radius
+	 *
+	 * @return radius
+	 * @since 3.5.1
+	 */
+	public float getClusterRadius() {
+		return clusterRadius;
+	}
+
+	/**
+	 * Set the point cluster marker radius for a cluster of two points, grown
+	 * with the cluster count up to the cluster cell size
+	 *
+	 * @param clusterRadius
+	 *            radius
+	 * @since 3.5.1
+	 */
+	public void setClusterRadius(float clusterRadius) {
+		this.clusterRadius = clusterRadius;
+	}
+
+	/**
+	 * Get the point cluster marker color
+	 *
+	 * @return color
+	 * @since 3.5.1
+	 */
+	public Color getClusterColor() {
+		return clusterPaint.getColor();
+	}
+
+	/**
+	 * Set the point cluster marker color
+	 *
+	 * @param clusterColor
+	 *            color
+	 * @since 3.5.1
+	 */
+	public void setClusterColor(Color clusterColor) {
+		clusterPaint.setColor(clusterColor);
+	}
+
+	/**
+	 * Get the point cluster count text color
+	 *
+	 * @return color
+	 * @since 3.5.1
+	 */
+	public Color getClusterTextColor() {
+		return clusterTextPaint.getColor();
+	}
+
+	/**
+	 * Set the point cluster count text color
+	 *
+	 * @param clusterTextColor
+	 *            color
+	 * @since 3.5.1
+	 */
+	public void setClusterTextColor(Color clusterTextColor) {
+		clusterTextPaint.setColor(clusterTextColor);
+	}
+
+	/**
+	 * Get the point cluster count text size
+	 *
+	 * @return text size
+	 * @since 3.5.1
+	 */
+	public int getClusterTextSize() {
+		return clusterTextSize;
+	}
+
+	/**
+	 * Set the point cluster count text size
+	 *
+	 * @param clusterTextSize
+	 *            text size
+	 * @since 3.5.1
+	 */
+	public void setClusterTextSize(int clusterTextSize) {
+		this.clusterTextSize = clusterTextSize;
+	}
+
 	/**
 	 * Get the max features per tile
 	 *
@@ -974,7 +1321,11 @@ public abstract class FeatureTiles {
 	 */
 	public BufferedImage drawTile(int x, int y, int zoom) {
 		BufferedImage image;
-		if (isIndexQuery()) {
+		if (pointClusters != null && pointClusters.isClustered(zoom)) {
+			image = drawTileClusters(x, y, zoom);
+		} else if (tileKeys != null && tileKeys.has()) {
+			image = drawTileQueryTileKeys(x, y, zoom);
+		} else if (isIndexQuery()) {
 			image = drawTileQueryIndex(x, y, zoom);
 		} else {
 			image = drawTileQueryAll(x, y, zoom);
@@ -982,6 +1333,129 @@ public abstract class FeatureTiles {
 		return image;
 	}
 
+	/**
+	 * Draw a tile image from the x, y, and zoom level using the point
+	 * clusters. Single point clusters are drawn as their features and larger
+	 * clusters as markers with counts, so the drawing cost is bounded by the
+	 * cluster cells per tile.
+	 *
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @param zoom
+	 *            zoom level
+	 * @return drawn image, or null
+	 * @since 3.5.1
+	 */
+	public BufferedImage drawTileClusters(int x, int y, int zoom) {
+
+		// Get the web mercator bounding box
+		BoundingBox webMercatorBoundingBox = TileBoundingBoxUtils
+				.getWebMercatorBoundingBox(x, y, zoom);
+
+		// Expand by the max cluster marker radius, half a cluster cell
+		float maxRadius = tileWidth / (2.0f * pointClusters.getCellsPerTile());
+		float pixels = Math.max(maxRadius,
+				Math.max(widthOverlap, heightOverlap));
+		double pixelWidth = (webMercatorBoundingBox.getMaxLongitude()
+				- webMercatorBoundingBox.getMinLongitude()) / tileWidth;
+		double pixelHeight = (webMercatorBoundingBox.getMaxLatitude()
+				- webMercatorBoundingBox.getMinLatitude()) / tileHeight;
+		BoundingBox expandedBoundingBox = new BoundingBox(
+				webMercatorBoundingBox.getMinLongitude() - pixels * pixelWidth,
+				webMercatorBoundingBox.getMinLatitude() - pixels * pixelHeight,
+				webMercatorBoundingBox.getMaxLongitude() + pixels * pixelWidth,
+				webMercatorBoundingBox.getMaxLatitude()
+						+ pixels * pixelHeight);
+
+		List<FeaturePointCluster> clusters = pointClusters.getClusters(zoom,
+				expandedBoundingBox);
+
+		// Draw the single point features, queried together
+		List<Long> singleIds = new ArrayList<>();
+		for (FeaturePointCluster cluster : clusters) {
+			if (cluster.isSingle()) {
+				singleIds.add(cluster.getId());
+			}
+		}
+		List<FeatureRow> singleRows = new ArrayList<>();
+		if (!singleIds.isEmpty()) {
+			Map<Long, FeatureRow> rows = queryRows(singleIds, null);
+			for (long id : singleIds) {
+				FeatureRow featureRow = rows.get(id);
+				if (featureRow != null) {
+					singleRows.add(featureRow);
+				}
+			}
+		}
+		BufferedImage image = null;
+		if (!singleRows.isEmpty()) {
+			image = drawTile(zoom, webMercatorBoundingBox, singleRows);
+		}
+
+		// Draw the cluster markers over the single points
+		Graphics2D graphics = null;
+		for (FeaturePointCluster cluster : clusters) {
+			if (cluster.isSingle()) {
+				continue;
+			}
+			if (image == null) {
+				image = createNewImage();
+			}
+			if (graphics == null) {
+				graphics = getGraphics(image);
+				graphics.setFont(new Font(clusterTextFont, Font.PLAIN,
+						Math.round(this.scale * clusterTextSize)));
+			}
+			drawCluster(graphics, webMercatorBoundingBox, cluster, maxRadius);
+		}
+		if (graphics != null) {
+			graphics.dispose();
+			image = checkIfDrawn(image);
+		}
+
+		return image;
+	}
+
+	/**
+	 * Draw a point cluster marker with the cluster count
+	 *
+	 * @param graphics
+	 *            graphics
+	 * @param webMercatorBoundingBox
+	 *            web mercator tile bounding box
+	 * @param cluster
+	 *            point cluster
+	 * @param maxRadius
+	 *            max marker radius
+	 */
+	private void drawCluster(Graphics2D graphics,
+			BoundingBox webMercatorBoundingBox, FeaturePointCluster cluster,
+			float maxRadius) {
+
+		float x = TileBoundingBoxUtils.getXPixel(tileWidth,
+				webMercatorBoundingBox, cluster.getX());
+		float y = TileBoundingBoxUtils.getYPixel(tileHeight,
+				webMercatorBoundingBox, cluster.getY());
+
+		float radius = Math.min(maxRadius, this.scale * clusterRadius
+				* (float) (1.0 + Math.log10(cluster.getCount() / 2.0)));
+
+		int diameter = Math.round(radius * 2);
+		graphics.setColor(clusterPaint.getColor());
+		graphics.fillOval(Math.round(x - radius), Math.round(y - radius),
+				diameter, diameter);
+
+		String text = String.valueOf(cluster.getCount());
+		FontMetrics fontMetrics = graphics.getFontMetrics();
+		float textWidth = fontMetrics.stringWidth(text);
+		float textHeight = fontMetrics.getAscent() - fontMetrics.getDescent();
+		graphics.setColor(clusterTextPaint.getColor());
+		graphics.drawString(text, x - (textWidth / 2.0f),
+				y + (textHeight / 2.0f));
+	}
+
 	/**
 	 * Draw a tile image from the x, y, and zoom level by querying features in
 	 * the tile location
@@ -1003,7 +1477,7 @@ public abstract class FeatureTiles {
 		BufferedImage image = null;
 
 		// Query for the geometry count matching the bounds in the index
-		long tileCount = queryIndexedFeaturesCount(webMercatorBoundingBox);
+		long tileCount = queryTileCount(x, y, zoom, webMercatorBoundingBox);
 
 		// Draw if at least one geometry exists
 		if (tileCount > 0) {
@@ -1041,6 +1515,211 @@ public abstract class FeatureTiles {
 		return image;
 	}
 
+	/**
+	 * Draw a tile image from the x, y, and zoom level by reading the features
+	 * with feature tile keys covering the expanded tile location. Features
+	 * are read in a single indexed range scan. Above the tile key base zoom
+	 * the scan matches the containing base zoom tile, so features are
+	 * filtered to the expanded tile bounding box before the max features
+	 * check.
+	 *
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @param zoom
+	 *            zoom level
+	 * @return drawn image, or null
+	 * @since 3.5.1
+	 */
+	public BufferedImage drawTileQueryTileKeys(int x, int y, int zoom) {
+
+		BoundingBox webMercatorBoundingBox = TileBoundingBoxUtils
+				.getWebMercatorBoundingBox(x, y, zoom);
+
+		// Tiles covered by the expanded bounding box of overlapping features
+		BoundingBox expandedBoundingBox = expandBoundingBox(
+				webMercatorBoundingBox);
+		TileGrid tileGrid = TileBoundingBoxUtils
+				.getTileGrid(expandedBoundingBox, zoom);
+
+		Integer baseZoom = tileKeys.getBaseZoom();
+		if (baseZoom != null && zoom > baseZoom) {
+			return drawTileQueryTileKeys(zoom, webMercatorBoundingBox,
+					expandedBoundingBox, tileGrid);
+		}
+
+		BufferedImage image = null;
+
+		FeatureResultSet resultSet = tileKeys.queryFeatures(tileGrid, zoom);
+
+		try {
+
+			int tileCount = resultSet.getCount();
+
+			// Draw if at least one geometry exists
+			if (tileCount > 0) {
+
+				if (maxFeaturesPerTile == null
+						|| tileCount <= maxFeaturesPerTile) {
+
+					// Draw the tile image
+					image = drawTile(zoom, webMercatorBoundingBox, resultSet);
+
+				} else if (maxFeaturesTileDraw != null) {
+
+					// Draw the unindexed max features tile
+					image = maxFeaturesTileDraw.drawUnindexedTile(tileWidth,
+							tileHeight, tileCount, resultSet);
+				}
+			}
+		} finally {
+			resultSet.close();
+		}
+
+		return image;
+	}
+
+	/**
+	 * Draw a tile image above the tile key base zoom from the tile key
+	 * features within the expanded tile bounding box
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @param webMercatorBoundingBox
+	 *            web mercator tile bounding box
+	 * @param expandedBoundingBox
+	 *            expanded web mercator tile bounding box
+	 * @param tileGrid
+	 *            tile grid of the expanded bounding box
+	 * @return drawn image, or null
+	 */
+	private BufferedImage drawTileQueryTileKeys(int zoom,
+			BoundingBox webMercatorBoundingBox,
+			BoundingBox expandedBoundingBox, TileGrid tileGrid) {
+
+		ProjectionTransform fromWebMercator = ProjectionTransforms
+				.get(WEB_MERCATOR_PROJECTION, featureDao.getProjection());
+		BoundingBox queryBoundingBox = expandedBoundingBox;
+		if (!fromWebMercator.isSameProjection()) {
+			queryBoundingBox = queryBoundingBox.transform(fromWebMercator);
+		}
+
+		// Count the features within the bounding box, keeping the rows while
+		// within the max features
+		long tileCount = 0;
+		List<FeatureRow> featureRows = new ArrayList<>();
+		FeatureResultSet resultSet = tileKeys.queryFeatures(tileGrid, zoom);
+		try {
+			while (resultSet.moveToNext()) {
+				FeatureRow featureRow = resultSet.getRow();
+				GeometryEnvelope envelope = featureRow.getGeometryEnvelope();
+				if (envelope != null
+						&& envelope.getMinX() <= queryBoundingBox
+								.getMaxLongitude()
+						&& envelope.getMaxX() >= queryBoundingBox
+								.getMinLongitude()
+						&& envelope.getMinY() <= queryBoundingBox
+								.getMaxLatitude()
+						&& envelope.getMaxY() >= queryBoundingBox
+								.getMinLatitude()) {
+					tileCount++;
+					if (maxFeaturesPerTile == null
+							|| tileCount <= maxFeaturesPerTile) {
+						featureRows.add(featureRow);
+					} else {
+						featureRows.clear();
+					}
+				}
+			}
+		} finally {
+			resultSet.close();
+		}
+
+		BufferedImage image = null;
+
+		// Draw if at least one geometry exists
+		if (tileCount > 0) {
+
+			if (maxFeaturesPerTile == null
+					|| tileCount <= maxFeaturesPerTile) {
+
+				// Draw the tile image
+				image = drawTile(zoom, webMercatorBoundingBox, featureRows);
+
+			} else if (maxFeaturesTileDraw != null) {
+
+				// Draw the unindexed max features tile
+				resultSet = tileKeys.queryFeatures(tileGrid, zoom);
+				try {
+					image = maxFeaturesTileDraw.drawUnindexedTile(tileWidth,
+							tileHeight, tileCount, resultSet);
+				} finally {
+					resultSet.close();
+				}
+			}
+		}
+
+		return image;
+	}
+
+	/**
+	 * Get the feature count used to decide how to draw the tile. When feature
+	 * tile counts exist, the count of the tile and its neighbors (bounding the
+	 * expanded tile query) is used when zero or within the max features, and
+	 * the tile count is used when over the max features, avoiding the count
+	 * query. When estimating counts, the max of the indexed feature count
+	 * estimate is used when within the max features.
+	 *
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @param zoom
+	 *            zoom level
+	 * @param webMercatorBoundingBox
+	 *            web mercator tile bounding box
+	 * @return feature count
+	 */
+	private long queryTileCount(int x, int y, int zoom,
+			BoundingBox webMercatorBoundingBox) {
+
+		Long count = null;
+
+		if (tileCounts != null) {
+			Long neighborhoodCount = tileCounts.getNeighborhoodCount(x, y,
+					zoom);
+			if (neighborhoodCount != null) {
+				if (maxFeaturesPerTile == null || neighborhoodCount
+						.longValue() <= maxFeaturesPerTile.longValue()) {
+					count = neighborhoodCount;
+				} else {
+					Long tileCount = tileCounts.getCount(x, y, zoom);
+					if (tileCount != null && tileCount
+							.longValue() > maxFeaturesPerTile.longValue()) {
+						count = tileCount;
+					}
+				}
+			}
+		}
+
+		if (count == null && estimateCounts) {
+			if (countEstimate == null) {
+				countEstimate = featureIndex.estimateCount();
+			}
+			if (maxFeaturesPerTile == null || countEstimate
+					.getMax() <= maxFeaturesPerTile.longValue()) {
+				count = countEstimate.getMax();
+			}
+		}
+
+		if (count == null) {
+			count = queryIndexedFeaturesCount(webMercatorBoundingBox);
+		}
+
+		return count;
+	}
+
 	/**
 	 * Query for feature result count in the x, y, and zoom
 	 *
@@ -1146,8 +1825,8 @@ public abstract class FeatureTiles {
 
 		BoundingBox expandedBoundingBox = boundingBox;
 
-		ProjectionTransform toWebMercator = projection
-				.getTransformation(ProjectionConstants.EPSG_WEB_MERCATOR);
+		ProjectionTransform toWebMercator = ProjectionTransforms
+				.get(projection, WEB_MERCATOR_PROJECTION);
 		if (!toWebMercator.isSameProjection()) {
 			expandedBoundingBox = expandedBoundingBox.transform(toWebMercator);
 		}
@@ -1155,8 +1834,8 @@ public abstract class FeatureTiles {
 		expandedBoundingBox = expandBoundingBox(expandedBoundingBox);
 
 		if (!toWebMercator.isSameProjection()) {
-			ProjectionTransform fromWebMercator = toWebMercator
-					.getInverseTransformation();
+			ProjectionTransform fromWebMercator = ProjectionTransforms
+					.get(WEB_MERCATOR_PROJECTION, projection);
 			expandedBoundingBox = expandedBoundingBox
 					.transform(fromWebMercator);
 		}
@@ -1308,8 +1987,8 @@ public abstract class FeatureTiles {
 	 * @return transform
 	 */
 	protected ProjectionTransform getWebMercatorTransform() {
-		return this.featureDao.getProjection()
-				.getTransformation(ProjectionConstants.EPSG_WEB_MERCATOR);
+		return ProjectionTransforms.get(featureDao.getProjection(),
+				WEB_MERCATOR_PROJECTION);
 	}
 
 	/**
@@ -1331,9 +2010,9 @@ public abstract class FeatureTiles {
 
 			// Reproject to web mercator if not in meters
 			if (projection != null && !projection.isUnit(Units.METRES)) {
-				ProjectionTransform toWebMercator = projection
-						.getTransformation(WEB_MERCATOR_PROJECTION);
-				points = toWebMercator.transform(points);
+				ProjectionTransform toWebMercator = ProjectionTransforms
+						.get(projection, WEB_MERCATOR_PROJECTION);
+				points = ProjectionTransforms.transform(toWebMercator, points);
 			}
 
 			// Simplify the points
@@ -1342,9 +2021,10 @@ public abstract class FeatureTiles {
 
 			// Reproject back to the original projection
 			if (projection != null && !projection.isUnit(Units.METRES)) {
-				ProjectionTransform fromWebMercator = WEB_MERCATOR_PROJECTION
-						.getTransformation(projection);
-				simplifiedPoints = fromWebMercator.transform(simplifiedPoints);
+				ProjectionTransform fromWebMercator = ProjectionTransforms
+						.get(WEB_MERCATOR_PROJECTION, projection);
+				simplifiedPoints = ProjectionTransforms
+						.transform(fromWebMercator, simplifiedPoints);
 			}
 		} else {
 			simplifiedPoints = points;
@@ -1353,6 +2033,192 @@ public abstract class FeatureTiles {
 		return simplifiedPoints;
 	}
 
+	/**
+	 * When simplifying geometries, simplify the packed x, y coordinates
+	 * (already in meters) to a similar curve with fewer coordinates using
+	 * Douglas-Peucker
+	 *
+	 * @param simplifyTolerance
+	 *            simplify tolerance in meters
+	 * @param coordinates
+	 *            packed x, y coordinates in meters
+	 * @return simplified packed coordinates
+	 * @since 3.5.1
+	 */
+	protected double[] simplifyCoordinates(double simplifyTolerance,
+			double[] coordinates) {
+
+		int count = coordinates.length / 2;
+		if (!simplifyGeometries || count < 3) {
+			return coordinates;
+		}
+
+		boolean[] keep = new boolean[count];
+		keep[0] = true;
+		keep[count - 1] = true;
+		int kept = 2;
+
+		int[] stack = new int[count * 2];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = count - 1;
+		while (top > 0) {
+			int last = stack[--top];
+			int first = stack[--top];
+			double maxDistance = 0;
+			int index = -1;
+			for (int i = first + 1; i < last; i++) {
+				double distance = perpendicularDistance(coordinates, i, first,
+						last);
+				if (distance > maxDistance) {
+					maxDistance = distance;
+					index = i;
+				}
+			}
+			if (index >= 0 && maxDistance > simplifyTolerance) {
+				keep[index] = true;
+				kept++;
+				stack[top++] = first;
+				stack[top++] = index;
+				stack[top++] = index;
+				stack[top++] = last;
+			}
+		}
+
+		double[] simplified = new double[kept * 2];
+		int position = 0;
+		for (int i = 0; i < count; i++) {
+			if (keep[i]) {
+				simplified[position++] = coordinates[i * 2];
+				simplified[position++] = coordinates[i * 2 + 1];
+			}
+		}
+		return simplified;
+	}
+
+	/**
+	 * Get the distance from the coordinate to the line through the first and
+	 * last coordinates
+	 *
+	 * @param coordinates
+	 *            packed x, y coordinates
+	 * @param index
+	 *            coordinate index
+	 * @param first
+	 *            line first coordinate index
+	 * @param last
+	 *            line last coordinate index
+	 * @return distance
+	 */
+	private static double perpendicularDistance(double[] coordinates,
+			int index, int first, int last) {
+		double x = coordinates[index * 2];
+		double y = coordinates[index * 2 + 1];
+		double x1 = coordinates[first * 2];
+		double y1 = coordinates[first * 2 + 1];
+		double x2 = coordinates[last * 2];
+		double y2 = coordinates[last * 2 + 1];
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double length = Math.sqrt(dx * dx + dy * dy);
+		double distance;
+		if (length == 0) {
+			distance = Math.hypot(x - x1, y - y1);
+		} else {
+			distance = Math.abs(dy * x - dx * y + x2 * y1 - y2 * x1)
+					/ length;
+		}
+		return distance;
+	}
+
+	/**
+	 * Get the generalized zoom band used to draw the zoom level
+	 *
+	 * @param zoom
+	 *            zoom level
+	 * @return zoom band, null when drawing full resolution geometries
+	 * @since 3.5.1
+	 */
+	protected Integer getGeneralizedZoomBand(int zoom) {
+		Integer zoomBand = null;
+		if (generalizedGeometries != null) {
+			zoomBand = generalizedGeometries.getZoomBand(zoom);
+		}
+		return zoomBand;
+	}
+
+	/**
+	 * Get the generalized geometry bytes to draw for the features of a tile
+	 * in the zoom band, with a single query per batch of features
+	 *
+	 * @param featureIds
+	 *            feature ids
+	 * @param zoomBand
+	 *            zoom band
+	 * @return generalized geometry bytes by feature id, features without a
+	 *         generalized geometry are drawn full resolution
+	 * @since 3.5.1
+	 */
+	protected Map<Long, byte[]> getGeneralizedGeometries(
+			Collection<Long> featureIds, int zoomBand) {
+		Map<Long, byte[]> geometries;
+		if (generalizedGeometries != null && !featureIds.isEmpty()) {
+			geometries = generalizedGeometries.getGeometryBytes(featureIds,
+					zoomBand);
+		} else {
+			geometries = Collections.emptyMap();
+		}
+		return geometries;
+	}
+
+	/**
+	 * Query the feature rows by id, with a single query per batch of
+	 * {@link #ROW_BATCH_SIZE} ids
+	 *
+	 * @param ids
+	 *            feature ids
+	 * @param columns
+	 *            columns to query, null for all columns
+	 * @return feature rows by id
+	 * @since 3.5.1
+	 */
+	protected Map<Long, FeatureRow> queryRows(Collection<Long> ids,
+			String[] columns) {
+
+		Map<Long, FeatureRow> rows = new HashMap<>();
+
+		String idColumn = CoreSQLUtils.quoteWrap(featureDao.getIdColumnName());
+		Iterator<Long> idIterator = ids.iterator();
+		while (idIterator.hasNext()) {
+			StringBuilder where = new StringBuilder(idColumn);
+			where.append(" IN (");
+			for (int count = 0; count < ROW_BATCH_SIZE
+					&& idIterator.hasNext(); count++) {
+				if (count > 0) {
+					where.append(",");
+				}
+				where.append(idIterator.next().longValue());
+			}
+			where.append(")");
+			FeatureResultSet resultSet;
+			if (columns != null) {
+				resultSet = featureDao.query(columns, where.toString(), null);
+			} else {
+				resultSet = featureDao.query(where.toString(), null);
+			}
+			try {
+				while (resultSet.moveToNext()) {
+					FeatureRow row = resultSet.getRow();
+					rows.put(row.getId(), row);
+				}
+			} finally {
+				resultSet.close();
+			}
+		}
+
+		return rows;
+	}
+
 	/**
 	 * Get the feature style for the feature row and geometry type
 	 *
@@ -8,6 +8,8 @@ import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackageException;
 import mil.nga.geopackage.core.contents.Contents;
 import mil.nga.geopackage.core.srs.SpatialReferenceSystem;
+import mil.nga.geopackage.db.CountEstimate;
+import mil.nga.geopackage.db.CountEstimator;
 import mil.nga.geopackage.db.GeoPackageConnection;
 import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
 import mil.nga.geopackage.tiles.TileGrid;
@@ -604,6 +606,26 @@ public class TileDao
 		return count(where, whereArgs);
 	}
 
+	/**
+	 * Estimate the count of tiles at a zoom level without a full count,
+	 * sampling the smaller of the tile matrix cells and the tile id range.
+	 * Small tile matrices are counted exactly.
+	 * 
+	 * @param zoomLevel
+	 *            zoom level
+	 * @return count estimate
+	 * @since 3.5.1
+	 */
+	public CountEstimate estimateCount(long zoomLevel) {
+		TileMatrix tileMatrix = getTileMatrix(zoomLevel);
+		if (tileMatrix == null) {
+			return CountEstimate.exact(0);
+		}
+		return CountEstimator.estimateTileCount(getConnection(),
+				getTableName(), getTable().getPkColumn().getName(), zoomLevel,
+				tileMatrix.getMatrixWidth(), tileMatrix.getMatrixHeight());
+	}
+
 	/**
 	 * Determine if the tiles are in the XYZ tile coordinate format
 	 * 
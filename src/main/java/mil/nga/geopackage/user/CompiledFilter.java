@@ -0,0 +1,404 @@
+package mil.nga.geopackage.user;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.DateConverter;
+import mil.nga.geopackage.db.GeoPackageDataType;
+import mil.nga.geopackage.db.SQLUtils;
+
+/**
+ * Compiled field value filter of equality conditions on a fixed set of user
+ * table columns. Columns are validated and the canonical where clause is built
+ * once per combination of null values. Counts and id queries bind the typed
+ * values on prepared statements reused across calls until closed. Dates are
+ * matched as their stored date or date time strings. Result set queries bind
+ * the values as string where arguments, which do not support byte array
+ * values. Instances are safe to share between threads.
+ *
+ * @author osbornb
+ * @since 3.5.1
+ */
+public class CompiledFilter implements Closeable {
+
+	/**
+	 * Maximum number of filter columns
+	 */
+	public static final int MAX_COLUMNS = 63;
+
+	/**
+	 * Connection
+	 */
+	private final Connection connection;
+
+	/**
+	 * Table name
+	 */
+	private final String tableName;
+
+	/**
+	 * Id column name
+	 */
+	private final String idColumnName;
+
+	/**
+	 * Filter column names as defined by the table
+	 */
+	private final String[] columns;
+
+	/**
+	 * Filter column data types
+	 */
+	private final GeoPackageDataType[] dataTypes;
+
+	/**
+	 * Where clauses by null value mask
+	 */
+	private final Map<Long, String> wheres = new HashMap<>();
+
+	/**
+	 * Reusable prepared statements by SQL
+	 */
+	private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param connection
+	 *            connection
+	 * @param table
+	 *            user table
+	 * @param columns
+	 *            filter column names
+	 */
+	public CompiledFilter(Connection connection, UserTable<?> table,
+			String... columns) {
+		this.connection = connection;
+		this.tableName = table.getTableName();
+		this.idColumnName = table.getPkColumn().getName();
+		if (columns == null || columns.length == 0) {
+			throw new GeoPackageException(
+					"At least one filter column is required. Table: "
+							+ tableName);
+		}
+		if (columns.length > MAX_COLUMNS) {
+			throw new GeoPackageException("Filter column count "
+					+ columns.length + " exceeds the maximum of "
+					+ MAX_COLUMNS + ". Table: " + tableName);
+		}
+		String[] tableColumns = table.getColumnNames();
+		this.columns = new String[columns.length];
+		this.dataTypes = new GeoPackageDataType[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			String column = null;
+			for (String tableColumn : tableColumns) {
+				if (tableColumn.equalsIgnoreCase(columns[i])) {
+					column = tableColumn;
+					break;
+				}
+			}
+			if (column == null) {
+				throw new GeoPackageException("Filter column '" + columns[i]
+						+ "' does not exist in table: " + tableName);
+			}
+			this.columns[i] = column;
+			this.dataTypes[i] = table.getColumn(column).getDataType();
+		}
+	}
+
+	/**
+	 * Get the table name
+	 *
+	 * @return table name
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Get the filter column names
+	 *
+	 * @return column names
+	 */
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * Get the canonical where clause for the field values, null values are
+	 * matched with IS NULL
+	 *
+	 * @param values
+	 *            field values in filter column order
+	 * @return where clause
+	 */
+	public synchronized String getWhere(Object... values) {
+		long mask = nullMask(values);
+		String where = wheres.get(mask);
+		if (where == null) {
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < columns.length; i++) {
+				if (i > 0) {
+					builder.append(" AND ");
+				}
+				builder.append(CoreSQLUtils.quoteWrap(columns[i]));
+				if ((mask & (1L << i)) != 0) {
+					builder.append(" IS NULL");
+				} else {
+					builder.append(" = ?");
+				}
+			}
+			where = builder.toString();
+			wheres.put(mask, where);
+		}
+		return where;
+	}
+
+	/**
+	 * Get the string where arguments for the field values, excluding null
+	 * values. Byte array values can not be matched as strings and are
+	 * rejected, use {@link #count(Object...)} or {@link #queryIds(Object...)}
+	 * to match blob columns.
+	 *
+	 * @param values
+	 *            field values in filter column order
+	 * @return where arguments
+	 */
+	public String[] getWhereArgs(Object... values) {
+		Object[] arguments = getArguments(values);
+		String[] whereArgs = new String[arguments.length];
+		for (int i = 0; i < arguments.length; i++) {
+			if (arguments[i] instanceof byte[]) {
+				throw new GeoPackageException(
+						"Byte array filter values are not supported as string where arguments. Table: "
+								+ tableName);
+			}
+			whereArgs[i] = arguments[i].toString();
+		}
+		return whereArgs;
+	}
+
+	/**
+	 * Count the rows matching the field values
+	 *
+	 * @param values
+	 *            field values in filter column order
+	 * @return count
+	 */
+	public int count(Object... values) {
+		String sql = "SELECT COUNT(*) FROM "
+				+ CoreSQLUtils.quoteWrap(tableName) + " WHERE "
+				+ getWhere(values);
+		return queryCount(sql, null, values);
+	}
+
+	/**
+	 * Count the rows matching the field values with ids within the nested SQL
+	 * query, such as an index table ids query
+	 *
+	 * @param nestedSQL
+	 *            nested SQL query selecting ids
+	 * @param nestedArgs
+	 *            nested SQL arguments
+	 * @param values
+	 *            field values in filter column order
+	 * @return count
+	 */
+	public int countIn(String nestedSQL, Object[] nestedArgs,
+			Object... values) {
+		String sql = "SELECT COUNT(*) FROM "
+				+ CoreSQLUtils.quoteWrap(tableName) + " WHERE "
+				+ CoreSQLUtils.quoteWrap(idColumnName) + " IN (" + nestedSQL
+				+ ") AND " + getWhere(values);
+		return queryCount(sql, nestedArgs, values);
+	}
+
+	/**
+	 * Query for the ids of the rows matching the field values
+	 *
+	 * @param values
+	 *            field values in filter column order
+	 * @return ids
+	 */
+	public synchronized List<Long> queryIds(Object... values) {
+		String sql = "SELECT " + CoreSQLUtils.quoteWrap(idColumnName)
+				+ " FROM " + CoreSQLUtils.quoteWrap(tableName) + " WHERE "
+				+ getWhere(values);
+		List<Long> ids = new ArrayList<>();
+		ResultSet resultSet = null;
+		try {
+			resultSet = bind(sql, null, values).executeQuery();
+			while (resultSet.next()) {
+				ids.add(resultSet.getLong(1));
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to query filtered ids. Table: " + tableName, e);
+		} finally {
+			close(resultSet);
+		}
+		return ids;
+	}
+
+	/**
+	 * Close the reusable prepared statements
+	 */
+	@Override
+	public synchronized void close() {
+		Iterator<Map.Entry<String, PreparedStatement>> iterator = statements
+				.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, PreparedStatement> entry = iterator.next();
+			SQLUtils.closeStatement(entry.getValue(), entry.getKey());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Query a single count value
+	 *
+	 * @param sql
+	 *            count SQL
+	 * @param nestedArgs
+	 *            nested arguments preceding the field values
+	 * @param values
+	 *            field values
+	 * @return count
+	 */
+	private synchronized int queryCount(String sql, Object[] nestedArgs,
+			Object[] values) {
+		int count = 0;
+		ResultSet resultSet = null;
+		try {
+			resultSet = bind(sql, nestedArgs, values).executeQuery();
+			if (resultSet.next()) {
+				count = resultSet.getInt(1);
+			}
+		} catch (SQLException e) {
+			throw new GeoPackageException(
+					"Failed to count filtered rows. Table: " + tableName, e);
+		} finally {
+			close(resultSet);
+		}
+		return count;
+	}
+
+	/**
+	 * Get or prepare the reusable statement and bind the arguments
+	 *
+	 * @param sql
+	 *            SQL
+	 * @param nestedArgs
+	 *            nested arguments preceding the field values
+	 * @param values
+	 *            field values
+	 * @return bound statement
+	 * @throws SQLException
+	 *             upon failure
+	 */
+	private PreparedStatement bind(String sql, Object[] nestedArgs,
+			Object[] values) throws SQLException {
+		PreparedStatement statement = statements.get(sql);
+		if (statement == null) {
+			statement = connection.prepareStatement(sql);
+			statements.put(sql, statement);
+		} else {
+			statement.clearParameters();
+		}
+		SQLUtils.setArguments(statement, nestedArgs);
+		int index = nestedArgs != null ? nestedArgs.length : 0;
+		for (Object argument : getArguments(values)) {
+			statement.setObject(++index, argument);
+		}
+		return statement;
+	}
+
+	/**
+	 * Get the typed arguments of the non null field values, booleans are bound
+	 * as integers and dates as their stored date or date time strings
+	 *
+	 * @param values
+	 *            field values
+	 * @return arguments
+	 */
+	private Object[] getArguments(Object[] values) {
+		validate(values);
+		List<Object> arguments = new ArrayList<>(values.length);
+		for (int i = 0; i < values.length; i++) {
+			Object value = values[i];
+			if (value instanceof Boolean) {
+				arguments.add(((Boolean) value) ? 1 : 0);
+			} else if (value instanceof Date) {
+				DateConverter converter = DateConverter.converter(
+						dataTypes[i] == GeoPackageDataType.DATE
+								? GeoPackageDataType.DATE
+								: GeoPackageDataType.DATETIME);
+				arguments.add(converter.stringValue((Date) value));
+			} else if (value != null) {
+				arguments.add(value);
+			}
+		}
+		return arguments.toArray();
+	}
+
+	/**
+	 * Get the mask of null field values
+	 *
+	 * @param values
+	 *            field values
+	 * @return null mask
+	 */
+	private long nullMask(Object[] values) {
+		validate(values);
+		long mask = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] == null) {
+				mask |= 1L << i;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Validate the number of field values
+	 *
+	 * @param values
+	 *            field values
+	 */
+	private void validate(Object[] values) {
+		if (values == null || values.length != columns.length) {
+			throw new GeoPackageException("Expected " + columns.length
+					+ " filter values, received "
+					+ (values == null ? 0 : values.length) + ". Table: "
+					+ tableName);
+		}
+	}
+
+	/**
+	 * Close the result set, leaving the reusable statement open
+	 *
+	 * @param resultSet
+	 *            result set
+	 */
+	private static void close(ResultSet resultSet) {
+		if (resultSet != null) {
+			try {
+				resultSet.close();
+			} catch (SQLException e) {
+				// ignore
+			}
+		}
+	}
+
+}
@@ -4,7 +4,11 @@ import java.sql.Connection;
 import java.sql.SQLException;
 
 import mil.nga.geopackage.GeoPackageException;
+import mil.nga.geopackage.db.CountEstimate;
+import mil.nga.geopackage.db.CountEstimator;
 import mil.nga.geopackage.db.GeoPackageConnection;
+import mil.nga.geopackage.db.QueryPlan;
+import mil.nga.geopackage.db.QueryPlanAdvisor;
 import mil.nga.geopackage.db.SQLUtils;
 
 /**
@@ -186,4 +190,142 @@ public abstract class UserDao<TColumn extends UserColumn, TTable extends UserTab
 		return SQLUtils.insertOrThrow(connection, getTableName(), values);
 	}
 
+	/**
+	 * Explain the query plan of a query, reporting full table scans and temp
+	 * B-trees with secondary index recommendations for the where clause
+	 * columns
+	 * 
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return query plan
+	 * @since 3.5.1
+	 */
+	public QueryPlan explainQuery(String where, String[] whereArgs) {
+		return QueryPlanAdvisor.explainQuery(connection, getTableName(), where,
+				whereArgs);
+	}
+
+	/**
+	 * Explain the query plan of a query for rows with ids within the nested
+	 * SQL query, such as an index table ids query
+	 * 
+	 * @param nestedSQL
+	 *            nested SQL query selecting ids
+	 * @param nestedArgs
+	 *            nested SQL arguments
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return query plan
+	 * @since 3.5.1
+	 */
+	public QueryPlan explainQueryIn(String nestedSQL, String[] nestedArgs,
+			String where, String[] whereArgs) {
+		return QueryPlanAdvisor.explainQueryIn(connection, getTableName(),
+				getTable().getPkColumn().getName(), nestedSQL, nestedArgs,
+				where, whereArgs);
+	}
+
+	/**
+	 * Create the recommended secondary indexes of a query plan
+	 * 
+	 * @param plan
+	 *            query plan
+	 * @return number of created indexes
+	 * @since 3.5.1
+	 */
+	public int createIndexes(QueryPlan plan) {
+		return QueryPlanAdvisor.createIndexes(connection, plan);
+	}
+
+	/**
+	 * Compile a field value filter on the columns, validating the columns and
+	 * building the canonical where clause once for repeated queries
+	 * 
+	 * @param columns
+	 *            filter column names
+	 * @return compiled filter, close when done
+	 * @since 3.5.1
+	 */
+	public CompiledFilter compileFilter(String... columns) {
+		return new CompiledFilter(connection, getTable(), columns);
+	}
+
+	/**
+	 * Query for rows matching the compiled filter field values, bound as
+	 * string where arguments which do not support byte array values
+	 * 
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return result
+	 * @since 3.5.1
+	 */
+	public TResult query(CompiledFilter filter, Object... values) {
+		validateFilter(filter);
+		return query(filter.getWhere(values), filter.getWhereArgs(values));
+	}
+
+	/**
+	 * Count the rows matching the compiled filter field values
+	 * 
+	 * @param filter
+	 *            compiled filter
+	 * @param values
+	 *            field values in filter column order
+	 * @return count
+	 * @since 3.5.1
+	 */
+	public int count(CompiledFilter filter, Object... values) {
+		validateFilter(filter);
+		return filter.count(values);
+	}
+
+	/**
+	 * Estimate the row count without a full count scan, from a sample of the
+	 * primary key range and the sqlite_stat1 statistics when consistent with
+	 * the sample. Small key ranges are counted exactly.
+	 * 
+	 * @return count estimate
+	 * @since 3.5.1
+	 */
+	public CountEstimate estimateCount() {
+		return CountEstimator.estimateCount(connection, getTableName(),
+				getTable().getPkColumn().getName());
+	}
+
+	/**
+	 * Estimate the count of rows matching the where clause from a sample of
+	 * the primary key range. Small key ranges are counted exactly.
+	 * 
+	 * @param where
+	 *            where clause
+	 * @param whereArgs
+	 *            where arguments
+	 * @return count estimate
+	 * @since 3.5.1
+	 */
+	public CountEstimate estimateCount(String where, String[] whereArgs) {
+		return CountEstimator.estimateCount(connection, getTableName(),
+				getTable().getPkColumn().getName(), where, whereArgs);
+	}
+
+	/**
+	 * Validate the compiled filter was compiled for this table
+	 * 
+	 * @param filter
+	 *            compiled filter
+	 */
+	private void validateFilter(CompiledFilter filter) {
+		if (!filter.getTableName().equalsIgnoreCase(getTableName())) {
+			throw new GeoPackageException("Filter compiled for table '"
+					+ filter.getTableName() + "' can not be used with table: "
+					+ getTableName());
+		}
+	}
+
 }
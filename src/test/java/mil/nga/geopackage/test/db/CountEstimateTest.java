@@ -0,0 +1,236 @@
+package mil.nga.geopackage.test.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.db.CountEstimate;
+import mil.nga.geopackage.db.CountEstimateSource;
+import mil.nga.geopackage.db.CountEstimator;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.features.index.FeatureIndexManager;
+import mil.nga.geopackage.features.index.FeatureIndexType;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.test.CreateGeoPackageTestCase;
+import mil.nga.geopackage.tiles.user.TileDao;
+
+import org.junit.Test;
+
+/**
+ * Test count estimates from statistics, samples, RTree nodes, and tile counts
+ *
+ * @author osbornb
+ */
+public class CountEstimateTest extends CreateGeoPackageTestCase {
+
+	/**
+	 * Sampled table name
+	 */
+	private static final String TABLE = "count_estimate";
+
+	/**
+	 * Sampled RTree table name
+	 */
+	private static final String RTREE_TABLE = "rtree_count_estimate";
+
+	/**
+	 * Test feature and feature index estimates, exact for small tables
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testFeatures() throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			CountEstimate tableEstimate = featureDao.estimateCount();
+			TestCase.assertTrue(tableEstimate.isExact());
+			TestCase.assertEquals(featureDao.count(), tableEstimate.getCount());
+
+			for (FeatureIndexType type : new FeatureIndexType[] {
+					FeatureIndexType.GEOPACKAGE, FeatureIndexType.RTREE }) {
+
+				FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+						geoPackage, featureDao);
+				featureIndexManager.setContinueOnError(false);
+				featureIndexManager.setIndexLocation(type);
+				featureIndexManager.index();
+				featureIndexManager.prioritizeQueryLocation(type);
+
+				CountEstimate estimate = featureIndexManager.estimateCount();
+				TestCase.assertEquals(CountEstimateSource.EXACT,
+						estimate.getSource());
+				TestCase.assertEquals(featureIndexManager.count(),
+						estimate.getCount());
+
+				featureIndexManager.close();
+			}
+
+			FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+					geoPackage, featureDao);
+			featureIndexManager.setContinueOnError(false);
+			featureIndexManager.setIndexLocation(FeatureIndexType.GEOPACKAGE);
+			featureIndexManager
+					.prioritizeQueryLocation(FeatureIndexType.GEOPACKAGE);
+
+			BoundingBox boundingBox = featureIndexManager.getBoundingBox();
+			if (boundingBox != null) {
+
+				// Exact without tile counts
+				CountEstimate estimate = featureIndexManager
+						.estimateCount(boundingBox);
+				TestCase.assertTrue(estimate.isExact());
+				TestCase.assertEquals(featureIndexManager.count(boundingBox),
+						estimate.getCount());
+
+				// Tile count estimates bound the exact count
+				if (featureIndexManager.buildTileCounts(0, 4) > 0) {
+					estimate = featureIndexManager.estimateCount(boundingBox);
+					TestCase.assertEquals(CountEstimateSource.TILE_COUNTS,
+							estimate.getSource());
+					TestCase.assertTrue(estimate.contains(
+							featureIndexManager.count(boundingBox)));
+					featureIndexManager.getTileCounts().delete();
+				}
+			}
+
+			featureIndexManager.deleteAllIndexes();
+			featureIndexManager.close();
+		}
+
+	}
+
+	/**
+	 * Test tile estimates, exact for small tile matrices
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testTiles() throws SQLException {
+
+		for (String tileTable : geoPackage.getTileTables()) {
+
+			TileDao tileDao = geoPackage.getTileDao(tileTable);
+
+			for (long zoom = tileDao.getMinZoom(); zoom <= tileDao
+					.getMaxZoom(); zoom++) {
+				CountEstimate estimate = tileDao.estimateCount(zoom);
+				TestCase.assertTrue(estimate.contains(tileDao.count(zoom)));
+				if (estimate.isExact()) {
+					TestCase.assertEquals(tileDao.count(zoom),
+							estimate.getCount());
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Test sampled and statistics estimates of a sparse key range
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testSampled() throws SQLException {
+
+		Connection connection = geoPackage.getConnection().getConnection();
+
+		SQLUtils.execSQL(connection, "CREATE TABLE " + TABLE
+				+ " (id INTEGER PRIMARY KEY, value INTEGER)");
+		SQLUtils.execSQL(connection, "WITH RECURSIVE ids(x) AS (SELECT 1"
+				+ " UNION ALL SELECT x + 1 FROM ids WHERE x < 50000)"
+				+ " INSERT INTO " + TABLE + " SELECT x, x % 4 FROM ids");
+
+		// Half of the key range remains
+		SQLUtils.execSQL(connection, "DELETE FROM " + TABLE
+				+ " WHERE id % 2 = 0");
+		long count = SQLUtils.count(connection, TABLE, null, null);
+		TestCase.assertEquals(25000, count);
+
+		CountEstimate estimate = CountEstimator.estimateCount(connection,
+				TABLE, "id");
+		TestCase.assertEquals(CountEstimateSource.SAMPLE,
+				estimate.getSource());
+		TestCase.assertTrue(estimate.getErrorBound() > 0);
+		TestCase.assertTrue(estimate.getErrorBound() < count / 4);
+		TestCase.assertTrue(estimate.contains(count));
+
+		// Stable for an unchanged table
+		CountEstimate repeated = CountEstimator.estimateCount(connection,
+				TABLE, "id");
+		TestCase.assertEquals(estimate.getCount(), repeated.getCount());
+		TestCase.assertEquals(estimate.getErrorBound(),
+				repeated.getErrorBound());
+
+		// Filtered sample
+		long filteredCount = SQLUtils.count(connection, TABLE, "value = ?",
+				new String[] { "1" });
+		CountEstimate filtered = CountEstimator.estimateCount(connection,
+				TABLE, "id", "value = ?", new String[] { "1" });
+		TestCase.assertEquals(CountEstimateSource.SAMPLE,
+				filtered.getSource());
+		TestCase.assertTrue(filtered.contains(filteredCount));
+
+		// Analyzed statistics consistent with the sample
+		SQLUtils.execSQL(connection, "ANALYZE " + TABLE);
+		TestCase.assertEquals(count, CountEstimator
+				.statisticsCount(connection, TABLE).longValue());
+		CountEstimate statistics = CountEstimator.estimateCount(connection,
+				TABLE, "id");
+		TestCase.assertEquals(CountEstimateSource.STATISTICS,
+				statistics.getSource());
+		TestCase.assertEquals(count, statistics.getCount());
+
+		// Small key ranges are counted exactly
+		SQLUtils.execSQL(connection, "DELETE FROM " + TABLE
+				+ " WHERE id > 10000");
+		count = SQLUtils.count(connection, TABLE, null, null);
+		CountEstimate small = CountEstimator.estimateCount(connection,
+				TABLE, "id");
+		TestCase.assertEquals(CountEstimateSource.EXACT, small.getSource());
+		TestCase.assertEquals(count, small.getCount());
+
+		SQLUtils.execSQL(connection, "DROP TABLE " + TABLE);
+
+	}
+
+	/**
+	 * Test RTree node estimates of a large RTree
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testRTree() throws SQLException {
+
+		Connection connection = geoPackage.getConnection().getConnection();
+
+		SQLUtils.execSQL(connection, "CREATE VIRTUAL TABLE " + RTREE_TABLE
+				+ " USING rtree(id, minx, maxx, miny, maxy)");
+		TestCase.assertEquals(0, CountEstimator
+				.estimateRTreeCount(connection, RTREE_TABLE).getCount());
+
+		SQLUtils.execSQL(connection, "WITH RECURSIVE ids(x) AS (SELECT 1"
+				+ " UNION ALL SELECT x + 1 FROM ids WHERE x < 300000)"
+				+ " INSERT INTO " + RTREE_TABLE
+				+ " SELECT x, x % 1000, x % 1000 + 1, x / 1000, x / 1000 + 1"
+				+ " FROM ids");
+
+		CountEstimate estimate = CountEstimator
+				.estimateRTreeCount(connection, RTREE_TABLE);
+		TestCase.assertEquals(CountEstimateSource.RTREE_NODES,
+				estimate.getSource());
+		TestCase.assertTrue(estimate.getErrorBound() < 300000 / 4);
+		TestCase.assertTrue(estimate.contains(300000));
+
+		SQLUtils.execSQL(connection, "DROP TABLE " + RTREE_TABLE);
+
+	}
+
+}
@@ -0,0 +1,157 @@
+package mil.nga.geopackage.test.db;
+
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+import mil.nga.geopackage.attributes.AttributesColumn;
+import mil.nga.geopackage.attributes.AttributesDao;
+import mil.nga.geopackage.db.CoreSQLUtils;
+import mil.nga.geopackage.db.QueryIndexRecommendation;
+import mil.nga.geopackage.db.QueryPlan;
+import mil.nga.geopackage.db.QueryPlanStep;
+import mil.nga.geopackage.features.index.FeatureIndexManager;
+import mil.nga.geopackage.features.index.FeatureIndexType;
+import mil.nga.geopackage.features.user.FeatureColumn;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.test.CreateGeoPackageTestCase;
+
+import org.junit.Test;
+
+/**
+ * Test query plan inspection and index recommendations
+ *
+ * @author osbornb
+ */
+public class QueryPlanTest extends CreateGeoPackageTestCase {
+
+	/**
+	 * Test attributes query plans and created index recommendations
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testAttributes() throws SQLException {
+
+		for (String attributesTable : geoPackage.getAttributesTables()) {
+
+			AttributesDao attributesDao = geoPackage
+					.getAttributesDao(attributesTable);
+
+			AttributesColumn column = null;
+			for (AttributesColumn attributesColumn : attributesDao.getTable()
+					.getColumns()) {
+				if (!attributesColumn.isPrimaryKey()) {
+					column = attributesColumn;
+					break;
+				}
+			}
+			if (column == null) {
+				continue;
+			}
+
+			String where = CoreSQLUtils.quoteWrap(column.getName()) + " = ?";
+			String[] whereArgs = new String[] { "1" };
+
+			QueryPlan plan = attributesDao.explainQuery(where, whereArgs);
+			TestCase.assertFalse(plan.getSteps().isEmpty());
+			TestCase.assertTrue(plan.isScanned(attributesTable));
+			TestCase.assertTrue(plan.getScannedTables()
+					.contains(attributesTable));
+			TestCase.assertEquals(1, plan.getRecommendations().size());
+
+			QueryIndexRecommendation recommendation = plan
+					.getRecommendations().get(0);
+			TestCase.assertEquals(attributesTable,
+					recommendation.getTable());
+			TestCase.assertEquals(1, recommendation.getColumns().size());
+			TestCase.assertEquals(column.getName(),
+					recommendation.getColumns().get(0));
+
+			TestCase.assertEquals(1, attributesDao.createIndexes(plan));
+
+			QueryPlan indexedPlan = attributesDao.explainQuery(where,
+					whereArgs);
+			TestCase.assertFalse(indexedPlan.isScanned(attributesTable));
+			TestCase.assertTrue(indexedPlan.getIndexes()
+					.contains(recommendation.getIndexName()));
+			TestCase.assertFalse(indexedPlan.hasRecommendations());
+
+			QueryPlan allPlan = attributesDao.explainQuery(null, null);
+			TestCase.assertTrue(allPlan.isScanned(attributesTable));
+			TestCase.assertFalse(allPlan.hasRecommendations());
+			TestCase.assertFalse(allPlan.hasTempBTrees());
+		}
+
+	}
+
+	/**
+	 * Test feature index query plans joined with the index table ids
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testFeatureIndex() throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			FeatureColumn column = null;
+			for (FeatureColumn featureColumn : featureDao.getTable()
+					.getColumns()) {
+				if (!featureColumn.isPrimaryKey()
+						&& !featureColumn.isGeometry()) {
+					column = featureColumn;
+					break;
+				}
+			}
+			if (column == null) {
+				continue;
+			}
+
+			String where = CoreSQLUtils.quoteWrap(column.getName()) + " = ?";
+			String[] whereArgs = new String[] { "1" };
+
+			for (FeatureIndexType type : new FeatureIndexType[] {
+					FeatureIndexType.GEOPACKAGE, FeatureIndexType.RTREE }) {
+
+				FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+						geoPackage, featureDao);
+				featureIndexManager.setContinueOnError(false);
+				featureIndexManager.setIndexLocation(type);
+				featureIndexManager.index();
+
+				QueryPlan plan = featureIndexManager.explainQuery(where,
+						whereArgs);
+				TestCase.assertFalse(plan.getSteps().isEmpty());
+				for (QueryPlanStep step : plan.getSteps()) {
+					TestCase.assertNotNull(step.getDetail());
+				}
+				TestCase.assertEquals(plan.isScanned(featureTable),
+						plan.hasRecommendations());
+				for (QueryIndexRecommendation recommendation : plan
+						.getRecommendations()) {
+					TestCase.assertEquals(featureTable,
+							recommendation.getTable());
+					TestCase.assertTrue(recommendation.getColumns()
+							.contains(column.getName()));
+				}
+
+				featureIndexManager.deleteAllIndexes();
+				featureIndexManager.close();
+			}
+
+			FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+					geoPackage, featureDao);
+			QueryPlan plan = featureIndexManager.explainQuery(where,
+					whereArgs);
+			TestCase.assertTrue(plan.isScanned(featureTable));
+			TestCase.assertTrue(plan.hasRecommendations());
+			featureIndexManager.close();
+		}
+
+	}
+
+}
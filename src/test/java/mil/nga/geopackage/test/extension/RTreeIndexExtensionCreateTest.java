@@ -33,6 +33,32 @@ public class RTreeIndexExtensionCreateTest extends CreateGeoPackageTestCase {
 
 	}
 
+	/**
+	 * Test RTree bulk load
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testRTreeBulk() throws SQLException {
+
+		RTreeIndexExtensionUtils.testRTreeBulk(geoPackage);
+
+	}
+
+	/**
+	 * Test RTree bulk edit
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testRTreeBulkEdit() throws SQLException {
+
+		RTreeIndexExtensionUtils.testRTreeBulkEdit(geoPackage);
+
+	}
+
 	@Override
 	public boolean allowEmptyFeatures() {
 		return false;
@@ -1,18 +1,23 @@
 package mil.nga.geopackage.test.extension;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
 
 import junit.framework.TestCase;
 import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.db.SQLUtils;
 import mil.nga.geopackage.extension.Extensions;
+import mil.nga.geopackage.extension.RTreeIndexBulkEdit;
 import mil.nga.geopackage.extension.RTreeIndexExtension;
 import mil.nga.geopackage.extension.RTreeIndexTableDao;
 import mil.nga.geopackage.extension.RTreeIndexTableRow;
 import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
 import mil.nga.geopackage.features.user.FeatureRow;
 import mil.nga.geopackage.features.user.FeatureTable;
+import mil.nga.geopackage.test.io.TestGeoPackageProgress;
 import mil.nga.geopackage.user.custom.UserCustomResultSet;
 import mil.nga.sf.GeometryEnvelope;
 import mil.nga.sf.proj.Projection;
@@ -153,4 +158,212 @@ public class RTreeIndexExtensionUtils {
 
 	}
 
+	/**
+	 * Test RTree bulk load
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testRTreeBulk(GeoPackage geoPackage)
+			throws SQLException {
+
+		RTreeIndexExtension extension = new RTreeIndexExtension(geoPackage);
+
+		List<String> featureTables = geoPackage.getFeatureTables();
+		for (String featureTable : featureTables) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			FeatureTable table = featureDao.getTable();
+
+			if (extension.has(table)) {
+				extension.delete(table);
+			}
+
+			RTreeIndexTableDao tableDao = extension.getTableDao(featureDao);
+			TestCase.assertFalse(tableDao.has());
+
+			TestGeoPackageProgress progress = new TestGeoPackageProgress();
+			Extensions createdExtension = tableDao.createBulk(progress);
+			TestCase.assertNotNull(createdExtension);
+			TestCase.assertTrue(tableDao.has());
+			TestCase.assertNull(tableDao.createBulk(progress));
+
+			TestCase.assertEquals(featureDao.count(), tableDao.count());
+			TestCase.assertEquals(tableDao.count(), progress.getProgress());
+
+			UserCustomResultSet resultSet = tableDao.queryForAll();
+			while (resultSet.moveToNext()) {
+
+				RTreeIndexTableRow row = tableDao.getRow(resultSet);
+				FeatureRow featureRow = tableDao.getFeatureRow(row);
+				TestCase.assertNotNull(featureRow);
+
+				GeometryEnvelope envelope = featureRow.getGeometryEnvelope();
+				TestCase.assertNotNull(envelope);
+				TestCase.assertTrue(envelope.getMinX() >= row.getMinX());
+				TestCase.assertTrue(envelope.getMaxX() <= row.getMaxX());
+				TestCase.assertTrue(envelope.getMinY() >= row.getMinY());
+				TestCase.assertTrue(envelope.getMaxY() <= row.getMaxY());
+
+				TestCase.assertTrue(tableDao.count(envelope) > 0);
+			}
+			resultSet.close();
+
+			// Triggers created after the bulk load maintain the index
+			FeatureRow newRow = featureDao.queryForIdRow(firstId(featureDao));
+			newRow.resetId();
+			long id = featureDao.create(newRow);
+			TestCase.assertEquals(featureDao.count(), tableDao.count());
+			TestCase.assertNotNull(tableDao.queryForIdRow(id));
+			TestCase.assertEquals(1, featureDao.delete(newRow));
+			TestCase.assertEquals(featureDao.count(), tableDao.count());
+
+		}
+	}
+
+	/**
+	 * Test RTree bulk edit sessions applying changes by an update of the
+	 * changed ids and by a rebuild
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testRTreeBulkEdit(GeoPackage geoPackage)
+			throws SQLException {
+
+		RTreeIndexExtension extension = new RTreeIndexExtension(geoPackage);
+
+		List<String> featureTables = geoPackage.getFeatureTables();
+		for (String featureTable : featureTables) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			RTreeIndexTableDao tableDao = extension.getTableDao(featureDao);
+			if (!tableDao.has()) {
+				tableDao.createBulk(null);
+			}
+			TestCase.assertEquals(featureDao.count(), tableDao.count());
+
+			// Update of the changed ids
+			RTreeIndexBulkEdit bulkEdit = tableDao.beginBulkEdit();
+			bulkEdit.setRebuildRatio(1.1);
+			long id;
+			try {
+				FeatureRow newRow = featureDao
+						.queryForIdRow(firstId(featureDao));
+				newRow.resetId();
+				id = featureDao.create(newRow);
+				TestCase.assertNull(tableDao.queryForIdRow(id));
+				TestCase.assertEquals(1, bulkEdit.getChangeCount());
+			} finally {
+				bulkEdit.end();
+			}
+			TestCase.assertFalse(bulkEdit.isActive());
+			TestCase.assertFalse(bulkEdit.isRebuilt());
+			TestCase.assertEquals(1, bulkEdit.getChangeCount());
+			TestCase.assertNotNull(tableDao.queryForIdRow(id));
+			TestCase.assertEquals(featureDao.count(), tableDao.count());
+
+			// Rebuild
+			bulkEdit = tableDao.beginBulkEdit();
+			bulkEdit.setRebuildRatio(0);
+			try {
+				TestCase.assertEquals(1, featureDao.deleteById(id));
+			} finally {
+				bulkEdit.end();
+			}
+			TestCase.assertTrue(bulkEdit.isRebuilt());
+			TestCase.assertNull(tableDao.queryForIdRow(id));
+			TestCase.assertEquals(featureDao.count(), tableDao.count());
+
+			// Restored triggers maintain the index
+			FeatureRow newRow = featureDao.queryForIdRow(firstId(featureDao));
+			newRow.resetId();
+			id = featureDao.create(newRow);
+			TestCase.assertNotNull(tableDao.queryForIdRow(id));
+			TestCase.assertEquals(1, featureDao.deleteById(id));
+			TestCase.assertEquals(featureDao.count(), tableDao.count());
+
+			// Triggers are restored when the edits fail
+			bulkEdit = tableDao.beginBulkEdit();
+			try {
+				featureDao.deleteById(firstId(featureDao));
+				throw new IllegalStateException("Failed edit");
+			} catch (IllegalStateException e) {
+				// expected
+			} finally {
+				bulkEdit.end();
+			}
+			TestCase.assertEquals(featureDao.count(), tableDao.count());
+			newRow.resetId();
+			id = featureDao.create(newRow);
+			TestCase.assertNotNull(tableDao.queryForIdRow(id));
+			TestCase.assertEquals(featureDao.count(), tableDao.count());
+
+			// Sessions join a caller transaction, rolled back with it
+			Connection connection = geoPackage.getConnection().getConnection();
+			int count = featureDao.count();
+			boolean autoCommit = SQLUtils.beginTransaction(connection);
+			try {
+				bulkEdit = tableDao.beginBulkEdit();
+				bulkEdit.setRebuildRatio(1.1);
+				try {
+					newRow.resetId();
+					id = featureDao.create(newRow);
+				} finally {
+					bulkEdit.end();
+				}
+				TestCase.assertNotNull(tableDao.queryForIdRow(id));
+				TestCase.assertEquals(count + 1, tableDao.count());
+			} finally {
+				SQLUtils.endTransaction(connection, false, autoCommit);
+			}
+			TestCase.assertEquals(count, featureDao.count());
+			TestCase.assertNull(tableDao.queryForIdRow(id));
+			TestCase.assertEquals(count, tableDao.count());
+
+			// Committed with the caller transaction
+			autoCommit = SQLUtils.beginTransaction(connection);
+			try {
+				bulkEdit = tableDao.beginBulkEdit();
+				bulkEdit.setRebuildRatio(0);
+				try {
+					newRow.resetId();
+					id = featureDao.create(newRow);
+				} finally {
+					bulkEdit.end();
+				}
+				TestCase.assertTrue(bulkEdit.isRebuilt());
+			} finally {
+				SQLUtils.endTransaction(connection, true, autoCommit);
+			}
+			TestCase.assertNotNull(tableDao.queryForIdRow(id));
+			TestCase.assertEquals(count + 1, tableDao.count());
+			TestCase.assertEquals(1, featureDao.deleteById(id));
+			TestCase.assertNull(tableDao.queryForIdRow(id));
+			TestCase.assertEquals(count, tableDao.count());
+
+		}
+	}
+
+	/**
+	 * Get the first feature id
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @return feature id
+	 */
+	private static long firstId(FeatureDao featureDao) {
+		FeatureResultSet resultSet = featureDao.queryForAll();
+		try {
+			resultSet.moveToNext();
+			return resultSet.getId();
+		} finally {
+			resultSet.close();
+		}
+	}
+
 }
@@ -0,0 +1,360 @@
+package mil.nga.geopackage.test.extension.changes;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import junit.framework.TestCase;
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.core.srs.SpatialReferenceSystem;
+import mil.nga.geopackage.db.GeoPackageDataType;
+import mil.nga.geopackage.db.SQLUtils;
+import mil.nga.geopackage.extension.RTreeIndexExtension;
+import mil.nga.geopackage.extension.changes.Change;
+import mil.nga.geopackage.extension.changes.ChangeOperation;
+import mil.nga.geopackage.extension.changes.ChangeReader;
+import mil.nga.geopackage.extension.changes.ChangeTrackingExtension;
+import mil.nga.geopackage.features.columns.GeometryColumns;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.manager.GeoPackageManager;
+import mil.nga.geopackage.schema.TableColumnKey;
+import mil.nga.geopackage.test.CreateGeoPackageTestCase;
+import mil.nga.sf.GeometryType;
+import mil.nga.sf.Point;
+import mil.nga.sf.proj.ProjectionConstants;
+
+import org.junit.Test;
+
+/**
+ * Test change tracking and incremental sync between GeoPackages
+ *
+ * @author osbornb
+ */
+public class ChangeTrackingExtensionTest extends CreateGeoPackageTestCase {
+
+	/**
+	 * Test table
+	 */
+	private static final String TABLE = "sync_test";
+
+	/**
+	 * Test feature table
+	 */
+	private static final String FEATURE_TABLE = "sync_features";
+
+	/**
+	 * Test feature table geometry column
+	 */
+	private static final String GEOMETRY_COLUMN = "geom";
+
+	/**
+	 * Test feature table RTree
+	 */
+	private static final String RTREE_TABLE = "rtree_" + FEATURE_TABLE + "_"
+			+ GEOMETRY_COLUMN;
+
+	/**
+	 * Test syncing changes after versions to another GeoPackage
+	 */
+	@Test
+	public void testSync() {
+
+		File targetFile = new File(folder.getRoot(), "sync_target.gpkg");
+		TestCase.assertTrue(GeoPackageManager.create(targetFile));
+		GeoPackage target = GeoPackageManager.open(targetFile);
+		try {
+
+			Connection source = geoPackage.getConnection().getConnection();
+			createTable(source);
+			createTable(target.getConnection().getConnection());
+
+			ChangeTrackingExtension sourceChanges = new ChangeTrackingExtension(
+					geoPackage);
+			sourceChanges.setBatchSize(2);
+			TestCase.assertFalse(sourceChanges.isTracked(TABLE));
+			TestCase.assertEquals(0, sourceChanges.getVersion());
+			sourceChanges.track(TABLE);
+			TestCase.assertTrue(sourceChanges.isTracked(TABLE));
+			TestCase.assertEquals(1, sourceChanges.getTrackedTables().size());
+
+			ChangeTrackingExtension targetChanges = new ChangeTrackingExtension(
+					target);
+			targetChanges.setBatchSize(2);
+
+			for (int i = 1; i <= 5; i++) {
+				SQLUtils.execSQL(source, "INSERT INTO " + TABLE
+						+ " (name, value) VALUES ('row " + i + "', " + i
+						+ ".5)");
+			}
+			SQLUtils.execSQL(source,
+					"UPDATE " + TABLE + " SET value = 10 WHERE id = 2");
+			SQLUtils.execSQL(source, "DELETE FROM " + TABLE + " WHERE id = 3");
+
+			// Latest change per row: 4 upserts and 1 delete
+			TestCase.assertEquals(5, sourceChanges.countChanges(0));
+			long version = sync(sourceChanges, targetChanges, 0, 5);
+			TestCase.assertEquals(sourceChanges.getVersion(), version);
+			assertRows(geoPackage, target);
+
+			// Only the changes after the synced version are read
+			SQLUtils.execSQL(source,
+					"UPDATE " + TABLE + " SET name = 'a' WHERE id = 1");
+			SQLUtils.execSQL(source,
+					"UPDATE " + TABLE + " SET name = 'b' WHERE id = 1");
+			SQLUtils.execSQL(source, "INSERT INTO " + TABLE
+					+ " (name, value) VALUES ('row 6', 6)");
+			TestCase.assertEquals(2, sourceChanges.countChanges(version));
+			version = sync(sourceChanges, targetChanges, version, 2);
+			assertRows(geoPackage, target);
+
+			// Id changes delete the previous id
+			SQLUtils.execSQL(source,
+					"UPDATE " + TABLE + " SET id = 100 WHERE id = 4");
+			ChangeReader reader = sourceChanges.readChanges(version);
+			try {
+				TestCase.assertTrue(reader.hasNext());
+				Change change = reader.next();
+				TestCase.assertEquals(ChangeOperation.DELETE,
+						change.getOperation());
+				TestCase.assertEquals(4, change.getId());
+				TestCase.assertNull(change.getValues());
+				change = reader.next();
+				TestCase.assertEquals(ChangeOperation.UPDATE,
+						change.getOperation());
+				TestCase.assertEquals(100, change.getId());
+				TestCase.assertEquals("row 4", change.getValues().get("name"));
+				TestCase.assertFalse(reader.hasNext());
+			} finally {
+				reader.close();
+			}
+			version = sync(sourceChanges, targetChanges, version, 2);
+			assertRows(geoPackage, target);
+
+			// Nothing after the latest version
+			TestCase.assertEquals(version,
+					sync(sourceChanges, targetChanges, version, 0));
+
+			// A caller transaction is joined without batch commits, rolling
+			// back every applied change
+			for (int i = 7; i <= 9; i++) {
+				SQLUtils.execSQL(source, "INSERT INTO " + TABLE
+						+ " (name, value) VALUES ('row " + i + "', " + i + ")");
+			}
+			Connection targetConnection = target.getConnection()
+					.getConnection();
+			int targetCount = SQLUtils.count(targetConnection, TABLE, null,
+					null);
+			boolean autoCommit = SQLUtils.beginTransaction(targetConnection);
+			sync(sourceChanges, targetChanges, version, 3);
+			SQLUtils.endTransaction(targetConnection, false, autoCommit);
+			TestCase.assertEquals(targetCount,
+					SQLUtils.count(targetConnection, TABLE, null, null));
+			version = sync(sourceChanges, targetChanges, version, 3);
+			assertRows(geoPackage, target);
+
+			// Compacting removes synced deletes
+			TestCase.assertEquals(2, sourceChanges.compact(version));
+			TestCase.assertEquals(8, sourceChanges.countChanges(0));
+
+			sourceChanges.untrack(TABLE);
+			TestCase.assertFalse(sourceChanges.isTracked(TABLE));
+			SQLUtils.execSQL(source, "DELETE FROM " + TABLE);
+			TestCase.assertEquals(0, sourceChanges.countChanges(0));
+
+		} finally {
+			target.close();
+		}
+
+	}
+
+	/**
+	 * Test applying changes to an RTree indexed feature table updates the
+	 * RTree index and logs updates in the target change log
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testSyncRTree() throws SQLException {
+
+		File targetFile = new File(folder.getRoot(), "sync_rtree.gpkg");
+		TestCase.assertTrue(GeoPackageManager.create(targetFile));
+		GeoPackage target = GeoPackageManager.open(targetFile);
+		try {
+
+			FeatureDao sourceDao = createFeatureTable(geoPackage);
+			createFeatureTable(target);
+			Connection targetConnection = target.getConnection()
+					.getConnection();
+
+			ChangeTrackingExtension sourceChanges = new ChangeTrackingExtension(
+					geoPackage);
+			sourceChanges.track(FEATURE_TABLE);
+			ChangeTrackingExtension targetChanges = new ChangeTrackingExtension(
+					target);
+			targetChanges.track(FEATURE_TABLE);
+
+			for (int i = 1; i <= 3; i++) {
+				FeatureRow row = sourceDao.newRow();
+				row.setGeometry(geometry(i, i));
+				sourceDao.insert(row);
+			}
+
+			long version = sync(sourceChanges, targetChanges, 0, 3);
+			TestCase.assertEquals(3,
+					SQLUtils.count(targetConnection, RTREE_TABLE, null, null));
+			TestCase.assertEquals(3, targetChanges.countChanges(0));
+			long targetVersion = targetChanges.getVersion();
+
+			// Move a geometry and set a geometry to null
+			FeatureRow moved = sourceDao.queryForIdRow(1);
+			moved.setGeometry(geometry(10, 20));
+			sourceDao.update(moved);
+			FeatureRow nulled = sourceDao.queryForIdRow(2);
+			nulled.setGeometry(null);
+			sourceDao.update(nulled);
+
+			sync(sourceChanges, targetChanges, version, 2);
+			TestCase.assertEquals(3, SQLUtils.count(targetConnection,
+					FEATURE_TABLE, null, null));
+			TestCase.assertEquals(2,
+					SQLUtils.count(targetConnection, RTREE_TABLE, null, null));
+			TestCase.assertEquals(0, SQLUtils.count(targetConnection,
+					RTREE_TABLE, "id = ?", new String[] { "2" }));
+			TestCase.assertEquals(10.0,
+					((Number) SQLUtils.querySingleResult(targetConnection,
+							"SELECT minx FROM " + RTREE_TABLE + " WHERE id = ?",
+							new String[] { "1" }, 0, GeoPackageDataType.DOUBLE))
+									.doubleValue(),
+					0.0);
+			TestCase.assertEquals(20.0,
+					((Number) SQLUtils.querySingleResult(targetConnection,
+							"SELECT miny FROM " + RTREE_TABLE + " WHERE id = ?",
+							new String[] { "1" }, 0, GeoPackageDataType.DOUBLE))
+									.doubleValue(),
+					0.0);
+
+			// Applied changes to existing rows are logged as updates
+			ChangeReader reader = targetChanges.readChanges(targetVersion);
+			try {
+				int updates = 0;
+				while (reader.hasNext()) {
+					Change change = reader.next();
+					TestCase.assertEquals(ChangeOperation.UPDATE,
+							change.getOperation());
+					TestCase.assertTrue(
+							change.getId() == 1 || change.getId() == 2);
+					updates++;
+				}
+				TestCase.assertEquals(2, updates);
+			} finally {
+				reader.close();
+			}
+
+		} finally {
+			target.close();
+		}
+
+	}
+
+	/**
+	 * Sync the changes after the version
+	 *
+	 * @param sourceChanges
+	 *            source change tracking
+	 * @param targetChanges
+	 *            target change tracking
+	 * @param version
+	 *            version
+	 * @param expected
+	 *            expected number of changes
+	 * @return synced version
+	 */
+	private static long sync(ChangeTrackingExtension sourceChanges,
+			ChangeTrackingExtension targetChanges, long version, int expected) {
+		ChangeReader reader = sourceChanges.readChanges(version);
+		try {
+			TestCase.assertEquals(expected, targetChanges.applyChanges(reader));
+			return Math.max(version, reader.getVersion());
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Create the test table
+	 *
+	 * @param connection
+	 *            connection
+	 */
+	private static void createTable(Connection connection) {
+		SQLUtils.execSQL(connection, "CREATE TABLE " + TABLE
+				+ " (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, value REAL)");
+	}
+
+	/**
+	 * Create the RTree indexed test feature table
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @return feature DAO
+	 * @throws SQLException
+	 *             upon error
+	 */
+	private static FeatureDao createFeatureTable(GeoPackage geoPackage)
+			throws SQLException {
+		GeometryColumns geometryColumns = new GeometryColumns();
+		geometryColumns
+				.setId(new TableColumnKey(FEATURE_TABLE, GEOMETRY_COLUMN));
+		geometryColumns.setGeometryType(GeometryType.POINT);
+		geometryColumns.setZ((byte) 0);
+		geometryColumns.setM((byte) 0);
+		SpatialReferenceSystem srs = geoPackage.getSpatialReferenceSystemDao()
+				.getOrCreateCode(ProjectionConstants.AUTHORITY_EPSG,
+						ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM);
+		geometryColumns = geoPackage.createFeatureTableWithMetadata(
+				geometryColumns, new BoundingBox(-180, -90, 180, 90),
+				srs.getId());
+		FeatureDao featureDao = geoPackage.getFeatureDao(geometryColumns);
+		new RTreeIndexExtension(geoPackage).create(featureDao.getTable());
+		return featureDao;
+	}
+
+	/**
+	 * Create point geometry data
+	 *
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 * @return geometry data
+	 */
+	private static GeoPackageGeometryData geometry(double x, double y) {
+		GeoPackageGeometryData geometryData = new GeoPackageGeometryData(
+				ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM);
+		geometryData.setGeometry(new Point(x, y));
+		return geometryData;
+	}
+
+	/**
+	 * Assert the test table rows are equal
+	 *
+	 * @param source
+	 *            source GeoPackage
+	 * @param target
+	 *            target GeoPackage
+	 */
+	private static void assertRows(GeoPackage source, GeoPackage target) {
+		String sql = "SELECT id, name, value FROM " + TABLE + " ORDER BY id";
+		List<List<Object>> sourceRows = SQLUtils.queryResults(
+				source.getConnection().getConnection(), sql, null, null, null);
+		List<List<Object>> targetRows = SQLUtils.queryResults(
+				target.getConnection().getConnection(), sql, null, null, null);
+		TestCase.assertEquals(sourceRows, targetRows);
+	}
+
+}
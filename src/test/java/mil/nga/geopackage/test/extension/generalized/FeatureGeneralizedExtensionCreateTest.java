@@ -0,0 +1,36 @@
+package mil.nga.geopackage.test.extension.generalized;
+
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+import mil.nga.geopackage.test.CreateGeoPackageTestCase;
+
+/**
+ * Test Feature Generalized Extension from a created database
+ * 
+ * @author osbornb
+ */
+public class FeatureGeneralizedExtensionCreateTest
+		extends CreateGeoPackageTestCase {
+
+	/**
+	 * Constructor
+	 */
+	public FeatureGeneralizedExtensionCreateTest() {
+
+	}
+
+	/**
+	 * Test generalized geometries
+	 * 
+	 * @throws SQLException
+	 */
+	@Test
+	public void testGeneralized() throws SQLException {
+
+		FeatureGeneralizedExtensionUtils.testGeneralized(geoPackage);
+
+	}
+
+}
@@ -0,0 +1,150 @@
+package mil.nga.geopackage.test.extension.generalized;
+
+import java.awt.image.BufferedImage;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.extension.generalized.FeatureGeneralizedExtension;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeoPackageGeometryHeader;
+import mil.nga.geopackage.tiles.features.DefaultFeatureTiles;
+import mil.nga.geopackage.tiles.features.FeatureTiles;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryType;
+
+/**
+ * Feature Generalized Extension Utility test methods
+ * 
+ * @author osbornb
+ */
+public class FeatureGeneralizedExtensionUtils {
+
+	/**
+	 * Test generalized geometries
+	 * 
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testGeneralized(GeoPackage geoPackage)
+			throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			FeatureGeneralizedExtension extension = new FeatureGeneralizedExtension(
+					geoPackage, featureDao);
+			TestCase.assertFalse(extension.has());
+			TestCase.assertNull(extension.getZoomBand(0));
+
+			long count = extension.build(6, 2);
+			List<Integer> zoomBands = extension.getZoomBands();
+			if (count == 0) {
+				TestCase.assertFalse(extension.has());
+				TestCase.assertTrue(zoomBands.isEmpty());
+				continue;
+			}
+
+			TestCase.assertTrue(extension.has());
+			TestCase.assertFalse(zoomBands.isEmpty());
+			TestCase.assertTrue(zoomBands.size() <= 2);
+			for (int zoom = 0; zoom <= 7; zoom++) {
+				Integer zoomBand = extension.getZoomBand(zoom);
+				if (zoomBand != null) {
+					TestCase.assertTrue(zoomBand >= zoom);
+					TestCase.assertTrue(zoomBands.contains(zoomBand));
+				}
+			}
+			TestCase.assertNull(extension.getZoomBand(7));
+
+			long generalized = 0;
+			List<Long> ids = new ArrayList<>();
+			FeatureResultSet resultSet = featureDao.query();
+			try {
+				while (resultSet.moveToNext()) {
+					FeatureRow row = resultSet.getRow();
+					ids.add(row.getId());
+					for (int zoomBand : zoomBands) {
+						GeoPackageGeometryData geometryData = extension
+								.getGeometryData(row.getId(), zoomBand);
+						if (geometryData != null) {
+							generalized++;
+							Geometry geometry = geometryData.getGeometry();
+							TestCase.assertNotNull(geometry);
+							TestCase.assertFalse(geometry.isEmpty());
+							TestCase.assertEquals(
+									row.getGeometry().getGeometry()
+											.getGeometryType(),
+									geometry.getGeometryType());
+							TestCase.assertTrue(geometry
+									.getGeometryType() != GeometryType.POINT);
+						}
+					}
+				}
+			} finally {
+				resultSet.close();
+			}
+			TestCase.assertEquals(count, generalized);
+
+			// Batch queries match the single geometry queries
+			long batched = 0;
+			for (int zoomBand : zoomBands) {
+				Map<Long, byte[]> geometries = extension.getGeometryBytes(ids,
+						zoomBand);
+				for (Map.Entry<Long, byte[]> geometry : geometries
+						.entrySet()) {
+					TestCase.assertNotNull(GeoPackageGeometryHeader
+							.readEnvelope(geometry.getValue()));
+					GeoPackageGeometryData geometryData = extension
+							.getGeometryData(geometry.getKey(), zoomBand);
+					TestCase.assertNotNull(geometryData);
+					TestCase.assertTrue(Arrays.equals(geometryData.getBytes(),
+							geometry.getValue()));
+				}
+				batched += geometries.size();
+			}
+			TestCase.assertEquals(count, batched);
+
+			// Indexed tiles drawn from generalized geometries
+			FeatureTiles featureTiles = new DefaultFeatureTiles(geoPackage,
+					featureDao);
+			TestCase.assertNotNull(featureTiles.getGeneralizedGeometries());
+			featureTiles.getFeatureIndex().index();
+			int drawn = 0;
+			int fullDrawn = 0;
+			for (int zoom = 0; zoom <= 2; zoom++) {
+				int tiles = 1 << zoom;
+				for (int x = 0; x < tiles; x++) {
+					for (int y = 0; y < tiles; y++) {
+						featureTiles.setGeneralizedGeometries(extension);
+						BufferedImage image = featureTiles.drawTile(x, y, zoom);
+						if (image != null) {
+							drawn++;
+						}
+						featureTiles.setGeneralizedGeometries(null);
+						image = featureTiles.drawTile(x, y, zoom);
+						if (image != null) {
+							fullDrawn++;
+						}
+					}
+				}
+			}
+			TestCase.assertEquals(fullDrawn > 0, drawn > 0);
+			featureTiles.getFeatureIndex().deleteIndex();
+
+			extension.delete();
+			TestCase.assertFalse(extension.has());
+		}
+
+	}
+
+}
@@ -36,6 +36,21 @@ public class FeatureTableIndexCreateTest extends CreateGeoPackageTestCase {
 
 	}
 
+	/**
+	 * Test parallel index
+	 * 
+	 * @throws SQLException
+	 *             upon error
+	 * @throws IOException
+	 *             upon error
+	 */
+	@Test
+	public void testIndexParallel() throws SQLException, IOException {
+
+		FeatureTableIndexUtils.testIndexParallel(geoPackage);
+
+	}
+
 	/**
 	 * Test delete all table indices
 	 * 
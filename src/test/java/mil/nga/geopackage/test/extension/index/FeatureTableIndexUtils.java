@@ -298,6 +298,67 @@ public class FeatureTableIndexUtils {
 
 	}
 
+	/**
+	 * Test parallel index
+	 * 
+	 * @param geoPackage
+	 * @throws SQLException
+	 * @throws IOException
+	 */
+	public static void testIndexParallel(GeoPackage geoPackage)
+			throws SQLException, IOException {
+
+		List<String> featureTables = geoPackage.getFeatureTables();
+		for (String featureTable : featureTables) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			FeatureTableIndex featureTableIndex = new FeatureTableIndex(
+					geoPackage, featureDao);
+
+			if (featureTableIndex.isIndexed()) {
+				featureTableIndex.deleteIndex();
+			}
+
+			// Index on the calling thread for the expected results
+			int expectedCount = featureTableIndex.index();
+			long expectedIndexCount = featureTableIndex.count();
+			featureTableIndex.deleteIndex();
+			TestCase.assertFalse(featureTableIndex.isIndexed());
+
+			// Parallel index with small batches and transactions
+			featureTableIndex.setIndexThreads(4);
+			featureTableIndex.setBatchSize(7);
+			featureTableIndex.setTransactionLimit(20);
+			TestGeoPackageProgress progress = new TestGeoPackageProgress();
+			featureTableIndex.setProgress(progress);
+			int indexCount = featureTableIndex.index();
+			TestUtils.validateGeoPackage(geoPackage);
+
+			TestCase.assertEquals(expectedCount, indexCount);
+			TestCase.assertEquals(featureDao.count(), progress.getProgress());
+			TestCase.assertTrue(featureTableIndex.isIndexed());
+			TestCase.assertNotNull(featureTableIndex.getLastIndexed());
+			TestCase.assertEquals(expectedIndexCount, featureTableIndex.count());
+
+			int resultCount = 0;
+			CloseableIterator<GeometryIndex> featureTableResults = featureTableIndex
+					.query();
+			while (featureTableResults.hasNext()) {
+				GeometryIndex geometryIndex = featureTableResults.next();
+				validateGeometryIndex(featureTableIndex, geometryIndex);
+				resultCount++;
+			}
+			featureTableResults.close();
+			TestCase.assertEquals(expectedCount, resultCount);
+
+			// Forced parallel re-index
+			TestCase.assertEquals(expectedCount, featureTableIndex.index(true));
+			TestCase.assertEquals(expectedIndexCount, featureTableIndex.count());
+
+		}
+
+	}
+
 	/**
 	 * Test table index delete all
 	 * 
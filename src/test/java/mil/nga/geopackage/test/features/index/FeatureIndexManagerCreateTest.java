@@ -41,6 +41,175 @@ public class FeatureIndexManagerCreateTest extends CreateGeoPackageTestCase {
 
 	}
 
+	/**
+	 * Test spatial predicate queries
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testPredicates() throws SQLException {
+
+		FeatureIndexManagerUtils.testPredicates(geoPackage);
+
+	}
+
+	/**
+	 * Test nearest neighbor queries
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testNearest() throws SQLException {
+
+		FeatureIndexManagerUtils.testNearest(geoPackage);
+
+	}
+
+	/**
+	 * Test spatial joins
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testJoin() throws SQLException {
+
+		FeatureIndexManagerUtils.testJoin(geoPackage);
+
+	}
+
+	/**
+	 * Test density grid aggregation
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testDensity() throws SQLException {
+
+		FeatureIndexManagerUtils.testDensity(geoPackage);
+
+	}
+
+	/**
+	 * Test persisted feature tile counts
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testTileCounts() throws SQLException {
+
+		FeatureIndexManagerUtils.testTileCounts(geoPackage);
+
+	}
+
+	/**
+	 * Test feature tile counts maintained with only an RTree index
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testTileCountsRTree() throws SQLException {
+
+		FeatureIndexManagerUtils.testTileCountsRTree(geoPackage);
+
+	}
+
+	/**
+	 * Test point clusters
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testPointClusters() throws SQLException {
+
+		FeatureIndexManagerUtils.testPointClusters(geoPackage);
+
+	}
+
+	/**
+	 * Test feature id sets
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testIdSets() throws SQLException {
+
+		FeatureIndexManagerUtils.testIdSets(geoPackage);
+
+	}
+
+	/**
+	 * Test parallel manual feature queries
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testManualQuery() throws SQLException {
+
+		FeatureIndexManagerUtils.testManualQuery(geoPackage);
+
+	}
+
+	/**
+	 * Test bounds from the feature index aggregates
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testBoundingBoxAggregates() throws SQLException {
+
+		FeatureIndexManagerUtils.testBoundingBoxAggregates(geoPackage);
+
+	}
+
+	/**
+	 * Test compiled field value filters
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testCompiledFilters() throws SQLException {
+
+		FeatureIndexManagerUtils.testCompiledFilters(geoPackage);
+
+	}
+
+	/**
+	 * Test temporal index queries
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testTemporal() throws SQLException {
+
+		FeatureIndexManagerUtils.testTemporal(geoPackage);
+
+	}
+
+	/**
+	 * Test feature tile key queries
+	 *
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testTileKeys() throws SQLException {
+
+		FeatureIndexManagerUtils.testTileKeys(geoPackage);
+
+	}
+
 	/**
 	 * Test large index
 	 *
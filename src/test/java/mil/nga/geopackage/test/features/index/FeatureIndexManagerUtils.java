@@ -3,36 +3,67 @@ package mil.nga.geopackage.test.features.index;
 import java.io.File;
 import java.sql.SQLException;
 import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
 
 import junit.framework.TestCase;
 import mil.nga.geopackage.BoundingBox;
 import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.GeoPackageException;
 import mil.nga.geopackage.core.srs.SpatialReferenceSystem;
 import mil.nga.geopackage.db.GeoPackageDataType;
+import mil.nga.geopackage.extension.index.FeatureTileCountExtension;
+import mil.nga.geopackage.extension.index.FeatureTileKeyExtension;
 import mil.nga.geopackage.features.columns.GeometryColumns;
+import mil.nga.geopackage.features.index.FeatureDensityGrid;
+import mil.nga.geopackage.features.index.FeatureDensityMode;
+import mil.nga.geopackage.features.index.FeatureDistance;
+import mil.nga.geopackage.features.index.FeatureIdSet;
+import mil.nga.geopackage.features.index.FeatureIndexIdResults;
+import mil.nga.geopackage.features.index.FeatureIndexJoin;
+import mil.nga.geopackage.features.index.FeatureIndexJoinResults;
 import mil.nga.geopackage.features.index.FeatureIndexManager;
+import mil.nga.geopackage.features.index.FeatureIndexNearestResults;
+import mil.nga.geopackage.features.index.FeatureIndexPredicateResults;
 import mil.nga.geopackage.features.index.FeatureIndexResults;
 import mil.nga.geopackage.features.index.FeatureIndexType;
+import mil.nga.geopackage.features.index.FeatureJoinPair;
+import mil.nga.geopackage.features.index.FeaturePointCluster;
+import mil.nga.geopackage.features.index.FeaturePointClusters;
+import mil.nga.geopackage.features.index.MultipleFeatureIndexResults;
 import mil.nga.geopackage.features.user.FeatureColumn;
 import mil.nga.geopackage.features.user.FeatureDao;
 import mil.nga.geopackage.features.user.FeatureResultSet;
 import mil.nga.geopackage.features.user.FeatureRow;
 import mil.nga.geopackage.features.user.FeatureTable;
+import mil.nga.geopackage.features.user.ManualFeatureQuery;
 import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeometryPredicates;
+import mil.nga.geopackage.geom.SpatialPredicate;
 import mil.nga.geopackage.manager.GeoPackageManager;
 import mil.nga.geopackage.schema.TableColumnKey;
 import mil.nga.geopackage.test.GeoPackageTestUtils;
 import mil.nga.geopackage.test.TestUtils;
 import mil.nga.geopackage.test.io.TestGeoPackageProgress;
+import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
+import mil.nga.geopackage.tiles.TileGrid;
+import mil.nga.geopackage.user.CompiledFilter;
 import mil.nga.sf.GeometryEnvelope;
 import mil.nga.sf.GeometryType;
+import mil.nga.sf.LineString;
 import mil.nga.sf.Point;
+import mil.nga.sf.Polygon;
 import mil.nga.sf.proj.Projection;
 import mil.nga.sf.proj.ProjectionConstants;
 import mil.nga.sf.proj.ProjectionFactory;
@@ -571,6 +602,1526 @@ public class FeatureIndexManagerUtils {
 		}
 	}
 
+	/**
+	 * Test spatial predicate queries
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testPredicates(GeoPackage geoPackage)
+			throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			GeometryEnvelope envelope = null;
+			FeatureResultSet resultSet = featureDao.query();
+			while (resultSet.moveToNext()) {
+				GeometryEnvelope rowEnvelope = resultSet.getRow()
+						.getGeometryEnvelope();
+				if (envelope == null) {
+					envelope = rowEnvelope;
+				} else if (rowEnvelope != null) {
+					envelope = envelope.union(rowEnvelope);
+				}
+			}
+			resultSet.close();
+			if (envelope == null) {
+				continue;
+			}
+
+			// Triangle covering part of the features
+			double width = envelope.getMaxX() - envelope.getMinX();
+			LineString ring = new LineString();
+			ring.addPoint(new Point(envelope.getMinX(), envelope.getMinY()));
+			ring.addPoint(new Point(envelope.getMaxX() - width / 3.0,
+					envelope.getMinY()));
+			ring.addPoint(new Point(envelope.getMinX() + width / 2.0,
+					envelope.getMaxY()));
+			ring.addPoint(new Point(envelope.getMinX(), envelope.getMinY()));
+			Polygon polygon = new Polygon();
+			polygon.addRing(ring);
+
+			// Expected results from testing every feature
+			GeometryPredicates predicates = new GeometryPredicates(polygon);
+			Map<SpatialPredicate, Set<Long>> expected = new HashMap<>();
+			for (SpatialPredicate predicate : SpatialPredicate.values()) {
+				expected.put(predicate, new HashSet<Long>());
+			}
+			resultSet = featureDao.query();
+			while (resultSet.moveToNext()) {
+				FeatureRow featureRow = resultSet.getRow();
+				GeoPackageGeometryData geometryData = featureRow
+						.getGeometry();
+				if (geometryData != null
+						&& geometryData.getGeometry() != null) {
+					for (SpatialPredicate predicate : SpatialPredicate
+							.values()) {
+						if (predicates.test(predicate,
+								geometryData.getGeometry())) {
+							expected.get(predicate).add(featureRow.getId());
+						}
+					}
+				}
+			}
+			resultSet.close();
+
+			for (FeatureIndexType type : new FeatureIndexType[] {
+					FeatureIndexType.GEOPACKAGE, FeatureIndexType.RTREE,
+					FeatureIndexType.NONE }) {
+
+				FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+						geoPackage, featureDao);
+				featureIndexManager.setContinueOnError(false);
+				if (type == FeatureIndexType.NONE) {
+					featureIndexManager.deleteAllIndexes();
+				} else {
+					featureIndexManager.setIndexLocation(type);
+					featureIndexManager.index();
+					featureIndexManager.prioritizeQueryLocation(type);
+				}
+
+				for (int threads : new int[] { 1, 4 }) {
+					featureIndexManager.setPredicateThreads(threads);
+					for (SpatialPredicate predicate : SpatialPredicate
+							.values()) {
+
+						Set<Long> ids = new HashSet<>();
+						FeatureIndexResults results = featureIndexManager
+								.query(polygon, predicate);
+						for (FeatureRow featureRow : results) {
+							TestCase.assertTrue(ids.add(featureRow.getId()));
+							TestCase.assertNotNull(featureRow.getGeometry());
+						}
+						results.close();
+						TestCase.assertEquals(expected.get(predicate), ids);
+
+						TestCase.assertEquals(expected.get(predicate).size(),
+								featureIndexManager.count(polygon, predicate));
+
+						results = featureIndexManager.query(
+								new String[] { featureDao.getIdColumnName() },
+								polygon, predicate);
+						TestCase.assertEquals(expected.get(predicate).size(),
+								results.count());
+						ids.clear();
+						for (long id : results.ids()) {
+							ids.add(id);
+						}
+						results.close();
+						TestCase.assertEquals(expected.get(predicate), ids);
+					}
+				}
+
+				// Open results keep refining after the manager executor is
+				// replaced and the manager is closed
+				featureIndexManager.setPredicateThreads(4);
+				FeatureIndexResults openResults = featureIndexManager.query(
+						new String[] { featureDao.getIdColumnName() }, polygon,
+						SpatialPredicate.INTERSECTS);
+				featureIndexManager.setPredicateThreads(2);
+				featureIndexManager.close();
+				Set<Long> openIds = new HashSet<>();
+				for (long id : openResults.ids()) {
+					openIds.add(id);
+				}
+				openResults.close();
+				TestCase.assertEquals(
+						expected.get(SpatialPredicate.INTERSECTS), openIds);
+			}
+
+			// Query geometry in the feature projection, refined on a caller
+			// owned executor which is not shut down with the manager
+			ExecutorService executor = FeatureIndexPredicateResults
+					.createExecutor(2);
+			FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+					geoPackage, featureDao);
+			featureIndexManager.setPredicateThreads(2);
+			featureIndexManager.setPredicateExecutor(executor);
+			Set<Long> ids = new HashSet<>();
+			FeatureIndexResults results = featureIndexManager.query(polygon,
+					featureDao.getProjection(), SpatialPredicate.INTERSECTS);
+			for (long id : results.ids()) {
+				ids.add(id);
+			}
+			results.close();
+			TestCase.assertEquals(expected.get(SpatialPredicate.INTERSECTS),
+					ids);
+			featureIndexManager.close();
+			TestCase.assertFalse(executor.isShutdown());
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test nearest neighbor queries
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testNearest(GeoPackage geoPackage) throws SQLException {
+
+		final int k = 5;
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			// Expected distances from testing every feature
+			Point point = null;
+			List<Double> expected = new ArrayList<>();
+			FeatureResultSet resultSet = featureDao.query();
+			while (resultSet.moveToNext()) {
+				FeatureRow featureRow = resultSet.getRow();
+				GeoPackageGeometryData geometryData = featureRow
+						.getGeometry();
+				if (geometryData != null && geometryData.getGeometry() != null
+						&& !geometryData.getGeometry().isEmpty()) {
+					if (point == null) {
+						GeometryEnvelope envelope = featureRow
+								.getGeometryEnvelope();
+						point = new Point(
+								(envelope.getMinX() + envelope.getMaxX()) / 2.0,
+								envelope.getMaxY() + 1.0);
+					}
+					expected.add(GeometryPredicates
+							.distance(geometryData.getGeometry(), point.getX(),
+									point.getY()));
+				}
+			}
+			resultSet.close();
+			if (point == null) {
+				continue;
+			}
+			Collections.sort(expected);
+			int expectedCount = Math.min(k, expected.size());
+			double maxDistance = expected.get(expectedCount - 1) / 2.0;
+			int expectedMaxCount = 0;
+			for (int i = 0; i < expectedCount; i++) {
+				if (expected.get(i) <= maxDistance) {
+					expectedMaxCount++;
+				}
+			}
+
+			for (FeatureIndexType type : new FeatureIndexType[] {
+					FeatureIndexType.GEOPACKAGE, FeatureIndexType.RTREE,
+					FeatureIndexType.NONE }) {
+
+				FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+						geoPackage, featureDao);
+				featureIndexManager.setContinueOnError(false);
+				if (type == FeatureIndexType.NONE) {
+					featureIndexManager.deleteAllIndexes();
+				} else {
+					featureIndexManager.setIndexLocation(type);
+					featureIndexManager.index();
+					featureIndexManager.prioritizeQueryLocation(type);
+				}
+
+				FeatureIndexNearestResults results = featureIndexManager
+						.queryNearest(point, k);
+				TestCase.assertEquals(expectedCount, results.count());
+				int index = 0;
+				for (FeatureRow featureRow : results) {
+					TestCase.assertNotNull(featureRow.getGeometry());
+					double distance = results.getDistance(index);
+					TestCase.assertEquals(expected.get(index), distance,
+							0.0000001);
+					TestCase.assertEquals(distance,
+							GeometryPredicates.distance(
+									featureRow.getGeometry().getGeometry(),
+									point.getX(), point.getY()),
+							0.0000001);
+					index++;
+				}
+				results.close();
+				TestCase.assertEquals(expectedCount, index);
+
+				results = featureIndexManager.queryNearest(
+						new String[] { featureDao.getIdColumnName() }, point,
+						k, maxDistance);
+				TestCase.assertEquals(expectedMaxCount, results.count());
+				Set<Long> ids = new HashSet<>();
+				for (long id : results.ids()) {
+					TestCase.assertTrue(ids.add(id));
+				}
+				for (FeatureDistance featureDistance : results.getNearest()) {
+					TestCase.assertTrue(
+							featureDistance.getDistance() <= maxDistance);
+				}
+				results.close();
+
+				results = featureIndexManager.queryNearest(
+						new String[] { featureDao.getIdColumnName() }, point,
+						featureDao.getProjection(), k,
+						Double.POSITIVE_INFINITY);
+				TestCase.assertEquals(expectedCount, results.count());
+				results.close();
+
+				featureIndexManager.close();
+			}
+		}
+	}
+
+	/**
+	 * Test spatial joins between feature tables
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testJoin(GeoPackage geoPackage) throws SQLException {
+
+		List<String> featureTables = geoPackage.getFeatureTables();
+
+		for (String leftTable : featureTables) {
+			for (String rightTable : featureTables) {
+
+				FeatureDao leftDao = geoPackage.getFeatureDao(leftTable);
+				FeatureDao rightDao = geoPackage.getFeatureDao(rightTable);
+				if (!leftDao.getProjection()
+						.equals(rightDao.getProjection())) {
+					continue;
+				}
+
+				// Expected pairs from testing every feature pair
+				Map<SpatialPredicate, Set<FeatureJoinPair>> expected = new HashMap<>();
+				for (SpatialPredicate predicate : SpatialPredicate.values()) {
+					expected.put(predicate, new HashSet<FeatureJoinPair>());
+				}
+				FeatureResultSet rightResults = rightDao.query();
+				while (rightResults.moveToNext()) {
+					FeatureRow rightRow = rightResults.getRow();
+					GeoPackageGeometryData rightData = rightRow.getGeometry();
+					if (rightData == null || rightData.getGeometry() == null
+							|| rightData.getGeometry().isEmpty()) {
+						continue;
+					}
+					GeometryPredicates predicates = new GeometryPredicates(
+							rightData.getGeometry());
+					FeatureResultSet leftResults = leftDao.query();
+					while (leftResults.moveToNext()) {
+						FeatureRow leftRow = leftResults.getRow();
+						GeoPackageGeometryData leftData = leftRow
+								.getGeometry();
+						if (leftData == null
+								|| leftData.getGeometry() == null) {
+							continue;
+						}
+						for (SpatialPredicate predicate : SpatialPredicate
+								.values()) {
+							if (predicates.test(predicate,
+									leftData.getGeometry())) {
+								expected.get(predicate)
+										.add(new FeatureJoinPair(
+												leftRow.getId(),
+												rightRow.getId()));
+							}
+						}
+					}
+					leftResults.close();
+				}
+				rightResults.close();
+
+				for (FeatureIndexType type : new FeatureIndexType[] {
+						FeatureIndexType.RTREE, FeatureIndexType.GEOPACKAGE }) {
+
+					FeatureIndexManager left = new FeatureIndexManager(
+							geoPackage, leftDao);
+					left.setIndexLocation(type);
+					left.index();
+					left.prioritizeQueryLocation(type);
+					FeatureIndexManager right = new FeatureIndexManager(
+							geoPackage, rightDao);
+					right.setContinueOnError(false);
+					right.setIndexLocation(type);
+					right.index();
+					right.prioritizeQueryLocation(type);
+
+					for (int threads : new int[] { 1, 4 }) {
+						for (SpatialPredicate predicate : SpatialPredicate
+								.values()) {
+
+							FeatureIndexJoin join = new FeatureIndexJoin(left,
+									right);
+							join.setThreads(threads);
+							join.setBatchSize(7);
+							join.setCacheSize(5);
+
+							Set<FeatureJoinPair> pairs = new HashSet<>();
+							FeatureIndexJoinResults results = join
+									.join(predicate);
+							for (FeatureJoinPair pair : results) {
+								TestCase.assertTrue(pairs.add(pair));
+							}
+							results.close();
+							TestCase.assertEquals(expected.get(predicate),
+									pairs);
+
+							TestCase.assertEquals(
+									expected.get(predicate).size(),
+									join.count(predicate));
+						}
+					}
+
+					FeatureIndexJoinResults results = left.join(right,
+							SpatialPredicate.INTERSECTS);
+					int count = 0;
+					for (FeatureRow[] rows : results.rows()) {
+						TestCase.assertEquals(2, rows.length);
+						TestCase.assertTrue(expected
+								.get(SpatialPredicate.INTERSECTS)
+								.contains(new FeatureJoinPair(rows[0].getId(),
+										rows[1].getId())));
+						count++;
+					}
+					results.close();
+					TestCase.assertEquals(
+							expected.get(SpatialPredicate.INTERSECTS).size(),
+							count);
+
+					left.close();
+					right.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test density grid aggregation
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testDensity(GeoPackage geoPackage) throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			for (FeatureIndexType type : new FeatureIndexType[] {
+					FeatureIndexType.GEOPACKAGE, FeatureIndexType.RTREE,
+					FeatureIndexType.NONE }) {
+
+				FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+						geoPackage, featureDao);
+				featureIndexManager.setContinueOnError(false);
+				if (type == FeatureIndexType.NONE) {
+					featureIndexManager.deleteAllIndexes();
+				} else {
+					featureIndexManager.setIndexLocation(type);
+					featureIndexManager.index();
+					featureIndexManager.prioritizeQueryLocation(type);
+				}
+
+				// Non empty features
+				long features = 0;
+				FeatureResultSet resultSet = featureDao.query();
+				while (resultSet.moveToNext()) {
+					GeoPackageGeometryData geometryData = resultSet.getRow()
+							.getGeometry();
+					if (geometryData != null
+							&& geometryData.getGeometry() != null
+							&& !geometryData.getGeometry().isEmpty()) {
+						features++;
+					}
+				}
+				resultSet.close();
+				if (features == 0) {
+					featureIndexManager.close();
+					continue;
+				}
+
+				BoundingBox boundingBox = featureIndexManager.getBoundingBox();
+				int width = 8;
+				int height = 5;
+
+				FeatureDensityGrid centroids = featureIndexManager
+						.queryDensity(boundingBox, width, height,
+								FeatureDensityMode.CENTROID);
+				TestCase.assertEquals(width, centroids.getWidth());
+				TestCase.assertEquals(height, centroids.getHeight());
+				TestCase.assertEquals(width * height,
+						centroids.getCounts().length);
+				TestCase.assertEquals(features, centroids.getTotalCount());
+				TestCase.assertTrue(centroids.getMaxCount() <= features);
+				int[] intCounts = centroids.getIntCounts();
+				for (int i = 0; i < intCounts.length; i++) {
+					TestCase.assertEquals(centroids.getCounts()[i],
+							intCounts[i]);
+				}
+
+				FeatureDensityGrid overlaps = featureIndexManager
+						.queryDensity(boundingBox, width, height,
+								FeatureDensityMode.OVERLAP);
+				TestCase.assertTrue(
+						overlaps.getTotalCount() >= centroids.getTotalCount());
+				for (int row = 0; row < height; row++) {
+					for (int column = 0; column < width; column++) {
+						TestCase.assertTrue(overlaps.getCount(column,
+								row) >= centroids.getCount(column, row));
+						TestCase.assertTrue(
+								overlaps.getCount(column, row) <= features);
+					}
+				}
+
+				// Single cell grid
+				FeatureDensityGrid single = featureIndexManager.queryDensity(
+						boundingBox, 1, 1, FeatureDensityMode.OVERLAP);
+				TestCase.assertEquals(features, single.getCount(0, 0));
+
+				// Tile grid
+				for (int zoom = 0; zoom <= 3; zoom++) {
+					FeatureDensityGrid tiles = featureIndexManager
+							.queryTileDensity(zoom,
+									FeatureDensityMode.CENTROID);
+					TestCase.assertNotNull(tiles);
+					TestCase.assertEquals(zoom, tiles.getZoom());
+					TestCase.assertNotNull(tiles.getTileGrid());
+					TestCase.assertTrue(tiles.getTotalCount() <= features);
+					long total = 0;
+					for (long x = tiles.getTileGrid().getMinX(); x <= tiles
+							.getTileGrid().getMaxX(); x++) {
+						for (long y = tiles.getTileGrid().getMinY(); y <= tiles
+								.getTileGrid().getMaxY(); y++) {
+							total += tiles.getTileCount(x, y);
+						}
+					}
+					TestCase.assertEquals(tiles.getTotalCount(), total);
+					if (zoom == 0) {
+						TestCase.assertEquals(tiles.getTotalCount(),
+								tiles.getTileCount(0, 0));
+					}
+				}
+
+				featureIndexManager.close();
+			}
+		}
+	}
+
+	/**
+	 * Test persisted feature tile counts
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testTileCounts(GeoPackage geoPackage)
+			throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+					geoPackage, featureDao);
+			featureIndexManager.setContinueOnError(false);
+			featureIndexManager.setIndexLocation(FeatureIndexType.GEOPACKAGE);
+			featureIndexManager.index();
+			featureIndexManager
+					.prioritizeQueryLocation(FeatureIndexType.GEOPACKAGE);
+
+			FeatureTileCountExtension tileCounts = featureIndexManager
+					.getTileCounts();
+			TestCase.assertFalse(tileCounts.has());
+			TestCase.assertNull(tileCounts.getCount(0, 0, 0));
+
+			long tiles = featureIndexManager.buildTileCounts(0, 3);
+			if (tiles == 0) {
+				featureIndexManager.close();
+				continue;
+			}
+			TestCase.assertTrue(tileCounts.has());
+			TestCase.assertEquals(0, tileCounts.getMinZoom().intValue());
+			TestCase.assertEquals(3, tileCounts.getMaxZoom().intValue());
+			TestCase.assertNull(tileCounts.getCount(0, 0, 4));
+
+			// Counts match the tile density aggregation
+			for (int zoom = 0; zoom <= 3; zoom++) {
+				FeatureDensityGrid grid = featureIndexManager
+						.queryTileDensity(zoom, FeatureDensityMode.OVERLAP);
+				TileGrid tileGrid = grid.getTileGrid();
+				for (long x = tileGrid.getMinX(); x <= tileGrid
+						.getMaxX(); x++) {
+					for (long y = tileGrid.getMinY(); y <= tileGrid
+							.getMaxY(); y++) {
+						TestCase.assertEquals(grid.getTileCount(x, y),
+								tileCounts.getCount(x, y, zoom).longValue());
+					}
+				}
+			}
+
+			long zoomZeroCount = tileCounts.getCount(0, 0, 0);
+			TestCase.assertTrue(zoomZeroCount > 0);
+			TestCase.assertEquals(zoomZeroCount,
+					tileCounts.getNeighborhoodCount(0, 0, 0).longValue());
+
+			// Counts are maintained on feature table deletes and inserts
+			FeatureRow row = null;
+			FeatureResultSet resultSet = featureDao.query();
+			while (row == null && resultSet.moveToNext()) {
+				FeatureRow featureRow = resultSet.getRow();
+				GeoPackageGeometryData geometryData = featureRow.getGeometry();
+				if (geometryData != null && geometryData.getGeometry() != null
+						&& !geometryData.getGeometry().isEmpty()) {
+					row = featureRow;
+				}
+			}
+			resultSet.close();
+			TestCase.assertNotNull(row);
+
+			TestCase.assertEquals(1, featureDao.delete(row));
+			TestCase.assertTrue(featureIndexManager.deleteIndex(row));
+			TestCase.assertEquals(zoomZeroCount - 1,
+					tileCounts.getCount(0, 0, 0).longValue());
+			row.resetId();
+			featureDao.create(row);
+			TestCase.assertTrue(featureIndexManager.index(row));
+			TestCase.assertEquals(zoomZeroCount,
+					tileCounts.getCount(0, 0, 0).longValue());
+			assertTileCounts(featureIndexManager, tileCounts, 3);
+
+			// Re-indexing an indexed row does not change the counts
+			TestCase.assertTrue(featureIndexManager.index(row));
+			TestCase.assertEquals(zoomZeroCount,
+					tileCounts.getCount(0, 0, 0).longValue());
+
+			// Counts marked stale through another instance are not used
+			FeatureTileCountExtension otherTileCounts = new FeatureTileCountExtension(
+					geoPackage, featureDao);
+			TestCase.assertTrue(otherTileCounts.has());
+			tileCounts.invalidate();
+			TestCase.assertFalse(otherTileCounts.has());
+			TestCase.assertNull(otherTileCounts.getCount(0, 0, 0));
+
+			tileCounts.delete();
+			TestCase.assertFalse(tileCounts.has());
+
+			featureIndexManager.close();
+		}
+	}
+
+	/**
+	 * Test persisted feature tile counts maintained with only an RTree index
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testTileCountsRTree(GeoPackage geoPackage)
+			throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+					geoPackage, featureDao);
+			featureIndexManager.setContinueOnError(false);
+			featureIndexManager.setIndexLocation(FeatureIndexType.RTREE);
+			featureIndexManager.index();
+			featureIndexManager.prioritizeQueryLocation(FeatureIndexType.RTREE);
+			TestCase.assertFalse(featureIndexManager.isIndexed(
+					FeatureIndexType.GEOPACKAGE));
+
+			FeatureTileCountExtension tileCounts = featureIndexManager
+					.getTileCounts();
+			if (featureIndexManager.buildTileCounts(0, 3) == 0) {
+				featureIndexManager.close();
+				continue;
+			}
+			assertTileCounts(featureIndexManager, tileCounts, 3);
+
+			// Two rows with differing envelopes
+			FeatureRow row = null;
+			FeatureRow other = null;
+			FeatureResultSet resultSet = featureDao.query();
+			while (other == null && resultSet.moveToNext()) {
+				FeatureRow featureRow = resultSet.getRow();
+				GeometryEnvelope envelope = featureRow.getGeometryEnvelope();
+				if (envelope != null) {
+					if (row == null) {
+						row = featureRow;
+					} else {
+						GeometryEnvelope rowEnvelope = row
+								.getGeometryEnvelope();
+						if (envelope.getMinX() != rowEnvelope.getMinX()
+								|| envelope.getMinY() != rowEnvelope
+										.getMinY()) {
+							other = featureRow;
+						}
+					}
+				}
+			}
+			resultSet.close();
+			if (other == null) {
+				tileCounts.delete();
+				featureIndexManager.close();
+				continue;
+			}
+
+			// Inserted rows written and then indexed are counted
+			long zoomZeroCount = tileCounts.getCount(0, 0, 0);
+			FeatureRow newRow = featureDao.queryForIdRow(other.getId());
+			newRow.resetId();
+			featureDao.create(newRow);
+			TestCase.assertTrue(featureIndexManager.index(newRow));
+			TestCase.assertTrue(tileCounts.has());
+			TestCase.assertEquals(zoomZeroCount + 1,
+					tileCounts.getCount(0, 0, 0).longValue());
+			assertTileCounts(featureIndexManager, tileCounts, 3);
+
+			// Updated rows move counts
+			row.setGeometry(other.getGeometry());
+			featureDao.update(row);
+			TestCase.assertTrue(featureIndexManager.index(row));
+			TestCase.assertTrue(tileCounts.has());
+			TestCase.assertEquals(zoomZeroCount + 1,
+					tileCounts.getCount(0, 0, 0).longValue());
+			assertTileCounts(featureIndexManager, tileCounts, 3);
+
+			// Deleted rows
+			TestCase.assertEquals(1, featureDao.delete(other));
+			TestCase.assertTrue(featureIndexManager.deleteIndex(other));
+			TestCase.assertTrue(tileCounts.has());
+			TestCase.assertEquals(zoomZeroCount,
+					tileCounts.getCount(0, 0, 0).longValue());
+			assertTileCounts(featureIndexManager, tileCounts, 3);
+
+			tileCounts.delete();
+			featureIndexManager.close();
+		}
+	}
+
+	/**
+	 * Assert the tile counts match the tile density aggregation
+	 *
+	 * @param featureIndexManager
+	 *            feature index manager
+	 * @param tileCounts
+	 *            feature tile counts
+	 * @param maxZoom
+	 *            max zoom level
+	 */
+	private static void assertTileCounts(
+			FeatureIndexManager featureIndexManager,
+			FeatureTileCountExtension tileCounts, int maxZoom) {
+		for (int zoom = 0; zoom <= maxZoom; zoom++) {
+			FeatureDensityGrid grid = featureIndexManager
+					.queryTileDensity(zoom, FeatureDensityMode.OVERLAP);
+			TileGrid tileGrid = grid.getTileGrid();
+			for (long x = tileGrid.getMinX(); x <= tileGrid.getMaxX(); x++) {
+				for (long y = tileGrid.getMinY(); y <= tileGrid
+						.getMaxY(); y++) {
+					Long count = tileCounts.getCount(x, y, zoom);
+					TestCase.assertEquals(grid.getTileCount(x, y),
+							count != null ? count.longValue() : 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test point clusters
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testPointClusters(GeoPackage geoPackage)
+			throws SQLException {
+
+		BoundingBox world = new BoundingBox(
+				-ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+				-ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+				ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH,
+				ProjectionConstants.WEB_MERCATOR_HALF_WORLD_WIDTH);
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			if (featureDao.getGeometryType() != GeometryType.POINT) {
+				continue;
+			}
+
+			for (FeatureIndexType type : new FeatureIndexType[] {
+					FeatureIndexType.GEOPACKAGE, FeatureIndexType.RTREE,
+					FeatureIndexType.NONE }) {
+
+				FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+						geoPackage, featureDao);
+				featureIndexManager.setContinueOnError(false);
+				if (type == FeatureIndexType.NONE) {
+					featureIndexManager.deleteAllIndexes();
+				} else {
+					featureIndexManager.setIndexLocation(type);
+					featureIndexManager.index();
+					featureIndexManager.prioritizeQueryLocation(type);
+				}
+
+				FeaturePointClusters clusters = featureIndexManager
+						.queryPointClusters(0, 5);
+				TestCase.assertEquals(0, clusters.getMinZoom());
+				TestCase.assertEquals(5, clusters.getMaxZoom());
+				TestCase.assertFalse(clusters.isClustered(6));
+				if (type != FeatureIndexType.NONE) {
+					TestCase.assertEquals(featureIndexManager.count(),
+							clusters.getCount());
+				}
+
+				int previousClusters = 0;
+				for (int zoom = 0; zoom <= 5; zoom++) {
+					int clusterCount = clusters.getClusterCount(zoom);
+					TestCase.assertTrue(clusterCount >= previousClusters);
+					TestCase.assertTrue(clusterCount <= clusters.getCount());
+					previousClusters = clusterCount;
+
+					List<FeaturePointCluster> zoomClusters = clusters
+							.getClusters(zoom, world);
+					TestCase.assertEquals(clusterCount, zoomClusters.size());
+					long total = 0;
+					for (FeaturePointCluster cluster : zoomClusters) {
+						TestCase.assertTrue(cluster.getCount() > 0);
+						TestCase.assertEquals(cluster.getCount() == 1,
+								cluster.isSingle());
+						total += cluster.getCount();
+					}
+					TestCase.assertEquals(clusters.getCount(), total);
+				}
+
+				featureIndexManager.close();
+			}
+		}
+	}
+
+	/**
+	 * Test feature id sets
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testIdSets(GeoPackage geoPackage) throws SQLException {
+
+		FeatureIdSet set1 = new FeatureIdSet(5, 1, 3, 3, 9);
+		FeatureIdSet set2 = new FeatureIdSet(9, 4, 3);
+		TestCase.assertEquals(4, set1.size());
+		TestCase.assertEquals(1, set1.getMin());
+		TestCase.assertEquals(9, set1.getMax());
+		TestCase.assertTrue(set1.contains(5));
+		TestCase.assertFalse(set1.contains(4));
+		TestCase.assertEquals(new FeatureIdSet(1, 3, 4, 5, 9),
+				set1.union(set2));
+		TestCase.assertEquals(new FeatureIdSet(3, 9),
+				set1.intersection(set2));
+		TestCase.assertEquals(new FeatureIdSet(1, 5), set1.difference(set2));
+		TestCase.assertEquals(new FeatureIdSet(4), set2.difference(set1));
+		TestCase.assertTrue(set1.difference(set1).isEmpty());
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			for (FeatureIndexType type : new FeatureIndexType[] {
+					FeatureIndexType.GEOPACKAGE, FeatureIndexType.RTREE }) {
+
+				FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+						geoPackage, featureDao);
+				featureIndexManager.setContinueOnError(false);
+				featureIndexManager.setIndexLocation(type);
+				featureIndexManager.index();
+				featureIndexManager.prioritizeQueryLocation(type);
+
+				BoundingBox boundingBox = featureIndexManager.getBoundingBox();
+				if (boundingBox == null) {
+					featureIndexManager.close();
+					continue;
+				}
+				double midLongitude = (boundingBox.getMinLongitude()
+						+ boundingBox.getMaxLongitude()) / 2.0;
+				BoundingBox left = new BoundingBox(
+						boundingBox.getMinLongitude(),
+						boundingBox.getMinLatitude(), midLongitude,
+						boundingBox.getMaxLatitude());
+				BoundingBox right = new BoundingBox(midLongitude,
+						boundingBox.getMinLatitude(),
+						boundingBox.getMaxLongitude(),
+						boundingBox.getMaxLatitude());
+
+				FeatureIdSet all = featureIndexManager.queryIdSet(boundingBox);
+				FeatureIdSet leftIds = featureIndexManager.queryIdSet(left);
+				FeatureIdSet rightIds = featureIndexManager.queryIdSet(right);
+				TestCase.assertEquals(featureIndexManager.count(boundingBox),
+						all.size());
+
+				List<BoundingBox> boxes = new ArrayList<>();
+				boxes.add(left);
+				boxes.add(right);
+				FeatureIdSet union = featureIndexManager.queryIdSet(boxes,
+						featureDao.getProjection());
+				TestCase.assertEquals(all, union);
+				TestCase.assertEquals(union, leftIds.union(rightIds));
+
+				MultipleFeatureIndexResults multipleResults = new MultipleFeatureIndexResults(
+						featureIndexManager.query(left),
+						featureIndexManager.query(right));
+				TestCase.assertEquals(leftIds.size() + rightIds.size(),
+						multipleResults.count());
+				TestCase.assertEquals(union, multipleResults.getIdSet());
+				multipleResults.close();
+
+				FeatureIdSet both = leftIds.intersection(rightIds);
+				TestCase.assertEquals(
+						leftIds.size() + rightIds.size() - both.size(),
+						union.size());
+				TestCase.assertEquals(union.size() - rightIds.size(),
+						leftIds.difference(rightIds).size());
+
+				FeatureIndexIdResults results = featureIndexManager
+						.query(union);
+				results.setChunkSize(7);
+				TestCase.assertEquals(union.size(), results.count());
+				long previousId = Long.MIN_VALUE;
+				int count = 0;
+				for (FeatureRow row : results) {
+					TestCase.assertTrue(row.getId() > previousId);
+					TestCase.assertTrue(union.contains(row.getId()));
+					previousId = row.getId();
+					count++;
+				}
+				TestCase.assertEquals(union.size(), count);
+				results.close();
+
+				FeatureIndexIdResults columnResults = featureIndexManager
+						.query(new String[] {
+								featureDao.getGeometryColumnName() }, both);
+				count = 0;
+				for (FeatureRow row : columnResults) {
+					TestCase.assertTrue(both.contains(row.getId()));
+					count++;
+				}
+				TestCase.assertEquals(both.size(), count);
+				columnResults.close();
+
+				featureIndexManager.close();
+			}
+		}
+	}
+
+	/**
+	 * Test parallel manual feature queries against the single thread results
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testManualQuery(GeoPackage geoPackage)
+			throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			ManualFeatureQuery singleQuery = new ManualFeatureQuery(featureDao);
+			ManualFeatureQuery parallelQuery = new ManualFeatureQuery(
+					featureDao);
+			parallelQuery.setThreads(3);
+			parallelQuery.setChunkLimit(7);
+			TestCase.assertEquals(3, parallelQuery.getThreads());
+
+			BoundingBox boundingBox = singleQuery.getBoundingBox();
+			TestCase.assertEquals(boundingBox, parallelQuery.getBoundingBox());
+			if (boundingBox == null) {
+				continue;
+			}
+
+			BoundingBox left = new BoundingBox(boundingBox.getMinLongitude(),
+					boundingBox.getMinLatitude(),
+					(boundingBox.getMinLongitude()
+							+ boundingBox.getMaxLongitude()) / 2.0,
+					boundingBox.getMaxLatitude());
+
+			for (BoundingBox queryBoundingBox : new BoundingBox[] {
+					boundingBox, left }) {
+				TestCase.assertEquals(
+						singleQuery.query(queryBoundingBox).getFeatureIds(),
+						parallelQuery.query(queryBoundingBox).getFeatureIds());
+				TestCase.assertEquals(singleQuery.count(queryBoundingBox),
+						parallelQuery.count(queryBoundingBox));
+			}
+
+			String where = featureDao.getIdColumnName() + " > ?";
+			String[] whereArgs = new String[] { "3" };
+			List<Long> ids = parallelQuery
+					.query(boundingBox, where, whereArgs).getFeatureIds();
+			TestCase.assertEquals(
+					singleQuery.query(boundingBox, where, whereArgs)
+							.getFeatureIds(),
+					ids);
+			for (long id : ids) {
+				TestCase.assertTrue(id > 3);
+			}
+		}
+	}
+
+	/**
+	 * Test bounds from the feature index aggregates
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testBoundingBoxAggregates(GeoPackage geoPackage)
+			throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			ManualFeatureQuery manualQuery = new ManualFeatureQuery(featureDao);
+
+			String where = featureDao.getIdColumnName() + " > ?";
+			String[] whereArgs = new String[] { "3" };
+			BoundingBox manualBounds = manualQuery.getBoundingBox();
+			BoundingBox manualFiltered = manualQuery.getBoundingBox(where,
+					whereArgs);
+
+			for (FeatureIndexType type : new FeatureIndexType[] {
+					FeatureIndexType.GEOPACKAGE, FeatureIndexType.RTREE }) {
+
+				FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+						geoPackage, featureDao);
+				featureIndexManager.setContinueOnError(false);
+				featureIndexManager.setIndexLocation(type);
+				featureIndexManager.index();
+				featureIndexManager.prioritizeQueryLocation(type);
+
+				assertBoundingBox(manualBounds,
+						featureIndexManager.getBoundingBox(null, null));
+				assertBoundingBox(manualFiltered,
+						featureIndexManager.getBoundingBox(where, whereArgs));
+				TestCase.assertNull(featureIndexManager.getBoundingBox(
+						featureDao.getIdColumnName() + " < 0", null));
+
+				BoundingBox contentsBounds = featureIndexManager
+						.updateContentsBoundingBox();
+				assertBoundingBox(manualBounds, contentsBounds);
+				TestCase.assertTrue(featureIndexManager.isIndexed(type));
+				TestCase.assertTrue(featureIndexManager
+						.isIndexed(FeatureIndexType.GEOPACKAGE));
+				if (contentsBounds != null) {
+					TestCase.assertEquals(contentsBounds,
+							geoPackage.getContentsDao()
+									.queryForId(featureTable)
+									.getBoundingBox());
+				}
+
+				featureIndexManager.close();
+			}
+		}
+	}
+
+	/**
+	 * Assert the bounding boxes are equal within a tolerance
+	 *
+	 * @param expected
+	 *            expected bounding box
+	 * @param actual
+	 *            actual bounding box
+	 */
+	private static void assertBoundingBox(BoundingBox expected,
+			BoundingBox actual) {
+		if (expected == null) {
+			TestCase.assertNull(actual);
+		} else {
+			TestCase.assertNotNull(actual);
+			double delta = .0000000001;
+			TestCase.assertEquals(expected.getMinLongitude(),
+					actual.getMinLongitude(), delta);
+			TestCase.assertEquals(expected.getMinLatitude(),
+					actual.getMinLatitude(), delta);
+			TestCase.assertEquals(expected.getMaxLongitude(),
+					actual.getMaxLongitude(), delta);
+			TestCase.assertEquals(expected.getMaxLatitude(),
+					actual.getMaxLatitude(), delta);
+		}
+	}
+
+	/**
+	 * Test compiled field value filters against field value map queries
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testCompiledFilters(GeoPackage geoPackage)
+			throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			String column = null;
+			for (FeatureColumn featureColumn : featureDao.getTable()
+					.getColumns()) {
+				if (!featureColumn.isPrimaryKey()
+						&& featureColumn.getDataType() == GeoPackageDataType.TEXT) {
+					column = featureColumn.getName();
+					break;
+				}
+			}
+			if (column == null) {
+				continue;
+			}
+
+			List<Object> values = new ArrayList<>();
+			values.add(null);
+			FeatureResultSet resultSet = featureDao.query();
+			try {
+				while (resultSet.moveToNext() && values.size() < 5) {
+					Object value = resultSet.getRow().getValue(column);
+					if (!values.contains(value)) {
+						values.add(value);
+					}
+				}
+			} finally {
+				resultSet.close();
+			}
+
+			CompiledFilter filter = featureDao
+					.compileFilter(column.toUpperCase());
+			TestCase.assertEquals(column, filter.getColumns()[0]);
+
+			for (FeatureIndexType type : new FeatureIndexType[] {
+					FeatureIndexType.GEOPACKAGE, FeatureIndexType.RTREE }) {
+
+				FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+						geoPackage, featureDao);
+				featureIndexManager.setContinueOnError(false);
+				featureIndexManager.setIndexLocation(type);
+				featureIndexManager.index();
+				featureIndexManager.prioritizeQueryLocation(type);
+
+				BoundingBox boundingBox = featureIndexManager.getBoundingBox();
+
+				for (Object value : values) {
+
+					Map<String, Object> fieldValues = new HashMap<>();
+					fieldValues.put(column, value);
+
+					long count = featureIndexManager.count(fieldValues);
+					TestCase.assertEquals(count,
+							featureIndexManager.count(filter, value));
+					FeatureIndexResults results = featureIndexManager
+							.query(filter, value);
+					TestCase.assertEquals(count, results.count());
+					for (FeatureRow featureRow : results) {
+						TestCase.assertEquals(value,
+								featureRow.getValue(column));
+					}
+					results.close();
+
+					List<Long> ids = filter.queryIds(value);
+					TestCase.assertEquals(featureDao.count(filter, value),
+							ids.size());
+					FeatureResultSet filterResultSet = featureDao
+							.query(filter, value);
+					TestCase.assertEquals(ids.size(),
+							filterResultSet.getCount());
+					filterResultSet.close();
+
+					if (boundingBox != null) {
+						count = featureIndexManager.count(boundingBox,
+								fieldValues);
+						TestCase.assertEquals(count, featureIndexManager
+								.count(boundingBox, filter, value));
+						results = featureIndexManager.query(boundingBox,
+								filter, value);
+						TestCase.assertEquals(count, results.count());
+						results.close();
+					}
+				}
+
+				featureIndexManager.close();
+			}
+
+			try {
+				filter.count();
+				TestCase.fail("Expected a filter value count failure");
+			} catch (GeoPackageException e) {
+				// expected
+			}
+			try {
+				featureDao.compileFilter(column + "_missing");
+				TestCase.fail("Expected a missing filter column failure");
+			} catch (GeoPackageException e) {
+				// expected
+			}
+			byte[] bytes = new byte[] { 1, 2, 3 };
+			TestCase.assertEquals(0, filter.count(bytes));
+			try {
+				featureDao.query(filter, bytes);
+				TestCase.fail("Expected a byte array where argument failure");
+			} catch (GeoPackageException e) {
+				// expected
+			}
+
+			filter.close();
+		}
+	}
+
+	/**
+	 * Test temporal index time window and space time queries
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testTemporal(GeoPackage geoPackage)
+			throws SQLException {
+
+		final long day = 24 * 60 * 60 * 1000L;
+		final long base = 1577836800000L; // 2020-01-01 UTC
+
+		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		SimpleDateFormat dateTimeFormat = new SimpleDateFormat(
+				"yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		dateTimeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			FeatureTable table = featureDao.getTable();
+			if (!Arrays.asList(table.getColumnNames()).contains("test_date")
+					|| !Arrays.asList(table.getColumnNames())
+							.contains("test_datetime")) {
+				continue;
+			}
+
+			for (FeatureIndexType type : new FeatureIndexType[] {
+					FeatureIndexType.GEOPACKAGE, FeatureIndexType.RTREE }) {
+
+				FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+						geoPackage, featureDao);
+				featureIndexManager.setContinueOnError(false);
+				featureIndexManager.setIndexLocation(type);
+				featureIndexManager.index();
+				featureIndexManager.prioritizeQueryLocation(type);
+
+				featureIndexManager.indexTemporal("test_date",
+						"test_datetime");
+				TestCase.assertTrue(featureIndexManager.getTemporalIndex()
+						.has());
+				TestCase.assertEquals("test_datetime", featureIndexManager
+						.getTemporalIndex().getEndColumn());
+
+				// Update the times through the maintaining triggers
+				List<Long> ids = new ArrayList<>();
+				FeatureResultSet resultSet = featureDao.query();
+				try {
+					while (resultSet.moveToNext()) {
+						ids.add(resultSet.getRow().getId());
+					}
+				} finally {
+					resultSet.close();
+				}
+				Map<Long, long[]> intervals = new HashMap<>();
+				for (int i = 0; i < ids.size(); i++) {
+					long start = base + i * day;
+					long end = start + (i % 5) * day / 2;
+					FeatureRow featureRow = featureDao
+							.queryForIdRow(ids.get(i));
+					featureRow.setValue("test_date",
+							dateFormat.format(new Date(start)));
+					featureRow.setValue("test_datetime",
+							dateTimeFormat.format(new Date(end)));
+					featureDao.update(featureRow);
+					intervals.put(ids.get(i), new long[] { start, end });
+				}
+				if (!ids.isEmpty()) {
+					FeatureRow featureRow = featureDao
+							.queryForIdRow(ids.get(0));
+					featureRow.setValue("test_date", null);
+					featureDao.update(featureRow);
+					intervals.remove(ids.get(0));
+				}
+				TestCase.assertEquals(intervals.size(),
+						featureIndexManager.getTemporalIndex().count());
+
+				Set<Long> indexedIds = queryIds(featureIndexManager.query());
+				BoundingBox boundingBox = featureIndexManager.getBoundingBox();
+
+				Date[][] windows = new Date[][] {
+						{ new Date(base + 3 * day + day / 4),
+								new Date(base + 6 * day) },
+						{ new Date(base), new Date(base + day) },
+						{ null, new Date(base + 4 * day) },
+						{ new Date(base + 8 * day), null },
+						{ new Date(base - 10 * day), new Date(base - day) } };
+
+				for (Date[] window : windows) {
+
+					Set<Long> expected = new HashSet<>();
+					for (Entry<Long, long[]> interval : intervals
+							.entrySet()) {
+						if ((window[1] == null || interval.getValue()[0] <= window[1]
+								.getTime())
+								&& (window[0] == null || interval
+										.getValue()[1] >= window[0]
+												.getTime())
+								&& indexedIds.contains(interval.getKey())) {
+							expected.add(interval.getKey());
+						}
+					}
+
+					TestCase.assertEquals(expected.size(), featureIndexManager
+							.countTimeWindow(window[0], window[1]));
+					TestCase.assertEquals(expected, queryIds(featureIndexManager
+							.queryTimeWindow(window[0], window[1])));
+
+					if (boundingBox != null) {
+
+						// Lower left quarter of the features
+						GeometryEnvelope envelope = boundingBox
+								.buildEnvelope();
+						envelope.setMaxX(envelope.getMinX() + (envelope
+								.getMaxX() - envelope.getMinX()) / 2.0);
+						envelope.setMaxY(envelope.getMinY() + (envelope
+								.getMaxY() - envelope.getMinY()) / 2.0);
+
+						Set<Long> spaceTime = queryIds(
+								featureIndexManager.query(envelope));
+						spaceTime.retainAll(expected);
+
+						TestCase.assertEquals(spaceTime.size(),
+								featureIndexManager.countTimeWindow(envelope,
+										window[0], window[1]));
+						TestCase.assertEquals(spaceTime,
+								queryIds(featureIndexManager.queryTimeWindow(
+										envelope, window[0], window[1])));
+					}
+				}
+
+				featureIndexManager.getTemporalIndex().delete();
+				TestCase.assertFalse(
+						featureIndexManager.getTemporalIndex().has());
+				try {
+					featureIndexManager.countTimeWindow(null, null);
+					TestCase.fail("Expected a missing temporal index failure");
+				} catch (GeoPackageException e) {
+					// expected
+				}
+
+				featureIndexManager.close();
+			}
+		}
+	}
+
+	/**
+	 * Test feature tile key queries against bounding box queries
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testTileKeys(GeoPackage geoPackage)
+			throws SQLException {
+
+		Projection wgs84 = ProjectionFactory
+				.getProjection(ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM);
+		Projection webMercator = ProjectionFactory
+				.getProjection(ProjectionConstants.EPSG_WEB_MERCATOR);
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+					geoPackage, featureDao);
+			featureIndexManager.setContinueOnError(false);
+			featureIndexManager.setIndexLocation(FeatureIndexType.GEOPACKAGE);
+			featureIndexManager.index();
+			featureIndexManager
+					.prioritizeQueryLocation(FeatureIndexType.GEOPACKAGE);
+
+			FeatureTileKeyExtension tileKeys = featureIndexManager
+					.getTileKeys();
+			TestCase.assertFalse(tileKeys.has());
+			TestCase.assertNull(tileKeys.getBaseZoom());
+
+			BoundingBox boundingBox = featureIndexManager
+					.getBoundingBox(wgs84);
+			if (boundingBox == null) {
+				featureIndexManager.close();
+				continue;
+			}
+			BoundingBox webMercatorBoundingBox = TileBoundingBoxUtils
+					.boundWgs84BoundingBoxWithWebMercatorLimits(boundingBox)
+					.transform(wgs84.getTransformation(webMercator));
+
+			int baseZoom = 8;
+			long keyed = featureIndexManager.buildTileKeys(baseZoom);
+			TestCase.assertTrue(keyed > 0);
+			TestCase.assertTrue(tileKeys.has());
+			TestCase.assertEquals(baseZoom, tileKeys.getBaseZoom().intValue());
+
+			for (int zoom : new int[] { 0, 2, 5, 8, 11 }) {
+
+				TileGrid tileGrid = TileBoundingBoxUtils
+						.getTileGrid(webMercatorBoundingBox, zoom);
+
+				// Tile key ids in tile order without duplicates
+				List<Long> orderedIds = tileKeys.queryIds(tileGrid, zoom);
+				Set<Long> gridIds = new HashSet<>(orderedIds);
+				TestCase.assertEquals(orderedIds.size(), gridIds.size());
+				TestCase.assertEquals(gridIds.size(),
+						tileKeys.countFeatures(tileGrid, zoom));
+				TestCase.assertEquals(gridIds, queryIds(
+						tileKeys.queryFeatures(tileGrid, zoom)));
+				TestCase.assertEquals(gridIds,
+						queryIds(featureDao.queryIn(
+								tileKeys.queryIdsSQL(tileGrid, zoom),
+								tileKeys.queryIdsArgs(tileGrid, zoom))));
+				TestCase.assertEquals(keyed, gridIds.size());
+
+				long stepX = Math.max(1,
+						(tileGrid.getMaxX() - tileGrid.getMinX()) / 4);
+				long stepY = Math.max(1,
+						(tileGrid.getMaxY() - tileGrid.getMinY()) / 4);
+				for (long x = tileGrid.getMinX(); x <= tileGrid
+						.getMaxX(); x += stepX) {
+					for (long y = tileGrid.getMinY(); y <= tileGrid
+							.getMaxY(); y += stepY) {
+
+						Set<Long> tileIds = queryIds(
+								tileKeys.queryFeatures(x, y, zoom));
+						TestCase.assertEquals(tileIds.size(),
+								tileKeys.countFeatures(x, y, zoom));
+						TestCase.assertTrue(gridIds.containsAll(tileIds));
+
+						// Tile keys cover the features intersecting the tile
+						BoundingBox tileBoundingBox = TileBoundingBoxUtils
+								.getWebMercatorBoundingBox(x, y, zoom);
+						double buffer = (tileBoundingBox.getMaxLongitude()
+								- tileBoundingBox.getMinLongitude()) * 0.01;
+						BoundingBox innerBoundingBox = new BoundingBox(
+								tileBoundingBox.getMinLongitude() + buffer,
+								tileBoundingBox.getMinLatitude() + buffer,
+								tileBoundingBox.getMaxLongitude() - buffer,
+								tileBoundingBox.getMaxLatitude() - buffer);
+						Set<Long> expectedIds = queryIds(featureIndexManager
+								.query(innerBoundingBox, webMercator));
+						TestCase.assertTrue(tileIds.containsAll(expectedIds));
+					}
+				}
+			}
+
+			// Tile keys are maintained on index deletes and inserts
+			FeatureRow row = null;
+			FeatureResultSet resultSet = featureDao.query();
+			while (row == null && resultSet.moveToNext()) {
+				FeatureRow featureRow = resultSet.getRow();
+				GeoPackageGeometryData geometryData = featureRow.getGeometry();
+				if (geometryData != null && geometryData.getGeometry() != null
+						&& !geometryData.getGeometry().isEmpty()) {
+					row = featureRow;
+				}
+			}
+			resultSet.close();
+			TestCase.assertNotNull(row);
+
+			// Tile keys follow features edited directly through the DAO
+			int worldCount = tileKeys.countFeatures(0, 0, 0);
+			TestCase.assertEquals(1, featureDao.delete(row));
+			TestCase.assertEquals(worldCount - 1,
+					tileKeys.countFeatures(0, 0, 0));
+			row.resetId();
+			featureDao.create(row);
+			TestCase.assertEquals(worldCount, tileKeys.countFeatures(0, 0, 0));
+			TestCase.assertTrue(queryIds(tileKeys.queryFeatures(0, 0, 0))
+					.contains(row.getId()));
+
+			// Updating a feature replaces its tile keys
+			TestCase.assertEquals(1, featureDao.update(row));
+			TestCase.assertEquals(worldCount, tileKeys.countFeatures(0, 0, 0));
+
+			// Changes are seen through another instance
+			FeatureTileKeyExtension otherTileKeys = new FeatureTileKeyExtension(
+					geoPackage, featureDao);
+			TestCase.assertEquals(1, featureDao.delete(row));
+			TestCase.assertEquals(worldCount - 1,
+					otherTileKeys.countFeatures(0, 0, 0));
+			TestCase.assertEquals(worldCount - 1,
+					tileKeys.countFeatures(0, 0, 0));
+
+			tileKeys.delete();
+			TestCase.assertFalse(tileKeys.has());
+			try {
+				tileKeys.countFeatures(0, 0, 0);
+				TestCase.fail("Expected a missing tile keys failure");
+			} catch (GeoPackageException e) {
+				// expected
+			}
+
+			featureIndexManager.close();
+		}
+	}
+
+	/**
+	 * Read and close the feature result set ids
+	 *
+	 * @param resultSet
+	 *            feature result set
+	 * @return ids
+	 */
+	private static Set<Long> queryIds(FeatureResultSet resultSet) {
+		Set<Long> ids = new HashSet<>();
+		try {
+			while (resultSet.moveToNext()) {
+				TestCase.assertTrue(ids.add(resultSet.getRow().getId()));
+			}
+		} finally {
+			resultSet.close();
+		}
+		return ids;
+	}
+
+	/**
+	 * Read and close the feature index results ids
+	 *
+	 * @param results
+	 *            feature index results
+	 * @return ids
+	 */
+	private static Set<Long> queryIds(FeatureIndexResults results) {
+		Set<Long> ids = new HashSet<>();
+		try {
+			for (long id : results.ids()) {
+				ids.add(id);
+			}
+		} finally {
+			results.close();
+		}
+		return ids;
+	}
+
 	/**
 	 * Test large index
 	 *
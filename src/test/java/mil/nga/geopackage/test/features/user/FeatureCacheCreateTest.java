@@ -32,4 +32,40 @@ public class FeatureCacheCreateTest extends CreateGeoPackageTestCase {
 
 	}
 
+	/**
+	 * Test cache weight and statistics
+	 *
+	 * @throws SQLException
+	 */
+	@Test
+	public void testCacheWeight() throws SQLException {
+
+		FeatureCacheUtils.testCacheWeight(geoPackage);
+
+	}
+
+	/**
+	 * Test cache capacity independent of the cached feature ids
+	 *
+	 * @throws SQLException
+	 */
+	@Test
+	public void testCacheCapacity() throws SQLException {
+
+		FeatureCacheUtils.testCacheCapacity(geoPackage);
+
+	}
+
+	/**
+	 * Test concurrent cache
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCacheConcurrent() throws Exception {
+
+		FeatureCacheUtils.testCacheConcurrent(geoPackage);
+
+	}
+
 }
@@ -1,15 +1,23 @@
 package mil.nga.geopackage.test.features.user;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import junit.framework.TestCase;
 import mil.nga.geopackage.GeoPackage;
 import mil.nga.geopackage.features.index.FeatureIndexManager;
 import mil.nga.geopackage.features.index.FeatureIndexResults;
 import mil.nga.geopackage.features.index.FeatureIndexType;
+import mil.nga.geopackage.features.user.FeatureCache;
 import mil.nga.geopackage.features.user.FeatureCacheTables;
 import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
 import mil.nga.geopackage.features.user.FeatureRow;
 
 /**
@@ -172,4 +180,242 @@ public class FeatureCacheUtils {
 		TestCase.assertEquals(0, featureCache2.getTables().size());
 	}
 
+	/**
+	 * Test cache weight limits and statistics
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testCacheWeight(GeoPackage geoPackage)
+			throws SQLException {
+
+		List<String> featureTables = geoPackage.getFeatureTables();
+		for (String featureTable : featureTables) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			List<FeatureRow> featureRows = new ArrayList<>();
+			long totalWeight = 0;
+			long maxRowWeight = 0;
+			for (FeatureRow featureRow : queryRows(featureDao)) {
+				featureRows.add(featureRow);
+				long weight = FeatureCache.weigh(featureRow);
+				TestCase.assertTrue(weight > 0);
+				totalWeight += weight;
+				maxRowWeight = Math.max(maxRowWeight, weight);
+			}
+			if (featureRows.isEmpty()) {
+				continue;
+			}
+
+			// Bounded by half of the total weight
+			long maxWeight = Math.max(maxRowWeight, totalWeight / 2);
+			FeatureCache cache = new FeatureCache(
+					Math.min(featureRows.size(), 100), maxWeight);
+			for (FeatureRow featureRow : featureRows) {
+				cache.put(featureRow);
+				TestCase.assertTrue(cache.getWeight() <= maxWeight);
+			}
+			TestCase.assertTrue(cache.getSize() > 0);
+			TestCase.assertTrue(cache.getSize() <= featureRows.size());
+			TestCase.assertEquals(featureRows.size() - cache.getSize(),
+					cache.getEvictionCount());
+
+			// The last put row is always retained
+			FeatureRow last = featureRows.get(featureRows.size() - 1);
+			TestCase.assertNotNull(cache.get(last.getId()));
+			TestCase.assertEquals(1, cache.getHitCount());
+			TestCase.assertEquals(0, cache.getMissCount());
+			TestCase.assertNull(cache.get(-1));
+			TestCase.assertEquals(1, cache.getMissCount());
+			TestCase.assertEquals(0.5, cache.getHitRate(), 0.0);
+
+			// Rows heavier than the max weight are not cached
+			cache.resizeWeight(0);
+			TestCase.assertEquals(0, cache.getSize());
+			TestCase.assertEquals(0, cache.getWeight());
+			cache.put(last);
+			TestCase.assertNull(cache.get(last.getId()));
+
+			cache.resetStats();
+			TestCase.assertEquals(0, cache.getHitCount());
+			TestCase.assertEquals(0, cache.getMissCount());
+			TestCase.assertEquals(0, cache.getEvictionCount());
+		}
+
+	}
+
+	/**
+	 * Test the cache size and weight limits apply to the whole cache,
+	 * independent of the feature ids cached
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testCacheCapacity(GeoPackage geoPackage)
+			throws SQLException {
+
+		List<String> featureTables = geoPackage.getFeatureTables();
+		for (String featureTable : featureTables) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			List<FeatureRow> featureRows = queryRows(featureDao);
+			if (featureRows.isEmpty()) {
+				continue;
+			}
+			FeatureRow template = featureRows.get(0);
+			long rowWeight = FeatureCache.weigh(template);
+
+			// Large enough for the maximum number of segments, with ids all
+			// striped to a single segment and added in arbitrary order
+			final int size = 4096;
+			List<Long> ids = new ArrayList<>();
+			for (long id = 1; id <= size; id++) {
+				ids.add(id * 16);
+			}
+			Collections.shuffle(ids, new Random(size));
+
+			FeatureCache cache = new FeatureCache(size, size * rowWeight);
+			for (long id : ids) {
+				cache.put(copy(template, id));
+			}
+			TestCase.assertEquals(size, cache.getSize());
+			TestCase.assertEquals(size * rowWeight, cache.getWeight());
+			TestCase.assertEquals(0, cache.getEvictionCount());
+			for (long id : ids) {
+				TestCase.assertNotNull(cache.get(id));
+			}
+
+			// One more row evicts exactly one row
+			cache.put(copy(template, (size + 1) * 16));
+			TestCase.assertEquals(size, cache.getSize());
+			TestCase.assertEquals(1, cache.getEvictionCount());
+
+			// Resize below the number of segments
+			final int smallSize = 5;
+			cache.resize(smallSize);
+			TestCase.assertEquals(smallSize, cache.getSize());
+			TestCase.assertEquals(smallSize * rowWeight, cache.getWeight());
+			for (long id = 1; id <= smallSize * 2; id++) {
+				FeatureRow featureRow = copy(template, id);
+				cache.put(featureRow);
+				TestCase.assertNotNull(cache.get(id));
+				TestCase.assertTrue(cache.getSize() <= smallSize);
+			}
+			TestCase.assertEquals(smallSize, cache.getSize());
+			for (long id = smallSize + 1; id <= smallSize * 2; id++) {
+				TestCase.assertNotNull(cache.get(id));
+			}
+
+			// Weight limit below the number of segments
+			cache.resize(size);
+			cache.resizeWeight(smallSize * rowWeight);
+			TestCase.assertEquals(smallSize, cache.getSize());
+			for (long id : ids) {
+				cache.put(copy(template, id));
+				TestCase.assertNotNull(cache.get(id));
+				TestCase.assertTrue(cache.getWeight() <= smallSize * rowWeight);
+			}
+			TestCase.assertEquals(smallSize, cache.getSize());
+
+			cache.clear();
+			TestCase.assertEquals(0, cache.getSize());
+			TestCase.assertEquals(0, cache.getWeight());
+		}
+
+	}
+
+	/**
+	 * Test cache shared across threads and feature DAOs
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws Exception
+	 *             upon error
+	 */
+	public static void testCacheConcurrent(final GeoPackage geoPackage)
+			throws Exception {
+
+		final FeatureCacheTables featureCache = new FeatureCacheTables(10000);
+
+		List<String> featureTables = geoPackage.getFeatureTables();
+		for (final String featureTable : featureTables) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			final List<FeatureRow> featureRows = queryRows(featureDao);
+
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int thread = 0; thread < 4; thread++) {
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						// Each thread uses its own feature DAO
+						FeatureDao dao = geoPackage.getFeatureDao(featureTable);
+						for (FeatureRow featureRow : featureRows) {
+							FeatureRow cached = featureCache.getOrQuery(dao,
+									featureRow.getId());
+							TestCase.assertNotNull(cached);
+							TestCase.assertEquals(featureRow.getId(),
+									cached.getId());
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+			executor.shutdown();
+
+			FeatureCache cache = featureCache.getCache(featureDao);
+			TestCase.assertSame(cache, featureCache.getCache(featureTable));
+			TestCase.assertEquals(featureRows.size(), cache.getSize());
+			TestCase.assertEquals(featureRows.size() * 4,
+					cache.getHitCount() + cache.getMissCount());
+			TestCase.assertTrue(cache.getMissCount() >= featureRows.size());
+			TestCase.assertEquals(0, cache.getEvictionCount());
+		}
+
+		TestCase.assertEquals(featureTables.size(),
+				featureCache.getTables().size());
+	}
+
+	/**
+	 * Copy the feature row with a new id
+	 *
+	 * @param featureRow
+	 *            feature row
+	 * @param id
+	 *            feature id
+	 * @return feature row copy
+	 */
+	private static FeatureRow copy(FeatureRow featureRow, long id) {
+		FeatureRow copy = new FeatureRow(featureRow);
+		copy.setId(id);
+		return copy;
+	}
+
+	/**
+	 * Query all feature rows
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @return feature rows
+	 */
+	private static List<FeatureRow> queryRows(FeatureDao featureDao) {
+		List<FeatureRow> featureRows = new ArrayList<>();
+		FeatureResultSet resultSet = featureDao.queryForAll();
+		try {
+			while (resultSet.moveToNext()) {
+				featureRows.add(resultSet.getRow());
+			}
+		} finally {
+			resultSet.close();
+		}
+		return featureRows;
+	}
+
 }
@@ -0,0 +1,47 @@
+package mil.nga.geopackage.test.features.user;
+
+import java.sql.SQLException;
+
+import mil.nga.geopackage.test.CreateGeoPackageTestCase;
+
+import org.junit.Test;
+
+/**
+ * Test Feature Coordinate Store from a created database
+ *
+ * @author osbornb
+ */
+public class FeatureCoordinateStoreCreateTest extends CreateGeoPackageTestCase {
+
+	/**
+	 * Constructor
+	 */
+	public FeatureCoordinateStoreCreateTest() {
+
+	}
+
+	/**
+	 * Test coordinate store
+	 *
+	 * @throws SQLException
+	 */
+	@Test
+	public void testCoordinateStore() throws SQLException {
+
+		FeatureCoordinateStoreUtils.testCoordinateStore(geoPackage);
+
+	}
+
+	/**
+	 * Test spatial predicates refined from the coordinate store
+	 *
+	 * @throws SQLException
+	 */
+	@Test
+	public void testPredicates() throws SQLException {
+
+		FeatureCoordinateStoreUtils.testPredicates(geoPackage);
+
+	}
+
+}
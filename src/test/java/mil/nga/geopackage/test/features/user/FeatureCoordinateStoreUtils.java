@@ -0,0 +1,272 @@
+package mil.nga.geopackage.test.features.user;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import mil.nga.geopackage.BoundingBox;
+import mil.nga.geopackage.GeoPackage;
+import mil.nga.geopackage.features.index.FeatureIndexManager;
+import mil.nga.geopackage.features.index.FeatureIndexResults;
+import mil.nga.geopackage.features.index.FeatureIndexType;
+import mil.nga.geopackage.features.user.FeatureCoordinateStore;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeometryPredicates;
+import mil.nga.geopackage.geom.PackedGeometry;
+import mil.nga.geopackage.geom.SpatialPredicate;
+import mil.nga.sf.Geometry;
+import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.LineString;
+import mil.nga.sf.Point;
+import mil.nga.sf.Polygon;
+import mil.nga.sf.util.GeometryEnvelopeBuilder;
+
+/**
+ * Feature Coordinate Store Utility test methods
+ *
+ * @author osbornb
+ */
+public class FeatureCoordinateStoreUtils {
+
+	/**
+	 * Test coordinate store
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testCoordinateStore(GeoPackage geoPackage)
+			throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			// Small blocks to pack the table across multiple blocks
+			FeatureCoordinateStore store = new FeatureCoordinateStore(
+					featureDao, 1024);
+			TestCase.assertEquals(featureDao.count(), store.load());
+			TestCase.assertEquals(featureDao.count(), store.size());
+
+			List<Long> ids = new ArrayList<>();
+			FeatureResultSet resultSet = featureDao.query();
+			try {
+				while (resultSet.moveToNext()) {
+					FeatureRow featureRow = resultSet.getRow();
+					ids.add(featureRow.getId());
+					validatePacked(featureRow,
+							store.get(featureRow.getId()));
+				}
+			} finally {
+				resultSet.close();
+			}
+
+			PackedGeometry[] packed = store.get(ids);
+			TestCase.assertEquals(ids.size(), packed.length);
+			for (int i = 0; i < packed.length; i++) {
+				TestCase.assertEquals(ids.get(i).longValue(),
+						packed[i].getId());
+			}
+			TestCase.assertNull(store.get(-1));
+
+			if (!ids.isEmpty()) {
+
+				// Closing another store of the table keeps this store tracking
+				new FeatureCoordinateStore(featureDao, 1024).close();
+
+				// Update a feature geometry
+				long updateId = ids.get(0);
+				FeatureRow featureRow = featureDao.queryForIdRow(updateId);
+				GeoPackageGeometryData geometryData = new GeoPackageGeometryData(
+						featureDao.getGeometryColumns().getSrsId());
+				geometryData.setGeometry(new Point(5, 7));
+				featureRow.setGeometry(geometryData);
+				TestCase.assertEquals(1, featureDao.update(featureRow));
+				TestCase.assertEquals(1, store.synchronize());
+				TestCase.assertFalse(store.contains(updateId));
+				PackedGeometry geometry = store.get(updateId);
+				TestCase.assertEquals(1, geometry.numCoordinates());
+				TestCase.assertEquals(PackedGeometry.PART_POINT,
+						geometry.getPartType(0));
+				TestCase.assertEquals(5.0, geometry.getX(0, 0));
+				TestCase.assertEquals(7.0, geometry.getY(0, 0));
+
+				// Delete a feature
+				long deleteId = ids.get(ids.size() - 1);
+				TestCase.assertEquals(1, featureDao.deleteById(deleteId));
+				TestCase.assertEquals(1, store.synchronize());
+				TestCase.assertNull(store.get(deleteId));
+				TestCase.assertEquals(0, store.synchronize());
+
+				// Invalidate and reload all features
+				for (long id : ids) {
+					store.invalidate(id);
+				}
+				TestCase.assertEquals(0, store.size());
+				TestCase.assertEquals(0, store.getCoordinateCount());
+				TestCase.assertEquals(featureDao.count(), store.load());
+			}
+
+			store.close();
+			TestCase.assertEquals(0, store.size());
+
+			// Changes after closing are no longer tracked
+			TestCase.assertEquals(0, store.synchronize());
+		}
+
+	}
+
+	/**
+	 * Test spatial predicate queries refined from the coordinate store
+	 *
+	 * @param geoPackage
+	 *            GeoPackage
+	 * @throws SQLException
+	 *             upon error
+	 */
+	public static void testPredicates(GeoPackage geoPackage)
+			throws SQLException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			FeatureIndexManager featureIndexManager = new FeatureIndexManager(
+					geoPackage, featureDao);
+			featureIndexManager.setContinueOnError(false);
+			featureIndexManager.setIndexLocation(FeatureIndexType.GEOPACKAGE);
+			featureIndexManager.index();
+			featureIndexManager
+					.prioritizeQueryLocation(FeatureIndexType.GEOPACKAGE);
+
+			BoundingBox boundingBox = featureIndexManager.getBoundingBox();
+			if (boundingBox == null) {
+				featureIndexManager.close();
+				continue;
+			}
+
+			// Triangle covering part of the features
+			GeometryEnvelope envelope = boundingBox.buildEnvelope();
+			double width = envelope.getMaxX() - envelope.getMinX();
+			LineString ring = new LineString();
+			ring.addPoint(new Point(envelope.getMinX(), envelope.getMinY()));
+			ring.addPoint(new Point(envelope.getMaxX() - width / 3.0,
+					envelope.getMinY()));
+			ring.addPoint(new Point(envelope.getMinX() + width / 2.0,
+					envelope.getMaxY()));
+			ring.addPoint(new Point(envelope.getMinX(), envelope.getMinY()));
+			Polygon polygon = new Polygon();
+			polygon.addRing(ring);
+
+			FeatureCoordinateStore store = new FeatureCoordinateStore(
+					featureDao);
+
+			for (SpatialPredicate predicate : SpatialPredicate.values()) {
+
+				featureIndexManager.setCoordinateStore(null);
+				Set<Long> expected = queryIds(featureIndexManager, polygon,
+						predicate);
+
+				featureIndexManager.setCoordinateStore(store);
+				for (int threads : new int[] { 1, 4 }) {
+					featureIndexManager.setPredicateThreads(threads);
+					TestCase.assertEquals(expected,
+							queryIds(featureIndexManager, polygon, predicate));
+				}
+			}
+
+			store.close();
+			featureIndexManager.close();
+		}
+
+	}
+
+	/**
+	 * Query the ids of the features satisfying the predicate
+	 *
+	 * @param featureIndexManager
+	 *            feature index manager
+	 * @param geometry
+	 *            query geometry
+	 * @param predicate
+	 *            spatial predicate
+	 * @return feature ids
+	 */
+	private static Set<Long> queryIds(FeatureIndexManager featureIndexManager,
+			Geometry geometry, SpatialPredicate predicate) {
+		Set<Long> ids = new HashSet<>();
+		FeatureIndexResults results = featureIndexManager.query(geometry,
+				predicate);
+		for (long id : results.ids()) {
+			TestCase.assertTrue(ids.add(id));
+		}
+		results.close();
+		return ids;
+	}
+
+	/**
+	 * Validate the packed geometry against the decoded feature geometry
+	 *
+	 * @param featureRow
+	 *            feature row
+	 * @param packed
+	 *            packed geometry
+	 */
+	private static void validatePacked(FeatureRow featureRow,
+			PackedGeometry packed) {
+
+		TestCase.assertNotNull(packed);
+		TestCase.assertEquals(featureRow.getId(), packed.getId());
+
+		GeoPackageGeometryData geometryData = featureRow.getGeometry();
+		Geometry geometry = geometryData != null ? geometryData.getGeometry()
+				: null;
+		if (geometry == null || geometry.isEmpty()) {
+			TestCase.assertTrue(packed.isEmpty());
+			TestCase.assertNull(packed.getEnvelope());
+			return;
+		}
+
+		TestCase.assertEquals(geometry.getGeometryType(),
+				packed.getGeometryType());
+		TestCase.assertTrue(packed.numParts() > 0);
+
+		GeometryEnvelope envelope = GeometryEnvelopeBuilder
+				.buildEnvelope(geometry);
+		TestCase.assertEquals(envelope.getMinX(), packed.getMinX(), 0.0);
+		TestCase.assertEquals(envelope.getMinY(), packed.getMinY(), 0.0);
+		TestCase.assertEquals(envelope.getMaxX(), packed.getMaxX(), 0.0);
+		TestCase.assertEquals(envelope.getMaxY(), packed.getMaxY(), 0.0);
+
+		int count = 0;
+		for (int part = 0; part < packed.numParts(); part++) {
+			double[] coordinates = packed.getCoordinates(part);
+			TestCase.assertEquals(packed.getPartSize(part) * 2,
+					coordinates.length);
+			for (int i = 0; i < packed.getPartSize(part); i++) {
+				TestCase.assertEquals(coordinates[i * 2],
+						packed.getX(part, i));
+				TestCase.assertEquals(coordinates[i * 2 + 1],
+						packed.getY(part, i));
+			}
+			count += packed.getPartSize(part);
+		}
+		TestCase.assertEquals(packed.numCoordinates(), count);
+
+		// Packed and decoded geometries are interchangeable for predicates
+		GeometryPredicates predicates = new GeometryPredicates(geometry);
+		TestCase.assertTrue(predicates.intersects(packed));
+		TestCase.assertEquals(predicates.within(geometry),
+				predicates.within(packed));
+		GeometryPredicates packedPredicates = new GeometryPredicates(packed);
+		TestCase.assertTrue(packedPredicates.intersects(geometry));
+	}
+
+}
@@ -0,0 +1,257 @@
+package mil.nga.geopackage.test.geom;
+
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import mil.nga.geopackage.geom.GeometryPredicates;
+import mil.nga.geopackage.geom.PackedGeometry;
+import mil.nga.geopackage.geom.SpatialPredicate;
+import mil.nga.geopackage.test.BaseTestCase;
+import mil.nga.sf.GeometryEnvelope;
+import mil.nga.sf.GeometryType;
+import mil.nga.sf.LineString;
+import mil.nga.sf.MultiPolygon;
+import mil.nga.sf.Point;
+import mil.nga.sf.Polygon;
+
+import org.junit.Test;
+
+/**
+ * Test prepared geometry predicates with indexed polygon ring edges
+ *
+ * @author osbornb
+ */
+public class GeometryPredicatesTest extends BaseTestCase {
+
+	/**
+	 * Test prepared point predicates against unprepared predicates
+	 */
+	@Test
+	public void testPreparedPoints() {
+
+		MultiPolygon polygons = createPolygons();
+		GeometryPredicates prepared = new GeometryPredicates(polygons);
+
+		Random random = new Random(7);
+		for (int i = 0; i < 5000; i++) {
+			Point point = new Point(random.nextDouble() * 30 - 5,
+					random.nextDouble() * 30 - 5);
+			boolean intersects = GeometryPredicates.intersects(polygons,
+					point);
+			boolean contains = GeometryPredicates.contains(polygons, point);
+			TestCase.assertEquals(intersects,
+					prepared.intersects(point.getX(), point.getY()));
+			TestCase.assertEquals(contains,
+					prepared.contains(point.getX(), point.getY()));
+			TestCase.assertEquals(intersects,
+					prepared.test(SpatialPredicate.INTERSECTS, point));
+			TestCase.assertEquals(contains,
+					prepared.test(SpatialPredicate.WITHIN, point));
+		}
+
+		// Ring vertices are on the boundary
+		LineString exterior = polygons.getPolygons().get(0).getExteriorRing();
+		for (Point vertex : exterior.getPoints()) {
+			TestCase.assertTrue(
+					prepared.intersects(vertex.getX(), vertex.getY()));
+			TestCase.assertFalse(
+					prepared.contains(vertex.getX(), vertex.getY()));
+		}
+
+		// Inside the hole
+		TestCase.assertFalse(prepared.intersects(10, 10));
+		TestCase.assertFalse(prepared.contains(10, 10));
+	}
+
+	/**
+	 * Test prepared envelope predicates against unprepared predicates
+	 */
+	@Test
+	public void testPreparedEnvelopes() {
+
+		MultiPolygon polygons = createPolygons();
+		GeometryPredicates prepared = new GeometryPredicates(polygons);
+
+		Random random = new Random(11);
+		int properlyContained = 0;
+		for (int i = 0; i < 2000; i++) {
+			double minX = random.nextDouble() * 30 - 5;
+			double minY = random.nextDouble() * 30 - 5;
+			double size = random.nextDouble() * 3;
+			GeometryEnvelope envelope = new GeometryEnvelope(minX, minY,
+					minX + size, minY + size);
+			Polygon rectangle = createRectangle(envelope);
+
+			TestCase.assertEquals(
+					GeometryPredicates.intersects(polygons, rectangle),
+					prepared.intersects(envelope));
+
+			if (prepared.containsProperly(envelope)) {
+				properlyContained++;
+				TestCase.assertTrue(
+						GeometryPredicates.contains(polygons, rectangle));
+				TestCase.assertTrue(prepared
+						.satisfiedBy(SpatialPredicate.WITHIN, envelope));
+				TestCase.assertTrue(prepared
+						.satisfiedBy(SpatialPredicate.INTERSECTS, envelope));
+			} else {
+				TestCase.assertFalse(prepared
+						.satisfiedBy(SpatialPredicate.WITHIN, envelope));
+			}
+			TestCase.assertFalse(
+					prepared.satisfiedBy(SpatialPredicate.CONTAINS, envelope));
+		}
+		TestCase.assertTrue(properlyContained > 0);
+
+		// Envelope inside the hole
+		TestCase.assertFalse(prepared
+				.intersects(new GeometryEnvelope(9.5, 9.5, 10.5, 10.5)));
+		TestCase.assertFalse(prepared
+				.containsProperly(new GeometryEnvelope(9.5, 9.5, 10.5, 10.5)));
+
+		// Envelope touching the exterior ring
+		TestCase.assertFalse(prepared
+				.containsProperly(new GeometryEnvelope(0, 5, 1, 6)));
+		TestCase.assertTrue(
+				prepared.intersects(new GeometryEnvelope(-1, 5, 0, 6)));
+	}
+
+	/**
+	 * Test containment of lines touching the boundary between their vertices
+	 */
+	@Test
+	public void testContainsNotch() {
+
+		// Square with a notch cut down from the top edge to (2.6, 1.5)
+		LineString ring = new LineString();
+		ring.addPoint(new Point(0, 0));
+		ring.addPoint(new Point(4, 0));
+		ring.addPoint(new Point(4, 4));
+		ring.addPoint(new Point(3, 4));
+		ring.addPoint(new Point(3, 2));
+		ring.addPoint(new Point(2.6, 1.5));
+		ring.addPoint(new Point(2.2, 2));
+		ring.addPoint(new Point(2.2, 4));
+		ring.addPoint(new Point(0, 4));
+		ring.addPoint(new Point(0, 0));
+		Polygon polygon = new Polygon();
+		polygon.addRing(ring);
+
+		// Touches the notch vertices, passing through the notch between them
+		LineString throughNotch = new LineString();
+		throughNotch.addPoint(new Point(0.5, 2));
+		throughNotch.addPoint(new Point(3.5, 2));
+		TestCase.assertFalse(
+				GeometryPredicates.contains(polygon, throughNotch));
+		TestCase.assertTrue(
+				GeometryPredicates.intersects(polygon, throughNotch));
+
+		// Touches a notch vertex from the inside
+		LineString toNotch = new LineString();
+		toNotch.addPoint(new Point(0.5, 2));
+		toNotch.addPoint(new Point(2.2, 2));
+		TestCase.assertTrue(GeometryPredicates.contains(polygon, toNotch));
+
+		// Below the notch
+		LineString belowNotch = new LineString();
+		belowNotch.addPoint(new Point(0.5, 1));
+		belowNotch.addPoint(new Point(3.5, 1));
+		TestCase.assertTrue(GeometryPredicates.contains(polygon, belowNotch));
+	}
+
+	/**
+	 * Test a packed interior ring without an exterior ring is skipped
+	 */
+	@Test
+	public void testPackedOrphanInteriorRing() {
+
+		GeometryPredicates prepared = new GeometryPredicates(
+				createRectangle(new GeometryEnvelope(0, 0, 10, 10)));
+
+		DoubleBuffer coordinates = DoubleBuffer.wrap(
+				new double[] { 4, 4, 6, 4, 6, 6, 4, 6, 4, 4 });
+		int[] parts = new int[] { 0, 5, PackedGeometry.PART_INTERIOR_RING };
+		PackedGeometry orphan = new PackedGeometry(1, GeometryType.POLYGON,
+				coordinates, parts, 0, 1);
+		TestCase.assertFalse(prepared.intersects(orphan));
+		TestCase.assertFalse(prepared.within(orphan));
+
+		parts[2] = PackedGeometry.PART_EXTERIOR_RING;
+		PackedGeometry exterior = new PackedGeometry(1, GeometryType.POLYGON,
+				coordinates, parts, 0, 1);
+		TestCase.assertTrue(prepared.intersects(exterior));
+		TestCase.assertTrue(prepared.within(exterior));
+	}
+
+	/**
+	 * Create polygons with enough ring edges to be indexed: a square with a
+	 * hole and a zig zag polygon
+	 *
+	 * @return multi polygon
+	 */
+	private static MultiPolygon createPolygons() {
+
+		MultiPolygon multiPolygon = new MultiPolygon();
+
+		// 20 x 20 square with 100 edges and a square hole
+		LineString exterior = new LineString();
+		for (int i = 0; i < 25; i++) {
+			exterior.addPoint(new Point(i * 0.8, 0));
+		}
+		for (int i = 0; i < 25; i++) {
+			exterior.addPoint(new Point(20, i * 0.8));
+		}
+		for (int i = 0; i < 25; i++) {
+			exterior.addPoint(new Point(20 - i * 0.8, 20));
+		}
+		for (int i = 0; i < 25; i++) {
+			exterior.addPoint(new Point(0, 20 - i * 0.8));
+		}
+		exterior.addPoint(new Point(0, 0));
+		LineString hole = new LineString();
+		hole.addPoint(new Point(8, 8));
+		hole.addPoint(new Point(12, 8));
+		hole.addPoint(new Point(12, 12));
+		hole.addPoint(new Point(8, 12));
+		hole.addPoint(new Point(8, 8));
+		Polygon square = new Polygon();
+		square.addRing(exterior);
+		square.addRing(hole);
+		multiPolygon.addPolygon(square);
+
+		// Zig zag polygon to the right of the square
+		LineString zigZag = new LineString();
+		for (int i = 0; i <= 40; i++) {
+			zigZag.addPoint(new Point(21 + (i % 2) * 2, i * 0.5));
+		}
+		zigZag.addPoint(new Point(24, 20));
+		zigZag.addPoint(new Point(24, 0));
+		zigZag.addPoint(new Point(21, 0));
+		Polygon zigZagPolygon = new Polygon();
+		zigZagPolygon.addRing(zigZag);
+		multiPolygon.addPolygon(zigZagPolygon);
+
+		return multiPolygon;
+	}
+
+	/**
+	 * Create a rectangle polygon from the envelope
+	 *
+	 * @param envelope
+	 *            envelope
+	 * @return polygon
+	 */
+	private static Polygon createRectangle(GeometryEnvelope envelope) {
+		LineString ring = new LineString();
+		ring.addPoint(new Point(envelope.getMinX(), envelope.getMinY()));
+		ring.addPoint(new Point(envelope.getMaxX(), envelope.getMinY()));
+		ring.addPoint(new Point(envelope.getMaxX(), envelope.getMaxY()));
+		ring.addPoint(new Point(envelope.getMinX(), envelope.getMaxY()));
+		ring.addPoint(new Point(envelope.getMinX(), envelope.getMinY()));
+		Polygon polygon = new Polygon();
+		polygon.addRing(ring);
+		return polygon;
+	}
+
+}
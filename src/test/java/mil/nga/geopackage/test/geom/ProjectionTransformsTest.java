@@ -0,0 +1,111 @@
+package mil.nga.geopackage.test.geom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import mil.nga.geopackage.geom.ProjectionTransforms;
+import mil.nga.geopackage.test.BaseTestCase;
+import mil.nga.sf.Point;
+import mil.nga.sf.proj.Projection;
+import mil.nga.sf.proj.ProjectionConstants;
+import mil.nga.sf.proj.ProjectionFactory;
+import mil.nga.sf.proj.ProjectionTransform;
+
+import org.junit.Test;
+
+/**
+ * Test cached and packed coordinate projection transforms
+ *
+ * @author osbornb
+ */
+public class ProjectionTransformsTest extends BaseTestCase {
+
+	/**
+	 * Test the transform cache
+	 *
+	 * @throws InterruptedException
+	 *             upon error
+	 */
+	@Test
+	public void testCache() throws InterruptedException {
+
+		final Projection wgs84 = ProjectionFactory
+				.getProjection(ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM);
+		final Projection webMercator = ProjectionFactory
+				.getProjection(ProjectionConstants.EPSG_WEB_MERCATOR);
+
+		final ProjectionTransform transform = ProjectionTransforms.get(wgs84,
+				webMercator);
+		TestCase.assertSame(transform,
+				ProjectionTransforms.get(wgs84, webMercator));
+		TestCase.assertSame(transform, ProjectionTransforms.get(wgs84,
+				ProjectionConstants.EPSG_WEB_MERCATOR));
+		TestCase.assertNotSame(transform,
+				ProjectionTransforms.get(webMercator, wgs84));
+
+		final ProjectionTransform[] otherThread = new ProjectionTransform[1];
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				otherThread[0] = ProjectionTransforms.get(wgs84,
+						webMercator);
+			}
+		});
+		thread.start();
+		thread.join();
+		TestCase.assertNotNull(otherThread[0]);
+		TestCase.assertNotSame(transform, otherThread[0]);
+
+		ProjectionTransforms.clear();
+		TestCase.assertNotSame(transform,
+				ProjectionTransforms.get(wgs84, webMercator));
+	}
+
+	/**
+	 * Test packed coordinate transforms
+	 */
+	@Test
+	public void testPackedTransform() {
+
+		Projection wgs84 = ProjectionFactory
+				.getProjection(ProjectionConstants.EPSG_WORLD_GEODETIC_SYSTEM);
+		ProjectionTransform transform = ProjectionTransforms.get(wgs84,
+				ProjectionConstants.EPSG_WEB_MERCATOR);
+
+		List<Point> points = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			points.add(new Point(-180.0 + 3.6 * i, -80.0 + 1.6 * i));
+		}
+
+		double[] coordinates = ProjectionTransforms.toCoordinates(points);
+		TestCase.assertEquals(points.size() * 2, coordinates.length);
+		ProjectionTransforms.transform(transform, coordinates);
+
+		for (int i = 0; i < points.size(); i++) {
+			Point expected = transform.transform(points.get(i));
+			TestCase.assertEquals(expected.getX(), coordinates[i * 2], 0.0);
+			TestCase.assertEquals(expected.getY(), coordinates[i * 2 + 1],
+					0.0);
+		}
+
+		List<Point> transformed = ProjectionTransforms.transform(transform,
+				points);
+		TestCase.assertEquals(points.size(), transformed.size());
+		for (int i = 0; i < points.size(); i++) {
+			TestCase.assertEquals(coordinates[i * 2],
+					transformed.get(i).getX(), 0.0);
+			TestCase.assertEquals(coordinates[i * 2 + 1],
+					transformed.get(i).getY(), 0.0);
+		}
+
+		double[] target = new double[coordinates.length + 2];
+		ProjectionTransforms.transform(
+				ProjectionTransforms.get(wgs84, wgs84), coordinates, 0,
+				target, 2, points.size());
+		TestCase.assertEquals(coordinates[0], target[2], 0.0);
+		TestCase.assertEquals(coordinates[coordinates.length - 1],
+				target[target.length - 1], 0.0);
+	}
+
+}
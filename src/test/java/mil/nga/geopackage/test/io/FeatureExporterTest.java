@@ -0,0 +1,237 @@
+package mil.nga.geopackage.test.io;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import mil.nga.geopackage.features.index.FeatureIndexManager;
+import mil.nga.geopackage.features.index.FeatureIndexResults;
+import mil.nga.geopackage.features.index.FeatureIndexType;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.io.FeatureExportFormat;
+import mil.nga.geopackage.io.FeatureExporter;
+import mil.nga.geopackage.test.CreateGeoPackageTestCase;
+
+import org.junit.Test;
+
+/**
+ * Test streaming feature exports
+ *
+ * @author osbornb
+ */
+public class FeatureExporterTest extends CreateGeoPackageTestCase {
+
+	/**
+	 * Test text exports are complete and identical when encoded in parallel
+	 *
+	 * @throws IOException
+	 *             upon error
+	 */
+	@Test
+	public void testTextExports() throws IOException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			int count = featureDao.count();
+
+			for (FeatureExportFormat format : new FeatureExportFormat[] {
+					FeatureExportFormat.GEOJSON, FeatureExportFormat.NDJSON,
+					FeatureExportFormat.CSV }) {
+
+				File serialFile = export(featureDao, format, 1);
+				File parallelFile = export(featureDao, format, 4);
+				TestCase.assertTrue(Arrays.equals(
+						Files.readAllBytes(serialFile.toPath()),
+						Files.readAllBytes(parallelFile.toPath())));
+
+				String text = new String(
+						Files.readAllBytes(parallelFile.toPath()),
+						StandardCharsets.UTF_8);
+				switch (format) {
+				case GEOJSON:
+					TestCase.assertTrue(text.startsWith(
+							"{\"type\":\"FeatureCollection\",\"features\":["));
+					TestCase.assertTrue(text.endsWith("]}\n"));
+					TestCase.assertEquals(count,
+							occurrences(text, "{\"type\":\"Feature\","));
+					break;
+				case NDJSON:
+					List<String> lines = readLines(parallelFile);
+					TestCase.assertEquals(count, lines.size());
+					for (String line : lines) {
+						TestCase.assertTrue(
+								line.startsWith("{\"type\":\"Feature\","));
+						TestCase.assertTrue(line.endsWith("}}"));
+					}
+					break;
+				case CSV:
+					String header = readLines(parallelFile).get(0);
+					TestCase.assertTrue(header
+							.contains(featureDao.getGeometryColumnName()));
+					TestCase.assertTrue(
+							header.contains(featureDao.getIdColumnName()));
+					break;
+				default:
+					TestCase.fail("Unexpected format: " + format);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Test Well-Known Binary exports of the table and of feature index results
+	 *
+	 * @throws IOException
+	 *             upon error
+	 */
+	@Test
+	public void testWKBExports() throws IOException {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+
+			List<Long> ids = new ArrayList<>();
+			List<Integer> lengths = new ArrayList<>();
+			FeatureResultSet resultSet = featureDao.queryForAll();
+			try {
+				while (resultSet.moveToNext()) {
+					FeatureRow row = resultSet.getRow();
+					ids.add(row.getId());
+					GeoPackageGeometryData geometryData = row.getGeometry();
+					lengths.add(geometryData != null
+							? geometryData.getWkbBytes().length
+							: -1);
+				}
+			} finally {
+				resultSet.close();
+			}
+
+			File file = export(featureDao, FeatureExportFormat.WKB, 4);
+			DataInputStream input = new DataInputStream(
+					new FileInputStream(file));
+			try {
+				for (int i = 0; i < ids.size(); i++) {
+					TestCase.assertEquals(ids.get(i).longValue(),
+							input.readLong());
+					int length = input.readInt();
+					TestCase.assertEquals(lengths.get(i).intValue(), length);
+					if (length > 0) {
+						input.readFully(new byte[length]);
+					}
+				}
+				try {
+					input.readByte();
+					TestCase.fail("Unexpected bytes after the last feature");
+				} catch (EOFException e) {
+					// expected
+				}
+			} finally {
+				input.close();
+			}
+
+			FeatureIndexManager indexManager = new FeatureIndexManager(
+					geoPackage, featureDao);
+			indexManager.setIndexLocation(FeatureIndexType.GEOPACKAGE);
+			indexManager.index();
+			FeatureIndexResults results = indexManager.query();
+			try {
+				FeatureExporter exporter = new FeatureExporter(featureDao,
+						FeatureExportFormat.NDJSON);
+				exporter.setThreads(3);
+				exporter.setBatchSize(7);
+				File resultsFile = folder.newFile();
+				long count = exporter.export(resultsFile, results);
+				TestCase.assertEquals(results.count(), count);
+				TestCase.assertEquals(count, readLines(resultsFile).size());
+			} finally {
+				results.close();
+				indexManager.close();
+			}
+		}
+
+	}
+
+	/**
+	 * Export the feature table
+	 *
+	 * @param featureDao
+	 *            feature DAO
+	 * @param format
+	 *            export format
+	 * @param threads
+	 *            encoding threads
+	 * @return exported file
+	 * @throws IOException
+	 *             upon error
+	 */
+	private File export(FeatureDao featureDao, FeatureExportFormat format,
+			int threads) throws IOException {
+		FeatureExporter exporter = new FeatureExporter(featureDao, format);
+		exporter.setThreads(threads);
+		exporter.setBatchSize(5);
+		exporter.setBufferSize(1024);
+		File file = folder.newFile();
+		long count = exporter.export(file);
+		TestCase.assertEquals(featureDao.count(), count);
+		return file;
+	}
+
+	/**
+	 * Read the lines of a file
+	 *
+	 * @param file
+	 *            file
+	 * @return lines
+	 * @throws IOException
+	 *             upon error
+	 */
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<>();
+		BufferedReader reader = Files.newBufferedReader(file.toPath(),
+				StandardCharsets.UTF_8);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	/**
+	 * Count the occurrences of a value within text
+	 *
+	 * @param text
+	 *            text
+	 * @param value
+	 *            value
+	 * @return occurrences
+	 */
+	private static int occurrences(String text, String value) {
+		int count = 0;
+		int index = text.indexOf(value);
+		while (index >= 0) {
+			count++;
+			index = text.indexOf(value, index + value.length());
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,192 @@
+package mil.nga.geopackage.test.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+
+import junit.framework.TestCase;
+import mil.nga.geopackage.core.contents.Contents;
+import mil.nga.geopackage.extension.RTreeIndexExtension;
+import mil.nga.geopackage.extension.RTreeIndexTableDao;
+import mil.nga.geopackage.features.user.FeatureDao;
+import mil.nga.geopackage.features.user.FeatureResultSet;
+import mil.nga.geopackage.features.user.FeatureRow;
+import mil.nga.geopackage.geom.GeoPackageGeometryData;
+import mil.nga.geopackage.geom.GeometryTextDecoder;
+import mil.nga.geopackage.geom.GeometryTextEncoder;
+import mil.nga.geopackage.io.FeatureExportFormat;
+import mil.nga.geopackage.io.FeatureExporter;
+import mil.nga.geopackage.io.FeatureImportFormat;
+import mil.nga.geopackage.io.FeatureImporter;
+import mil.nga.geopackage.test.CreateGeoPackageTestCase;
+import mil.nga.sf.Geometry;
+
+import org.junit.Test;
+
+/**
+ * Test bulk feature imports
+ *
+ * @author osbornb
+ */
+public class FeatureImporterTest extends CreateGeoPackageTestCase {
+
+	/**
+	 * Test Well-Known Text geometries decode to the same encoded text
+	 */
+	@Test
+	public void testWKTRoundTrip() {
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			FeatureResultSet resultSet = featureDao.queryForAll();
+			try {
+				while (resultSet.moveToNext()) {
+					FeatureRow row = resultSet.getRow();
+					GeoPackageGeometryData geometryData = row.getGeometry();
+					if (geometryData != null
+							&& geometryData.getGeometry() != null) {
+						String wkt = GeometryTextEncoder
+								.toWKT(geometryData.getGeometry());
+						Geometry geometry = GeometryTextDecoder.fromWKT(wkt);
+						TestCase.assertEquals(wkt,
+								GeometryTextEncoder.toWKT(geometry));
+					}
+				}
+			} finally {
+				resultSet.close();
+			}
+		}
+
+	}
+
+	/**
+	 * Test feature tables exported to each text format import into created
+	 * and existing tables with maintained RTree indices and contents bounds
+	 *
+	 * @throws IOException
+	 *             upon error
+	 * @throws SQLException
+	 *             upon error
+	 */
+	@Test
+	public void testImports() throws IOException, SQLException {
+
+		RTreeIndexExtension rTree = new RTreeIndexExtension(geoPackage);
+
+		for (String featureTable : geoPackage.getFeatureTables()) {
+
+			FeatureDao featureDao = geoPackage.getFeatureDao(featureTable);
+			int count = featureDao.count();
+
+			for (FeatureExportFormat exportFormat : new FeatureExportFormat[] {
+					FeatureExportFormat.GEOJSON, FeatureExportFormat.NDJSON,
+					FeatureExportFormat.CSV }) {
+
+				FeatureExporter exporter = new FeatureExporter(featureDao,
+						exportFormat);
+				exporter.setProjection(null);
+				File file = folder.newFile();
+				exporter.export(file);
+
+				FeatureImportFormat importFormat = FeatureImportFormat
+						.valueOf(exportFormat.name());
+				String importTable = featureTable + "_"
+						+ importFormat.name().toLowerCase();
+
+				FeatureImporter importer = new FeatureImporter(geoPackage,
+						importTable, importFormat);
+				importer.setProjection(featureDao.getProjection());
+				importer.setThreads(3);
+				importer.setBatchSize(7);
+				importer.setTransactionSize(10);
+				TestCase.assertEquals(count, importer.importFeatures(file));
+
+				FeatureDao importDao = geoPackage.getFeatureDao(importTable);
+				TestCase.assertEquals(count, importDao.count());
+				RTreeIndexTableDao rTreeDao = rTree.getTableDao(importDao);
+				TestCase.assertTrue(rTreeDao.has());
+				TestCase.assertEquals(count, rTreeDao.count());
+
+				Contents contents = geoPackage.getContentsDao()
+						.queryForId(importTable);
+				if (featureDao.getGeometryColumns().getContents()
+						.getMinX() != null && count > 0) {
+					TestCase.assertNotNull(contents.getMinX());
+					TestCase.assertTrue(
+							contents.getMinX() <= contents.getMaxX());
+					TestCase.assertTrue(
+							contents.getMinY() <= contents.getMaxY());
+				}
+
+				// Import again into the existing indexed table
+				importer.setThreads(1);
+				TestCase.assertEquals(count, importer.importFeatures(file));
+				TestCase.assertEquals(count * 2, importDao.count());
+				TestCase.assertEquals(count * 2, rTreeDao.count());
+			}
+		}
+
+	}
+
+	/**
+	 * Test importing CSV records with quoted fields spanning lines and a
+	 * streamed GeoJSON feature collection with members after the features
+	 */
+	@Test
+	public void testImportText() {
+
+		String csv = "name,shape,count\n"
+				+ "\"first, \"\"quoted\"\"\",POINT (1 2),3\n" + "\"multi\nline\","
+				+ "\"LINESTRING (0 0, 4 5)\",\n";
+		FeatureImporter csvImporter = new FeatureImporter(geoPackage,
+				"import_csv", FeatureImportFormat.CSV);
+		TestCase.assertEquals(2,
+				csvImporter.importFeatures(new StringReader(csv)));
+		FeatureDao csvDao = geoPackage.getFeatureDao("import_csv");
+		TestCase.assertEquals(2, csvDao.count());
+		FeatureResultSet resultSet = csvDao.queryForAll();
+		try {
+			TestCase.assertTrue(resultSet.moveToNext());
+			FeatureRow row = resultSet.getRow();
+			TestCase.assertEquals("first, \"quoted\"", row.getValue("name"));
+			TestCase.assertEquals(3L,
+					((Number) row.getValue("count")).longValue());
+			TestCase.assertTrue(resultSet.moveToNext());
+			row = resultSet.getRow();
+			TestCase.assertEquals("multi\nline", row.getValue("name"));
+			TestCase.assertNull(row.getValue("count"));
+			TestCase.assertEquals("LINESTRING (0 0, 4 5)", GeometryTextEncoder
+					.toWKT(row.getGeometry().getGeometry()));
+		} finally {
+			resultSet.close();
+		}
+
+		String geoJSON = "{\"type\":\"FeatureCollection\",\"name\":\"features\","
+				+ "\"features\":[{\"type\":\"Feature\",\"geometry\":"
+				+ "{\"type\":\"Point\",\"coordinates\":[10,20]},"
+				+ "\"properties\":{\"label\":\"a]}\",\"tags\":[1,2]}},\n"
+				+ "{\"type\":\"Feature\",\"geometry\":null,\"properties\":{}}],"
+				+ "\"bbox\":[10,20,10,20]}";
+		FeatureImporter geoJSONImporter = new FeatureImporter(geoPackage,
+				"import_geojson", FeatureImportFormat.GEOJSON);
+		TestCase.assertEquals(2,
+				geoJSONImporter.importFeatures(new StringReader(geoJSON)));
+		FeatureDao geoJSONDao = geoPackage.getFeatureDao("import_geojson");
+		TestCase.assertEquals(2, geoJSONDao.count());
+		resultSet = geoJSONDao.queryForAll();
+		try {
+			TestCase.assertTrue(resultSet.moveToNext());
+			FeatureRow row = resultSet.getRow();
+			TestCase.assertEquals("a]}", row.getValue("label"));
+			TestCase.assertEquals("[1,2]", row.getValue("tags"));
+			TestCase.assertEquals("POINT (10 20)", GeometryTextEncoder
+					.toWKT(row.getGeometry().getGeometry()));
+		} finally {
+			resultSet.close();
+		}
+
+	}
+
+}
@@ -5,6 +5,7 @@ import java.sql.SQLException;
 
 import junit.framework.TestCase;
 import mil.nga.geopackage.extension.index.FeatureTableIndex;
+import mil.nga.geopackage.features.user.FeatureCoordinateStore;
 import mil.nga.geopackage.features.user.FeatureDao;
 import mil.nga.geopackage.test.CreateGeoPackageTestCase;
 import mil.nga.geopackage.tiles.TileBoundingBoxUtils;
@@ -73,6 +74,41 @@ public class FeatureTilesTest extends CreateGeoPackageTestCase {
 
 	}
 
+	/**
+	 * Test feature tiles drawn from a packed coordinate store
+	 *
+	 * @throws java.sql.SQLException
+	 */
+	@Test
+	public void testFeatureTilesCoordinateStore() throws SQLException {
+
+		FeatureDao featureDao = FeatureTileUtils.createFeatureDao(geoPackage);
+
+		int num = FeatureTileUtils.insertFeatures(geoPackage, featureDao);
+
+		FeatureTiles featureTiles = FeatureTileUtils.createFeatureTiles(
+				geoPackage, featureDao, false);
+
+		FeatureTableIndex featureIndex = new FeatureTableIndex(geoPackage,
+				featureDao);
+		int indexed = featureIndex.index();
+		TestCase.assertEquals(num, indexed);
+
+		featureTiles.setFeatureIndex(featureIndex);
+
+		FeatureCoordinateStore coordinateStore = new FeatureCoordinateStore(
+				featureDao);
+		TestCase.assertEquals(num, coordinateStore.load());
+		featureTiles.setCoordinateStore(coordinateStore);
+
+		createTiles(featureTiles, 0, 3);
+
+		TestCase.assertNotNull(featureTiles.drawTile(0, 0, 0));
+
+		coordinateStore.close();
+
+	}
+
 	private void createTiles(FeatureTiles featureTiles, int minZoom, int maxZoom) {
 		for (int i = minZoom; i <= maxZoom; i++) {
 			createTiles(featureTiles, i);